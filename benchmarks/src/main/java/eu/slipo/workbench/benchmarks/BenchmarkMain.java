@@ -0,0 +1,26 @@
+package eu.slipo.workbench.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The entry point of the benchmarks jar. It delegates to the JMH runner, but (unless a result
+ * format is explicitly given) also writes the results as JSON into <tt>jmh-result.json</tt> so
+ * that runs of different versions can be compared.
+ */
+public class BenchmarkMain
+{
+    public static final String DEFAULT_RESULT_FILE = "jmh-result.json";
+
+    private BenchmarkMain() {}
+
+    public static void main(String[] args) throws Exception
+    {
+        List<String> argList = new ArrayList<>(Arrays.asList(args));
+        if (!argList.contains("-rf")) {
+            argList.addAll(0, Arrays.asList("-rf", "json", "-rff", DEFAULT_RESULT_FILE));
+        }
+        org.openjdk.jmh.Main.main(argList.toArray(new String[0]));
+    }
+}
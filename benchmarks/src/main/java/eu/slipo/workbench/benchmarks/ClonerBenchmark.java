@@ -0,0 +1,61 @@
+package eu.slipo.workbench.benchmarks;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import eu.slipo.workbench.common.service.util.ClonerService;
+import eu.slipo.workbench.common.service.util.FieldBasedClonerService;
+import eu.slipo.workbench.common.service.util.JsonBasedClonerService;
+
+/**
+ * Benchmark the cloning of tool configurations (as performed for every step added by a
+ * process definition builder), by the JSON-based and the field-based cloner.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ClonerBenchmark
+{
+    @Param({ "triplegeo", "limes", "fagi" })
+    private String tool;
+
+    @Param({ "json", "field" })
+    private String clonerType;
+
+    private ClonerService cloner;
+
+    private Serializable configuration;
+
+    @Setup
+    public void setup()
+    {
+        ObjectMapper objectMapper = Fixtures.objectMapper();
+        cloner = clonerType.equals("field")?
+            new FieldBasedClonerService(objectMapper) : new JsonBasedClonerService(objectMapper);
+        configuration = ToolConfigurations.get(tool, Fixtures.propertiesConverter(objectMapper));
+    }
+
+    @Benchmark
+    public Object cloneAsBean() throws IOException
+    {
+        return cloner.cloneAsBean(configuration);
+    }
+}
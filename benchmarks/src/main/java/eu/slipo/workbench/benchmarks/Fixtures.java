@@ -0,0 +1,162 @@
+package eu.slipo.workbench.benchmarks;
+
+import java.io.IOException;
+import java.io.Serializable;
+
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.util.Assert;
+
+import com.bedatadriven.jackson.datatype.jts.JtsModule;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+
+import eu.slipo.workbench.common.model.poi.EnumDataFormat;
+import eu.slipo.workbench.common.model.process.ProcessDefinition;
+import eu.slipo.workbench.common.model.process.ProcessDefinitionBuilder;
+import eu.slipo.workbench.common.model.process.ProcessDefinitionBuilderFactory;
+import eu.slipo.workbench.common.model.resource.FileSystemDataSource;
+import eu.slipo.workbench.common.model.resource.ResourceMetadataCreate;
+import eu.slipo.workbench.common.model.tool.FagiConfiguration;
+import eu.slipo.workbench.common.model.tool.LimesConfiguration;
+import eu.slipo.workbench.common.model.tool.TriplegeoConfiguration;
+import eu.slipo.workbench.common.model.tool.output.EnumFagiOutputPart;
+import eu.slipo.workbench.common.model.tool.output.EnumLimesOutputPart;
+import eu.slipo.workbench.common.model.tool.output.EnumTriplegeoOutputPart;
+import eu.slipo.workbench.common.service.util.JsonBasedPropertiesConverterService;
+import eu.slipo.workbench.common.service.util.PropertiesConverterService;
+import eu.slipo.workbench.common.service.util.PropertiesConverterService.ConversionFailedException;
+
+/**
+ * Shared fixtures for benchmarks: an object mapper (configured as in applications), realistic
+ * tool configurations (read from the vendor-supplied configuration profiles) and process
+ * definitions of a given number of steps.
+ */
+public class Fixtures
+{
+    private static final String PROFILES_ROOT = "common/vendor/%s/config/profiles/%s";
+
+    /**
+     * The number of steps of a block of a generated process definition
+     */
+    public static final int STEPS_PER_BLOCK = 5;
+
+    private Fixtures() {}
+
+    public static ObjectMapper objectMapper()
+    {
+        ObjectMapper objectMapper = new ObjectMapper();
+        objectMapper.registerModule(new JavaTimeModule());
+        objectMapper.registerModule(new JtsModule());
+        objectMapper.configure(SerializationFeature.FAIL_ON_EMPTY_BEANS, false);
+        objectMapper.configure(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS, false);
+        return objectMapper;
+    }
+
+    public static PropertiesConverterService propertiesConverter(ObjectMapper objectMapper)
+    {
+        return new JsonBasedPropertiesConverterService(objectMapper);
+    }
+
+    private static String profilePath(String toolName, String profileName)
+    {
+        return String.format(PROFILES_ROOT, toolName, profileName);
+    }
+
+    private static <T extends Serializable> T readProfile(
+        PropertiesConverterService propertiesConverter, String toolName, String profileName, Class<T> type)
+    {
+        ClassPathResource resource =
+            new ClassPathResource(profilePath(toolName, profileName) + "/config.properties");
+        Assert.state(resource.exists(), "The configuration profile is not available: " + resource);
+        try {
+            return propertiesConverter.propertiesToValue(resource, type);
+        } catch (ConversionFailedException | IOException ex) {
+            throw new IllegalStateException("Failed to read configuration profile: " + resource, ex);
+        }
+    }
+
+    public static TriplegeoConfiguration triplegeoConfiguration(PropertiesConverterService propertiesConverter)
+    {
+        final String profileName = "OSM_Europe";
+        TriplegeoConfiguration config =
+            readProfile(propertiesConverter, "triplegeo", profileName, TriplegeoConfiguration.class);
+        config.setInputFormat(EnumDataFormat.CSV); // left unspecified by the profile
+        config.setMappingSpec("classpath:" + profilePath("triplegeo", profileName) + "/mappings.yml");
+        config.setClassificationSpec("classpath:" + profilePath("triplegeo", profileName) + "/classification.csv");
+        return config;
+    }
+
+    public static LimesConfiguration limesConfiguration(PropertiesConverterService propertiesConverter)
+    {
+        return readProfile(propertiesConverter, "limes", "SLIPO_MatchByName", LimesConfiguration.class);
+    }
+
+    public static FagiConfiguration fagiConfiguration(PropertiesConverterService propertiesConverter)
+    {
+        final String profileName = "SLIPO_MatchByName";
+        FagiConfiguration config =
+            readProfile(propertiesConverter, "fagi", profileName, FagiConfiguration.class);
+        config.setRulesSpec("classpath:" + profilePath("fagi", profileName) + "/rules.xml");
+        return config;
+    }
+
+    /**
+     * Build a process definition of a given number of steps. The definition is made of blocks of
+     * {@link #STEPS_PER_BLOCK} steps: a pair of transformations (Triplegeo), the interlinking
+     * of the pair (Limes), the fusion of the pair (Fagi), and the registration of the fused output.
+     *
+     * @param factory The factory for definition builders
+     * @param numberOfSteps The number of steps (a multiple of {@link #STEPS_PER_BLOCK})
+     */
+    public static ProcessDefinition processDefinition(
+        ProcessDefinitionBuilderFactory factory, int numberOfSteps,
+        TriplegeoConfiguration triplegeoConfiguration,
+        LimesConfiguration limesConfiguration,
+        FagiConfiguration fagiConfiguration)
+    {
+        Assert.isTrue(numberOfSteps > 0 && numberOfSteps % STEPS_PER_BLOCK == 0,
+            "Expected the number of steps to be a multiple of " + STEPS_PER_BLOCK);
+
+        ProcessDefinitionBuilder builder = factory.create("benchmark-" + numberOfSteps);
+
+        for (int i = 0, n = numberOfSteps / STEPS_PER_BLOCK; i < n; ++i) {
+            final String leftKey = "transformed-" + i + "-a", rightKey = "transformed-" + i + "-b",
+                linksKey = "links-" + i, fusedKey = "fused-" + i;
+            final FileSystemDataSource leftSource = new FileSystemDataSource("uploads/" + i + "-a.csv"),
+                rightSource = new FileSystemDataSource("uploads/" + i + "-b.csv");
+            final int group = 3 * i;
+
+            builder
+                .transform("triplegeo-" + i + "-a", b -> b
+                    .group(group + 1)
+                    .source(leftSource)
+                    .configuration(triplegeoConfiguration)
+                    .outputKey(leftKey))
+                .transform("triplegeo-" + i + "-b", b -> b
+                    .group(group + 1)
+                    .source(rightSource)
+                    .configuration(triplegeoConfiguration)
+                    .outputKey(rightKey))
+                .interlink("limes-" + i, b -> b
+                    .group(group + 2)
+                    .left(leftKey, EnumTriplegeoOutputPart.TRANSFORMED)
+                    .right(rightKey, EnumTriplegeoOutputPart.TRANSFORMED)
+                    .configuration(limesConfiguration)
+                    .outputFormat(EnumDataFormat.N_TRIPLES)
+                    .outputKey(linksKey))
+                .fuse("fagi-" + i, b -> b
+                    .group(group + 3)
+                    .left(leftKey, EnumTriplegeoOutputPart.TRANSFORMED)
+                    .right(rightKey, EnumTriplegeoOutputPart.TRANSFORMED)
+                    .link(linksKey, EnumLimesOutputPart.ACCEPTED)
+                    .configuration(fagiConfiguration)
+                    .outputFormat(EnumDataFormat.N_TRIPLES)
+                    .outputKey(fusedKey))
+                .register("register-" + i, fusedKey, EnumFagiOutputPart.FUSED,
+                    new ResourceMetadataCreate("fused-" + i, "The fusion of pair #" + i));
+        }
+
+        return builder.build();
+    }
+}
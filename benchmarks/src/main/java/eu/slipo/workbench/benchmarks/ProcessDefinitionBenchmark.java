@@ -0,0 +1,93 @@
+package eu.slipo.workbench.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.util.Assert;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import eu.slipo.workbench.common.domain.attributeconverter.ProcessDefinitionConverter;
+import eu.slipo.workbench.common.model.process.ProcessDefinition;
+import eu.slipo.workbench.common.model.process.ProcessDefinitionBuilderFactory;
+import eu.slipo.workbench.common.model.tool.FagiConfiguration;
+import eu.slipo.workbench.common.model.tool.LimesConfiguration;
+import eu.slipo.workbench.common.model.tool.TriplegeoConfiguration;
+import eu.slipo.workbench.common.service.util.PropertiesConverterService;
+
+/**
+ * Benchmark the building of a process definition, and its conversion to/from the JSON
+ * representation stored in the database (see {@link ProcessDefinitionConverter}).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProcessDefinitionBenchmark
+{
+    @Param({ "10", "100", "1000" })
+    private int numberOfSteps;
+
+    private ProcessDefinitionBuilderFactory builderFactory;
+
+    private ProcessDefinitionConverter converter;
+
+    private TriplegeoConfiguration triplegeoConfiguration;
+
+    private LimesConfiguration limesConfiguration;
+
+    private FagiConfiguration fagiConfiguration;
+
+    private ProcessDefinition definition;
+
+    private String serializedDefinition;
+
+    @Setup
+    public void setup()
+    {
+        ObjectMapper objectMapper = Fixtures.objectMapper();
+        PropertiesConverterService propertiesConverter = Fixtures.propertiesConverter(objectMapper);
+
+        builderFactory = new ProcessDefinitionBuilderFactory(objectMapper);
+        converter = new ProcessDefinitionConverter();
+
+        triplegeoConfiguration = Fixtures.triplegeoConfiguration(propertiesConverter);
+        limesConfiguration = Fixtures.limesConfiguration(propertiesConverter);
+        fagiConfiguration = Fixtures.fagiConfiguration(propertiesConverter);
+
+        definition = build();
+        serializedDefinition = converter.convertToDatabaseColumn(definition);
+        Assert.state(serializedDefinition != null, "Failed to serialize the process definition");
+    }
+
+    @Benchmark
+    public ProcessDefinition build()
+    {
+        return Fixtures.processDefinition(builderFactory, numberOfSteps,
+            triplegeoConfiguration, limesConfiguration, fagiConfiguration);
+    }
+
+    @Benchmark
+    public String convertToDatabaseColumn()
+    {
+        return converter.convertToDatabaseColumn(definition);
+    }
+
+    @Benchmark
+    public ProcessDefinition convertToEntityAttribute()
+    {
+        return converter.convertToEntityAttribute(serializedDefinition);
+    }
+}
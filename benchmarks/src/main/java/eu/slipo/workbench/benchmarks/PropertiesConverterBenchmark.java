@@ -0,0 +1,64 @@
+package eu.slipo.workbench.benchmarks;
+
+import java.io.Serializable;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import eu.slipo.workbench.common.service.util.PropertiesConverterService;
+import eu.slipo.workbench.common.service.util.PropertiesConverterService.ConversionFailedException;
+
+/**
+ * Benchmark the conversion of tool configurations to/from properties (as performed when
+ * a configuration is read from a profile, or is handed to a container as a file).
+ * <p>
+ * Run with <tt>-prof gc</tt> to also report the allocation rate (per operation).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PropertiesConverterBenchmark
+{
+    @Param({ "triplegeo", "limes", "fagi" })
+    private String tool;
+
+    private PropertiesConverterService propertiesConverter;
+
+    private Serializable configuration;
+
+    private Properties properties;
+
+    @Setup
+    public void setup()
+    {
+        propertiesConverter = Fixtures.propertiesConverter(Fixtures.objectMapper());
+        configuration = ToolConfigurations.get(tool, propertiesConverter);
+        properties = propertiesConverter.valueToProperties(configuration);
+    }
+
+    @Benchmark
+    public Properties valueToProperties()
+    {
+        return propertiesConverter.valueToProperties(configuration);
+    }
+
+    @Benchmark
+    public Serializable propertiesToValue() throws ConversionFailedException
+    {
+        return propertiesConverter.propertiesToValue(properties, configuration.getClass());
+    }
+}
@@ -0,0 +1,27 @@
+package eu.slipo.workbench.benchmarks;
+
+import java.io.Serializable;
+
+import eu.slipo.workbench.common.service.util.PropertiesConverterService;
+
+/**
+ * The tool configurations used as benchmark parameters (see {@link Fixtures}).
+ */
+public class ToolConfigurations
+{
+    private ToolConfigurations() {}
+
+    public static Serializable get(String toolName, PropertiesConverterService propertiesConverter)
+    {
+        switch (toolName) {
+        case "triplegeo":
+            return Fixtures.triplegeoConfiguration(propertiesConverter);
+        case "limes":
+            return Fixtures.limesConfiguration(propertiesConverter);
+        case "fagi":
+            return Fixtures.fagiConfiguration(propertiesConverter);
+        default:
+            throw new IllegalArgumentException("Unknown tool: " + toolName);
+        }
+    }
+}
@@ -0,0 +1,2 @@
+ALTER TABLE public.process_execution_step
+   ADD COLUMN cached boolean NOT NULL DEFAULT false;
@@ -0,0 +1 @@
+COMMENT ON COLUMN process_execution.status IS 'the overall status; one of "QUEUED", "RUNNING", "STOPPED", "FAILED", "COMPLETED"';
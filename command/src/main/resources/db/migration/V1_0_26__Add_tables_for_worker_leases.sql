@@ -0,0 +1,37 @@
+CREATE TABLE public.process_execution_lease (
+  process_execution bigint NOT NULL,
+  submitted_on timestamp with time zone NOT NULL,
+  owner character varying(128),
+  expires_on timestamp with time zone,
+  reused_execution bigint,
+  stop_requested boolean NOT NULL DEFAULT false,
+  CONSTRAINT process_execution_lease_pkey PRIMARY KEY (process_execution),
+  CONSTRAINT process_execution_fkey FOREIGN KEY (process_execution)
+      REFERENCES public.process_execution (id) MATCH SIMPLE
+      ON UPDATE CASCADE ON DELETE CASCADE
+)
+WITH (
+  OIDS=FALSE
+);
+
+CREATE INDEX process_execution_lease_idx_owner ON public.process_execution_lease (owner);
+
+COMMENT ON COLUMN public.process_execution_lease.process_execution IS 'The id of the leased process execution.';
+COMMENT ON COLUMN public.process_execution_lease.owner IS 'The id of the worker (rpc-server node) holding the lease; NULL if the execution is pending.';
+COMMENT ON COLUMN public.process_execution_lease.expires_on IS 'The lease expires if not renewed (by a heartbeat of its owner) until this time.';
+COMMENT ON COLUMN public.process_execution_lease.reused_execution IS 'The id of the execution whose output is reused by unchanged steps (if any).';
+COMMENT ON COLUMN public.process_execution_lease.stop_requested IS 'A flag set by any worker to request that the owner stops the execution.';
+
+
+CREATE TABLE public.worker_lease (
+  name character varying(64) NOT NULL,
+  owner character varying(128) NOT NULL,
+  expires_on timestamp with time zone NOT NULL,
+  CONSTRAINT worker_lease_pkey PRIMARY KEY (name)
+)
+WITH (
+  OIDS=FALSE
+);
+
+COMMENT ON COLUMN public.worker_lease.name IS 'The name of a role held by a single worker, e.g. "coordinator".';
+COMMENT ON COLUMN public.worker_lease.owner IS 'The id of the worker (rpc-server node) holding the role.';
@@ -0,0 +1,53 @@
+ALTER TABLE public.process_execution_step
+   ADD COLUMN cpu_time bigint,
+   ADD COLUMN peak_memory bigint,
+   ADD COLUMN oom_killed boolean,
+   ADD COLUMN block_read_bytes bigint,
+   ADD COLUMN block_write_bytes bigint,
+   ADD COLUMN network_rx_bytes bigint,
+   ADD COLUMN network_tx_bytes bigint;
+
+COMMENT ON COLUMN public.process_execution_step.cpu_time IS 'The CPU time (milliseconds) consumed by the container(s) of the step; NULL if not sampled.';
+COMMENT ON COLUMN public.process_execution_step.peak_memory IS 'The peak memory usage (bytes) of a container of the step.';
+COMMENT ON COLUMN public.process_execution_step.oom_killed IS 'A flag indicating that a container of the step was killed for exceeding its memory limit.';
+COMMENT ON COLUMN public.process_execution_step.block_read_bytes IS 'The number of bytes read from block devices.';
+COMMENT ON COLUMN public.process_execution_step.block_write_bytes IS 'The number of bytes written to block devices.';
+COMMENT ON COLUMN public.process_execution_step.network_rx_bytes IS 'The number of bytes received from the network.';
+COMMENT ON COLUMN public.process_execution_step.network_tx_bytes IS 'The number of bytes transmitted to the network.';
+
+
+CREATE SEQUENCE public.process_execution_step_stats_id_seq
+  INCREMENT 1
+  MINVALUE 1
+  MAXVALUE 9223372036854775807
+  START 1
+  CACHE 1;
+
+CREATE TABLE public.process_execution_step_stats (
+  id bigint NOT NULL DEFAULT nextval('process_execution_step_stats_id_seq'::regclass),
+  process_execution_step bigint NOT NULL,
+  container_name character varying(128) NOT NULL,
+  sampled_on timestamp with time zone NOT NULL,
+  cpu_time bigint NOT NULL,
+  memory bigint NOT NULL,
+  block_read_bytes bigint NOT NULL,
+  block_write_bytes bigint NOT NULL,
+  network_rx_bytes bigint NOT NULL,
+  network_tx_bytes bigint NOT NULL,
+  CONSTRAINT process_execution_step_stats_pkey PRIMARY KEY (id),
+  CONSTRAINT process_execution_step_fkey FOREIGN KEY (process_execution_step)
+      REFERENCES public.process_execution_step (id) MATCH SIMPLE
+      ON UPDATE CASCADE ON DELETE CASCADE
+)
+WITH (
+  OIDS=FALSE
+);
+
+CREATE INDEX process_execution_step_stats_idx_step ON public.process_execution_step_stats (process_execution_step, sampled_on);
+
+COMMENT ON COLUMN public.process_execution_step_stats.process_execution_step IS 'The id of the parent processing step.';
+COMMENT ON COLUMN public.process_execution_step_stats.container_name IS 'The name of the sampled container (a step may run several containers, e.g. one per partition).';
+COMMENT ON COLUMN public.process_execution_step_stats.cpu_time IS 'The (cumulative) CPU time (milliseconds) consumed by the container until this sample.';
+COMMENT ON COLUMN public.process_execution_step_stats.memory IS 'The memory usage (bytes) of the container at this sample.';
+COMMENT ON COLUMN public.process_execution_step_stats.block_read_bytes IS 'The (cumulative) number of bytes read from block devices until this sample.';
+COMMENT ON COLUMN public.process_execution_step_stats.block_write_bytes IS 'The (cumulative) number of bytes written to block devices until this sample.';
@@ -8,6 +8,7 @@ import org.springframework.context.annotation.Primary;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import eu.slipo.workbench.common.service.util.ClonerService;
+import eu.slipo.workbench.common.service.util.FieldBasedClonerService;
 import eu.slipo.workbench.common.service.util.JsonBasedClonerService;
 
 @Configuration
@@ -16,10 +17,16 @@ public class ClonerServiceConfiguration
     @Autowired
     private ObjectMapper objectMapper;
     
+    @Bean
+    public ClonerService jsonBasedClonerService()
+    {
+        return new JsonBasedClonerService(objectMapper);
+    }
+    
     @Primary
-    @Bean({ "clonerService", "jsonBasedClonerService" })
+    @Bean({ "clonerService", "fieldBasedClonerService" })
     public ClonerService clonerService()
     {
-        return new JsonBasedClonerService(objectMapper);
+        return new FieldBasedClonerService(jsonBasedClonerService());
     }
 }
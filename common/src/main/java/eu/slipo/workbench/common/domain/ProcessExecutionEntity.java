@@ -231,6 +231,7 @@ public class ProcessExecutionEntity
         boolean check = true;
         switch (status) {
         case UNKNOWN:
+        case QUEUED:
             check = startedOn == null && completedOn == null;
             break;
         case RUNNING:
@@ -30,6 +30,7 @@ import eu.slipo.workbench.common.model.poi.EnumOperation;
 import eu.slipo.workbench.common.model.poi.EnumTool;
 import eu.slipo.workbench.common.model.process.EnumProcessExecutionStatus;
 import eu.slipo.workbench.common.model.process.ProcessExecutionStepRecord;
+import eu.slipo.workbench.common.model.process.ProcessExecutionStepStatsRecord;
 
 
 @Entity(name = "ProcessExecutionStep")
@@ -72,7 +73,7 @@ public class ProcessExecutionStepEntity
     
     @Min(1)
     @NotNull
-    @Column(name = "job_execution", nullable = false, updatable = false)
+    @Column(name = "job_execution", nullable = false)
     long jobExecutionId = -1L;
 
     @NotNull
@@ -86,7 +87,7 @@ public class ProcessExecutionStepEntity
     EnumOperation operation;
 
     @NotNull
-    @Column(name = "started_on", nullable = false, updatable = false)
+    @Column(name = "started_on", nullable = false)
     ZonedDateTime startedOn;
 
     @Column(name = "completed_on")
@@ -100,6 +101,30 @@ public class ProcessExecutionStepEntity
     @Column(name = "error_message", length = 2048)
     private String errorMessage;
 
+    @Column(name = "cached", nullable = false)
+    private boolean cached = false;
+
+    @Column(name = "cpu_time")
+    private Long cpuTime;
+
+    @Column(name = "peak_memory")
+    private Long peakMemory;
+
+    @Column(name = "oom_killed")
+    private Boolean oomKilled;
+
+    @Column(name = "block_read_bytes")
+    private Long blockReadBytes;
+
+    @Column(name = "block_write_bytes")
+    private Long blockWriteBytes;
+
+    @Column(name = "network_rx_bytes")
+    private Long networkRxBytes;
+
+    @Column(name = "network_tx_bytes")
+    private Long networkTxBytes;
+
     @OneToMany(mappedBy = "step", fetch = FetchType.LAZY, cascade = CascadeType.ALL, orphanRemoval = true)
     List<ProcessExecutionStepFileEntity> files = new ArrayList<>();
 
@@ -247,6 +272,48 @@ public class ProcessExecutionStepEntity
         this.errorMessage = errorMessage;
     }
 
+    public boolean isCached()
+    {
+        return cached;
+    }
+
+    public void setCached(boolean cached)
+    {
+        this.cached = cached;
+    }
+
+    public ProcessExecutionStepStatsRecord getStats()
+    {
+        if (cpuTime == null)
+            return null;
+
+        ProcessExecutionStepStatsRecord stats = new ProcessExecutionStepStatsRecord();
+        stats.setCpuTime(cpuTime);
+        stats.setPeakMemory(peakMemory == null? 0L : peakMemory);
+        stats.setOomKilled(oomKilled == null? false : oomKilled);
+        stats.setBlockReadBytes(blockReadBytes == null? 0L : blockReadBytes);
+        stats.setBlockWriteBytes(blockWriteBytes == null? 0L : blockWriteBytes);
+        stats.setNetworkRxBytes(networkRxBytes == null? 0L : networkRxBytes);
+        stats.setNetworkTxBytes(networkTxBytes == null? 0L : networkTxBytes);
+        return stats;
+    }
+
+    public void setStats(ProcessExecutionStepStatsRecord stats)
+    {
+        if (stats == null) {
+            cpuTime = peakMemory = blockReadBytes = blockWriteBytes = networkRxBytes = networkTxBytes = null;
+            oomKilled = null;
+        } else {
+            cpuTime = stats.getCpuTime();
+            peakMemory = stats.getPeakMemory();
+            oomKilled = stats.isOomKilled();
+            blockReadBytes = stats.getBlockReadBytes();
+            blockWriteBytes = stats.getBlockWriteBytes();
+            networkRxBytes = stats.getNetworkRxBytes();
+            networkTxBytes = stats.getNetworkTxBytes();
+        }
+    }
+
     public List<ProcessExecutionStepFileEntity> getFiles() 
     {
         return files;
@@ -276,6 +343,8 @@ public class ProcessExecutionStepEntity
         stepRecord.setCompletedOn(completedOn);
         stepRecord.setErrorMessage(errorMessage);
         stepRecord.setStatus(status);
+        stepRecord.setCached(cached);
+        stepRecord.setStats(getStats());
 
         for (ProcessExecutionStepFileEntity f: files) {
             if (includeNonVerifiedFiles || f.isVerified())
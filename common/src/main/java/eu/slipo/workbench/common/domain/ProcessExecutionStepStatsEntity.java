@@ -0,0 +1,109 @@
+package eu.slipo.workbench.common.domain;
+
+import java.time.ZonedDateTime;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.FetchType;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.JoinColumn;
+import javax.persistence.ManyToOne;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.Table;
+import javax.validation.constraints.NotNull;
+
+import eu.slipo.workbench.common.model.process.ProcessExecutionStepStatsSampleRecord;
+
+
+@Entity(name = "ProcessExecutionStepStats")
+@Table(schema = "public", name = "process_execution_step_stats")
+public class ProcessExecutionStepStatsEntity
+{
+    @Id
+    @Column(name = "id", updatable = false)
+    @SequenceGenerator(
+        sequenceName = "process_execution_step_stats_id_seq", name = "process_execution_step_stats_id_seq", initialValue = 1, allocationSize = 1)
+    @GeneratedValue(generator = "process_execution_step_stats_id_seq", strategy = GenerationType.SEQUENCE)
+    long id = -1L;
+
+    @NotNull
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "process_execution_step", nullable = false, updatable = false)
+    ProcessExecutionStepEntity step;
+
+    @NotNull
+    @Column(name = "container_name", nullable = false, updatable = false)
+    String containerName;
+
+    @NotNull
+    @Column(name = "sampled_on", nullable = false, updatable = false)
+    ZonedDateTime sampledOn;
+
+    @Column(name = "cpu_time", nullable = false, updatable = false)
+    long cpuTime;
+
+    @Column(name = "memory", nullable = false, updatable = false)
+    long memory;
+
+    @Column(name = "block_read_bytes", nullable = false, updatable = false)
+    long blockReadBytes;
+
+    @Column(name = "block_write_bytes", nullable = false, updatable = false)
+    long blockWriteBytes;
+
+    @Column(name = "network_rx_bytes", nullable = false, updatable = false)
+    long networkRxBytes;
+
+    @Column(name = "network_tx_bytes", nullable = false, updatable = false)
+    long networkTxBytes;
+
+    protected ProcessExecutionStepStatsEntity() {}
+
+    public ProcessExecutionStepStatsEntity(ProcessExecutionStepEntity step, ProcessExecutionStepStatsSampleRecord record)
+    {
+        this.step = step;
+        this.containerName = record.getContainerName();
+        this.sampledOn = record.getSampledOn();
+        this.cpuTime = record.getCpuTime();
+        this.memory = record.getMemory();
+        this.blockReadBytes = record.getBlockReadBytes();
+        this.blockWriteBytes = record.getBlockWriteBytes();
+        this.networkRxBytes = record.getNetworkRxBytes();
+        this.networkTxBytes = record.getNetworkTxBytes();
+    }
+
+    public long getId()
+    {
+        return id;
+    }
+
+    public ProcessExecutionStepEntity getStep()
+    {
+        return step;
+    }
+
+    public String getContainerName()
+    {
+        return containerName;
+    }
+
+    public ZonedDateTime getSampledOn()
+    {
+        return sampledOn;
+    }
+
+    public ProcessExecutionStepStatsSampleRecord toProcessExecutionStepStatsSampleRecord()
+    {
+        ProcessExecutionStepStatsSampleRecord record =
+            new ProcessExecutionStepStatsSampleRecord(containerName, sampledOn);
+        record.setCpuTime(cpuTime);
+        record.setMemory(memory);
+        record.setBlockReadBytes(blockReadBytes);
+        record.setBlockWriteBytes(blockWriteBytes);
+        record.setNetworkRxBytes(networkRxBytes);
+        record.setNetworkTxBytes(networkTxBytes);
+        return record;
+    }
+}
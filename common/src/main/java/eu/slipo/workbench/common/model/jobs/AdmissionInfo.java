@@ -0,0 +1,165 @@
+package eu.slipo.workbench.common.model.jobs;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * A DTO bean reporting the state of the admission scheduler (i.e. the component that admits
+ * containers to run under a budget of host resources).
+ */
+public class AdmissionInfo
+{
+    /**
+     * The ordering policy for waiting requests (<tt>FIFO</tt> or <tt>PRIORITY</tt>)
+     */
+    private String policy;
+
+    /**
+     * The memory budget (in bytes)
+     */
+    private long memoryBudget;
+
+    /**
+     * The CPU budget (in number of CPUs)
+     */
+    private double cpuBudget;
+
+    /**
+     * The amount of memory (in bytes) held by admitted requests
+     */
+    private long memoryInUse;
+
+    /**
+     * The number of CPUs held by admitted requests
+     */
+    private double cpusInUse;
+
+    /**
+     * The number of currently admitted (i.e. running) requests
+     */
+    private int running;
+
+    /**
+     * The number of currently queued (i.e. waiting) requests
+     */
+    private int queued;
+
+    /**
+     * The total number of requests admitted so far
+     */
+    private long admittedCount;
+
+    /**
+     * The total number of requests rejected so far (as they could never fit into the budget)
+     */
+    private long rejectedCount;
+
+    public AdmissionInfo() {}
+
+    @JsonProperty("policy")
+    public String getPolicy()
+    {
+        return policy;
+    }
+
+    @JsonProperty("policy")
+    public void setPolicy(String policy)
+    {
+        this.policy = policy;
+    }
+
+    @JsonProperty("memoryBudget")
+    public long getMemoryBudget()
+    {
+        return memoryBudget;
+    }
+
+    @JsonProperty("memoryBudget")
+    public void setMemoryBudget(long memoryBudget)
+    {
+        this.memoryBudget = memoryBudget;
+    }
+
+    @JsonProperty("cpuBudget")
+    public double getCpuBudget()
+    {
+        return cpuBudget;
+    }
+
+    @JsonProperty("cpuBudget")
+    public void setCpuBudget(double cpuBudget)
+    {
+        this.cpuBudget = cpuBudget;
+    }
+
+    @JsonProperty("memoryInUse")
+    public long getMemoryInUse()
+    {
+        return memoryInUse;
+    }
+
+    @JsonProperty("memoryInUse")
+    public void setMemoryInUse(long memoryInUse)
+    {
+        this.memoryInUse = memoryInUse;
+    }
+
+    @JsonProperty("cpusInUse")
+    public double getCpusInUse()
+    {
+        return cpusInUse;
+    }
+
+    @JsonProperty("cpusInUse")
+    public void setCpusInUse(double cpusInUse)
+    {
+        this.cpusInUse = cpusInUse;
+    }
+
+    @JsonProperty("running")
+    public int getRunning()
+    {
+        return running;
+    }
+
+    @JsonProperty("running")
+    public void setRunning(int running)
+    {
+        this.running = running;
+    }
+
+    @JsonProperty("queued")
+    public int getQueued()
+    {
+        return queued;
+    }
+
+    @JsonProperty("queued")
+    public void setQueued(int queued)
+    {
+        this.queued = queued;
+    }
+
+    @JsonProperty("admittedCount")
+    public long getAdmittedCount()
+    {
+        return admittedCount;
+    }
+
+    @JsonProperty("admittedCount")
+    public void setAdmittedCount(long admittedCount)
+    {
+        this.admittedCount = admittedCount;
+    }
+
+    @JsonProperty("rejectedCount")
+    public long getRejectedCount()
+    {
+        return rejectedCount;
+    }
+
+    @JsonProperty("rejectedCount")
+    public void setRejectedCount(long rejectedCount)
+    {
+        this.rejectedCount = rejectedCount;
+    }
+}
@@ -0,0 +1,119 @@
+package eu.slipo.workbench.common.model.jobs;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * A DTO bean containing a range of the output (i.e. the logs) generated from a job step.
+ */
+public class JobStepOutputInfo
+{
+    /**
+     * The job execution id.
+     */
+    private Long executionId;
+
+    /**
+     * The name of the step
+     */
+    private String stepName;
+
+    /**
+     * The offset (in bytes) of this range of output
+     */
+    private long offset;
+
+    /**
+     * The length (in bytes) of this range of output
+     */
+    private int length;
+
+    /**
+     * The total size (in bytes) of the output available so far
+     */
+    private long size;
+
+    /**
+     * The (text) content of this range of output
+     */
+    private String content;
+
+    public JobStepOutputInfo() {}
+
+    public JobStepOutputInfo(long executionId, String stepName)
+    {
+        this.executionId = executionId;
+        this.stepName = stepName;
+    }
+
+    @JsonProperty("executionId")
+    public Long getExecutionId()
+    {
+        return executionId;
+    }
+
+    @JsonProperty("executionId")
+    public void setExecutionId(long xid)
+    {
+        this.executionId = xid;
+    }
+
+    @JsonProperty("stepName")
+    public String getStepName()
+    {
+        return stepName;
+    }
+
+    @JsonProperty("stepName")
+    public void setStepName(String stepName)
+    {
+        this.stepName = stepName;
+    }
+
+    @JsonProperty("offset")
+    public long getOffset()
+    {
+        return offset;
+    }
+
+    @JsonProperty("offset")
+    public void setOffset(long offset)
+    {
+        this.offset = offset;
+    }
+
+    @JsonProperty("length")
+    public int getLength()
+    {
+        return length;
+    }
+
+    @JsonProperty("length")
+    public void setLength(int length)
+    {
+        this.length = length;
+    }
+
+    @JsonProperty("size")
+    public long getSize()
+    {
+        return size;
+    }
+
+    @JsonProperty("size")
+    public void setSize(long size)
+    {
+        this.size = size;
+    }
+
+    @JsonProperty("content")
+    public String getContent()
+    {
+        return content;
+    }
+
+    @JsonProperty("content")
+    public void setContent(String content)
+    {
+        this.content = content;
+    }
+}
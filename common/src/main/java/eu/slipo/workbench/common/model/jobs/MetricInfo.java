@@ -0,0 +1,164 @@
+package eu.slipo.workbench.common.model.jobs;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * A DTO bean reporting the current value of a metric (i.e. of a named series of measurements,
+ * identified by a set of labels) on the execution engine.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class MetricInfo
+{
+    public enum Type
+    {
+        /**
+         * A monotonically increasing count of events
+         */
+        COUNTER,
+
+        /**
+         * A value that can go up and down (e.g. the size of a queue)
+         */
+        GAUGE,
+
+        /**
+         * A distribution of durations (in seconds), reported as cumulative counts of buckets
+         */
+        HISTOGRAM;
+    }
+
+    private String name;
+
+    private Type type;
+
+    private String help;
+
+    private Map<String, String> labels = Collections.emptyMap();
+
+    /**
+     * The value of a counter or gauge
+     */
+    private Double value;
+
+    /**
+     * The number of observations of a histogram
+     */
+    private Long count;
+
+    /**
+     * The sum (in seconds) of observations of a histogram
+     */
+    private Double sum;
+
+    /**
+     * The maximum (in seconds) of observations of a histogram
+     */
+    private Double max;
+
+    /**
+     * The cumulative counts of observations of a histogram, keyed by the (inclusive) upper bound
+     * of a bucket
+     */
+    private Map<String, Long> buckets;
+
+    public MetricInfo() {}
+
+    public MetricInfo(String name, Type type, String help, Map<String, String> labels)
+    {
+        this.name = name;
+        this.type = type;
+        this.help = help;
+        this.labels = Collections.unmodifiableMap(new LinkedHashMap<>(labels));
+    }
+
+    @JsonProperty("name")
+    public String getName()
+    {
+        return name;
+    }
+
+    @JsonProperty("type")
+    public Type getType()
+    {
+        return type;
+    }
+
+    @JsonProperty("help")
+    public String getHelp()
+    {
+        return help;
+    }
+
+    @JsonProperty("labels")
+    public Map<String, String> getLabels()
+    {
+        return labels;
+    }
+
+    @JsonProperty("value")
+    public Double getValue()
+    {
+        return value;
+    }
+
+    public void setValue(Double value)
+    {
+        this.value = value;
+    }
+
+    @JsonProperty("count")
+    public Long getCount()
+    {
+        return count;
+    }
+
+    public void setCount(Long count)
+    {
+        this.count = count;
+    }
+
+    @JsonProperty("sum")
+    public Double getSum()
+    {
+        return sum;
+    }
+
+    public void setSum(Double sum)
+    {
+        this.sum = sum;
+    }
+
+    @JsonProperty("max")
+    public Double getMax()
+    {
+        return max;
+    }
+
+    public void setMax(Double max)
+    {
+        this.max = max;
+    }
+
+    @JsonProperty("buckets")
+    public Map<String, Long> getBuckets()
+    {
+        return buckets;
+    }
+
+    public void setBuckets(Map<String, Long> buckets)
+    {
+        this.buckets = buckets;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("MetricInfo [name=%s, type=%s, labels=%s, value=%s, count=%s, sum=%s]",
+            name, type, labels, value, count, sum);
+    }
+}
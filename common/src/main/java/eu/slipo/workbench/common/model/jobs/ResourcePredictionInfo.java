@@ -0,0 +1,236 @@
+package eu.slipo.workbench.common.model.jobs;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import eu.slipo.workbench.common.model.poi.EnumTool;
+
+/**
+ * A DTO bean reporting the learned resource models of a tool, along with the predicted against
+ * the actual resources of recent execution steps.
+ */
+public class ResourcePredictionInfo
+{
+    /**
+     * A model of a quantity (runtime or memory) as a power of input size, i.e. of the form
+     * <tt>y = coefficient * x^exponent</tt> (fitted on a log-log scale).
+     */
+    public static class ModelInfo
+    {
+        /**
+         * The number of observations the model is fitted on
+         */
+        private int samples;
+
+        private double coefficient;
+
+        private double exponent;
+
+        /**
+         * The standard deviation of (log-scale) residuals
+         */
+        private double sigma;
+
+        public ModelInfo() {}
+
+        public ModelInfo(int samples, double coefficient, double exponent, double sigma)
+        {
+            this.samples = samples;
+            this.coefficient = coefficient;
+            this.exponent = exponent;
+            this.sigma = sigma;
+        }
+
+        @JsonProperty("samples")
+        public int getSamples()
+        {
+            return samples;
+        }
+
+        @JsonProperty("coefficient")
+        public double getCoefficient()
+        {
+            return coefficient;
+        }
+
+        @JsonProperty("exponent")
+        public double getExponent()
+        {
+            return exponent;
+        }
+
+        @JsonProperty("sigma")
+        public double getSigma()
+        {
+            return sigma;
+        }
+    }
+
+    /**
+     * An execution step, along with the resources predicted for it
+     */
+    public static class ObservationInfo
+    {
+        private long stepId;
+
+        private long inputSize;
+
+        private long runtime;
+
+        private long predictedRuntime = -1L;
+
+        private long memory = -1L;
+
+        private long predictedMemory = -1L;
+
+        public ObservationInfo() {}
+
+        public ObservationInfo(long stepId, long inputSize, long runtime, long memory)
+        {
+            this.stepId = stepId;
+            this.inputSize = inputSize;
+            this.runtime = runtime;
+            this.memory = memory;
+        }
+
+        @JsonProperty("stepId")
+        public long getStepId()
+        {
+            return stepId;
+        }
+
+        @JsonProperty("inputSize")
+        public long getInputSize()
+        {
+            return inputSize;
+        }
+
+        @JsonProperty("runtime")
+        public long getRuntime()
+        {
+            return runtime;
+        }
+
+        @JsonProperty("predictedRuntime")
+        public long getPredictedRuntime()
+        {
+            return predictedRuntime;
+        }
+
+        public void setPredictedRuntime(long predictedRuntime)
+        {
+            this.predictedRuntime = predictedRuntime;
+        }
+
+        @JsonProperty("memory")
+        public long getMemory()
+        {
+            return memory;
+        }
+
+        @JsonProperty("predictedMemory")
+        public long getPredictedMemory()
+        {
+            return predictedMemory;
+        }
+
+        public void setPredictedMemory(long predictedMemory)
+        {
+            this.predictedMemory = predictedMemory;
+        }
+    }
+
+    private EnumTool tool;
+
+    /**
+     * The model for runtime (milliseconds), or <tt>null</tt> if not enough history exists
+     */
+    private ModelInfo runtimeModel;
+
+    /**
+     * The model for peak memory (bytes), or <tt>null</tt> if not enough history exists
+     */
+    private ModelInfo memoryModel;
+
+    /**
+     * The fraction of recent steps whose runtime exceeded the predicted one
+     */
+    private Double runtimeMissRate;
+
+    /**
+     * The fraction of recent steps whose peak memory exceeded the predicted one
+     */
+    private Double memoryMissRate;
+
+    private List<ObservationInfo> observations = new ArrayList<>();
+
+    public ResourcePredictionInfo() {}
+
+    public ResourcePredictionInfo(EnumTool tool)
+    {
+        this.tool = tool;
+    }
+
+    @JsonProperty("tool")
+    public EnumTool getTool()
+    {
+        return tool;
+    }
+
+    @JsonProperty("runtimeModel")
+    public ModelInfo getRuntimeModel()
+    {
+        return runtimeModel;
+    }
+
+    public void setRuntimeModel(ModelInfo runtimeModel)
+    {
+        this.runtimeModel = runtimeModel;
+    }
+
+    @JsonProperty("memoryModel")
+    public ModelInfo getMemoryModel()
+    {
+        return memoryModel;
+    }
+
+    public void setMemoryModel(ModelInfo memoryModel)
+    {
+        this.memoryModel = memoryModel;
+    }
+
+    @JsonProperty("runtimeMissRate")
+    public Double getRuntimeMissRate()
+    {
+        return runtimeMissRate;
+    }
+
+    public void setRuntimeMissRate(Double runtimeMissRate)
+    {
+        this.runtimeMissRate = runtimeMissRate;
+    }
+
+    @JsonProperty("memoryMissRate")
+    public Double getMemoryMissRate()
+    {
+        return memoryMissRate;
+    }
+
+    public void setMemoryMissRate(Double memoryMissRate)
+    {
+        this.memoryMissRate = memoryMissRate;
+    }
+
+    @JsonProperty("observations")
+    public List<ObservationInfo> getObservations()
+    {
+        return observations;
+    }
+
+    public void addObservation(ObservationInfo observation)
+    {
+        this.observations.add(observation);
+    }
+}
@@ -0,0 +1,113 @@
+package eu.slipo.workbench.common.model.jobs;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * A DTO bean reporting the state of a pool of warm (i.e. pre-started) containers for a tool image.
+ */
+public class WarmPoolInfo
+{
+    /**
+     * The image of pooled containers
+     */
+    private String image;
+
+    /**
+     * The target number of idle (warm) containers
+     */
+    private int size;
+
+    /**
+     * The number of currently idle (warm) containers
+     */
+    private int idle;
+
+    /**
+     * The total number of steps served by a warm container
+     */
+    private long hits;
+
+    /**
+     * The total number of steps that found no warm container (and created their own)
+     */
+    private long misses;
+
+    /**
+     * The (estimated) total time (in milliseconds) saved by steps served by a warm container
+     */
+    private long savedMillis;
+
+    public WarmPoolInfo() {}
+
+    @JsonProperty("image")
+    public String getImage()
+    {
+        return image;
+    }
+
+    @JsonProperty("image")
+    public void setImage(String image)
+    {
+        this.image = image;
+    }
+
+    @JsonProperty("size")
+    public int getSize()
+    {
+        return size;
+    }
+
+    @JsonProperty("size")
+    public void setSize(int size)
+    {
+        this.size = size;
+    }
+
+    @JsonProperty("idle")
+    public int getIdle()
+    {
+        return idle;
+    }
+
+    @JsonProperty("idle")
+    public void setIdle(int idle)
+    {
+        this.idle = idle;
+    }
+
+    @JsonProperty("hits")
+    public long getHits()
+    {
+        return hits;
+    }
+
+    @JsonProperty("hits")
+    public void setHits(long hits)
+    {
+        this.hits = hits;
+    }
+
+    @JsonProperty("misses")
+    public long getMisses()
+    {
+        return misses;
+    }
+
+    @JsonProperty("misses")
+    public void setMisses(long misses)
+    {
+        this.misses = misses;
+    }
+
+    @JsonProperty("savedMillis")
+    public long getSavedMillis()
+    {
+        return savedMillis;
+    }
+
+    @JsonProperty("savedMillis")
+    public void setSavedMillis(long savedMillis)
+    {
+        this.savedMillis = savedMillis;
+    }
+}
@@ -16,6 +16,7 @@ public enum EnumProcessExecutionStatus
     FAILED,
     RUNNING,
     STOPPED,
+    QUEUED,
     ;
 
     public static EnumProcessExecutionStatus fromString(String value)
@@ -33,6 +34,11 @@ public enum EnumProcessExecutionStatus
         return this == EnumProcessExecutionStatus.RUNNING;
     }
     
+    public boolean isQueued()
+    {
+        return this == EnumProcessExecutionStatus.QUEUED;
+    }
+
     public boolean isFinished()
     {
         return this == EnumProcessExecutionStatus.COMPLETED || 
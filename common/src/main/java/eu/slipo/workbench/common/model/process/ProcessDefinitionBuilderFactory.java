@@ -5,7 +5,7 @@ import org.springframework.util.Assert;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import eu.slipo.workbench.common.service.util.ClonerService;
-import eu.slipo.workbench.common.service.util.JsonBasedClonerService;
+import eu.slipo.workbench.common.service.util.FieldBasedClonerService;
 
 public class ProcessDefinitionBuilderFactory
 {
@@ -15,7 +15,7 @@ public class ProcessDefinitionBuilderFactory
     
     public ProcessDefinitionBuilderFactory(ObjectMapper objectMapper)
     {
-        this(objectMapper, new JsonBasedClonerService(objectMapper));
+        this(objectMapper, new FieldBasedClonerService(objectMapper));
     }
     
     public ProcessDefinitionBuilderFactory(ObjectMapper objectMapper, ClonerService cloner)
@@ -46,6 +46,12 @@ public class ProcessExecutionRecord implements Serializable
     @JsonIgnore
     private boolean isRunning;
 
+    /**
+     * The (1-based) position of a QUEUED execution in the execution queue. This is not
+     * persisted: it is only reported while polling an execution.
+     */
+    private Integer queuePosition;
+
     private List<ProcessExecutionStepRecord> steps;
 
     private List<ProcessExecutionTableRecord> tables;
@@ -88,6 +94,7 @@ public class ProcessExecutionRecord implements Serializable
         this.status = record.status;
         this.taskType = record.getTaskType();
         this.errorMessage = record.errorMessage;
+        this.queuePosition = record.queuePosition;
         this.steps = copyDeep ?
             (record.steps.stream()
                 .map(s -> new ProcessExecutionStepRecord(s, true))
@@ -198,6 +205,15 @@ public class ProcessExecutionRecord implements Serializable
         this.isRunning = isRunning;
     }
 
+    @JsonProperty
+    public Integer getQueuePosition() {
+        return queuePosition;
+    }
+
+    public void setQueuePosition(Integer queuePosition) {
+        this.queuePosition = queuePosition;
+    }
+
     public long getId() {
         return id;
     }
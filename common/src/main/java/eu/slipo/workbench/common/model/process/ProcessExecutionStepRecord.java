@@ -38,6 +38,10 @@ public class ProcessExecutionStepRecord implements Serializable
 
     private String errorMessage;
 
+    private boolean cached;
+
+    private ProcessExecutionStepStatsRecord stats;
+
     private List<ProcessExecutionStepFileRecord> files;
 
     protected ProcessExecutionStepRecord() {}
@@ -72,6 +76,8 @@ public class ProcessExecutionStepRecord implements Serializable
         this.startedOn = record.startedOn;
         this.completedOn = record.completedOn;
         this.errorMessage = record.errorMessage;
+        this.cached = record.cached;
+        this.stats = record.stats == null? null : new ProcessExecutionStepStatsRecord(record.stats);
         this.files = copyFileRecords?
             (record.files.stream()
                 .map(ProcessExecutionStepFileRecord::new)
@@ -167,6 +173,34 @@ public class ProcessExecutionStepRecord implements Serializable
         this.errorMessage = errorMessage;
     }
 
+    /**
+     * Check if the result of this step was reused from a previous (identical) execution, instead
+     * of being actually computed.
+     */
+    public boolean isCached()
+    {
+        return cached;
+    }
+
+    public void setCached(boolean cached)
+    {
+        this.cached = cached;
+    }
+
+    /**
+     * Get the resources consumed by the container(s) of this step, or <tt>null</tt> if these
+     * were not sampled (e.g. the step is cached, or not run inside a container).
+     */
+    public ProcessExecutionStepStatsRecord getStats()
+    {
+        return stats;
+    }
+
+    public void setStats(ProcessExecutionStepStatsRecord stats)
+    {
+        this.stats = stats;
+    }
+
     public int numberOfFiles()
     {
         return this.files.size();
@@ -212,8 +246,8 @@ public class ProcessExecutionStepRecord implements Serializable
         return String.format(
             "ProcessExecutionStepRecord " +
                 "[id=%s, key=%s, name=%s, jobExecutionId=%s, status=%s," +
-                " tool=%s, operation=%s, startedOn=%s, completedOn=%s, errorMessage=%s, files=%s]",
+                " tool=%s, operation=%s, startedOn=%s, completedOn=%s, errorMessage=%s, cached=%s, stats=%s, files=%s]",
             id, key, name, jobExecutionId, status, tool, operation, startedOn, completedOn,
-            errorMessage, files);
+            errorMessage, cached, stats, files);
     }
 }
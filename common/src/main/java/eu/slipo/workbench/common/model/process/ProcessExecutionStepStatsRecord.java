@@ -0,0 +1,142 @@
+package eu.slipo.workbench.common.model.process;
+
+import java.io.Serializable;
+
+/**
+ * A summary of the resources consumed by the container(s) of a processing step. If a step runs
+ * several containers (e.g. one per partition), the summary aggregates all of them.
+ */
+public class ProcessExecutionStepStatsRecord implements Serializable
+{
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The CPU time (milliseconds)
+     */
+    private long cpuTime;
+
+    /**
+     * The peak memory usage (bytes) of a container
+     */
+    private long peakMemory;
+
+    /**
+     * A flag indicating that a container was killed for exceeding its memory limit
+     */
+    private boolean oomKilled;
+
+    private long blockReadBytes;
+
+    private long blockWriteBytes;
+
+    private long networkRxBytes;
+
+    private long networkTxBytes;
+
+    public ProcessExecutionStepStatsRecord() {}
+
+    public ProcessExecutionStepStatsRecord(ProcessExecutionStepStatsRecord record)
+    {
+        this.cpuTime = record.cpuTime;
+        this.peakMemory = record.peakMemory;
+        this.oomKilled = record.oomKilled;
+        this.blockReadBytes = record.blockReadBytes;
+        this.blockWriteBytes = record.blockWriteBytes;
+        this.networkRxBytes = record.networkRxBytes;
+        this.networkTxBytes = record.networkTxBytes;
+    }
+
+    /**
+     * Merge the summary of another container (of the same step) into this summary: CPU time and
+     * I/O are added, peak memory is the maximum of both.
+     */
+    public void merge(ProcessExecutionStepStatsRecord other)
+    {
+        this.cpuTime += other.cpuTime;
+        this.peakMemory = Math.max(this.peakMemory, other.peakMemory);
+        this.oomKilled |= other.oomKilled;
+        this.blockReadBytes += other.blockReadBytes;
+        this.blockWriteBytes += other.blockWriteBytes;
+        this.networkRxBytes += other.networkRxBytes;
+        this.networkTxBytes += other.networkTxBytes;
+    }
+
+    public long getCpuTime()
+    {
+        return cpuTime;
+    }
+
+    public void setCpuTime(long cpuTime)
+    {
+        this.cpuTime = cpuTime;
+    }
+
+    public long getPeakMemory()
+    {
+        return peakMemory;
+    }
+
+    public void setPeakMemory(long peakMemory)
+    {
+        this.peakMemory = peakMemory;
+    }
+
+    public boolean isOomKilled()
+    {
+        return oomKilled;
+    }
+
+    public void setOomKilled(boolean oomKilled)
+    {
+        this.oomKilled = oomKilled;
+    }
+
+    public long getBlockReadBytes()
+    {
+        return blockReadBytes;
+    }
+
+    public void setBlockReadBytes(long blockReadBytes)
+    {
+        this.blockReadBytes = blockReadBytes;
+    }
+
+    public long getBlockWriteBytes()
+    {
+        return blockWriteBytes;
+    }
+
+    public void setBlockWriteBytes(long blockWriteBytes)
+    {
+        this.blockWriteBytes = blockWriteBytes;
+    }
+
+    public long getNetworkRxBytes()
+    {
+        return networkRxBytes;
+    }
+
+    public void setNetworkRxBytes(long networkRxBytes)
+    {
+        this.networkRxBytes = networkRxBytes;
+    }
+
+    public long getNetworkTxBytes()
+    {
+        return networkTxBytes;
+    }
+
+    public void setNetworkTxBytes(long networkTxBytes)
+    {
+        this.networkTxBytes = networkTxBytes;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format(
+            "ProcessExecutionStepStatsRecord [cpuTime=%s, peakMemory=%s, oomKilled=%s, " +
+                "blockReadBytes=%s, blockWriteBytes=%s, networkRxBytes=%s, networkTxBytes=%s]",
+            cpuTime, peakMemory, oomKilled, blockReadBytes, blockWriteBytes, networkRxBytes, networkTxBytes);
+    }
+}
@@ -0,0 +1,120 @@
+package eu.slipo.workbench.common.model.process;
+
+import java.time.ZonedDateTime;
+
+/**
+ * A sample of the resources consumed by a container of a processing step (i.e. a point of the
+ * time series of a container). CPU time and I/O are cumulative since the container was started.
+ */
+public class ProcessExecutionStepStatsSampleRecord
+{
+    private String containerName;
+
+    private ZonedDateTime sampledOn;
+
+    /**
+     * The CPU time (milliseconds)
+     */
+    private long cpuTime;
+
+    /**
+     * The memory usage (bytes)
+     */
+    private long memory;
+
+    private long blockReadBytes;
+
+    private long blockWriteBytes;
+
+    private long networkRxBytes;
+
+    private long networkTxBytes;
+
+    public ProcessExecutionStepStatsSampleRecord() {}
+
+    public ProcessExecutionStepStatsSampleRecord(String containerName, ZonedDateTime sampledOn)
+    {
+        this.containerName = containerName;
+        this.sampledOn = sampledOn;
+    }
+
+    public String getContainerName()
+    {
+        return containerName;
+    }
+
+    public void setContainerName(String containerName)
+    {
+        this.containerName = containerName;
+    }
+
+    public ZonedDateTime getSampledOn()
+    {
+        return sampledOn;
+    }
+
+    public void setSampledOn(ZonedDateTime sampledOn)
+    {
+        this.sampledOn = sampledOn;
+    }
+
+    public long getCpuTime()
+    {
+        return cpuTime;
+    }
+
+    public void setCpuTime(long cpuTime)
+    {
+        this.cpuTime = cpuTime;
+    }
+
+    public long getMemory()
+    {
+        return memory;
+    }
+
+    public void setMemory(long memory)
+    {
+        this.memory = memory;
+    }
+
+    public long getBlockReadBytes()
+    {
+        return blockReadBytes;
+    }
+
+    public void setBlockReadBytes(long blockReadBytes)
+    {
+        this.blockReadBytes = blockReadBytes;
+    }
+
+    public long getBlockWriteBytes()
+    {
+        return blockWriteBytes;
+    }
+
+    public void setBlockWriteBytes(long blockWriteBytes)
+    {
+        this.blockWriteBytes = blockWriteBytes;
+    }
+
+    public long getNetworkRxBytes()
+    {
+        return networkRxBytes;
+    }
+
+    public void setNetworkRxBytes(long networkRxBytes)
+    {
+        this.networkRxBytes = networkRxBytes;
+    }
+
+    public long getNetworkTxBytes()
+    {
+        return networkTxBytes;
+    }
+
+    public void setNetworkTxBytes(long networkTxBytes)
+    {
+        this.networkTxBytes = networkTxBytes;
+    }
+}
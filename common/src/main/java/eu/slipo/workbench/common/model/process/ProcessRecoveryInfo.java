@@ -0,0 +1,137 @@
+package eu.slipo.workbench.common.model.process;
+
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * A DTO bean reporting the recovery of process executions that were interrupted by a (non-graceful)
+ * shutdown of the application.
+ */
+public class ProcessRecoveryInfo
+{
+    /**
+     * The time when recovery started
+     */
+    private ZonedDateTime startedOn;
+
+    /**
+     * The time (in milliseconds) spent on recovery, i.e. until all interrupted executions are
+     * resumed (not completed)
+     */
+    private long durationMillis;
+
+    /**
+     * The ids of the interrupted executions that were resumed
+     */
+    private List<Long> resumedExecutions = new ArrayList<>();
+
+    /**
+     * The ids of the interrupted executions that could not be resumed (and were marked as stopped)
+     */
+    private List<Long> abandonedExecutions = new ArrayList<>();
+
+    /**
+     * The number of processing steps that had completed before the interruption (and will not
+     * be executed again)
+     */
+    private int salvagedSteps;
+
+    /**
+     * The total duration (in milliseconds) of the salvaged processing steps
+     */
+    private long salvagedMillis;
+
+    /**
+     * The number of processing steps that were interrupted (and will be executed again)
+     */
+    private int restartedSteps;
+
+    public ProcessRecoveryInfo() {}
+
+    @JsonProperty("startedOn")
+    public ZonedDateTime getStartedOn()
+    {
+        return startedOn;
+    }
+
+    @JsonProperty("startedOn")
+    public void setStartedOn(ZonedDateTime startedOn)
+    {
+        this.startedOn = startedOn;
+    }
+
+    @JsonProperty("durationMillis")
+    public long getDurationMillis()
+    {
+        return durationMillis;
+    }
+
+    @JsonProperty("durationMillis")
+    public void setDurationMillis(long durationMillis)
+    {
+        this.durationMillis = durationMillis;
+    }
+
+    @JsonProperty("resumedExecutions")
+    public List<Long> getResumedExecutions()
+    {
+        return resumedExecutions;
+    }
+
+    @JsonProperty("resumedExecutions")
+    public void setResumedExecutions(List<Long> resumedExecutions)
+    {
+        this.resumedExecutions = resumedExecutions;
+    }
+
+    @JsonProperty("abandonedExecutions")
+    public List<Long> getAbandonedExecutions()
+    {
+        return abandonedExecutions;
+    }
+
+    @JsonProperty("abandonedExecutions")
+    public void setAbandonedExecutions(List<Long> abandonedExecutions)
+    {
+        this.abandonedExecutions = abandonedExecutions;
+    }
+
+    @JsonProperty("salvagedSteps")
+    public int getSalvagedSteps()
+    {
+        return salvagedSteps;
+    }
+
+    @JsonProperty("salvagedSteps")
+    public void setSalvagedSteps(int salvagedSteps)
+    {
+        this.salvagedSteps = salvagedSteps;
+    }
+
+    @JsonProperty("salvagedMillis")
+    public long getSalvagedMillis()
+    {
+        return salvagedMillis;
+    }
+
+    @JsonProperty("salvagedMillis")
+    public void setSalvagedMillis(long salvagedMillis)
+    {
+        this.salvagedMillis = salvagedMillis;
+    }
+
+    @JsonProperty("restartedSteps")
+    public int getRestartedSteps()
+    {
+        return restartedSteps;
+    }
+
+    @JsonProperty("restartedSteps")
+    public void setRestartedSteps(int restartedSteps)
+    {
+        this.restartedSteps = restartedSteps;
+    }
+}
@@ -2,6 +2,7 @@ package eu.slipo.workbench.common.repository;
 
 import java.time.ZonedDateTime;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashSet;
@@ -35,10 +36,12 @@ import eu.slipo.workbench.common.domain.ProcessExecutionEntity;
 import eu.slipo.workbench.common.domain.ProcessExecutionMonitorEntity;
 import eu.slipo.workbench.common.domain.ProcessExecutionStepEntity;
 import eu.slipo.workbench.common.domain.ProcessExecutionStepFileEntity;
+import eu.slipo.workbench.common.domain.ProcessExecutionStepStatsEntity;
 import eu.slipo.workbench.common.domain.ProcessRevisionEntity;
 import eu.slipo.workbench.common.domain.ResourceRevisionEntity;
 import eu.slipo.workbench.common.domain.WorkflowEntity;
 import eu.slipo.workbench.common.model.QueryResultPage;
+import eu.slipo.workbench.common.model.poi.EnumTool;
 import eu.slipo.workbench.common.model.process.EnumProcessExecutionStatus;
 import eu.slipo.workbench.common.model.process.EnumProcessTaskType;
 import eu.slipo.workbench.common.model.process.ProcessDefinition;
@@ -47,6 +50,7 @@ import eu.slipo.workbench.common.model.process.ProcessExecutionQuery;
 import eu.slipo.workbench.common.model.process.ProcessExecutionRecord;
 import eu.slipo.workbench.common.model.process.ProcessExecutionStepFileRecord;
 import eu.slipo.workbench.common.model.process.ProcessExecutionStepRecord;
+import eu.slipo.workbench.common.model.process.ProcessExecutionStepStatsSampleRecord;
 import eu.slipo.workbench.common.model.process.ProcessIdentifier;
 import eu.slipo.workbench.common.model.process.ProcessNotFoundException;
 import eu.slipo.workbench.common.model.process.ProcessQuery;
@@ -84,16 +88,54 @@ public class DefaultProcessRepository implements ProcessRepository
 
         Query q2 = entityManager.createQuery(
                 "UPDATE ProcessExecution e SET e.status = :nextStatus " +
-                "WHERE e.status = :status1 OR e.status = :status2")
+                "WHERE e.status = :status1 OR e.status = :status2 OR e.status = :status3")
             .setParameter("status1", EnumProcessExecutionStatus.UNKNOWN)
             .setParameter("status2", EnumProcessExecutionStatus.RUNNING)
+            .setParameter("status3", EnumProcessExecutionStatus.QUEUED)
             .setParameter("nextStatus", EnumProcessExecutionStatus.STOPPED);
         int n2 = q2.executeUpdate();
         if (n2 > 0) {
-            logger.info("Cleared {} execution(s) from UNKNOWN/RUNNING to STOPPED", n2);
+            logger.info("Cleared {} execution(s) from UNKNOWN/QUEUED/RUNNING to STOPPED", n2);
         }
     }
 
+    @Transactional(readOnly = true)
+    @Override
+    public List<ProcessExecutionRecord> findActiveExecutions()
+    {
+        TypedQuery<ProcessExecutionEntity> query = entityManager.createQuery(
+                "FROM ProcessExecution e WHERE e.status IN (:statuses) ORDER BY e.id",
+                ProcessExecutionEntity.class)
+            .setParameter("statuses", Arrays.asList(
+                EnumProcessExecutionStatus.UNKNOWN,
+                EnumProcessExecutionStatus.QUEUED,
+                EnumProcessExecutionStatus.RUNNING));
+
+        return query.getResultList().stream()
+            .map(e -> e.toProcessExecutionRecord(true, true))
+            .collect(Collectors.toList());
+    }
+
+    @Transactional(readOnly = true)
+    @Override
+    public List<ProcessExecutionStepRecord> findCompletedSteps(EnumTool tool, int limit)
+    {
+        Assert.notNull(tool, "Expected a tool");
+        Assert.isTrue(limit > 0, "Expected a positive limit");
+
+        TypedQuery<ProcessExecutionStepEntity> query = entityManager.createQuery(
+                "FROM ProcessExecutionStep s WHERE s.tool = :tool AND s.status = :status " +
+                    "AND s.cached = false AND s.completedOn IS NOT NULL ORDER BY s.completedOn DESC",
+                ProcessExecutionStepEntity.class)
+            .setParameter("tool", tool)
+            .setParameter("status", EnumProcessExecutionStatus.COMPLETED)
+            .setMaxResults(limit);
+
+        return query.getResultList().stream()
+            .map(e -> e.toProcessExecutionStepRecord(true))
+            .collect(Collectors.toList());
+    }
+
     @Transactional(readOnly = true)
     @Override
     public QueryResultPage<ProcessRecord> query(ProcessQuery query, PageRequest pageReq)
@@ -609,6 +651,10 @@ public class DefaultProcessRepository implements ProcessRepository
                 Assert.isTrue(status != EnumProcessExecutionStatus.COMPLETED,
                     "A transition from a status of UNKNOWN to COMPLETED is impossible");
                 break;
+            case QUEUED:
+                Assert.isTrue(status != EnumProcessExecutionStatus.COMPLETED,
+                    "A transition from a status of QUEUED to COMPLETED is impossible");
+                break;
             case COMPLETED:
             case FAILED:
             case STOPPED:
@@ -628,19 +674,22 @@ public class DefaultProcessRepository implements ProcessRepository
         }
 
         if (started != null && !started.equals(executionEntity.getStartedOn())) {
-            Assert.isTrue(previousStatus == EnumProcessExecutionStatus.UNKNOWN &&
+            Assert.isTrue((previousStatus == EnumProcessExecutionStatus.UNKNOWN ||
+                    previousStatus == EnumProcessExecutionStatus.QUEUED) &&
                     status == EnumProcessExecutionStatus.RUNNING,
                 "The `started` timestamp can only be updated for an execution moving from " +
-                    "UNKNOWN to RUNNING status");
+                    "UNKNOWN/QUEUED to RUNNING status");
             executionEntity.setStartedOn(started);
         }
 
         if (completed != null) {
-            Assert.isTrue(previousStatus == EnumProcessExecutionStatus.RUNNING && (
+            Assert.isTrue((previousStatus == EnumProcessExecutionStatus.RUNNING && (
                     status == EnumProcessExecutionStatus.COMPLETED ||
+                    status == EnumProcessExecutionStatus.FAILED)) ||
+                (previousStatus == EnumProcessExecutionStatus.QUEUED &&
                     status == EnumProcessExecutionStatus.FAILED),
                 "The `completed` timestamp is only expected for an execution moving from " +
-                    "RUNNING to a COMPLETED/FAILED status");
+                    "RUNNING to a COMPLETED/FAILED status (or from QUEUED to FAILED)");
             executionEntity.setCompletedOn(completed);
         }
 
@@ -728,6 +777,8 @@ public class DefaultProcessRepository implements ProcessRepository
         executionStepEntity.setStatus(record.getStatus());
         executionStepEntity.setCompletedOn(record.getCompletedOn());
         executionStepEntity.setErrorMessage(record.getErrorMessage());
+        executionStepEntity.setCached(record.isCached());
+        executionStepEntity.setStats(record.getStats());
 
         // Examine and add/update contained file records
         // Due to the nature of a processing step, a file record can never be removed; it can
@@ -773,6 +824,53 @@ public class DefaultProcessRepository implements ProcessRepository
         return executionEntity.toProcessExecutionRecord(true, true);
     }
 
+    @Override
+    public ProcessExecutionRecord restartExecutionStep(
+        long executionId, int stepKey, long jobExecutionId, ZonedDateTime started)
+        throws ProcessExecutionNotFoundException, ProcessExecutionNotActiveException
+    {
+        Assert.isTrue(jobExecutionId > 0, "Expected a valid (>0) job execution id");
+        Assert.notNull(started, "A timestamp for the restart is required");
+
+        final ProcessExecutionEntity executionEntity =
+            entityManager.find(ProcessExecutionEntity.class, executionId);
+        if (executionEntity == null) {
+            throw ProcessExecutionNotFoundException.forExecution(executionId);
+        }
+        if (executionEntity.isTerminated()) {
+            throw new ProcessExecutionNotActiveException(executionId);
+        }
+
+        final ProcessExecutionStepEntity executionStepEntity = executionEntity.getStepByKey(stepKey);
+        if (executionStepEntity == null) {
+            throw ProcessExecutionNotFoundException.forExecutionStep(executionId, stepKey);
+        }
+
+        executionStepEntity.setJobExecutionId(jobExecutionId);
+        executionStepEntity.setStartedOn(started);
+        executionStepEntity.setStatus(EnumProcessExecutionStatus.RUNNING);
+        executionStepEntity.setCompletedOn(null);
+        executionStepEntity.setErrorMessage(null);
+        executionStepEntity.setCached(false);
+        executionStepEntity.setStats(null);
+
+        entityManager.createQuery("DELETE FROM ProcessExecutionStepStats s WHERE s.step.id = :stepId")
+            .setParameter("stepId", executionStepEntity.getId())
+            .executeUpdate();
+
+        // The outputs of a restarted step are not verified (until it completes again)
+
+        for (ProcessExecutionStepFileEntity fileEntity: executionStepEntity.getFiles()) {
+            if (fileEntity.getType().isOfOutputType()) {
+                fileEntity.setVerified(false);
+            }
+        }
+
+        // Save
+        entityManager.flush();
+        return executionEntity.toProcessExecutionRecord(true, true);
+    }
+
     @Override
     public ProcessExecutionRecord updateExecutionStepAddingFile(long executionId, int stepKey, ProcessExecutionStepFileRecord fileRecord)
         throws ProcessExecutionNotFoundException, ProcessExecutionNotActiveException
@@ -811,6 +909,59 @@ public class DefaultProcessRepository implements ProcessRepository
         return executionEntity.toProcessExecutionRecord(true, true);
     }
 
+    @Override
+    public void createExecutionStepStats(
+        long executionId, int stepKey, List<ProcessExecutionStepStatsSampleRecord> samples)
+        throws ProcessExecutionNotFoundException
+    {
+        Assert.notNull(samples, "A list of samples is required");
+
+        final ProcessExecutionStepEntity executionStepEntity = findExecutionStepEntity(executionId, stepKey);
+
+        for (ProcessExecutionStepStatsSampleRecord sample: samples) {
+            Assert.notNull(sample.getContainerName(), "A sample must refer to a container");
+            Assert.notNull(sample.getSampledOn(), "A sample must have a timestamp");
+            entityManager.persist(new ProcessExecutionStepStatsEntity(executionStepEntity, sample));
+        }
+
+        // Save
+        entityManager.flush();
+    }
+
+    @Transactional(readOnly = true)
+    @Override
+    public List<ProcessExecutionStepStatsSampleRecord> findExecutionStepStats(long executionId, int stepKey)
+        throws ProcessExecutionNotFoundException
+    {
+        final ProcessExecutionStepEntity executionStepEntity = findExecutionStepEntity(executionId, stepKey);
+
+        TypedQuery<ProcessExecutionStepStatsEntity> query = entityManager.createQuery(
+                "FROM ProcessExecutionStepStats s WHERE s.step.id = :stepId ORDER BY s.sampledOn, s.id",
+                ProcessExecutionStepStatsEntity.class)
+            .setParameter("stepId", executionStepEntity.getId());
+
+        return query.getResultList().stream()
+            .map(ProcessExecutionStepStatsEntity::toProcessExecutionStepStatsSampleRecord)
+            .collect(Collectors.toList());
+    }
+
+    private ProcessExecutionStepEntity findExecutionStepEntity(long executionId, int stepKey)
+        throws ProcessExecutionNotFoundException
+    {
+        final ProcessExecutionEntity executionEntity =
+            entityManager.find(ProcessExecutionEntity.class, executionId);
+        if (executionEntity == null) {
+            throw ProcessExecutionNotFoundException.forExecution(executionId);
+        }
+
+        final ProcessExecutionStepEntity executionStepEntity = executionEntity.getStepByKey(stepKey);
+        if (executionStepEntity == null) {
+            throw ProcessExecutionNotFoundException.forExecutionStep(executionId, stepKey);
+        }
+
+        return executionStepEntity;
+    }
+
     @Override
     public boolean discardExecution(long executionId, boolean forceIfNotEmpty)
         throws ProcessExecutionNotFoundException
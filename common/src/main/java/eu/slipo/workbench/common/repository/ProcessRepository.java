@@ -11,6 +11,7 @@ import com.fasterxml.jackson.databind.JsonNode;
 import eu.slipo.workbench.common.domain.ProcessExecutionEntity;
 import eu.slipo.workbench.common.domain.ProcessRevisionEntity;
 import eu.slipo.workbench.common.model.QueryResultPage;
+import eu.slipo.workbench.common.model.poi.EnumTool;
 import eu.slipo.workbench.common.model.process.EnumProcessExecutionStatus;
 import eu.slipo.workbench.common.model.process.EnumProcessTaskType;
 import eu.slipo.workbench.common.model.process.ProcessDefinition;
@@ -19,6 +20,7 @@ import eu.slipo.workbench.common.model.process.ProcessExecutionQuery;
 import eu.slipo.workbench.common.model.process.ProcessExecutionRecord;
 import eu.slipo.workbench.common.model.process.ProcessExecutionStepFileRecord;
 import eu.slipo.workbench.common.model.process.ProcessExecutionStepRecord;
+import eu.slipo.workbench.common.model.process.ProcessExecutionStepStatsSampleRecord;
 import eu.slipo.workbench.common.model.process.ProcessIdentifier;
 import eu.slipo.workbench.common.model.process.ProcessNotFoundException;
 import eu.slipo.workbench.common.model.process.ProcessQuery;
@@ -339,6 +341,27 @@ public interface ProcessRepository
     ProcessExecutionRecord updateExecutionStep(long executionId, int stepKey, ProcessExecutionStepRecord record)
         throws ProcessExecutionNotFoundException, ProcessExecutionNotActiveException;
 
+    /**
+     * Restart an existing processing step, i.e. associate it with a new job execution.
+     *
+     * <p>This is meant for a step that was stopped (or failed, or was interrupted) and is now
+     * executed again as part of the same process execution. The step is marked as RUNNING, any
+     * completion metadata (and resource statistics) are cleared, and its output files are marked
+     * as non-verified. Its file records are otherwise preserved.
+     *
+     * @param executionId The execution id of a process revision
+     * @param stepKey The step key
+     * @param jobExecutionId The id of the new job execution carrying out this step
+     * @param started The time when the step was restarted
+     * @return A record representing the updated state of the (parent) execution entity
+     *
+     * @throws ProcessExecutionNotFoundException if given executionId does not correspond to a
+     *   a process execution entity, or if the given stepKey is invalid
+     * @throws ProcessExecutionNotActiveException if the execution is not active
+     */
+    ProcessExecutionRecord restartExecutionStep(long executionId, int stepKey, long jobExecutionId, ZonedDateTime started)
+        throws ProcessExecutionNotFoundException, ProcessExecutionNotActiveException;
+
     /**
      * Update the execution state of an existing processing step by adding a new file.
      *
@@ -356,6 +379,33 @@ public interface ProcessRepository
     ProcessExecutionRecord updateExecutionStepAddingFile(long executionId, int stepKey, ProcessExecutionStepFileRecord record)
         throws ProcessExecutionNotFoundException, ProcessExecutionNotActiveException;
 
+    /**
+     * Add samples of the resources consumed by the container(s) of an existing processing step,
+     * i.e. points of the time series of each container.
+     *
+     * @param executionId The execution id of a process revision
+     * @param stepKey The step key
+     * @param samples A list of sample records
+     *
+     * @throws ProcessExecutionNotFoundException if given executionId does not correspond to a
+     *   a process execution entity, or if the given stepKey is invalid
+     */
+    void createExecutionStepStats(long executionId, int stepKey, List<ProcessExecutionStepStatsSampleRecord> samples)
+        throws ProcessExecutionNotFoundException;
+
+    /**
+     * Find the samples of the resources consumed by the container(s) of a processing step.
+     *
+     * @param executionId The execution id of a process revision
+     * @param stepKey The step key
+     * @return a list of sample records ordered by time (empty if no samples were recorded)
+     *
+     * @throws ProcessExecutionNotFoundException if given executionId does not correspond to a
+     *   a process execution entity, or if the given stepKey is invalid
+     */
+    List<ProcessExecutionStepStatsSampleRecord> findExecutionStepStats(long executionId, int stepKey)
+        throws ProcessExecutionNotFoundException;
+
     /**
      * Discard (i.e delete) an execution entity.
      *
@@ -388,4 +438,23 @@ public interface ProcessRepository
      * their steps) and marks as STOPPED all that appear as UNKNOWN/RUNNING.
      */
     void clearRunningExecutions();
+
+    /**
+     * Find all executions that appear as active (i.e. UNKNOWN/QUEUED/RUNNING). This is only for
+     * recovery purposes: right after a (re)start of the application, these are the executions
+     * interrupted by a previous shutdown.
+     *
+     * @return a list of execution records (including steps and non-verified files)
+     */
+    List<ProcessExecutionRecord> findActiveExecutions();
+
+    /**
+     * Find the most recent steps of a tool that were completed (i.e. actually executed, not
+     * cached). This is the history used to predict the resources of a step.
+     *
+     * @param tool The tool of the step
+     * @param limit The maximum number of steps to return
+     * @return a list of step records (including non-verified files), most recent first
+     */
+    List<ProcessExecutionStepRecord> findCompletedSteps(EnumTool tool, int limit);
 }
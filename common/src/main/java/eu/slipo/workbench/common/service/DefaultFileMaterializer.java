@@ -0,0 +1,290 @@
+package eu.slipo.workbench.common.service;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileStore;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.Assert;
+import org.springframework.util.StreamUtils;
+
+/**
+ * The default implementation of a {@link FileMaterializer}.
+ * <p>
+ * A clone (reflink) is requested from the filesystem by invoking <tt>cp --reflink=always</tt>
+ * (there is no JDK API for it); since spawning a process is not free, it is only attempted for
+ * files above a minimum size. A filesystem that reports that cloning is not supported is remembered,
+ * and is never asked again (any other failure, e.g. a timeout, only falls back to copying a file).
+ */
+@Service
+public class DefaultFileMaterializer implements FileMaterializer
+{
+    private static final Logger logger = LoggerFactory.getLogger(DefaultFileMaterializer.class);
+
+    /**
+     * The default minimum size (bytes) of a file for attempting a clone
+     */
+    public static final long DEFAULT_MIN_SIZE_FOR_CLONE = 1024L * 1024L;
+
+    /**
+     * The timeout (seconds) for a clone command to complete
+     */
+    private static final long CLONE_TIMEOUT = 60L;
+
+    private static class Counter
+    {
+        private final LongAdder count = new LongAdder();
+
+        private final LongAdder bytes = new LongAdder();
+
+        private final LongAdder nanos = new LongAdder();
+
+        void add(long bytes, long nanos)
+        {
+            this.count.increment();
+            this.bytes.add(bytes);
+            this.nanos.add(nanos);
+        }
+
+        Statistics toStatistics()
+        {
+            return new Statistics(count.sum(), bytes.sum(), nanos.sum());
+        }
+    }
+
+    private final Map<Strategy, Counter> counters = new EnumMap<>(Strategy.class);
+
+    /**
+     * The filesystems that are known not to support cloning
+     */
+    private final Map<FileStore, Boolean> cloneUnsupported = new ConcurrentHashMap<>();
+
+    private boolean cloneEnabled = false;
+
+    private String cloneCommand = "cp";
+
+    private long minSizeForClone = DEFAULT_MIN_SIZE_FOR_CLONE;
+
+    public DefaultFileMaterializer()
+    {
+        for (Strategy strategy: Strategy.values())
+            counters.put(strategy, new Counter());
+    }
+
+    @Autowired
+    private void setClone(
+        @Value("${slipo.file-materializer.clone.enabled:false}") boolean enabled,
+        @Value("${slipo.file-materializer.clone.command:cp}") String command,
+        @Value("${slipo.file-materializer.clone.min-size-kbytes:}") Long minSizeKbytes)
+    {
+        this.cloneEnabled = enabled;
+        this.cloneCommand = command;
+        if (minSizeKbytes != null) {
+            Assert.isTrue(minSizeKbytes >= 0, "Expected a non-negative size");
+            this.minSizeForClone = minSizeKbytes * 1024L;
+        }
+    }
+
+    /**
+     * Enable (or disable) cloning of files (via a reflink)
+     */
+    public void setCloneEnabled(boolean enabled)
+    {
+        this.cloneEnabled = enabled;
+    }
+
+    @Override
+    public Strategy materialize(Path source, Path target) throws IOException
+    {
+        Assert.notNull(source, "Expected a non-null source");
+        Assert.notNull(target, "Expected a non-null target");
+
+        final long t0 = System.nanoTime();
+        try {
+            Files.createLink(target, source.toRealPath());
+            counters.get(Strategy.LINK).add(Files.size(target), System.nanoTime() - t0);
+            return Strategy.LINK;
+        } catch (FileAlreadyExistsException ex) {
+            throw ex;
+        } catch (FileSystemException | UnsupportedOperationException ex) {
+            logger.debug("Failed to link {} to {}: {}", target, source, ex.getMessage());
+        }
+
+        return copy(source, target);
+    }
+
+    @Override
+    public Strategy copy(Path source, Path target) throws IOException
+    {
+        Assert.notNull(source, "Expected a non-null source");
+        Assert.notNull(target, "Expected a non-null target");
+
+        if (Files.exists(target))
+            throw new FileAlreadyExistsException(target.toString());
+
+        final long size = Files.size(source);
+
+        long t0 = System.nanoTime();
+        if (clone(source, target, size)) {
+            counters.get(Strategy.CLONE).add(size, System.nanoTime() - t0);
+            return Strategy.CLONE;
+        }
+
+        t0 = System.nanoTime();
+        long n = 0;
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+            FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE))
+        {
+            n = transfer(in, out);
+        }
+        counters.get(Strategy.TRANSFER).add(n, System.nanoTime() - t0);
+        return Strategy.TRANSFER;
+    }
+
+    @Override
+    public long append(Path source, Path target) throws IOException
+    {
+        Assert.notNull(source, "Expected a non-null source");
+        Assert.notNull(target, "Expected a non-null target");
+
+        final long t0 = System.nanoTime();
+        long n = 0;
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+            FileChannel out = FileChannel.open(target,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND))
+        {
+            n = transfer(in, out);
+        }
+        counters.get(Strategy.TRANSFER).add(n, System.nanoTime() - t0);
+        return n;
+    }
+
+    @Override
+    public long concatenate(List<Path> sources, Path target) throws IOException
+    {
+        Assert.notNull(sources, "Expected a non-null list of sources");
+        Assert.notNull(target, "Expected a non-null target");
+
+        final long t0 = System.nanoTime();
+        long n = 0;
+        try (FileChannel out = FileChannel.open(target,
+            StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+        {
+            for (Path source: sources) {
+                try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ)) {
+                    n += transfer(in, out);
+                }
+            }
+        }
+        counters.get(Strategy.TRANSFER).add(n, System.nanoTime() - t0);
+        return n;
+    }
+
+    @Override
+    public Map<Strategy, Statistics> getStatistics()
+    {
+        final Map<Strategy, Statistics> result = new EnumMap<>(Strategy.class);
+        for (Map.Entry<Strategy, Counter> e: counters.entrySet())
+            result.put(e.getKey(), e.getValue().toStatistics());
+        return Collections.unmodifiableMap(result);
+    }
+
+    /**
+     * Transfer the entire content of an input channel to the (current position of an) output channel
+     *
+     * @return the number of bytes transferred
+     */
+    private static long transfer(FileChannel in, FileChannel out) throws IOException
+    {
+        final long size = in.size();
+        long position = 0;
+        while (position < size) {
+            // Note: transferTo may transfer fewer bytes than requested (e.g. when limited to 2GB)
+            final long n = in.transferTo(position, size - position, out);
+            if (n <= 0)
+                break; // the source was truncated
+            position += n;
+        }
+        return position;
+    }
+
+    /**
+     * Try to clone a file (if cloning is enabled, and supported by the target filesystem)
+     *
+     * @return <tt>true</tt> if the target was created as a clone of the source
+     */
+    private boolean clone(Path source, Path target, long size) throws IOException
+    {
+        if (!cloneEnabled || size < minSizeForClone)
+            return false;
+
+        final FileStore store = Files.getFileStore(target.toAbsolutePath().getParent());
+        if (cloneUnsupported.containsKey(store))
+            return false;
+        if (!store.equals(Files.getFileStore(source)))
+            return false; // a clone cannot span filesystems
+
+        boolean cloned = false;
+        String message = null;
+        try {
+            ProcessBuilder builder = new ProcessBuilder(
+                    cloneCommand, "--reflink=always", "--", source.toString(), target.toString())
+                .redirectErrorStream(true);
+            builder.environment().put("LC_ALL", "C"); // so that messages are not localized
+            Process process = builder.start();
+            if (!process.waitFor(CLONE_TIMEOUT, TimeUnit.SECONDS)) {
+                process.destroyForcibly();
+                logger.warn("Timed out cloning {} to {}", source, target);
+            } else if (process.exitValue() == 0) {
+                cloned = true;
+            } else {
+                message = StreamUtils.copyToString(process.getInputStream(), StandardCharsets.UTF_8).trim();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (IOException ex) {
+            logger.debug("Failed to invoke {}: {}", cloneCommand, ex.getMessage());
+        }
+
+        if (!cloned) {
+            Files.deleteIfExists(target);
+            if (message != null && isNotSupported(message)) {
+                // Only a definite answer is remembered (not a timeout, or some other failure)
+                logger.info("The filesystem ({}) does not support cloning files: falling back to copying",
+                    store.name());
+                cloneUnsupported.put(store, Boolean.TRUE);
+            } else if (message != null) {
+                logger.debug("Failed to clone {} to {}: {}", source, target, message);
+            }
+        }
+        return cloned;
+    }
+
+    /**
+     * Check if the message of a failed clone command means that cloning is not supported (i.e.
+     * an <tt>EOPNOTSUPP</tt>, <tt>ENOTTY</tt> or <tt>EXDEV</tt> error)
+     */
+    private static boolean isNotSupported(String message)
+    {
+        return message.contains("Operation not supported") ||
+            message.contains("Inappropriate ioctl for device") ||
+            message.contains("Invalid cross-device link");
+    }
+}
@@ -0,0 +1,137 @@
+package eu.slipo.workbench.common.service;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A service that materializes files (i.e. makes the content of a file available under another path)
+ * while avoiding copying data through user-space buffers, whenever possible.
+ */
+public interface FileMaterializer
+{
+    /**
+     * The strategy by which a file (or a part of it) was materialized
+     */
+    enum Strategy
+    {
+        /**
+         * A hard link (no data is copied)
+         */
+        LINK,
+
+        /**
+         * A reflink, i.e. a copy-on-write clone of the file (no data is copied). This is only
+         * supported by a few filesystems (e.g. Btrfs, XFS).
+         */
+        CLONE,
+
+        /**
+         * A copy carried out by the kernel (see {@link java.nio.channels.FileChannel#transferTo})
+         */
+        TRANSFER;
+    }
+
+    /**
+     * Statistics on the usage of a {@link Strategy}
+     */
+    class Statistics
+    {
+        private final long count;
+
+        private final long bytes;
+
+        private final long nanos;
+
+        public Statistics(long count, long bytes, long nanos)
+        {
+            this.count = count;
+            this.bytes = bytes;
+            this.nanos = nanos;
+        }
+
+        /**
+         * The number of files materialized
+         */
+        public long getCount()
+        {
+            return count;
+        }
+
+        /**
+         * The number of bytes materialized
+         */
+        public long getBytes()
+        {
+            return bytes;
+        }
+
+        /**
+         * The total time (nanoseconds) spent
+         */
+        public long getNanos()
+        {
+            return nanos;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("Statistics [count=%d, bytes=%d, millis=%d]", count, bytes, nanos / 1000000L);
+        }
+    }
+
+    /**
+     * Materialize a file under a target path. The target may share its storage with the source
+     * (e.g. be a hard link to it), so it should be treated as a read-only file.
+     * <p>
+     * The strategies are tried in order: a hard link, a clone, and finally a kernel copy.
+     *
+     * @param source The source file
+     * @param target The target path
+     * @return the strategy that was used
+     * @throws java.nio.file.FileAlreadyExistsException if target already exists
+     * @throws IOException
+     */
+    Strategy materialize(Path source, Path target) throws IOException;
+
+    /**
+     * Copy a file to a target path, so that the target can be modified independently of the source.
+     * <p>
+     * The strategies are tried in order: a clone, and then a kernel copy.
+     *
+     * @param source The source file
+     * @param target The target path
+     * @return the strategy that was used
+     * @throws java.nio.file.FileAlreadyExistsException if target already exists
+     * @throws IOException
+     */
+    Strategy copy(Path source, Path target) throws IOException;
+
+    /**
+     * Append the content of a file to a target file (created if not existing). The existing
+     * content of the target is never rewritten.
+     *
+     * @param source The source file
+     * @param target The target file
+     * @return the number of bytes appended
+     * @throws IOException
+     */
+    long append(Path source, Path target) throws IOException;
+
+    /**
+     * Concatenate a list of files into a target file. If the target already exists, it is truncated.
+     *
+     * @param sources The source files (in order)
+     * @param target The target file
+     * @return the number of bytes written
+     * @throws IOException
+     */
+    long concatenate(List<Path> sources, Path target) throws IOException;
+
+    /**
+     * Get statistics (i.e. count of files, bytes and time spent) for each strategy in use
+     */
+    Map<Strategy, Statistics> getStatistics();
+}
@@ -8,6 +8,7 @@ import eu.slipo.workbench.common.model.process.ProcessExecutionStartException;
 import eu.slipo.workbench.common.model.process.ProcessExecutionStopException;
 import eu.slipo.workbench.common.model.process.ProcessIdentifier;
 import eu.slipo.workbench.common.model.process.ProcessNotFoundException;
+import eu.slipo.workbench.common.model.process.ProcessRecoveryInfo;
 
 public interface ProcessOperator
 { 
@@ -38,6 +39,37 @@ public interface ProcessOperator
         return start(id, version, -1);
     }
     
+    /**
+     * Start the execution of a process revision, executing only the steps that have changed
+     * since a previous revision. The definition is compared against the latest completed
+     * execution of the nearest previous revision: a step that is unchanged (i.e. has the same
+     * tool, configuration and input, and only depends on unchanged steps) reuses the output
+     * recorded by that execution, and is not executed again.
+     * 
+     * <p>If no previous revision has a completed execution, all steps are executed (as in
+     * {@link ProcessOperator#start(long, long, int)}).
+     * 
+     * @param id The process id
+     * @param version The version of the process (revision)
+     * @param submittedBy The id of the user that submitted this execution. A negative integer
+     *   is interpreted as the entire application.
+     * 
+     * @throws ProcessNotFoundException if no matching revision entity is found
+     * @throws ProcessExecutionStartException if the execution failed to start
+     * @throws IOException 
+     */
+    ProcessExecutionRecord startFromChanges(long id, long version, int submittedBy) 
+        throws ProcessNotFoundException, ProcessExecutionStartException, IOException;
+    
+    /**
+     * @see ProcessOperator#startFromChanges(long, long, int)
+     */
+    default ProcessExecutionRecord startFromChanges(long id, long version)
+        throws ProcessNotFoundException, ProcessExecutionStartException, IOException 
+    {
+        return startFromChanges(id, version, -1);
+    }
+    
     /**
      * Request from a process execution to stop. The execution will be identified as the
      * single execution associated with a {@link ProcessRevisionEntity} with the given id 
@@ -84,4 +116,12 @@ public interface ProcessOperator
     {
         return list(false);
     }
+    
+    /**
+     * Report on the recovery of executions interrupted by a previous shutdown.
+     * 
+     * @return a recovery report, or <tt>null</tt> if recovery is not enabled (or has not 
+     *   finished yet)
+     */
+    ProcessRecoveryInfo getRecoveryInfo();
 }
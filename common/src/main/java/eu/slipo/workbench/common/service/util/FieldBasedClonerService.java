@@ -0,0 +1,579 @@
+package eu.slipo.workbench.common.service.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.net.URI;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Currency;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * A {@link ClonerService} that deep-copies an object graph field by field, following copy
+ * plans that are built (once per class) on first use.
+ * <p>
+ * A plan of a class knows if its instances are immutable (and can be shared between a source
+ * and its copy), how a collection, a map or an array is rebuilt, or which fields of a bean must
+ * be copied. Shared references (and cycles) inside a graph are preserved in the copy.
+ * <p>
+ * A graph holding an object that cannot be planned for (e.g. a bean without a no-arg constructor,
+ * or a JDK class not known to be immutable) is cloned through JSON (see
+ * {@link JsonBasedClonerService}), and so are all later sources of the same class.
+ */
+public class FieldBasedClonerService implements ClonerService
+{
+    private static final Logger logger = LoggerFactory.getLogger(FieldBasedClonerService.class);
+
+    /**
+     * Thrown (internally) when a graph holds an object that cannot be copied
+     */
+    @SuppressWarnings("serial")
+    private static class UnsupportedTypeException extends RuntimeException
+    {
+        private UnsupportedTypeException(Class<?> type, String reason)
+        {
+            super("Cannot copy an instance of [" + type.getName() + "]: " + reason, null, false, false);
+        }
+    }
+
+    /**
+     * A copy plan for instances of a specific class
+     */
+    private static abstract class Plan
+    {
+        /**
+         * Copy a source object.
+         *
+         * @param source The object to copy (an instance of the class this plan is built for)
+         * @param copies The copies made so far (in the scope of a clone) keyed by their source
+         */
+        abstract Object copy(Object source, Map<Object, Object> copies);
+
+        /**
+         * Tell if objects of this class are immutable, and are shared instead of being copied
+         */
+        boolean isImmutable()
+        {
+            return false;
+        }
+    }
+
+    private static final Plan IMMUTABLE = new Plan()
+    {
+        @Override
+        Object copy(Object source, Map<Object, Object> copies)
+        {
+            return source;
+        }
+
+        @Override
+        boolean isImmutable()
+        {
+            return true;
+        }
+    };
+
+    private static class UnsupportedPlan extends Plan
+    {
+        private final Class<?> type;
+
+        private final String reason;
+
+        private UnsupportedPlan(Class<?> type, String reason)
+        {
+            this.type = type;
+            this.reason = reason;
+        }
+
+        @Override
+        Object copy(Object source, Map<Object, Object> copies)
+        {
+            throw new UnsupportedTypeException(type, reason);
+        }
+    }
+
+    private static final Set<Class<?>> IMMUTABLE_TYPES = new HashSet<>(Arrays.asList(
+        String.class, Boolean.class, Character.class,
+        Byte.class, Short.class, Integer.class, Long.class, Float.class, Double.class,
+        BigInteger.class, BigDecimal.class,
+        UUID.class, URI.class, URL.class, File.class, Locale.class, Currency.class, Pattern.class,
+        Class.class));
+
+    /**
+     * The packages of JDK classes: a class from these is never copied as a bean
+     */
+    private static final List<String> JDK_PACKAGE_PREFIXES =
+        Arrays.asList("java.", "javax.", "jdk.", "sun.", "com.sun.");
+
+    /**
+     * Factories for (modifiable) collections: create an empty collection of the same class
+     * as a given source collection
+     */
+    private static final Map<Class<?>, Function<Collection<?>, Collection<Object>>> COLLECTION_FACTORIES;
+    static {
+        Map<Class<?>, Function<Collection<?>, Collection<Object>>> factories = new HashMap<>();
+        factories.put(ArrayList.class, c -> new ArrayList<>(c.size()));
+        factories.put(LinkedList.class, c -> new LinkedList<>());
+        factories.put(ArrayDeque.class, c -> new ArrayDeque<>(c.size()));
+        factories.put(HashSet.class, c -> new HashSet<>());
+        factories.put(LinkedHashSet.class, c -> new LinkedHashSet<>());
+        factories.put(TreeSet.class, c -> new TreeSet<>(comparator(((TreeSet<?>) c).comparator())));
+        COLLECTION_FACTORIES = Collections.unmodifiableMap(factories);
+    }
+
+    /**
+     * Factories for (modifiable) maps: create an empty map of the same class as a given
+     * source map
+     */
+    private static final Map<Class<?>, Function<Map<?, ?>, Map<Object, Object>>> MAP_FACTORIES;
+    static {
+        Map<Class<?>, Function<Map<?, ?>, Map<Object, Object>>> factories = new HashMap<>();
+        factories.put(HashMap.class, m -> new HashMap<>());
+        factories.put(LinkedHashMap.class, m -> new LinkedHashMap<>());
+        factories.put(TreeMap.class, m -> new TreeMap<>(comparator(((TreeMap<?, ?>) m).comparator())));
+        factories.put(EnumMap.class, m -> cast(((EnumMap<?, ?>) m).clone())); // entries are replaced
+        MAP_FACTORIES = Collections.unmodifiableMap(factories);
+    }
+
+    /**
+     * The (non-public) classes of unmodifiable views of {@link Collections}
+     */
+    private static final Class<?> UNMODIFIABLE_COLLECTION =
+        Collections.unmodifiableCollection(new ArrayList<>()).getClass();
+    private static final Class<?> UNMODIFIABLE_LIST =
+        Collections.unmodifiableList(new LinkedList<>()).getClass();
+    private static final Class<?> UNMODIFIABLE_RANDOM_ACCESS_LIST =
+        Collections.unmodifiableList(new ArrayList<>()).getClass();
+    private static final Class<?> UNMODIFIABLE_SET =
+        Collections.unmodifiableSet(new HashSet<>()).getClass();
+    private static final Class<?> UNMODIFIABLE_SORTED_SET =
+        Collections.unmodifiableSortedSet(new TreeSet<>()).getClass();
+    private static final Class<?> UNMODIFIABLE_MAP =
+        Collections.unmodifiableMap(new HashMap<>()).getClass();
+    private static final Class<?> UNMODIFIABLE_SORTED_MAP =
+        Collections.unmodifiableSortedMap(new TreeMap<>()).getClass();
+
+    private static final Class<?> SINGLETON_LIST = Collections.singletonList(null).getClass();
+    private static final Class<?> SINGLETON_SET = Collections.singleton(null).getClass();
+    private static final Class<?> SINGLETON_MAP = Collections.singletonMap(null, null).getClass();
+
+    private static final Class<?> ARRAY_AS_LIST = Arrays.asList().getClass();
+
+    private static final Set<Class<?>> EMPTY_TYPES = new HashSet<>(Arrays.asList(
+        Collections.emptyList().getClass(),
+        Collections.emptySet().getClass(),
+        Collections.emptyMap().getClass()));
+
+    @SuppressWarnings("unchecked")
+    private static <T> T cast(Object o)
+    {
+        return (T) o;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Comparator<Object> comparator(Comparator<?> comparator)
+    {
+        return (Comparator<Object>) comparator;
+    }
+
+    private final ClonerService fallback;
+
+    private final ConcurrentMap<Class<?>, Plan> plans = new ConcurrentHashMap<>();
+
+    /**
+     * The classes of sources that we have fallen back to the JSON-based cloner
+     */
+    private final Set<Class<?>> fallbackTypes = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+    public FieldBasedClonerService(ObjectMapper objectMapper)
+    {
+        this(new JsonBasedClonerService(objectMapper));
+    }
+
+    /**
+     * Create a cloner falling back to a given cloner (for graphs it cannot copy).
+     *
+     * @param fallback The cloner to fall back to
+     */
+    public FieldBasedClonerService(ClonerService fallback)
+    {
+        Assert.notNull(fallback, "A fallback cloner is required");
+        this.fallback = fallback;
+    }
+
+    @Override
+    public Object cloneAsBean(Object source) throws IOException
+    {
+        Assert.notNull(source, "A source object is required");
+
+        final Class<?> sourceType = source.getClass();
+        if (!fallbackTypes.contains(sourceType)) {
+            try {
+                return copy(source, new IdentityHashMap<>());
+            } catch (UnsupportedTypeException ex) {
+                logger.debug("Cloning instances of {} through JSON: {}", sourceType.getName(), ex.getMessage());
+                fallbackTypes.add(sourceType);
+            }
+        }
+
+        return fallback.cloneAsBean(source);
+    }
+
+    @Override
+    public <T> T cloneAsBean(Object source, Class<T> targetType) throws IOException
+    {
+        Assert.notNull(source, "A source object is required");
+        Assert.notNull(targetType, "A target type is required");
+
+        // A conversion to another type is only possible through JSON
+        if (source.getClass() != targetType)
+            return fallback.cloneAsBean(source, targetType);
+
+        return targetType.cast(cloneAsBean(source));
+    }
+
+    private Object copy(Object source, Map<Object, Object> copies)
+    {
+        if (source == null)
+            return null;
+
+        Plan plan = planFor(source.getClass());
+        if (plan.isImmutable())
+            return source;
+
+        Object target = copies.get(source);
+        return target != null? target : plan.copy(source, copies);
+    }
+
+    private Plan planFor(Class<?> type)
+    {
+        Plan plan = plans.get(type);
+        if (plan == null) {
+            plan = createPlan(type, new HashSet<>());
+            Plan plan1 = plans.putIfAbsent(type, plan);
+            if (plan1 != null)
+                plan = plan1;
+        }
+        return plan;
+    }
+
+    /**
+     * Create the plan for a class.
+     *
+     * @param type The class to plan for
+     * @param visiting The classes we are currently planning for (as the class of a final field
+     *    may refer back to one of them)
+     */
+    private Plan createPlan(Class<?> type, Set<Class<?>> visiting)
+    {
+        if (type.isPrimitive() || type.isEnum() || Enum.class.isAssignableFrom(type) ||
+                IMMUTABLE_TYPES.contains(type) || EMPTY_TYPES.contains(type) ||
+                type.getName().startsWith("java.time.") || Charset.class.isAssignableFrom(type))
+            return IMMUTABLE;
+
+        if (type.isArray())
+            return createArrayPlan(type.getComponentType());
+
+        if (Collection.class.isAssignableFrom(type) || Map.class.isAssignableFrom(type))
+            return createContainerPlan(type);
+
+        return createBeanPlan(type, visiting);
+    }
+
+    private Plan createArrayPlan(Class<?> componentType)
+    {
+        if (componentType.isPrimitive()) {
+            return new Plan()
+            {
+                @Override
+                Object copy(Object source, Map<Object, Object> copies)
+                {
+                    final int n = Array.getLength(source);
+                    Object target = Array.newInstance(componentType, n);
+                    System.arraycopy(source, 0, target, 0, n);
+                    copies.put(source, target);
+                    return target;
+                }
+            };
+        }
+
+        return new Plan()
+        {
+            @Override
+            Object copy(Object source, Map<Object, Object> copies)
+            {
+                Object[] items = (Object[]) source;
+                Object[] target = (Object[]) Array.newInstance(componentType, items.length);
+                copies.put(source, target);
+                for (int i = 0; i < items.length; ++i)
+                    target[i] = FieldBasedClonerService.this.copy(items[i], copies);
+                return target;
+            }
+        };
+    }
+
+    private Plan createContainerPlan(Class<?> type)
+    {
+        final Function<Collection<?>, Collection<Object>> collectionFactory = COLLECTION_FACTORIES.get(type);
+        if (collectionFactory != null) {
+            return new Plan()
+            {
+                @Override
+                Object copy(Object source, Map<Object, Object> copies)
+                {
+                    Collection<?> items = (Collection<?>) source;
+                    Collection<Object> target = collectionFactory.apply(items);
+                    copies.put(source, target);
+                    copyItems(items, target, copies);
+                    return target;
+                }
+            };
+        }
+
+        final Function<Map<?, ?>, Map<Object, Object>> mapFactory = MAP_FACTORIES.get(type);
+        if (mapFactory != null) {
+            return new Plan()
+            {
+                @Override
+                Object copy(Object source, Map<Object, Object> copies)
+                {
+                    Map<?, ?> entries = (Map<?, ?>) source;
+                    Map<Object, Object> target = mapFactory.apply(entries);
+                    copies.put(source, target);
+                    copyEntries(entries, target, copies);
+                    return target;
+                }
+            };
+        }
+
+        // The collections of java.util.Collections (and java.util.Arrays) are rebuilt using
+        // the same factory methods
+
+        if (type == UNMODIFIABLE_COLLECTION)
+            return collectionView(
+                c -> new ArrayList<>(c.size()), Collections::unmodifiableCollection);
+        if (type == UNMODIFIABLE_LIST || type == UNMODIFIABLE_RANDOM_ACCESS_LIST)
+            return collectionView(
+                c -> new ArrayList<>(c.size()), c -> Collections.unmodifiableList((List<Object>) c));
+        if (type == UNMODIFIABLE_SET)
+            return collectionView(
+                c -> new LinkedHashSet<>(), c -> Collections.unmodifiableSet((Set<Object>) c));
+        if (type == UNMODIFIABLE_SORTED_SET)
+            return collectionView(
+                c -> new TreeSet<>(comparator(((SortedSet<?>) c).comparator())),
+                c -> Collections.unmodifiableSortedSet((SortedSet<Object>) c));
+        if (type == UNMODIFIABLE_MAP)
+            return mapView(
+                m -> new LinkedHashMap<>(), Collections::unmodifiableMap);
+        if (type == UNMODIFIABLE_SORTED_MAP)
+            return mapView(
+                m -> new TreeMap<>(comparator(((SortedMap<?, ?>) m).comparator())),
+                m -> Collections.unmodifiableSortedMap((SortedMap<Object, Object>) m));
+        if (type == SINGLETON_LIST)
+            return collectionView(
+                c -> new ArrayList<>(1), c -> Collections.singletonList(c.iterator().next()));
+        if (type == SINGLETON_SET)
+            return collectionView(
+                c -> new ArrayList<>(1), c -> Collections.singleton(c.iterator().next()));
+        if (type == SINGLETON_MAP)
+            return mapView(m -> new LinkedHashMap<>(), m -> {
+                Map.Entry<Object, Object> e = m.entrySet().iterator().next();
+                return Collections.singletonMap(e.getKey(), e.getValue());
+            });
+        if (type == ARRAY_AS_LIST)
+            return collectionView(
+                c -> new ArrayList<>(c.size()), c -> Arrays.asList(c.toArray()));
+
+        return new UnsupportedPlan(type, "not a known collection or map");
+    }
+
+    /**
+     * A plan for a collection view: copy items into a temporary collection, and then wrap it
+     */
+    private Plan collectionView(
+        Function<Collection<?>, Collection<Object>> factory, Function<Collection<Object>, Object> wrapper)
+    {
+        return new Plan()
+        {
+            @Override
+            Object copy(Object source, Map<Object, Object> copies)
+            {
+                Collection<?> items = (Collection<?>) source;
+                Collection<Object> items1 = factory.apply(items);
+                copyItems(items, items1, copies);
+                Object target = wrapper.apply(items1);
+                copies.put(source, target);
+                return target;
+            }
+        };
+    }
+
+    /**
+     * A plan for a map view: copy entries into a temporary map, and then wrap it
+     */
+    private Plan mapView(
+        Function<Map<?, ?>, Map<Object, Object>> factory, Function<Map<Object, Object>, Object> wrapper)
+    {
+        return new Plan()
+        {
+            @Override
+            Object copy(Object source, Map<Object, Object> copies)
+            {
+                Map<?, ?> entries = (Map<?, ?>) source;
+                Map<Object, Object> entries1 = factory.apply(entries);
+                copyEntries(entries, entries1, copies);
+                Object target = wrapper.apply(entries1);
+                copies.put(source, target);
+                return target;
+            }
+        };
+    }
+
+    private void copyItems(Collection<?> source, Collection<Object> target, Map<Object, Object> copies)
+    {
+        for (Object item: source)
+            target.add(copy(item, copies));
+    }
+
+    private void copyEntries(Map<?, ?> source, Map<Object, Object> target, Map<Object, Object> copies)
+    {
+        for (Map.Entry<?, ?> e: source.entrySet())
+            target.put(copy(e.getKey(), copies), copy(e.getValue(), copies));
+    }
+
+    private Plan createBeanPlan(Class<?> type, Set<Class<?>> visiting)
+    {
+        if (type.isInterface() || Modifier.isAbstract(type.getModifiers()))
+            return new UnsupportedPlan(type, "not a concrete class");
+
+        for (Class<?> t = type; t != Object.class; t = t.getSuperclass()) {
+            if (JDK_PACKAGE_PREFIXES.stream().anyMatch(t.getName()::startsWith))
+                return new UnsupportedPlan(type, "a JDK class not known to be immutable");
+        }
+
+        if (type.isAnonymousClass() || type.isLocalClass() || type.isSynthetic() ||
+                (type.isMemberClass() && !Modifier.isStatic(type.getModifiers())))
+            return new UnsupportedPlan(type, "not a top-level or static nested class");
+
+        final Constructor<?> constructor;
+        try {
+            constructor = type.getDeclaredConstructor();
+            constructor.setAccessible(true);
+        } catch (NoSuchMethodException ex) {
+            return new UnsupportedPlan(type, "no default constructor");
+        } catch (RuntimeException ex) {
+            return new UnsupportedPlan(type, "the default constructor is not accessible");
+        }
+
+        final List<Field> fields = new ArrayList<>();
+        boolean immutable = true;
+        visiting.add(type);
+        for (Class<?> t = type; t != Object.class; t = t.getSuperclass()) {
+            for (Field field: t.getDeclaredFields()) {
+                final int modifiers = field.getModifiers();
+                if (Modifier.isStatic(modifiers))
+                    continue;
+                try {
+                    field.setAccessible(true);
+                } catch (RuntimeException ex) {
+                    return new UnsupportedPlan(type, "field [" + field.getName() + "] is not accessible");
+                }
+                fields.add(field);
+                immutable = immutable && Modifier.isFinal(modifiers) && isImmutable(field.getType(), visiting);
+            }
+        }
+        visiting.remove(type);
+
+        return immutable? IMMUTABLE : new BeanPlan(constructor, fields);
+    }
+
+    /**
+     * Tell if a declared type of a field is immutable
+     */
+    private boolean isImmutable(Class<?> type, Set<Class<?>> visiting)
+    {
+        if (visiting.contains(type))
+            return false;
+
+        // A non-final class may be extended by a mutable class
+        if (!type.isPrimitive() && !type.isEnum() && !Modifier.isFinal(type.getModifiers()))
+            return false;
+
+        Plan plan = plans.get(type);
+        if (plan == null)
+            plan = createPlan(type, visiting);
+        return plan.isImmutable();
+    }
+
+    private class BeanPlan extends Plan
+    {
+        private final Constructor<?> constructor;
+
+        private final Field[] fields;
+
+        private BeanPlan(Constructor<?> constructor, List<Field> fields)
+        {
+            this.constructor = constructor;
+            this.fields = fields.toArray(new Field[0]);
+        }
+
+        @Override
+        Object copy(Object source, Map<Object, Object> copies)
+        {
+            try {
+                Object target = constructor.newInstance();
+                copies.put(source, target);
+                for (Field field: fields) {
+                    Object value = field.get(source);
+                    field.set(target, field.getType().isPrimitive()?
+                        value : FieldBasedClonerService.this.copy(value, copies));
+                }
+                return target;
+            } catch (InvocationTargetException | InstantiationException ex) {
+                throw new IllegalStateException(
+                    "Failed to create an instance of [" + constructor.getDeclaringClass().getName() + "]", ex);
+            } catch (IllegalAccessException ex) {
+                throw new IllegalStateException(
+                    "Failed to copy an instance of [" + constructor.getDeclaringClass().getName() + "]", ex);
+            }
+        }
+    }
+}
@@ -3,29 +3,41 @@ package eu.slipo.workbench.common.service.util;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.Serializable;
-import java.util.Collections;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Properties;
 import java.util.SortedMap;
-import java.util.SortedSet;
-import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import java.util.stream.Collectors;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.Validate;
 import org.springframework.core.io.Resource;
 
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.io.NumberOutput;
+import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ArrayNode;
-import com.fasterxml.jackson.databind.node.ObjectNode;
-
-import static org.apache.commons.collections4.IterableUtils.chainedIterable;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
 
+/**
+ * A {@link PropertiesConverterService} that converts beans according to their JSON
+ * serialization (as defined by a given {@link ObjectMapper}).
+ * <p>
+ * A bean is flattened to properties directly from the stream of tokens its (per-class cached)
+ * serializer emits, and is created from properties by feeding its (per-class cached)
+ * deserializer with a stream of tokens built from the sorted property keys. No intermediate
+ * JSON tree is ever built; the resulting properties are the same as those of a JSON tree
+ * (i.e. {@link ObjectMapper#valueToTree(Object)}) visited depth-first.
+ */
 public class JsonBasedPropertiesConverterService implements PropertiesConverterService
 {
     private static enum FieldType { LEAF, OBJECT, ARRAY };
@@ -86,16 +98,47 @@ public class JsonBasedPropertiesConverterService implements PropertiesConverterS
         }
     };
     
-    private static final String SENTINEL_KEY = String.valueOf(Character.MAX_VALUE);
+    /**
+     * A group of adjacent (sorted) keys sharing a field token: keys in range <tt>[start, end)</tt>
+     */
+    private static class FieldGroup
+    {
+        private final FieldToken token;
+        
+        private final int start;
+        
+        private final int end;
+
+        private FieldGroup(FieldToken token, int start, int end)
+        {
+            this.token = token;
+            this.start = start;
+            this.end = end;
+        }
+    }
+    
+    private static final Pattern INDEXED_FIELD_PATTERN = Pattern.compile("((\\d+)\\])(.)?");
     
-    private class TreeVisitor 
+    /**
+     * Flatten the stream of tokens of a serialized bean into properties
+     */
+    private class TokenVisitor 
     {    
         private final Properties properties;
         
-        public TreeVisitor(JsonNode root)
+        private final JsonParser parser;
+        
+        private final boolean bigDecimalForFloats;
+        
+        public TokenVisitor(JsonParser parser) throws IOException
         {
             this.properties = new Properties();
-            objectToProperties(root, null);
+            this.parser = parser;
+            this.bigDecimalForFloats = 
+                objectMapper.isEnabled(DeserializationFeature.USE_BIG_DECIMAL_FOR_FLOATS);
+            
+            if (parser.nextToken() == JsonToken.START_OBJECT)
+                objectToProperties(null);
         }
         
         public Properties getProperties()
@@ -103,79 +146,114 @@ public class JsonBasedPropertiesConverterService implements PropertiesConverterS
             return properties;
         }
         
-        private void arrayToProperties(JsonNode node, String prefix)
+        private void arrayToProperties(String prefix) throws IOException
         {
-            for (int i = 0, n = node.size(); i < n; ++i) {
+            JsonToken token = null;
+            for (int i = 0; (token = parser.nextToken()) != JsonToken.END_ARRAY; ++i) {
                 String key = prefix + "[" + String.valueOf(i) + "]";
-                JsonNode child = node.get(i);
-                switch (child.getNodeType()) {
-                case ARRAY:
-                    arrayToProperties(child, key);
-                    break;
-                case OBJECT:
-                    objectToProperties(child, key);
-                    break;
-                default:
-                    properties.setProperty(key, child.asText(""));
-                    break;
-                }
+                valueToProperties(token, key);
             }
         }
         
-        private void objectToProperties(JsonNode node, String prefix)
+        private void objectToProperties(String prefix) throws IOException
         {        
-            Iterator<String> fieldNames = node.fieldNames(); 
-            while (fieldNames.hasNext()) {
-                String field = fieldNames.next();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
                 String key = prefix == null? field : (prefix + "." + field);
-                if (node.has(field)) {
-                    JsonNode child = node.get(field);
-                    switch (child.getNodeType()) {
-                    case ARRAY:
-                        arrayToProperties(child, key);
-                        break;
-                    case OBJECT:
-                        objectToProperties(child, key);
-                        break;
+                valueToProperties(parser.nextToken(), key);
+            }
+        }
+        
+        private void valueToProperties(JsonToken token, String key) throws IOException
+        {
+            switch (token) {
+            case START_ARRAY:
+                arrayToProperties(key);
+                break;
+            case START_OBJECT:
+                objectToProperties(key);
+                break;
+            default:
+                properties.put(key, scalarToText(token));
+                break;
+            }
+        }
+        
+        /**
+         * Format a scalar exactly as the textual value of the JSON node it would be read as.
+         */
+        private String scalarToText(JsonToken token) throws IOException
+        {
+            switch (token) {
+            case VALUE_STRING:
+                return parser.getText();
+            case VALUE_TRUE:
+                return "true";
+            case VALUE_FALSE:
+                return "false";
+            case VALUE_NULL:
+                return "";
+            case VALUE_NUMBER_INT:
+                return parser.getNumberValue().toString();
+            case VALUE_NUMBER_FLOAT:
+                if (!bigDecimalForFloats) {
+                    switch (parser.getNumberType()) {
+                    case DOUBLE:
+                        return NumberOutput.toString(parser.getDoubleValue());
+                    case FLOAT:
+                        return NumberOutput.toString(parser.getFloatValue());
                     default:
-                        properties.put(key, child.asText(""));
                         break;
                     }
                 }
+                // no break: a big decimal is normalized by the node factory
+            default:
+                // Let the object mapper decide on the kind of node (e.g for embedded objects)
+                {
+                    JsonNode node = objectMapper.readTree(parser);
+                    return node.asText("");
+                }
             }
         }
     }
     
-    private class TreeBuilder
+    /**
+     * Build (from properties) the stream of tokens of a serialized bean
+     */
+    private class TokenBuilder
     {           
-        private final JsonNode root;
+        private final TokenBuffer buffer;
         
         private final Properties properties;
         
-        public TreeBuilder(Properties properties)
-        {
-            this.properties = properties;
-            this.root = buildTree();
-        }
+        private final String[] keys;
         
-        private JsonNode buildTree()
+        public TokenBuilder(Properties properties) throws IOException
         {
-            TreeSet<String> keys = properties.keySet().stream()
+            this.properties = properties;
+            this.keys = properties.keySet().stream()
                 .map(Object::toString)
-                .collect(Collectors.toCollection(TreeSet::new));
-            return propertiesToObject(0, keys);
+                .sorted()
+                .distinct()
+                .toArray(String[]::new);
+            this.buffer = new TokenBuffer(objectMapper, false);
+            propertiesToObject(0, 0, keys.length);
         }
         
-        private ObjectNode propertiesToObject(int prefixLen, SortedSet<String> keys)
+        private void propertiesToObject(int prefixLen, int start, int end) throws IOException
         {
-            ObjectNode node = objectMapper.createObjectNode();
+            // Collect groups of keys per field. A field set more than once keeps its first 
+            // position but takes the value of its last group (as a JSON object node would do).
+            
+            Map<String, FieldGroup> groups = new LinkedHashMap<>();
             
-            String groupKey = null; // a group starting on this key
+            int groupStart = -1; // a group starting on this position
             FieldToken token1 = null; // the previous token (for the previous group)
-            for (String key: chainedIterable(keys, Collections.singleton(SENTINEL_KEY))) {
+            for (int i = start; i <= end; ++i) {
                 FieldToken token = null;
                 // Parse field token for this key
-                if (!key.equals(SENTINEL_KEY)) {
+                if (i < end) {
+                    String key = keys[i];
                     int i1 = key.indexOf('[', prefixLen); 
                     int i2 = key.indexOf('.', prefixLen);
                     if (i1 < 0 && i2 < 0) {
@@ -192,60 +270,53 @@ public class JsonBasedPropertiesConverterService implements PropertiesConverterS
                 }
                 // Check if field token has changed
                 if (token == null || !token.equals(token1)) {
-                    // A group ends here: Set field on target object node
+                    // A group ends here: Record a field (a leaf is only set for non-empty values)
                     if (token1 != null) {
-                        String fieldName = token1.name;
-                        SortedSet<String> fieldKeys = key.compareTo(keys.last()) <= 0?
-                            keys.subSet(groupKey, key) : keys.tailSet(groupKey);
-                        switch (token1.type) {
-                        case ARRAY:
-                            {
-                                ArrayNode child = propertiesToArray(
-                                    prefixLen + fieldName.length() + 1, // +1 for "[" 
-                                    fieldKeys);
-                                node.set(fieldName, child);
-                            }
-                            break;
-                        case OBJECT:
-                            {
-                                ObjectNode child = propertiesToObject(
-                                    prefixLen + fieldName.length() + 1, // +1 for "."
-                                    fieldKeys);
-                                node.set(fieldName, child);
-                            }
-                            break;
-                        case LEAF:
-                        default:
-                            {
-                                String value = properties.getProperty(groupKey);
-                                if (value != null && !value.isEmpty()) 
-                                    node.put(fieldName, value);
-                            }
-                            break;
-                        }
+                        if (token1.type != FieldType.LEAF || !StringUtils.isEmpty(leafValue(groupStart)))
+                            groups.put(token1.name, new FieldGroup(token1, groupStart, i));
                     }
                     // Move to next group (described by token)
                     token1 = token;
-                    groupKey = key;
+                    groupStart = i;
                 }
             }
             
-            return node;
+            buffer.writeStartObject();
+            for (FieldGroup group: groups.values()) {
+                final String fieldName = group.token.name;
+                buffer.writeFieldName(fieldName);
+                switch (group.token.type) {
+                case ARRAY:
+                    propertiesToArray(
+                        prefixLen + fieldName.length() + 1, // +1 for "["
+                        group.start, group.end);
+                    break;
+                case OBJECT:
+                    propertiesToObject(
+                        prefixLen + fieldName.length() + 1, // +1 for "."
+                        group.start, group.end);
+                    break;
+                case LEAF:
+                default:
+                    buffer.writeString(leafValue(group.start));
+                    break;
+                }
+            }
+            buffer.writeEndObject();
         }
         
-        private ArrayNode propertiesToArray(int prefixLen, SortedSet<String> keys)
+        private void propertiesToArray(int prefixLen, int start, int end) throws IOException
         {
-            final Pattern fieldPattern = Pattern.compile("((\\d+)\\])(.)?");
+            buffer.writeStartArray();
             
-            ArrayNode node = objectMapper.createArrayNode();
-            
-            String groupKey = null; // a group starting on this key
+            int groupStart = -1; // a group starting on this position
             FieldToken token1 = null; // the previous token (for the previous group)
-            for (String key: chainedIterable(keys, Collections.singleton(SENTINEL_KEY))) {
+            for (int i = start; i <= end; ++i) {
                 FieldToken token = null;
                 // Parse field token for this key
-                if (!key.equals(SENTINEL_KEY)) { 
-                    Matcher m = fieldPattern.matcher(key);
+                if (i < end) { 
+                    String key = keys[i];
+                    Matcher m = INDEXED_FIELD_PATTERN.matcher(key);
                     if (m.find(prefixLen)) {
                         int index = Integer.valueOf(m.group(2));
                         String name = m.group(1);
@@ -265,37 +336,29 @@ public class JsonBasedPropertiesConverterService implements PropertiesConverterS
                 }
                 // Check if field token has changed
                 if (token == null || !token.equals(token1)) {
-                    // A group ends here: Add item on target array node
+                    // A group ends here: Add item on target array
                     if (token1 != null) {
                         if (token != null && (token.index - token1.index != 1))
                             throw new IllegalArgumentException(
                                 "Expected a consecutive range of indices!");
                         String fieldName = token1.name;
-                        SortedSet<String> fieldKeys = key.compareTo(keys.last()) <= 0?
-                            keys.subSet(groupKey, key) : keys.tailSet(groupKey);
                         switch (token1.type) {
                         case ARRAY:
-                            {
-                                ArrayNode child = propertiesToArray(
-                                    prefixLen + fieldName.length() + 1, // +1 for "[",
-                                    fieldKeys);
-                                node.add(child);
-                            }
+                            propertiesToArray(
+                                prefixLen + fieldName.length() + 1, // +1 for "[",
+                                groupStart, i);
                             break;
                         case OBJECT:
-                            {
-                                ObjectNode child = propertiesToObject(
-                                    prefixLen + fieldName.length() + 1, // +1 for "."
-                                    fieldKeys);
-                                node.add(child);
-                            }
+                            propertiesToObject(
+                                prefixLen + fieldName.length() + 1, // +1 for "."
+                                groupStart, i);
                             break;
                         case LEAF:
                         default:
                             {
-                                String value = properties.getProperty(groupKey);
+                                String value = leafValue(groupStart);
                                 if (value != null && !value.isEmpty()) 
-                                    node.add(value);
+                                    buffer.writeString(value);
                             }
                             break;
                         }
@@ -305,48 +368,84 @@ public class JsonBasedPropertiesConverterService implements PropertiesConverterS
                     }
                     // Move to next group (described by token)
                     token1 = token;
-                    groupKey = key;
+                    groupStart = i;
                 }
             }
             
-            return node;
+            buffer.writeEndArray();
         }
         
-        public JsonNode getRoot()
+        private String leafValue(int position)
         {
-            return root;
+            return properties.getProperty(keys[position]);
+        }
+        
+        public TokenBuffer getBuffer()
+        {
+            return buffer;
         }
     }
     
     private final ObjectMapper objectMapper;
     
-    public JsonBasedPropertiesConverterService( ObjectMapper objectMapper)
+    /**
+     * A writer to serialize a bean (with root-level wrapping disabled, as for a JSON tree)
+     */
+    private final ObjectWriter writer;
+    
+    /**
+     * The writers (i.e. serializers) per class of a bean
+     */
+    private final ConcurrentMap<Class<?>, ObjectWriter> writers = new ConcurrentHashMap<>();
+    
+    /**
+     * The readers (i.e. deserializers) per class of a bean
+     */
+    private final ConcurrentMap<Class<?>, ObjectReader> readers = new ConcurrentHashMap<>();
+    
+    public JsonBasedPropertiesConverterService(ObjectMapper objectMapper)
     {
         Validate.notNull(objectMapper, "An object mapper is required");
         this.objectMapper = objectMapper;
+        this.writer = objectMapper.writer().without(SerializationFeature.WRAP_ROOT_VALUE);
     }
     
     /**
-     * Convert a bean to a map of properties by using an intermediate JSON serialization.
+     * Convert a bean to a map of properties by flattening its JSON serialization.
      */
     @Override
     public Properties valueToProperties(Object value)
     {
-        JsonNode root = objectMapper.valueToTree(value);
-        return (new TreeVisitor(root)).getProperties();
+        Validate.notNull(value, "Expected a non-null value");
+        
+        TokenBuffer buffer = new TokenBuffer(objectMapper, false);
+        ObjectWriter w = writers.computeIfAbsent(value.getClass(), writer::forType);
+        try {
+            w.writeValue(buffer, value);
+            try (JsonParser parser = buffer.asParser()) {
+                return (new TokenVisitor(parser)).getProperties();
+            }
+        } catch (IOException ex) {
+            throw new IllegalArgumentException(ex.getMessage(), ex);
+        }
     }
 
     @Override
     public <T extends Serializable> T propertiesToValue(Properties props, Class<T> valueType)
         throws ConversionFailedException
     {
-        JsonNode root = (new TreeBuilder(props)).getRoot();
+        ObjectReader reader = readers.computeIfAbsent(valueType, objectMapper::readerFor);
         T value = null;
         try {
-            value = objectMapper.treeToValue(root, valueType);
+            TokenBuffer buffer = (new TokenBuilder(props)).getBuffer();
+            try (JsonParser parser = buffer.asParser()) {
+                value = reader.readValue(parser);
+            }
         } catch (JsonProcessingException ex) {
             throw new ConversionFailedException(
                 "Failed to convert properties to a value of [" + valueType.getName() + "]" , ex);
+        } catch (IOException ex) {
+            throw new IllegalArgumentException(ex.getMessage(), ex);
         }
         return value;
     }
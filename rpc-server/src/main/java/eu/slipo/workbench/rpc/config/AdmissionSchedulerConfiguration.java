@@ -0,0 +1,96 @@
+package eu.slipo.workbench.rpc.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.exceptions.DockerException;
+import com.spotify.docker.client.messages.Info;
+
+import eu.slipo.workbench.rpc.service.AdmissionScheduler;
+import eu.slipo.workbench.rpc.service.ContainerHost;
+import eu.slipo.workbench.rpc.service.ContainerHostPool;
+import eu.slipo.workbench.rpc.service.DefaultAdmissionScheduler;
+
+@Configuration
+public class AdmissionSchedulerConfiguration
+{
+    private static final Logger logger = LoggerFactory.getLogger(AdmissionSchedulerConfiguration.class);
+
+    /**
+     * The memory budget (kbytes). If not given, the total memory of the docker host is used (or,
+     * if a pool of docker hosts is present, the total memory of all hosts).
+     */
+    @Value("${slipo.rpc-server.admission.memory-budget-kbytes:}")
+    private Long memoryBudgetKbytes;
+
+    /**
+     * The CPU budget (number of CPUs). If not given, the number of CPUs of the docker host is used
+     * (or, if a pool of docker hosts is present, the total number of CPUs of all hosts).
+     */
+    @Value("${slipo.rpc-server.admission.cpu-budget:}")
+    private Double cpuBudget;
+
+    @Value("${slipo.rpc-server.admission.policy:FIFO}")
+    private AdmissionScheduler.Policy policy;
+
+    /**
+     * A scheduler admitting containers under a budget of host resources, shared among all
+     * container-based jobs.
+     */
+    @Bean
+    @ConditionalOnProperty(
+        name = "slipo.rpc-server.admission.enabled", havingValue = "true", matchIfMissing = false)
+    public AdmissionScheduler admissionScheduler(
+        DockerClient dockerClient, ObjectProvider<ContainerHostPool> containerHostPool)
+    {
+        long memory = memoryBudgetKbytes == null? -1L : memoryBudgetKbytes * 1024L;
+        double cpus = cpuBudget == null? -1.0 : cpuBudget;
+
+        final ContainerHostPool pool = containerHostPool.getIfAvailable();
+
+        if ((memory <= 0 || cpus <= 0) && pool != null) {
+            // Use the total resources of the docker hosts as a default budget
+            long totalMemory = 0L;
+            double totalCpus = 0.0;
+            for (ContainerHost host: pool.hosts()) {
+                Info info = queryInfo(host.client());
+                totalMemory += host.memory() > 0? host.memory() :
+                    ((info != null && info.memTotal() != null)? info.memTotal() : 0L);
+                totalCpus += (info != null && info.cpus() != null)? info.cpus().doubleValue() : 0.0;
+            }
+            if (memory <= 0)
+                memory = totalMemory > 0? totalMemory : Long.MAX_VALUE;
+            if (cpus <= 0)
+                cpus = totalCpus > 0? totalCpus : Runtime.getRuntime().availableProcessors();
+        } else if (memory <= 0 || cpus <= 0) {
+            // Use the resources of the docker host as a default budget
+            Info info = queryInfo(dockerClient);
+            if (memory <= 0)
+                memory = (info != null && info.memTotal() != null)? info.memTotal() : Long.MAX_VALUE;
+            if (cpus <= 0)
+                cpus = (info != null && info.cpus() != null)?
+                    info.cpus().doubleValue() : Runtime.getRuntime().availableProcessors();
+        }
+
+        logger.info("Admitting containers under a budget of {}m memory and {} CPUs ({})",
+            memory / 1024L / 1024L, cpus, policy);
+
+        return new DefaultAdmissionScheduler(memory, cpus, policy);
+    }
+
+    private Info queryInfo(DockerClient dockerClient)
+    {
+        try {
+            return dockerClient.info();
+        } catch (DockerException | InterruptedException ex) {
+            logger.warn("Cannot query docker host for resources: {}", ex.getMessage());
+            return null;
+        }
+    }
+}
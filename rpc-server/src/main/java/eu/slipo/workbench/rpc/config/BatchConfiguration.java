@@ -1,6 +1,8 @@
 package eu.slipo.workbench.rpc.config;
 
 
+import java.nio.file.Path;
+
 import org.springframework.batch.core.configuration.JobRegistry;
 import org.springframework.batch.core.configuration.annotation.EnableBatchProcessing;
 import org.springframework.batch.core.explore.JobExplorer;
@@ -10,11 +12,18 @@ import org.springframework.batch.core.launch.support.SimpleJobLauncher;
 import org.springframework.batch.core.launch.support.SimpleJobOperator;
 import org.springframework.batch.core.repository.JobRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.DependsOn;
 import org.springframework.context.annotation.Primary;
 import org.springframework.core.task.TaskExecutor;
+import org.springframework.scheduling.TaskScheduler;
+
+import eu.slipo.workbench.rpc.jobs.ContainerBasedJobConfiguration;
+import eu.slipo.workbench.rpc.jobs.tasklet.OutputSpool;
+import eu.slipo.workbench.rpc.service.SpooledInputJobLauncher;
 
 @Configuration
 @EnableBatchProcessing
@@ -30,15 +39,35 @@ public class BatchConfiguration
     @Autowired
     JobRegistry registry;
 
+    @Autowired
+    @Qualifier("jobDataDirectory")
+    Path jobDataDir;
+
+    @Value("${slipo.rpc-server.jobs.pipelining.enabled:false}")
+    boolean pipeliningEnabled;
+
+    @Value("${slipo.rpc-server.jobs.pipelining.timeout-seconds:}")
+    Long pipeliningTimeoutSeconds;
+
     @Bean({ "jobLauncher", "defaultJobLauncher", "asyncJobLauncher"})
     @Primary
-    JobLauncher jobLauncher(TaskExecutor taskExecutor)
+    JobLauncher jobLauncher(TaskExecutor taskExecutor, TaskScheduler taskScheduler) throws Exception
     {
         // Setup with our task executor (default is SyncTaskExecutor)
         SimpleJobLauncher launcher = new SimpleJobLauncher();
         launcher.setJobRepository(repository);
         launcher.setTaskExecutor(taskExecutor);
-        return launcher;
+
+        if (!pipeliningEnabled)
+            return launcher;
+
+        // Defer a job reading a spooled input until the producer of the spool has started, so that
+        // it does not hold a thread of the executor while waiting
+        launcher.afterPropertiesSet();
+        long timeout = pipeliningTimeoutSeconds == null?
+            ContainerBasedJobConfiguration.DEFAULT_PIPELINING_TIMEOUT : (pipeliningTimeoutSeconds * 1000L);
+        return new SpooledInputJobLauncher(launcher, repository, taskExecutor, taskScheduler,
+            jobDataDir.resolve(OutputSpool.DIRECTORY_NAME), timeout);
     }
 
     @Bean({"syncJobLauncher"})
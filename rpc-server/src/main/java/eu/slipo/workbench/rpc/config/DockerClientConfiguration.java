@@ -1,23 +1,88 @@
 package eu.slipo.workbench.rpc.config;
 
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.util.Assert;
 
 import com.spotify.docker.client.DefaultDockerClient;
 import com.spotify.docker.client.DockerClient;
 import com.spotify.docker.client.exceptions.DockerCertificateException;
 
+import eu.slipo.workbench.rpc.jobs.tasklet.docker.ContainerEventMonitor;
+import eu.slipo.workbench.rpc.service.ContainerHost;
+import eu.slipo.workbench.rpc.service.ContainerHostPool;
+import eu.slipo.workbench.rpc.service.DefaultContainerHostPool;
+
 @Configuration
 public class DockerClientConfiguration
 {
+    private static final Logger logger = LoggerFactory.getLogger(DockerClientConfiguration.class);
+
+    /**
+     * The name of the default docker host (i.e. the one at the connection URL) inside a pool
+     */
+    public static final String DEFAULT_HOST_NAME = "default";
+
     /**
      * The docker server URL
      */
     @Value("${slipo.rpc-server.docker.connection-url:unix:///var/run/docker.sock}")
     private String url;
 
+    /**
+     * The interval (milliseconds) to wait before re-subscribing to the event stream of
+     * the docker daemon
+     */
+    @Value("${slipo.rpc-server.docker.events.reconnect-interval-millis:2000}")
+    private long eventsReconnectInterval;
+
+    @Value("${slipo.rpc-server.docker.events.enabled:true}")
+    private boolean eventsEnabled;
+
+    /**
+     * The names of (additional) docker hosts of a pool. The properties of a host are given under
+     * <tt>slipo.rpc-server.docker.hosts.&lt;name&gt;</tt>.
+     */
+    @Value("${slipo.rpc-server.docker.hosts.names:}")
+    private String[] hostNames;
+
+    /**
+     * A flag to indicate that the default docker host is a member of the pool
+     */
+    @Value("${slipo.rpc-server.docker.hosts.include-default:true}")
+    private boolean includeDefaultHost;
+
+    @Value("${slipo.rpc-server.docker.hosts.health-check-interval-millis:5000}")
+    private long healthCheckInterval;
+
+    @Value("${slipo.rpc-server.docker.hosts.max-failures:2}")
+    private int maxFailures;
+
+    @Autowired
+    private Environment environment;
+
+    @Autowired
+    private TaskScheduler taskScheduler;
+
+    /**
+     * The monitors for container events created for (additional) hosts of the pool
+     */
+    private final List<ContainerEventMonitor> hostMonitors = new ArrayList<>();
+
     @Bean
     public DockerClient dockerClient() throws DockerCertificateException
     {
@@ -26,4 +91,100 @@ public class DockerClientConfiguration
             .connectTimeoutMillis(2000L)
             .build();
     }
-}
\ No newline at end of file
+
+    /**
+     * A monitor for container events, shared among all tasklets waiting for a container
+     * to complete (if disabled, tasklets will fall back to polling).
+     */
+    @Bean(initMethod = "start", destroyMethod = "stop")
+    @ConditionalOnProperty(
+        name = "slipo.rpc-server.docker.events.enabled", havingValue = "true", matchIfMissing = true)
+    public ContainerEventMonitor containerEventMonitor(DockerClient dockerClient)
+    {
+        ContainerEventMonitor monitor = new ContainerEventMonitor(dockerClient);
+        monitor.setReconnectInterval(eventsReconnectInterval);
+        return monitor;
+    }
+
+    /**
+     * A pool of docker hosts (only if enabled), where containers of jobs are placed. The default
+     * docker host is a member of the pool (unless excluded).
+     */
+    @Bean
+    @ConditionalOnProperty(name = "slipo.rpc-server.docker.hosts.enabled", havingValue = "true")
+    public ContainerHostPool containerHostPool(
+        DockerClient dockerClient, ObjectProvider<ContainerEventMonitor> containerEventMonitor)
+        throws DockerCertificateException
+    {
+        List<ContainerHost> hosts = new ArrayList<>();
+
+        if (includeDefaultHost) {
+            hosts.add(buildHost(DEFAULT_HOST_NAME, dockerClient, containerEventMonitor.getIfAvailable()));
+        }
+
+        for (String name: hostNames) {
+            name = name.trim();
+            if (name.isEmpty())
+                continue;
+            String hostUrl = environment.getRequiredProperty(hostKey(name, "connection-url"));
+            DockerClient client = DefaultDockerClient.fromEnv()
+                .uri(hostUrl)
+                .connectTimeoutMillis(2000L)
+                .build();
+            ContainerEventMonitor monitor = null;
+            if (eventsEnabled) {
+                monitor = new ContainerEventMonitor(client);
+                monitor.setReconnectInterval(eventsReconnectInterval);
+                monitor.start();
+                hostMonitors.add(monitor);
+            }
+            hosts.add(buildHost(name, client, monitor));
+        }
+
+        DefaultContainerHostPool pool = new DefaultContainerHostPool(hosts);
+        pool.setMaxFailures(maxFailures);
+        pool.checkHealth();
+        taskScheduler.scheduleWithFixedDelay(pool::checkHealth, healthCheckInterval);
+
+        logger.info("Placing containers on a pool of docker hosts: {}", hosts);
+        return pool;
+    }
+
+    private String hostKey(String name, String key)
+    {
+        return "slipo.rpc-server.docker.hosts." + name + "." + key;
+    }
+
+    private ContainerHost buildHost(String name, DockerClient client, ContainerEventMonitor monitor)
+    {
+        ContainerHost.Builder builder = ContainerHost.builder(name, client).monitor(monitor);
+
+        // A path mapping is given as a local:host pair of absolute paths
+
+        String[] pathMappings = environment.getProperty(hostKey(name, "path-mappings"), String[].class);
+        if (pathMappings != null) {
+            for (String pathMapping: pathMappings) {
+                if (pathMapping.trim().isEmpty())
+                    continue;
+                String[] parts = pathMapping.trim().split(":");
+                Assert.isTrue(parts.length == 2, "Expected a path mapping as <path>:<host-path>");
+                builder.pathMapping(Paths.get(parts[0]), Paths.get(parts[1]));
+            }
+        }
+
+        Long memoryKbytes = environment.getProperty(hostKey(name, "memory-kbytes"), Long.class);
+        if (memoryKbytes != null) {
+            Assert.isTrue(memoryKbytes > 0, "Expected a positive memory for a docker host");
+            builder.memory(memoryKbytes * 1024L);
+        }
+
+        return builder.build();
+    }
+
+    @PreDestroy
+    private void stopHostMonitors()
+    {
+        for (ContainerEventMonitor monitor: hostMonitors)
+            monitor.stop();
+    }
+}
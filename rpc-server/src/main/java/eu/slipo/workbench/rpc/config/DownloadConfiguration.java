@@ -0,0 +1,48 @@
+package eu.slipo.workbench.rpc.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import eu.slipo.workbench.rpc.jobs.download.HttpDownloader;
+
+@Configuration
+public class DownloadConfiguration
+{
+    @Value("${slipo.rpc-server.jobs.download.max-attempts:}")
+    private Integer maxAttempts;
+
+    @Value("${slipo.rpc-server.jobs.download.parallel-ranges:}")
+    private Integer parallelRanges;
+
+    @Value("${slipo.rpc-server.jobs.download.parallel-min-size-kbytes:}")
+    private Long parallelMinSizeKbytes;
+
+    @Value("${slipo.rpc-server.jobs.download.connect-timeout-seconds:}")
+    private Integer connectTimeoutSeconds;
+
+    @Value("${slipo.rpc-server.jobs.download.read-timeout-seconds:}")
+    private Integer readTimeoutSeconds;
+
+    /**
+     * A downloader for HTTP(S) resources (shared by download jobs and the download cache)
+     */
+    @Bean
+    public HttpDownloader httpDownloader()
+    {
+        HttpDownloader.Builder builder = HttpDownloader.builder();
+
+        if (maxAttempts != null)
+            builder.maxAttempts(maxAttempts);
+        builder.parallelRanges(
+            parallelRanges == null? HttpDownloader.DEFAULT_PARALLEL_RANGES : parallelRanges,
+            parallelMinSizeKbytes == null?
+                HttpDownloader.DEFAULT_PARALLEL_MIN_SIZE : parallelMinSizeKbytes * 1024L);
+        if (connectTimeoutSeconds != null)
+            builder.connectTimeout(connectTimeoutSeconds * 1000);
+        if (readTimeoutSeconds != null)
+            builder.readTimeout(readTimeoutSeconds * 1000);
+
+        return builder.build();
+    }
+}
@@ -0,0 +1,61 @@
+package eu.slipo.workbench.rpc.config;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.StringUtils;
+
+import eu.slipo.workbench.rpc.service.FairShareExecutionQueue;
+
+@Configuration
+public class ExecutionQueueConfiguration
+{
+    private static final Logger logger = LoggerFactory.getLogger(ExecutionQueueConfiguration.class);
+
+    @Value("${slipo.rpc-server.process-queue.max-concurrency:4}")
+    private Integer maxConcurrency;
+
+    @Value("${slipo.rpc-server.process-queue.max-concurrency-per-user:2}")
+    private Integer maxConcurrencyPerUser;
+
+    /**
+     * A comma-separated list of <tt>userId:weight</tt> pairs, e.g. <tt>1:3,7:2</tt>. Users not
+     * present in this list have a weight of 1.
+     */
+    @Value("${slipo.rpc-server.process-queue.user-weights:}")
+    private String userWeights;
+
+    private static Map<Integer, Integer> parseWeights(String s)
+    {
+        Map<Integer, Integer> weights = new HashMap<>();
+        for (String pair: StringUtils.commaDelimitedListToStringArray(s)) {
+            String[] parts = StringUtils.split(pair.trim(), ":");
+            if (parts == null)
+                throw new IllegalArgumentException("Expected a userId:weight pair: " + pair);
+            weights.put(Integer.valueOf(parts[0].trim()), Integer.valueOf(parts[1].trim()));
+        }
+        return weights;
+    }
+
+    /**
+     * A queue that admits process executions, sharing capacity fairly among users.
+     */
+    @Bean
+    @ConditionalOnProperty(
+        name = "slipo.rpc-server.process-queue.enabled", havingValue = "true", matchIfMissing = false)
+    public FairShareExecutionQueue executionQueue()
+    {
+        Map<Integer, Integer> weights = parseWeights(userWeights);
+
+        logger.info("Admitting up to {} process executions ({} per user while others wait); weights: {}",
+            maxConcurrency, maxConcurrencyPerUser, weights);
+
+        return new FairShareExecutionQueue(maxConcurrency, maxConcurrencyPerUser, weights);
+    }
+}
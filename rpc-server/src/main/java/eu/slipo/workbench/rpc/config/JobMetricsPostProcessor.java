@@ -0,0 +1,72 @@
+package eu.slipo.workbench.rpc.config;
+
+import org.springframework.aop.support.AopUtils;
+import org.springframework.batch.core.launch.JobLauncher;
+import org.springframework.batch.core.step.AbstractStep;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryAware;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+
+import eu.slipo.workbench.rpc.jobs.listener.StepMetricsListener;
+import eu.slipo.workbench.rpc.service.MeteredJobLauncher;
+import eu.slipo.workbench.rpc.service.MetricRegistry;
+
+/**
+ * Instrument the execution engine for metrics: attach a {@link StepMetricsListener} to every
+ * step bean, and wrap the (primary) job launcher into a {@link MeteredJobLauncher}.
+ * <p>
+ * The metric registry is looked up lazily, so that no bean is created early just to be injected
+ * into this post-processor.
+ */
+public class JobMetricsPostProcessor implements BeanPostProcessor, BeanFactoryAware
+{
+    /**
+     * The name of the (primary) job launcher. Note that the synchronous launcher is not wrapped,
+     * so that a job is never instrumented twice.
+     */
+    public static final String JOB_LAUNCHER_NAME = "jobLauncher";
+
+    private BeanFactory beanFactory;
+
+    private StepMetricsListener stepListener;
+
+    @Override
+    public void setBeanFactory(BeanFactory beanFactory) throws BeansException
+    {
+        this.beanFactory = beanFactory;
+    }
+
+    private MetricRegistry registry()
+    {
+        return beanFactory.getBean(MetricRegistry.class);
+    }
+
+    private synchronized StepMetricsListener stepListener()
+    {
+        if (stepListener == null)
+            stepListener = new StepMetricsListener(registry());
+        return stepListener;
+    }
+
+    @Override
+    public Object postProcessBeforeInitialization(Object bean, String beanName) throws BeansException
+    {
+        return bean;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException
+    {
+        if (AopUtils.isAopProxy(bean))
+            return bean;
+
+        if (bean instanceof AbstractStep) {
+            ((AbstractStep) bean).registerStepExecutionListener(stepListener());
+        } else if (bean instanceof JobLauncher && JOB_LAUNCHER_NAME.equals(beanName)) {
+            return new MeteredJobLauncher((JobLauncher) bean, registry());
+        }
+
+        return bean;
+    }
+}
@@ -0,0 +1,146 @@
+package eu.slipo.workbench.rpc.config;
+
+import java.util.Collection;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import eu.slipo.workbench.common.service.FileMaterializer;
+import eu.slipo.workbench.rpc.service.AdmissionScheduler;
+import eu.slipo.workbench.rpc.service.DefaultMetricRegistry;
+import eu.slipo.workbench.rpc.service.FairShareExecutionQueue;
+import eu.slipo.workbench.rpc.service.MetricRegistry;
+import eu.slipo.workbench.rpc.service.RepositoryMetricsAspect;
+import eu.slipo.workflows.WorkflowExecutionStatus;
+import eu.slipo.workflows.service.WorkflowScheduler;
+
+/**
+ * Collect metrics on the execution engine (job launches, step durations, queue depths, phases of
+ * containers, materialized files and latency of the process repository), reported by the metrics
+ * endpoint.
+ */
+@Configuration
+@ConditionalOnProperty(name = "slipo.rpc-server.metrics.enabled", havingValue = "true", matchIfMissing = true)
+public class MetricsConfiguration
+{
+    private static final Logger logger = LoggerFactory.getLogger(MetricsConfiguration.class);
+
+    @Bean
+    public static JobMetricsPostProcessor jobMetricsPostProcessor()
+    {
+        return new JobMetricsPostProcessor();
+    }
+
+    /**
+     * A registry of metrics. Gauges on other components are read lazily (i.e. when a report is
+     * requested), and are omitted if a component is not present.
+     */
+    @Bean
+    public MetricRegistry metricRegistry(
+        @Qualifier("taskExecutor") TaskExecutor taskExecutor,
+        ObjectProvider<WorkflowScheduler> workflowSchedulerProvider,
+        ObjectProvider<AdmissionScheduler> admissionSchedulerProvider,
+        ObjectProvider<FairShareExecutionQueue> executionQueueProvider,
+        ObjectProvider<FileMaterializer> fileMaterializerProvider)
+    {
+        final MetricRegistry registry = new DefaultMetricRegistry();
+
+        // The pool of threads executing jobs (prefixed with "tasks-")
+
+        if (taskExecutor instanceof ThreadPoolTaskExecutor) {
+            final ThreadPoolTaskExecutor pool = (ThreadPoolTaskExecutor) taskExecutor;
+            registry.gauge("slipo_rpc_task_executor_active_threads", "The number of threads executing tasks",
+                pool::getActiveCount, "executor", "tasks");
+            registry.gauge("slipo_rpc_task_executor_pool_size", "The number of threads in the pool",
+                pool::getPoolSize, "executor", "tasks");
+            registry.gauge("slipo_rpc_task_executor_max_pool_size", "The maximum number of threads in the pool",
+                pool::getMaxPoolSize, "executor", "tasks");
+            registry.gauge("slipo_rpc_task_executor_queued_tasks", "The number of tasks waiting for a thread",
+                () -> pool.getThreadPoolExecutor().getQueue().size(), "executor", "tasks");
+        }
+
+        // Workflows (by status)
+
+        for (WorkflowExecutionStatus status: WorkflowExecutionStatus.values()) {
+            registry.gauge("slipo_rpc_workflows", "The number of workflows known to the scheduler",
+                readFrom(workflowSchedulerProvider, scheduler -> countWorkflows(scheduler, status)),
+                "status", status.name());
+        }
+
+        // Queues of process executions and of containers (if present)
+
+        registry.gauge("slipo_rpc_execution_queue_running", "The number of admitted process executions",
+            readFrom(executionQueueProvider, FairShareExecutionQueue::runningCount));
+        registry.gauge("slipo_rpc_execution_queue_queued", "The number of queued process executions",
+            readFrom(executionQueueProvider, FairShareExecutionQueue::queuedCount));
+
+        registry.gauge("slipo_rpc_admission_running", "The number of containers admitted to run",
+            readFrom(admissionSchedulerProvider, scheduler -> scheduler.getInfo().getRunning()));
+        registry.gauge("slipo_rpc_admission_queued", "The number of containers waiting for admission",
+            readFrom(admissionSchedulerProvider, scheduler -> scheduler.getInfo().getQueued()));
+        registry.gauge("slipo_rpc_admission_memory_in_use_bytes", "The memory held by admitted containers",
+            readFrom(admissionSchedulerProvider, scheduler -> scheduler.getInfo().getMemoryInUse()));
+        registry.gauge("slipo_rpc_admission_cpus_in_use", "The CPUs held by admitted containers",
+            readFrom(admissionSchedulerProvider, scheduler -> scheduler.getInfo().getCpusInUse()));
+
+        // Files materialized (by strategy)
+
+        for (FileMaterializer.Strategy strategy: FileMaterializer.Strategy.values()) {
+            final String name = strategy.name().toLowerCase();
+            registry.gauge("slipo_rpc_materialized_files", "The number of files materialized",
+                readFrom(fileMaterializerProvider, m -> m.getStatistics().get(strategy).getCount()),
+                "strategy", name);
+            registry.gauge("slipo_rpc_materialized_bytes", "The bytes of files materialized",
+                readFrom(fileMaterializerProvider, m -> m.getStatistics().get(strategy).getBytes()),
+                "strategy", name);
+            registry.gauge("slipo_rpc_materialize_seconds", "The time spent materializing files",
+                readFrom(fileMaterializerProvider, m -> m.getStatistics().get(strategy).getNanos() * 1E-9),
+                "strategy", name);
+        }
+
+        logger.info("Collecting metrics on the execution engine");
+        return registry;
+    }
+
+    /**
+     * An aspect timing calls to the process repository
+     */
+    @Bean
+    public RepositoryMetricsAspect repositoryMetricsAspect(MetricRegistry registry)
+    {
+        return new RepositoryMetricsAspect(registry);
+    }
+
+    /**
+     * Read a value from a bean, or <tt>null</tt> if the bean is not present
+     */
+    private static <T> Supplier<Number> readFrom(
+        ObjectProvider<T> provider, Function<T, ? extends Number> reader)
+    {
+        return () -> {
+            T bean = provider.getIfAvailable();
+            return bean == null? null : reader.apply(bean);
+        };
+    }
+
+    private static int countWorkflows(WorkflowScheduler scheduler, WorkflowExecutionStatus status)
+    {
+        int n = 0;
+        Collection<UUID> workflowIds = scheduler.list();
+        for (UUID workflowId: workflowIds) {
+            if (scheduler.status(workflowId) == status)
+                n++;
+        }
+        return n;
+    }
+}
@@ -0,0 +1,65 @@
+package eu.slipo.workbench.rpc.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.TaskScheduler;
+
+import eu.slipo.workbench.common.repository.ProcessRepository;
+import eu.slipo.workbench.rpc.service.DefaultResourcePredictor;
+import eu.slipo.workbench.rpc.service.ResourcePredictor;
+
+@Configuration
+public class ResourcePredictorConfiguration
+{
+    private static final Logger logger = LoggerFactory.getLogger(ResourcePredictorConfiguration.class);
+
+    /**
+     * The number of (most recent) completed steps of a tool to learn from
+     */
+    @Value("${slipo.rpc-server.jobs.predictions.history-size:200}")
+    private int historySize;
+
+    /**
+     * The minimum number of steps of a tool to learn a model from
+     */
+    @Value("${slipo.rpc-server.jobs.predictions.min-samples:8}")
+    private int minSamples;
+
+    /**
+     * The headroom (in number of standard deviations of residuals) added to a prediction
+     */
+    @Value("${slipo.rpc-server.jobs.predictions.headroom:2.0}")
+    private double headroom;
+
+    @Value("${slipo.rpc-server.jobs.predictions.refresh-interval-seconds:600}")
+    private long refreshInterval;
+
+    @Autowired
+    private TaskScheduler taskScheduler;
+
+    /**
+     * A service predicting the runtime and memory of a tool run (used to size containers), learned
+     * from the history of execution steps (only if predictions are enabled).
+     */
+    @Bean
+    @ConditionalOnProperty(name = "slipo.rpc-server.jobs.predictions.enabled", havingValue = "true")
+    public ResourcePredictor resourcePredictor(ProcessRepository processRepository)
+    {
+        DefaultResourcePredictor predictor = new DefaultResourcePredictor(processRepository);
+        predictor.setHistorySize(historySize);
+        predictor.setMinSamples(minSamples);
+        predictor.setHeadroom(headroom);
+
+        // Note: The first refresh is executed right away
+        taskScheduler.scheduleWithFixedDelay(predictor::refresh, refreshInterval * 1000L);
+
+        logger.info("Predicting resources of tools from the last {} steps (refreshed every {}s)",
+            historySize, refreshInterval);
+        return predictor;
+    }
+}
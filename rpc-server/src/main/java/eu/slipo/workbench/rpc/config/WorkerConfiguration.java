@@ -0,0 +1,52 @@
+package eu.slipo.workbench.rpc.config;
+
+import java.lang.management.ManagementFactory;
+import java.util.UUID;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.StringUtils;
+
+import eu.slipo.workbench.rpc.service.ExecutionLeaseService;
+import eu.slipo.workbench.rpc.service.JdbcExecutionLeaseService;
+
+@Configuration
+public class WorkerConfiguration
+{
+    private static final Logger logger = LoggerFactory.getLogger(WorkerConfiguration.class);
+
+    /**
+     * The id of this worker. If not given, an id is derived from the name of the JVM (usually
+     * <tt>pid@hostname</tt>) and a random suffix.
+     */
+    @Value("${slipo.rpc-server.workers.id:}")
+    private String workerId;
+
+    @Value("${slipo.rpc-server.workers.lease-duration-seconds:60}")
+    private Integer leaseDurationSeconds;
+
+    /**
+     * A service for leasing process executions among several rpc-server nodes (workers) sharing
+     * the same database (only if worker mode is enabled).
+     */
+    @Bean
+    @ConditionalOnProperty(name = "slipo.rpc-server.workers.enabled", havingValue = "true")
+    public ExecutionLeaseService executionLeaseService(DataSource dataSource)
+    {
+        String id = workerId;
+        if (StringUtils.isEmpty(id)) {
+            id = ManagementFactory.getRuntimeMXBean().getName() + "/" +
+                UUID.randomUUID().toString().substring(0, 8);
+        }
+
+        logger.info("Running as worker {} (leases expire after {}s)", id, leaseDurationSeconds);
+
+        return new JdbcExecutionLeaseService(dataSource, id, leaseDurationSeconds * 1000L);
+    }
+}
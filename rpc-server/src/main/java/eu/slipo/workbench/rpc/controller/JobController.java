@@ -1,7 +1,11 @@
 package eu.slipo.workbench.rpc.controller;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.time.format.DateTimeParseException;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -13,6 +17,8 @@ import org.springframework.batch.core.JobExecution;
 import org.springframework.batch.core.JobExecutionException;
 import org.springframework.batch.core.JobInstance;
 import org.springframework.batch.core.JobParameters;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.item.ExecutionContext;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
@@ -24,11 +30,20 @@ import org.springframework.web.bind.annotation.RestController;
 
 import eu.slipo.workbench.common.model.ErrorCode;
 import eu.slipo.workbench.common.model.RestResponse;
+import eu.slipo.workbench.common.model.jobs.AdmissionInfo;
 import eu.slipo.workbench.common.model.jobs.JobExecutionInfo;
 import eu.slipo.workbench.common.model.jobs.JobInstanceInfo;
+import eu.slipo.workbench.common.model.jobs.JobStepOutputInfo;
+import eu.slipo.workbench.common.model.jobs.ResourcePredictionInfo;
+import eu.slipo.workbench.common.model.jobs.WarmPoolInfo;
+import eu.slipo.workbench.rpc.jobs.tasklet.docker.ContainerLogFile;
+import eu.slipo.workbench.rpc.jobs.tasklet.docker.RunContainerTasklet;
+import eu.slipo.workbench.rpc.jobs.tasklet.docker.WarmContainerPool;
 import eu.slipo.workbench.rpc.model.JobErrorCode;
 import eu.slipo.workbench.rpc.model.MissingJobParameterException;
+import eu.slipo.workbench.rpc.service.AdmissionScheduler;
 import eu.slipo.workbench.rpc.service.JobService;
+import eu.slipo.workbench.rpc.service.ResourcePredictor;
 
 @RestController
 @RequestMapping(produces = "application/json")
@@ -36,9 +51,28 @@ public class JobController
 {
     private static final Logger logger = LoggerFactory.getLogger(JobController.class);
 
+    /**
+     * The maximum length (in bytes) for a range of step output
+     */
+    private static final int MAX_OUTPUT_LENGTH = 1024 * 1024;
+
+    /**
+     * The default length (in bytes) for a range of step output
+     */
+    private static final int DEFAULT_OUTPUT_LENGTH = 64 * 1024;
+
     @Autowired
     JobService jobService;
 
+    @Autowired(required = false)
+    AdmissionScheduler admissionScheduler;
+
+    @Autowired(required = false)
+    ResourcePredictor resourcePredictor;
+
+    @Autowired(required = false)
+    List<WarmContainerPool> warmPools = Collections.emptyList();
+
     /**
      * Create a DTO object ({@link JobExecutionInfo}) from a job execution ({@link JobExecution}).
      */
@@ -65,6 +99,62 @@ public class JobController
         return r;
     }
 
+    /**
+     * Find the log file holding the output of a step (for a given job execution).
+     *
+     * @throws OutputNotAvailableException if no such step, or no log file, exists
+     */
+    private ContainerLogFile findStepOutputFile(String jobName, long executionId, String stepName)
+    {
+        JobExecution execution = jobService.findExecution(executionId);
+        if (execution == null || !execution.getJobInstance().getJobName().equals(jobName))
+            throw new OutputNotAvailableException(
+                JobErrorCode.JOB_EXECUTION_NOT_FOUND, "No such execution: " + executionId);
+
+        StepExecution stepExecution = execution.getStepExecutions().stream()
+            .filter(x -> x.getStepName().equals(stepName))
+            .findFirst().orElse(null);
+        if (stepExecution == null)
+            throw new OutputNotAvailableException(
+                JobErrorCode.JOB_STEP_NOT_FOUND, "No such step: " + stepName);
+
+        ExecutionContext stepContext = stepExecution.getExecutionContext();
+        ContainerLogFile logFile = RunContainerTasklet.getOutputFile(stepContext);
+        if (logFile == null || !Files.exists(logFile.getPath()))
+            throw new OutputNotAvailableException(
+                JobErrorCode.JOB_STEP_OUTPUT_NOT_AVAILABLE, "No output is available for step: " + stepName);
+
+        return logFile;
+    }
+
+    /**
+     * Signal that the output for a step cannot be read (carries the appropriate error code)
+     */
+    @SuppressWarnings("serial")
+    private static class OutputNotAvailableException extends RuntimeException
+    {
+        private final ErrorCode errorCode;
+
+        private OutputNotAvailableException(ErrorCode errorCode, String message)
+        {
+            super(message);
+            this.errorCode = errorCode;
+        }
+    }
+
+    private static JobStepOutputInfo createOutputInfo(
+        long executionId, String stepName, long offset, byte[] data, long size)
+    {
+        JobStepOutputInfo r = new JobStepOutputInfo(executionId, stepName);
+
+        r.setOffset(offset);
+        r.setLength(data.length);
+        r.setSize(size);
+        r.setContent(new String(data, StandardCharsets.UTF_8));
+
+        return r;
+    }
+
     private static JobInstanceInfo createInstanceInfo(JobInstance instance)
     {
         JobInstanceInfo r = new JobInstanceInfo(instance.getJobName(), instance.getId());
@@ -80,6 +170,47 @@ public class JobController
         return RestResponse.result(jobService.getNames());
     }
 
+    /**
+     * Report the state of admission for containers (resources in use, running and queued
+     * containers).
+     */
+    @GetMapping(value = "/api/jobs/admission")
+    public RestResponse<AdmissionInfo> getAdmissionInfo()
+    {
+        if (admissionScheduler == null)
+            return RestResponse.error(
+                JobErrorCode.ADMISSION_NOT_ENABLED, "The admission of containers is not controlled");
+
+        return RestResponse.result(admissionScheduler.getInfo());
+    }
+
+    /**
+     * Report the state of pools of warm containers (idle containers, hits and misses, and
+     * the estimated time saved by serving runs from warm containers).
+     */
+    @GetMapping(value = "/api/jobs/warm-pools")
+    public RestResponse<List<WarmPoolInfo>> getWarmPoolInfo()
+    {
+        List<WarmPoolInfo> r = warmPools.stream()
+            .map(WarmContainerPool::getInfo)
+            .collect(Collectors.toList());
+        return RestResponse.result(r);
+    }
+
+    /**
+     * Report the learned resource models (runtime, memory) per tool, along with the predicted
+     * against the actual resources of recent execution steps.
+     */
+    @GetMapping(value = "/api/jobs/predictions")
+    public RestResponse<List<ResourcePredictionInfo>> getPredictionInfo()
+    {
+        if (resourcePredictor == null)
+            return RestResponse.error(
+                JobErrorCode.PREDICTIONS_NOT_ENABLED, "The resources of containers are not predicted");
+
+        return RestResponse.result(resourcePredictor.getInfo());
+    }
+
     /**
      * Submit a new job with a given map of parameters.
      * <p>
@@ -237,4 +368,76 @@ public class JobController
         return execution == null?
             null : RestResponse.result(createExecutionInfo(execution));
     }
-}
+
+    /**
+     * Read a range of the output (stdout/stderr) of a (container-based) step of a job execution.
+     * <p>
+     * The output is read from the log file that a step streams its output into. Offsets are
+     * in bytes, relative to the start of the oldest retained part (if the log is rotated).
+     *
+     * @param jobName
+     * @param executionId The execution id
+     * @param stepName The step name
+     * @param offset The offset (in bytes) to start reading from
+     * @param length The maximum number of bytes to read
+     */
+    @GetMapping(value = "/api/jobs/{jobName}/output/{executionId}/{stepName}")
+    public RestResponse<JobStepOutputInfo> getStepOutput(
+        @PathVariable String jobName, @PathVariable Long executionId, @PathVariable String stepName,
+        @RequestParam(defaultValue = "0") Long offset, @RequestParam(required = false) Integer length)
+    {
+        if (length == null || length > MAX_OUTPUT_LENGTH || length <= 0)
+            length = length == null? DEFAULT_OUTPUT_LENGTH : MAX_OUTPUT_LENGTH;
+        if (offset < 0)
+            offset = 0L;
+
+        JobStepOutputInfo r = null;
+        try {
+            ContainerLogFile logFile = findStepOutputFile(jobName, executionId, stepName);
+            byte[] data = logFile.read(offset, length);
+            r = createOutputInfo(executionId, stepName, offset, data, logFile.size());
+        } catch (OutputNotAvailableException ex) {
+            return RestResponse.error(ex.errorCode, ex.getMessage());
+        } catch (IOException ex) {
+            logger.error("Failed to read output for step {} of execution #{}: {}",
+                stepName, executionId, ex.getMessage());
+            return RestResponse.error(JobErrorCode.JOB_STEP_OUTPUT_NOT_AVAILABLE, ex.getMessage());
+        }
+
+        return RestResponse.result(r);
+    }
+
+    /**
+     * Read the tail of the output (stdout/stderr) of a (container-based) step of a job execution.
+     *
+     * @param jobName
+     * @param executionId The execution id
+     * @param stepName The step name
+     * @param length The maximum number of bytes to read
+     */
+    @GetMapping(value = "/api/jobs/{jobName}/output/{executionId}/{stepName}/tail")
+    public RestResponse<JobStepOutputInfo> getStepOutputTail(
+        @PathVariable String jobName, @PathVariable Long executionId, @PathVariable String stepName,
+        @RequestParam(required = false) Integer length)
+    {
+        if (length == null || length > MAX_OUTPUT_LENGTH || length <= 0)
+            length = length == null? DEFAULT_OUTPUT_LENGTH : MAX_OUTPUT_LENGTH;
+
+        JobStepOutputInfo r = null;
+        try {
+            ContainerLogFile logFile = findStepOutputFile(jobName, executionId, stepName);
+            long size = logFile.size();
+            long offset = Math.max(size - length, 0);
+            byte[] data = logFile.read(offset, length);
+            r = createOutputInfo(executionId, stepName, offset, data, size);
+        } catch (OutputNotAvailableException ex) {
+            return RestResponse.error(ex.errorCode, ex.getMessage());
+        } catch (IOException ex) {
+            logger.error("Failed to read output for step {} of execution #{}: {}",
+                stepName, executionId, ex.getMessage());
+            return RestResponse.error(JobErrorCode.JOB_STEP_OUTPUT_NOT_AVAILABLE, ex.getMessage());
+        }
+
+        return RestResponse.result(r);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,54 @@
+package eu.slipo.workbench.rpc.controller;
+
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import eu.slipo.workbench.common.model.RestResponse;
+import eu.slipo.workbench.common.model.jobs.MetricInfo;
+import eu.slipo.workbench.rpc.model.JobErrorCode;
+import eu.slipo.workbench.rpc.service.MetricRegistry;
+import eu.slipo.workbench.rpc.service.PrometheusTextFormat;
+
+@RestController
+@RequestMapping(produces = "application/json")
+public class MetricsController
+{
+    @Autowired(required = false)
+    MetricRegistry metricRegistry;
+
+    /**
+     * Report the current values of metrics on the execution engine (job launches, step
+     * durations, queue depths, phases of containers, latency of the process repository).
+     */
+    @GetMapping(value = "/api/metrics")
+    public RestResponse<List<MetricInfo>> getMetrics()
+    {
+        if (metricRegistry == null)
+            return RestResponse.error(JobErrorCode.METRICS_NOT_ENABLED, "Metrics are not collected");
+
+        return RestResponse.result(metricRegistry.snapshot());
+    }
+
+    /**
+     * Report the current values of metrics in the text-based format expected by a Prometheus
+     * server (i.e. this is the endpoint to be scraped).
+     */
+    @GetMapping(value = "/api/metrics/prometheus", produces = PrometheusTextFormat.CONTENT_TYPE)
+    public ResponseEntity<String> getPrometheusMetrics()
+    {
+        if (metricRegistry == null)
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.CONTENT_TYPE, PrometheusTextFormat.CONTENT_TYPE);
+        return new ResponseEntity<>(
+            PrometheusTextFormat.format(metricRegistry.snapshot()), headers, HttpStatus.OK);
+    }
+}
@@ -16,12 +16,15 @@ import org.springframework.web.bind.annotation.RestController;
 import eu.slipo.workbench.common.model.ApplicationException;
 import eu.slipo.workbench.common.model.BasicErrorCode;
 import eu.slipo.workbench.common.model.RestResponse;
+import eu.slipo.workbench.common.model.process.ProcessExecutionNotFoundException;
 import eu.slipo.workbench.common.model.process.ProcessExecutionRecord;
 import eu.slipo.workbench.common.model.process.ProcessExecutionStartException;
+import eu.slipo.workbench.common.model.process.ProcessExecutionStepStatsSampleRecord;
 import eu.slipo.workbench.common.model.process.ProcessExecutionStopException;
 import eu.slipo.workbench.common.model.process.ProcessIdentifier;
 import eu.slipo.workbench.common.model.process.ProcessNotFoundException;
 import eu.slipo.workbench.common.model.process.ProcessRecord;
+import eu.slipo.workbench.common.model.process.ProcessRecoveryInfo;
 import eu.slipo.workbench.common.repository.ProcessRepository;
 import eu.slipo.workbench.common.service.ProcessOperator;
 
@@ -42,13 +45,15 @@ public class ProcessController
 
     @PostMapping(value = "/api/proc/start")
     public RestResponse<ProcessExecutionRecord> startProc(
-        @RequestParam("id") Long id, @RequestParam("version") Long version)
+        @RequestParam("id") Long id, @RequestParam("version") Long version,
+        @RequestParam(name = "fromChanges", defaultValue = "false") boolean fromChanges)
         throws Exception
     {
         ProcessExecutionRecord executionRecord = null;
         String errorMessage = null;
         try {
-            executionRecord = processOperator.start(id, version);
+            executionRecord = fromChanges?
+                processOperator.startFromChanges(id, version) : processOperator.start(id, version);
         } catch (ProcessExecutionStartException | ProcessNotFoundException ex) {
             executionRecord = null;
             errorMessage = ex.getMessage();
@@ -100,4 +105,32 @@ public class ProcessController
     {
         return RestResponse.result(processOperator.list(true));
     }
+
+    /**
+     * Report on the recovery of executions interrupted by a previous shutdown (resumed and
+     * abandoned executions, and the amount of salvaged work).
+     */
+    @GetMapping(value = "/api/proc/recovery")
+    public RestResponse<ProcessRecoveryInfo> getRecoveryInfo()
+    {
+        ProcessRecoveryInfo info = processOperator.getRecoveryInfo();
+        if (info == null)
+            return RestResponse.error(BasicErrorCode.NO_RESULT, "No recovery has taken place");
+        return RestResponse.result(info);
+    }
+
+    /**
+     * Get the time series of resource statistics of the container(s) of an execution step. A
+     * summary of these statistics is part of the step record (see <tt>/api/proc/status</tt>).
+     */
+    @GetMapping(value = "/api/proc/step-stats")
+    public RestResponse<List<ProcessExecutionStepStatsSampleRecord>> getStepStats(
+        @RequestParam("execution") Long executionId, @RequestParam("step") Integer stepKey)
+    {
+        try {
+            return RestResponse.result(processRepository.findExecutionStepStats(executionId, stepKey));
+        } catch (ProcessExecutionNotFoundException ex) {
+            return RestResponse.error(BasicErrorCode.NO_RESULT, ex.getMessage());
+        }
+    }
 }
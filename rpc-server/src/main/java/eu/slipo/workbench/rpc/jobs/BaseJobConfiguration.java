@@ -16,6 +16,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.util.Assert;
 import org.springframework.util.StringUtils;
 
+import eu.slipo.workbench.common.service.FileMaterializer;
 import eu.slipo.workbench.common.service.util.PropertiesConverterService;
 import eu.slipo.workbench.rpc.service.ConfigurationGeneratorService;
 
@@ -42,6 +43,9 @@ class BaseJobConfiguration
     @Autowired
     protected Path jobDataDirectory;
 
+    @Autowired
+    protected FileMaterializer fileMaterializer;
+
     /**
      * The root directory under which a job-specific data are stored
      */
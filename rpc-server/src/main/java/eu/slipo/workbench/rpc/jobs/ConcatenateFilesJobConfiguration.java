@@ -2,13 +2,10 @@ package eu.slipo.workbench.rpc.jobs;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.OutputStream;
 import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
-import java.nio.file.OpenOption;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardOpenOption;
 import java.util.Arrays;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -82,14 +79,7 @@ public class ConcatenateFilesJobConfiguration extends BaseJobConfiguration
             // Concatenate input into target
 
             Path output = outputDir.resolve(outputName);
-
-            OpenOption[] outputOptions =
-                new StandardOpenOption[] { StandardOpenOption.WRITE, StandardOpenOption.CREATE };
-
-            try (OutputStream out = Files.newOutputStream(output, outputOptions)) {
-                for (Path inputPath: input)
-                    Files.copy(inputPath, out);
-            }
+            fileMaterializer.concatenate(input, output);
 
             // Update execution context
 
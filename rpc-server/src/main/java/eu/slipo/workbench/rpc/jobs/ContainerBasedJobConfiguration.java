@@ -1,18 +1,106 @@
 package eu.slipo.workbench.rpc.jobs;
 
+import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.Step;
+import org.springframework.batch.core.partition.support.Partitioner;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.util.Assert;
 
 import com.spotify.docker.client.DockerClient;
 
+import eu.slipo.workbench.common.model.poi.EnumTool;
+import eu.slipo.workbench.rpc.jobs.listener.ExecutionContextPromotionListeners;
+import eu.slipo.workbench.rpc.jobs.listener.PipedInputListener;
+import eu.slipo.workbench.rpc.jobs.tasklet.ArchiveExtractor;
+import eu.slipo.workbench.rpc.jobs.tasklet.LookupCachedResultTasklet;
+import eu.slipo.workbench.rpc.jobs.tasklet.OutputSpool;
+import eu.slipo.workbench.rpc.jobs.tasklet.StoreResultToCacheTasklet;
+import eu.slipo.workbench.rpc.jobs.tasklet.docker.ContainerConfigurer;
+import eu.slipo.workbench.rpc.jobs.tasklet.docker.ContainerEventMonitor;
+import eu.slipo.workbench.rpc.jobs.tasklet.docker.ContainerLogFile;
+import eu.slipo.workbench.rpc.jobs.tasklet.docker.CreateAndRunContainerTasklet;
+import eu.slipo.workbench.rpc.jobs.tasklet.docker.CreateContainerTasklet;
+import eu.slipo.workbench.rpc.jobs.tasklet.docker.RunContainerTasklet;
+import eu.slipo.workbench.rpc.jobs.tasklet.docker.WarmContainerPool;
+import eu.slipo.workbench.rpc.service.AdmissionScheduler;
+import eu.slipo.workbench.rpc.service.ContainerHostPool;
+import eu.slipo.workbench.rpc.service.MetricRegistry;
+import eu.slipo.workbench.rpc.service.ResourcePredictor;
+import eu.slipo.workbench.rpc.service.StepResultCache;
+
 public class ContainerBasedJobConfiguration extends BaseJobConfiguration
 {
+    private static final Logger logger = LoggerFactory.getLogger(ContainerBasedJobConfiguration.class);
+
+    /**
+     * The name of the log file (under the working directory) for the output of a container
+     */
+    protected static final String OUTPUT_LOG_FILENAME = "output.log";
+
+    protected static final String STATS_FILENAME = "stats.csv";
+
+    /**
+     * The default time (milliseconds) to wait for the producer of a spool while no progress is made
+     */
+    public static final long DEFAULT_PIPELINING_TIMEOUT = 2 * 3600 * 1000L;
+
     @Autowired
     protected DockerClient docker;
 
+    /**
+     * A pool of docker hosts to place containers on (may be <tt>null</tt> if containers are only
+     * run on the default docker host)
+     */
+    @Autowired(required = false)
+    protected ContainerHostPool containerHosts;
+
+    /**
+     * A monitor for container events (may be <tt>null</tt> if events are disabled)
+     */
+    @Autowired(required = false)
+    protected ContainerEventMonitor containerEventMonitor;
+
+    /**
+     * A scheduler admitting containers under a budget of host resources (may be <tt>null</tt>
+     * if admission control is disabled)
+     */
+    @Autowired(required = false)
+    protected AdmissionScheduler admissionScheduler;
+
+    /**
+     * A cache for results of jobs (may be <tt>null</tt> if caching is disabled)
+     */
+    @Autowired(required = false)
+    protected StepResultCache resultCache;
+
+    /**
+     * A predictor for the resources of a tool run (may be <tt>null</tt> if containers are sized
+     * only by the configured limits)
+     */
+    @Autowired(required = false)
+    protected ResourcePredictor resourcePredictor;
+
+    /**
+     * A registry to record the lifecycle of containers into (may be <tt>null</tt> if metrics
+     * are disabled)
+     */
+    @Autowired(required = false)
+    protected MetricRegistry metrics;
+
     /**
      * The root directory on a container, under which directories/files will be bind-mounted
      */
@@ -38,10 +126,561 @@ public class ContainerBasedJobConfiguration extends BaseJobConfiguration
      */
     protected long memorySwapLimit = -1L;
 
+    /**
+     * The upper limit for CPUs available to a container (a non-positive value means no limit)
+     */
+    protected double cpuLimit = -1.0;
+
+    /**
+     * The priority of a container when waiting for admission
+     */
+    protected int admissionPriority = 0;
+
+    /**
+     * The maximum size of a log file (for the output of a container) before it is rotated
+     */
+    protected long logFileMaxSize = ContainerLogFile.DEFAULT_MAX_SIZE;
+
+    /**
+     * The number of rotated log files to retain
+     */
+    protected int logFileMaxBackups = ContainerLogFile.DEFAULT_MAX_BACKUPS;
+
+    /**
+     * The interval (milliseconds) between samples of statistics of a running container, or
+     * <tt>-1</tt> if sampling is disabled
+     */
+    protected long statsInterval = -1L;
+
+    /**
+     * A flag indicating if every sample of statistics should be kept (as a time series)
+     */
+    protected boolean statsTimeSeries = false;
+
+    /**
+     * The limit for the total size of data extracted from an input archive
+     */
+    protected long extractionMaxSize = ArchiveExtractor.DEFAULT_MAX_EXTRACTED_SIZE;
+
+    /**
+     * The number of threads extracting (independent) entries of an input archive
+     */
+    protected int extractionParallelism = 1;
+
+    /**
+     * The formats (of compressed input) that a tool can read directly, so no extraction
+     * is needed
+     */
+    protected Set<ArchiveExtractor.Format> readableFormats = Collections.emptySet();
+
+    /**
+     * A flag that indicates if pipelining is enabled, i.e. if a step may stream its output (through
+     * a spool) into a downstream step running concurrently
+     */
+    protected boolean pipeliningEnabled = false;
+
+    /**
+     * The time (milliseconds) to wait for the producer of a spool while no progress is made
+     */
+    protected long pipeliningTimeout = DEFAULT_PIPELINING_TIMEOUT;
+
+    /**
+     * The maximum number of partitions (containers) of a partitioned run that may run concurrently
+     * (a non-positive value means that only the number of partitions is a limit)
+     */
+    protected int maxConcurrentPartitions = -1;
+
+    /**
+     * The memory budget (bytes) for partitions running concurrently (a non-positive value means
+     * no budget)
+     */
+    protected long partitionsMemoryBudget = -1L;
+
+    /**
+     * The bounds for a predicted memory limit (a non-positive upper bound means that the
+     * configured memory limit is used as the upper bound)
+     */
+    private long minPredictedMemory = 64L * 1024L * 1024L, maxPredictedMemory = -1L;
+
+    /**
+     * The bounds for a predicted timeout (a non-positive upper bound means that the configured
+     * timeout is used as the upper bound)
+     */
+    private long minPredictedTimeout = 60 * 1000L, maxPredictedTimeout = -1L;
+
+    /**
+     * The factor to multiply a predicted runtime with, to set a timeout
+     */
+    private double predictedTimeoutFactor = 1.5;
+
+    /**
+     * The resource limits for a container
+     */
+    protected static class ContainerLimits
+    {
+        private final long memory;
+
+        private final long memorySwap;
+
+        private final long timeout;
+
+        private final long expectedDuration;
+
+        private ContainerLimits(long memory, long memorySwap, long timeout, long expectedDuration)
+        {
+            this.memory = memory;
+            this.memorySwap = memorySwap;
+            this.timeout = timeout;
+            this.expectedDuration = expectedDuration;
+        }
+
+        /**
+         * The memory limit (bytes), or <tt>-1</tt> if not limited
+         */
+        public long memory()
+        {
+            return memory;
+        }
+
+        /**
+         * The memory+swap limit (bytes), or <tt>-1</tt> if not limited
+         */
+        public long memorySwap()
+        {
+            return memorySwap;
+        }
+
+        /**
+         * The timeout (milliseconds) for a container to run, or <tt>-1</tt> for no timeout
+         */
+        public long timeout()
+        {
+            return timeout;
+        }
+
+        /**
+         * The expected duration (milliseconds) of a run, or <tt>-1</tt> if not known
+         */
+        public long expectedDuration()
+        {
+            return expectedDuration;
+        }
+
+        /**
+         * Apply the memory limits to a container (overriding any limits already configured)
+         */
+        public void configure(ContainerConfigurer configurer)
+        {
+            if (memory > 0)
+                configurer.memory(memory);
+            if (memorySwap > 0)
+                configurer.memoryAndSwap(memorySwap);
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("ContainerLimits [memory=%d, memorySwap=%d, timeout=%d, expectedDuration=%d]",
+                memory, memorySwap, timeout, expectedDuration);
+        }
+    }
+
     protected void setContainerDataDirectory(String dir)
     {
         Path dirPath = Paths.get(dir);
         Assert.isTrue(dirPath.isAbsolute(), "Expected an absolute path (inside a container)");
         this.containerDataDir = dirPath;
     }
+
+    protected void setReadableFormats(String[] formatNames)
+    {
+        Set<ArchiveExtractor.Format> formats = EnumSet.noneOf(ArchiveExtractor.Format.class);
+        for (String name: formatNames) {
+            if (!name.trim().isEmpty())
+                formats.add(ArchiveExtractor.Format.valueOf(name.trim().toUpperCase()));
+        }
+        this.readableFormats = formats;
+    }
+
+    /**
+     * Get the number of CPUs a container is expected to use, when requesting admission. If
+     * CPUs are not limited, a container is assumed to use a single CPU.
+     */
+    protected double getCpuDemand()
+    {
+        return cpuLimit > 0? cpuLimit : 1.0;
+    }
+
+    @Autowired
+    private void setLogFileLimits(
+        @Value("${slipo.rpc-server.jobs.container-logs.max-size-kbytes:}") Long maxSizeKbytes,
+        @Value("${slipo.rpc-server.jobs.container-logs.max-backups:}") Integer maxBackups)
+    {
+        if (maxSizeKbytes != null) {
+            Assert.isTrue(maxSizeKbytes > 0, "Expected a positive size for a log file");
+            this.logFileMaxSize = maxSizeKbytes * 1024L;
+        }
+        if (maxBackups != null) {
+            Assert.isTrue(maxBackups >= 0, "Expected a non-negative number of backups");
+            this.logFileMaxBackups = maxBackups;
+        }
+    }
+
+    @Autowired
+    private void setStatsSettings(
+        @Value("${slipo.rpc-server.jobs.container-stats.enabled:false}") boolean enabled,
+        @Value("${slipo.rpc-server.jobs.container-stats.interval-millis:}") Long interval,
+        @Value("${slipo.rpc-server.jobs.container-stats.time-series.enabled:false}") boolean timeSeries)
+    {
+        if (enabled) {
+            this.statsInterval = interval == null? RunContainerTasklet.DEFAULT_STATS_INTERVAL : interval;
+            Assert.isTrue(statsInterval > 0, "Expected a positive interval for sampling statistics");
+            this.statsTimeSeries = timeSeries;
+        }
+    }
+
+    /**
+     * Get the file where the time series of statistics of a container is kept, or <tt>null</tt>
+     * if no time series is kept.
+     *
+     * @param workDir The working directory of a step (or of a partition)
+     */
+    protected Path getStatsFile(String workDir)
+    {
+        return (statsInterval > 0 && statsTimeSeries)? Paths.get(workDir, STATS_FILENAME) : null;
+    }
+
+    @Autowired
+    private void setExtractionLimits(
+        @Value("${slipo.rpc-server.jobs.extraction.max-size-kbytes:}") Long maxSizeKbytes,
+        @Value("${slipo.rpc-server.jobs.extraction.parallelism:}") Integer parallelism)
+    {
+        if (maxSizeKbytes != null) {
+            Assert.isTrue(maxSizeKbytes > 0, "Expected a positive size for extracted data");
+            this.extractionMaxSize = maxSizeKbytes * 1024L;
+        }
+        if (parallelism != null) {
+            Assert.isTrue(parallelism > 0, "Expected a positive number of threads");
+            this.extractionParallelism = parallelism;
+        }
+    }
+
+    @Autowired
+    private void setPredictionBounds(
+        @Value("${slipo.rpc-server.jobs.predictions.min-memory-kbytes:}") Long minMemoryKbytes,
+        @Value("${slipo.rpc-server.jobs.predictions.max-memory-kbytes:}") Long maxMemoryKbytes,
+        @Value("${slipo.rpc-server.jobs.predictions.min-timeout-seconds:}") Long minTimeoutSeconds,
+        @Value("${slipo.rpc-server.jobs.predictions.max-timeout-seconds:}") Long maxTimeoutSeconds,
+        @Value("${slipo.rpc-server.jobs.predictions.timeout-factor:}") Double timeoutFactor)
+    {
+        if (minMemoryKbytes != null) {
+            Assert.isTrue(minMemoryKbytes > 0, "Expected a positive memory limit");
+            this.minPredictedMemory = minMemoryKbytes * 1024L;
+        }
+        if (maxMemoryKbytes != null)
+            this.maxPredictedMemory = maxMemoryKbytes * 1024L;
+        if (minTimeoutSeconds != null) {
+            Assert.isTrue(minTimeoutSeconds > 0, "Expected a positive timeout");
+            this.minPredictedTimeout = minTimeoutSeconds * 1000L;
+        }
+        if (maxTimeoutSeconds != null)
+            this.maxPredictedTimeout = maxTimeoutSeconds * 1000L;
+        if (timeoutFactor != null) {
+            Assert.isTrue(timeoutFactor >= 1.0, "Expected a timeout factor of at least 1");
+            this.predictedTimeoutFactor = timeoutFactor;
+        }
+    }
+
+    @Autowired
+    private void setPipelining(
+        @Value("${slipo.rpc-server.jobs.pipelining.enabled:false}") boolean enabled,
+        @Value("${slipo.rpc-server.jobs.pipelining.timeout-seconds:}") Long timeoutSeconds)
+    {
+        this.pipeliningEnabled = enabled;
+        if (timeoutSeconds != null) {
+            Assert.isTrue(timeoutSeconds > 0, "Expected a positive timeout");
+            this.pipeliningTimeout = timeoutSeconds * 1000L;
+        }
+    }
+
+    /**
+     * Set the limits for partitions running concurrently (as configured for a specific tool)
+     *
+     * @param maxConcurrency The maximum number of partitions running concurrently, or <tt>null</tt>
+     * @param memoryBudgetKbytes The memory budget (kilobytes) for partitions running concurrently,
+     *   or <tt>null</tt>
+     */
+    protected void setPartitionConcurrency(Integer maxConcurrency, Long memoryBudgetKbytes)
+    {
+        if (maxConcurrency != null) {
+            Assert.isTrue(maxConcurrency > 0, "Expected a positive limit for concurrency");
+            this.maxConcurrentPartitions = maxConcurrency;
+        }
+        if (memoryBudgetKbytes != null) {
+            Assert.isTrue(memoryBudgetKbytes > 0, "Expected a positive memory budget");
+            this.partitionsMemoryBudget = memoryBudgetKbytes * 1024L;
+        }
+    }
+
+    /**
+     * Compute the number of partitions that may run concurrently (i.e. the number of containers
+     * that may run at the same time), respecting our concurrency limit and memory budget.
+     *
+     * @param maxPartitions The maximum number of partitions of a run
+     */
+    protected int computePartitionConcurrency(int maxPartitions)
+    {
+        int n = maxConcurrentPartitions > 0? maxConcurrentPartitions : maxPartitions;
+        if (partitionsMemoryBudget > 0 && memoryLimit > 0)
+            n = (int) Math.min(n, partitionsMemoryBudget / memoryLimit);
+        return Math.max(n, 1);
+    }
+
+    /**
+     * Create an executor for partitions. The executor is expected to be shared among all job
+     * executions, so its pool size is a global limit on the number of partitions running
+     * concurrently.
+     *
+     * @param threadNamePrefix The prefix for names of threads
+     * @param maxPartitions The maximum number of partitions of a run
+     */
+    protected TaskExecutor createPartitionTaskExecutor(String threadNamePrefix, int maxPartitions)
+    {
+        final int n = computePartitionConcurrency(maxPartitions);
+        logger.info("Partitions ({}) will run on a pool of {} thread(s)", threadNamePrefix, n);
+
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(n);
+        executor.setMaxPoolSize(n);
+        executor.setThreadNamePrefix(threadNamePrefix);
+        return executor;
+    }
+
+    /**
+     * Create a tasklet for a partition: create and run a container for the part of input
+     * assigned to this partition (the container is not removed when finished).
+     *
+     * @param containerName The name of the container
+     * @param partitionWorkDir The working directory of the partition (to keep logs into)
+     * @param configurer A configurer for the container
+     */
+    protected CreateAndRunContainerTasklet createPartitionTasklet(
+        String containerName, String partitionWorkDir, Consumer<ContainerConfigurer> configurer)
+    {
+        CreateContainerTasklet createTasklet = CreateContainerTasklet.builder()
+            .client(docker)
+            .hosts(containerHosts)
+            .metrics(metrics)
+            .name(containerName)
+            .container(configurer)
+            .build();
+
+        RunContainerTasklet runTasklet = RunContainerTasklet.builder()
+            .client(docker)
+            .hosts(containerHosts)
+            .metrics(metrics)
+            .monitor(containerEventMonitor)
+            .admission(admissionScheduler, memoryLimit, getCpuDemand(), admissionPriority)
+            .checkInterval(checkInterval)
+            .timeout(runTimeout)
+            .container(containerName)
+            .logFile(Paths.get(partitionWorkDir, OUTPUT_LOG_FILENAME), logFileMaxSize, logFileMaxBackups)
+            .stats(statsInterval)
+            .statsFile(getStatsFile(partitionWorkDir))
+            .removeOnFinished(false)
+            .build();
+
+        return new CreateAndRunContainerTasklet(createTasklet, runTasklet);
+    }
+
+    /**
+     * Create a step for a partition (i.e. a step running a tasklet created by
+     * {@link #createPartitionTasklet(String, String, Consumer)})
+     *
+     * @param stepName The name of the step
+     * @param tasklet The tasklet for a partition
+     */
+    protected Step createPartitionStep(String stepName, CreateAndRunContainerTasklet tasklet)
+    {
+        return stepBuilderFactory.get(stepName)
+            .tasklet(tasklet)
+            .listener(tasklet)
+            .build();
+    }
+
+    /**
+     * Create a step that splits a run into partitions, and executes a partition step for each
+     * one of them.
+     *
+     * @param stepName The name of the step
+     * @param partitioner The partitioner
+     * @param partitionStep The step for a partition (see {@link #createPartitionStep})
+     * @param maxPartitions The maximum number of partitions of a run
+     * @param taskExecutor The executor for partitions (see {@link #createPartitionTaskExecutor})
+     */
+    protected Step createPartitionedStep(
+        String stepName, Partitioner partitioner, Step partitionStep, int maxPartitions,
+        TaskExecutor taskExecutor)
+    {
+        return stepBuilderFactory.get(stepName)
+            .partitioner(partitionStep.getName(), partitioner)
+            .step(partitionStep)
+            .gridSize(maxPartitions)
+            .taskExecutor(taskExecutor)
+            .build();
+    }
+
+    /**
+     * Get the root directory for spools of step output (see {@link OutputSpool})
+     */
+    protected Path getSpoolDirectory()
+    {
+        return jobDataDirectory.resolve(OutputSpool.DIRECTORY_NAME);
+    }
+
+    /**
+     * Test if an input is the spool of an upstream step (see {@link OutputSpool})
+     */
+    protected boolean isSpooledInput(Path inputPath)
+    {
+        return OutputSpool.isSpool(inputPath, getSpoolDirectory());
+    }
+
+    /**
+     * Get the resource limits for a container running a tool on a given input.
+     * <p>
+     * If a resource predictor is present, the memory limit and the timeout are sized according to
+     * the predicted memory and runtime (clamped to the configured bounds); otherwise (or if a
+     * quantity cannot be predicted), the configured limits are used.
+     *
+     * @param tool The tool
+     * @param inputDir The input directory
+     * @param inputNames The names of input files (relative to input directory)
+     */
+    protected ContainerLimits getContainerLimits(EnumTool tool, String inputDir, List<String> inputNames)
+    {
+        final ContainerLimits defaultLimits = new ContainerLimits(memoryLimit, memorySwapLimit, runTimeout, -1L);
+        if (resourcePredictor == null)
+            return defaultLimits;
+
+        long inputSize = 0L;
+        try {
+            for (String name: inputNames) {
+                Path inputPath = Paths.get(inputDir, name);
+                if (!Files.isRegularFile(inputPath))
+                    return defaultLimits; // e.g. a named pipe (of unknown size)
+                inputSize += Files.size(inputPath);
+            }
+        } catch (IOException ex) {
+            logger.warn("Cannot stat input of {}: {}", tool, ex.getMessage());
+            return defaultLimits;
+        }
+
+        final ResourcePredictor.Prediction prediction = resourcePredictor.predict(tool, inputSize);
+
+        long memory = memoryLimit, memorySwap = memorySwapLimit;
+        if (prediction.memory() > 0) {
+            long upperBound = maxPredictedMemory > 0? maxPredictedMemory : memoryLimit;
+            memory = Math.max(minPredictedMemory, prediction.memory());
+            if (upperBound > 0)
+                memory = Math.min(memory, upperBound);
+            // Note: Keep the ratio of memory+swap to memory (if memory+swap is limited)
+            if (memorySwapLimit > 0 && memoryLimit > 0)
+                memorySwap = Math.round(memory * (memorySwapLimit / (double) memoryLimit));
+        }
+
+        long timeout = runTimeout;
+        if (prediction.runtime() > 0) {
+            long upperBound = maxPredictedTimeout > 0? maxPredictedTimeout : runTimeout;
+            timeout = Math.max(minPredictedTimeout, Math.round(prediction.runtime() * predictedTimeoutFactor));
+            if (upperBound > 0)
+                timeout = Math.min(timeout, upperBound);
+        }
+
+        ContainerLimits limits = new ContainerLimits(memory, memorySwap, timeout, prediction.runtime());
+        logger.debug("Sized a container for {} on {} bytes of input: {}", tool, inputSize, limits);
+        return limits;
+    }
+
+    /**
+     * Create an extractor for input archives (used when preparing the working directory)
+     */
+    protected ArchiveExtractor createArchiveExtractor()
+    {
+        return ArchiveExtractor.builder()
+            .maxExtractedSize(extractionMaxSize)
+            .parallelism(extractionParallelism)
+            .build();
+    }
+
+    /**
+     * Create a listener that feeds a piped input (if any) to a container from the spool of
+     * an upstream step. The listener is expected to be registered (after the container tasklet)
+     * on a step running a container.
+     */
+    protected PipedInputListener createPipedInputListener()
+    {
+        return new PipedInputListener(pipeliningTimeout);
+    }
+
+    /**
+     * Create (and start filling) a pool of warm containers for a tool. The pool is staged under
+     * the data directory of this job, and its containers are limited as a normal container.
+     *
+     * @param toolName The name of the tool (also used as a prefix for container names)
+     * @param imageName The docker image for the tool
+     * @param size The number of warm containers to keep
+     */
+    protected WarmContainerPool createWarmPool(String toolName, String imageName, int size)
+        throws Exception
+    {
+        Assert.state(dataDir != null, "The data directory is not set up");
+
+        WarmContainerPool pool = new WarmContainerPool(
+            docker, imageName, size, dataDir.resolve("warm-pool"), containerDataDir, toolName + "-warm");
+        pool.setLimits(memoryLimit, memorySwapLimit, cpuLimit);
+        pool.start();
+        return pool;
+    }
+
+    /**
+     * Create a step that looks up the result cache for the result of a job. This step is
+     * expected right after the working directory is prepared.
+     *
+     * @param toolName The name of the tool (also used as a prefix for the step name)
+     * @param imageName The docker image for the tool
+     * @param configKey The key (inside job execution context) for the configuration bean
+     */
+    protected Step createLookupCachedResultStep(String toolName, String imageName, String configKey)
+    {
+        LookupCachedResultTasklet tasklet = LookupCachedResultTasklet.builder()
+            .cache(resultCache)
+            .propertiesConverter(propertiesConverter)
+            .tool(toolName)
+            .image(imageName)
+            .configurationKey(configKey)
+            .build();
+
+        String[] keys = new String[] {
+            LookupCachedResultTasklet.Keys.RESULT_CACHE_KEY, LookupCachedResultTasklet.Keys.RESULT_CACHED
+        };
+
+        return stepBuilderFactory.get(toolName + ".lookupCachedResult")
+            .tasklet(tasklet)
+            .listener(ExecutionContextPromotionListeners.fromKeys(keys))
+            .build();
+    }
+
+    /**
+     * Create a step that stores the output of a job into the result cache. This step is
+     * expected as the last step of a job.
+     *
+     * @param toolName The name of the tool (also used as a prefix for the step name)
+     */
+    protected Step createStoreResultToCacheStep(String toolName)
+    {
+        return stepBuilderFactory.get(toolName + ".storeResultToCache")
+            .tasklet(new StoreResultToCacheTasklet(resultCache))
+            .build();
+    }
 }
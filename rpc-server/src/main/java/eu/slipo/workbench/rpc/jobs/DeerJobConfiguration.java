@@ -1,10 +1,12 @@
 package eu.slipo.workbench.rpc.jobs;
 
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
 
 import javax.annotation.PostConstruct;
@@ -13,12 +15,17 @@ import javax.validation.ConstraintViolation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobExecution;
 import org.springframework.batch.core.Step;
 import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.StepExecution;
 import org.springframework.batch.core.configuration.JobFactory;
 import org.springframework.batch.core.configuration.annotation.JobScope;
+import org.springframework.batch.core.configuration.annotation.StepScope;
 import org.springframework.batch.core.job.builder.FlowBuilder;
 import org.springframework.batch.core.job.flow.Flow;
+import org.springframework.batch.core.job.flow.FlowExecutionStatus;
+import org.springframework.batch.core.job.flow.JobExecutionDecider;
 import org.springframework.batch.core.launch.support.RunIdIncrementer;
 import org.springframework.batch.core.scope.context.ChunkContext;
 import org.springframework.batch.core.scope.context.StepContext;
@@ -28,19 +35,31 @@ import org.springframework.batch.repeat.RepeatStatus;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.core.io.Resource;
+import org.springframework.core.task.TaskExecutor;
 import org.springframework.stereotype.Component;
 import org.springframework.util.Assert;
 import org.springframework.util.StringUtils;
 
+import eu.slipo.workbench.common.model.poi.EnumDataFormat;
+import eu.slipo.workbench.common.model.poi.EnumTool;
 import eu.slipo.workbench.common.model.tool.DeerConfiguration;
 import eu.slipo.workbench.common.model.tool.InvalidConfigurationException;
 import eu.slipo.workbench.rpc.jobs.listener.ExecutionContextPromotionListeners;
 import eu.slipo.workbench.rpc.jobs.listener.LoggingJobExecutionListener;
+import eu.slipo.workbench.rpc.jobs.partition.MergePartitionOutputTasklet;
+import eu.slipo.workbench.rpc.jobs.partition.SharedResourcesMerger;
+import eu.slipo.workbench.rpc.jobs.partition.SubjectHashPartitioner;
+import eu.slipo.workbench.rpc.jobs.tasklet.LookupCachedResultTasklet;
 import eu.slipo.workbench.rpc.jobs.tasklet.PrepareWorkingDirectoryTasklet;
+import eu.slipo.workbench.rpc.jobs.tasklet.docker.ContainerConfigurer;
+import eu.slipo.workbench.rpc.jobs.tasklet.docker.CreateAndRunContainerTasklet;
 import eu.slipo.workbench.rpc.jobs.tasklet.docker.CreateContainerTasklet;
 import eu.slipo.workbench.rpc.jobs.tasklet.docker.RunContainerTasklet;
+import eu.slipo.workbench.rpc.jobs.tasklet.docker.RunInWarmContainerTasklet;
+import eu.slipo.workbench.rpc.jobs.tasklet.docker.WarmContainerPool;
 
 @Component
 public class DeerJobConfiguration extends ContainerBasedJobConfiguration
@@ -61,6 +80,37 @@ public class DeerJobConfiguration extends ContainerBasedJobConfiguration
 
     public static final long DEFAULT_MEMORY_LIMIT = 536870912L;
 
+    /**
+     * The default maximum number of shards (when running in sharded mode)
+     */
+    public static final int DEFAULT_MAX_SHARDS = 4;
+
+    /**
+     * The default size (bytes) of input per shard (when the number of shards is derived from
+     * the size of input)
+     */
+    public static final long DEFAULT_SHARD_SIZE = 64L * 1024L * 1024L;
+
+    /**
+     * The default minimum size (bytes) of input for running in sharded mode
+     */
+    public static final long DEFAULT_MIN_INPUT_SIZE_FOR_SHARDING = 64L * 1024L * 1024L;
+
+    /**
+     * The name of the directory (under the working directory) for shards
+     */
+    private static final String PARTITIONS_DIR_NAME = "partitions";
+
+    /**
+     * The flow execution status for a run to be sharded
+     */
+    private static final FlowExecutionStatus SHARDED = new FlowExecutionStatus("SHARDED");
+
+    /**
+     * The flow execution status for a run on a single container
+     */
+    private static final FlowExecutionStatus SINGLE = new FlowExecutionStatus("SINGLE");
+
     @Override
     @Autowired
     protected void setContainerDataDirectory(
@@ -97,6 +147,83 @@ public class DeerJobConfiguration extends ContainerBasedJobConfiguration
         this.memorySwapLimit = kbytes == null? -1L : kbytes.longValue() * 1024;
     }
 
+    @Autowired
+    private void setCpuLimit(
+        @Value("${slipo.rpc-server.tools.deer.docker.container.cpus:}") Double cpus)
+    {
+        this.cpuLimit = cpus == null? -1.0 : cpus.doubleValue();
+    }
+
+    @Autowired
+    private void setReadableInputFormats(
+        @Value("${slipo.rpc-server.tools.deer.input.readable-formats:}") String[] formatNames)
+    {
+        super.setReadableFormats(formatNames);
+    }
+
+    @Autowired
+    private void setAdmissionPriority(
+        @Value("${slipo.rpc-server.tools.deer.admission-priority:0}") int priority)
+    {
+        this.admissionPriority = priority;
+    }
+
+    /**
+     * A flag that indicates if sharding (of input among several containers, by the hash of
+     * entities) is enabled
+     */
+    private boolean shardingEnabled = false;
+
+    /**
+     * A fixed number of shards, or <tt>-1</tt> to derive the number of shards from the size of input
+     */
+    private int numberOfShards = -1;
+
+    /**
+     * The maximum number of shards
+     */
+    private int maxShards = DEFAULT_MAX_SHARDS;
+
+    /**
+     * The size (bytes) of input per shard (when the number of shards is derived)
+     */
+    private long shardSize = DEFAULT_SHARD_SIZE;
+
+    /**
+     * The minimum size (bytes) of input for a run to be sharded
+     */
+    private long minInputSizeForSharding = DEFAULT_MIN_INPUT_SIZE_FOR_SHARDING;
+
+    @Autowired
+    private void setSharding(
+        @Value("${slipo.rpc-server.tools.deer.sharding.enabled:false}") boolean enabled,
+        @Value("${slipo.rpc-server.tools.deer.sharding.shards:}") Integer numberOfShards,
+        @Value("${slipo.rpc-server.tools.deer.sharding.max-shards:}") Integer maxShards,
+        @Value("${slipo.rpc-server.tools.deer.sharding.shard-size-kbytes:}") Long shardSizeKbytes,
+        @Value("${slipo.rpc-server.tools.deer.sharding.max-concurrency:}") Integer maxConcurrency,
+        @Value("${slipo.rpc-server.tools.deer.sharding.memory-budget-kbytes:}") Long memoryBudgetKbytes,
+        @Value("${slipo.rpc-server.tools.deer.sharding.min-input-size-kbytes:}") Long minInputSizeKbytes)
+    {
+        this.shardingEnabled = enabled;
+        if (maxShards != null) {
+            Assert.isTrue(maxShards > 0, "Expected a positive number of shards");
+            this.maxShards = maxShards;
+        }
+        if (numberOfShards != null) {
+            Assert.isTrue(numberOfShards > 0, "Expected a positive number of shards");
+            this.numberOfShards = numberOfShards;
+            this.maxShards = Math.max(this.maxShards, numberOfShards);
+        }
+        if (shardSizeKbytes != null) {
+            Assert.isTrue(shardSizeKbytes > 0, "Expected a positive size for a shard");
+            this.shardSize = shardSizeKbytes * 1024L;
+        }
+        setPartitionConcurrency(maxConcurrency, memoryBudgetKbytes);
+        if (minInputSizeKbytes != null) {
+            this.minInputSizeForSharding = minInputSizeKbytes * 1024L;
+        }
+    }
+
     @PostConstruct
     private void setMemoryLimitsIfNeeded()
     {
@@ -181,19 +308,34 @@ public class DeerJobConfiguration extends ContainerBasedJobConfiguration
         @Value("#{jobExecutionContext['config']}") DeerConfiguration config,
         @Value("#{jobExecutionContext['input']}") String inputPath,
         @Value("#{jobExecutionContext['spec']}") Resource specResource,
-        @Value("#{jobExecution.jobInstance.id}") Long jobId)
+        @Value("#{jobExecution.jobInstance.id}") Long jobId,
+        @Value("${slipo.rpc-server.tools.deer.warm-pool.enabled:false}") boolean warmPoolEnabled)
     {
         Assert.notNull(inputPath, "An input path is required");
 
         Path workDir = dataDir.resolve(String.format("%05x", jobId));
 
-        return PrepareWorkingDirectoryTasklet.builder()
+        PrepareWorkingDirectoryTasklet.Builder builder = PrepareWorkingDirectoryTasklet.builder()
+            .materializer(fileMaterializer)
+            .extractor(createArchiveExtractor())
+            .readableFormats(readableFormats)
             .workingDirectory(workDir)
             .input(inputPath)
             .inputFormat(config.getInputFormat())
             .outputFormat(config.getOutputFormat())
-            .config("config", "config.ttl", specResource)
-            .build();
+            .config("config", "config.ttl", specResource);
+
+        if (isSpooledInput(Paths.get(inputPath))) {
+            // The input is streamed from an upstream step. It can be piped only to a single
+            // container reading it once: not to shards, not to a warm container (that may miss),
+            // and not if the input is digested (for the result cache). A pipe is also local to
+            // this host, so it cannot be read by a container placed on a pool of docker hosts
+            boolean piped = !shardingEnabled && !warmPoolEnabled && resultCache == null &&
+                containerHosts == null;
+            builder.spooledInput(piped, pipeliningTimeout);
+        }
+
+        return builder.build();
     }
 
     @Bean("deer.prepareWorkingDirectoryStep")
@@ -208,9 +350,50 @@ public class DeerJobConfiguration extends ContainerBasedJobConfiguration
         return stepBuilderFactory.get("deer.prepareWorkingDirectory")
             .tasklet(tasklet)
             .listener(ExecutionContextPromotionListeners.fromKeys(keys))
+            .listener(ExecutionContextPromotionListeners.builder(PrepareWorkingDirectoryTasklet.Keys.SPOOLED_INPUT)
+                .strict(false).build())
             .build();
     }
 
+    /**
+     * Configure a container to enrich a single input file
+     *
+     * @param configurer The container configurer
+     * @param imageName The docker image
+     * @param workDir The working directory
+     * @param inputDir The input directory (to be bind-mounted)
+     * @param inputFile The input file (relative to input directory)
+     * @param outputFormatName The name of the output format
+     * @param outputDir The output directory (to be bind-mounted)
+     * @param configFileByName A map of configuration files (relative to working directory)
+     */
+    private void configureContainer(
+        ContainerConfigurer configurer, String imageName, String workDir, String inputDir,
+        String inputFile, String outputFormatName, String outputDir, Map<String, String> configFileByName)
+    {
+        Path containerInputDir = containerDataDir.resolve("input");
+        Path containerOutputDir = containerDataDir.resolve("output");
+        Path containerConfigDir = containerDataDir;
+
+        Path inputFileName = Paths.get(inputFile).getFileName();
+        Path configPath = Paths.get(workDir, configFileByName.get("config"));
+
+        configurer
+            .image(imageName)
+            .volume(Paths.get(inputDir), containerInputDir, true)
+            .volume(Paths.get(outputDir), containerOutputDir)
+            .volume(configPath, containerConfigDir.resolve("config.ttl"), true)
+            // Set environment
+            .env("INPUT_FILE", containerInputDir.resolve(inputFileName))
+            .env("OUTPUT_FORMAT", outputFormatName)
+            .env("OUTPUT_DIR", containerOutputDir)
+            .env("CONFIG_FILE", containerConfigDir.resolve("config.ttl"))
+            // Set resource limits
+            .memory(memoryLimit)
+            .memoryAndSwap(memorySwapLimit)
+            .cpus(cpuLimit);
+    }
+
     @Bean("deer.createContainerTasklet")
     @JobScope
     public CreateContainerTasklet createContainerTasklet(
@@ -226,30 +409,19 @@ public class DeerJobConfiguration extends ContainerBasedJobConfiguration
     {
         String containerName = String.format("deer-%05x", jobId);
 
-        Path containerInputDir = containerDataDir.resolve("input");
-        Path containerOutputDir = containerDataDir.resolve("output");
-        Path containerConfigDir = containerDataDir;
-
         Assert.isTrue(inputFiles.size() == 1, "Expected a single input file");
-        Path inputFileName = Paths.get(inputFiles.get(0)).getFileName();
-        Path configPath = Paths.get(workDir, configFileByName.get("config"));
+
+        ContainerLimits limits = getContainerLimits(EnumTool.DEER, inputDir, inputFiles);
 
         return CreateContainerTasklet.builder()
             .client(docker)
+            .hosts(containerHosts)
+            .metrics(metrics)
             .name(containerName)
-            .container(configurer -> configurer
-                .image(imageName)
-                .volume(Paths.get(inputDir), containerInputDir, true)
-                .volume(Paths.get(outputDir), containerOutputDir)
-                .volume(configPath, containerConfigDir.resolve("config.ttl"), true)
-                // Set environment
-                .env("INPUT_FILE", containerInputDir.resolve(inputFileName))
-                .env("OUTPUT_FORMAT", outputFormatName)
-                .env("OUTPUT_DIR", containerOutputDir)
-                .env("CONFIG_FILE", containerConfigDir.resolve("config.ttl"))
-                // Set resource limits
-                .memory(memoryLimit)
-                .memoryAndSwap(memorySwapLimit))
+            .container(configurer -> configureContainer(
+                configurer, imageName, workDir, inputDir, inputFiles.get(0), outputFormatName, outputDir,
+                configFileByName))
+            .container(limits::configure)
             .build();
     }
 
@@ -269,13 +441,26 @@ public class DeerJobConfiguration extends ContainerBasedJobConfiguration
     @Bean("deer.runContainerTasklet")
     @JobScope
     public RunContainerTasklet runContainerTasklet(
-        @Value("#{jobExecutionContext['containerName']}") String containerName)
+        @Value("#{jobExecutionContext['containerName']}") String containerName,
+        @Value("#{jobExecutionContext['workDir']}") String workDir,
+        @Value("#{jobExecutionContext['inputDir']}") String inputDir,
+        @Value("#{jobExecutionContext['inputFiles']}") List<String> inputFiles)
     {
+        ContainerLimits limits = getContainerLimits(EnumTool.DEER, inputDir, inputFiles);
+
         return RunContainerTasklet.builder()
             .client(docker)
+            .hosts(containerHosts)
+            .metrics(metrics)
+            .monitor(containerEventMonitor)
+            .admission(admissionScheduler, limits.memory(), getCpuDemand(), admissionPriority)
+            .expectedDuration(limits.expectedDuration())
             .checkInterval(checkInterval)
-            .timeout(runTimeout)
+            .timeout(limits.timeout())
             .container(containerName)
+            .logFile(Paths.get(workDir, OUTPUT_LOG_FILENAME), logFileMaxSize, logFileMaxBackups)
+            .stats(statsInterval)
+            .statsFile(getStatsFile(workDir))
             .removeOnFinished(false)
             .build();
     }
@@ -287,9 +472,222 @@ public class DeerJobConfiguration extends ContainerBasedJobConfiguration
         return stepBuilderFactory.get("deer.runContainer")
             .tasklet(tasklet)
             .listener(tasklet)
+            .listener(createPipedInputListener())
+            .build();
+    }
+
+    /**
+     * A pool of warm containers (only if enabled)
+     */
+    @Bean("deer.warmPool")
+    @ConditionalOnProperty(name = "slipo.rpc-server.tools.deer.warm-pool.enabled", havingValue = "true")
+    public WarmContainerPool warmPool(
+        @Value("${slipo.rpc-server.tools.deer.docker.image}") String imageName,
+        @Value("${slipo.rpc-server.tools.deer.warm-pool.size:2}") int size)
+        throws Exception
+    {
+        return createWarmPool("deer", imageName, size);
+    }
+
+    @Bean("deer.runInWarmContainerTasklet")
+    @JobScope
+    @ConditionalOnProperty(name = "slipo.rpc-server.tools.deer.warm-pool.enabled", havingValue = "true")
+    public RunInWarmContainerTasklet runInWarmContainerTasklet(
+        @Qualifier("deer.warmPool") WarmContainerPool pool,
+        @Value("#{jobExecutionContext['workDir']}") String workDir,
+        @Value("#{jobExecutionContext['inputDir']}") String inputDir,
+        @Value("#{jobExecutionContext['inputFiles']}") List<String> inputFiles,
+        @Value("#{jobExecutionContext['outputFormat']}") String outputFormatName,
+        @Value("#{jobExecutionContext['outputDir']}") String outputDir,
+        @Value("#{jobExecutionContext['configFileByName']}") Map<String, String> configFileByName)
+    {
+        Assert.isTrue(inputFiles.size() == 1, "Expected a single input file");
+        String inputFileName = Paths.get(inputFiles.get(0)).getFileName().toString();
+
+        return RunInWarmContainerTasklet.builder()
+            .client(docker)
+            .pool(pool)
+            .materializer(fileMaterializer)
+            .admission(admissionScheduler, memoryLimit, getCpuDemand(), admissionPriority)
+            .checkInterval(checkInterval)
+            .timeout(runTimeout)
+            .input(Paths.get(inputDir), inputFiles)
+            .config("config.ttl", Paths.get(workDir, configFileByName.get("config")))
+            .output(Paths.get(outputDir))
+            .env("INPUT_FILE", pool.containerInputDir().resolve(inputFileName))
+            .env("OUTPUT_FORMAT", outputFormatName)
+            .env("OUTPUT_DIR", pool.containerOutputDir())
+            .env("CONFIG_FILE", pool.containerConfigDir().resolve("config.ttl"))
+            .logFile(Paths.get(workDir, OUTPUT_LOG_FILENAME), logFileMaxSize, logFileMaxBackups)
+            .build();
+    }
+
+    @Bean("deer.runInWarmContainerStep")
+    @ConditionalOnProperty(name = "slipo.rpc-server.tools.deer.warm-pool.enabled", havingValue = "true")
+    public Step runInWarmContainerStep(
+        @Qualifier("deer.runInWarmContainerTasklet") RunInWarmContainerTasklet tasklet)
+        throws Exception
+    {
+        return stepBuilderFactory.get("deer.runInWarmContainer")
+            .tasklet(tasklet)
+            .listener(tasklet)
+            .build();
+    }
+
+    /**
+     * A decider on whether the run should be sharded (i.e. split by the hash of entities among
+     * several containers) or should be carried out by a single container.
+     */
+    @Bean("deer.shardingDecider")
+    public JobExecutionDecider shardingDecider()
+    {
+        return (JobExecution jobExecution, StepExecution stepExecution) -> {
+            if (!shardingEnabled || maxShards < 2)
+                return SINGLE;
+
+            ExecutionContext executionContext = jobExecution.getExecutionContext();
+            EnumDataFormat inputFormat = EnumDataFormat.valueOf(executionContext.getString("inputFormat"));
+            EnumDataFormat outputFormat = EnumDataFormat.valueOf(executionContext.getString("outputFormat"));
+            if (inputFormat != EnumDataFormat.N_TRIPLES || outputFormat != EnumDataFormat.N_TRIPLES)
+                return SINGLE;
+
+            long inputSize = 0;
+            try {
+                inputSize = Files.size(inputPathOf(executionContext));
+            } catch (IOException ex) {
+                logger.warn("Failed to compute the size of input: {}", ex.getMessage());
+                return SINGLE;
+            }
+            return inputSize >= minInputSizeForSharding? SHARDED : SINGLE;
+        };
+    }
+
+    private static Path inputPathOf(ExecutionContext executionContext)
+    {
+        @SuppressWarnings("unchecked")
+        List<String> inputFiles = (List<String>) executionContext.get("inputFiles");
+        Assert.state(inputFiles != null && inputFiles.size() == 1, "Expected a single input file");
+        return Paths.get(executionContext.getString("inputDir")).resolve(inputFiles.get(0));
+    }
+
+    @Bean("deer.shardTaskExecutor")
+    public TaskExecutor shardTaskExecutor()
+    {
+        return createPartitionTaskExecutor("deer-shard-", maxShards);
+    }
+
+    @Bean("deer.partitioner")
+    @JobScope
+    public SubjectHashPartitioner partitioner(
+        @Value("#{jobExecutionContext['workDir']}") String workDir,
+        @Value("#{jobExecutionContext['inputDir']}") String inputDir,
+        @Value("#{jobExecutionContext['inputFiles']}") List<String> inputFiles)
+        throws IOException
+    {
+        Assert.state(inputFiles != null && inputFiles.size() == 1, "Expected a single input file");
+        Path inputPath = Paths.get(inputDir).resolve(inputFiles.get(0));
+
+        int n = numberOfShards > 0?
+            numberOfShards : SubjectHashPartitioner.numberOfShards(Files.size(inputPath), shardSize, maxShards);
+        logger.info("The input {} will be split into {} shards", inputPath, n);
+
+        return SubjectHashPartitioner.builder()
+            .input(inputPath)
+            .partitionsDirectory(Paths.get(workDir, PARTITIONS_DIR_NAME))
+            .maxShards(n)
+            .build();
+    }
+
+    /**
+     * A tasklet for a shard: create and run a container to enrich the entities assigned to
+     * this shard.
+     */
+    @Bean("deer.shardTasklet")
+    @StepScope
+    public CreateAndRunContainerTasklet shardTasklet(
+        @Value("${slipo.rpc-server.tools.deer.docker.image}") String imageName,
+        @Value("#{jobExecution.jobInstance.id}") Long jobId,
+        @Value("#{jobExecutionContext['workDir']}") String workDir,
+        @Value("#{jobExecutionContext['inputFiles']}") List<String> inputFiles,
+        @Value("#{jobExecutionContext['outputFormat']}") String outputFormatName,
+        @Value("#{jobExecutionContext['configFileByName']}") Map<String, String> configFileByName,
+        @Value("#{stepExecutionContext['partitionIndex']}") Integer partitionIndex,
+        @Value("#{stepExecutionContext['workDir']}") String partitionWorkDir,
+        @Value("#{stepExecutionContext['inputDir']}") String partitionInputDir,
+        @Value("#{stepExecutionContext['outputDir']}") String partitionOutputDir)
+    {
+        String containerName = String.format("deer-%05x-%s",
+            jobId, SubjectHashPartitioner.partitionName(partitionIndex));
+
+        return createPartitionTasklet(containerName, partitionWorkDir,
+            configurer -> configureContainer(
+                configurer, imageName, workDir, partitionInputDir, inputFiles.get(0), outputFormatName,
+                partitionOutputDir, configFileByName));
+    }
+
+    @Bean("deer.shardStep")
+    public Step shardStep(@Qualifier("deer.shardTasklet") CreateAndRunContainerTasklet tasklet)
+    {
+        return createPartitionStep("deer.runShard", tasklet);
+    }
+
+    @Bean("deer.runShardedStep")
+    public Step runShardedStep(
+        @Qualifier("deer.partitioner") SubjectHashPartitioner partitioner,
+        @Qualifier("deer.shardStep") Step shardStep,
+        @Qualifier("deer.shardTaskExecutor") TaskExecutor taskExecutor)
+    {
+        return createPartitionedStep("deer.runSharded", partitioner, shardStep, maxShards, taskExecutor);
+    }
+
+    /**
+     * A tasklet to merge the output of shards into our (common) output directory. Since shards
+     * have no entities in common, the enriched outputs are concatenated dropping duplicates only
+     * among triples of shared resources (copied into every shard).
+     */
+    @Bean("deer.mergeShardOutputTasklet")
+    @JobScope
+    public MergePartitionOutputTasklet mergeShardOutputTasklet(
+        @Value("#{jobExecutionContext['workDir']}") String workDir,
+        @Value("#{jobExecutionContext['outputFormat']}") String outputFormatName,
+        @Value("#{jobExecutionContext['outputDir']}") String outputDir)
+    {
+        EnumDataFormat outputFormat = EnumDataFormat.valueOf(outputFormatName);
+        String outputName = "output" + "." + outputFormat.getFilenameExtension();
+
+        Path partitionsDir = Paths.get(workDir, PARTITIONS_DIR_NAME);
+        SharedResourcesMerger merger = new SharedResourcesMerger(
+            partitionsDir.resolve(SubjectHashPartitioner.SHARED_RESOURCES_FILENAME));
+
+        return MergePartitionOutputTasklet.builder()
+            .partitionsDirectory(partitionsDir)
+            .outputDirectory(Paths.get(outputDir))
+            .expected(outputName)
+            .merger(outputName, merger)
             .build();
     }
 
+    @Bean("deer.mergeShardOutputStep")
+    public Step mergeShardOutputStep(
+        @Qualifier("deer.mergeShardOutputTasklet") MergePartitionOutputTasklet tasklet)
+    {
+        return stepBuilderFactory.get("deer.mergeShardOutput")
+            .tasklet(tasklet).build();
+    }
+
+    @Bean("deer.lookupCachedResultStep")
+    public Step lookupCachedResultStep(
+        @Value("${slipo.rpc-server.tools.deer.docker.image}") String imageName)
+    {
+        return createLookupCachedResultStep("deer", imageName, "config");
+    }
+
+    @Bean("deer.storeResultToCacheStep")
+    public Step storeResultToCacheStep()
+    {
+        return createStoreResultToCacheStep("deer");
+    }
+
     /**
      * Create flow for a job expecting and reading configuration via normal {@link JobParameters}.
      */
@@ -297,14 +695,50 @@ public class DeerJobConfiguration extends ContainerBasedJobConfiguration
     public Flow flow(
         @Qualifier("deer.configureStep") Step configureStep,
         @Qualifier("deer.prepareWorkingDirectoryStep") Step prepareWorkingDirectoryStep,
+        @Qualifier("deer.lookupCachedResultStep") Step lookupCachedResultStep,
+        @Qualifier("deer.storeResultToCacheStep") Step storeResultToCacheStep,
         @Qualifier("deer.createContainerStep") Step createContainerStep,
-        @Qualifier("deer.runContainerStep") Step runContainerStep)
+        @Qualifier("deer.runContainerStep") Step runContainerStep,
+        @Qualifier("deer.runInWarmContainerStep") Optional<Step> runInWarmContainerStep,
+        @Qualifier("deer.shardingDecider") JobExecutionDecider shardingDecider,
+        @Qualifier("deer.runShardedStep") Step runShardedStep,
+        @Qualifier("deer.mergeShardOutputStep") Step mergeShardOutputStep)
     {
-        return new FlowBuilder<Flow>("deer.flow")
+        FlowBuilder<Flow> flowBuilder = new FlowBuilder<Flow>("deer.flow")
             .start(configureStep)
             .next(prepareWorkingDirectoryStep)
-            .next(createContainerStep)
-            .next(runContainerStep)
+            .next(lookupCachedResultStep)
+                .on(LookupCachedResultTasklet.CACHED.getExitCode()).end()
+            .from(lookupCachedResultStep)
+                .on("*").to(shardingDecider)
+            .from(shardingDecider)
+                .on(SHARDED.getName())
+                    .to(runShardedStep)
+                    .next(mergeShardOutputStep)
+                    .next(storeResultToCacheStep);
+
+        if (!runInWarmContainerStep.isPresent()) {
+            return flowBuilder
+                .from(shardingDecider)
+                    .on("*").to(createContainerStep)
+                    .next(runContainerStep)
+                    .next(storeResultToCacheStep)
+                .build();
+        }
+
+        // Try a warm container first, and fall back to creating a container on a miss
+
+        return flowBuilder
+            .from(shardingDecider)
+                .on("*").to(runInWarmContainerStep.get())
+            .from(runInWarmContainerStep.get())
+                .on(RunInWarmContainerTasklet.MISS.getExitCode()).to(createContainerStep)
+                .next(runContainerStep)
+                .next(storeResultToCacheStep)
+            .from(runInWarmContainerStep.get())
+                .on("FAILED*").fail()
+            .from(runInWarmContainerStep.get())
+                .on("*").to(storeResultToCacheStep)
             .build();
     }
 
@@ -5,15 +5,16 @@ import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.nio.file.FileAlreadyExistsException;
-import java.nio.file.FileSystemException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
 
 import javax.annotation.PostConstruct;
 
+import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.codec.digest.DigestUtils;
 import org.springframework.batch.core.Step;
 import org.springframework.batch.core.StepContribution;
@@ -25,6 +26,7 @@ import org.springframework.batch.core.scope.context.ChunkContext;
 import org.springframework.batch.core.step.tasklet.Tasklet;
 import org.springframework.batch.item.ExecutionContext;
 import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
@@ -32,11 +34,22 @@ import org.springframework.stereotype.Component;
 import org.springframework.util.Assert;
 import org.springframework.util.StringUtils;
 
+import eu.slipo.workbench.rpc.jobs.download.HttpDownloader;
 import eu.slipo.workbench.rpc.jobs.listener.ExecutionContextPromotionListeners;
+import eu.slipo.workbench.rpc.service.DownloadCache;
 
 @Component
 public class DownloadFileJobConfiguration extends BaseJobConfiguration
 {
+    @Autowired
+    private HttpDownloader httpDownloader;
+
+    /**
+     * A shared cache for downloaded resources (may be <tt>null</tt> if caching is disabled)
+     */
+    @Autowired(required = false)
+    private DownloadCache downloadCache;
+
     @PostConstruct
     private void setupDataDirectory() throws IOException
     {
@@ -45,7 +58,8 @@ public class DownloadFileJobConfiguration extends BaseJobConfiguration
 
     /**
      * A simple tasklet that downloads a URL to a local output file.
-     * <p>The download is not resumable (if failed or interrupted will start from the beginning).
+     * <p>An HTTP(S) download is resumable (see {@link HttpDownloader}), and its checksum is
+     * computed while streaming. Any other URL is copied (or linked, if a local file).
      */
     public class DownloadFileTasklet implements Tasklet
     {
@@ -111,20 +125,16 @@ public class DownloadFileJobConfiguration extends BaseJobConfiguration
             Assert.state(Files.isDirectory(outputDir) && Files.isWritable(outputDir),
                 "Expected outputDir to be a writable directory");
 
-            // Download file
+            // Download file (computing the checksum along the way)
 
             final Path target = outputDir.resolve(outputName);
-            downloadToTarget(target);
+            final String computedChecksum = downloadToTarget(target);
 
             // Verify download
 
-            if (checksum != null) {
-                String computedChecksum = null;
-                try (InputStream s = Files.newInputStream(target, StandardOpenOption.READ)) {
-                    computedChecksum = DigestUtils.sha256Hex(s);
-                }
-                if (!checksum.equalsIgnoreCase(computedChecksum))
-                    throw new IllegalStateException("checksum verification has failed");
+            if (checksum != null && !checksum.equalsIgnoreCase(computedChecksum)) {
+                Files.delete(target);
+                throw new IllegalStateException("checksum verification has failed");
             }
 
             // Update execution context
@@ -135,25 +145,40 @@ public class DownloadFileJobConfiguration extends BaseJobConfiguration
             return RepeatStatus.FINISHED;
         }
 
-        private void downloadToTarget(Path target) throws IOException
+        /**
+         * Download to target file.
+         *
+         * @return the SHA-256 checksum of the target, or <tt>null</tt> if not computed (i.e. if
+         *   no checksum was given to verify against, and computing it would need an extra read)
+         */
+        private String downloadToTarget(Path target) throws IOException, InterruptedException
         {
-            // If URL represents a local file, first try to link
-
-            Path link = null;
-            if (tryLink && url.getProtocol().equals("file") && StringUtils.isEmpty(url.getHost())) {
-                try {
-                    link = Files.createLink(target, Paths.get(url.getPath()));
-                } catch (FileSystemException e) {
-                    link = null;
+            if (HttpDownloader.supports(url)) {
+                return downloadCache != null?
+                    downloadCache.fetch(url, target) : httpDownloader.download(url, target).getSha256();
+            }
+
+            // If URL represents a local file, materialize it (link, clone or copy)
+
+            if (url.getProtocol().equals("file") && StringUtils.isEmpty(url.getHost())) {
+                final Path source = Paths.get(url.getPath());
+                Files.deleteIfExists(target);
+                if (tryLink)
+                    fileMaterializer.materialize(source, target);
+                else
+                    fileMaterializer.copy(source, target);
+                if (checksum == null)
+                    return null;
+                try (InputStream s = Files.newInputStream(target, StandardOpenOption.READ)) {
+                    return DigestUtils.sha256Hex(s);
                 }
             }
 
-            // If no link was created, fallback to plain copying
+            // Otherwise, fallback to plain copying
 
-            if (link == null) {
-                try (InputStream in = url.openStream()) {
-                    Files.copy(in, target, StandardCopyOption.REPLACE_EXISTING);
-                }
+            try (DigestInputStream in = new DigestInputStream(url.openStream(), DigestUtils.getSha256Digest())) {
+                Files.copy(in, target, StandardCopyOption.REPLACE_EXISTING);
+                return Hex.encodeHexString(in.getMessageDigest().digest());
             }
         }
     }
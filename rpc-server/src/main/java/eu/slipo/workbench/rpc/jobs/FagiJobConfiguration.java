@@ -1,6 +1,7 @@
 package eu.slipo.workbench.rpc.jobs;
 
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.LocalDate;
@@ -16,12 +17,17 @@ import javax.validation.ConstraintViolation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobExecution;
 import org.springframework.batch.core.Step;
 import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.StepExecution;
 import org.springframework.batch.core.configuration.JobFactory;
 import org.springframework.batch.core.configuration.annotation.JobScope;
+import org.springframework.batch.core.configuration.annotation.StepScope;
 import org.springframework.batch.core.job.builder.FlowBuilder;
 import org.springframework.batch.core.job.flow.Flow;
+import org.springframework.batch.core.job.flow.FlowExecutionStatus;
+import org.springframework.batch.core.job.flow.JobExecutionDecider;
 import org.springframework.batch.core.launch.support.RunIdIncrementer;
 import org.springframework.batch.core.scope.context.ChunkContext;
 import org.springframework.batch.core.scope.context.StepContext;
@@ -33,20 +39,31 @@ import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.core.io.Resource;
+import org.springframework.core.task.TaskExecutor;
 import org.springframework.stereotype.Component;
 import org.springframework.util.Assert;
 import org.springframework.util.StringUtils;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 
+import eu.slipo.workbench.common.model.poi.EnumDataFormat;
+import eu.slipo.workbench.common.model.poi.EnumTool;
 import eu.slipo.workbench.common.model.tool.FagiConfiguration;
 import eu.slipo.workbench.common.model.tool.InvalidConfigurationException;
 import eu.slipo.workbench.rpc.jobs.listener.ExecutionContextPromotionListeners;
 import eu.slipo.workbench.rpc.jobs.listener.LoggingJobExecutionListener;
+import eu.slipo.workbench.rpc.jobs.partition.JsonStatisticsMerger;
+import eu.slipo.workbench.rpc.jobs.partition.LinkComponentPartitioner;
+import eu.slipo.workbench.rpc.jobs.partition.MergePartitionOutputTasklet;
+import eu.slipo.workbench.rpc.jobs.partition.SharedResourcesMerger;
+import eu.slipo.workbench.rpc.jobs.tasklet.LookupCachedResultTasklet;
 import eu.slipo.workbench.rpc.jobs.tasklet.PrepareWorkingDirectoryTasklet;
+import eu.slipo.workbench.rpc.jobs.tasklet.docker.ContainerConfigurer;
+import eu.slipo.workbench.rpc.jobs.tasklet.docker.CreateAndRunContainerTasklet;
 import eu.slipo.workbench.rpc.jobs.tasklet.docker.CreateContainerTasklet;
 import eu.slipo.workbench.rpc.jobs.tasklet.docker.RunContainerTasklet;
 
@@ -69,6 +86,31 @@ public class FagiJobConfiguration extends ContainerBasedJobConfiguration
 
     public static final long DEFAULT_MEMORY_LIMIT = 536870912L;
 
+    /**
+     * The default maximum number of partitions (when running in partitioned mode)
+     */
+    public static final int DEFAULT_MAX_PARTITIONS = 4;
+
+    /**
+     * The default minimum size (bytes) of input for running in partitioned mode
+     */
+    public static final long DEFAULT_MIN_INPUT_SIZE_FOR_PARTITIONING = 16L * 1024L * 1024L;
+
+    /**
+     * The name of the directory (under the working directory) for partitions
+     */
+    private static final String PARTITIONS_DIR_NAME = "partitions";
+
+    /**
+     * The flow execution status for a run to be partitioned
+     */
+    private static final FlowExecutionStatus PARTITIONED = new FlowExecutionStatus("PARTITIONED");
+
+    /**
+     * The flow execution status for a run on a single container
+     */
+    private static final FlowExecutionStatus SINGLE = new FlowExecutionStatus("SINGLE");
+
     /**
      * A list of keys of parameters to be ignored (blacklisted) as conflicting with <tt>input</tt> parameter.
      */
@@ -111,6 +153,65 @@ public class FagiJobConfiguration extends ContainerBasedJobConfiguration
         this.memorySwapLimit = kbytes == null? -1L : kbytes.longValue() * 1024;
     }
 
+    @Autowired
+    private void setCpuLimit(
+        @Value("${slipo.rpc-server.tools.fagi.docker.container.cpus:}") Double cpus)
+    {
+        this.cpuLimit = cpus == null? -1.0 : cpus.doubleValue();
+    }
+
+    @Autowired
+    private void setReadableInputFormats(
+        @Value("${slipo.rpc-server.tools.fagi.input.readable-formats:}") String[] formatNames)
+    {
+        super.setReadableFormats(formatNames);
+    }
+
+    @Autowired
+    private void setAdmissionPriority(
+        @Value("${slipo.rpc-server.tools.fagi.admission-priority:0}") int priority)
+    {
+        this.admissionPriority = priority;
+    }
+
+    /**
+     * A flag that indicates if partitioning (of input among several containers, by components
+     * of the link graph) is enabled
+     */
+    private boolean partitioningEnabled = false;
+
+    /**
+     * The maximum number of partitions
+     */
+    private int maxPartitions = DEFAULT_MAX_PARTITIONS;
+
+    /**
+     * The minimum size (bytes) of input (left, right and links) for a run to be partitioned
+     */
+    private long minInputSizeForPartitioning = DEFAULT_MIN_INPUT_SIZE_FOR_PARTITIONING;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private void setPartitioning(
+        @Value("${slipo.rpc-server.tools.fagi.partitioning.enabled:false}") boolean enabled,
+        @Value("${slipo.rpc-server.tools.fagi.partitioning.max-partitions:}") Integer maxPartitions,
+        @Value("${slipo.rpc-server.tools.fagi.partitioning.max-concurrency:}") Integer maxConcurrency,
+        @Value("${slipo.rpc-server.tools.fagi.partitioning.memory-budget-kbytes:}") Long memoryBudgetKbytes,
+        @Value("${slipo.rpc-server.tools.fagi.partitioning.min-input-size-kbytes:}") Long minInputSizeKbytes)
+    {
+        this.partitioningEnabled = enabled;
+        if (maxPartitions != null) {
+            Assert.isTrue(maxPartitions > 0, "Expected a positive number of partitions");
+            this.maxPartitions = maxPartitions;
+        }
+        setPartitionConcurrency(maxConcurrency, memoryBudgetKbytes);
+        if (minInputSizeKbytes != null) {
+            this.minInputSizeForPartitioning = minInputSizeKbytes * 1024L;
+        }
+    }
+
     @PostConstruct
     private void setMemoryLimitsIfNeeded()
     {
@@ -209,6 +310,9 @@ public class FagiJobConfiguration extends ContainerBasedJobConfiguration
         Path workDir = dataDir.resolve(String.format("%05x", jobId));
 
         return PrepareWorkingDirectoryTasklet.builder()
+            .materializer(fileMaterializer)
+            .extractor(createArchiveExtractor())
+            .readableFormats(readableFormats)
             .workingDirectory(workDir)
             .input(Lists.transform(input, Paths::get))
             .inputFormat(spec.getInputFormat())
@@ -233,27 +337,26 @@ public class FagiJobConfiguration extends ContainerBasedJobConfiguration
             .build();
     }
 
-    @Bean("fagi.createContainerTasklet")
-    @JobScope
-    public CreateContainerTasklet createContainerTasklet(
-        @Value("${slipo.rpc-server.tools.fagi.docker.image}") String imageName,
-        @Value("#{jobExecution.jobInstance.id}") Long jobId,
-        @Value("#{jobExecutionContext['spec']}") FagiConfiguration spec,
-        @Value("#{jobExecutionContext['workDir']}") String workDir,
-        @Value("#{jobExecutionContext['inputDir']}") String inputDir,
-        @Value("#{jobExecutionContext['inputFormat']}") String inputFormatName,
-        @Value("#{jobExecutionContext['inputFiles']}") List<String> inputFiles,
-        @Value("#{jobExecutionContext['outputDir']}") String outputDir,
-        @Value("#{jobExecutionContext['configFileByName']}") Map<String, String> configFileByName)
+    /**
+     * Configure a container to run FAGI.
+     *
+     * @param configurer The container configurer
+     * @param imageName The docker image
+     * @param spec The configuration
+     * @param workDir The working directory
+     * @param inputDir The input directory (to be bind-mounted)
+     * @param inputFiles The left, right and links input files (relative to input directory)
+     * @param outputDir The output directory (to be bind-mounted)
+     * @param configFileByName A map of configuration files (relative to working directory)
+     */
+    private void configureContainer(
+        ContainerConfigurer configurer, String imageName, FagiConfiguration spec, String workDir,
+        String inputDir, List<String> inputFiles, String outputDir, Map<String, String> configFileByName)
     {
-        String containerName = String.format("fagi-%05x", jobId);
-
         Path containerInputDir = containerDataDir.resolve("input");
         Path containerOutputDir = containerDataDir.resolve("output");
         Path containerConfigDir = containerDataDir;
 
-        Assert.state(inputFiles != null && inputFiles.size() == 3,
-            "The input is expected as a triple (left, right, links) of files");
         Path leftFileName = Paths.get(inputFiles.get(0)).getFileName();
         Path rightFileName = Paths.get(inputFiles.get(1)).getFileName();
         Path linksFileName = Paths.get(inputFiles.get(2)).getFileName();
@@ -268,45 +371,73 @@ public class FagiJobConfiguration extends ContainerBasedJobConfiguration
         Path reviewFileName = Paths.get(targetSpec.getReviewPath()).getFileName();
         Path statsFileName = Paths.get(targetSpec.getStatsPath()).getFileName();
 
+        configurer
+            .image(imageName)
+            .volume(Paths.get(inputDir), containerInputDir, true)
+            .volume(Paths.get(outputDir), containerOutputDir)
+            .volume(Paths.get(workDir, configFileByName.get("rules")),
+                containerConfigDir.resolve("rules.xml"), true)
+            // Set environment
+            .env("LOCALE", spec.getLang())
+            .env("INPUT_FORMAT", spec.getInputFormatAsString())
+            .env("OUTPUT_FORMAT", spec.getOutputFormatAsString())
+            .env("SIMILARITY", spec.getSimilarityAsString())
+            .env("RULES_FILE", containerConfigDir.resolve("rules.xml"))
+            .env("LEFT_ID", leftSpec.getId())
+            .env("LEFT_FILE", containerInputDir.resolve(leftFileName))
+            .env("LEFT_DATE", Optional.ofNullable(leftSpec.getDate())
+                .map(LocalDate::toString).orElse(""))
+            .env("RIGHT_ID", rightSpec.getId())
+            .env("RIGHT_FILE", containerInputDir.resolve(rightFileName))
+            .env("RIGHT_DATE", Optional.ofNullable(rightSpec.getDate())
+                .map(LocalDate::toString).orElse(""))
+            .env("LINKS_ID", linksSpec.getId())
+            .env("LINKS_FILE", containerInputDir.resolve(linksFileName))
+            .env("TARGET_ID", targetSpec.getId())
+            .env("TARGET_MODE", targetSpec.getModeAsString())
+            .env("TARGET_FUSED_NAME",
+                StringUtils.stripFilenameExtension(fusedFileName.toString()))
+            .env("TARGET_REMAINING_NAME",
+                StringUtils.stripFilenameExtension(remainingFileName.toString()))
+            .env("TARGET_REVIEW_NAME",
+                StringUtils.stripFilenameExtension(reviewFileName.toString()))
+            .env("TARGET_STATS_NAME",
+                StringUtils.stripFilenameExtension(statsFileName.toString()))
+            .env("OUTPUT_DIR", containerOutputDir)
+            // Set resource limits
+            .memory(memoryLimit)
+            .memoryAndSwap(memorySwapLimit)
+            .cpus(cpuLimit);
+    }
+
+    @Bean("fagi.createContainerTasklet")
+    @JobScope
+    public CreateContainerTasklet createContainerTasklet(
+        @Value("${slipo.rpc-server.tools.fagi.docker.image}") String imageName,
+        @Value("#{jobExecution.jobInstance.id}") Long jobId,
+        @Value("#{jobExecutionContext['spec']}") FagiConfiguration spec,
+        @Value("#{jobExecutionContext['workDir']}") String workDir,
+        @Value("#{jobExecutionContext['inputDir']}") String inputDir,
+        @Value("#{jobExecutionContext['inputFormat']}") String inputFormatName,
+        @Value("#{jobExecutionContext['inputFiles']}") List<String> inputFiles,
+        @Value("#{jobExecutionContext['outputDir']}") String outputDir,
+        @Value("#{jobExecutionContext['configFileByName']}") Map<String, String> configFileByName)
+    {
+        String containerName = String.format("fagi-%05x", jobId);
+
+        Assert.state(inputFiles != null && inputFiles.size() == 3,
+            "The input is expected as a triple (left, right, links) of files");
+
+        ContainerLimits limits = getContainerLimits(EnumTool.FAGI, inputDir, inputFiles);
+
         return CreateContainerTasklet.builder()
             .client(docker)
+            .hosts(containerHosts)
+            .metrics(metrics)
             .name(containerName)
-            .container(configurer -> configurer
-                .image(imageName)
-                .volume(Paths.get(inputDir), containerInputDir, true)
-                .volume(Paths.get(outputDir), containerOutputDir)
-                .volume(Paths.get(workDir, configFileByName.get("rules")),
-                    containerConfigDir.resolve("rules.xml"), true)
-                // Set environment
-                .env("LOCALE", spec.getLang())
-                .env("INPUT_FORMAT", spec.getInputFormatAsString())
-                .env("OUTPUT_FORMAT", spec.getOutputFormatAsString())
-                .env("SIMILARITY", spec.getSimilarityAsString())
-                .env("RULES_FILE", containerConfigDir.resolve("rules.xml"))
-                .env("LEFT_ID", leftSpec.getId())
-                .env("LEFT_FILE", containerInputDir.resolve(leftFileName))
-                .env("LEFT_DATE", Optional.ofNullable(leftSpec.getDate())
-                    .map(LocalDate::toString).orElse(""))
-                .env("RIGHT_ID", rightSpec.getId())
-                .env("RIGHT_FILE", containerInputDir.resolve(rightFileName))
-                .env("RIGHT_DATE", Optional.ofNullable(rightSpec.getDate())
-                    .map(LocalDate::toString).orElse(""))
-                .env("LINKS_ID", linksSpec.getId())
-                .env("LINKS_FILE", containerInputDir.resolve(linksFileName))
-                .env("TARGET_ID", targetSpec.getId())
-                .env("TARGET_MODE", targetSpec.getModeAsString())
-                .env("TARGET_FUSED_NAME",
-                    StringUtils.stripFilenameExtension(fusedFileName.toString()))
-                .env("TARGET_REMAINING_NAME",
-                    StringUtils.stripFilenameExtension(remainingFileName.toString()))
-                .env("TARGET_REVIEW_NAME",
-                    StringUtils.stripFilenameExtension(reviewFileName.toString()))
-                .env("TARGET_STATS_NAME",
-                    StringUtils.stripFilenameExtension(statsFileName.toString()))
-                .env("OUTPUT_DIR", containerOutputDir)
-                // Set resource limits
-                .memory(memoryLimit)
-                .memoryAndSwap(memorySwapLimit))
+            .container(configurer -> configureContainer(
+                configurer, imageName, spec, workDir, inputDir, inputFiles, outputDir, configFileByName))
+            .container(limits::configure)
             .build();
     }
 
@@ -324,13 +455,26 @@ public class FagiJobConfiguration extends ContainerBasedJobConfiguration
     @Bean("fagi.runContainerTasklet")
     @JobScope
     public RunContainerTasklet runContainerTasklet(
-        @Value("#{jobExecutionContext['containerName']}") String containerName)
+        @Value("#{jobExecutionContext['containerName']}") String containerName,
+        @Value("#{jobExecutionContext['workDir']}") String workDir,
+        @Value("#{jobExecutionContext['inputDir']}") String inputDir,
+        @Value("#{jobExecutionContext['inputFiles']}") List<String> inputFiles)
     {
+        ContainerLimits limits = getContainerLimits(EnumTool.FAGI, inputDir, inputFiles);
+
         return RunContainerTasklet.builder()
             .client(docker)
+            .hosts(containerHosts)
+            .metrics(metrics)
+            .monitor(containerEventMonitor)
+            .admission(admissionScheduler, limits.memory(), getCpuDemand(), admissionPriority)
+            .expectedDuration(limits.expectedDuration())
             .checkInterval(checkInterval)
-            .timeout(runTimeout)
+            .timeout(limits.timeout())
             .container(containerName)
+            .logFile(Paths.get(workDir, OUTPUT_LOG_FILENAME), logFileMaxSize, logFileMaxBackups)
+            .stats(statsInterval)
+            .statsFile(getStatsFile(workDir))
             .removeOnFinished(false)
             .build();
     }
@@ -345,6 +489,170 @@ public class FagiJobConfiguration extends ContainerBasedJobConfiguration
             .build();
     }
 
+    /**
+     * A decider on whether the run should be partitioned (i.e. split by components of the link
+     * graph among several containers) or should be carried out by a single container.
+     */
+    @Bean("fagi.partitioningDecider")
+    public JobExecutionDecider partitioningDecider()
+    {
+        return (JobExecution jobExecution, StepExecution stepExecution) -> {
+            if (!partitioningEnabled || maxPartitions < 2)
+                return SINGLE;
+
+            ExecutionContext executionContext = jobExecution.getExecutionContext();
+            EnumDataFormat inputFormat = EnumDataFormat.valueOf(executionContext.getString("inputFormat"));
+            EnumDataFormat outputFormat = EnumDataFormat.valueOf(executionContext.getString("outputFormat"));
+            if (inputFormat != EnumDataFormat.N_TRIPLES || outputFormat != EnumDataFormat.N_TRIPLES)
+                return SINGLE;
+
+            Path inputDir = Paths.get(executionContext.getString("inputDir"));
+            @SuppressWarnings("unchecked")
+            List<String> inputFiles = (List<String>) executionContext.get("inputFiles");
+            long inputSize = 0;
+            try {
+                for (String inputFile: inputFiles)
+                    inputSize += Files.size(inputDir.resolve(inputFile));
+            } catch (IOException ex) {
+                logger.warn("Failed to compute the size of input: {}", ex.getMessage());
+                return SINGLE;
+            }
+            return inputSize >= minInputSizeForPartitioning? PARTITIONED : SINGLE;
+        };
+    }
+
+    @Bean("fagi.partitionTaskExecutor")
+    public TaskExecutor partitionTaskExecutor()
+    {
+        return createPartitionTaskExecutor("fagi-partition-", maxPartitions);
+    }
+
+    @Bean("fagi.partitioner")
+    @JobScope
+    public LinkComponentPartitioner partitioner(
+        @Value("#{jobExecutionContext['workDir']}") String workDir,
+        @Value("#{jobExecutionContext['inputDir']}") String inputDir,
+        @Value("#{jobExecutionContext['inputFiles']}") List<String> inputFiles)
+    {
+        Assert.state(inputFiles != null && inputFiles.size() == 3,
+            "The input is expected as a triple (left, right, links) of files");
+
+        return LinkComponentPartitioner.builder()
+            .left(Paths.get(inputDir).resolve(inputFiles.get(0)))
+            .right(Paths.get(inputDir).resolve(inputFiles.get(1)))
+            .links(Paths.get(inputDir).resolve(inputFiles.get(2)))
+            .partitionsDirectory(Paths.get(workDir, PARTITIONS_DIR_NAME))
+            .maxPartitions(maxPartitions)
+            .build();
+    }
+
+    /**
+     * A tasklet for a partition: create and run a container to fuse the components of the
+     * link graph assigned to this partition.
+     */
+    @Bean("fagi.partitionTasklet")
+    @StepScope
+    public CreateAndRunContainerTasklet partitionTasklet(
+        @Value("${slipo.rpc-server.tools.fagi.docker.image}") String imageName,
+        @Value("#{jobExecution.jobInstance.id}") Long jobId,
+        @Value("#{jobExecutionContext['spec']}") FagiConfiguration spec,
+        @Value("#{jobExecutionContext['workDir']}") String workDir,
+        @Value("#{jobExecutionContext['inputFiles']}") List<String> inputFiles,
+        @Value("#{jobExecutionContext['configFileByName']}") Map<String, String> configFileByName,
+        @Value("#{stepExecutionContext['partitionIndex']}") Integer partitionIndex,
+        @Value("#{stepExecutionContext['workDir']}") String partitionWorkDir,
+        @Value("#{stepExecutionContext['inputDir']}") String partitionInputDir,
+        @Value("#{stepExecutionContext['outputDir']}") String partitionOutputDir)
+    {
+        String containerName = String.format("fagi-%05x-%s",
+            jobId, LinkComponentPartitioner.partitionName(partitionIndex));
+
+        return createPartitionTasklet(containerName, partitionWorkDir,
+            configurer -> configureContainer(
+                configurer, imageName, spec, workDir, partitionInputDir, inputFiles, partitionOutputDir,
+                configFileByName));
+    }
+
+    @Bean("fagi.partitionStep")
+    public Step partitionStep(@Qualifier("fagi.partitionTasklet") CreateAndRunContainerTasklet tasklet)
+    {
+        return createPartitionStep("fagi.runPartition", tasklet);
+    }
+
+    @Bean("fagi.runPartitionedStep")
+    public Step runPartitionedStep(
+        @Qualifier("fagi.partitioner") LinkComponentPartitioner partitioner,
+        @Qualifier("fagi.partitionStep") Step partitionStep,
+        @Qualifier("fagi.partitionTaskExecutor") TaskExecutor taskExecutor)
+    {
+        return createPartitionedStep(
+            "fagi.runPartitioned", partitioner, partitionStep, maxPartitions, taskExecutor);
+    }
+
+    /**
+     * A tasklet to merge the output of partitions into our (common) output directory.
+     * <p>
+     * The fused, remaining and review outputs of partitions are disjoint except for triples of
+     * shared resources, so these outputs are concatenated dropping duplicates only among those.
+     * Statistics are merged, with ratios weighted by the number of links of each partition.
+     */
+    @Bean("fagi.mergePartitionOutputTasklet")
+    @JobScope
+    public MergePartitionOutputTasklet mergePartitionOutputTasklet(
+        @Value("#{jobExecutionContext['spec']}") FagiConfiguration spec,
+        @Value("#{jobExecutionContext['workDir']}") String workDir,
+        @Value("#{jobExecutionContext['outputDir']}") String outputDir,
+        @Value("#{jobExecutionContext['inputFiles']}") List<String> inputFiles)
+    {
+        Assert.state(inputFiles != null && inputFiles.size() == 3,
+            "The input is expected as a triple (left, right, links) of files");
+
+        FagiConfiguration.Output targetSpec = spec.getTarget();
+        Path partitionsDir = Paths.get(workDir, PARTITIONS_DIR_NAME);
+        String statsFileName = Paths.get(targetSpec.getStatsPath()).getFileName().toString();
+        String linksFileName = Paths.get(inputFiles.get(2)).getFileName().toString();
+
+        SharedResourcesMerger merger = new SharedResourcesMerger(
+            partitionsDir.resolve(LinkComponentPartitioner.SHARED_RESOURCES_FILENAME));
+        String[] names = new String[] {
+            Paths.get(targetSpec.getFusedPath()).getFileName().toString(),
+            Paths.get(targetSpec.getRemainingPath()).getFileName().toString(),
+            Paths.get(targetSpec.getReviewPath()).getFileName().toString(),
+        };
+
+        return MergePartitionOutputTasklet.builder()
+            .partitionsDirectory(partitionsDir)
+            .outputDirectory(Paths.get(outputDir))
+            .expected(names[0], names[1], names[2], statsFileName)
+            .merger(names[0], merger)
+            .merger(names[1], merger)
+            .merger(names[2], merger)
+            .merger(statsFileName, new JsonStatisticsMerger(
+                objectMapper, LinkComponentPartitioner.linksWeigher(linksFileName)))
+            .build();
+    }
+
+    @Bean("fagi.mergePartitionOutputStep")
+    public Step mergePartitionOutputStep(
+        @Qualifier("fagi.mergePartitionOutputTasklet") MergePartitionOutputTasklet tasklet)
+    {
+        return stepBuilderFactory.get("fagi.mergePartitionOutput")
+            .tasklet(tasklet).build();
+    }
+
+    @Bean("fagi.lookupCachedResultStep")
+    public Step lookupCachedResultStep(
+        @Value("${slipo.rpc-server.tools.fagi.docker.image}") String imageName)
+    {
+        return createLookupCachedResultStep("fagi", imageName, "spec");
+    }
+
+    @Bean("fagi.storeResultToCacheStep")
+    public Step storeResultToCacheStep()
+    {
+        return createStoreResultToCacheStep("fagi");
+    }
+
     /**
      * Create flow for a job expecting and reading configuration via normal {@link JobParameters}.
      */
@@ -352,14 +660,31 @@ public class FagiJobConfiguration extends ContainerBasedJobConfiguration
     public Flow flow(
         @Qualifier("fagi.configureStep") Step configureStep,
         @Qualifier("fagi.prepareWorkingDirectoryStep") Step prepareWorkingDirectoryStep,
+        @Qualifier("fagi.lookupCachedResultStep") Step lookupCachedResultStep,
+        @Qualifier("fagi.storeResultToCacheStep") Step storeResultToCacheStep,
         @Qualifier("fagi.createContainerStep") Step createContainerStep,
-        @Qualifier("fagi.runContainerStep") Step runContainerStep)
+        @Qualifier("fagi.runContainerStep") Step runContainerStep,
+        @Qualifier("fagi.partitioningDecider") JobExecutionDecider partitioningDecider,
+        @Qualifier("fagi.runPartitionedStep") Step runPartitionedStep,
+        @Qualifier("fagi.mergePartitionOutputStep") Step mergePartitionOutputStep)
     {
         return new FlowBuilder<Flow>("fagi.flow")
             .start(configureStep)
             .next(prepareWorkingDirectoryStep)
-            .next(createContainerStep)
-            .next(runContainerStep)
+            .next(lookupCachedResultStep)
+                .on(LookupCachedResultTasklet.CACHED.getExitCode()).end()
+            .from(lookupCachedResultStep)
+                .on("*").to(partitioningDecider)
+            .from(partitioningDecider)
+                .on(PARTITIONED.getName())
+                    .to(runPartitionedStep)
+                    .next(mergePartitionOutputStep)
+                    .next(storeResultToCacheStep)
+            .from(partitioningDecider)
+                .on("*")
+                    .to(createContainerStep)
+                    .next(runContainerStep)
+                    .next(storeResultToCacheStep)
             .build();
     }
 
@@ -1,12 +1,14 @@
 package eu.slipo.workbench.rpc.jobs;
 
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.regex.Pattern;
 
 import javax.annotation.PostConstruct;
 import javax.validation.ConstraintViolation;
@@ -14,13 +16,18 @@ import javax.validation.ConstraintViolation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobExecution;
 import org.springframework.batch.core.JobParameters;
 import org.springframework.batch.core.Step;
 import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.StepExecution;
 import org.springframework.batch.core.configuration.JobFactory;
 import org.springframework.batch.core.configuration.annotation.JobScope;
+import org.springframework.batch.core.configuration.annotation.StepScope;
 import org.springframework.batch.core.job.builder.FlowBuilder;
 import org.springframework.batch.core.job.flow.Flow;
+import org.springframework.batch.core.job.flow.FlowExecutionStatus;
+import org.springframework.batch.core.job.flow.JobExecutionDecider;
 import org.springframework.batch.core.launch.support.RunIdIncrementer;
 import org.springframework.batch.core.scope.context.ChunkContext;
 import org.springframework.batch.core.scope.context.StepContext;
@@ -31,6 +38,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
+import org.springframework.core.task.TaskExecutor;
 import org.springframework.stereotype.Component;
 import org.springframework.util.Assert;
 import org.springframework.util.StringUtils;
@@ -38,12 +46,19 @@ import org.springframework.util.StringUtils;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Maps;
 
+import eu.slipo.workbench.common.model.poi.EnumDataFormat;
+import eu.slipo.workbench.common.model.poi.EnumTool;
 import eu.slipo.workbench.common.model.tool.EnumConfigurationFormat;
 import eu.slipo.workbench.common.model.tool.InvalidConfigurationException;
 import eu.slipo.workbench.common.model.tool.LimesConfiguration;
 import eu.slipo.workbench.rpc.jobs.listener.ExecutionContextPromotionListeners;
 import eu.slipo.workbench.rpc.jobs.listener.LoggingJobExecutionListener;
+import eu.slipo.workbench.rpc.jobs.partition.MergePartitionOutputTasklet;
+import eu.slipo.workbench.rpc.jobs.partition.SpatialBlockPartitioner;
+import eu.slipo.workbench.rpc.jobs.tasklet.LookupCachedResultTasklet;
 import eu.slipo.workbench.rpc.jobs.tasklet.PrepareWorkingDirectoryTasklet;
+import eu.slipo.workbench.rpc.jobs.tasklet.docker.ContainerConfigurer;
+import eu.slipo.workbench.rpc.jobs.tasklet.docker.CreateAndRunContainerTasklet;
 import eu.slipo.workbench.rpc.jobs.tasklet.docker.CreateContainerTasklet;
 import eu.slipo.workbench.rpc.jobs.tasklet.docker.RunContainerTasklet;
 
@@ -66,6 +81,53 @@ public class LimesJobConfiguration extends ContainerBasedJobConfiguration
 
     public static final long DEFAULT_MEMORY_LIMIT = 536870912L;
 
+    /**
+     * The default size (degrees) of a grid cell (when running in blocked mode)
+     */
+    public static final double DEFAULT_BLOCKING_CELL_SIZE = 0.1;
+
+    /**
+     * The default margin (degrees) around a target entity (when running in blocked mode)
+     */
+    public static final double DEFAULT_BLOCKING_MARGIN = 0.01;
+
+    /**
+     * The default maximum number of blocks (when running in blocked mode)
+     */
+    public static final int DEFAULT_MAX_BLOCKS = 4;
+
+    /**
+     * The default minimum size (bytes) of input for running in blocked mode
+     */
+    public static final long DEFAULT_MIN_INPUT_SIZE_FOR_BLOCKING = 16L * 1024L * 1024L;
+
+    /**
+     * The name of the directory (under the working directory) for partitions (i.e. blocks)
+     */
+    private static final String PARTITIONS_DIR_NAME = "partitions";
+
+    /**
+     * The flow execution status for a run to be split into spatial blocks
+     */
+    private static final FlowExecutionStatus BLOCKED = new FlowExecutionStatus("BLOCKED");
+
+    /**
+     * The flow execution status for a run on a single container
+     */
+    private static final FlowExecutionStatus SINGLE = new FlowExecutionStatus("SINGLE");
+
+    /**
+     * A pattern for a metric expression that compares geometries
+     */
+    private static final Pattern SPATIAL_METRIC_PATTERN =
+        Pattern.compile("\\bgeo_\\w+\\s*\\(", Pattern.CASE_INSENSITIVE);
+
+    /**
+     * A pattern for a metric expression that may accept a pair on a non-spatial measure alone
+     */
+    private static final Pattern DISJUNCTIVE_METRIC_PATTERN =
+        Pattern.compile("\\b(X?OR|MINUS)\\s*\\(", Pattern.CASE_INSENSITIVE);
+
     /**
      * A list of keys of parameters to be ignored (blacklisted) as conflicting with <tt>input</tt> parameter.
      */
@@ -107,6 +169,83 @@ public class LimesJobConfiguration extends ContainerBasedJobConfiguration
         this.memorySwapLimit = kbytes == null? -1L : kbytes.longValue() * 1024;
     }
 
+    @Autowired
+    private void setCpuLimit(
+        @Value("${slipo.rpc-server.tools.limes.docker.container.cpus:}") Double cpus)
+    {
+        this.cpuLimit = cpus == null? -1.0 : cpus.doubleValue();
+    }
+
+    @Autowired
+    private void setReadableInputFormats(
+        @Value("${slipo.rpc-server.tools.limes.input.readable-formats:}") String[] formatNames)
+    {
+        super.setReadableFormats(formatNames);
+    }
+
+    @Autowired
+    private void setAdmissionPriority(
+        @Value("${slipo.rpc-server.tools.limes.admission-priority:0}") int priority)
+    {
+        this.admissionPriority = priority;
+    }
+
+    /**
+     * A flag that indicates if blocking (i.e. splitting input into spatial blocks interlinked by
+     * several containers) is enabled
+     */
+    private boolean blockingEnabled = false;
+
+    /**
+     * The size (degrees) of a grid cell
+     */
+    private double blockingCellSize = DEFAULT_BLOCKING_CELL_SIZE;
+
+    /**
+     * The margin (degrees) around a target entity. This must not be less than the distance
+     * under which a pair of entities may be accepted (or reviewed).
+     */
+    private double blockingMargin = DEFAULT_BLOCKING_MARGIN;
+
+    /**
+     * The maximum number of blocks
+     */
+    private int maxBlocks = DEFAULT_MAX_BLOCKS;
+
+    /**
+     * The minimum size (bytes) of input (source and target) for a run to be blocked
+     */
+    private long minInputSizeForBlocking = DEFAULT_MIN_INPUT_SIZE_FOR_BLOCKING;
+
+    @Autowired
+    private void setBlocking(
+        @Value("${slipo.rpc-server.tools.limes.blocking.enabled:false}") boolean enabled,
+        @Value("${slipo.rpc-server.tools.limes.blocking.cell-size:}") Double cellSize,
+        @Value("${slipo.rpc-server.tools.limes.blocking.margin:}") Double margin,
+        @Value("${slipo.rpc-server.tools.limes.blocking.max-blocks:}") Integer maxBlocks,
+        @Value("${slipo.rpc-server.tools.limes.blocking.max-concurrency:}") Integer maxConcurrency,
+        @Value("${slipo.rpc-server.tools.limes.blocking.memory-budget-kbytes:}") Long memoryBudgetKbytes,
+        @Value("${slipo.rpc-server.tools.limes.blocking.min-input-size-kbytes:}") Long minInputSizeKbytes)
+    {
+        this.blockingEnabled = enabled;
+        if (cellSize != null) {
+            Assert.isTrue(cellSize > 0, "Expected a positive cell size");
+            this.blockingCellSize = cellSize;
+        }
+        if (margin != null) {
+            Assert.isTrue(margin >= 0, "Expected a non-negative margin");
+            this.blockingMargin = margin;
+        }
+        if (maxBlocks != null) {
+            Assert.isTrue(maxBlocks > 0, "Expected a positive number of blocks");
+            this.maxBlocks = maxBlocks;
+        }
+        setPartitionConcurrency(maxConcurrency, memoryBudgetKbytes);
+        if (minInputSizeKbytes != null) {
+            this.minInputSizeForBlocking = minInputSizeKbytes * 1024L;
+        }
+    }
+
     @PostConstruct
     private void setMemoryLimitsIfNeeded()
     {
@@ -201,6 +340,9 @@ public class LimesJobConfiguration extends ContainerBasedJobConfiguration
         String targetPath = inputPaths.get(1);
 
         return PrepareWorkingDirectoryTasklet.builder()
+            .materializer(fileMaterializer)
+            .extractor(createArchiveExtractor())
+            .readableFormats(readableFormats)
             .workingDirectory(workDir)
             .input(sourcePath, targetPath)
             .inputFormat(config.getInputFormat())
@@ -225,6 +367,54 @@ public class LimesJobConfiguration extends ContainerBasedJobConfiguration
             .build();
     }
 
+    /**
+     * Configure a container to run LIMES.
+     *
+     * @param configurer The container configurer
+     * @param imageName The docker image
+     * @param workDir The working directory
+     * @param inputDir The input directory (to be bind-mounted)
+     * @param inputFiles The source and target input files (relative to input directory)
+     * @param outputDir The output directory (to be bind-mounted)
+     * @param configFileByName A map of configuration files (relative to working directory)
+     * @param config The configuration
+     */
+    private void configureContainer(
+        ContainerConfigurer configurer, String imageName, String workDir, String inputDir,
+        List<String> inputFiles, String outputDir, Map<String, String> configFileByName,
+        LimesConfiguration config)
+    {
+        Path containerInputDir = containerDataDir.resolve("input");
+        Path containerOutputDir = containerDataDir.resolve("output");
+        Path containerConfigDir = containerDataDir;
+
+        Path sourceFileName = Paths.get(inputFiles.get(0)).getFileName();
+        Path targetFileName = Paths.get(inputFiles.get(1)).getFileName();
+        Path configPath = Paths.get(workDir, configFileByName.get("config"));
+
+        String acceptedName = StringUtils.stripFilenameExtension(
+            Paths.get(config.getAcceptedPath()).getFileName().toString());
+        String reviewName = StringUtils.stripFilenameExtension(
+            Paths.get(config.getReviewPath()).getFileName().toString());
+
+        configurer
+            .image(imageName)
+            .volume(Paths.get(inputDir), containerInputDir, true)
+            .volume(Paths.get(outputDir), containerOutputDir)
+            .volume(configPath, containerConfigDir.resolve("config.xml"), true)
+            // Set environment
+            .env("SOURCE_FILE", containerInputDir.resolve(sourceFileName))
+            .env("TARGET_FILE", containerInputDir.resolve(targetFileName))
+            .env("CONFIG_FILE", containerConfigDir.resolve("config.xml"))
+            .env("OUTPUT_DIR", containerOutputDir)
+            .env("ACCEPTED_NAME", acceptedName)
+            .env("REVIEW_NAME", reviewName)
+            // Set resource limits
+            .memory(memoryLimit)
+            .memoryAndSwap(memorySwapLimit)
+            .cpus(cpuLimit);
+    }
+
     @Bean("limes.createContainerTasklet")
     @JobScope
     public CreateContainerTasklet createContainerTasklet(
@@ -240,38 +430,18 @@ public class LimesJobConfiguration extends ContainerBasedJobConfiguration
     {
         String containerName = String.format("limes-%05x", jobId);
 
-        Path containerInputDir = containerDataDir.resolve("input");
-        Path containerOutputDir = containerDataDir.resolve("output");
-        Path containerConfigDir = containerDataDir;
-
         Assert.isTrue(inputFiles.size() == 2, "Expected exactly 2 input files");
-        Path sourceFileName = Paths.get(inputFiles.get(0)).getFileName();
-        Path targetFileName = Paths.get(inputFiles.get(1)).getFileName();
-        Path configPath = Paths.get(workDir, configFileByName.get("config"));
 
-        String acceptedName = StringUtils.stripFilenameExtension(
-            Paths.get(config.getAcceptedPath()).getFileName().toString());
-        String reviewName = StringUtils.stripFilenameExtension(
-            Paths.get(config.getReviewPath()).getFileName().toString());
+        ContainerLimits limits = getContainerLimits(EnumTool.LIMES, inputDir, inputFiles);
 
         return CreateContainerTasklet.builder()
             .client(docker)
+            .hosts(containerHosts)
+            .metrics(metrics)
             .name(containerName)
-            .container(configurer -> configurer
-                .image(imageName)
-                .volume(Paths.get(inputDir), containerInputDir, true)
-                .volume(Paths.get(outputDir), containerOutputDir)
-                .volume(configPath, containerConfigDir.resolve("config.xml"), true)
-                // Set environment
-                .env("SOURCE_FILE", containerInputDir.resolve(sourceFileName))
-                .env("TARGET_FILE", containerInputDir.resolve(targetFileName))
-                .env("CONFIG_FILE", containerConfigDir.resolve("config.xml"))
-                .env("OUTPUT_DIR", containerOutputDir)
-                .env("ACCEPTED_NAME", acceptedName)
-                .env("REVIEW_NAME", reviewName)
-                // Set resource limits
-                .memory(memoryLimit)
-                .memoryAndSwap(memorySwapLimit))
+            .container(configurer -> configureContainer(
+                configurer, imageName, workDir, inputDir, inputFiles, outputDir, configFileByName, config))
+            .container(limits::configure)
             .build();
     }
 
@@ -291,13 +461,26 @@ public class LimesJobConfiguration extends ContainerBasedJobConfiguration
     @Bean("limes.runContainerTasklet")
     @JobScope
     public RunContainerTasklet runContainerTasklet(
-        @Value("#{jobExecutionContext['containerName']}") String containerName)
+        @Value("#{jobExecutionContext['containerName']}") String containerName,
+        @Value("#{jobExecutionContext['workDir']}") String workDir,
+        @Value("#{jobExecutionContext['inputDir']}") String inputDir,
+        @Value("#{jobExecutionContext['inputFiles']}") List<String> inputFiles)
     {
+        ContainerLimits limits = getContainerLimits(EnumTool.LIMES, inputDir, inputFiles);
+
         return RunContainerTasklet.builder()
             .client(docker)
+            .hosts(containerHosts)
+            .metrics(metrics)
+            .monitor(containerEventMonitor)
+            .admission(admissionScheduler, limits.memory(), getCpuDemand(), admissionPriority)
+            .expectedDuration(limits.expectedDuration())
             .checkInterval(checkInterval)
-            .timeout(runTimeout)
+            .timeout(limits.timeout())
             .container(containerName)
+            .logFile(Paths.get(workDir, OUTPUT_LOG_FILENAME), logFileMaxSize, logFileMaxBackups)
+            .stats(statsInterval)
+            .statsFile(getStatsFile(workDir))
             .removeOnFinished(false)
             .build();
     }
@@ -312,6 +495,155 @@ public class LimesJobConfiguration extends ContainerBasedJobConfiguration
             .build();
     }
 
+    /**
+     * A decider on whether the run should be split into spatial blocks (each interlinked by
+     * a separate container) or should be carried out by a single container.
+     * <p>
+     * A run is blocked only if the metric compares geometries and cannot accept a pair without
+     * them (i.e. is not a disjunction), so that a pair never found inside a block could not
+     * have been linked anyway.
+     */
+    @Bean("limes.blockingDecider")
+    public JobExecutionDecider blockingDecider()
+    {
+        return (JobExecution jobExecution, StepExecution stepExecution) -> {
+            if (!blockingEnabled || maxBlocks < 2)
+                return SINGLE;
+
+            ExecutionContext executionContext = jobExecution.getExecutionContext();
+            EnumDataFormat inputFormat = EnumDataFormat.valueOf(executionContext.getString("inputFormat"));
+            if (inputFormat != EnumDataFormat.N_TRIPLES)
+                return SINGLE;
+
+            LimesConfiguration config = (LimesConfiguration) executionContext.get("config");
+            String metric = config.getMetric();
+            if (metric == null || !SPATIAL_METRIC_PATTERN.matcher(metric).find() ||
+                    DISJUNCTIVE_METRIC_PATTERN.matcher(metric).find())
+                return SINGLE;
+
+            Path inputDir = Paths.get(executionContext.getString("inputDir"));
+            @SuppressWarnings("unchecked")
+            List<String> inputFiles = (List<String>) executionContext.get("inputFiles");
+            long inputSize = 0;
+            try {
+                for (String inputFile: inputFiles)
+                    inputSize += Files.size(inputDir.resolve(inputFile));
+            } catch (IOException ex) {
+                logger.warn("Failed to compute the size of input: {}", ex.getMessage());
+                return SINGLE;
+            }
+            return inputSize >= minInputSizeForBlocking? BLOCKED : SINGLE;
+        };
+    }
+
+    @Bean("limes.partitionTaskExecutor")
+    public TaskExecutor partitionTaskExecutor()
+    {
+        return createPartitionTaskExecutor("limes-partition-", maxBlocks);
+    }
+
+    @Bean("limes.partitioner")
+    @JobScope
+    public SpatialBlockPartitioner partitioner(
+        @Value("#{jobExecutionContext['workDir']}") String workDir,
+        @Value("#{jobExecutionContext['inputDir']}") String inputDir,
+        @Value("#{jobExecutionContext['inputFiles']}") List<String> inputFiles)
+    {
+        Assert.isTrue(inputFiles.size() == 2, "Expected exactly 2 input files");
+
+        return SpatialBlockPartitioner.builder()
+            .source(Paths.get(inputDir).resolve(inputFiles.get(0)))
+            .target(Paths.get(inputDir).resolve(inputFiles.get(1)))
+            .partitionsDirectory(Paths.get(workDir, PARTITIONS_DIR_NAME))
+            .cellSize(blockingCellSize)
+            .margin(blockingMargin)
+            .maxBlocks(maxBlocks)
+            .build();
+    }
+
+    /**
+     * A tasklet for a partition: create and run a container to interlink the source and target
+     * entities assigned to this (spatial) block.
+     */
+    @Bean("limes.partitionTasklet")
+    @StepScope
+    public CreateAndRunContainerTasklet partitionTasklet(
+        @Value("${slipo.rpc-server.tools.limes.docker.image}") String imageName,
+        @Value("#{jobExecution.jobInstance.id}") Long jobId,
+        @Value("#{jobExecutionContext['workDir']}") String workDir,
+        @Value("#{jobExecutionContext['inputFiles']}") List<String> inputFiles,
+        @Value("#{jobExecutionContext['configFileByName']}") Map<String, String> configFileByName,
+        @Value("#{jobExecutionContext['config']}") LimesConfiguration config,
+        @Value("#{stepExecutionContext['partitionIndex']}") Integer partitionIndex,
+        @Value("#{stepExecutionContext['workDir']}") String partitionWorkDir,
+        @Value("#{stepExecutionContext['inputDir']}") String partitionInputDir,
+        @Value("#{stepExecutionContext['outputDir']}") String partitionOutputDir)
+    {
+        String containerName = String.format("limes-%05x-%s",
+            jobId, SpatialBlockPartitioner.partitionName(partitionIndex));
+
+        return createPartitionTasklet(containerName, partitionWorkDir,
+            configurer -> configureContainer(
+                configurer, imageName, workDir, partitionInputDir, inputFiles, partitionOutputDir,
+                configFileByName, config));
+    }
+
+    @Bean("limes.partitionStep")
+    public Step partitionStep(@Qualifier("limes.partitionTasklet") CreateAndRunContainerTasklet tasklet)
+    {
+        return createPartitionStep("limes.runPartition", tasklet);
+    }
+
+    @Bean("limes.runBlockedStep")
+    public Step runBlockedStep(
+        @Qualifier("limes.partitioner") SpatialBlockPartitioner partitioner,
+        @Qualifier("limes.partitionStep") Step partitionStep,
+        @Qualifier("limes.partitionTaskExecutor") TaskExecutor taskExecutor)
+    {
+        return createPartitionedStep("limes.runBlocked", partitioner, partitionStep, maxBlocks, taskExecutor);
+    }
+
+    /**
+     * A tasklet to merge the output (accepted and to-be-reviewed links) of blocks into our
+     * (common) output directory
+     */
+    @Bean("limes.mergePartitionOutputTasklet")
+    @JobScope
+    public MergePartitionOutputTasklet mergePartitionOutputTasklet(
+        @Value("#{jobExecutionContext['workDir']}") String workDir,
+        @Value("#{jobExecutionContext['outputDir']}") String outputDir,
+        @Value("#{jobExecutionContext['config']}") LimesConfiguration config)
+    {
+        return MergePartitionOutputTasklet.builder()
+            .partitionsDirectory(Paths.get(workDir, PARTITIONS_DIR_NAME))
+            .outputDirectory(Paths.get(outputDir))
+            .expected(
+                Paths.get(config.getAcceptedPath()).getFileName().toString(),
+                Paths.get(config.getReviewPath()).getFileName().toString())
+            .build();
+    }
+
+    @Bean("limes.mergePartitionOutputStep")
+    public Step mergePartitionOutputStep(
+        @Qualifier("limes.mergePartitionOutputTasklet") MergePartitionOutputTasklet tasklet)
+    {
+        return stepBuilderFactory.get("limes.mergePartitionOutput")
+            .tasklet(tasklet).build();
+    }
+
+    @Bean("limes.lookupCachedResultStep")
+    public Step lookupCachedResultStep(
+        @Value("${slipo.rpc-server.tools.limes.docker.image}") String imageName)
+    {
+        return createLookupCachedResultStep("limes", imageName, "config");
+    }
+
+    @Bean("limes.storeResultToCacheStep")
+    public Step storeResultToCacheStep()
+    {
+        return createStoreResultToCacheStep("limes");
+    }
+
     /**
      * Create flow for a job expecting and reading configuration via normal {@link JobParameters}.
      */
@@ -319,14 +651,31 @@ public class LimesJobConfiguration extends ContainerBasedJobConfiguration
     public Flow flow(
         @Qualifier("limes.configureStep") Step configureStep,
         @Qualifier("limes.prepareWorkingDirectoryStep") Step prepareWorkingDirectoryStep,
+        @Qualifier("limes.lookupCachedResultStep") Step lookupCachedResultStep,
+        @Qualifier("limes.storeResultToCacheStep") Step storeResultToCacheStep,
         @Qualifier("limes.createContainerStep") Step createContainerStep,
-        @Qualifier("limes.runContainerStep") Step runContainerStep)
+        @Qualifier("limes.runContainerStep") Step runContainerStep,
+        @Qualifier("limes.blockingDecider") JobExecutionDecider blockingDecider,
+        @Qualifier("limes.runBlockedStep") Step runBlockedStep,
+        @Qualifier("limes.mergePartitionOutputStep") Step mergePartitionOutputStep)
     {
         return new FlowBuilder<Flow>("limes.flow")
             .start(configureStep)
             .next(prepareWorkingDirectoryStep)
-            .next(createContainerStep)
-            .next(runContainerStep)
+            .next(lookupCachedResultStep)
+                .on(LookupCachedResultTasklet.CACHED.getExitCode()).end()
+            .from(lookupCachedResultStep)
+                .on("*").to(blockingDecider)
+            .from(blockingDecider)
+                .on(BLOCKED.getName())
+                    .to(runBlockedStep)
+                    .next(mergePartitionOutputStep)
+                    .next(storeResultToCacheStep)
+            .from(blockingDecider)
+                .on("*")
+                    .to(createContainerStep)
+                    .next(runContainerStep)
+                    .next(storeResultToCacheStep)
             .build();
     }
 
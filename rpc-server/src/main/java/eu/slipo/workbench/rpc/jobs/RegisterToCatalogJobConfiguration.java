@@ -2,7 +2,6 @@ package eu.slipo.workbench.rpc.jobs;
 
 import java.io.File;
 import java.nio.file.FileAlreadyExistsException;
-import java.nio.file.FileSystemException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -37,6 +36,7 @@ import eu.slipo.workbench.common.model.resource.ResourceIdentifier;
 import eu.slipo.workbench.common.model.resource.ResourceMetadataCreate;
 import eu.slipo.workbench.common.model.resource.ResourceRecord;
 import eu.slipo.workbench.common.repository.ResourceRepository;
+import eu.slipo.workbench.common.service.FileMaterializer;
 import eu.slipo.workbench.common.service.UserFileNamingStrategy;
 import eu.slipo.workbench.rpc.jobs.listener.ExecutionContextPromotionListeners;
 
@@ -83,6 +83,9 @@ public class RegisterToCatalogJobConfiguration
     @Autowired
     private ResourceRepository resourceRepository;
 
+    @Autowired
+    private FileMaterializer fileMaterializer;
+
     public class RegisterResourceTasklet implements Tasklet
     {
         private final String processName;
@@ -150,13 +153,9 @@ public class RegisterToCatalogJobConfiguration
                 // no-op
             }
 
-            // Copy
+            // Copy (link, if possible)
 
-            try {
-                Files.createLink(targetPath, inputPath);
-            } catch (FileSystemException ex) {
-                Files.copy(inputPath, targetPath); // fallback to plain copying
-            }
+            fileMaterializer.materialize(inputPath, targetPath);
 
             // Create a resource record
 
@@ -0,0 +1,147 @@
+package eu.slipo.workbench.rpc.jobs;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import javax.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.Step;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.configuration.annotation.JobScope;
+import org.springframework.batch.core.job.builder.FlowBuilder;
+import org.springframework.batch.core.job.flow.Flow;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+import eu.slipo.workbench.rpc.jobs.listener.ExecutionContextPromotionListeners;
+import eu.slipo.workbench.rpc.jobs.tasklet.LookupCachedResultTasklet;
+
+/**
+ * A job that stands in for a processing step whose output is reused from a previous process
+ * execution: the recorded output files are linked (not copied) into the output directory.
+ */
+@Component
+public class ReuseStepOutputJobConfiguration extends BaseJobConfiguration
+{
+    private static final Logger logger = LoggerFactory.getLogger(ReuseStepOutputJobConfiguration.class);
+
+    /**
+     * The key (inside job execution context) for the id of the process execution whose output
+     * is reused
+     */
+    public static final String REUSED_EXECUTION_KEY = "reusedExecution";
+
+    @PostConstruct
+    private void setupDataDirectory() throws IOException
+    {
+        super.setupDataDirectory("reuseStepOutput");
+    }
+
+    public class ReuseStepOutputTasklet implements Tasklet
+    {
+        private final List<Path> input;
+
+        private final Path outputDir;
+
+        private final long reusedExecutionId;
+
+        public ReuseStepOutputTasklet(List<Path> input, Path outputDir, long reusedExecutionId)
+        {
+            Assert.notNull(outputDir, "An output directory is required");
+            Assert.isTrue(outputDir.isAbsolute(), "The output directory is expected as an absolute path");
+            Assert.notEmpty(input, "A non-empty input list is required");
+            this.input = input;
+            this.outputDir = outputDir;
+            this.reusedExecutionId = reusedExecutionId;
+        }
+
+        @Override
+        public RepeatStatus execute(StepContribution contribution, ChunkContext chunkContext)
+            throws Exception
+        {
+            StepExecution stepExecution = chunkContext.getStepContext().getStepExecution();
+            ExecutionContext executionContext = stepExecution.getExecutionContext();
+
+            try {
+                Files.createDirectories(outputDir);
+            } catch (FileAlreadyExistsException ex) {
+                // no-op
+            }
+
+            // Link each recorded output under the same name (replacing a link made by a previous
+            // run of this job)
+
+            for (Path source: input) {
+                Path target = outputDir.resolve(source.getFileName());
+                Files.deleteIfExists(target);
+                fileMaterializer.materialize(source, target);
+            }
+
+            logger.info("Reused {} output file(s) of process execution #{}", input.size(), reusedExecutionId);
+
+            // Update execution context
+
+            executionContext.put("outputDir", outputDir.toString());
+            executionContext.put(LookupCachedResultTasklet.Keys.RESULT_CACHED, Boolean.TRUE);
+            executionContext.putLong(REUSED_EXECUTION_KEY, reusedExecutionId);
+
+            return RepeatStatus.FINISHED;
+        }
+    }
+
+    @Bean("reuseStepOutput.tasklet")
+    @JobScope
+    public ReuseStepOutputTasklet reuseStepOutputTasklet(
+        @Value("#{jobParameters['input']}") String input,
+        @Value("#{jobParameters['reusedExecution']}") Long reusedExecutionId,
+        @Value("#{jobExecution.jobInstance.id}") Long jobId)
+    {
+        Assert.isTrue(!StringUtils.isEmpty(input), "Expected a non-empty input");
+        Assert.notNull(reusedExecutionId, "Expected the id of the reused process execution");
+
+        List<Path> inputPaths = Arrays.stream(input.split(File.pathSeparator))
+            .collect(Collectors.mapping(Paths::get, Collectors.toList()));
+        Assert.isTrue(inputPaths.stream().allMatch(Path::isAbsolute), "Expected absolute input paths");
+
+        Path outputDir = dataDir.resolve(String.valueOf(jobId));
+        return new ReuseStepOutputTasklet(inputPaths, outputDir, reusedExecutionId);
+    }
+
+    @Bean("reuseStepOutput.step")
+    Step step(@Qualifier("reuseStepOutput.tasklet") ReuseStepOutputTasklet tasklet)
+        throws Exception
+    {
+        String[] keys = new String[] {
+            "outputDir", LookupCachedResultTasklet.Keys.RESULT_CACHED, REUSED_EXECUTION_KEY
+        };
+
+        return stepBuilderFactory.get("reuseStepOutput")
+            .tasklet(tasklet)
+            .listener(ExecutionContextPromotionListeners.fromKeys(keys))
+            .build();
+    }
+
+    @Bean("reuseStepOutput.flow")
+    Flow flow(@Qualifier("reuseStepOutput.step") Step step)
+    {
+        return new FlowBuilder<Flow>("reuseStepOutput").start(step).end();
+    }
+}
@@ -48,11 +48,13 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 
 import eu.slipo.workbench.common.model.poi.EnumDataFormat;
+import eu.slipo.workbench.common.model.poi.EnumTool;
 import eu.slipo.workbench.common.model.tool.EnumConfigurationFormat;
 import eu.slipo.workbench.common.model.tool.InvalidConfigurationException;
 import eu.slipo.workbench.common.model.tool.ReverseTriplegeoConfiguration;
 import eu.slipo.workbench.rpc.jobs.listener.ExecutionContextPromotionListeners;
 import eu.slipo.workbench.rpc.jobs.listener.LoggingJobExecutionListener;
+import eu.slipo.workbench.rpc.jobs.tasklet.LookupCachedResultTasklet;
 import eu.slipo.workbench.rpc.jobs.tasklet.PrepareWorkingDirectoryTasklet;
 import eu.slipo.workbench.rpc.jobs.tasklet.docker.CreateContainerTasklet;
 import eu.slipo.workbench.rpc.jobs.tasklet.docker.RunContainerTasklet;
@@ -117,6 +119,27 @@ public class ReverseTriplegeoJobConfiguration extends ContainerBasedJobConfigura
         this.memorySwapLimit = kbytes == null? -1L : kbytes.longValue() * 1024L;
     }
 
+    @Autowired
+    private void setCpuLimit(
+        @Value("${slipo.rpc-server.tools.reverse-triplegeo.docker.container.cpus:}") Double cpus)
+    {
+        this.cpuLimit = cpus == null? -1.0 : cpus.doubleValue();
+    }
+
+    @Autowired
+    private void setReadableInputFormats(
+        @Value("${slipo.rpc-server.tools.reverse-triplegeo.input.readable-formats:}") String[] formatNames)
+    {
+        super.setReadableFormats(formatNames);
+    }
+
+    @Autowired
+    private void setAdmissionPriority(
+        @Value("${slipo.rpc-server.tools.reverse-triplegeo.admission-priority:0}") int priority)
+    {
+        this.admissionPriority = priority;
+    }
+
     @PostConstruct
     private void setMemoryLimitsIfNeeded()
     {
@@ -220,6 +243,9 @@ public class ReverseTriplegeoJobConfiguration extends ContainerBasedJobConfigura
         Path workDir = dataDir.resolve(String.format("%05x", jobId));
 
         return PrepareWorkingDirectoryTasklet.builder()
+            .materializer(fileMaterializer)
+            .extractor(createArchiveExtractor())
+            .readableFormats(readableFormats)
             .workingDirectory(workDir)
             .input(Lists.transform(input, Paths::get))
             .inputFormat(options.getInputFormat())
@@ -272,8 +298,12 @@ public class ReverseTriplegeoJobConfiguration extends ContainerBasedJobConfigura
             .map(name -> containerInputDir.resolve(name).toString())
             .collect(Collectors.toList());
 
+        ContainerLimits limits = getContainerLimits(EnumTool.REVERSE_TRIPLEGEO, inputDir, inputFiles);
+
         return CreateContainerTasklet.builder()
             .client(docker)
+            .hosts(containerHosts)
+            .metrics(metrics)
             .name(containerName)
             .container(configurer -> configurer
                 .image(imageName)
@@ -290,7 +320,9 @@ public class ReverseTriplegeoJobConfiguration extends ContainerBasedJobConfigura
                 .env("OUTPUT_DIR", containerOutputDir)
                 // Set resource limits
                 .memory(memoryLimit)
-                .memoryAndSwap(memorySwapLimit))
+                .memoryAndSwap(memorySwapLimit)
+                .cpus(cpuLimit))
+            .container(limits::configure)
             .build();
     }
 
@@ -309,13 +341,26 @@ public class ReverseTriplegeoJobConfiguration extends ContainerBasedJobConfigura
     @Bean("reverseTriplegeo.runContainerTasklet")
     @JobScope
     public RunContainerTasklet runContainerTasklet(
-        @Value("#{jobExecutionContext['containerName']}") String containerName)
+        @Value("#{jobExecutionContext['containerName']}") String containerName,
+        @Value("#{jobExecutionContext['workDir']}") String workDir,
+        @Value("#{jobExecutionContext['inputDir']}") String inputDir,
+        @Value("#{jobExecutionContext['inputFiles']}") List<String> inputFiles)
     {
+        ContainerLimits limits = getContainerLimits(EnumTool.REVERSE_TRIPLEGEO, inputDir, inputFiles);
+
         return RunContainerTasklet.builder()
             .client(docker)
+            .hosts(containerHosts)
+            .metrics(metrics)
+            .monitor(containerEventMonitor)
+            .admission(admissionScheduler, limits.memory(), getCpuDemand(), admissionPriority)
+            .expectedDuration(limits.expectedDuration())
             .checkInterval(checkInterval)
-            .timeout(runTimeout)
+            .timeout(limits.timeout())
             .container(containerName)
+            .logFile(Paths.get(workDir, OUTPUT_LOG_FILENAME), logFileMaxSize, logFileMaxBackups)
+            .stats(statsInterval)
+            .statsFile(getStatsFile(workDir))
             .removeOnFinished(false)
             .build();
     }
@@ -401,6 +446,19 @@ public class ReverseTriplegeoJobConfiguration extends ContainerBasedJobConfigura
             .build();
     }
 
+    @Bean("reverseTriplegeo.lookupCachedResultStep")
+    public Step lookupCachedResultStep(
+        @Value("${slipo.rpc-server.tools.reverse-triplegeo.docker.image}") String imageName)
+    {
+        return createLookupCachedResultStep("reverseTriplegeo", imageName, "options");
+    }
+
+    @Bean("reverseTriplegeo.storeResultToCacheStep")
+    public Step storeResultToCacheStep()
+    {
+        return createStoreResultToCacheStep("reverseTriplegeo");
+    }
+
     /**
      * Create flow for a job expecting and reading configuration via normal {@link JobParameters}.
      */
@@ -408,6 +466,8 @@ public class ReverseTriplegeoJobConfiguration extends ContainerBasedJobConfigura
     public Flow flow(
         @Qualifier("reverseTriplegeo.configureStep") Step configureStep,
         @Qualifier("reverseTriplegeo.prepareWorkingDirectoryStep") Step prepareWorkingDirectoryStep,
+        @Qualifier("reverseTriplegeo.lookupCachedResultStep") Step lookupCachedResultStep,
+        @Qualifier("reverseTriplegeo.storeResultToCacheStep") Step storeResultToCacheStep,
         @Qualifier("reverseTriplegeo.createContainerStep") Step createContainerStep,
         @Qualifier("reverseTriplegeo.runContainerStep") Step runContainerStep,
         @Qualifier("reverseTriplegeo.createOutputArchiveStep") Step createOutputArchiveStep)
@@ -415,9 +475,13 @@ public class ReverseTriplegeoJobConfiguration extends ContainerBasedJobConfigura
         return new FlowBuilder<Flow>("reverseTriplegeo.flow")
             .start(configureStep)
             .next(prepareWorkingDirectoryStep)
-            .next(createContainerStep)
-            .next(runContainerStep)
-            .next(createOutputArchiveStep)
+            .next(lookupCachedResultStep)
+                .on(LookupCachedResultTasklet.CACHED.getExitCode()).end()
+            .from(lookupCachedResultStep)
+                .on("*").to(createContainerStep)
+                .next(runContainerStep)
+                .next(createOutputArchiveStep)
+                .next(storeResultToCacheStep)
             .build();
     }
 
@@ -2,13 +2,16 @@ package eu.slipo.workbench.rpc.jobs;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -17,14 +20,20 @@ import javax.validation.ConstraintViolation;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.ExitStatus;
 import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobExecution;
 import org.springframework.batch.core.JobParameters;
 import org.springframework.batch.core.Step;
 import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.StepExecution;
 import org.springframework.batch.core.configuration.JobFactory;
 import org.springframework.batch.core.configuration.annotation.JobScope;
+import org.springframework.batch.core.configuration.annotation.StepScope;
 import org.springframework.batch.core.job.builder.FlowBuilder;
 import org.springframework.batch.core.job.flow.Flow;
+import org.springframework.batch.core.job.flow.FlowExecutionStatus;
+import org.springframework.batch.core.job.flow.JobExecutionDecider;
 import org.springframework.batch.core.launch.support.RunIdIncrementer;
 import org.springframework.batch.core.scope.context.ChunkContext;
 import org.springframework.batch.core.scope.context.StepContext;
@@ -34,8 +43,10 @@ import org.springframework.batch.repeat.RepeatStatus;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.core.io.Resource;
+import org.springframework.core.task.TaskExecutor;
 import org.springframework.stereotype.Component;
 import org.springframework.util.Assert;
 import org.springframework.util.StringUtils;
@@ -46,14 +57,24 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 
 import eu.slipo.workbench.common.model.poi.EnumDataFormat;
+import eu.slipo.workbench.common.model.poi.EnumTool;
 import eu.slipo.workbench.common.model.tool.EnumConfigurationFormat;
 import eu.slipo.workbench.common.model.tool.InvalidConfigurationException;
 import eu.slipo.workbench.common.model.tool.TriplegeoConfiguration;
 import eu.slipo.workbench.rpc.jobs.listener.ExecutionContextPromotionListeners;
 import eu.slipo.workbench.rpc.jobs.listener.LoggingJobExecutionListener;
+import eu.slipo.workbench.rpc.jobs.listener.SpoolOutputListener;
+import eu.slipo.workbench.rpc.jobs.partition.CollectPartitionOutputTasklet;
+import eu.slipo.workbench.rpc.jobs.partition.InputFilesPartitioner;
+import eu.slipo.workbench.rpc.jobs.tasklet.LookupCachedResultTasklet;
+import eu.slipo.workbench.rpc.jobs.tasklet.OutputSpool;
 import eu.slipo.workbench.rpc.jobs.tasklet.PrepareWorkingDirectoryTasklet;
+import eu.slipo.workbench.rpc.jobs.tasklet.docker.ContainerConfigurer;
+import eu.slipo.workbench.rpc.jobs.tasklet.docker.CreateAndRunContainerTasklet;
 import eu.slipo.workbench.rpc.jobs.tasklet.docker.CreateContainerTasklet;
 import eu.slipo.workbench.rpc.jobs.tasklet.docker.RunContainerTasklet;
+import eu.slipo.workbench.rpc.jobs.tasklet.docker.RunInWarmContainerTasklet;
+import eu.slipo.workbench.rpc.jobs.tasklet.docker.WarmContainerPool;
 
 
 @Component
@@ -75,10 +96,42 @@ public class TriplegeoJobConfiguration extends ContainerBasedJobConfiguration
 
     public static final long DEFAULT_MEMORY_LIMIT = 268435456L;
 
+    /**
+     * The default maximum number of partitions (when running in partitioned mode)
+     */
+    public static final int DEFAULT_MAX_PARTITIONS = 4;
+
+    /**
+     * The default minimum number of input files for running in partitioned mode
+     */
+    public static final int DEFAULT_MIN_INPUT_FILES_FOR_PARTITIONING = 2;
+
+    /**
+     * The name of the directory (under the working directory) for partitions
+     */
+    private static final String PARTITIONS_DIR_NAME = "partitions";
+
+    /**
+     * The names of output files that every partition produces identically
+     */
+    private static final String[] SHARED_OUTPUT_NAMES =
+        new String[] { "classification.nt", "classification_metadata.json" };
+
+    /**
+     * The flow execution status for a run to be partitioned
+     */
+    private static final FlowExecutionStatus PARTITIONED = new FlowExecutionStatus("PARTITIONED");
+
+    /**
+     * The flow execution status for a run on a single container
+     */
+    private static final FlowExecutionStatus SINGLE = new FlowExecutionStatus("SINGLE");
+
     /**
      * A list of keys of parameters to be ignored (blacklisted) as conflicting with <tt>input</tt> parameter.
      */
-    private static final List<String> blacklistedParameterKeys = ImmutableList.of("inputFiles");
+    private static final List<String> blacklistedParameterKeys =
+        ImmutableList.of("inputFiles", OutputSpool.PARAMETER_NAME);
 
     @Override
     @Autowired
@@ -116,6 +169,61 @@ public class TriplegeoJobConfiguration extends ContainerBasedJobConfiguration
         this.memorySwapLimit = kbytes == null? -1L : kbytes.longValue() * 1024L;
     }
 
+    @Autowired
+    private void setCpuLimit(
+        @Value("${slipo.rpc-server.tools.triplegeo.docker.container.cpus:}") Double cpus)
+    {
+        this.cpuLimit = cpus == null? -1.0 : cpus.doubleValue();
+    }
+
+    @Autowired
+    private void setReadableInputFormats(
+        @Value("${slipo.rpc-server.tools.triplegeo.input.readable-formats:}") String[] formatNames)
+    {
+        super.setReadableFormats(formatNames);
+    }
+
+    @Autowired
+    private void setAdmissionPriority(
+        @Value("${slipo.rpc-server.tools.triplegeo.admission-priority:0}") int priority)
+    {
+        this.admissionPriority = priority;
+    }
+
+    /**
+     * A flag that indicates if partitioning (of input files among several containers) is enabled
+     */
+    private boolean partitioningEnabled = false;
+
+    /**
+     * The maximum number of partitions
+     */
+    private int maxPartitions = DEFAULT_MAX_PARTITIONS;
+
+    /**
+     * The minimum number of input files for a run to be partitioned
+     */
+    private int minInputFilesForPartitioning = DEFAULT_MIN_INPUT_FILES_FOR_PARTITIONING;
+
+    @Autowired
+    private void setPartitioning(
+        @Value("${slipo.rpc-server.tools.triplegeo.partitioning.enabled:false}") boolean enabled,
+        @Value("${slipo.rpc-server.tools.triplegeo.partitioning.max-partitions:}") Integer maxPartitions,
+        @Value("${slipo.rpc-server.tools.triplegeo.partitioning.max-concurrency:}") Integer maxConcurrency,
+        @Value("${slipo.rpc-server.tools.triplegeo.partitioning.memory-budget-kbytes:}") Long memoryBudgetKbytes,
+        @Value("${slipo.rpc-server.tools.triplegeo.partitioning.min-input-files:}") Integer minInputFiles)
+    {
+        this.partitioningEnabled = enabled;
+        if (maxPartitions != null) {
+            Assert.isTrue(maxPartitions > 0, "Expected a positive number of partitions");
+            this.maxPartitions = maxPartitions;
+        }
+        setPartitionConcurrency(maxConcurrency, memoryBudgetKbytes);
+        if (minInputFiles != null) {
+            this.minInputFilesForPartitioning = minInputFiles;
+        }
+    }
+
     @PostConstruct
     private void setMemoryLimitsIfNeeded()
     {
@@ -132,6 +240,63 @@ public class TriplegeoJobConfiguration extends ContainerBasedJobConfiguration
         super.setupDataDirectory("triplegeo");
     }
 
+    /**
+     * Filter a list of names of input files, keeping only the ones that should be passed
+     * as input to Triplegeo (e.g. keep only <tt>.shp</tt> files from a shapefile bundle).
+     */
+    private static List<String> filterInputNames(List<String> inputFiles, EnumDataFormat inputFormat)
+    {
+        final String inputNameExtension = inputFormat.getFilenameExtension();
+        return inputFiles.stream()
+            .filter(name -> StringUtils.getFilenameExtension(name).equals(inputNameExtension))
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * Configure a container to run Triplegeo.
+     *
+     * @param configurer The container configurer
+     * @param imageName The docker image
+     * @param workDir The working directory
+     * @param inputDir The input directory (to be bind-mounted)
+     * @param inputNames The names of input files (relative to input directory)
+     * @param outputDir The output directory (to be bind-mounted)
+     * @param configFileByName A map of configuration files (relative to working directory)
+     */
+    private void configureContainer(
+        ContainerConfigurer configurer, String imageName, String workDir, String inputDir,
+        List<String> inputNames, String outputDir, Map<String, String> configFileByName)
+    {
+        Path containerInputDir = containerDataDir.resolve("input");
+        Path containerOutputDir = containerDataDir.resolve("output");
+        Path containerConfigDir = containerDataDir;
+
+        List<String> containerInputPaths = inputNames.stream()
+            .map(name -> containerInputDir.resolve(name).toString())
+            .collect(Collectors.toList());
+
+        configurer
+            .image(imageName)
+            .volume(Paths.get(inputDir), containerInputDir)
+            .volume(Paths.get(outputDir), containerOutputDir)
+            .volume(Paths.get(workDir, configFileByName.get("options")),
+                containerConfigDir.resolve("options.conf"), true)
+            .volume(Paths.get(workDir, configFileByName.get("mappings")),
+                containerConfigDir.resolve("mappings.yml"), true)
+            .volume(Paths.get(workDir, configFileByName.get("classification")),
+                containerConfigDir.resolve("classification.csv"), true)
+            // Set environment
+            .env("INPUT_FILE", String.join(File.pathSeparator, containerInputPaths))
+            .env("CONFIG_FILE", containerConfigDir.resolve("options.conf"))
+            .env("MAPPINGS_FILE", containerConfigDir.resolve("mappings.yml"))
+            .env("CLASSIFICATION_FILE", containerConfigDir.resolve("classification.csv"))
+            .env("OUTPUT_DIR", containerOutputDir)
+            // Set resource limits
+            .memory(memoryLimit)
+            .memoryAndSwap(memorySwapLimit)
+            .cpus(cpuLimit);
+    }
+
     public class ConfigureTasklet implements Tasklet
     {
         @Override
@@ -223,6 +388,9 @@ public class TriplegeoJobConfiguration extends ContainerBasedJobConfiguration
         Path workDir = dataDir.resolve(String.format("%05x", jobId));
 
         return PrepareWorkingDirectoryTasklet.builder()
+            .materializer(fileMaterializer)
+            .extractor(createArchiveExtractor())
+            .readableFormats(readableFormats)
             .workingDirectory(workDir)
             .input(Lists.transform(input, Paths::get))
             .inputFormat(options.getInputFormat())
@@ -264,40 +432,19 @@ public class TriplegeoJobConfiguration extends ContainerBasedJobConfiguration
     {
         String containerName = String.format("triplegeo-%05x", jobId);
 
-        Path containerInputDir = containerDataDir.resolve("input");
-        Path containerOutputDir = containerDataDir.resolve("output");
-        Path containerConfigDir = containerDataDir;
-
         EnumDataFormat inputFormat = EnumDataFormat.valueOf(inputFormatName);
-        String inputNameExtension = inputFormat.getFilenameExtension();
+        List<String> inputNames = filterInputNames(inputFiles, inputFormat);
 
-        List<String> containerInputPaths = inputFiles.stream()
-            .filter(name -> StringUtils.getFilenameExtension(name).equals(inputNameExtension))
-            .map(name -> containerInputDir.resolve(name).toString())
-            .collect(Collectors.toList());
+        ContainerLimits limits = getContainerLimits(EnumTool.TRIPLEGEO, inputDir, inputFiles);
 
         return CreateContainerTasklet.builder()
             .client(docker)
+            .hosts(containerHosts)
+            .metrics(metrics)
             .name(containerName)
-            .container(configurer -> configurer
-                .image(imageName)
-                .volume(Paths.get(inputDir), containerInputDir)
-                .volume(Paths.get(outputDir), containerOutputDir)
-                .volume(Paths.get(workDir, configFileByName.get("options")),
-                    containerConfigDir.resolve("options.conf"), true)
-                .volume(Paths.get(workDir, configFileByName.get("mappings")),
-                    containerConfigDir.resolve("mappings.yml"), true)
-                .volume(Paths.get(workDir, configFileByName.get("classification")),
-                    containerConfigDir.resolve("classification.csv"), true)
-                // Set environment
-                .env("INPUT_FILE", String.join(File.pathSeparator, containerInputPaths))
-                .env("CONFIG_FILE", containerConfigDir.resolve("options.conf"))
-                .env("MAPPINGS_FILE", containerConfigDir.resolve("mappings.yml"))
-                .env("CLASSIFICATION_FILE", containerConfigDir.resolve("classification.csv"))
-                .env("OUTPUT_DIR", containerOutputDir)
-                // Set resource limits
-                .memory(memoryLimit)
-                .memoryAndSwap(memorySwapLimit))
+            .container(configurer -> configureContainer(
+                configurer, imageName, workDir, inputDir, inputNames, outputDir, configFileByName))
+            .container(limits::configure)
             .build();
     }
 
@@ -315,13 +462,26 @@ public class TriplegeoJobConfiguration extends ContainerBasedJobConfiguration
     @Bean("triplegeo.runContainerTasklet")
     @JobScope
     public RunContainerTasklet runContainerTasklet(
-        @Value("#{jobExecutionContext['containerName']}") String containerName)
+        @Value("#{jobExecutionContext['containerName']}") String containerName,
+        @Value("#{jobExecutionContext['workDir']}") String workDir,
+        @Value("#{jobExecutionContext['inputDir']}") String inputDir,
+        @Value("#{jobExecutionContext['inputFiles']}") List<String> inputFiles)
     {
+        ContainerLimits limits = getContainerLimits(EnumTool.TRIPLEGEO, inputDir, inputFiles);
+
         return RunContainerTasklet.builder()
             .client(docker)
+            .hosts(containerHosts)
+            .metrics(metrics)
+            .monitor(containerEventMonitor)
+            .admission(admissionScheduler, limits.memory(), getCpuDemand(), admissionPriority)
+            .expectedDuration(limits.expectedDuration())
             .checkInterval(checkInterval)
-            .timeout(runTimeout)
+            .timeout(limits.timeout())
             .container(containerName)
+            .logFile(Paths.get(workDir, OUTPUT_LOG_FILENAME), logFileMaxSize, logFileMaxBackups)
+            .stats(statsInterval)
+            .statsFile(getStatsFile(workDir))
             .removeOnFinished(false)
             .build();
     }
@@ -333,9 +493,183 @@ public class TriplegeoJobConfiguration extends ContainerBasedJobConfiguration
         return stepBuilderFactory.get("triplegeo.runContainer")
             .tasklet(tasklet)
             .listener(tasklet)
+            .listener(new SpoolOutputListener(TriplegeoJobConfiguration::resolveStreamedOutput))
+            .build();
+    }
+
+    /**
+     * A pool of warm containers (only if enabled). A warm container is only used for a run on
+     * a single container (i.e. not for partitioned runs).
+     */
+    @Bean("triplegeo.warmPool")
+    @ConditionalOnProperty(name = "slipo.rpc-server.tools.triplegeo.warm-pool.enabled", havingValue = "true")
+    public WarmContainerPool warmPool(
+        @Value("${slipo.rpc-server.tools.triplegeo.docker.image}") String imageName,
+        @Value("${slipo.rpc-server.tools.triplegeo.warm-pool.size:2}") int size)
+        throws Exception
+    {
+        return createWarmPool("triplegeo", imageName, size);
+    }
+
+    @Bean("triplegeo.runInWarmContainerTasklet")
+    @JobScope
+    @ConditionalOnProperty(name = "slipo.rpc-server.tools.triplegeo.warm-pool.enabled", havingValue = "true")
+    public RunInWarmContainerTasklet runInWarmContainerTasklet(
+        @Qualifier("triplegeo.warmPool") WarmContainerPool pool,
+        @Value("#{jobExecutionContext['workDir']}") String workDir,
+        @Value("#{jobExecutionContext['inputDir']}") String inputDir,
+        @Value("#{jobExecutionContext['inputFormat']}") String inputFormatName,
+        @Value("#{jobExecutionContext['inputFiles']}") List<String> inputFiles,
+        @Value("#{jobExecutionContext['outputDir']}") String outputDir,
+        @Value("#{jobExecutionContext['configFileByName']}") Map<String, String> configFileByName)
+    {
+        EnumDataFormat inputFormat = EnumDataFormat.valueOf(inputFormatName);
+
+        // Stage all input files (e.g. a shapefile bundle), but pass only the actual inputs
+        List<String> containerInputPaths = filterInputNames(inputFiles, inputFormat).stream()
+            .map(name -> pool.containerInputDir().resolve(name).toString())
+            .collect(Collectors.toList());
+
+        Path containerConfigDir = pool.containerConfigDir();
+
+        return RunInWarmContainerTasklet.builder()
+            .client(docker)
+            .pool(pool)
+            .materializer(fileMaterializer)
+            .admission(admissionScheduler, memoryLimit, getCpuDemand(), admissionPriority)
+            .checkInterval(checkInterval)
+            .timeout(runTimeout)
+            .input(Paths.get(inputDir), inputFiles)
+            .config("options.conf", Paths.get(workDir, configFileByName.get("options")))
+            .config("mappings.yml", Paths.get(workDir, configFileByName.get("mappings")))
+            .config("classification.csv", Paths.get(workDir, configFileByName.get("classification")))
+            .output(Paths.get(outputDir))
+            .env("INPUT_FILE", String.join(File.pathSeparator, containerInputPaths))
+            .env("CONFIG_FILE", containerConfigDir.resolve("options.conf"))
+            .env("MAPPINGS_FILE", containerConfigDir.resolve("mappings.yml"))
+            .env("CLASSIFICATION_FILE", containerConfigDir.resolve("classification.csv"))
+            .env("OUTPUT_DIR", pool.containerOutputDir())
+            .logFile(Paths.get(workDir, OUTPUT_LOG_FILENAME), logFileMaxSize, logFileMaxBackups)
+            .build();
+    }
+
+    @Bean("triplegeo.runInWarmContainerStep")
+    @ConditionalOnProperty(name = "slipo.rpc-server.tools.triplegeo.warm-pool.enabled", havingValue = "true")
+    public Step runInWarmContainerStep(
+        @Qualifier("triplegeo.runInWarmContainerTasklet") RunInWarmContainerTasklet tasklet)
+        throws Exception
+    {
+        return stepBuilderFactory.get("triplegeo.runInWarmContainer")
+            .tasklet(tasklet)
+            .listener(tasklet)
+            .build();
+    }
+
+    /**
+     * A decider on whether the run should be partitioned (i.e. split among several containers)
+     * or should be carried out by a single container.
+     */
+    @Bean("triplegeo.partitioningDecider")
+    public JobExecutionDecider partitioningDecider()
+    {
+        return (JobExecution jobExecution, StepExecution stepExecution) -> {
+            if (!partitioningEnabled)
+                return SINGLE;
+            ExecutionContext executionContext = jobExecution.getExecutionContext();
+            EnumDataFormat inputFormat = EnumDataFormat.valueOf(executionContext.getString("inputFormat"));
+            @SuppressWarnings("unchecked")
+            List<String> inputFiles = (List<String>) executionContext.get("inputFiles");
+            int numberOfInputs = filterInputNames(inputFiles, inputFormat).size();
+            return (numberOfInputs >= Math.max(minInputFilesForPartitioning, 2) && maxPartitions > 1)?
+                PARTITIONED : SINGLE;
+        };
+    }
+
+    @Bean("triplegeo.partitionTaskExecutor")
+    public TaskExecutor partitionTaskExecutor()
+    {
+        return createPartitionTaskExecutor("triplegeo-partition-", maxPartitions);
+    }
+
+    @Bean("triplegeo.partitioner")
+    @JobScope
+    public InputFilesPartitioner partitioner(
+        @Value("#{jobExecutionContext['workDir']}") String workDir,
+        @Value("#{jobExecutionContext['inputDir']}") String inputDir,
+        @Value("#{jobExecutionContext['inputFormat']}") String inputFormatName,
+        @Value("#{jobExecutionContext['inputFiles']}") List<String> inputFiles)
+    {
+        EnumDataFormat inputFormat = EnumDataFormat.valueOf(inputFormatName);
+        return new InputFilesPartitioner(
+            Paths.get(inputDir), filterInputNames(inputFiles, inputFormat),
+            Paths.get(workDir, PARTITIONS_DIR_NAME), maxPartitions);
+    }
+
+    /**
+     * A tasklet for a partition: create and run a container for the subset of input files
+     * assigned to this partition.
+     */
+    @Bean("triplegeo.partitionTasklet")
+    @StepScope
+    public CreateAndRunContainerTasklet partitionTasklet(
+        @Value("${slipo.rpc-server.tools.triplegeo.docker.image}") String imageName,
+        @Value("#{jobExecution.jobInstance.id}") Long jobId,
+        @Value("#{jobExecutionContext['workDir']}") String workDir,
+        @Value("#{jobExecutionContext['inputDir']}") String inputDir,
+        @Value("#{jobExecutionContext['configFileByName']}") Map<String, String> configFileByName,
+        @Value("#{stepExecutionContext['partitionIndex']}") Integer partitionIndex,
+        @Value("#{stepExecutionContext['inputFiles']}") List<String> inputNames,
+        @Value("#{stepExecutionContext['workDir']}") String partitionWorkDir,
+        @Value("#{stepExecutionContext['outputDir']}") String partitionOutputDir)
+    {
+        String containerName = String.format("triplegeo-%05x-%s",
+            jobId, InputFilesPartitioner.partitionName(partitionIndex));
+
+        return createPartitionTasklet(containerName, partitionWorkDir,
+            configurer -> configureContainer(
+                configurer, imageName, workDir, inputDir, inputNames, partitionOutputDir, configFileByName));
+    }
+
+    @Bean("triplegeo.partitionStep")
+    public Step partitionStep(@Qualifier("triplegeo.partitionTasklet") CreateAndRunContainerTasklet tasklet)
+    {
+        return createPartitionStep("triplegeo.runPartition", tasklet);
+    }
+
+    @Bean("triplegeo.runPartitionedStep")
+    public Step runPartitionedStep(
+        @Qualifier("triplegeo.partitioner") InputFilesPartitioner partitioner,
+        @Qualifier("triplegeo.partitionStep") Step partitionStep,
+        @Qualifier("triplegeo.partitionTaskExecutor") TaskExecutor taskExecutor)
+    {
+        return createPartitionedStep(
+            "triplegeo.runPartitioned", partitioner, partitionStep, maxPartitions, taskExecutor);
+    }
+
+    /**
+     * A tasklet to collect the output of partitions into our (common) output directory
+     */
+    @Bean("triplegeo.collectPartitionOutputTasklet")
+    @JobScope
+    public CollectPartitionOutputTasklet collectPartitionOutputTasklet(
+        @Value("#{jobExecutionContext['workDir']}") String workDir,
+        @Value("#{jobExecutionContext['outputDir']}") String outputDir)
+    {
+        return CollectPartitionOutputTasklet.builder()
+            .partitionsDirectory(Paths.get(workDir, PARTITIONS_DIR_NAME))
+            .outputDirectory(Paths.get(outputDir))
+            .shared(SHARED_OUTPUT_NAMES)
             .build();
     }
 
+    @Bean("triplegeo.collectPartitionOutputStep")
+    public Step collectPartitionOutputStep(
+        @Qualifier("triplegeo.collectPartitionOutputTasklet") CollectPartitionOutputTasklet tasklet)
+    {
+        return stepBuilderFactory.get("triplegeo.collectPartitionOutput")
+            .tasklet(tasklet).build();
+    }
+
     /**
      * A tasklet to concatenate transformation result with classification output
      */
@@ -360,7 +694,7 @@ public class TriplegeoJobConfiguration extends ContainerBasedJobConfiguration
             .collect(Collectors.toList());
 
         final Path classificationFile = Paths.get(outputDir, "classification.nt");
-        final Path tmpDir = Paths.get(outputDir);
+        final byte[] classificationHeader = "\n# Classification\n".getBytes(StandardCharsets.UTF_8);
 
         return new Tasklet()
         {
@@ -368,21 +702,25 @@ public class TriplegeoJobConfiguration extends ContainerBasedJobConfiguration
             public RepeatStatus execute(StepContribution contribution, ChunkContext chunkContext)
                 throws Exception
             {
-                // Concatenate each result with classification output
+                // Append classification output to each result, in place. The original length of
+                // a result is recorded before appending, so that a re-executed step can truncate
+                // whatever a previous (interrupted) execution has appended.
 
                 for (String inputName: inputNames) {
                     Path outputFile = Paths.get(outputDir, inputName + ".nt");
-                    Path resultFile = Files.createTempFile(tmpDir, null, null);
-                    // Concatenate
-                    try (OutputStream out = Files.newOutputStream(resultFile)) {
-                        out.write("# Classification\n".getBytes());
-                        Files.copy(classificationFile, out);
-                        out.write("# Transformed\n".getBytes());
-                        Files.copy(outputFile, out);
+                    Path lengthFile = Paths.get(outputDir, "." + inputName + ".nt.length");
+                    if (!Files.exists(lengthFile)) {
+                        Files.write(lengthFile,
+                            Long.toString(Files.size(outputFile)).getBytes(StandardCharsets.US_ASCII));
+                    } else {
+                        long length = Long.parseLong(
+                            new String(Files.readAllBytes(lengthFile), StandardCharsets.US_ASCII).trim());
+                        try (FileChannel out = FileChannel.open(outputFile, StandardOpenOption.WRITE)) {
+                            out.truncate(length);
+                        }
                     }
-                    // Replace original result
-                    Files.move(outputFile, Paths.get(outputDir, inputName + ".nt.orig"));
-                    Files.move(resultFile, outputFile);
+                    Files.write(outputFile, classificationHeader, StandardOpenOption.APPEND);
+                    fileMaterializer.append(classificationFile, outputFile);
                 }
 
                 return null;
@@ -466,6 +804,146 @@ public class TriplegeoJobConfiguration extends ContainerBasedJobConfiguration
             .tasklet(tasklet).build();
     }
 
+    @Bean("triplegeo.lookupCachedResultStep")
+    public Step lookupCachedResultStep(
+        @Value("${slipo.rpc-server.tools.triplegeo.docker.image}") String imageName)
+    {
+        return createLookupCachedResultStep("triplegeo", imageName, "options");
+    }
+
+    @Bean("triplegeo.storeResultToCacheStep")
+    public Step storeResultToCacheStep()
+    {
+        return createStoreResultToCacheStep("triplegeo");
+    }
+
+    /**
+     * Resolve the output file that is streamed (while the container is running) into a spool, or
+     * return <tt>null</tt> if the output cannot be streamed (i.e. for several input files).
+     *
+     * @param jobExecutionContext The job execution context
+     */
+    private static Path resolveStreamedOutput(ExecutionContext jobExecutionContext)
+    {
+        final EnumDataFormat inputFormat = EnumDataFormat.valueOf(jobExecutionContext.getString("inputFormat"));
+        final EnumDataFormat outputFormat = EnumDataFormat.valueOf(jobExecutionContext.getString("outputFormat"));
+        @SuppressWarnings("unchecked")
+        final List<String> inputNames =
+            filterInputNames((List<String>) jobExecutionContext.get("inputFiles"), inputFormat);
+
+        if (outputFormat != EnumDataFormat.N_TRIPLES || inputNames.size() != 1)
+            return null;
+
+        return Paths.get(jobExecutionContext.getString("outputDir"),
+            StringUtils.stripFilenameExtension(inputNames.get(0)) + ".nt");
+    }
+
+    /**
+     * A tasklet to reset the spool (if any) that our output is streamed into. This clears any
+     * markers left by a previous execution, before a downstream step starts reading.
+     */
+    @Bean("triplegeo.resetSpoolTasklet")
+    @JobScope
+    public Tasklet resetSpoolTasklet(@Value("#{jobParameters['spool']}") String spoolPath)
+    {
+        return new Tasklet()
+        {
+            @Override
+            public RepeatStatus execute(StepContribution contribution, ChunkContext chunkContext)
+                throws Exception
+            {
+                if (spoolPath != null)
+                    new OutputSpool(Paths.get(spoolPath)).reset();
+                return null;
+            }
+        };
+    }
+
+    @Bean("triplegeo.resetSpoolStep")
+    public Step resetSpoolStep(@Qualifier("triplegeo.resetSpoolTasklet") Tasklet tasklet)
+    {
+        return stepBuilderFactory.get("triplegeo.resetSpool")
+            .tasklet(tasklet).build();
+    }
+
+    /**
+     * A tasklet to publish our final output to the spool (if any), and mark the spool as
+     * completed. Only the part of output that was not streamed (while the container was running)
+     * is appended to the spool (e.g. the classification appended to the result).
+     */
+    @Bean("triplegeo.publishToSpoolTasklet")
+    @JobScope
+    public Tasklet publishToSpoolTasklet(@Value("#{jobParameters['spool']}") String spoolPath)
+    {
+        return new Tasklet()
+        {
+            @Override
+            public RepeatStatus execute(StepContribution contribution, ChunkContext chunkContext)
+                throws Exception
+            {
+                if (spoolPath == null)
+                    return null; // no-op
+
+                final ExecutionContext jobExecutionContext =
+                    chunkContext.getStepContext().getStepExecution().getJobExecution().getExecutionContext();
+
+                final OutputSpool spool = new OutputSpool(Paths.get(spoolPath));
+                final Path outputDir = Paths.get(jobExecutionContext.getString("outputDir"));
+                Path outputFile = outputDir.resolve(spool.path().getFileName());
+                if (!Files.exists(outputFile))
+                    outputFile = resolveStreamedOutput(jobExecutionContext);
+                Assert.state(outputFile != null && Files.exists(outputFile), "The output to publish is missing");
+
+                final long spooledSize = jobExecutionContext.getLong(SpoolOutputListener.SPOOLED_SIZE_KEY, 0L);
+                final long size = spool.publish(outputFile, spooledSize, fileMaterializer);
+                logger.info("Published {} ({} bytes, {} already spooled) to {}",
+                    outputFile, size, spooledSize, spool.path());
+                return null;
+            }
+        };
+    }
+
+    @Bean("triplegeo.publishToSpoolStep")
+    public Step publishToSpoolStep(@Qualifier("triplegeo.publishToSpoolTasklet") Tasklet tasklet)
+    {
+        return stepBuilderFactory.get("triplegeo.publishToSpool")
+            .tasklet(tasklet)
+            .allowStartIfComplete(true)
+            .build();
+    }
+
+    /**
+     * A tasklet to mark the spool (if any) as failed, so that a downstream step reading from it
+     * fails (instead of waiting for our output).
+     */
+    @Bean("triplegeo.failSpoolTasklet")
+    @JobScope
+    public Tasklet failSpoolTasklet(@Value("#{jobParameters['spool']}") String spoolPath)
+    {
+        return new Tasklet()
+        {
+            @Override
+            public RepeatStatus execute(StepContribution contribution, ChunkContext chunkContext)
+                throws Exception
+            {
+                if (spoolPath != null) {
+                    final Long jobId = chunkContext.getStepContext().getStepExecution().getJobExecutionId();
+                    new OutputSpool(Paths.get(spoolPath)).fail(String.format("Job execution #%d has failed", jobId));
+                }
+                return null;
+            }
+        };
+    }
+
+    @Bean("triplegeo.failSpoolStep")
+    public Step failSpoolStep(@Qualifier("triplegeo.failSpoolTasklet") Tasklet tasklet)
+    {
+        return stepBuilderFactory.get("triplegeo.failSpool")
+            .tasklet(tasklet)
+            .allowStartIfComplete(true)
+            .build();
+    }
+
     /**
      * Create flow for a job expecting and reading configuration via normal {@link JobParameters}.
      */
@@ -473,18 +951,79 @@ public class TriplegeoJobConfiguration extends ContainerBasedJobConfiguration
     public Flow flow(
         @Qualifier("triplegeo.configureStep") Step configureStep,
         @Qualifier("triplegeo.prepareWorkingDirectoryStep") Step prepareWorkingDirectoryStep,
+        @Qualifier("triplegeo.lookupCachedResultStep") Step lookupCachedResultStep,
+        @Qualifier("triplegeo.storeResultToCacheStep") Step storeResultToCacheStep,
         @Qualifier("triplegeo.createContainerStep") Step createContainerStep,
         @Qualifier("triplegeo.runContainerStep") Step runContainerStep,
+        @Qualifier("triplegeo.partitioningDecider") JobExecutionDecider partitioningDecider,
+        @Qualifier("triplegeo.runPartitionedStep") Step runPartitionedStep,
+        @Qualifier("triplegeo.collectPartitionOutputStep") Step collectPartitionOutputStep,
         @Qualifier("triplegeo.concatenateOutputStep") Step concatenateOutputStep,
-        @Qualifier("triplegeo.linkToOutputStep") Step linkToOutputStep)
+        @Qualifier("triplegeo.linkToOutputStep") Step linkToOutputStep,
+        @Qualifier("triplegeo.runInWarmContainerStep") Optional<Step> runInWarmContainerStep,
+        @Qualifier("triplegeo.resetSpoolStep") Step resetSpoolStep,
+        @Qualifier("triplegeo.publishToSpoolStep") Step publishToSpoolStep,
+        @Qualifier("triplegeo.failSpoolStep") Step failSpoolStep)
     {
-        return new FlowBuilder<Flow>("triplegeo.flow")
+        FlowBuilder<Flow> flowBuilder = new FlowBuilder<Flow>("triplegeo.flow")
             .start(configureStep)
             .next(prepareWorkingDirectoryStep)
-            .next(createContainerStep)
-            .next(runContainerStep)
-            .next(concatenateOutputStep)
-            .next(linkToOutputStep)
+            .next(lookupCachedResultStep)
+                .on(LookupCachedResultTasklet.CACHED.getExitCode()).end()
+            .from(lookupCachedResultStep)
+                .on("*").to(partitioningDecider)
+            .from(partitioningDecider)
+                .on(PARTITIONED.getName())
+                    .to(runPartitionedStep)
+                    .next(collectPartitionOutputStep)
+                    .next(concatenateOutputStep)
+                    .next(linkToOutputStep)
+                    .next(storeResultToCacheStep);
+
+        Flow flow = null;
+        if (!runInWarmContainerStep.isPresent()) {
+            flow = flowBuilder
+                .from(partitioningDecider)
+                    .on("*")
+                        .to(createContainerStep)
+                        .next(runContainerStep)
+                        .next(concatenateOutputStep)
+                .build();
+        } else {
+            // Try a warm container first, and fall back to creating a container on a miss
+            flow = flowBuilder
+                .from(partitioningDecider)
+                    .on("*").to(runInWarmContainerStep.get())
+                .from(runInWarmContainerStep.get())
+                    .on(RunInWarmContainerTasklet.MISS.getExitCode())
+                        .to(createContainerStep)
+                        .next(runContainerStep)
+                        .next(concatenateOutputStep)
+                .from(runInWarmContainerStep.get())
+                    .on("FAILED*").fail()
+                .from(runInWarmContainerStep.get())
+                    .on("*").to(concatenateOutputStep)
+                .build();
+        }
+
+        if (!pipeliningEnabled)
+            return flow;
+
+        // Surround with steps that maintain the spool (if any) our output is streamed into: the
+        // spool is either completed with our final output, or marked as failed
+
+        return new FlowBuilder<Flow>("triplegeo.spoolingFlow")
+            .start(resetSpoolStep)
+            .next(flow)
+                .on(ExitStatus.COMPLETED.getExitCode()).to(publishToSpoolStep)
+            .from(flow)
+                .on("*").to(failSpoolStep)
+            .from(publishToSpoolStep)
+                .on(ExitStatus.COMPLETED.getExitCode()).end()
+            .from(publishToSpoolStep)
+                .on("*").to(failSpoolStep)
+            .from(failSpoolStep)
+                .on("*").fail()
             .build();
     }
 
@@ -0,0 +1,912 @@
+package eu.slipo.workbench.rpc.jobs.download;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.LongStream;
+
+import org.apache.commons.codec.binary.Hex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+/**
+ * A downloader for HTTP(S) resources that survives failures and computes a SHA-256 digest of the
+ * downloaded content while streaming it.
+ * <p>
+ * Data is written to a partial file (named after the target with a {@link #PARTIAL_SUFFIX}) which
+ * is moved to the target when complete. A sidecar state file (with a {@link #STATE_SUFFIX}) records
+ * the validators (ETag, Last-Modified, length) of the resource, so that a later attempt (either a
+ * retry or a restart of the whole step) can resume from the partial file using HTTP range requests.
+ * If the resource has changed in the meantime, the partial file is discarded.
+ * <p>
+ * A large resource (if the server accepts range requests) is split into a number of byte ranges
+ * fetched in parallel. The digest is then computed by following the contiguous prefix of the file
+ * as ranges are being filled, so no second pass over the file is needed.
+ */
+public class HttpDownloader
+{
+    private static final Logger logger = LoggerFactory.getLogger(HttpDownloader.class);
+
+    public static final String PARTIAL_SUFFIX = ".part";
+
+    public static final String STATE_SUFFIX = ".part.state";
+
+    public static final int DEFAULT_MAX_ATTEMPTS = 3;
+
+    public static final int DEFAULT_PARALLEL_RANGES = 4;
+
+    /**
+     * The default minimum size (bytes) of a resource to be fetched in parallel ranges
+     */
+    public static final long DEFAULT_PARALLEL_MIN_SIZE = 64 * 1024 * 1024L;
+
+    public static final int DEFAULT_CONNECT_TIMEOUT = 10 * 1000;
+
+    public static final int DEFAULT_READ_TIMEOUT = 60 * 1000;
+
+    /**
+     * The default delay (milliseconds) before a retry (multiplied by number of failed attempts)
+     */
+    public static final long DEFAULT_RETRY_BACKOFF = 1000L;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The maximum amount of time (milliseconds) the digest follower waits for progress
+     */
+    private static final long FOLLOWER_WAIT_INTERVAL = 100L;
+
+    /**
+     * The maximum amount of time (milliseconds) between checkpoints of the state of a download
+     * in parallel ranges (a checkpoint is also taken whenever a range is completed)
+     */
+    private static final long STATE_CHECKPOINT_INTERVAL = 2000L;
+
+    /**
+     * Signal an unexpected HTTP status
+     */
+    public static class HttpStatusException extends IOException
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final int status;
+
+        public HttpStatusException(URL url, int status)
+        {
+            super(String.format("Received an HTTP status of %d from %s", status, url));
+            this.status = status;
+        }
+
+        public int getStatus()
+        {
+            return status;
+        }
+
+        /**
+         * Check if a retry could possibly succeed (i.e. this is not a client error)
+         */
+        public boolean isRetryable()
+        {
+            return status < 400 || status >= 500 || status == 408 || status == 429;
+        }
+    }
+
+    /**
+     * The outcome of a download
+     */
+    public static class Result
+    {
+        private final long size;
+
+        private final String sha256;
+
+        private final long resumedBytes;
+
+        private final int numberOfRanges;
+
+        private final String etag;
+
+        private final String lastModified;
+
+        private Result(
+            long size, String sha256, long resumedBytes, int numberOfRanges, String etag, String lastModified)
+        {
+            this.size = size;
+            this.sha256 = sha256;
+            this.resumedBytes = resumedBytes;
+            this.numberOfRanges = numberOfRanges;
+            this.etag = etag;
+            this.lastModified = lastModified;
+        }
+
+        public long getSize()
+        {
+            return size;
+        }
+
+        /**
+         * The SHA-256 digest (as lowercase hex) of the downloaded content
+         */
+        public String getSha256()
+        {
+            return sha256;
+        }
+
+        /**
+         * The number of bytes reused from a partial file (i.e. not transferred by the final attempt)
+         */
+        public long getResumedBytes()
+        {
+            return resumedBytes;
+        }
+
+        public int getNumberOfRanges()
+        {
+            return numberOfRanges;
+        }
+
+        public String getEtag()
+        {
+            return etag;
+        }
+
+        public String getLastModified()
+        {
+            return lastModified;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format(
+                "Result [size=%s, sha256=%s, resumedBytes=%s, numberOfRanges=%s, etag=%s, lastModified=%s]",
+                size, sha256, resumedBytes, numberOfRanges, etag, lastModified);
+        }
+    }
+
+    /**
+     * The response to a HEAD request
+     */
+    private static class Probe
+    {
+        final long length;
+
+        final boolean acceptsRanges;
+
+        final String etag;
+
+        final String lastModified;
+
+        Probe(long length, boolean acceptsRanges, String etag, String lastModified)
+        {
+            this.length = length;
+            this.acceptsRanges = acceptsRanges;
+            this.etag = etag;
+            this.lastModified = lastModified;
+        }
+
+        boolean hasValidator()
+        {
+            return etag != null || lastModified != null;
+        }
+
+        /**
+         * The value for an <tt>If-Range</tt> header (a strong ETag is preferred)
+         */
+        String ifRange()
+        {
+            return (etag != null && !etag.startsWith("W/"))? etag : lastModified;
+        }
+    }
+
+    /**
+     * The persisted state of a partial download: the validators of the resource, and the
+     * progress of each byte range (as the number of bytes written from the start of the range).
+     */
+    private static class State
+    {
+        long length;
+
+        String etag;
+
+        String lastModified;
+
+        long[] starts;
+
+        long[] ends;
+
+        AtomicLongArray done;
+
+        static State create(Probe probe, int numberOfRanges)
+        {
+            State state = new State();
+            state.length = probe.length;
+            state.etag = probe.etag;
+            state.lastModified = probe.lastModified;
+
+            final long n = numberOfRanges;
+            final long rangeSize = probe.length > 0? (probe.length + n - 1) / n : 0L;
+            state.starts = new long[numberOfRanges];
+            state.ends = new long[numberOfRanges];
+            for (int i = 0; i < numberOfRanges; ++i) {
+                state.starts[i] = Math.min(i * rangeSize, probe.length);
+                state.ends[i] = Math.min((i + 1) * rangeSize, probe.length);
+            }
+            state.done = new AtomicLongArray(numberOfRanges);
+            return state;
+        }
+
+        static State load(Path path) throws IOException
+        {
+            if (!Files.isRegularFile(path))
+                return null;
+
+            Properties p = new Properties();
+            try (InputStream in = Files.newInputStream(path)) {
+                p.load(in);
+            }
+
+            State state = new State();
+            try {
+                state.length = Long.parseLong(p.getProperty("length"));
+                state.etag = p.getProperty("etag");
+                state.lastModified = p.getProperty("lastModified");
+                int n = Integer.parseInt(p.getProperty("ranges"));
+                state.starts = new long[n];
+                state.ends = new long[n];
+                state.done = new AtomicLongArray(n);
+                for (int i = 0; i < n; ++i) {
+                    String[] r = p.getProperty("range." + i).split(",");
+                    state.starts[i] = Long.parseLong(r[0]);
+                    state.ends[i] = Long.parseLong(r[1]);
+                    state.done.set(i, Long.parseLong(r[2]));
+                }
+            } catch (RuntimeException ex) {
+                logger.warn("Ignoring malformed state file {}: {}", path, ex.getMessage());
+                return null;
+            }
+            return state;
+        }
+
+        long[] snapshot()
+        {
+            long[] r = new long[starts.length];
+            for (int i = 0; i < r.length; ++i)
+                r[i] = done.get(i);
+            return r;
+        }
+
+        int completedRanges(long[] snapshot)
+        {
+            int k = 0;
+            for (int i = 0; i < starts.length; ++i) {
+                if (starts[i] + snapshot[i] >= ends[i])
+                    k++;
+            }
+            return k;
+        }
+
+        void save(Path path) throws IOException
+        {
+            save(path, snapshot());
+        }
+
+        /**
+         * Save the state, given a snapshot of the progress of ranges. The state file is replaced
+         * atomically, so that an interrupted save never leaves a malformed state behind.
+         */
+        void save(Path path, long[] snapshot) throws IOException
+        {
+            Properties p = new Properties();
+            p.setProperty("length", String.valueOf(length));
+            if (etag != null)
+                p.setProperty("etag", etag);
+            if (lastModified != null)
+                p.setProperty("lastModified", lastModified);
+            p.setProperty("ranges", String.valueOf(starts.length));
+            for (int i = 0; i < starts.length; ++i) {
+                p.setProperty("range." + i,
+                    String.format("%d,%d,%d", starts[i], ends[i], snapshot[i]));
+            }
+            final Path tempPath = path.resolveSibling(path.getFileName() + ".tmp");
+            try (OutputStream out = Files.newOutputStream(tempPath)) {
+                p.store(out, null);
+            }
+            Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        /**
+         * Get the minimum size of a partial file holding the recorded progress, i.e. the end of
+         * the furthest (non-empty) part of a range that is marked as done.
+         */
+        long extent()
+        {
+            long r = 0;
+            for (int i = 0; i < starts.length; ++i) {
+                final long d = done.get(i);
+                if (d > 0)
+                    r = Math.max(r, starts[i] + d);
+            }
+            return r;
+        }
+
+        boolean matches(Probe probe, int numberOfRanges)
+        {
+            return length == probe.length
+                && starts.length == numberOfRanges
+                && Objects.equals(etag, probe.etag)
+                && Objects.equals(lastModified, probe.lastModified);
+        }
+
+        int numberOfRanges()
+        {
+            return starts.length;
+        }
+
+        long doneBytes()
+        {
+            long s = 0;
+            for (int i = 0; i < starts.length; ++i)
+                s += done.get(i);
+            return s;
+        }
+    }
+
+    /**
+     * A builder for a {@link HttpDownloader}
+     */
+    public static class Builder
+    {
+        private int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+
+        private int parallelRanges = DEFAULT_PARALLEL_RANGES;
+
+        private long parallelMinSize = DEFAULT_PARALLEL_MIN_SIZE;
+
+        private int connectTimeout = DEFAULT_CONNECT_TIMEOUT;
+
+        private int readTimeout = DEFAULT_READ_TIMEOUT;
+
+        private long retryBackoff = DEFAULT_RETRY_BACKOFF;
+
+        private Builder() {}
+
+        /**
+         * Set the maximum number of attempts (for a single call to {@link HttpDownloader#download})
+         */
+        public Builder maxAttempts(int n)
+        {
+            Assert.isTrue(n > 0, "Expected a positive number of attempts");
+            this.maxAttempts = n;
+            return this;
+        }
+
+        /**
+         * Split a resource of at least <tt>minSize</tt> bytes into (at most) <tt>n</tt> byte
+         * ranges fetched in parallel. A value of <tt>1</tt> disables parallel ranges.
+         */
+        public Builder parallelRanges(int n, long minSize)
+        {
+            Assert.isTrue(n > 0, "Expected a positive number of ranges");
+            Assert.isTrue(minSize > 0, "Expected a positive size");
+            this.parallelRanges = n;
+            this.parallelMinSize = minSize;
+            return this;
+        }
+
+        public Builder connectTimeout(int millis)
+        {
+            Assert.isTrue(millis >= 0, "Expected a non-negative timeout");
+            this.connectTimeout = millis;
+            return this;
+        }
+
+        public Builder readTimeout(int millis)
+        {
+            Assert.isTrue(millis >= 0, "Expected a non-negative timeout");
+            this.readTimeout = millis;
+            return this;
+        }
+
+        public Builder retryBackoff(long millis)
+        {
+            Assert.isTrue(millis >= 0, "Expected a non-negative delay");
+            this.retryBackoff = millis;
+            return this;
+        }
+
+        public HttpDownloader build()
+        {
+            HttpDownloader downloader = new HttpDownloader();
+            downloader.maxAttempts = maxAttempts;
+            downloader.parallelRanges = parallelRanges;
+            downloader.parallelMinSize = parallelMinSize;
+            downloader.connectTimeout = connectTimeout;
+            downloader.readTimeout = readTimeout;
+            downloader.retryBackoff = retryBackoff;
+            return downloader;
+        }
+    }
+
+    public static Builder builder()
+    {
+        return new Builder();
+    }
+
+    private int maxAttempts;
+
+    private int parallelRanges;
+
+    private long parallelMinSize;
+
+    private int connectTimeout;
+
+    private int readTimeout;
+
+    private long retryBackoff;
+
+    private HttpDownloader() {}
+
+    /**
+     * Check if this downloader can handle a given URL
+     */
+    public static boolean supports(URL url)
+    {
+        String protocol = url.getProtocol();
+        return protocol.equals("http") || protocol.equals("https");
+    }
+
+    /**
+     * Download a resource into a target file, resuming from a previous partial download (if any).
+     *
+     * @param url An HTTP(S) URL
+     * @param target The target file
+     * @return the outcome of the download
+     *
+     * @throws IOException if the download has failed (after all attempts are exhausted)
+     * @throws InterruptedException if interrupted while downloading (the partial file is kept)
+     */
+    public Result download(URL url, Path target) throws IOException, InterruptedException
+    {
+        Assert.notNull(url, "A URL is required");
+        Assert.isTrue(supports(url), "Expected an HTTP(S) URL");
+        Assert.notNull(target, "A target path is required");
+
+        final Path partial = target.resolveSibling(target.getFileName() + PARTIAL_SUFFIX);
+        final Path stateFile = target.resolveSibling(target.getFileName() + STATE_SUFFIX);
+
+        IOException failure = null;
+        for (int attempt = 1; attempt <= maxAttempts; ++attempt) {
+            if (attempt > 1)
+                Thread.sleep(retryBackoff * (attempt - 1));
+            try {
+                Result result = tryDownload(url, partial, stateFile);
+                Files.move(partial, target, StandardCopyOption.REPLACE_EXISTING);
+                Files.deleteIfExists(stateFile);
+                logger.info("Downloaded {} into {}: {}", url, target, result);
+                return result;
+            } catch (HttpStatusException ex) {
+                if (!ex.isRetryable())
+                    throw ex;
+                failure = ex;
+            } catch (IOException ex) {
+                failure = ex;
+            }
+            logger.warn("Failed to download {} (attempt {} of {}): {}",
+                url, attempt, maxAttempts, failure.getMessage());
+        }
+
+        throw failure;
+    }
+
+    /**
+     * Check if a resource is modified with respect to given validators (of a previous download).
+     * A conditional HEAD request is issued.
+     *
+     * @param url An HTTP(S) URL
+     * @param etag The ETag of the previous download (may be <tt>null</tt>)
+     * @param lastModified The Last-Modified date of the previous download (may be <tt>null</tt>)
+     * @param length The length of the previous download
+     * @return <tt>false</tt> only if the resource is known to be unmodified
+     */
+    public boolean isModified(URL url, String etag, String lastModified, long length) throws IOException
+    {
+        Assert.notNull(url, "A URL is required");
+        Assert.isTrue(supports(url), "Expected an HTTP(S) URL");
+
+        if (etag == null && lastModified == null)
+            return true; // nothing to validate against
+
+        HttpURLConnection conn = openConnection(url, "HEAD");
+        try {
+            if (etag != null)
+                conn.setRequestProperty("If-None-Match", etag);
+            if (lastModified != null)
+                conn.setRequestProperty("If-Modified-Since", lastModified);
+
+            int status = conn.getResponseCode();
+            if (status == HttpURLConnection.HTTP_NOT_MODIFIED)
+                return false;
+            if (status == HttpURLConnection.HTTP_BAD_METHOD || status == HttpURLConnection.HTTP_NOT_IMPLEMENTED)
+                return true;
+            if (status != HttpURLConnection.HTTP_OK)
+                throw new HttpStatusException(url, status);
+
+            // The server may ignore conditional headers: compare validators
+            return !Objects.equals(etag, conn.getHeaderField("ETag"))
+                || !Objects.equals(lastModified, conn.getHeaderField("Last-Modified"))
+                || conn.getContentLengthLong() != length;
+        } finally {
+            conn.disconnect();
+        }
+    }
+
+    private Result tryDownload(URL url, Path partial, Path stateFile)
+        throws IOException, InterruptedException
+    {
+        final Probe probe = probe(url);
+
+        final int numberOfRanges = (probe != null && probe.acceptsRanges && probe.hasValidator()
+                && parallelRanges > 1 && probe.length >= parallelMinSize)?
+            parallelRanges : 1;
+
+        // Check if a partial download can be resumed
+
+        State state = null;
+        if (probe != null && probe.hasValidator() && probe.length >= 0) {
+            state = State.load(stateFile);
+            if (state != null && !state.matches(probe, numberOfRanges)) {
+                logger.info("Discarding partial download of {}: the resource (or our strategy) has changed", url);
+                state = null;
+            }
+            if (state != null && state.extent() > 0) {
+                // The recorded progress must be backed by data: a missing (or truncated) partial
+                // file would be recreated, and the ranges marked as done would read back as zeros
+                final long size = Files.exists(partial)? Files.size(partial) : -1L;
+                if (size < state.extent()) {
+                    logger.info("Discarding partial download of {}: the partial file is missing or truncated " +
+                        "({} bytes present, {} expected)", url, Math.max(size, 0L), state.extent());
+                    Files.deleteIfExists(stateFile);
+                    state = null;
+                }
+            }
+            if (state == null) {
+                Files.deleteIfExists(partial);
+                state = State.create(probe, numberOfRanges);
+                state.save(stateFile);
+            }
+        } else {
+            // No validators: nothing can be safely resumed
+            Files.deleteIfExists(stateFile);
+            Files.deleteIfExists(partial);
+        }
+
+        if (numberOfRanges > 1)
+            return downloadRanges(url, partial, stateFile, probe, state);
+        else
+            return downloadStream(url, partial, probe);
+    }
+
+    private HttpURLConnection openConnection(URL url, String method) throws IOException
+    {
+        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+        conn.setRequestMethod(method);
+        conn.setConnectTimeout(connectTimeout);
+        conn.setReadTimeout(readTimeout);
+        // Ask for the identity encoding, so that lengths and ranges refer to the actual content
+        conn.setRequestProperty("Accept-Encoding", "identity");
+        return conn;
+    }
+
+    /**
+     * Issue a HEAD request to find the length and validators of a resource.
+     *
+     * @return the response, or <tt>null</tt> if the server does not support HEAD requests
+     */
+    private Probe probe(URL url) throws IOException
+    {
+        HttpURLConnection conn = openConnection(url, "HEAD");
+        try {
+            int status = conn.getResponseCode();
+            if (status == HttpURLConnection.HTTP_BAD_METHOD || status == HttpURLConnection.HTTP_NOT_IMPLEMENTED)
+                return null;
+            if (status != HttpURLConnection.HTTP_OK)
+                throw new HttpStatusException(url, status);
+            return new Probe(
+                conn.getContentLengthLong(),
+                "bytes".equalsIgnoreCase(conn.getHeaderField("Accept-Ranges")),
+                conn.getHeaderField("ETag"),
+                conn.getHeaderField("Last-Modified"));
+        } finally {
+            conn.disconnect();
+        }
+    }
+
+    /**
+     * Download as a single stream, resuming from the end of a partial file (if any).
+     */
+    private Result downloadStream(URL url, Path partial, Probe probe) throws IOException
+    {
+        final MessageDigest digest = newDigest();
+        long offset = Files.exists(partial)? Files.size(partial) : 0L;
+
+        // The digest must cover the bytes already present: this is the only part that is read back
+        if (offset > 0)
+            updateDigest(digest, partial, offset);
+
+        HttpURLConnection conn = openConnection(url, "GET");
+        try {
+            if (offset > 0) {
+                conn.setRequestProperty("Range", String.format("bytes=%d-", offset));
+                if (probe.ifRange() != null)
+                    conn.setRequestProperty("If-Range", probe.ifRange());
+            }
+
+            final int status = conn.getResponseCode();
+            if (status == 416 && offset > 0 && offset == probe.length) {
+                // The partial file is already complete
+                return new Result(offset, hex(digest), offset, 1, probe.etag, probe.lastModified);
+            } else if (status == HttpURLConnection.HTTP_PARTIAL) {
+                String contentRange = conn.getHeaderField("Content-Range");
+                if (contentRange == null || !contentRange.startsWith(String.format("bytes %d-", offset)))
+                    throw new IOException("Received an unexpected content range: " + contentRange);
+                logger.info("Resuming download of {} at offset {}", url, offset);
+            } else if (status == HttpURLConnection.HTTP_OK) {
+                if (offset > 0) {
+                    // The server has ignored our range (or the resource has changed): start over
+                    logger.info("Restarting download of {}: the server has sent the entire resource", url);
+                    offset = 0;
+                    digest.reset();
+                }
+            } else {
+                throw new HttpStatusException(url, status);
+            }
+
+            long expectedLength = probe != null && probe.length >= 0? probe.length : -1L;
+            if (expectedLength < 0 && status == HttpURLConnection.HTTP_OK)
+                expectedLength = conn.getContentLengthLong();
+
+            long size = offset;
+            try (InputStream in = conn.getInputStream();
+                    FileChannel out = FileChannel.open(partial,
+                        StandardOpenOption.CREATE, StandardOpenOption.WRITE))
+            {
+                out.truncate(offset);
+                out.position(offset);
+                byte[] buf = new byte[BUFFER_SIZE];
+                int n;
+                while ((n = in.read(buf)) >= 0) {
+                    digest.update(buf, 0, n);
+                    writeFully(out, ByteBuffer.wrap(buf, 0, n), size);
+                    size += n;
+                }
+            }
+
+            if (expectedLength >= 0 && size != expectedLength) {
+                throw new IOException(String.format(
+                    "Received %d bytes from %s (expected %d)", size, url, expectedLength));
+            }
+
+            return new Result(size, hex(digest), offset, 1,
+                probe != null? probe.etag : conn.getHeaderField("ETag"),
+                probe != null? probe.lastModified : conn.getHeaderField("Last-Modified"));
+        } finally {
+            conn.disconnect();
+        }
+    }
+
+    /**
+     * Download in parallel byte ranges, while the digest follows the contiguous prefix of the file.
+     * <p>
+     * The progress of ranges is checkpointed into the state file whenever a range is completed,
+     * and at least every {@link #STATE_CHECKPOINT_INTERVAL} while ranges are progressing, so that
+     * a process killed in the middle of a download loses little of it.
+     */
+    private Result downloadRanges(URL url, Path partial, Path stateFile, Probe probe, State state)
+        throws IOException, InterruptedException
+    {
+        final int n = state.numberOfRanges();
+        final long length = state.length;
+        final long resumedBytes = state.doneBytes();
+        final MessageDigest digest = newDigest();
+        final Object progress = new Object();
+
+        if (resumedBytes > 0)
+            logger.info("Resuming download of {} in {} ranges ({} bytes present)", url, n, resumedBytes);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(n, r -> {
+            Thread t = new Thread(r, "download-range");
+            t.setDaemon(true);
+            return t;
+        });
+
+        try (FileChannel channel = FileChannel.open(partial,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE))
+        {
+            List<Future<?>> futures = new ArrayList<>(n);
+            for (int i = 0; i < n; ++i) {
+                final int rangeIndex = i;
+                if (state.starts[i] + state.done.get(i) < state.ends[i])
+                    futures.add(executor.submit(() -> {
+                        fetchRange(url, probe, state, rangeIndex, channel, progress);
+                        return null;
+                    }));
+            }
+
+            // Follow the contiguous prefix of the file, and feed it to the digest
+
+            final ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE);
+            long hashed = 0;
+            int rangeIndex = 0;
+            long checkpointedBytes = resumedBytes;
+            int checkpointedRanges = state.completedRanges(state.snapshot());
+            long checkpointedAt = System.currentTimeMillis();
+            while (hashed < length) {
+                while (hashed >= state.ends[rangeIndex])
+                    rangeIndex++;
+                final long available = state.starts[rangeIndex] + state.done.get(rangeIndex);
+                if (available > hashed) {
+                    buf.clear();
+                    buf.limit((int) Math.min(BUFFER_SIZE, available - hashed));
+                    int r = channel.read(buf, hashed);
+                    if (r < 0)
+                        throw new IOException("Unexpected end of partial file " + partial);
+                    buf.flip();
+                    digest.update(buf);
+                    hashed += r;
+                } else {
+                    checkFailed(futures);
+                    synchronized (progress) {
+                        if (state.starts[rangeIndex] + state.done.get(rangeIndex) <= hashed)
+                            progress.wait(FOLLOWER_WAIT_INTERVAL);
+                    }
+                }
+
+                // Checkpoint if a range is completed, or if enough time has passed
+
+                final long now = System.currentTimeMillis();
+                final long[] snapshot = state.snapshot();
+                final int completedRanges = state.completedRanges(snapshot);
+                final long doneBytes = LongStream.of(snapshot).sum();
+                if (completedRanges > checkpointedRanges ||
+                        (doneBytes > checkpointedBytes && now - checkpointedAt >= STATE_CHECKPOINT_INTERVAL)) {
+                    // The recorded progress must not run ahead of the data (the snapshot is taken first)
+                    channel.force(false);
+                    state.save(stateFile, snapshot);
+                    checkpointedRanges = completedRanges;
+                    checkpointedBytes = doneBytes;
+                    checkpointedAt = now;
+                }
+            }
+
+            for (Future<?> f: futures)
+                getResult(f);
+        } finally {
+            executor.shutdownNow();
+            state.save(stateFile);
+        }
+
+        return new Result(length, hex(digest), resumedBytes, n, probe.etag, probe.lastModified);
+    }
+
+    private void fetchRange(
+            URL url, Probe probe, State state, int i, FileChannel channel, Object progress)
+        throws IOException
+    {
+        final long from = state.starts[i] + state.done.get(i);
+        final long to = state.ends[i]; // exclusive
+
+        HttpURLConnection conn = openConnection(url, "GET");
+        try {
+            conn.setRequestProperty("Range", String.format("bytes=%d-%d", from, to - 1));
+            if (probe.ifRange() != null)
+                conn.setRequestProperty("If-Range", probe.ifRange());
+
+            final int status = conn.getResponseCode();
+            if (status == HttpURLConnection.HTTP_OK)
+                throw new IOException("The server has ignored a range request (the resource has changed?)");
+            if (status != HttpURLConnection.HTTP_PARTIAL)
+                throw new HttpStatusException(url, status);
+
+            String contentRange = conn.getHeaderField("Content-Range");
+            if (contentRange == null || !contentRange.startsWith(String.format("bytes %d-%d/", from, to - 1)))
+                throw new IOException("Received an unexpected content range: " + contentRange);
+
+            long position = from;
+            try (InputStream in = conn.getInputStream()) {
+                byte[] buf = new byte[BUFFER_SIZE];
+                int n;
+                while (position < to && (n = in.read(buf, 0, (int) Math.min(buf.length, to - position))) >= 0) {
+                    writeFully(channel, ByteBuffer.wrap(buf, 0, n), position);
+                    position += n;
+                    state.done.addAndGet(i, n);
+                    synchronized (progress) {
+                        progress.notifyAll();
+                    }
+                    if (Thread.currentThread().isInterrupted())
+                        throw new IOException("Interrupted while fetching a range");
+                }
+            }
+
+            if (position != to) {
+                throw new IOException(String.format(
+                    "Received a truncated range from %s (%d of %d bytes)", url, position - from, to - from));
+            }
+        } finally {
+            conn.disconnect();
+        }
+    }
+
+    private static void checkFailed(List<Future<?>> futures) throws IOException, InterruptedException
+    {
+        for (Future<?> f: futures) {
+            if (f.isDone())
+                getResult(f);
+        }
+    }
+
+    private static void getResult(Future<?> f) throws IOException, InterruptedException
+    {
+        try {
+            f.get();
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            throw new IOException("Failed to fetch a range", cause);
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer data, long position) throws IOException
+    {
+        while (data.hasRemaining())
+            position += channel.write(data, position);
+    }
+
+    private static void updateDigest(MessageDigest digest, Path path, long length) throws IOException
+    {
+        try (InputStream in = Files.newInputStream(path)) {
+            byte[] buf = new byte[BUFFER_SIZE];
+            long remaining = length;
+            int n;
+            while (remaining > 0 && (n = in.read(buf, 0, (int) Math.min(buf.length, remaining))) >= 0) {
+                digest.update(buf, 0, n);
+                remaining -= n;
+            }
+        }
+    }
+
+    private static MessageDigest newDigest()
+    {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static String hex(MessageDigest digest)
+    {
+        return Hex.encodeHexString(digest.digest());
+    }
+}
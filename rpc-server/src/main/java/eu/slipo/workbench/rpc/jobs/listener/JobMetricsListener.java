@@ -0,0 +1,62 @@
+package eu.slipo.workbench.rpc.jobs.listener;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.listener.JobExecutionListenerSupport;
+import org.springframework.util.Assert;
+
+import eu.slipo.workbench.rpc.service.MetricRegistry;
+
+/**
+ * A listener that keeps track of running executions of a kind of job, and records the duration
+ * of every execution (labeled by its outcome) into a {@link MetricRegistry}.
+ */
+public class JobMetricsListener extends JobExecutionListenerSupport
+{
+    public static final String JOB_DURATION = "slipo_rpc_job_duration_seconds";
+
+    private final MetricRegistry registry;
+
+    private final String kind;
+
+    /**
+     * The number of running executions (shared among listeners of the same kind of job)
+     */
+    private final AtomicInteger running;
+
+    public JobMetricsListener(MetricRegistry registry, String kind, AtomicInteger running)
+    {
+        Assert.notNull(registry, "A metric registry is required");
+        Assert.hasText(kind, "A kind of job is required");
+        Assert.notNull(running, "A counter of running executions is required");
+        this.registry = registry;
+        this.kind = kind;
+        this.running = running;
+    }
+
+    @Override
+    public void beforeJob(JobExecution jobExecution)
+    {
+        running.incrementAndGet();
+    }
+
+    @Override
+    public void afterJob(JobExecution jobExecution)
+    {
+        running.decrementAndGet();
+
+        final Date started = jobExecution.getStartTime();
+        final Date finished = jobExecution.getEndTime();
+
+        if (started != null) {
+            long endTime = finished == null? System.currentTimeMillis() : finished.getTime();
+            registry.timer(JOB_DURATION, "The duration of job executions",
+                    "job", kind,
+                    "status", jobExecution.getStatus().name())
+                .record(endTime - started.getTime(), TimeUnit.MILLISECONDS);
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package eu.slipo.workbench.rpc.jobs.listener;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeoutException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.listener.StepExecutionListenerSupport;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.util.Assert;
+
+import eu.slipo.workbench.rpc.jobs.tasklet.NamedPipeFeeder;
+import eu.slipo.workbench.rpc.jobs.tasklet.OutputSpool;
+import eu.slipo.workbench.rpc.jobs.tasklet.PrepareWorkingDirectoryTasklet;
+import eu.slipo.workbench.rpc.jobs.tasklet.docker.RunContainerTasklet;
+
+/**
+ * A listener for a step that runs a container on a piped input, i.e. on the output of an upstream
+ * step that is read while still being produced (see
+ * {@link PrepareWorkingDirectoryTasklet.Builder#spooledInput(boolean, long)}): the pipe is fed
+ * from the spool of the upstream step for as long as the step is running.
+ * <p>
+ * This listener is expected to be registered after the listener of the container tasklet. If
+ * the container completes without consuming all of its input, the step is marked as failed.
+ */
+public class PipedInputListener extends StepExecutionListenerSupport
+{
+    private static final Logger logger = LoggerFactory.getLogger(PipedInputListener.class);
+
+    /**
+     * The default time (milliseconds) to wait for a feeder after the step has completed
+     */
+    public static final long DEFAULT_GRACE_PERIOD = 5000L;
+
+    private final long timeout;
+
+    private final long gracePeriod;
+
+    /**
+     * The active feeders keyed to the id of a step execution
+     */
+    private final ConcurrentMap<Long, NamedPipeFeeder> feeders = new ConcurrentHashMap<>();
+
+    /**
+     * @param timeout The time (milliseconds) to wait for the producer of the spool while no
+     *   progress is made
+     */
+    public PipedInputListener(long timeout)
+    {
+        this(timeout, DEFAULT_GRACE_PERIOD);
+    }
+
+    public PipedInputListener(long timeout, long gracePeriod)
+    {
+        Assert.isTrue(timeout > 0, "Expected a positive timeout");
+        Assert.isTrue(gracePeriod >= 0, "Expected a non-negative grace period");
+        this.timeout = timeout;
+        this.gracePeriod = gracePeriod;
+    }
+
+    @Override
+    public void beforeStep(StepExecution stepExecution)
+    {
+        ExecutionContext jobExecutionContext = stepExecution.getJobExecution().getExecutionContext();
+
+        String spoolPath = jobExecutionContext.getString(PrepareWorkingDirectoryTasklet.Keys.SPOOLED_INPUT, null);
+        if (spoolPath == null)
+            return; // the input is not piped
+
+        // A container that was left running (by an interrupted step) has already consumed part
+        // of the pipe, and there is no way to resume feeding it from that point (a new container
+        // is fed from the beginning of the spool)
+
+        Assert.state(!stepExecution.getExecutionContext().containsKey(RunContainerTasklet.Keys.STARTED),
+            "A container reading from a piped input cannot be resumed");
+
+        Path inputDir = Paths.get(jobExecutionContext.getString(PrepareWorkingDirectoryTasklet.Keys.INPUT_DIR));
+        @SuppressWarnings("unchecked")
+        List<String> inputFiles = (List<String>) jobExecutionContext.get(PrepareWorkingDirectoryTasklet.Keys.INPUT_FILES);
+        Path pipe = inputDir.resolve(inputFiles.get(0));
+
+        if (!isPipe(pipe)) {
+            logger.warn("Expected {} to be a named pipe; The input is not piped", pipe);
+            return;
+        }
+
+        long since = stepExecution.getJobExecution().getCreateTime().getTime();
+        NamedPipeFeeder feeder = new NamedPipeFeeder(pipe, new OutputSpool(Paths.get(spoolPath)), since, timeout);
+        feeder.start();
+        feeders.put(stepExecution.getId(), feeder);
+    }
+
+    @Override
+    public ExitStatus afterStep(StepExecution stepExecution)
+    {
+        NamedPipeFeeder feeder = feeders.remove(stepExecution.getId());
+        if (feeder == null)
+            return null;
+
+        if (stepExecution.getStatus() != BatchStatus.COMPLETED ||
+                stepExecution.getExitStatus().getExitCode().startsWith(ExitStatus.FAILED.getExitCode())) {
+            // The step has failed or is interrupted: stop feeding (a restarted step starts over)
+            feeder.cancel();
+            return null;
+        }
+
+        String errorMessage = null;
+        try {
+            feeder.await(gracePeriod);
+        } catch (TimeoutException ex) {
+            errorMessage = String.format("The input was not fully consumed from pipe %s", feeder.pipe());
+        } catch (IOException | RuntimeException ex) {
+            errorMessage = String.format("Failed to feed pipe %s: %s", feeder.pipe(), ex.getMessage());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            errorMessage = String.format("Interrupted while feeding pipe %s", feeder.pipe());
+        } finally {
+            feeder.cancel(); // no-op if done
+        }
+
+        if (errorMessage == null)
+            return null; // do not alter exit-status
+
+        logger.error(errorMessage);
+        stepExecution.setStatus(BatchStatus.FAILED);
+        return new ExitStatus("FAILED-WITH-PIPED-INPUT", errorMessage);
+    }
+
+    private static boolean isPipe(Path path)
+    {
+        try {
+            return Files.readAttributes(path, BasicFileAttributes.class).isOther();
+        } catch (IOException ex) {
+            return false;
+        }
+    }
+}
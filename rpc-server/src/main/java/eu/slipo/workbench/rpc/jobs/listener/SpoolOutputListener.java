@@ -0,0 +1,229 @@
+package eu.slipo.workbench.rpc.jobs.listener;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.listener.StepExecutionListenerSupport;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.util.Assert;
+
+import eu.slipo.workbench.rpc.jobs.tasklet.OutputSpool;
+
+/**
+ * A listener for a step that runs a container producing an output to be streamed into a
+ * downstream step: for as long as the step is running, the (growing) output file is copied into
+ * the spool given as a job parameter (see {@link OutputSpool#PARAMETER_NAME}).
+ * <p>
+ * This listener never marks the spool as completed, because the output may be further processed
+ * by subsequent steps of the job. On success, the number of spooled bytes is recorded (under
+ * {@link SpoolOutputListener#SPOOLED_SIZE_KEY}) into the job execution context, so that only the
+ * remaining part of the final output needs to be published (see {@link OutputSpool#publish}).
+ */
+public class SpoolOutputListener extends StepExecutionListenerSupport
+{
+    private static final Logger logger = LoggerFactory.getLogger(SpoolOutputListener.class);
+
+    /**
+     * The key (in job execution context) for the number of bytes already spooled
+     */
+    public static final String SPOOLED_SIZE_KEY = "spooledSize";
+
+    /**
+     * The default interval (milliseconds) for polling the output file
+     */
+    public static final long DEFAULT_POLL_INTERVAL = 500L;
+
+    private final Function<ExecutionContext, Path> outputResolver;
+
+    private final long pollInterval;
+
+    /**
+     * The active tailers keyed to the id of a step execution
+     */
+    private final ConcurrentMap<Long, Tailer> tailers = new ConcurrentHashMap<>();
+
+    /**
+     * @param outputResolver A function to resolve the output file from the job execution
+     *   context, or to return <tt>null</tt> if the output cannot be streamed
+     */
+    public SpoolOutputListener(Function<ExecutionContext, Path> outputResolver)
+    {
+        this(outputResolver, DEFAULT_POLL_INTERVAL);
+    }
+
+    public SpoolOutputListener(Function<ExecutionContext, Path> outputResolver, long pollInterval)
+    {
+        Assert.notNull(outputResolver, "Expected a non-null resolver for the output file");
+        Assert.isTrue(pollInterval > 0, "Expected a positive interval");
+        this.outputResolver = outputResolver;
+        this.pollInterval = pollInterval;
+    }
+
+    /**
+     * Copy a growing file into a spool, until stopped
+     */
+    private class Tailer
+    {
+        private final Path source;
+
+        private final OutputSpool spool;
+
+        private final FutureTask<Long> task;
+
+        private volatile boolean stopped = false;
+
+        private Tailer(Path source, OutputSpool spool)
+        {
+            this.source = source;
+            this.spool = spool;
+            this.task = new FutureTask<>(this::tail);
+        }
+
+        private void start()
+        {
+            Thread thread = new Thread(task, "spool-tailer-" + source.getFileName());
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        /**
+         * Stop tailing, after copying whatever is left in the source file
+         *
+         * @return the number of bytes spooled
+         */
+        private long stop() throws IOException, InterruptedException
+        {
+            stopped = true;
+            try {
+                return task.get();
+            } catch (ExecutionException ex) {
+                final Throwable cause = ex.getCause();
+                if (cause instanceof IOException)
+                    throw (IOException) cause;
+                throw new IllegalStateException(cause);
+            }
+        }
+
+        private void cancel()
+        {
+            task.cancel(true);
+        }
+
+        private Long tail() throws IOException, InterruptedException
+        {
+            long n = 0;
+            FileChannel in = null;
+            Object fileKey = null;
+            try (FileChannel out = FileChannel.open(spool.path(), StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                while (true) {
+                    final boolean lastPass = stopped;
+                    if (in == null && Files.exists(source)) {
+                        in = FileChannel.open(source, StandardOpenOption.READ);
+                        fileKey = fileKey(source);
+                    }
+                    if (in != null) {
+                        long r = 0;
+                        while ((r = in.transferTo(n, Long.MAX_VALUE, out)) > 0)
+                            n += r;
+                    }
+                    if (lastPass)
+                        break;
+                    Thread.sleep(pollInterval);
+                }
+                out.force(false);
+            } finally {
+                if (in != null)
+                    in.close();
+            }
+
+            // The spooled bytes are a prefix of the output only if the output was appended to
+            // (and never replaced or truncated)
+
+            if (n > 0 && (!Objects.equals(fileKey, fileKey(source)) || Files.size(source) != n))
+                throw new IOException(String.format("The output %s was rewritten while being spooled", source));
+
+            return n;
+        }
+    }
+
+    @Override
+    public void beforeStep(StepExecution stepExecution)
+    {
+        final String spoolPath = stepExecution.getJobParameters().getString(OutputSpool.PARAMETER_NAME);
+        if (spoolPath == null)
+            return; // the output is not streamed
+
+        final ExecutionContext jobExecutionContext = stepExecution.getJobExecution().getExecutionContext();
+        jobExecutionContext.remove(SPOOLED_SIZE_KEY);
+
+        final Path source = outputResolver.apply(jobExecutionContext);
+        if (source == null)
+            return; // the output is published when the job completes
+
+        final OutputSpool spool = new OutputSpool(Paths.get(spoolPath));
+        try {
+            spool.reset();
+        } catch (IOException ex) {
+            logger.warn("Failed to reset spool {}; The output is not streamed: {}", spool.path(), ex.getMessage());
+            return;
+        }
+
+        Tailer tailer = new Tailer(source, spool);
+        tailer.start();
+        tailers.put(stepExecution.getId(), tailer);
+    }
+
+    @Override
+    public ExitStatus afterStep(StepExecution stepExecution)
+    {
+        final Tailer tailer = tailers.remove(stepExecution.getId());
+        if (tailer == null)
+            return null;
+
+        if (stepExecution.getStatus() != BatchStatus.COMPLETED ||
+                stepExecution.getExitStatus().getExitCode().startsWith(ExitStatus.FAILED.getExitCode())) {
+            // The spool will be reset by a restarted step (or marked as failed along with the job)
+            tailer.cancel();
+            return null;
+        }
+
+        try {
+            long n = tailer.stop();
+            stepExecution.getJobExecution().getExecutionContext().putLong(SPOOLED_SIZE_KEY, n);
+            logger.info("Spooled {} bytes of {} into {}", n, tailer.source, tailer.spool.path());
+        } catch (IOException | RuntimeException ex) {
+            // Not a failure of the step: the entire output is published when the job completes
+            logger.warn("Failed to spool {}: {}", tailer.source, ex.getMessage());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            tailer.cancel();
+        }
+
+        return null; // do not alter exit-status
+    }
+
+    private static Object fileKey(Path path)
+    {
+        try {
+            return Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+        } catch (IOException ex) {
+            return null;
+        }
+    }
+}
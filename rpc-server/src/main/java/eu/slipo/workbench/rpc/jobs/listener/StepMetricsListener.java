@@ -0,0 +1,66 @@
+package eu.slipo.workbench.rpc.jobs.listener;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.listener.StepExecutionListenerSupport;
+import org.springframework.util.Assert;
+
+import eu.slipo.workbench.rpc.service.MetricRegistry;
+
+/**
+ * A listener that records the duration of every execution of a step (labeled by the kind of job,
+ * the step and its outcome) into a {@link MetricRegistry}.
+ */
+public class StepMetricsListener extends StepExecutionListenerSupport
+{
+    public static final String STEP_DURATION = "slipo_rpc_step_duration_seconds";
+
+    private final MetricRegistry registry;
+
+    public StepMetricsListener(MetricRegistry registry)
+    {
+        Assert.notNull(registry, "A metric registry is required");
+        this.registry = registry;
+    }
+
+    /**
+     * Determine the kind of job (e.g. <tt>triplegeo</tt>) a step belongs to. By convention, the
+     * name of a step is prefixed by its kind of job (e.g. <tt>triplegeo.runContainer</tt>), unless
+     * it forms a job by itself (e.g. <tt>downloadFile</tt>).
+     */
+    public static String kindOf(String stepName)
+    {
+        int i = stepName.indexOf('.');
+        return i > 0? stepName.substring(0, i) : baseNameOf(stepName);
+    }
+
+    /**
+     * Strip the suffix (of a partition) from the name of a step execution (e.g. the name of an
+     * execution of <tt>triplegeo.runPartition</tt> is <tt>triplegeo.runPartition:partition0</tt>)
+     */
+    private static String baseNameOf(String stepName)
+    {
+        int i = stepName.indexOf(':');
+        return i > 0? stepName.substring(0, i) : stepName;
+    }
+
+    @Override
+    public ExitStatus afterStep(StepExecution stepExecution)
+    {
+        final String stepName = baseNameOf(stepExecution.getStepName());
+        final Date started = stepExecution.getStartTime();
+
+        if (started != null) {
+            registry.timer(STEP_DURATION, "The duration of step executions",
+                    "job", kindOf(stepName),
+                    "step", stepName,
+                    "status", stepExecution.getStatus().name())
+                .record(System.currentTimeMillis() - started.getTime(), TimeUnit.MILLISECONDS);
+        }
+
+        return null; // do not alter exit-status
+    }
+}
@@ -0,0 +1,157 @@
+package eu.slipo.workbench.rpc.jobs.partition;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.util.Assert;
+
+/**
+ * A tasklet that collects the output of partitions (see {@link InputFilesPartitioner}) into
+ * a single output directory.
+ * <p>
+ * Every output file is moved into the target output directory, expecting that no two
+ * partitions produce the same file. The only exception is a set of <em>shared</em> files
+ * (i.e. files produced identically by every partition, e.g. a classification scheme),
+ * which are collected only once (from the first partition that has produced them).
+ * <p>
+ * This tasklet is safe to re-execute: already collected files are skipped.
+ */
+public class CollectPartitionOutputTasklet implements Tasklet
+{
+    private static final Logger logger = LoggerFactory.getLogger(CollectPartitionOutputTasklet.class);
+
+    /**
+     * A builder for tasklets of enclosing class ({@link CollectPartitionOutputTasklet}).
+     */
+    public static class Builder
+    {
+        private Path partitionsDir;
+
+        private Path outputDir;
+
+        private Set<String> sharedNames = Collections.emptySet();
+
+        private Builder() {}
+
+        /**
+         * Set the directory under which partition directories are created
+         */
+        public Builder partitionsDirectory(Path dir)
+        {
+            Assert.notNull(dir, "Expected a non-null directory");
+            Assert.isTrue(dir.isAbsolute(), "Expected an absolute path");
+            this.partitionsDir = dir;
+            return this;
+        }
+
+        /**
+         * Set the (target) output directory
+         */
+        public Builder outputDirectory(Path dir)
+        {
+            Assert.notNull(dir, "Expected a non-null directory");
+            Assert.isTrue(dir.isAbsolute(), "Expected an absolute path");
+            this.outputDir = dir;
+            return this;
+        }
+
+        /**
+         * Set the names of shared files, i.e files that every partition produces identically
+         */
+        public Builder shared(String ...names)
+        {
+            this.sharedNames = new HashSet<>(Arrays.asList(names));
+            return this;
+        }
+
+        public CollectPartitionOutputTasklet build()
+        {
+            Assert.state(partitionsDir != null, "The directory for partitions must be specified");
+            Assert.state(outputDir != null, "The output directory must be specified");
+            return new CollectPartitionOutputTasklet(partitionsDir, outputDir, sharedNames);
+        }
+    }
+
+    public static Builder builder()
+    {
+        return new Builder();
+    }
+
+    private final Path partitionsDir;
+
+    private final Path outputDir;
+
+    private final Set<String> sharedNames;
+
+    private CollectPartitionOutputTasklet(Path partitionsDir, Path outputDir, Set<String> sharedNames)
+    {
+        this.partitionsDir = partitionsDir;
+        this.outputDir = outputDir;
+        this.sharedNames = sharedNames;
+    }
+
+    /**
+     * List the output directories of partitions, ordered by partition index
+     *
+     * @param partitionsDir The directory under which partition directories are created
+     */
+    static List<Path> listPartitionOutputDirs(Path partitionsDir) throws IOException
+    {
+        final String prefix = InputFilesPartitioner.PARTITION_NAME_PREFIX;
+        try (Stream<Path> paths = Files.list(partitionsDir)) {
+            return paths
+                .filter(p -> Files.isDirectory(p) && p.getFileName().toString().startsWith(prefix))
+                .sorted((p1, p2) -> Integer.compare(
+                    Integer.parseInt(p1.getFileName().toString().substring(prefix.length())),
+                    Integer.parseInt(p2.getFileName().toString().substring(prefix.length()))))
+                .map(p -> p.resolve(InputFilesPartitioner.OUTPUT_DIR_NAME))
+                .filter(Files::isDirectory)
+                .collect(Collectors.toList());
+        }
+    }
+
+    @Override
+    public RepeatStatus execute(StepContribution contribution, ChunkContext chunkContext)
+        throws Exception
+    {
+        Files.createDirectories(outputDir);
+
+        for (Path partitionOutputDir: listPartitionOutputDirs(partitionsDir)) {
+            List<Path> files = null;
+            try (Stream<Path> paths = Files.list(partitionOutputDir)) {
+                files = paths.filter(Files::isRegularFile).collect(Collectors.toList());
+            }
+            for (Path file: files) {
+                final String name = file.getFileName().toString();
+                final Path target = outputDir.resolve(name);
+                if (sharedNames.contains(name)) {
+                    if (!Files.exists(target)) {
+                        Files.move(file, target);
+                        logger.debug("Collected shared output {} from {}", name, partitionOutputDir);
+                    }
+                } else {
+                    Assert.state(!Files.exists(target), String.format(
+                        "The output file [%s] is produced by more than one partitions", name));
+                    Files.move(file, target);
+                    logger.debug("Collected output {} from {}", name, partitionOutputDir);
+                }
+            }
+        }
+
+        return RepeatStatus.FINISHED;
+    }
+}
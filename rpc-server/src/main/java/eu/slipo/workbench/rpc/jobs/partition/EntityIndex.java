@@ -0,0 +1,325 @@
+package eu.slipo.workbench.rpc.jobs.partition;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.springframework.util.Assert;
+
+/**
+ * An index of the entities described by a file of N-Triples.
+ * <p>
+ * Resources (i.e. subjects of triples) are grouped into entities: a resource referenced by
+ * exactly one other resource belongs to the entity of its referrer (e.g. the geometry of a POI),
+ * while a resource referenced by several resources (e.g. a category) is <em>shared</em>. Every
+ * entity is identified by its root resource (i.e. a resource not referenced by any other resource).
+ * The location of an entity is the envelope of its WKT literals (if any).
+ * <p>
+ * An index is built in 2 passes over the input, and keeps a few integers per resource in memory.
+ * Given an assignment of entities to partitions, the input is split in a single (streaming) pass
+ * (see {@link EntityIndex#split(Path[], IntFunction)}).
+ */
+public class EntityIndex
+{
+    /**
+     * The root of a resource which is shared among entities
+     */
+    public static final int SHARED = -1;
+
+    private static final int UNRESOLVED = -2;
+
+    private static final Pattern WKT_PATTERN = Pattern.compile(
+        "^\\s*(<[^>]*>\\s*)?(MULTI)?(POINT|LINESTRING|POLYGON|GEOMETRYCOLLECTION)", Pattern.CASE_INSENSITIVE);
+
+    private static final Pattern COORDINATES_PATTERN = Pattern.compile(
+        "(-?\\d+(?:\\.\\d+)?(?:[eE][-+]?\\d+)?)\\s+(-?\\d+(?:\\.\\d+)?(?:[eE][-+]?\\d+)?)");
+
+    private final Path path;
+
+    /**
+     * Map every resource (appearing as a subject) to a sequential id
+     */
+    private final Map<String, Integer> ids;
+
+    /**
+     * The root of each resource, or {@link EntityIndex#SHARED}
+     */
+    private final int[] roots;
+
+    /**
+     * The envelope (minX, minY, maxX, maxY) of each entity (indexed by its root)
+     */
+    private final double[][] envelopes;
+
+    private EntityIndex(Path path, Map<String, Integer> ids, int[] roots, double[][] envelopes)
+    {
+        this.path = path;
+        this.ids = ids;
+        this.roots = roots;
+        this.envelopes = envelopes;
+    }
+
+    /**
+     * Build an index for a file of N-Triples
+     *
+     * @param path The input file
+     * @throws IOException if the input cannot be read
+     * @throws IllegalArgumentException if the input contains a malformed line
+     */
+    public static EntityIndex build(Path path) throws IOException
+    {
+        Assert.notNull(path, "Expected a non-null path");
+
+        final Map<String, Integer> ids = new HashMap<>();
+        final List<double[]> resourceEnvelopes = new ArrayList<>();
+
+        // Pass 1: Identify resources (as subjects), and compute the envelope of their geometries
+
+        forEachTriple(path, triple -> {
+            Integer id = ids.get(triple.subject());
+            if (id == null) {
+                id = ids.size();
+                ids.put(triple.subject(), id);
+                resourceEnvelopes.add(null);
+            }
+            final String value = triple.literalValue();
+            if (value != null && isGeometry(value, triple.literalDatatype())) {
+                double[] e = envelopeOf(value);
+                if (e != null)
+                    resourceEnvelopes.set(id, merge(resourceEnvelopes.get(id), e));
+            }
+        });
+
+        final int n = ids.size();
+
+        // Pass 2: Find the referrers of each resource
+
+        final int[] referrer = new int[n];
+        final int[] numberOfReferrers = new int[n];
+        Arrays.fill(referrer, -1);
+
+        forEachTriple(path, triple -> {
+            if (!triple.hasResourceObject() || triple.predicate().equals(NTriples.RDF_TYPE))
+                return;
+            final Integer o = ids.get(triple.object());
+            final int s = ids.get(triple.subject());
+            if (o == null || o == s || referrer[o] == s)
+                return;
+            referrer[o] = s;
+            numberOfReferrers[o]++;
+        });
+
+        // Resolve the root (i.e. the entity) of each resource
+
+        final int[] roots = new int[n];
+        Arrays.fill(roots, UNRESOLVED);
+        final List<Integer> chain = new ArrayList<>();
+        for (int i = 0; i < n; ++i) {
+            chain.clear();
+            int r = i;
+            while (true) {
+                if (roots[r] != UNRESOLVED) {
+                    r = roots[r];
+                    break;
+                } else if (numberOfReferrers[r] > 1) {
+                    roots[r] = SHARED;
+                    r = SHARED;
+                    break;
+                } else if (numberOfReferrers[r] == 0 || chain.size() > n) {
+                    // Either a top-level resource, or a cycle of references
+                    roots[r] = r;
+                    break;
+                }
+                chain.add(r);
+                r = referrer[r];
+            }
+            for (int j: chain)
+                roots[j] = r;
+        }
+
+        // Compute the envelope of each entity
+
+        final double[][] envelopes = new double[n][];
+        for (int i = 0; i < n; ++i) {
+            final int r = roots[i];
+            final double[] e = resourceEnvelopes.get(i);
+            if (r >= 0 && e != null)
+                envelopes[r] = merge(envelopes[r], e);
+        }
+
+        return new EntityIndex(path, ids, roots, envelopes);
+    }
+
+    public Path path()
+    {
+        return path;
+    }
+
+    /**
+     * Get the number of resources
+     */
+    public int size()
+    {
+        return roots.length;
+    }
+
+    /**
+     * Get the id of a resource
+     *
+     * @param resource A resource (in N-Triples form)
+     * @return the id, or <tt>null</tt> if the resource is never a subject in our input
+     */
+    public Integer idOf(String resource)
+    {
+        return ids.get(resource);
+    }
+
+    /**
+     * Get the root (i.e. the entity) of a resource
+     *
+     * @param id The id of a resource
+     * @return the id of the root resource, or {@link EntityIndex#SHARED}
+     */
+    public int rootOf(int id)
+    {
+        return roots[id];
+    }
+
+    public boolean isRoot(int id)
+    {
+        return roots[id] == id;
+    }
+
+    /**
+     * List the shared resources, i.e. the resources that are copied into every partition
+     * when our input is split (see {@link EntityIndex#split(Path[], IntFunction)})
+     */
+    public List<String> sharedResources()
+    {
+        final List<String> result = new ArrayList<>();
+        for (Map.Entry<String, Integer> e: ids.entrySet()) {
+            if (roots[e.getValue()] == SHARED)
+                result.add(e.getKey());
+        }
+        return result;
+    }
+
+    /**
+     * Get the envelope of an entity
+     *
+     * @param root The id of the root resource
+     * @return an array of (minX, minY, maxX, maxY), or <tt>null</tt> if the entity has no geometry
+     */
+    public double[] envelopeOf(int root)
+    {
+        return envelopes[root];
+    }
+
+    /**
+     * Split our input among a number of partitions (in a single pass). A shared resource is
+     * copied into every partition.
+     *
+     * @param outputs The output file for each partition
+     * @param partitionsOfEntity A function that maps an entity (i.e. the id of its root) to
+     *   the partitions it is assigned to
+     * @throws IOException
+     */
+    public void split(Path[] outputs, IntFunction<int[]> partitionsOfEntity) throws IOException
+    {
+        final BufferedWriter[] writers = new BufferedWriter[outputs.length];
+        try {
+            for (int p = 0; p < outputs.length; ++p) {
+                writers[p] = Files.newBufferedWriter(outputs[p], StandardCharsets.UTF_8);
+            }
+            try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+                String line = null;
+                while ((line = reader.readLine()) != null) {
+                    final NTriples.Triple triple = NTriples.parse(line);
+                    if (triple == null)
+                        continue;
+                    final int r = roots[ids.get(triple.subject())];
+                    if (r == SHARED) {
+                        for (BufferedWriter writer: writers)
+                            writeLine(writer, line);
+                    } else {
+                        for (int p: partitionsOfEntity.apply(r)) {
+                            if (p >= 0)
+                                writeLine(writers[p], line);
+                        }
+                    }
+                }
+            }
+        } finally {
+            for (BufferedWriter writer: writers) {
+                if (writer != null)
+                    writer.close();
+            }
+        }
+    }
+
+    static void writeLine(BufferedWriter writer, String line) throws IOException
+    {
+        writer.write(line);
+        writer.newLine();
+    }
+
+    static void forEachTriple(Path path, Consumer<NTriples.Triple> consumer) throws IOException
+    {
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line = null;
+            while ((line = reader.readLine()) != null) {
+                final NTriples.Triple triple = NTriples.parse(line);
+                if (triple != null)
+                    consumer.accept(triple);
+            }
+        }
+    }
+
+    private static boolean isGeometry(String value, String datatype)
+    {
+        return (datatype != null && datatype.contains("wktLiteral")) || WKT_PATTERN.matcher(value).find();
+    }
+
+    /**
+     * Compute the envelope of a WKT geometry
+     *
+     * @param wkt A WKT literal (optionally prefixed by the IRI of its coordinate system)
+     * @return an array of (minX, minY, maxX, maxY), or <tt>null</tt> if no coordinates are found
+     */
+    public static double[] envelopeOf(String wkt)
+    {
+        final String s = wkt.trim().startsWith("<")? wkt.substring(wkt.indexOf('>') + 1) : wkt;
+        final Matcher m = COORDINATES_PATTERN.matcher(s);
+
+        double[] e = null;
+        while (m.find()) {
+            final double x = Double.parseDouble(m.group(1));
+            final double y = Double.parseDouble(m.group(2));
+            e = merge(e, new double[] { x, y, x, y });
+        }
+        return e;
+    }
+
+    private static double[] merge(double[] e1, double[] e2)
+    {
+        if (e1 == null)
+            return e2.clone();
+        e1[0] = Math.min(e1[0], e2[0]);
+        e1[1] = Math.min(e1[1], e2[1]);
+        e1[2] = Math.max(e1[2], e2[2]);
+        e1[3] = Math.max(e1[3], e2[3]);
+        return e1;
+    }
+}
@@ -0,0 +1,164 @@
+package eu.slipo.workbench.rpc.jobs.partition;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.partition.support.Partitioner;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.util.Assert;
+
+/**
+ * A partitioner that distributes a list of input files among a number of partitions, so
+ * that each partition receives (roughly) the same amount of input data.
+ * <p>
+ * Files are assigned in descending order of size, each to the least loaded partition. Every
+ * partition is given its own working directory (and an output directory under it), so that
+ * partitions can run independently.
+ */
+public class InputFilesPartitioner implements Partitioner
+{
+    private static final Logger logger = LoggerFactory.getLogger(InputFilesPartitioner.class);
+
+    /**
+     * The collection of keys used inside the execution context of a partition
+     */
+    public static class Keys
+    {
+        public static final String PARTITION_INDEX = "partitionIndex";
+
+        public static final String INPUT_FILES = "inputFiles";
+
+        public static final String WORK_DIR = "workDir";
+
+        public static final String OUTPUT_DIR = "outputDir";
+    }
+
+    /**
+     * The prefix for the name of a partition (also the name of its working directory)
+     */
+    public static final String PARTITION_NAME_PREFIX = "p";
+
+    /**
+     * The name of the output directory (under the working directory of a partition)
+     */
+    public static final String OUTPUT_DIR_NAME = "output";
+
+    private final Path inputDir;
+
+    private final List<String> inputNames;
+
+    private final Path partitionsDir;
+
+    private final int maxPartitions;
+
+    /**
+     * Create a partitioner
+     *
+     * @param inputDir The directory holding all input files
+     * @param inputNames The names of input files (relative to input directory)
+     * @param partitionsDir The directory under which partition directories are created
+     * @param maxPartitions The maximum number of partitions to create
+     */
+    public InputFilesPartitioner(Path inputDir, List<String> inputNames, Path partitionsDir, int maxPartitions)
+    {
+        Assert.notNull(inputDir, "An input directory is required");
+        Assert.notEmpty(inputNames, "A non-empty list of input names is expected");
+        Assert.notNull(partitionsDir, "A directory for partitions is required");
+        Assert.isTrue(maxPartitions > 0, "Expected a positive number of partitions");
+
+        this.inputDir = inputDir;
+        this.inputNames = new ArrayList<>(inputNames);
+        this.partitionsDir = partitionsDir;
+        this.maxPartitions = maxPartitions;
+    }
+
+    public static String partitionName(int partitionIndex)
+    {
+        return PARTITION_NAME_PREFIX + partitionIndex;
+    }
+
+    /**
+     * Assign input files to (at most) a given number of partitions.
+     *
+     * @param gridSize The number of partitions to create; it is further limited by the number
+     *   of input files and by our maximum number of partitions
+     * @return a list of partitions, each one represented as a list of input names
+     */
+    public List<List<String>> assign(int gridSize)
+    {
+        final int n = Math.min(Math.min(gridSize, maxPartitions), inputNames.size());
+        Assert.state(n > 0, "Expected a positive grid size");
+
+        final List<List<String>> partitions = IntStream.range(0, n)
+            .mapToObj(i -> new ArrayList<String>())
+            .collect(Collectors.toList());
+        final long[] load = new long[n];
+
+        List<String> names = inputNames.stream()
+            .sorted(Comparator.comparingLong(this::sizeOf).reversed().thenComparing(Comparator.naturalOrder()))
+            .collect(Collectors.toList());
+
+        for (String name: names) {
+            int k = 0;
+            for (int i = 1; i < n; ++i) {
+                if (load[i] < load[k])
+                    k = i;
+            }
+            partitions.get(k).add(name);
+            load[k] += sizeOf(name);
+        }
+
+        return partitions;
+    }
+
+    @Override
+    public Map<String, ExecutionContext> partition(int gridSize)
+    {
+        List<List<String>> partitions = assign(gridSize);
+
+        Map<String, ExecutionContext> result = new LinkedHashMap<>();
+        int partitionIndex = 0;
+        for (List<String> names: partitions) {
+            final String partitionName = partitionName(partitionIndex);
+            final Path workDir = partitionsDir.resolve(partitionName);
+            final Path outputDir = workDir.resolve(OUTPUT_DIR_NAME);
+            try {
+                Files.createDirectories(outputDir);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+
+            ExecutionContext context = new ExecutionContext();
+            context.putInt(Keys.PARTITION_INDEX, partitionIndex);
+            context.put(Keys.INPUT_FILES, new ArrayList<>(names));
+            context.putString(Keys.WORK_DIR, workDir.toString());
+            context.putString(Keys.OUTPUT_DIR, outputDir.toString());
+            result.put(partitionName, context);
+
+            logger.info("Assigned {} input file(s) to partition {}: {}", names.size(), partitionName, names);
+            partitionIndex++;
+        }
+
+        return result;
+    }
+
+    private long sizeOf(String name)
+    {
+        try {
+            return Files.size(inputDir.resolve(name));
+        } catch (IOException ex) {
+            return 0L;
+        }
+    }
+}
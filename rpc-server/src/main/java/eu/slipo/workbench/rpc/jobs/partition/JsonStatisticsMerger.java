@@ -0,0 +1,127 @@
+package eu.slipo.workbench.rpc.jobs.partition;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToDoubleFunction;
+import java.util.stream.DoubleStream;
+
+import org.springframework.util.Assert;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * A {@link MergePartitionOutputTasklet.Merger} for JSON files of statistics (e.g. the KPIs reported
+ * by a fusion), as produced by every partition.
+ * <p>
+ * Objects are merged member-wise. Integral numbers (i.e. counters) are summed, while non-integral
+ * numbers (e.g. percentages) are averaged over partitions. The average is weighted by a given
+ * weigher of partitions (e.g. the number of links of a partition, for a ratio over links), so that
+ * it equals the ratio over the entire input; with no weigher, partitions are weighed equally (and the
+ * average is only an approximation of the actual ratio). For any other value (e.g. a label), the
+ * value reported by the first partition is kept.
+ */
+public class JsonStatisticsMerger implements MergePartitionOutputTasklet.Merger
+{
+    private final ObjectMapper objectMapper;
+
+    private final ToDoubleFunction<Path> weigher;
+
+    /**
+     * @param objectMapper
+     * @param weigher A function that weighs a partition, given its file of statistics
+     */
+    public JsonStatisticsMerger(ObjectMapper objectMapper, ToDoubleFunction<Path> weigher)
+    {
+        Assert.notNull(objectMapper, "Expected a non-null object mapper");
+        Assert.notNull(weigher, "Expected a non-null weigher");
+        this.objectMapper = objectMapper;
+        this.weigher = weigher;
+    }
+
+    public JsonStatisticsMerger(ObjectMapper objectMapper)
+    {
+        this(objectMapper, file -> 1.0);
+    }
+
+    public JsonStatisticsMerger()
+    {
+        this(new ObjectMapper());
+    }
+
+    @Override
+    public void merge(List<Path> files, Path target) throws IOException
+    {
+        final List<Path> nonEmptyFiles = new ArrayList<>();
+        for (Path file: files) {
+            if (Files.size(file) > 0)
+                nonEmptyFiles.add(file);
+        }
+
+        // Weigh partitions (if all weights are zero, fall back to equal weights)
+
+        final double[] weights = new double[nonEmptyFiles.size()];
+        try {
+            for (int i = 0; i < weights.length; i++) {
+                weights[i] = weigher.applyAsDouble(nonEmptyFiles.get(i));
+                Assert.state(weights[i] >= 0, "Expected a non-negative weight");
+            }
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+        if (DoubleStream.of(weights).sum() == 0)
+            Arrays.fill(weights, 1.0);
+
+        JsonNode result = null;
+        double w = 0;
+        for (int i = 0; i < weights.length; i++) {
+            JsonNode node = objectMapper.readTree(nonEmptyFiles.get(i).toFile());
+            result = result == null? node : merge(result, w, node, weights[i]);
+            w += weights[i];
+        }
+
+        objectMapper.writerWithDefaultPrettyPrinter()
+            .writeValue(target.toFile(), result == null? JsonNodeFactory.instance.objectNode() : result);
+    }
+
+    /**
+     * Merge a node into an accumulated result
+     *
+     * @param result The accumulated result (from previous partitions)
+     * @param w The total weight of partitions already merged into result
+     * @param node The node to merge
+     * @param weight The weight of the partition of the node
+     */
+    private static JsonNode merge(JsonNode result, double w, JsonNode node, double weight)
+    {
+        if (result.isObject() && node.isObject()) {
+            ObjectNode r = (ObjectNode) result;
+            Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                JsonNode existing = r.get(field.getKey());
+                r.set(field.getKey(),
+                    existing == null? field.getValue() : merge(existing, w, field.getValue(), weight));
+            }
+            return r;
+        } else if (result.isIntegralNumber() && node.isIntegralNumber()) {
+            return JsonNodeFactory.instance.numberNode(result.longValue() + node.longValue());
+        } else if (result.isNumber() && node.isNumber()) {
+            if (w + weight == 0)
+                return result;
+            return JsonNodeFactory.instance.numberNode(
+                (result.doubleValue() * w + node.doubleValue() * weight) / (w + weight));
+        } else {
+            return result;
+        }
+    }
+}
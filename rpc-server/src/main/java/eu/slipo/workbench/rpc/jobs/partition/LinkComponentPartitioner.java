@@ -0,0 +1,419 @@
+package eu.slipo.workbench.rpc.jobs.partition;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.function.IntUnaryOperator;
+import java.util.function.ToDoubleFunction;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.partition.support.Partitioner;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+/**
+ * A partitioner that splits the (N-Triples) input of a fusion job, i.e. a left dataset, a right
+ * dataset and a set of links between them, so that every partition can be fused independently.
+ * <p>
+ * The links form a (bipartite) graph over the entities of the left and right datasets (see
+ * {@link EntityIndex}). Connected components of this graph are the units of work: they are assigned
+ * to partitions in decreasing order of size (number of links), every time to the least loaded
+ * partition. Entities not linked to anything are spread evenly among partitions, so that they are
+ * still found (e.g. as remaining entities) in exactly one partition; shared resources are copied
+ * into every partition.
+ * <p>
+ * So, the output of a partition is disjoint from the output of any other partition, except for
+ * triples of shared resources. The shared resources (of both datasets) are listed in a file (named
+ * {@link #SHARED_RESOURCES_FILENAME}) under the directory for partitions, so that the merge of
+ * the output needs to drop duplicates only among those (see {@link SharedResourcesMerger}).
+ * <p>
+ * Every partition is given its own working directory holding an input directory (with left, right
+ * and links files named as the original ones) and an output directory.
+ */
+public class LinkComponentPartitioner implements Partitioner
+{
+    private static final Logger logger = LoggerFactory.getLogger(LinkComponentPartitioner.class);
+
+    /**
+     * The collection of keys used inside the execution context of a partition
+     */
+    public static class Keys
+    {
+        public static final String PARTITION_INDEX = "partitionIndex";
+
+        public static final String WORK_DIR = "workDir";
+
+        public static final String INPUT_DIR = "inputDir";
+
+        public static final String OUTPUT_DIR = "outputDir";
+    }
+
+    /**
+     * The name of the input directory (under the working directory of a partition)
+     */
+    public static final String INPUT_DIR_NAME = "input";
+
+    /**
+     * The name of the file (under the directory for partitions) listing the shared resources
+     */
+    public static final String SHARED_RESOURCES_FILENAME = "shared-resources.txt";
+
+    /**
+     * A builder for a {@link LinkComponentPartitioner}
+     */
+    public static class Builder
+    {
+        private Path leftPath;
+
+        private Path rightPath;
+
+        private Path linksPath;
+
+        private Path partitionsDir;
+
+        private int maxPartitions = 4;
+
+        private Builder() {}
+
+        private static Path checkPath(Path path)
+        {
+            Assert.notNull(path, "Expected a non-null path");
+            Assert.isTrue(path.isAbsolute(), "Expected an absolute path");
+            return path;
+        }
+
+        /**
+         * Set the left input (a file of N-Triples)
+         */
+        public Builder left(Path path)
+        {
+            this.leftPath = checkPath(path);
+            return this;
+        }
+
+        /**
+         * Set the right input (a file of N-Triples)
+         */
+        public Builder right(Path path)
+        {
+            this.rightPath = checkPath(path);
+            return this;
+        }
+
+        /**
+         * Set the links (a file of N-Triples, each linking a left resource to a right one)
+         */
+        public Builder links(Path path)
+        {
+            this.linksPath = checkPath(path);
+            return this;
+        }
+
+        /**
+         * Set the directory under which partition directories are created
+         */
+        public Builder partitionsDirectory(Path dir)
+        {
+            this.partitionsDir = checkPath(dir);
+            return this;
+        }
+
+        /**
+         * Set the maximum number of partitions
+         */
+        public Builder maxPartitions(int maxPartitions)
+        {
+            Assert.isTrue(maxPartitions > 0, "Expected a positive number of partitions");
+            this.maxPartitions = maxPartitions;
+            return this;
+        }
+
+        public LinkComponentPartitioner build()
+        {
+            Assert.state(leftPath != null, "The left input must be specified");
+            Assert.state(rightPath != null, "The right input must be specified");
+            Assert.state(linksPath != null, "The links must be specified");
+            Assert.state(partitionsDir != null, "The directory for partitions must be specified");
+            return new LinkComponentPartitioner(leftPath, rightPath, linksPath, partitionsDir, maxPartitions);
+        }
+    }
+
+    public static Builder builder()
+    {
+        return new Builder();
+    }
+
+    /**
+     * A (growable) union-find structure over integer nodes
+     */
+    private static class Components
+    {
+        private int[] parent;
+
+        private int[] size;
+
+        Components(int capacity)
+        {
+            parent = new int[Math.max(capacity, 16)];
+            size = new int[parent.length];
+            for (int i = 0; i < parent.length; ++i) {
+                parent[i] = i;
+                size[i] = 1;
+            }
+        }
+
+        void ensureCapacity(int n)
+        {
+            if (n <= parent.length)
+                return;
+            final int k = parent.length;
+            parent = Arrays.copyOf(parent, Math.max(n, 2 * k));
+            size = Arrays.copyOf(size, parent.length);
+            for (int i = k; i < parent.length; ++i) {
+                parent[i] = i;
+                size[i] = 1;
+            }
+        }
+
+        int find(int x)
+        {
+            while (parent[x] != x) {
+                parent[x] = parent[parent[x]];
+                x = parent[x];
+            }
+            return x;
+        }
+
+        void union(int x, int y)
+        {
+            x = find(x);
+            y = find(y);
+            if (x == y)
+                return;
+            if (size[x] < size[y]) {
+                int t = x; x = y; y = t;
+            }
+            parent[y] = x;
+            size[x] += size[y];
+        }
+    }
+
+    private final Path leftPath;
+
+    private final Path rightPath;
+
+    private final Path linksPath;
+
+    private final Path partitionsDir;
+
+    private final int maxPartitions;
+
+    private LinkComponentPartitioner(
+        Path leftPath, Path rightPath, Path linksPath, Path partitionsDir, int maxPartitions)
+    {
+        this.leftPath = leftPath;
+        this.rightPath = rightPath;
+        this.linksPath = linksPath;
+        this.partitionsDir = partitionsDir;
+        this.maxPartitions = maxPartitions;
+    }
+
+    public static String partitionName(int partitionIndex)
+    {
+        return InputFilesPartitioner.partitionName(partitionIndex);
+    }
+
+    /**
+     * Get a function that weighs a partition by its number of links, given a file of the
+     * partition's output (e.g. to be used by a {@link JsonStatisticsMerger}).
+     *
+     * @param linksFileName The name of the links file (i.e. the name of the original links file)
+     */
+    public static ToDoubleFunction<Path> linksWeigher(String linksFileName)
+    {
+        Assert.isTrue(!StringUtils.isEmpty(linksFileName), "Expected a non-empty name");
+        return outputFile -> {
+            final Path linksPath = outputFile.getParent()
+                .resolveSibling(INPUT_DIR_NAME).resolve(linksFileName);
+            try (Stream<String> lines = Files.lines(linksPath, StandardCharsets.UTF_8)) {
+                return lines.filter(line -> !line.isEmpty()).count();
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        };
+    }
+
+    @Override
+    public Map<String, ExecutionContext> partition(int gridSize)
+    {
+        try {
+            return split(Math.max(Math.min(gridSize, maxPartitions), 1));
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private Map<String, ExecutionContext> split(final int maxNumberOfPartitions) throws IOException
+    {
+        final EntityIndex left = EntityIndex.build(leftPath);
+        final EntityIndex right = EntityIndex.build(rightPath);
+
+        // Record the shared resources (the only ones whose triples may be output by several partitions)
+
+        Files.createDirectories(partitionsDir);
+        try (BufferedWriter writer = Files.newBufferedWriter(
+                partitionsDir.resolve(SHARED_RESOURCES_FILENAME), StandardCharsets.UTF_8))
+        {
+            for (String resource: left.sharedResources())
+                EntityIndex.writeLine(writer, resource);
+            for (String resource: right.sharedResources())
+                EntityIndex.writeLine(writer, resource);
+        }
+
+        // Build the components of the link graph. Nodes are entities of the left dataset (numbered
+        // as their roots), entities of the right dataset (offset by the size of left dataset), and
+        // placeholders for linked resources not described by any dataset.
+
+        final int offset = left.size();
+        final int base = left.size() + right.size();
+        final Map<String, Integer> leftPlaceholders = new HashMap<>();
+        final Map<String, Integer> rightPlaceholders = new HashMap<>();
+        final Components components = new Components(base);
+        final List<Integer> linkedNodes = new ArrayList<>();
+
+        EntityIndex.forEachTriple(linksPath, triple -> {
+            final int x = nodeOf(triple.subject(), left, 0,
+                leftPlaceholders, base + leftPlaceholders.size() + rightPlaceholders.size());
+            final int y = nodeOf(triple.object(), right, offset,
+                rightPlaceholders, base + leftPlaceholders.size() + rightPlaceholders.size());
+            components.ensureCapacity(base + leftPlaceholders.size() + rightPlaceholders.size());
+            components.union(x, y);
+            linkedNodes.add(x);
+        });
+
+        // Compute the size (number of links) of each component
+
+        final Map<Integer, Integer> componentSize = new HashMap<>();
+        for (int x: linkedNodes)
+            componentSize.merge(components.find(x), 1, Integer::sum);
+
+        final int numberOfPartitions = Math.max(1, Math.min(maxNumberOfPartitions, componentSize.size()));
+
+        // Assign components to partitions (largest first, each to the least loaded partition)
+
+        final Map<Integer, Integer> partitionOfComponent = new HashMap<>();
+        final long[] load = new long[numberOfPartitions];
+        final PriorityQueue<Integer> queue = new PriorityQueue<>(numberOfPartitions,
+            (p1, p2) -> load[p1] != load[p2]? Long.compare(load[p1], load[p2]) : Integer.compare(p1, p2));
+        for (int p = 0; p < numberOfPartitions; ++p)
+            queue.add(p);
+
+        componentSize.entrySet().stream()
+            .sorted((e1, e2) -> Integer.compare(e2.getValue(), e1.getValue()))
+            .forEachOrdered(e -> {
+                final int p = queue.poll();
+                partitionOfComponent.put(e.getKey(), p);
+                load[p] += e.getValue();
+                queue.add(p);
+            });
+
+        logger.info("Assigned {} components ({} links) to {} partitions: loads are {}",
+            componentSize.size(), linkedNodes.size(), numberOfPartitions, Arrays.toString(load));
+
+        // Create the partition directories
+
+        final Map<String, ExecutionContext> result = new LinkedHashMap<>();
+        final Path[] inputDirs = new Path[numberOfPartitions];
+        for (int p = 0; p < numberOfPartitions; ++p) {
+            final String partitionName = partitionName(p);
+            final Path workDir = partitionsDir.resolve(partitionName);
+            final Path inputDir = workDir.resolve(INPUT_DIR_NAME);
+            final Path outputDir = workDir.resolve(InputFilesPartitioner.OUTPUT_DIR_NAME);
+            Files.createDirectories(inputDir);
+            Files.createDirectories(outputDir);
+            inputDirs[p] = inputDir;
+
+            ExecutionContext context = new ExecutionContext();
+            context.putInt(Keys.PARTITION_INDEX, p);
+            context.putString(Keys.WORK_DIR, workDir.toString());
+            context.putString(Keys.INPUT_DIR, inputDir.toString());
+            context.putString(Keys.OUTPUT_DIR, outputDir.toString());
+            result.put(partitionName, context);
+        }
+
+        // Split input among partitions (an entity without links is assigned by its number)
+
+        final IntUnaryOperator partitionOfNode = x -> {
+            final Integer p = partitionOfComponent.get(components.find(x));
+            return p != null? p : (x % numberOfPartitions);
+        };
+
+        left.split(resolve(inputDirs, leftPath),
+            r -> new int[] { partitionOfNode.applyAsInt(r) });
+        right.split(resolve(inputDirs, rightPath),
+            r -> new int[] { partitionOfNode.applyAsInt(offset + r) });
+
+        final BufferedWriter[] writers = new BufferedWriter[numberOfPartitions];
+        try {
+            final Path[] outputs = resolve(inputDirs, linksPath);
+            for (int p = 0; p < numberOfPartitions; ++p)
+                writers[p] = Files.newBufferedWriter(outputs[p], StandardCharsets.UTF_8);
+            try (BufferedReader reader = Files.newBufferedReader(linksPath, StandardCharsets.UTF_8)) {
+                String line = null;
+                int i = 0;
+                while ((line = reader.readLine()) != null) {
+                    if (NTriples.parse(line) == null)
+                        continue;
+                    final int x = linkedNodes.get(i++);
+                    EntityIndex.writeLine(writers[partitionOfComponent.get(components.find(x))], line);
+                }
+            }
+        } finally {
+            for (BufferedWriter writer: writers) {
+                if (writer != null)
+                    writer.close();
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Map a linked resource to a node of the link graph
+     *
+     * @param resource The linked resource
+     * @param index The index of the dataset the resource is expected to belong to
+     * @param offset The offset of the nodes of this dataset
+     * @param placeholders The placeholder nodes for resources not described by this dataset
+     * @param nextPlaceholder The node for a new placeholder
+     */
+    private static int nodeOf(
+        String resource, EntityIndex index, int offset, Map<String, Integer> placeholders, int nextPlaceholder)
+    {
+        final Integer id = index.idOf(resource);
+        if (id != null && index.rootOf(id) != EntityIndex.SHARED)
+            return offset + index.rootOf(id);
+
+        return placeholders.computeIfAbsent(resource, k -> nextPlaceholder);
+    }
+
+    private static Path[] resolve(Path[] dirs, Path path)
+    {
+        final String fileName = path.getFileName().toString();
+        return Arrays.stream(dirs).map(dir -> dir.resolve(fileName)).toArray(Path[]::new);
+    }
+}
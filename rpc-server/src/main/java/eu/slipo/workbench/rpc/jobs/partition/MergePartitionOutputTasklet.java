@@ -0,0 +1,365 @@
+package eu.slipo.workbench.rpc.jobs.partition;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+import eu.slipo.workbench.common.service.FileMaterializer;
+
+/**
+ * A tasklet that merges the (line-oriented, e.g. N-Triples) output of partitions into
+ * a single output directory.
+ * <p>
+ * Unlike {@link CollectPartitionOutputTasklet}, every partition is expected to produce the same
+ * set of files (e.g. the accepted and the to-be-reviewed links of an interlinking). By default,
+ * files of the same name are merged into a sorted file of distinct lines, so that a line produced by
+ * more than one partitions (e.g. a link found in overlapping blocks) appears only once. This is an
+ * external sort, so the memory needed is bounded regardless of the size of the output.
+ * <p>
+ * Output known to be disjoint (or disjoint except for a known set of resources) should be given
+ * a cheaper {@link Merger} (e.g. a {@link #concatenate(FileMaterializer) concatenation} or a {@link SharedResourcesMerger}). A file
+ * that is not line-oriented (e.g. a JSON file of statistics) may also be given its own merger.
+ * <p>
+ * This tasklet is safe to re-execute: a merged file is written to a temporary file, and then
+ * replaces the target file.
+ */
+public class MergePartitionOutputTasklet implements Tasklet
+{
+    private static final Logger logger = LoggerFactory.getLogger(MergePartitionOutputTasklet.class);
+
+    /**
+     * Merge a list of files (of the same name) produced by partitions
+     */
+    @FunctionalInterface
+    public interface Merger
+    {
+        /**
+         * Merge files into a target file
+         *
+         * @param files The files to merge (in order of partition index)
+         * @param target The target file
+         * @throws IOException
+         */
+        void merge(List<Path> files, Path target) throws IOException;
+    }
+
+    /**
+     * The default maximum size (in characters) of a chunk of lines sorted in memory
+     */
+    public static final long DEFAULT_MAX_CHUNK_SIZE = 16L * 1024 * 1024;
+
+    /**
+     * The default merger: sort lines, skipping duplicates (and empty lines)
+     *
+     * @see MergePartitionOutputTasklet#distinctLines(long)
+     */
+    public static final Merger DISTINCT_LINES = distinctLines(DEFAULT_MAX_CHUNK_SIZE);
+
+    private static final byte[] NEWLINE = new byte[] { '\n' };
+
+    /**
+     * Get a merger that sorts lines, skipping duplicates (and empty lines).
+     * <p>
+     * Lines are read in chunks of bounded size; every chunk is sorted in memory and (unless
+     * it holds the entire input) is spilled into a temporary file, and finally the sorted chunks
+     * are merged into the target file.
+     *
+     * @param maxChunkSize The maximum size (in characters) of a chunk of lines kept in memory
+     */
+    public static Merger distinctLines(long maxChunkSize)
+    {
+        Assert.isTrue(maxChunkSize > 0, "Expected a positive chunk size");
+        return (files, target) -> mergeDistinctLines(files, target, maxChunkSize);
+    }
+
+    /**
+     * Get a merger that simply concatenates files (for partitions known to produce disjoint output)
+     *
+     * @param materializer The service to append files with
+     */
+    public static Merger concatenate(FileMaterializer materializer)
+    {
+        Assert.notNull(materializer, "Expected a non-null materializer");
+        return (files, target) -> concatenate(materializer, files, target);
+    }
+
+    /**
+     * A builder for tasklets of enclosing class ({@link MergePartitionOutputTasklet}).
+     */
+    public static class Builder
+    {
+        private Path partitionsDir;
+
+        private Path outputDir;
+
+        private Set<String> expectedNames = Collections.emptySet();
+
+        private Map<String, Merger> mergers = new HashMap<>();
+
+        private Builder() {}
+
+        /**
+         * Set the directory under which partition directories are created
+         */
+        public Builder partitionsDirectory(Path dir)
+        {
+            Assert.notNull(dir, "Expected a non-null directory");
+            Assert.isTrue(dir.isAbsolute(), "Expected an absolute path");
+            this.partitionsDir = dir;
+            return this;
+        }
+
+        /**
+         * Set the (target) output directory
+         */
+        public Builder outputDirectory(Path dir)
+        {
+            Assert.notNull(dir, "Expected a non-null directory");
+            Assert.isTrue(dir.isAbsolute(), "Expected an absolute path");
+            this.outputDir = dir;
+            return this;
+        }
+
+        /**
+         * Set the names of expected output files. An expected file is always created in the
+         * output directory, even if no partition has produced it (e.g. when no partitions exist).
+         */
+        public Builder expected(String ...names)
+        {
+            this.expectedNames = new HashSet<>(Arrays.asList(names));
+            return this;
+        }
+
+        /**
+         * Set a merger for output files of a given name (instead of the default one, i.e.
+         * {@link MergePartitionOutputTasklet#DISTINCT_LINES})
+         */
+        public Builder merger(String name, Merger merger)
+        {
+            Assert.isTrue(!StringUtils.isEmpty(name), "Expected a non-empty name");
+            Assert.notNull(merger, "Expected a non-null merger");
+            this.mergers.put(name, merger);
+            return this;
+        }
+
+        public MergePartitionOutputTasklet build()
+        {
+            Assert.state(partitionsDir != null, "The directory for partitions must be specified");
+            Assert.state(outputDir != null, "The output directory must be specified");
+            return new MergePartitionOutputTasklet(partitionsDir, outputDir, expectedNames, mergers);
+        }
+    }
+
+    public static Builder builder()
+    {
+        return new Builder();
+    }
+
+    private final Path partitionsDir;
+
+    private final Path outputDir;
+
+    private final Set<String> expectedNames;
+
+    private final Map<String, Merger> mergers;
+
+    private MergePartitionOutputTasklet(
+        Path partitionsDir, Path outputDir, Set<String> expectedNames, Map<String, Merger> mergers)
+    {
+        this.partitionsDir = partitionsDir;
+        this.outputDir = outputDir;
+        this.expectedNames = expectedNames;
+        this.mergers = new HashMap<>(mergers);
+    }
+
+    @Override
+    public RepeatStatus execute(StepContribution contribution, ChunkContext chunkContext)
+        throws Exception
+    {
+        Files.createDirectories(outputDir);
+
+        // Group output files by name (in order of partition index)
+
+        final Map<String, List<Path>> filesByName = new LinkedHashMap<>();
+        for (String name: expectedNames)
+            filesByName.put(name, new ArrayList<>());
+
+        if (Files.isDirectory(partitionsDir)) {
+            for (Path partitionOutputDir: CollectPartitionOutputTasklet.listPartitionOutputDirs(partitionsDir)) {
+                List<Path> files = null;
+                try (Stream<Path> paths = Files.list(partitionOutputDir)) {
+                    files = paths.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+                }
+                for (Path file: files) {
+                    filesByName.computeIfAbsent(file.getFileName().toString(), k -> new ArrayList<>())
+                        .add(file);
+                }
+            }
+        }
+
+        // Merge files of the same name
+
+        for (Map.Entry<String, List<Path>> p: filesByName.entrySet()) {
+            final String name = p.getKey();
+            final Path tempFile = Files.createTempFile(outputDir, null, null);
+            try {
+                mergers.getOrDefault(name, DISTINCT_LINES).merge(p.getValue(), tempFile);
+                Files.move(tempFile, outputDir.resolve(name), StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(tempFile);
+            }
+            logger.info("Merged {} from {} partitions", name, p.getValue().size());
+        }
+
+        return RepeatStatus.FINISHED;
+    }
+
+    private static void mergeDistinctLines(List<Path> files, Path target, long maxChunkSize)
+        throws IOException
+    {
+        final Path tempDir = Files.createTempDirectory(target.getParent(), "sort-");
+        try {
+            final List<Path> chunks = new ArrayList<>();
+            final List<String> lines = new ArrayList<>();
+            long size = 0;
+
+            for (Path file: files) {
+                try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                    String line = null;
+                    while ((line = reader.readLine()) != null) {
+                        if (line.isEmpty())
+                            continue;
+                        lines.add(line);
+                        size += line.length();
+                        if (size >= maxChunkSize) {
+                            chunks.add(writeSortedChunk(lines, Files.createTempFile(tempDir, null, null)));
+                            lines.clear();
+                            size = 0;
+                        }
+                    }
+                }
+            }
+
+            if (chunks.isEmpty()) {
+                // The entire input fits in a single chunk
+                writeSortedChunk(lines, target);
+            } else {
+                if (!lines.isEmpty())
+                    chunks.add(writeSortedChunk(lines, Files.createTempFile(tempDir, null, null)));
+                lines.clear();
+                mergeSortedChunks(chunks, target);
+            }
+        } finally {
+            try (Stream<Path> paths = Files.list(tempDir)) {
+                for (Path path: (Iterable<Path>) paths::iterator)
+                    Files.deleteIfExists(path);
+            }
+            Files.deleteIfExists(tempDir);
+        }
+    }
+
+    private static Path writeSortedChunk(List<String> lines, Path path) throws IOException
+    {
+        Collections.sort(lines);
+        try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            String previous = null;
+            for (String line: lines) {
+                if (line.equals(previous))
+                    continue;
+                writer.write(line);
+                writer.newLine();
+                previous = line;
+            }
+        }
+        return path;
+    }
+
+    /**
+     * Merge sorted chunks (each one without duplicates) into a sorted target without duplicates
+     */
+    private static void mergeSortedChunks(List<Path> chunks, Path target) throws IOException
+    {
+        final List<BufferedReader> readers = new ArrayList<>(chunks.size());
+        try (BufferedWriter writer = Files.newBufferedWriter(target, StandardCharsets.UTF_8)) {
+            // The head of each queue entry is the next line of a reader (paired by index)
+            final PriorityQueue<Map.Entry<String, Integer>> queue =
+                new PriorityQueue<>(chunks.size(), Map.Entry.comparingByKey());
+            for (Path chunk: chunks) {
+                BufferedReader reader = Files.newBufferedReader(chunk, StandardCharsets.UTF_8);
+                readers.add(reader);
+                String line = reader.readLine();
+                if (line != null)
+                    queue.add(new AbstractMap.SimpleImmutableEntry<>(line, readers.size() - 1));
+            }
+
+            String previous = null;
+            while (!queue.isEmpty()) {
+                final Map.Entry<String, Integer> head = queue.poll();
+                final String line = head.getKey();
+                if (!line.equals(previous)) {
+                    writer.write(line);
+                    writer.newLine();
+                    previous = line;
+                }
+                final String next = readers.get(head.getValue()).readLine();
+                if (next != null)
+                    queue.add(new AbstractMap.SimpleImmutableEntry<>(next, head.getValue()));
+            }
+        } finally {
+            for (BufferedReader reader: readers)
+                reader.close();
+        }
+    }
+
+    private static void concatenate(FileMaterializer materializer, List<Path> files, Path target)
+        throws IOException
+    {
+        Files.write(target, new byte[0]);
+        for (Path file: files) {
+            materializer.append(file, target);
+            if (!endsWithNewline(file))
+                Files.write(target, NEWLINE, StandardOpenOption.APPEND);
+        }
+    }
+
+    private static boolean endsWithNewline(Path file) throws IOException
+    {
+        try (SeekableByteChannel channel = Files.newByteChannel(file)) {
+            final long size = channel.size();
+            if (size == 0)
+                return true;
+            final ByteBuffer buffer = ByteBuffer.allocate(1);
+            channel.position(size - 1).read(buffer);
+            return buffer.get(0) == '\n';
+        }
+    }
+}
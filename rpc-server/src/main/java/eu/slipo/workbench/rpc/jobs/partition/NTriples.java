@@ -0,0 +1,170 @@
+package eu.slipo.workbench.rpc.jobs.partition;
+
+import org.springframework.util.Assert;
+
+/**
+ * Minimal support for reading N-Triples line by line.
+ * <p>
+ * This is not a full RDF parser: it only splits a line into its subject, predicate and object
+ * terms (as they appear in the line), which is all we need to route triples among partitions.
+ */
+public final class NTriples
+{
+    public static final String RDF_TYPE = "<http://www.w3.org/1999/02/22-rdf-syntax-ns#type>";
+
+    private NTriples() {}
+
+    /**
+     * A triple holding its terms in their (unparsed) N-Triples form
+     */
+    public static class Triple
+    {
+        private final String subject;
+
+        private final String predicate;
+
+        private final String object;
+
+        private Triple(String subject, String predicate, String object)
+        {
+            this.subject = subject;
+            this.predicate = predicate;
+            this.object = object;
+        }
+
+        public String subject()
+        {
+            return subject;
+        }
+
+        public String predicate()
+        {
+            return predicate;
+        }
+
+        public String object()
+        {
+            return object;
+        }
+
+        /**
+         * Test if the object is a resource (i.e. an IRI or a blank node), not a literal
+         */
+        public boolean hasResourceObject()
+        {
+            return isResource(object);
+        }
+
+        /**
+         * Get the lexical value of a literal object (without escapes resolved)
+         *
+         * @return the lexical value, or <tt>null</tt> if the object is not a literal
+         */
+        public String literalValue()
+        {
+            if (!object.startsWith("\""))
+                return null;
+            final int end = closingQuote(object);
+            return object.substring(1, end);
+        }
+
+        /**
+         * Get the datatype IRI (in its N-Triples form) of a literal object
+         *
+         * @return the datatype, or <tt>null</tt> if the object is not a typed literal
+         */
+        public String literalDatatype()
+        {
+            if (!object.startsWith("\""))
+                return null;
+            final int end = closingQuote(object);
+            final String suffix = object.substring(end + 1);
+            return suffix.startsWith("^^")? suffix.substring(2).trim() : null;
+        }
+
+        @Override
+        public String toString()
+        {
+            return subject + " " + predicate + " " + object + " .";
+        }
+    }
+
+    public static boolean isResource(String term)
+    {
+        return term.startsWith("<") || term.startsWith("_:");
+    }
+
+    /**
+     * Parse a line of N-Triples.
+     *
+     * @param line A line of N-Triples
+     * @return a triple, or <tt>null</tt> if the line is blank or a comment
+     * @throws IllegalArgumentException if the line is malformed
+     */
+    public static Triple parse(String line)
+    {
+        Assert.notNull(line, "Expected a non-null line");
+
+        final String s = line.trim();
+        if (s.isEmpty() || s.startsWith("#"))
+            return null;
+
+        int i = 0;
+
+        // Subject (an IRI or a blank node)
+
+        int end = endOfResource(s, i);
+        final String subject = s.substring(i, end);
+        i = skipWhitespace(s, end);
+
+        // Predicate (an IRI)
+
+        Assert.isTrue(i < s.length() && s.charAt(i) == '<', "Expected an IRI as predicate: " + line);
+        end = endOfResource(s, i);
+        final String predicate = s.substring(i, end);
+        i = skipWhitespace(s, end);
+
+        // Object (anything up to the terminating dot)
+
+        Assert.isTrue(s.endsWith("."), "Expected a line terminated by a dot: " + line);
+        final String object = s.substring(i, s.length() - 1).trim();
+        Assert.isTrue(!object.isEmpty(), "Expected a non-empty object: " + line);
+
+        return new Triple(subject, predicate, object);
+    }
+
+    private static int endOfResource(String s, int i)
+    {
+        if (s.charAt(i) == '<') {
+            final int end = s.indexOf('>', i);
+            Assert.isTrue(end > 0, "Expected a closing bracket for an IRI: " + s);
+            return end + 1;
+        } else if (s.startsWith("_:", i)) {
+            int end = i;
+            while (end < s.length() && !Character.isWhitespace(s.charAt(end)))
+                end++;
+            return end;
+        } else {
+            throw new IllegalArgumentException("Expected an IRI or a blank node: " + s);
+        }
+    }
+
+    private static int skipWhitespace(String s, int i)
+    {
+        while (i < s.length() && Character.isWhitespace(s.charAt(i)))
+            i++;
+        return i;
+    }
+
+    private static int closingQuote(String literal)
+    {
+        for (int i = 1; i < literal.length(); ++i) {
+            final char c = literal.charAt(i);
+            if (c == '\\')
+                i++;
+            else if (c == '"')
+                return i;
+        }
+        throw new IllegalArgumentException("Expected a closing quote for a literal: " + literal);
+    }
+}
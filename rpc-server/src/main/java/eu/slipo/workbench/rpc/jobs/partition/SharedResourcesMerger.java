@@ -0,0 +1,85 @@
+package eu.slipo.workbench.rpc.jobs.partition;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.springframework.util.Assert;
+
+/**
+ * A {@link MergePartitionOutputTasklet.Merger} for N-Triples output of partitions that is disjoint
+ * except for the triples of a (known) set of shared resources.
+ * <p>
+ * Files are concatenated (in order of partition index), and duplicates are dropped only among triples
+ * whose subject is a shared resource. So, the memory needed is proportional to the triples of shared
+ * resources (e.g. the categories), not to the entire output.
+ *
+ * @see LinkComponentPartitioner#SHARED_RESOURCES_FILENAME
+ */
+public class SharedResourcesMerger implements MergePartitionOutputTasklet.Merger
+{
+    private final Path sharedResourcesFile;
+
+    /**
+     * @param sharedResourcesFile A file listing the shared resources (one per line). This file is
+     *   read when merging; if missing, no resource is considered as shared.
+     */
+    public SharedResourcesMerger(Path sharedResourcesFile)
+    {
+        Assert.notNull(sharedResourcesFile, "Expected a non-null path");
+        this.sharedResourcesFile = sharedResourcesFile;
+    }
+
+    @Override
+    public void merge(List<Path> files, Path target) throws IOException
+    {
+        final Set<String> sharedResources = readSharedResources();
+        final Set<String> seen = new HashSet<>();
+
+        try (BufferedWriter writer = Files.newBufferedWriter(target, StandardCharsets.UTF_8)) {
+            for (Path file: files) {
+                try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                    String line = null;
+                    while ((line = reader.readLine()) != null) {
+                        if (line.isEmpty())
+                            continue;
+                        if (!sharedResources.isEmpty() && isShared(line, sharedResources) && !seen.add(line))
+                            continue;
+                        writer.write(line);
+                        writer.newLine();
+                    }
+                }
+            }
+        }
+    }
+
+    private Set<String> readSharedResources() throws IOException
+    {
+        if (!Files.exists(sharedResourcesFile))
+            return Collections.emptySet();
+
+        try (Stream<String> lines = Files.lines(sharedResourcesFile, StandardCharsets.UTF_8)) {
+            return lines.filter(line -> !line.isEmpty()).collect(Collectors.toSet());
+        }
+    }
+
+    private static boolean isShared(String line, Set<String> sharedResources)
+    {
+        NTriples.Triple triple = null;
+        try {
+            triple = NTriples.parse(line);
+        } catch (IllegalArgumentException ex) {
+            return false; // a malformed line is copied as is
+        }
+        return triple != null && sharedResources.contains(triple.subject());
+    }
+}
@@ -0,0 +1,401 @@
+package eu.slipo.workbench.rpc.jobs.partition;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.partition.support.Partitioner;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.util.Assert;
+
+/**
+ * A partitioner that splits the source and target (N-Triples) inputs of an interlinking job into
+ * spatial blocks, so that every block can be interlinked independently.
+ * <p>
+ * Triples are grouped into entities (see {@link EntityIndex}), and the location of an entity is
+ * the envelope of its WKT literals.
+ * <p>
+ * The space is divided into a grid of cells, and cells are packed (in Z-order, so that nearby cells
+ * stay together) into at most a given number of blocks of roughly equal load. A source entity is
+ * assigned to the block of the cell holding the center of its envelope, while a target entity is
+ * assigned to every block having a cell within a margin of its envelope. So, as long as the margin
+ * is not less than the distance threshold of the interlinking metric, every pair of entities that
+ * may be linked meets in exactly one block. Entities without a geometry meet in a separate block,
+ * and shared resources are copied into every block.
+ * <p>
+ * Every block is given its own working directory holding an input directory (with source and target
+ * files named as the original ones) and an output directory.
+ */
+public class SpatialBlockPartitioner implements Partitioner
+{
+    private static final Logger logger = LoggerFactory.getLogger(SpatialBlockPartitioner.class);
+
+    /**
+     * The collection of keys used inside the execution context of a partition
+     */
+    public static class Keys
+    {
+        public static final String PARTITION_INDEX = "partitionIndex";
+
+        public static final String WORK_DIR = "workDir";
+
+        public static final String INPUT_DIR = "inputDir";
+
+        public static final String OUTPUT_DIR = "outputDir";
+    }
+
+    /**
+     * The name of the input directory (under the working directory of a partition)
+     */
+    public static final String INPUT_DIR_NAME = "input";
+
+    /**
+     * A builder for a {@link SpatialBlockPartitioner}
+     */
+    public static class Builder
+    {
+        private Path sourcePath;
+
+        private Path targetPath;
+
+        private Path partitionsDir;
+
+        private double cellSize = 0.1;
+
+        private double margin = 0.0;
+
+        private int maxBlocks = 4;
+
+        private Builder() {}
+
+        /**
+         * Set the source input (a file of N-Triples)
+         */
+        public Builder source(Path path)
+        {
+            Assert.notNull(path, "Expected a non-null path");
+            Assert.isTrue(path.isAbsolute(), "Expected an absolute path");
+            this.sourcePath = path;
+            return this;
+        }
+
+        /**
+         * Set the target input (a file of N-Triples)
+         */
+        public Builder target(Path path)
+        {
+            Assert.notNull(path, "Expected a non-null path");
+            Assert.isTrue(path.isAbsolute(), "Expected an absolute path");
+            this.targetPath = path;
+            return this;
+        }
+
+        /**
+         * Set the directory under which partition directories are created
+         */
+        public Builder partitionsDirectory(Path dir)
+        {
+            Assert.notNull(dir, "Expected a non-null directory");
+            Assert.isTrue(dir.isAbsolute(), "Expected an absolute path");
+            this.partitionsDir = dir;
+            return this;
+        }
+
+        /**
+         * Set the size of a grid cell (in units of the coordinate system of input geometries)
+         */
+        public Builder cellSize(double cellSize)
+        {
+            Assert.isTrue(cellSize > 0, "Expected a positive cell size");
+            this.cellSize = cellSize;
+            return this;
+        }
+
+        /**
+         * Set the margin (in units of the coordinate system of input geometries) around a target
+         * entity. This should not be less than the distance threshold of the interlinking metric.
+         */
+        public Builder margin(double margin)
+        {
+            Assert.isTrue(margin >= 0, "Expected a non-negative margin");
+            this.margin = margin;
+            return this;
+        }
+
+        /**
+         * Set the maximum number of (spatial) blocks
+         */
+        public Builder maxBlocks(int maxBlocks)
+        {
+            Assert.isTrue(maxBlocks > 0, "Expected a positive number of blocks");
+            this.maxBlocks = maxBlocks;
+            return this;
+        }
+
+        public SpatialBlockPartitioner build()
+        {
+            Assert.state(sourcePath != null, "The source input must be specified");
+            Assert.state(targetPath != null, "The target input must be specified");
+            Assert.state(partitionsDir != null, "The directory for partitions must be specified");
+            Assert.state(!sourcePath.getFileName().equals(targetPath.getFileName()),
+                "The source and target inputs are expected to have different names");
+            return new SpatialBlockPartitioner(
+                sourcePath, targetPath, partitionsDir, cellSize, margin, maxBlocks);
+        }
+    }
+
+    public static Builder builder()
+    {
+        return new Builder();
+    }
+
+    private final Path sourcePath;
+
+    private final Path targetPath;
+
+    private final Path partitionsDir;
+
+    private final double cellSize;
+
+    private final double margin;
+
+    private final int maxBlocks;
+
+    private SpatialBlockPartitioner(
+        Path sourcePath, Path targetPath, Path partitionsDir, double cellSize, double margin, int maxBlocks)
+    {
+        this.sourcePath = sourcePath;
+        this.targetPath = targetPath;
+        this.partitionsDir = partitionsDir;
+        this.cellSize = cellSize;
+        this.margin = margin;
+        this.maxBlocks = maxBlocks;
+    }
+
+    public static String partitionName(int partitionIndex)
+    {
+        return InputFilesPartitioner.partitionName(partitionIndex);
+    }
+
+    @Override
+    public Map<String, ExecutionContext> partition(int gridSize)
+    {
+        try {
+            return split(Math.max(Math.min(gridSize, maxBlocks), 1));
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private Map<String, ExecutionContext> split(final int numberOfBlocks) throws IOException
+    {
+        final EntityIndex source = EntityIndex.build(sourcePath);
+        final EntityIndex target = EntityIndex.build(targetPath);
+
+        // Compute the load of grid cells, and pack cells into blocks
+
+        final Map<Long, Integer> cellLoad = new HashMap<>();
+        for (EntityIndex index: Arrays.asList(source, target)) {
+            for (int r = 0; r < index.size(); ++r) {
+                final double[] e = index.isRoot(r)? index.envelopeOf(r) : null;
+                if (e != null)
+                    cellLoad.merge(cellOf((e[0] + e[2]) / 2, (e[1] + e[3]) / 2), 1, Integer::sum);
+            }
+        }
+
+        final Map<Long, Integer> blockOfCell = packCells(cellLoad, numberOfBlocks);
+        final int noGeometryBlock = blockOfCell.isEmpty()? 0 :
+            (1 + blockOfCell.values().stream().mapToInt(Integer::intValue).max().getAsInt());
+        final int n = noGeometryBlock + 1;
+
+        // Assign entities to blocks
+
+        final int[] sourceCount = new int[n];
+        final int[] targetCount = new int[n];
+
+        final int[][] sourceBlocks = new int[source.size()][];
+        for (int r = 0; r < source.size(); ++r) {
+            if (!source.isRoot(r))
+                continue;
+            final double[] e = source.envelopeOf(r);
+            final int b = e == null? noGeometryBlock : blockOfCell.get(cellOf((e[0] + e[2]) / 2, (e[1] + e[3]) / 2));
+            sourceBlocks[r] = new int[] { b };
+            sourceCount[b]++;
+        }
+
+        final int[][] targetBlocks = new int[target.size()][];
+        for (int r = 0; r < target.size(); ++r) {
+            if (!target.isRoot(r))
+                continue;
+            final double[] e = target.envelopeOf(r);
+            final int[] blocks = e == null? new int[] { noGeometryBlock } : blocksWithinMargin(e, blockOfCell);
+            targetBlocks[r] = blocks;
+            for (int b: blocks)
+                targetCount[b]++;
+        }
+
+        // Keep only blocks with both source and target entities (others cannot produce links)
+
+        final int[] partitionOfBlock = new int[n];
+        int numberOfPartitions = 0;
+        for (int b = 0; b < n; ++b) {
+            partitionOfBlock[b] = (sourceCount[b] > 0 && targetCount[b] > 0)? numberOfPartitions++ : -1;
+        }
+
+        // Create the partition directories, and write the input of each partition
+
+        final Map<String, ExecutionContext> result = new LinkedHashMap<>();
+        final Path[] inputDirs = new Path[numberOfPartitions];
+        for (int b = 0; b < n; ++b) {
+            final int partitionIndex = partitionOfBlock[b];
+            if (partitionIndex < 0)
+                continue;
+            final String partitionName = partitionName(partitionIndex);
+            final Path workDir = partitionsDir.resolve(partitionName);
+            final Path inputDir = workDir.resolve(INPUT_DIR_NAME);
+            final Path outputDir = workDir.resolve(InputFilesPartitioner.OUTPUT_DIR_NAME);
+            Files.createDirectories(inputDir);
+            Files.createDirectories(outputDir);
+            inputDirs[partitionIndex] = inputDir;
+
+            ExecutionContext context = new ExecutionContext();
+            context.putInt(Keys.PARTITION_INDEX, partitionIndex);
+            context.putString(Keys.WORK_DIR, workDir.toString());
+            context.putString(Keys.INPUT_DIR, inputDir.toString());
+            context.putString(Keys.OUTPUT_DIR, outputDir.toString());
+            result.put(partitionName, context);
+
+            logger.info("Assigned {} source and {} target entities to block {}{}",
+                sourceCount[b], targetCount[b], partitionName, b == noGeometryBlock? " (no geometry)" : "");
+        }
+
+        split(source, sourceBlocks, partitionOfBlock, inputDirs);
+        split(target, targetBlocks, partitionOfBlock, inputDirs);
+
+        return result;
+    }
+
+    /**
+     * Split an input among the input directories of partitions
+     */
+    private static void split(EntityIndex index, int[][] blocksOfEntity, int[] partitionOfBlock, Path[] inputDirs)
+        throws IOException
+    {
+        final String fileName = index.path().getFileName().toString();
+        final Path[] outputs = Arrays.stream(inputDirs).map(dir -> dir.resolve(fileName)).toArray(Path[]::new);
+
+        index.split(outputs, r -> Arrays.stream(blocksOfEntity[r]).map(b -> partitionOfBlock[b]).toArray());
+    }
+
+    /**
+     * Pack grid cells into (at most) a given number of blocks of roughly equal load. Cells are
+     * visited in Z-order, so that a block consists of nearby cells.
+     *
+     * @param cellLoad The load of each (non-empty) cell
+     * @param numberOfBlocks The maximum number of blocks
+     * @return a map of cells to blocks
+     */
+    private static Map<Long, Integer> packCells(Map<Long, Integer> cellLoad, int numberOfBlocks)
+    {
+        final Map<Long, Integer> blockOfCell = new HashMap<>();
+        if (cellLoad.isEmpty())
+            return blockOfCell;
+
+        final int minX = cellLoad.keySet().stream().mapToInt(SpatialBlockPartitioner::cellX).min().getAsInt();
+        final int minY = cellLoad.keySet().stream().mapToInt(SpatialBlockPartitioner::cellY).min().getAsInt();
+
+        final TreeSet<long[]> cells = new TreeSet<>((a, b) -> Long.compareUnsigned(a[0], b[0]));
+        for (Long cell: cellLoad.keySet()) {
+            final long z = interleave(cellX(cell) - minX, cellY(cell) - minY);
+            cells.add(new long[] { z, cell });
+        }
+
+        final long totalLoad = cellLoad.values().stream().mapToLong(Integer::longValue).sum();
+        final long blockLoad = (totalLoad + numberOfBlocks - 1) / numberOfBlocks;
+
+        int block = 0;
+        long load = 0;
+        for (long[] cell: cells) {
+            if (load >= blockLoad && block < numberOfBlocks - 1) {
+                block++;
+                load = 0;
+            }
+            blockOfCell.put(cell[1], block);
+            load += cellLoad.get(cell[1]);
+        }
+
+        return blockOfCell;
+    }
+
+    /**
+     * Find the blocks having a cell within our margin from the given envelope
+     */
+    private int[] blocksWithinMargin(double[] e, Map<Long, Integer> blockOfCell)
+    {
+        final int x0 = (int) Math.floor((e[0] - margin) / cellSize);
+        final int y0 = (int) Math.floor((e[1] - margin) / cellSize);
+        final int x1 = (int) Math.floor((e[2] + margin) / cellSize);
+        final int y1 = (int) Math.floor((e[3] + margin) / cellSize);
+
+        final TreeSet<Integer> blocks = new TreeSet<>();
+        if ((long) (x1 - x0 + 1) * (y1 - y0 + 1) <= blockOfCell.size()) {
+            for (int x = x0; x <= x1; ++x) {
+                for (int y = y0; y <= y1; ++y) {
+                    Integer b = blockOfCell.get(cellKey(x, y));
+                    if (b != null)
+                        blocks.add(b);
+                }
+            }
+        } else {
+            // A large envelope: examine existing cells instead
+            for (Map.Entry<Long, Integer> p: blockOfCell.entrySet()) {
+                final int x = cellX(p.getKey()), y = cellY(p.getKey());
+                if (x >= x0 && x <= x1 && y >= y0 && y <= y1)
+                    blocks.add(p.getValue());
+            }
+        }
+
+        return blocks.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private long cellOf(double x, double y)
+    {
+        return cellKey((int) Math.floor(x / cellSize), (int) Math.floor(y / cellSize));
+    }
+
+    private static long cellKey(int x, int y)
+    {
+        return (((long) x) << 32) | (y & 0xffffffffL);
+    }
+
+    private static int cellX(long cell)
+    {
+        return (int) (cell >> 32);
+    }
+
+    private static int cellY(long cell)
+    {
+        return (int) cell;
+    }
+
+    /**
+     * Interleave the bits of 2 (non-negative) integers, i.e. compute a Z-order (Morton) code
+     */
+    private static long interleave(int x, int y)
+    {
+        long z = 0;
+        for (int i = 0; i < 32; ++i) {
+            z |= ((long) ((x >>> i) & 1)) << (2 * i);
+            z |= ((long) ((y >>> i) & 1)) << (2 * i + 1);
+        }
+        return z;
+    }
+}
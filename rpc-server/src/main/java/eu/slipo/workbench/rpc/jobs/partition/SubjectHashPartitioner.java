@@ -0,0 +1,226 @@
+package eu.slipo.workbench.rpc.jobs.partition;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.partition.support.Partitioner;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.util.Assert;
+
+/**
+ * A partitioner that splits a file of N-Triples into a number of shards by the hash of the
+ * entity owning the subject of each triple (see {@link EntityIndex}), so that all triples of an
+ * entity (e.g. a POI along with its geometry and address) end up in the same shard.
+ * <p>
+ * A shared resource (i.e. referenced by several entities, e.g. a category) is copied into every
+ * shard. So, the output of a shard is disjoint from the output of any other shard, except for
+ * triples of shared resources. The shared resources are listed in a file (named
+ * {@link #SHARED_RESOURCES_FILENAME}) under the directory for partitions, so that the merge of
+ * the output needs to drop duplicates only among those (see {@link SharedResourcesMerger}).
+ * <p>
+ * Every partition (shard) is given its own working directory holding an input directory (with
+ * an input file named as the original one) and an output directory.
+ */
+public class SubjectHashPartitioner implements Partitioner
+{
+    private static final Logger logger = LoggerFactory.getLogger(SubjectHashPartitioner.class);
+
+    /**
+     * The collection of keys used inside the execution context of a partition
+     */
+    public static class Keys
+    {
+        public static final String PARTITION_INDEX = "partitionIndex";
+
+        public static final String WORK_DIR = "workDir";
+
+        public static final String INPUT_DIR = "inputDir";
+
+        public static final String OUTPUT_DIR = "outputDir";
+    }
+
+    /**
+     * The name of the input directory (under the working directory of a partition)
+     */
+    public static final String INPUT_DIR_NAME = "input";
+
+    /**
+     * The name of the file (under the directory for partitions) listing the shared resources
+     */
+    public static final String SHARED_RESOURCES_FILENAME = LinkComponentPartitioner.SHARED_RESOURCES_FILENAME;
+
+    /**
+     * A builder for a {@link SubjectHashPartitioner}
+     */
+    public static class Builder
+    {
+        private Path inputPath;
+
+        private Path partitionsDir;
+
+        private int maxShards = 4;
+
+        private Builder() {}
+
+        /**
+         * Set the input (a file of N-Triples)
+         */
+        public Builder input(Path path)
+        {
+            Assert.notNull(path, "Expected a non-null path");
+            Assert.isTrue(path.isAbsolute(), "Expected an absolute path");
+            this.inputPath = path;
+            return this;
+        }
+
+        /**
+         * Set the directory under which partition directories are created
+         */
+        public Builder partitionsDirectory(Path dir)
+        {
+            Assert.notNull(dir, "Expected a non-null directory");
+            Assert.isTrue(dir.isAbsolute(), "Expected an absolute path");
+            this.partitionsDir = dir;
+            return this;
+        }
+
+        /**
+         * Set the maximum number of shards
+         */
+        public Builder maxShards(int maxShards)
+        {
+            Assert.isTrue(maxShards > 0, "Expected a positive number of shards");
+            this.maxShards = maxShards;
+            return this;
+        }
+
+        public SubjectHashPartitioner build()
+        {
+            Assert.state(inputPath != null, "The input must be specified");
+            Assert.state(partitionsDir != null, "The directory for partitions must be specified");
+            return new SubjectHashPartitioner(inputPath, partitionsDir, maxShards);
+        }
+    }
+
+    public static Builder builder()
+    {
+        return new Builder();
+    }
+
+    private final Path inputPath;
+
+    private final Path partitionsDir;
+
+    private final int maxShards;
+
+    private SubjectHashPartitioner(Path inputPath, Path partitionsDir, int maxShards)
+    {
+        this.inputPath = inputPath;
+        this.partitionsDir = partitionsDir;
+        this.maxShards = maxShards;
+    }
+
+    public static String partitionName(int partitionIndex)
+    {
+        return InputFilesPartitioner.partitionName(partitionIndex);
+    }
+
+    /**
+     * Compute the number of shards for an input of a given size, so that every shard receives
+     * (roughly) a given amount of input.
+     *
+     * @param inputSize The size (bytes) of input
+     * @param shardSize The desired size (bytes) of a shard
+     * @param maxShards The maximum number of shards
+     */
+    public static int numberOfShards(long inputSize, long shardSize, int maxShards)
+    {
+        Assert.isTrue(shardSize > 0, "Expected a positive size for a shard");
+        Assert.isTrue(maxShards > 0, "Expected a positive number of shards");
+        final long n = (inputSize + shardSize - 1) / shardSize;
+        return (int) Math.max(1L, Math.min(n, maxShards));
+    }
+
+    /**
+     * Compute the shard of an entity
+     *
+     * @param entity The entity (i.e. the id of its root resource, see {@link EntityIndex#rootOf(int)})
+     * @param numberOfShards The number of shards
+     */
+    public static int shardOf(int entity, int numberOfShards)
+    {
+        // Scramble the id (Fibonacci hashing), because ids are assigned in order of appearance
+        final int h = entity * 0x9e3779b9;
+        return Math.floorMod(h ^ (h >>> 16), numberOfShards);
+    }
+
+    @Override
+    public Map<String, ExecutionContext> partition(int gridSize)
+    {
+        final int numberOfShards = Math.max(Math.min(gridSize, maxShards), 1);
+        try {
+            return split(numberOfShards);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private Map<String, ExecutionContext> split(final int numberOfShards) throws IOException
+    {
+        final EntityIndex index = EntityIndex.build(inputPath);
+
+        // Record the shared resources (the only ones whose triples may be output by several shards)
+
+        Files.createDirectories(partitionsDir);
+        try (BufferedWriter writer = Files.newBufferedWriter(
+                partitionsDir.resolve(SHARED_RESOURCES_FILENAME), StandardCharsets.UTF_8))
+        {
+            for (String resource: index.sharedResources())
+                EntityIndex.writeLine(writer, resource);
+        }
+
+        final String inputName = inputPath.getFileName().toString();
+        final Map<String, ExecutionContext> result = new LinkedHashMap<>();
+        final Path[] inputs = new Path[numberOfShards];
+
+        for (int p = 0; p < numberOfShards; ++p) {
+            final String partitionName = partitionName(p);
+            final Path workDir = partitionsDir.resolve(partitionName);
+            final Path inputDir = workDir.resolve(INPUT_DIR_NAME);
+            final Path outputDir = workDir.resolve(InputFilesPartitioner.OUTPUT_DIR_NAME);
+            Files.createDirectories(inputDir);
+            Files.createDirectories(outputDir);
+            inputs[p] = inputDir.resolve(inputName);
+
+            ExecutionContext context = new ExecutionContext();
+            context.putInt(Keys.PARTITION_INDEX, p);
+            context.putString(Keys.WORK_DIR, workDir.toString());
+            context.putString(Keys.INPUT_DIR, inputDir.toString());
+            context.putString(Keys.OUTPUT_DIR, outputDir.toString());
+            result.put(partitionName, context);
+        }
+
+        // Split the input (a shared resource is copied into every shard)
+
+        final long[] counts = new long[numberOfShards];
+        index.split(inputs, root -> {
+            final int p = shardOf(root, numberOfShards);
+            counts[p]++;
+            return new int[] { p };
+        });
+
+        for (int p = 0; p < numberOfShards; ++p) {
+            logger.info("Assigned {} triples to partition {}", counts[p], partitionName(p));
+        }
+
+        return result;
+    }
+}
@@ -0,0 +1,419 @@
+package eu.slipo.workbench.rpc.jobs.tasklet;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+/**
+ * Extract archives (ZIP, TAR) and compressed files (gzip, bzip2) into a directory, streaming
+ * their content directly to the target files.
+ * <p>
+ * All entries are extracted directly under the target directory (i.e. discarding any directory
+ * prefix). Independent entries of a ZIP archive are extracted in parallel, each worker using its own
+ * handle on the archive. The total size of extracted data is checked against a limit (as a guard
+ * against decompression bombs): both the sizes declared by the archive and the actual bytes written
+ * are checked.
+ */
+public class ArchiveExtractor
+{
+    private static final Logger logger = LoggerFactory.getLogger(ArchiveExtractor.class);
+
+    /**
+     * The default limit (bytes) for the total size of extracted data
+     */
+    public static final long DEFAULT_MAX_EXTRACTED_SIZE = 64L * 1024L * 1024L * 1024L;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The (detected) format of an input file
+     */
+    public enum Format
+    {
+        ZIP(true),
+        TAR(true),
+        TAR_GZIP(true),
+        TAR_BZIP2(true),
+        GZIP(false),
+        BZIP2(false);
+
+        private final boolean archive;
+
+        private Format(boolean archive)
+        {
+            this.archive = archive;
+        }
+
+        /**
+         * Test if this format is an archive (of several entries), as opposed to a single
+         * compressed file
+         */
+        public boolean isArchive()
+        {
+            return archive;
+        }
+    }
+
+    /**
+     * Thrown when the size of extracted data exceeds our limit
+     */
+    public static class LimitExceededException extends IOException
+    {
+        private static final long serialVersionUID = 1L;
+
+        public LimitExceededException(long limit)
+        {
+            super(String.format("The size of extracted data exceeds the limit of %d bytes", limit));
+        }
+    }
+
+    /**
+     * A builder for an {@link ArchiveExtractor}
+     */
+    public static class Builder
+    {
+        private long maxExtractedSize = DEFAULT_MAX_EXTRACTED_SIZE;
+
+        private int parallelism = 1;
+
+        private Builder() {}
+
+        /**
+         * Set the limit (bytes) for the total size of extracted data
+         */
+        public Builder maxExtractedSize(long size)
+        {
+            Assert.isTrue(size > 0, "Expected a positive size");
+            this.maxExtractedSize = size;
+            return this;
+        }
+
+        /**
+         * Set the number of entries (of a ZIP archive) to be extracted in parallel
+         */
+        public Builder parallelism(int parallelism)
+        {
+            Assert.isTrue(parallelism > 0, "Expected a positive number of threads");
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        public ArchiveExtractor build()
+        {
+            return new ArchiveExtractor(maxExtractedSize, parallelism);
+        }
+    }
+
+    public static Builder builder()
+    {
+        return new Builder();
+    }
+
+    private final long maxExtractedSize;
+
+    private final int parallelism;
+
+    private ArchiveExtractor(long maxExtractedSize, int parallelism)
+    {
+        this.maxExtractedSize = maxExtractedSize;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Detect the format of a file (by examining its leading bytes, not its name)
+     *
+     * @param path The input file
+     * @return the format, or <tt>null</tt> if this is not an archive or a compressed file
+     * @throws IOException
+     */
+    public static Format detect(Path path) throws IOException
+    {
+        final byte[] header = new byte[512];
+        final int n;
+        try (InputStream in = Files.newInputStream(path)) {
+            n = readFully(in, header);
+        }
+
+        if (n >= 4 && header[0] == 'P' && header[1] == 'K' &&
+                ((header[2] == 3 && header[3] == 4) || (header[2] == 5 && header[3] == 6)))
+            return Format.ZIP;
+        if (isTarHeader(header, n))
+            return Format.TAR;
+
+        if (n >= 2 && (header[0] & 0xff) == 0x1f && (header[1] & 0xff) == 0x8b) {
+            try (InputStream in = new GzipCompressorInputStream(Files.newInputStream(path))) {
+                return isTarHeader(header, readFully(in, header))? Format.TAR_GZIP : Format.GZIP;
+            }
+        }
+        if (n >= 3 && header[0] == 'B' && header[1] == 'Z' && header[2] == 'h') {
+            try (InputStream in = new BZip2CompressorInputStream(Files.newInputStream(path))) {
+                return isTarHeader(header, readFully(in, header))? Format.TAR_BZIP2 : Format.BZIP2;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Extract an archive (or a compressed file) into a directory
+     *
+     * @param source The input file
+     * @param format The format of the input file (see {@link ArchiveExtractor#detect(Path)})
+     * @param targetDir The target directory (expected to exist)
+     * @return the names of extracted files (relative to target directory)
+     * @throws LimitExceededException if the size of extracted data exceeds our limit
+     * @throws FileAlreadyExistsException if 2 entries are extracted to the same name
+     * @throws IOException
+     */
+    public List<String> extract(Path source, Format format, Path targetDir) throws IOException
+    {
+        Assert.notNull(source, "Expected a non-null source");
+        Assert.notNull(format, "Expected a non-null format");
+        Assert.isTrue(targetDir != null && Files.isDirectory(targetDir), "Expected an existing directory");
+
+        final long t0 = System.currentTimeMillis();
+        final AtomicLong extractedSize = new AtomicLong();
+
+        List<String> names = null;
+        switch (format) {
+        case ZIP:
+            names = extractZip(source, targetDir, extractedSize);
+            break;
+        case TAR:
+        case TAR_GZIP:
+        case TAR_BZIP2:
+            try (InputStream in = openDecompressed(source, format)) {
+                names = extractTar(in, targetDir, extractedSize);
+            }
+            break;
+        case GZIP:
+        case BZIP2:
+        default:
+            {
+                final String name = decompressedName(source.getFileName().toString());
+                try (InputStream in = openDecompressed(source, format)) {
+                    copy(in, targetDir.resolve(name), extractedSize);
+                }
+                names = Collections.singletonList(name);
+            }
+            break;
+        }
+
+        logger.info("Extracted {} file(s) ({} bytes) from {} ({}) in {}ms",
+            names.size(), extractedSize.get(), source, format, System.currentTimeMillis() - t0);
+        return names;
+    }
+
+    private List<String> extractZip(Path source, Path targetDir, AtomicLong extractedSize)
+        throws IOException
+    {
+        // List entries, and check declared sizes
+
+        final List<ZipEntry> entries;
+        try (ZipFile zipfile = new ZipFile(source.toFile())) {
+            entries = zipfile.stream()
+                .filter(e -> !e.isDirectory())
+                .collect(Collectors.toList());
+        }
+
+        final long declaredSize = entries.stream().mapToLong(e -> Math.max(e.getSize(), 0L)).sum();
+        if (declaredSize > maxExtractedSize)
+            throw new LimitExceededException(maxExtractedSize);
+
+        final List<String> names = new ArrayList<>(entries.size());
+        final Set<String> nameSet = new HashSet<>();
+        for (ZipEntry e: entries) {
+            final String name = Paths.get(e.getName()).getFileName().toString();
+            if (!nameSet.add(name))
+                throw new FileAlreadyExistsException(targetDir.resolve(name).toString());
+            names.add(name);
+        }
+
+        // Extract entries, largest first (each worker polls the next entry, and uses its own handle
+        // on the archive)
+
+        final ConcurrentLinkedQueue<Integer> queue = IntStream.range(0, entries.size()).boxed()
+            .sorted(Comparator.comparingLong((Integer i) -> entries.get(i).getSize()).reversed())
+            .collect(Collectors.toCollection(ConcurrentLinkedQueue::new));
+
+        final Callable<Void> worker = () -> {
+            try (ZipFile zipfile = new ZipFile(source.toFile())) {
+                Integer i = null;
+                while ((i = queue.poll()) != null && !Thread.currentThread().isInterrupted()) {
+                    try (InputStream in = zipfile.getInputStream(zipfile.getEntry(entries.get(i).getName()))) {
+                        copy(in, targetDir.resolve(names.get(i)), extractedSize);
+                    }
+                }
+            }
+            return null;
+        };
+
+        final int n = Math.min(parallelism, entries.size());
+        if (n < 2) {
+            try {
+                worker.call();
+            } catch (IOException | RuntimeException ex) {
+                throw ex;
+            } catch (Exception ex) {
+                throw new IllegalStateException(ex);
+            }
+        } else {
+            runInParallel(worker, n);
+        }
+
+        return names;
+    }
+
+    private static void runInParallel(Callable<Void> worker, int n) throws IOException
+    {
+        final AtomicInteger threadNumber = new AtomicInteger();
+        final ExecutorService executor = Executors.newFixedThreadPool(n, r -> {
+            Thread t = new Thread(r, "extract-" + threadNumber.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+
+        try {
+            final List<Future<Void>> futures = new ArrayList<>(n);
+            for (int i = 0; i < n; ++i)
+                futures.add(executor.submit(worker));
+            for (Future<Void> future: futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException ex) {
+                    final Throwable cause = ex.getCause();
+                    if (cause instanceof IOException)
+                        throw (IOException) cause;
+                    else if (cause instanceof RuntimeException)
+                        throw (RuntimeException) cause;
+                    throw new IllegalStateException(cause);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while extracting", ex);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private List<String> extractTar(InputStream in, Path targetDir, AtomicLong extractedSize)
+        throws IOException
+    {
+        final List<String> names = new ArrayList<>();
+        final Set<String> nameSet = new HashSet<>();
+
+        try (TarArchiveInputStream tar = new TarArchiveInputStream(in)) {
+            TarArchiveEntry e = null;
+            while ((e = tar.getNextTarEntry()) != null) {
+                if (!e.isFile())
+                    continue; // skip directories, links and special files
+                if (extractedSize.get() + e.getSize() > maxExtractedSize)
+                    throw new LimitExceededException(maxExtractedSize);
+                final String name = Paths.get(e.getName()).getFileName().toString();
+                if (!nameSet.add(name))
+                    throw new FileAlreadyExistsException(targetDir.resolve(name).toString());
+                copy(tar, targetDir.resolve(name), extractedSize);
+                names.add(name);
+            }
+        }
+
+        return names;
+    }
+
+    private static InputStream openDecompressed(Path source, Format format) throws IOException
+    {
+        final InputStream in = new BufferedInputStream(Files.newInputStream(source), BUFFER_SIZE);
+        try {
+            switch (format) {
+            case GZIP:
+            case TAR_GZIP:
+                return new GzipCompressorInputStream(in, true);
+            case BZIP2:
+            case TAR_BZIP2:
+                return new BZip2CompressorInputStream(in, true);
+            default:
+                return in;
+            }
+        } catch (IOException ex) {
+            in.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Copy a stream into a target file (replacing an existing file), while accounting for the
+     * total size of extracted data
+     */
+    private void copy(InputStream in, Path target, AtomicLong extractedSize) throws IOException
+    {
+        final byte[] buffer = new byte[BUFFER_SIZE];
+        try (OutputStream out = Files.newOutputStream(target)) {
+            int n = 0;
+            while ((n = in.read(buffer)) > 0) {
+                if (extractedSize.addAndGet(n) > maxExtractedSize)
+                    throw new LimitExceededException(maxExtractedSize);
+                out.write(buffer, 0, n);
+            }
+        }
+    }
+
+    /**
+     * Compute the name of a decompressed file (i.e. strip the extension of the compressed file)
+     */
+    private static String decompressedName(String name)
+    {
+        final String extension = StringUtils.getFilenameExtension(name);
+        if (extension != null && extension.toLowerCase().matches("gz|gzip|bz2|bzip2"))
+            return StringUtils.stripFilenameExtension(name);
+        return name;
+    }
+
+    private static boolean isTarHeader(byte[] header, int n)
+    {
+        // A (POSIX or GNU) tar header carries the "ustar" magic at offset 257
+        return n >= 262 && header[257] == 'u' && header[258] == 's' && header[259] == 't' &&
+            header[260] == 'a' && header[261] == 'r';
+    }
+
+    private static int readFully(InputStream in, byte[] buffer) throws IOException
+    {
+        int n = 0;
+        int k = 0;
+        while (n < buffer.length && (k = in.read(buffer, n, buffer.length - n)) > 0)
+            n += k;
+        return n;
+    }
+}
@@ -0,0 +1,207 @@
+package eu.slipo.workbench.rpc.jobs.tasklet;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.scope.context.StepContext;
+import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.util.Assert;
+
+import eu.slipo.workbench.common.service.util.PropertiesConverterService;
+import eu.slipo.workbench.rpc.service.StepResultCache;
+
+/**
+ * A tasklet that looks up a {@link StepResultCache} for the result of the current (tool-based) job.
+ * <p>
+ * The tasklet expects to run after the working directory is prepared (see
+ * {@link PrepareWorkingDirectoryTasklet}), as it reads the configuration files and the input files
+ * from the job execution context. On a cache hit, the cached result is materialized into the
+ * output directory, and the step exits with a status of {@link LookupCachedResultTasklet#CACHED}
+ * (so that a flow can skip the actual processing).
+ */
+public class LookupCachedResultTasklet implements Tasklet
+{
+    private static final Logger logger = LoggerFactory.getLogger(LookupCachedResultTasklet.class);
+
+    /**
+     * The exit status for a step that found a cached result
+     */
+    public static final ExitStatus CACHED = new ExitStatus("CACHED");
+
+    /**
+     * The collection of keys used inside our execution context
+     */
+    public static class Keys
+    {
+        public static final String RESULT_CACHE_KEY = "resultCacheKey";
+
+        public static final String RESULT_CACHED = "resultCached";
+    }
+
+    /**
+     * A builder for tasklets of enclosing class ({@link LookupCachedResultTasklet}).
+     */
+    public static class Builder
+    {
+        private StepResultCache cache;
+
+        private PropertiesConverterService propertiesConverter;
+
+        private String toolName;
+
+        private String imageName;
+
+        private String configKey = "config";
+
+        private Builder() {}
+
+        /**
+         * Set the result cache. If <tt>null</tt>, the tasklet is a no-op.
+         */
+        public Builder cache(StepResultCache cache)
+        {
+            this.cache = cache;
+            return this;
+        }
+
+        public Builder propertiesConverter(PropertiesConverterService propertiesConverter)
+        {
+            Assert.notNull(propertiesConverter, "Expected a non-null converter");
+            this.propertiesConverter = propertiesConverter;
+            return this;
+        }
+
+        /**
+         * Set the name of the tool
+         */
+        public Builder tool(String toolName)
+        {
+            Assert.hasText(toolName, "Expected a non-empty tool name");
+            this.toolName = toolName;
+            return this;
+        }
+
+        /**
+         * Set the docker image that carries out the processing (different images are
+         * not expected to yield the same results).
+         */
+        public Builder image(String imageName)
+        {
+            this.imageName = imageName;
+            return this;
+        }
+
+        /**
+         * Set the key (inside job execution context) for the configuration bean
+         */
+        public Builder configurationKey(String key)
+        {
+            Assert.hasText(key, "Expected a non-empty key");
+            this.configKey = key;
+            return this;
+        }
+
+        public LookupCachedResultTasklet build()
+        {
+            Assert.state(propertiesConverter != null, "A properties converter is required");
+            Assert.state(toolName != null, "The name of the tool is required");
+
+            String name = imageName == null? toolName : (toolName + "@" + imageName);
+            return new LookupCachedResultTasklet(cache, propertiesConverter, name, configKey);
+        }
+    }
+
+    public static Builder builder()
+    {
+        return new Builder();
+    }
+
+    private final StepResultCache cache;
+
+    private final PropertiesConverterService propertiesConverter;
+
+    private final String toolName;
+
+    private final String configKey;
+
+    private LookupCachedResultTasklet(
+        StepResultCache cache, PropertiesConverterService propertiesConverter, String toolName, String configKey)
+    {
+        this.cache = cache;
+        this.propertiesConverter = propertiesConverter;
+        this.toolName = toolName;
+        this.configKey = configKey;
+    }
+
+    @Override
+    public RepeatStatus execute(StepContribution contribution, ChunkContext chunkContext)
+        throws Exception
+    {
+        if (cache == null)
+            return RepeatStatus.FINISHED; // caching is disabled
+
+        StepContext stepContext = chunkContext.getStepContext();
+        ExecutionContext executionContext = stepContext.getStepExecution().getExecutionContext();
+        Map<String, Object> jobExecutionContext = stepContext.getJobExecutionContext();
+
+        // Collect everything that determines the result
+
+        Object config = jobExecutionContext.get(configKey);
+        Assert.state(config != null, "Expected a configuration bean under [" + configKey + "]");
+        Properties configuration = propertiesConverter.valueToProperties(config);
+
+        Path workDir = Paths.get((String) jobExecutionContext.get(PrepareWorkingDirectoryTasklet.Keys.WORK_DIR));
+        Path inputDir = Paths.get((String) jobExecutionContext.get(PrepareWorkingDirectoryTasklet.Keys.INPUT_DIR));
+        Path outputDir = Paths.get((String) jobExecutionContext.get(PrepareWorkingDirectoryTasklet.Keys.OUTPUT_DIR));
+
+        @SuppressWarnings("unchecked")
+        Map<String, String> configFileByName = (Map<String, String>)
+            jobExecutionContext.get(PrepareWorkingDirectoryTasklet.Keys.CONFIG_FILE_BY_NAME);
+        List<Path> configFiles = new TreeMap<>(configFileByName).values().stream()
+            .map(workDir::resolve)
+            .collect(Collectors.toList());
+
+        @SuppressWarnings("unchecked")
+        List<String> inputFiles = (List<String>)
+            jobExecutionContext.get(PrepareWorkingDirectoryTasklet.Keys.INPUT_FILES);
+        List<Path> inputPaths = inputFiles.stream()
+            .map(inputDir::resolve)
+            .collect(Collectors.toList());
+
+        // Lookup
+
+        // Note: A failure to use the cache is not an error of the job (processing just goes on)
+
+        final String key;
+        boolean cached = false;
+        try {
+            key = cache.computeKey(toolName, configuration, configFiles, inputPaths);
+            cached = cache.materialize(key, outputDir);
+        } catch (IOException ex) {
+            logger.warn("Failed to lookup result cache for {}: {}", toolName, ex.getMessage());
+            return RepeatStatus.FINISHED;
+        }
+
+        executionContext.putString(Keys.RESULT_CACHE_KEY, key);
+        executionContext.put(Keys.RESULT_CACHED, Boolean.valueOf(cached));
+        if (cached) {
+            logger.info("Found a cached result for {} ({}): skipping processing", toolName, key);
+            contribution.setExitStatus(CACHED);
+        }
+
+        return RepeatStatus.FINISHED;
+    }
+}
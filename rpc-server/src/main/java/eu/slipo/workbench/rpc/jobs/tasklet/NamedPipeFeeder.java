@@ -0,0 +1,209 @@
+package eu.slipo.workbench.rpc.jobs.tasklet;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.util.StreamUtils;
+
+/**
+ * Feed the data of an {@link OutputSpool} into a named pipe (a FIFO), so that a consumer (e.g.
+ * a tool inside a container) reads the output of an upstream step while this output is still
+ * being produced.
+ * <p>
+ * The pipe is opened only for writing, so opening it blocks until the consumer opens the other
+ * end (and no data is written before a consumer is present). Once the pipe buffer is full, the
+ * feeder blocks until the consumer reads from the pipe.
+ */
+public class NamedPipeFeeder
+{
+    private static final Logger logger = LoggerFactory.getLogger(NamedPipeFeeder.class);
+
+    /**
+     * A flag indicating whether named pipes can be created (<tt>null</tt> if not yet checked)
+     */
+    private static Boolean supported;
+
+    /**
+     * Test if named pipes can be created on this host. This is checked once, by creating a
+     * pipe under a temporary directory.
+     */
+    public static synchronized boolean isSupported()
+    {
+        if (supported == null) {
+            Path tempDir = null;
+            try {
+                tempDir = Files.createTempDirectory("named-pipe-");
+                createPipe(tempDir.resolve("test"));
+                supported = true;
+            } catch (IOException ex) {
+                logger.warn("Named pipes are not supported: {}", ex.getMessage());
+                supported = false;
+            } finally {
+                if (tempDir != null)
+                    FileSystemUtils.deleteRecursively(tempDir.toFile());
+            }
+        }
+        return supported;
+    }
+
+    /**
+     * Create a named pipe (replacing an existing file)
+     *
+     * @param path The path of the pipe
+     * @throws IOException if the pipe cannot be created
+     */
+    public static void createPipe(Path path) throws IOException
+    {
+        Assert.notNull(path, "Expected a non-null path");
+
+        Files.deleteIfExists(path);
+
+        Process process = new ProcessBuilder("mkfifo", "-m", "0644", path.toString())
+            .redirectErrorStream(true)
+            .start();
+
+        String output = null;
+        int exitCode = -1;
+        try (InputStream in = process.getInputStream()) {
+            output = StreamUtils.copyToString(in, StandardCharsets.UTF_8).trim();
+            exitCode = process.waitFor();
+        } catch (InterruptedException ex) {
+            process.destroy();
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while creating a named pipe", ex);
+        }
+
+        if (exitCode != 0)
+            throw new IOException(String.format("Failed to create a named pipe at %s: %s", path, output));
+    }
+
+    private final Path pipe;
+
+    private final OutputSpool spool;
+
+    private final long since;
+
+    private final long timeout;
+
+    private final FutureTask<Long> task;
+
+    /**
+     * Create a feeder for an (existing) pipe
+     *
+     * @param pipe The named pipe (see {@link NamedPipeFeeder#createPipe(Path)})
+     * @param spool The spool to feed from
+     * @param since The time (milliseconds since epoch) the consumer was created (see
+     *   {@link OutputSpool#follow(OutputStream, long, long)})
+     * @param timeout The time (milliseconds) to wait for the producer of the spool while no
+     *   progress is made
+     */
+    public NamedPipeFeeder(Path pipe, OutputSpool spool, long since, long timeout)
+    {
+        Assert.notNull(pipe, "Expected a non-null pipe");
+        Assert.notNull(spool, "Expected a non-null spool");
+        Assert.isTrue(timeout > 0, "Expected a positive timeout");
+
+        this.pipe = pipe;
+        this.spool = spool;
+        this.since = since;
+        this.timeout = timeout;
+        this.task = new FutureTask<>(this::feed);
+    }
+
+    public Path pipe()
+    {
+        return pipe;
+    }
+
+    /**
+     * Start feeding the pipe (on a separate thread)
+     */
+    public void start()
+    {
+        Thread thread = new Thread(task, "pipe-feeder-" + pipe.getFileName());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Test if feeding the pipe is done (successfully or not)
+     */
+    public boolean isDone()
+    {
+        return task.isDone();
+    }
+
+    /**
+     * Wait for the feeder to write all of its input into the pipe.
+     *
+     * @param timeout The time (milliseconds) to wait
+     * @return the number of bytes written into the pipe
+     * @throws TimeoutException if the feeder is still writing
+     * @throws IOException if the feeder has failed
+     * @throws InterruptedException
+     */
+    public long await(long timeout) throws IOException, TimeoutException, InterruptedException
+    {
+        try {
+            return task.get(timeout, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException ex) {
+            final Throwable cause = ex.getCause();
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            else if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * Cancel feeding the pipe. The feeder is interrupted (if blocked on writing), and the
+     * pipe is closed.
+     */
+    public void cancel()
+    {
+        if (task.isDone())
+            return;
+
+        task.cancel(true);
+
+        // The feeder may be blocked on opening the pipe (waiting for a consumer), which is not
+        // interruptible: open the other end to unblock it
+        try (RandomAccessFile file = new RandomAccessFile(pipe.toFile(), "rw")) {
+            // no-op
+        } catch (IOException ex) {
+            logger.warn("Failed to unblock the feeder of pipe {}: {}", pipe, ex.getMessage());
+        }
+    }
+
+    private Long feed() throws IOException, InterruptedException
+    {
+        final long t0 = System.currentTimeMillis();
+
+        long n = 0;
+        try (FileChannel channel = FileChannel.open(pipe, StandardOpenOption.WRITE)) {
+            OutputStream out = Channels.newOutputStream(channel);
+            n = spool.follow(out, since, timeout);
+        }
+
+        logger.info("Fed {} bytes from {} into pipe {} in {}ms",
+            n, spool.path(), pipe, System.currentTimeMillis() - t0);
+        return n;
+    }
+}
@@ -0,0 +1,435 @@
+package eu.slipo.workbench.rpc.jobs.tasklet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Objects;
+import java.util.UUID;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+import eu.slipo.workbench.common.service.FileMaterializer;
+
+/**
+ * A spool for the output of a step, so that a downstream step may start reading the output
+ * while it is still being produced.
+ * <p>
+ * A spool is a data file along with a pair of marker files: a <tt>.completed</tt> marker (holding
+ * the final size of data) and a <tt>.failed</tt> marker. The producer appends to the data file,
+ * and finally marks it as completed (or as failed). A consumer follows the data file (as a
+ * <tt>tail -f</tt> would do) until the producer marks it as completed.
+ * <p>
+ * A spool is reset by replacing its data file with an empty one (not by truncating it), so that
+ * a consumer still reading a previous incarnation of data can detect this and fail (instead of
+ * mixing data of different runs).
+ */
+public class OutputSpool
+{
+    private static final Logger logger = LoggerFactory.getLogger(OutputSpool.class);
+
+    /**
+     * The name of the directory (under the job data directory) for spools
+     */
+    public static final String DIRECTORY_NAME = "spool";
+
+    /**
+     * The name of the job parameter holding the spool that a producer streams its output into
+     */
+    public static final String PARAMETER_NAME = "spool";
+
+    public static final String COMPLETED_SUFFIX = ".completed";
+
+    public static final String FAILED_SUFFIX = ".failed";
+
+    /**
+     * The default interval (milliseconds) for polling a spool
+     */
+    public static final long DEFAULT_POLL_INTERVAL = 500L;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Resolve the path of a spool for an output of a workflow node
+     *
+     * @param rootDir The root directory for spools
+     * @param workflowId The workflow id
+     * @param nodeName The name of the (producer) node
+     * @param outputName The name of the output file
+     */
+    public static Path resolve(Path rootDir, UUID workflowId, String nodeName, String outputName)
+    {
+        return rootDir.resolve(workflowId.toString()).resolve(nodeName).resolve(outputName);
+    }
+
+    /**
+     * Test if a path is a spool under a given root directory
+     *
+     * @see OutputSpool#resolve(Path, UUID, String, String)
+     */
+    public static boolean isSpool(Path path, Path rootDir)
+    {
+        return path.startsWith(rootDir) && rootDir.relativize(path).getNameCount() == 3;
+    }
+
+    /**
+     * Get the name of the (producer) node of a spool
+     *
+     * @see OutputSpool#resolve(Path, UUID, String, String)
+     */
+    public static String nodeName(Path path)
+    {
+        return path.getParent().getFileName().toString();
+    }
+
+    private final Path path;
+
+    private final Path completedMarker;
+
+    private final Path failedMarker;
+
+    private long pollInterval = DEFAULT_POLL_INTERVAL;
+
+    public OutputSpool(Path path)
+    {
+        Assert.notNull(path, "Expected a non-null path");
+        Assert.isTrue(path.isAbsolute(), "Expected an absolute path");
+        this.path = path;
+        this.completedMarker = path.resolveSibling(path.getFileName() + COMPLETED_SUFFIX);
+        this.failedMarker = path.resolveSibling(path.getFileName() + FAILED_SUFFIX);
+    }
+
+    public OutputSpool(Path path, long pollInterval)
+    {
+        this(path);
+        Assert.isTrue(pollInterval > 0, "Expected a positive interval");
+        this.pollInterval = pollInterval;
+    }
+
+    /**
+     * The data file of this spool
+     */
+    public Path path()
+    {
+        return path;
+    }
+
+    //
+    // Producer side
+    //
+
+    /**
+     * Reset this spool to an empty (incomplete) one
+     *
+     * @throws IOException
+     */
+    public void reset() throws IOException
+    {
+        Files.createDirectories(path.getParent());
+
+        Path tempPath = Files.createTempFile(path.getParent(), null, null);
+        try {
+            Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tempPath);
+        }
+
+        // Remove markers only after data is replaced (a consumer waits while a marker is stale)
+        Files.deleteIfExists(completedMarker);
+        Files.deleteIfExists(failedMarker);
+    }
+
+    /**
+     * Publish the entire content of a file as the content of this spool, and mark the spool as
+     * completed.
+     *
+     * @param source The source file
+     * @param offset The number of leading bytes of source that are already spooled. If this is
+     *   beyond the bytes actually spooled, the spool is replaced with the entire source.
+     * @param materializer The service to copy the source with (when the spool is replaced)
+     * @return the final size of data
+     * @throws IOException
+     */
+    public long publish(Path source, long offset, FileMaterializer materializer) throws IOException
+    {
+        Assert.notNull(materializer, "Expected a non-null materializer");
+
+        final long spooledSize = Files.exists(path)? Files.size(path) : -1L;
+
+        long size = -1L;
+        if (offset > 0 && offset <= spooledSize) {
+            // Append the remaining part of source
+            try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+                    FileChannel out = FileChannel.open(path, StandardOpenOption.WRITE))
+            {
+                out.truncate(offset);
+                out.position(offset);
+                long n = in.size() - offset, position = offset;
+                while (n > 0) {
+                    long r = in.transferTo(position, n, out);
+                    position += r;
+                    n -= r;
+                }
+                out.force(false);
+                size = out.size();
+            }
+        } else {
+            // Replace the spool
+            Files.createDirectories(path.getParent());
+            Path tempPath = Files.createTempFile(path.getParent(), null, null);
+            try {
+                Files.delete(tempPath);
+                materializer.copy(source, tempPath);
+                try (FileChannel out = FileChannel.open(tempPath, StandardOpenOption.WRITE)) {
+                    out.force(false);
+                }
+                Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(tempPath);
+            }
+            size = Files.size(path);
+        }
+
+        complete(size);
+        return size;
+    }
+
+    /**
+     * Mark this spool as completed
+     *
+     * @param size The final size of data
+     * @throws IOException
+     */
+    public void complete(long size) throws IOException
+    {
+        writeMarker(completedMarker, String.valueOf(size));
+        Files.deleteIfExists(failedMarker);
+    }
+
+    /**
+     * Mark this spool as failed (i.e. the producer has failed)
+     *
+     * @param message A message describing the failure
+     * @throws IOException
+     */
+    public void fail(String message) throws IOException
+    {
+        writeMarker(failedMarker, message == null? "" : message);
+    }
+
+    private void writeMarker(Path marker, String content) throws IOException
+    {
+        Files.createDirectories(marker.getParent());
+        Path tempPath = Files.createTempFile(marker.getParent(), null, null);
+        try {
+            Files.write(tempPath, content.getBytes(StandardCharsets.UTF_8));
+            Files.move(tempPath, marker, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tempPath);
+        }
+    }
+
+    //
+    // Consumer side
+    //
+
+    /**
+     * Get the final size of data, or <tt>-1</tt> if this spool is not (yet) completed
+     *
+     * @throws IOException
+     */
+    public long completedSize() throws IOException
+    {
+        try {
+            return Long.parseLong(new String(Files.readAllBytes(completedMarker), StandardCharsets.UTF_8).trim());
+        } catch (NoSuchFileException ex) {
+            return -1L;
+        }
+    }
+
+    /**
+     * Test if this spool was marked as failed (at or after a given point in time)
+     *
+     * @param since The time (milliseconds since epoch) after which a failure is considered
+     */
+    public boolean isFailed(long since)
+    {
+        try {
+            return Files.getLastModifiedTime(failedMarker).toMillis() >= since;
+        } catch (IOException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Test if a producer has started, i.e. if this spool has been reset at least once (possibly
+     * by a previous run of the producer).
+     */
+    public boolean isStarted()
+    {
+        return Files.exists(path);
+    }
+
+    /**
+     * Wait until the producer has spooled any data (or has completed).
+     *
+     * @param since The time (milliseconds since epoch) the consumer was created. A failure marked
+     *   before that time is considered as stale (i.e. left by a previous run of the producer).
+     * @param timeout The time (milliseconds) to wait, counted from <tt>since</tt>
+     * @throws IOException if the producer has failed, or if timed out
+     * @throws InterruptedException
+     */
+    public void awaitData(long since, long timeout) throws IOException, InterruptedException
+    {
+        while (true) {
+            checkFailed(since);
+            if (!Files.exists(failedMarker) && Files.exists(path) && (Files.size(path) > 0 || completedSize() >= 0))
+                return;
+            if (System.currentTimeMillis() - since > timeout)
+                throw new IOException(String.format("Timed out while waiting for data on spool %s", path));
+            Thread.sleep(pollInterval);
+        }
+    }
+
+    /**
+     * Wait until the producer has completed.
+     *
+     * @param since The time (milliseconds since epoch) the consumer was created
+     * @param timeout The time (milliseconds) to wait while no progress is made
+     * @return the final size of data
+     * @throws IOException if the producer has failed, or if timed out
+     * @throws InterruptedException
+     */
+    public long await(long since, long timeout) throws IOException, InterruptedException
+    {
+        final long started = System.currentTimeMillis();
+        long progressedOn = started, lastSize = -1L;
+        while (true) {
+            checkFailed(since);
+            final long size = Files.exists(path)? Files.size(path) : -1L;
+            final long completedSize = Files.exists(failedMarker)? -1L : completedSize();
+            if (completedSize >= 0 && completedSize == size)
+                return size;
+            final long now = System.currentTimeMillis();
+            if (size != lastSize) {
+                progressedOn = now;
+                lastSize = size;
+            } else if (now - progressedOn > timeout) {
+                throw new IOException(String.format("Timed out while waiting for spool %s", path));
+            }
+            Thread.sleep(pollInterval);
+        }
+    }
+
+    /**
+     * Follow the data of this spool (from the beginning) into an output stream, until the producer
+     * has completed.
+     *
+     * @param out The output stream
+     * @param since The time (milliseconds since epoch) the consumer was created
+     * @param timeout The time (milliseconds) to wait while no progress is made
+     * @return the number of bytes copied
+     * @throws IOException if the producer has failed, or if timed out, or if the spool was reset
+     *   while being read
+     * @throws InterruptedException
+     */
+    public long follow(OutputStream out, long since, long timeout) throws IOException, InterruptedException
+    {
+        final long started = System.currentTimeMillis();
+        final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        final WritableByteChannel outChannel = Channels.newChannel(out);
+
+        long n = 0, progressedOn = started;
+        FileChannel channel = null;
+        Object fileKey = null;
+        try {
+            while (true) {
+                checkFailed(since);
+
+                if (channel == null && Files.exists(path) && !Files.exists(failedMarker)) {
+                    channel = FileChannel.open(path, StandardOpenOption.READ);
+                    fileKey = fileKey(path);
+                }
+
+                if (channel != null) {
+                    int r = channel.read(buffer);
+                    if (r > 0) {
+                        buffer.flip();
+                        while (buffer.hasRemaining())
+                            outChannel.write(buffer);
+                        buffer.clear();
+                        n += r;
+                        progressedOn = System.currentTimeMillis();
+                        continue;
+                    }
+                    // Reached the end of data (for the moment)
+                    final boolean replaced = fileKey != null && !Objects.equals(fileKey, fileKey(path));
+                    if (replaced) {
+                        if (n > 0)
+                            throw new IOException(String.format("The spool %s was reset while being read", path));
+                        channel.close();
+                        channel = null;
+                        continue;
+                    }
+                    final long completedSize = completedSize();
+                    if (completedSize >= 0 && n >= completedSize) {
+                        if (n > completedSize)
+                            throw new IOException(String.format(
+                                "Read %d bytes from spool %s (expected %d)", n, path, completedSize));
+                        break;
+                    }
+                }
+
+                if (System.currentTimeMillis() - progressedOn > timeout)
+                    throw new IOException(String.format("Timed out while following spool %s", path));
+                Thread.sleep(pollInterval);
+            }
+        } finally {
+            if (channel != null)
+                channel.close();
+        }
+
+        out.flush();
+        logger.debug("Followed spool {} for {} bytes in {}ms", path, n, System.currentTimeMillis() - started);
+        return n;
+    }
+
+    private void checkFailed(long since) throws IOException
+    {
+        if (isFailed(since)) {
+            String message = null;
+            try {
+                message = new String(Files.readAllBytes(failedMarker), StandardCharsets.UTF_8).trim();
+            } catch (IOException ex) {
+                message = null;
+            }
+            throw new IOException(String.format("The producer of spool %s has failed: %s", path, message));
+        }
+    }
+
+    private static Object fileKey(Path path)
+    {
+        try {
+            return Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+        } catch (IOException ex) {
+            return null;
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("OutputSpool [path=%s]", path);
+    }
+}
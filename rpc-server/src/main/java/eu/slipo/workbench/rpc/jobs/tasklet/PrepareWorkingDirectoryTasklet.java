@@ -1,11 +1,9 @@
 package eu.slipo.workbench.rpc.jobs.tasklet;
 
-import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.FileAlreadyExistsException;
-import java.nio.file.FileSystemException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -16,7 +14,9 @@ import java.nio.file.attribute.PosixFilePermission;
 import java.nio.file.attribute.PosixFilePermissions;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -24,8 +24,6 @@ import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 import java.util.stream.Collectors;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -45,6 +43,7 @@ import eu.slipo.workbench.common.model.poi.EnumDataFormat;
 import eu.slipo.workbench.common.model.tool.AnyTool;
 import eu.slipo.workbench.common.model.tool.EnumConfigurationFormat;
 import eu.slipo.workbench.common.model.tool.ToolConfiguration;
+import eu.slipo.workbench.common.service.FileMaterializer;
 import eu.slipo.workbench.rpc.service.ConfigurationGeneratorService;
 import jersey.repackaged.com.google.common.collect.Iterables;
 
@@ -67,8 +66,8 @@ public class PrepareWorkingDirectoryTasklet implements Tasklet
     private static final String CONFIG_KEY_PATTERN = "^[a-zA-Z][-_0-9a-zA-Z]*$";
 
     /**
-     * A flag indicating the default behavior on whether a input given as a ZIP archive
-     * should be unpacked into our input directory.
+     * A flag indicating the default behavior on whether a input given as an archive (or as
+     * a compressed file) should be unpacked into our input directory.
      */
     private static final boolean UNPACK_ZIP_ARCHIVE = true;
 
@@ -116,6 +115,8 @@ public class PrepareWorkingDirectoryTasklet implements Tasklet
     {
         private ConfigurationGeneratorService configurationGenerator;
 
+        private FileMaterializer materializer;
+
         private Path workDir;
 
         private List<Path> input = Collections.emptyList();
@@ -128,6 +129,14 @@ public class PrepareWorkingDirectoryTasklet implements Tasklet
 
         private Boolean unzip;
 
+        private ArchiveExtractor extractor;
+
+        private Set<ArchiveExtractor.Format> readableFormats = Collections.emptySet();
+
+        private Boolean spooledInput;
+
+        private long spoolTimeout;
+
         /**
          * Set the configuration-generator service to be used
          * @param service
@@ -139,6 +148,17 @@ public class PrepareWorkingDirectoryTasklet implements Tasklet
             return this;
         }
 
+        /**
+         * Set the service to be used for materializing input files inside input directory.
+         * @param materializer
+         */
+        public Builder materializer(FileMaterializer materializer)
+        {
+            Assert.notNull(materializer, "Expected an non-null materializer");
+            this.materializer = materializer;
+            return this;
+        }
+
         /**
          * Set working directory
          * @param workDir
@@ -195,9 +215,9 @@ public class PrepareWorkingDirectoryTasklet implements Tasklet
         }
 
         /**
-         * Set whether a single input given as a ZIP archive should be extracted into
-         * our input directory. If so, all ZIP entries will be extracted discarding their
-         * directory prefix (if any).
+         * Set whether a single input given as an archive (ZIP, TAR) or as a compressed file
+         * (gzip, bzip2) should be extracted into our input directory. If so, all entries will be
+         * extracted discarding their directory prefix (if any).
          * @param flag
          */
         public Builder unzipIfArchive(boolean flag)
@@ -206,6 +226,49 @@ public class PrepareWorkingDirectoryTasklet implements Tasklet
             return this;
         }
 
+        /**
+         * Set the extractor for an input given as an archive. If not given, an extractor with
+         * default settings is used.
+         * @param extractor
+         */
+        public Builder extractor(ArchiveExtractor extractor)
+        {
+            Assert.notNull(extractor, "Expected a non-null extractor");
+            this.extractor = extractor;
+            return this;
+        }
+
+        /**
+         * Set the formats (of compressed files) that the tool can read directly. An input of
+         * such a format is not extracted, but is passed to the tool as is.
+         * @param formats
+         */
+        public Builder readableFormats(Collection<ArchiveExtractor.Format> formats)
+        {
+            Assert.notNull(formats, "Expected a non-null collection of formats");
+            this.readableFormats = EnumSet.noneOf(ArchiveExtractor.Format.class);
+            this.readableFormats.addAll(formats);
+            return this;
+        }
+
+        /**
+         * Set that the (single) input is the spool of an upstream step that may still be running
+         * (see {@link OutputSpool}).
+         *
+         * @param piped If <tt>true</tt>, the input is a named pipe to be fed from the spool while
+         *   the tool is running (see {@link Keys#SPOOLED_INPUT}). Otherwise, or if named pipes
+         *   are not supported, we wait for the spool to complete and then copy it as a normal input.
+         * @param timeout The time (milliseconds) to wait for the producer of the spool while no
+         *   progress is made
+         */
+        public Builder spooledInput(boolean piped, long timeout)
+        {
+            Assert.isTrue(timeout > 0, "Expected a positive timeout");
+            this.spooledInput = piped? Boolean.TRUE : Boolean.FALSE;
+            this.spoolTimeout = timeout;
+            return this;
+        }
+
         /**
          * Add a configuration file under this working directory. The configuration is copied verbatim
          * from the given resource (no conversion taking place).
@@ -276,6 +339,7 @@ public class PrepareWorkingDirectoryTasklet implements Tasklet
         public PrepareWorkingDirectoryTasklet build()
         {
             Assert.state(workDir != null, "A working directory is required");
+            Assert.state(materializer != null, "A file materializer is required");
 
             Assert.state(configurationGenerator != null ||
                     (Iterables.all(config.values(), s -> s.source instanceof Resource)),
@@ -283,7 +347,8 @@ public class PrepareWorkingDirectoryTasklet implements Tasklet
                 "for several tool-specific configuration sources");
 
             PrepareWorkingDirectoryTasklet tasklet = new PrepareWorkingDirectoryTasklet(
-                workDir, input, config, configurationGenerator);
+                workDir, input, config, configurationGenerator,
+                materializer);
 
             if (inputFormat != null)
                 tasklet.setInputFormat(inputFormat);
@@ -294,6 +359,14 @@ public class PrepareWorkingDirectoryTasklet implements Tasklet
             if (unzip != null)
                 tasklet.setUnzip(unzip);
 
+            tasklet.setExtractor(extractor == null? ArchiveExtractor.builder().build() : extractor);
+            tasklet.setReadableFormats(readableFormats);
+
+            if (spooledInput != null) {
+                Assert.state(input.size() == 1, "A spooled input is expected as a single input");
+                tasklet.setSpooledInput(spooledInput, spoolTimeout);
+            }
+
             return tasklet;
         }
     }
@@ -321,10 +394,17 @@ public class PrepareWorkingDirectoryTasklet implements Tasklet
         public static final String OUTPUT_FORMAT = "outputFormat";
 
         public static final String CONFIG_FILE_BY_NAME = "configFileByName";
+
+        /**
+         * The spool that a piped input (a named pipe in input directory) should be fed from
+         */
+        public static final String SPOOLED_INPUT = "spooledInput";
     }
 
     private final ConfigurationGeneratorService configurationGenerator;
 
+    private final FileMaterializer materializer;
+
     private final Path workDir;
 
     private final Path inputDir;
@@ -343,11 +423,20 @@ public class PrepareWorkingDirectoryTasklet implements Tasklet
 
     private boolean unzip = UNPACK_ZIP_ARCHIVE;
 
+    private ArchiveExtractor extractor;
+
+    private Set<ArchiveExtractor.Format> readableFormats = Collections.emptySet();
+
+    private Boolean spooledInput;
+
+    private long spoolTimeout;
+
     private PrepareWorkingDirectoryTasklet(
         Path workDir, List<Path> input, Map<String, ConfigurationSpec> config,
-        ConfigurationGeneratorService configurationGeneratorService)
+        ConfigurationGeneratorService configurationGeneratorService, FileMaterializer materializer)
     {
         this.configurationGenerator = configurationGeneratorService;
+        this.materializer = materializer;
         this.workDir = workDir.toAbsolutePath();
         this.input = input;
         this.config = config;
@@ -370,6 +459,22 @@ public class PrepareWorkingDirectoryTasklet implements Tasklet
         this.unzip = flag;
     }
 
+    private void setExtractor(ArchiveExtractor extractor)
+    {
+        this.extractor = extractor;
+    }
+
+    private void setReadableFormats(Set<ArchiveExtractor.Format> formats)
+    {
+        this.readableFormats = formats;
+    }
+
+    private void setSpooledInput(boolean piped, long timeout)
+    {
+        this.spooledInput = piped;
+        this.spoolTimeout = timeout;
+    }
+
     public Path workDir()
     {
         return inputDir;
@@ -412,22 +517,29 @@ public class PrepareWorkingDirectoryTasklet implements Tasklet
         //
 
         List<String> inputFiles = new ArrayList<>();
-        if (!input.isEmpty()) {
-            if (unzip && (input.size() == 1) &&
-                    "application/zip".equals(Files.probeContentType(input.get(0))))
-            {
+        if (spooledInput != null) {
+            // The input is the spool of an upstream step
+            OutputSpool spool = new OutputSpool(input.get(0));
+            String name = spool.path().getFileName().toString();
+            long since = stepExecution.getJobExecution().getCreateTime().getTime();
+            if (spooledInput && NamedPipeFeeder.isSupported()) {
+                // Wait for the producer to start writing, and setup a pipe to be fed from the spool
+                spool.awaitData(since, spoolTimeout);
+                NamedPipeFeeder.createPipe(inputDir.resolve(name));
+                executionContext.putString(Keys.SPOOLED_INPUT, spool.path().toString());
+            } else {
+                // Wait for the producer to complete, and copy as a normal input
+                spool.await(since, spoolTimeout);
+                copyToInputDirectory(spool.path(), name);
+                executionContext.remove(Keys.SPOOLED_INPUT);
+            }
+            inputFiles.add(name);
+        } else if (!input.isEmpty()) {
+            ArchiveExtractor.Format archiveFormat = (unzip && input.size() == 1)?
+                ArchiveExtractor.detect(input.get(0)) : null;
+            if (archiveFormat != null && !readableFormats.contains(archiveFormat)) {
                 // The input archive should be extracted to input directory
-                try (ZipFile zipfile = new ZipFile(input.get(0).toString())) {
-                    List<String> entryNames = zipfile.stream()
-                        .filter(e -> !e.isDirectory())
-                        .map(e -> e.getName())
-                        .collect(Collectors.toList());
-                    for (String entryName: entryNames) {
-                        String name = Paths.get(entryName).getFileName().toString();
-                        extractToInputDirectory(zipfile, entryName, name);
-                        inputFiles.add(name);
-                    }
-                }
+                inputFiles.addAll(extractor.extract(input.get(0), archiveFormat, inputDir));
             } else {
                 // Copy each input to input directory
                 for (Path inputPath: input) {
@@ -477,30 +589,13 @@ public class PrepareWorkingDirectoryTasklet implements Tasklet
         return RepeatStatus.FINISHED;
     }
 
-    /**
-     * Extract a named ZIP entry inside our input directory.
-     *
-     * @param zipfile An opened ZipFile handle
-     * @param entryName The entry name
-     * @param name The name of the extracted file (relative to input directory)
-     * @throws IOException
-     */
-    private void extractToInputDirectory(ZipFile zipfile, String entryName, String name)
-        throws IOException
-    {
-        ZipEntry e = zipfile.getEntry(entryName);
-        try (InputStream in = new BufferedInputStream(zipfile.getInputStream(e))) {
-            Files.copy(in, inputDir.resolve(name));
-        }
-    }
-
     /**
      * Copy given input file to our input directory.
      *
      * <p>
      * A shallow hard link will be created, i.e. there is no attempt to create a nested structure
      * inside input directory. If a hard link cannot be created (because of file-system limitations),
-     * we fallback to a plain copying.
+     * we fallback to a clone or a (kernel) copy (see {@link FileMaterializer}).
      *
      * @param source The input path to link to
      * @param filename The link name (relative to input directory)
@@ -512,19 +607,6 @@ public class PrepareWorkingDirectoryTasklet implements Tasklet
         Path destination = inputDir.resolve(filename);
         Files.deleteIfExists(destination);
 
-        // Try to link
-
-        Path link = null;
-        try {
-            link = Files.createLink(destination, source);
-        } catch (FileSystemException e) {
-            link = null;
-        }
-
-        // If no link was created, fallback to copying
-
-        if (link == null) {
-            Files.copy(source, destination, StandardCopyOption.REPLACE_EXISTING);
-        }
+        materializer.materialize(source, destination);
     }
 }
@@ -0,0 +1,61 @@
+package eu.slipo.workbench.rpc.jobs.tasklet;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.batch.repeat.RepeatStatus;
+
+import eu.slipo.workbench.rpc.service.StepResultCache;
+
+/**
+ * A tasklet that stores the output directory of a (successful) job into a {@link StepResultCache},
+ * under the key computed by a {@link LookupCachedResultTasklet} (earlier in the same job).
+ * <p>
+ * Failing to store a result is not considered as an error of the job (it is only logged).
+ */
+public class StoreResultToCacheTasklet implements Tasklet
+{
+    private static final Logger logger = LoggerFactory.getLogger(StoreResultToCacheTasklet.class);
+
+    private final StepResultCache cache;
+
+    /**
+     * Create a tasklet
+     *
+     * @param cache The result cache. If <tt>null</tt>, the tasklet is a no-op.
+     */
+    public StoreResultToCacheTasklet(StepResultCache cache)
+    {
+        this.cache = cache;
+    }
+
+    @Override
+    public RepeatStatus execute(StepContribution contribution, ChunkContext chunkContext)
+        throws Exception
+    {
+        if (cache == null)
+            return RepeatStatus.FINISHED; // caching is disabled
+
+        Map<String, Object> jobExecutionContext = chunkContext.getStepContext().getJobExecutionContext();
+
+        String key = (String) jobExecutionContext.get(LookupCachedResultTasklet.Keys.RESULT_CACHE_KEY);
+        if (key == null)
+            return RepeatStatus.FINISHED; // no lookup was performed
+
+        Path outputDir = Paths.get((String) jobExecutionContext.get(PrepareWorkingDirectoryTasklet.Keys.OUTPUT_DIR));
+        try {
+            cache.store(key, outputDir);
+        } catch (IOException ex) {
+            logger.warn("Failed to store result {} from {}: {}", key, outputDir, ex.getMessage());
+        }
+
+        return RepeatStatus.FINISHED;
+    }
+}
@@ -163,6 +163,17 @@ public class ContainerConfigurer
         return this;
     }
 
+    /**
+     * Override the entrypoint (specified at build-time) of the image.
+     *
+     * @param entrypoint The entrypoint as an executable followed by a list of arguments.
+     */
+    public ContainerConfigurer entrypoint(String ...entrypoint)
+    {
+        containerConfigBuilder.entrypoint(entrypoint);
+        return this;
+    }
+
     /**
      * Set command that periodically checks health of the container (HEALTHCHECK).
      *
@@ -333,4 +344,15 @@ public class ContainerConfigurer
         hostConfigBuilder.cpuShares(weight);
         return this;
     }
+
+    /**
+     * Set an upper limit for the CPU resources available to the container.
+     *
+     * @param cpus A (possibly fractional) number of CPUs; a non-positive number means no limit
+     */
+    public ContainerConfigurer cpus(double cpus)
+    {
+        hostConfigBuilder.nanoCpus(cpus > 0? Double.valueOf(cpus * 1E9).longValue() : null);
+        return this;
+    }
 }
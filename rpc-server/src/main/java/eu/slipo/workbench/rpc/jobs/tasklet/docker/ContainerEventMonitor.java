@@ -0,0 +1,295 @@
+package eu.slipo.workbench.rpc.jobs.tasklet.docker;
+
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.DockerClient.EventsParam;
+import com.spotify.docker.client.EventStream;
+import com.spotify.docker.client.exceptions.DockerException;
+import com.spotify.docker.client.messages.Event;
+
+/**
+ * A monitor that maintains a single subscription to the event stream of the docker
+ * daemon and wakes up parties waiting for a container to terminate.
+ * <p>
+ * An event is only a hint to re-inspect a container: the state reported by the daemon
+ * (on inspection) remains the authoritative source. For this reason, all waiting parties
+ * are also woken up whenever the event stream is (re)connected or dropped, since events
+ * may have been missed meanwhile.
+ */
+public class ContainerEventMonitor
+{
+    private static Logger logger = LoggerFactory.getLogger(ContainerEventMonitor.class);
+
+    /**
+     * The default interval (in milliseconds) to wait before re-subscribing to the
+     * event stream (after the stream has been dropped).
+     */
+    public static final long DEFAULT_RECONNECT_INTERVAL = 2000L;
+
+    /**
+     * The maximum interval (in milliseconds) to wait before re-subscribing to the
+     * event stream (the interval is doubled on every consecutive failure).
+     */
+    public static final long MAX_RECONNECT_INTERVAL = 30000L;
+
+    /**
+     * The container actions that signal a (possible) termination of a container
+     */
+    private static final String[] ACTIONS = new String[] { "die", "oom", "kill" };
+
+    private final DockerClient docker;
+
+    private long reconnectInterval = DEFAULT_RECONNECT_INTERVAL;
+
+    /**
+     * The signals for waiting parties, keyed by container ID (or name)
+     */
+    private final Map<String, CompletableFuture<String>> signals = new ConcurrentHashMap<>();
+
+    private volatile boolean connected = false;
+
+    private volatile boolean stopped = false;
+
+    private volatile EventStream stream;
+
+    private Thread thread;
+
+    public ContainerEventMonitor(DockerClient docker)
+    {
+        Assert.notNull(docker, "A docker client is required");
+        this.docker = docker;
+    }
+
+    public void setReconnectInterval(long millis)
+    {
+        Assert.isTrue(millis > 0, "Expected a positive interval");
+        this.reconnectInterval = millis;
+    }
+
+    public long getReconnectInterval()
+    {
+        return reconnectInterval;
+    }
+
+    /**
+     * Check if the monitor is currently subscribed to the event stream. If not, a waiting
+     * party should fall back to polling the container status.
+     */
+    public boolean isConnected()
+    {
+        return connected;
+    }
+
+    /**
+     * Start listening (in a background thread) to the event stream of the docker daemon
+     */
+    public synchronized void start()
+    {
+        Assert.state(thread == null, "The monitor is already started");
+
+        stopped = false;
+        thread = new Thread(this::listen, "docker-events");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stop listening to the event stream. All waiting parties are woken up.
+     */
+    public synchronized void stop()
+    {
+        if (thread == null)
+            return;
+
+        stopped = true;
+        closeStream();
+        thread.interrupt();
+        try {
+            thread.join(reconnectInterval);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        thread = null;
+        connected = false;
+        wakeAll("stopped");
+    }
+
+    /**
+     * Subscribe for a signal on the termination of a container. A party should subscribe
+     * before inspecting the state of a container (so that no event can be missed).
+     *
+     * @param containerId The container ID or name
+     * @return a future that is completed with the action (e.g. <tt>die</tt>) that signaled
+     *   a possible termination of the container
+     */
+    public CompletableFuture<String> subscribe(String containerId)
+    {
+        Assert.notNull(containerId, "A container ID is required");
+        return signals.compute(containerId,
+            (key, signal) -> (signal == null || signal.isDone())? new CompletableFuture<>() : signal);
+    }
+
+    /**
+     * Cancel a subscription for a container.
+     *
+     * @param containerId The container ID or name
+     */
+    public void unsubscribe(String containerId)
+    {
+        CompletableFuture<String> signal = signals.remove(containerId);
+        if (signal != null)
+            signal.cancel(false);
+    }
+
+    /**
+     * Wait (at most for the given amount of time) for a signal on a container.
+     * <p>
+     * If a subscription exists (see {@link #subscribe(String)}), a signal that has arrived
+     * after subscribing is consumed immediately. The subscription is removed as soon as
+     * it is signaled.
+     *
+     * @param containerId The container ID or name
+     * @param timeout The maximum amount of time (in milliseconds) to wait
+     * @return the signaled action, or <tt>null</tt> if timed out
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public String await(String containerId, long timeout) throws InterruptedException
+    {
+        Assert.notNull(containerId, "A container ID is required");
+        CompletableFuture<String> signal =
+            signals.computeIfAbsent(containerId, key -> new CompletableFuture<>());
+        try {
+            return signal.get(timeout, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            return null;
+        } catch (ExecutionException | CancellationException e) {
+            return null;
+        } finally {
+            if (signal.isDone())
+                signals.remove(containerId, signal);
+        }
+    }
+
+    /**
+     * Get the number of subscriptions (waiting parties)
+     */
+    public int getNumberOfSubscriptions()
+    {
+        return signals.size();
+    }
+
+    /**
+     * Dispatch an event to the party waiting on this container (if any)
+     *
+     * @param event An event as received from the event stream
+     */
+    void dispatch(Event event)
+    {
+        final String action = event.action() != null? event.action() : event.status();
+
+        String id = null;
+        String name = null;
+        if (event.actor() != null) {
+            id = event.actor().id();
+            Map<String, String> attributes = event.actor().attributes();
+            name = attributes != null? attributes.get("name") : null;
+        }
+        if (id == null)
+            id = event.id();
+
+        logger.debug("Received event {} for container {} (name={})", action, id, name);
+
+        if (id != null)
+            signal(id, action);
+        if (name != null)
+            signal(name, action);
+    }
+
+    private void signal(String key, String action)
+    {
+        CompletableFuture<String> signal = signals.get(key);
+        if (signal != null)
+            signal.complete(action);
+    }
+
+    private void wakeAll(String reason)
+    {
+        for (CompletableFuture<String> signal: signals.values())
+            signal.complete(reason);
+    }
+
+    private void closeStream()
+    {
+        EventStream s = stream;
+        if (s != null) {
+            try {
+                s.close();
+            } catch (RuntimeException e) {
+                logger.debug("Failed to close event stream: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Listen to the event stream, re-subscribing (with a backoff) whenever the stream
+     * is dropped.
+     */
+    private void listen()
+    {
+        long backoff = reconnectInterval;
+
+        EventsParam[] params = new EventsParam[1 + ACTIONS.length];
+        params[0] = EventsParam.type(Event.Type.CONTAINER);
+        for (int i = 0; i < ACTIONS.length; ++i)
+            params[i + 1] = EventsParam.event(ACTIONS[i]);
+
+        while (!stopped) {
+            try (EventStream s = docker.events(params)) {
+                stream = s;
+                backoff = reconnectInterval;
+                logger.info("Subscribed to the event stream of docker daemon");
+                // Wake up everyone (after marking as connected, so that a waiter does not fall
+                // back to polling): events may have been missed while disconnected
+                connected = true;
+                wakeAll("connected");
+                while (!stopped && s.hasNext())
+                    dispatch(s.next());
+            } catch (InterruptedException e) {
+                break;
+            } catch (DockerException | RuntimeException e) {
+                if (!stopped)
+                    logger.warn("The event stream of docker daemon is dropped: {}", e.getMessage());
+            } finally {
+                stream = null;
+                if (connected) {
+                    connected = false;
+                    wakeAll("disconnected");
+                }
+            }
+
+            if (stopped)
+                break;
+
+            try {
+                Thread.sleep(backoff);
+            } catch (InterruptedException e) {
+                break;
+            }
+            backoff = Math.min(2 * backoff, MAX_RECONNECT_INTERVAL);
+        }
+
+        connected = false;
+        logger.info("Stopped listening to the event stream of docker daemon");
+    }
+}
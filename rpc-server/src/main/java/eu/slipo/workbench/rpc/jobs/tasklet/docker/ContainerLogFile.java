@@ -0,0 +1,253 @@
+package eu.slipo.workbench.rpc.jobs.tasklet.docker;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.util.Assert;
+
+/**
+ * A size-capped log file that is rotated into a fixed number of backups.
+ * <p>
+ * The log is kept as a sequence of segments: <tt>{name}.{N}</tt>, ..., <tt>{name}.1</tt>,
+ * <tt>{name}</tt> (from oldest to newest). When the current segment would exceed the
+ * maximum size, segments are shifted (and the oldest one is discarded).
+ * <p>
+ * Offsets used for reading refer to the concatenation of all retained segments (so they
+ * are relative to the start of the oldest retained segment).
+ */
+public class ContainerLogFile
+{
+    /**
+     * The default maximum size (in bytes) of a single segment
+     */
+    public static final long DEFAULT_MAX_SIZE = 8 * 1024 * 1024L;
+
+    /**
+     * The default number of (rotated) backups to retain
+     */
+    public static final int DEFAULT_MAX_BACKUPS = 2;
+
+    private final Path path;
+
+    private final long maxSize;
+
+    private final int maxBackups;
+
+    public ContainerLogFile(Path path)
+    {
+        this(path, DEFAULT_MAX_SIZE, DEFAULT_MAX_BACKUPS);
+    }
+
+    public ContainerLogFile(Path path, long maxSize, int maxBackups)
+    {
+        Assert.notNull(path, "A path is required");
+        Assert.isTrue(path.isAbsolute(), "Expected an absolute path for a log file");
+        Assert.isTrue(maxSize > 0, "Expected a positive maximum size");
+        Assert.isTrue(maxBackups >= 0, "Expected a non-negative number of backups");
+        this.path = path;
+        this.maxSize = maxSize;
+        this.maxBackups = maxBackups;
+    }
+
+    public Path getPath()
+    {
+        return path;
+    }
+
+    public long getMaxSize()
+    {
+        return maxSize;
+    }
+
+    public int getMaxBackups()
+    {
+        return maxBackups;
+    }
+
+    private Path backupPath(int i)
+    {
+        return path.resolveSibling(path.getFileName().toString() + "." + i);
+    }
+
+    /**
+     * List existing segments, from oldest to newest.
+     */
+    public List<Path> segments()
+    {
+        List<Path> result = new ArrayList<>(maxBackups + 1);
+        for (int i = maxBackups; i > 0; --i) {
+            Path p = backupPath(i);
+            if (Files.isRegularFile(p))
+                result.add(p);
+        }
+        if (Files.isRegularFile(path))
+            result.add(path);
+        return result;
+    }
+
+    /**
+     * Get the total size (in bytes) of all retained segments.
+     *
+     * @throws IOException
+     */
+    public long size() throws IOException
+    {
+        long n = 0;
+        for (Path p: segments())
+            n += Files.size(p);
+        return n;
+    }
+
+    /**
+     * Delete all segments
+     *
+     * @throws IOException
+     */
+    public void delete() throws IOException
+    {
+        for (int i = 1; i <= maxBackups; ++i)
+            Files.deleteIfExists(backupPath(i));
+        Files.deleteIfExists(path);
+    }
+
+    /**
+     * Read a range of (at most) <tt>length</tt> bytes starting at <tt>offset</tt>.
+     *
+     * @param offset The offset (relative to the start of the oldest segment)
+     * @param length The maximum number of bytes to read
+     * @return the bytes read (may be less than requested, if end of log is reached)
+     * @throws IOException
+     */
+    public byte[] read(long offset, int length) throws IOException
+    {
+        Assert.isTrue(offset >= 0, "Expected a non-negative offset");
+        Assert.isTrue(length >= 0, "Expected a non-negative length");
+
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        long start = 0;
+        for (Path p: segments()) {
+            if (!buffer.hasRemaining())
+                break;
+            long size = Files.size(p);
+            if (offset < start + size) {
+                try (FileChannel in = FileChannel.open(p, StandardOpenOption.READ)) {
+                    long pos = Math.max(offset - start, 0);
+                    int n;
+                    while (buffer.hasRemaining() && (n = in.read(buffer, pos)) > 0)
+                        pos += n;
+                }
+            }
+            start += size;
+        }
+
+        byte[] result = new byte[buffer.position()];
+        buffer.flip();
+        buffer.get(result);
+        return result;
+    }
+
+    /**
+     * Read (at most) the last <tt>length</tt> bytes of the log.
+     *
+     * @param length The maximum number of bytes to read
+     * @throws IOException
+     */
+    public byte[] tail(int length) throws IOException
+    {
+        long size = size();
+        return read(Math.max(size - length, 0), length);
+    }
+
+    /**
+     * Read (at most) the last <tt>length</tt> bytes of the log as text (assuming UTF-8)
+     *
+     * @param length The maximum number of bytes to read
+     * @throws IOException
+     */
+    public String tailAsString(int length) throws IOException
+    {
+        return StandardCharsets.UTF_8.decode(ByteBuffer.wrap(tail(length))).toString();
+    }
+
+    /**
+     * Open a stream for writing to this log. Any existing segments are discarded.
+     *
+     * @throws IOException
+     */
+    public OutputStream openOutputStream() throws IOException
+    {
+        delete();
+        Files.createDirectories(path.getParent());
+        return new RotatingOutputStream();
+    }
+
+    private class RotatingOutputStream extends OutputStream
+    {
+        private FileChannel out;
+
+        private long size = 0;
+
+        private RotatingOutputStream() throws IOException
+        {
+            this.out = open();
+        }
+
+        private FileChannel open() throws IOException
+        {
+            return FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        }
+
+        private void rotate() throws IOException
+        {
+            out.close();
+            if (maxBackups > 0) {
+                for (int i = maxBackups - 1; i > 0; --i) {
+                    Path p = backupPath(i);
+                    if (Files.exists(p))
+                        Files.move(p, backupPath(i + 1), StandardCopyOption.REPLACE_EXISTING);
+                }
+                Files.move(path, backupPath(1), StandardCopyOption.REPLACE_EXISTING);
+            }
+            out = open();
+            size = 0;
+        }
+
+        @Override
+        public void write(int b) throws IOException
+        {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException
+        {
+            ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+            while (buffer.hasRemaining()) {
+                if (size >= maxSize)
+                    rotate();
+                int n = (int) Math.min(buffer.remaining(), maxSize - size);
+                ByteBuffer chunk = buffer.slice();
+                chunk.limit(n);
+                while (chunk.hasRemaining())
+                    size += out.write(chunk);
+                buffer.position(buffer.position() + n);
+            }
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package eu.slipo.workbench.rpc.jobs.tasklet.docker;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.util.Assert;
+
+import eu.slipo.workbench.rpc.jobs.tasklet.docker.RunContainerTasklet.Keys;
+
+/**
+ * A collector that summarizes the samples of resource statistics taken from a container, and
+ * (optionally) appends every sample to a file holding the time series of the container.
+ * <p>
+ * Since CPU time and I/O counters are cumulative, the summary keeps the maximum observed value
+ * of each (this way, an empty reading of a container that has just exited is harmless). For
+ * memory, the summary keeps the peak of the sampled values; a short spike between two samples
+ * may not be observed.
+ */
+public class ContainerStatsCollector
+{
+    private static final String SERIES_HEADER =
+        "sampledOn,cpuTime,memory,blockReadBytes,blockWriteBytes,networkRxBytes,networkTxBytes";
+
+    /**
+     * The file where the time series is appended (may be <tt>null</tt>)
+     */
+    private final Path seriesFile;
+
+    private int samples;
+
+    private long cpuTime;
+
+    private long peakMemory;
+
+    private long blockReadBytes;
+
+    private long blockWriteBytes;
+
+    private long networkRxBytes;
+
+    private long networkTxBytes;
+
+    /**
+     * @param seriesFile An absolute path for a file holding the time series, or <tt>null</tt>
+     *   if samples should only be summarized
+     */
+    public ContainerStatsCollector(Path seriesFile)
+    {
+        Assert.isTrue(seriesFile == null || seriesFile.isAbsolute(),
+            "Expected an absolute path for the time series");
+        this.seriesFile = seriesFile;
+    }
+
+    public Path getSeriesFile()
+    {
+        return seriesFile;
+    }
+
+    /**
+     * Add a sample. An empty sample (see {@link ContainerStatsSample#isEmpty()}) is ignored.
+     *
+     * @throws IOException if the sample cannot be appended to the time series
+     */
+    public synchronized void add(ContainerStatsSample sample) throws IOException
+    {
+        if (sample.isEmpty())
+            return;
+
+        samples++;
+        cpuTime = Math.max(cpuTime, sample.cpuTime());
+        peakMemory = Math.max(peakMemory, sample.memory());
+        blockReadBytes = Math.max(blockReadBytes, sample.blockReadBytes());
+        blockWriteBytes = Math.max(blockWriteBytes, sample.blockWriteBytes());
+        networkRxBytes = Math.max(networkRxBytes, sample.networkRxBytes());
+        networkTxBytes = Math.max(networkTxBytes, sample.networkTxBytes());
+
+        if (seriesFile != null) {
+            final boolean exists = Files.exists(seriesFile);
+            try (BufferedWriter writer = Files.newBufferedWriter(seriesFile, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND))
+            {
+                if (!exists) {
+                    writer.write(SERIES_HEADER);
+                    writer.newLine();
+                }
+                writer.write(String.format("%d,%d,%d,%d,%d,%d,%d",
+                    sample.sampledOn(), sample.cpuTime(), sample.memory(),
+                    sample.blockReadBytes(), sample.blockWriteBytes(),
+                    sample.networkRxBytes(), sample.networkTxBytes()));
+                writer.newLine();
+            }
+        }
+    }
+
+    public synchronized int getSamples()
+    {
+        return samples;
+    }
+
+    public synchronized long getCpuTime()
+    {
+        return cpuTime;
+    }
+
+    public synchronized long getPeakMemory()
+    {
+        return peakMemory;
+    }
+
+    /**
+     * Discard any previous time series (e.g. left by a previous run of the container)
+     *
+     * @throws IOException
+     */
+    public void clear() throws IOException
+    {
+        if (seriesFile != null)
+            Files.deleteIfExists(seriesFile);
+    }
+
+    /**
+     * Restore the summary from an execution context (e.g. when a step is resumed on a
+     * container that is still running).
+     */
+    public synchronized void restore(ExecutionContext executionContext)
+    {
+        samples = executionContext.getInt(Keys.STATS_SAMPLES, 0);
+        cpuTime = executionContext.getLong(Keys.STATS_CPU_TIME, 0L);
+        peakMemory = executionContext.getLong(Keys.STATS_PEAK_MEMORY, 0L);
+        blockReadBytes = executionContext.getLong(Keys.STATS_BLOCK_READ, 0L);
+        blockWriteBytes = executionContext.getLong(Keys.STATS_BLOCK_WRITE, 0L);
+        networkRxBytes = executionContext.getLong(Keys.STATS_NETWORK_RX, 0L);
+        networkTxBytes = executionContext.getLong(Keys.STATS_NETWORK_TX, 0L);
+    }
+
+    /**
+     * Save the summary into an execution context
+     */
+    public synchronized void save(ExecutionContext executionContext)
+    {
+        executionContext.putInt(Keys.STATS_SAMPLES, samples);
+        executionContext.putLong(Keys.STATS_CPU_TIME, cpuTime);
+        executionContext.putLong(Keys.STATS_PEAK_MEMORY, peakMemory);
+        executionContext.putLong(Keys.STATS_BLOCK_READ, blockReadBytes);
+        executionContext.putLong(Keys.STATS_BLOCK_WRITE, blockWriteBytes);
+        executionContext.putLong(Keys.STATS_NETWORK_RX, networkRxBytes);
+        executionContext.putLong(Keys.STATS_NETWORK_TX, networkTxBytes);
+        if (seriesFile != null)
+            executionContext.putString(Keys.STATS_FILE, seriesFile.toString());
+    }
+
+    /**
+     * Read a time series written by a collector.
+     *
+     * @param seriesFile The file holding the time series
+     * @return a list of samples (empty if the file does not exist)
+     * @throws IOException
+     */
+    public static List<ContainerStatsSample> readSeries(Path seriesFile) throws IOException
+    {
+        List<ContainerStatsSample> result = new ArrayList<>();
+        if (!Files.exists(seriesFile))
+            return result;
+
+        for (String line: Files.readAllLines(seriesFile, StandardCharsets.UTF_8)) {
+            if (line.isEmpty() || line.equals(SERIES_HEADER))
+                continue;
+            String[] fields = line.split(",");
+            if (fields.length != 7)
+                throw new IOException("Malformed line in time series: " + line);
+            long[] values = new long[fields.length];
+            try {
+                for (int i = 0; i < fields.length; ++i)
+                    values[i] = Long.parseLong(fields[i]);
+            } catch (NumberFormatException ex) {
+                throw new IOException("Malformed line in time series: " + line, ex);
+            }
+            result.add(new ContainerStatsSample(
+                values[0], values[1], values[2], values[3], values[4], values[5], values[6]));
+        }
+
+        return result;
+    }
+}
@@ -0,0 +1,171 @@
+package eu.slipo.workbench.rpc.jobs.tasklet.docker;
+
+import java.util.Map;
+
+import com.spotify.docker.client.messages.BlockIoStats;
+import com.spotify.docker.client.messages.ContainerStats;
+import com.spotify.docker.client.messages.CpuStats;
+import com.spotify.docker.client.messages.MemoryStats;
+import com.spotify.docker.client.messages.NetworkStats;
+
+/**
+ * A sample of the resources consumed by a running container. CPU time and I/O counters are
+ * cumulative (since the container was started).
+ */
+public class ContainerStatsSample
+{
+    private final long sampledOn;
+
+    private final long cpuTime;
+
+    private final long memory;
+
+    private final long blockReadBytes;
+
+    private final long blockWriteBytes;
+
+    private final long networkRxBytes;
+
+    private final long networkTxBytes;
+
+    /**
+     * @param sampledOn The time (epoch milliseconds) of the sample
+     * @param cpuTime The CPU time (milliseconds)
+     * @param memory The resident memory (bytes)
+     * @param blockReadBytes The number of bytes read from block devices
+     * @param blockWriteBytes The number of bytes written to block devices
+     * @param networkRxBytes The number of bytes received from network
+     * @param networkTxBytes The number of bytes transmitted to network
+     */
+    public ContainerStatsSample(
+        long sampledOn, long cpuTime, long memory,
+        long blockReadBytes, long blockWriteBytes, long networkRxBytes, long networkTxBytes)
+    {
+        this.sampledOn = sampledOn;
+        this.cpuTime = cpuTime;
+        this.memory = memory;
+        this.blockReadBytes = blockReadBytes;
+        this.blockWriteBytes = blockWriteBytes;
+        this.networkRxBytes = networkRxBytes;
+        this.networkTxBytes = networkTxBytes;
+    }
+
+    /**
+     * Convert a snapshot of statistics (as reported by docker daemon) to a sample.
+     * <p>
+     * The resident memory is the RSS of the container's cgroup, if reported; otherwise (e.g. on
+     * a cgroup-v2 host) the total memory usage is used. Any counter not reported is taken as 0.
+     */
+    public static ContainerStatsSample of(ContainerStats stats)
+    {
+        final long sampledOn = stats.read() == null? System.currentTimeMillis() : stats.read().getTime();
+
+        long cpuTime = 0L;
+        CpuStats cpuStats = stats.cpuStats();
+        if (cpuStats != null && cpuStats.cpuUsage() != null && cpuStats.cpuUsage().totalUsage() != null)
+            cpuTime = cpuStats.cpuUsage().totalUsage() / 1000000L;
+
+        long memory = 0L;
+        MemoryStats memoryStats = stats.memoryStats();
+        if (memoryStats != null) {
+            MemoryStats.Stats m = memoryStats.stats();
+            if (m != null && m.totalRss() != null)
+                memory = m.totalRss();
+            else if (memoryStats.usage() != null)
+                memory = memoryStats.usage();
+        }
+
+        long blockReadBytes = 0L, blockWriteBytes = 0L;
+        BlockIoStats blockIoStats = stats.blockIoStats();
+        if (blockIoStats != null && blockIoStats.ioServiceBytesRecursive() != null) {
+            // Each entry is a map of {major, minor, op, value} (one per device and operation)
+            for (Object entry: blockIoStats.ioServiceBytesRecursive()) {
+                if (!(entry instanceof Map))
+                    continue;
+                Object op = ((Map<?,?>) entry).get("op");
+                Object value = ((Map<?,?>) entry).get("value");
+                if (!(value instanceof Number))
+                    continue;
+                if ("Read".equalsIgnoreCase(String.valueOf(op)))
+                    blockReadBytes += ((Number) value).longValue();
+                else if ("Write".equalsIgnoreCase(String.valueOf(op)))
+                    blockWriteBytes += ((Number) value).longValue();
+            }
+        }
+
+        long networkRxBytes = 0L, networkTxBytes = 0L;
+        if (stats.networks() != null) {
+            for (NetworkStats networkStats: stats.networks().values()) {
+                if (networkStats.rxBytes() != null)
+                    networkRxBytes += networkStats.rxBytes();
+                if (networkStats.txBytes() != null)
+                    networkTxBytes += networkStats.txBytes();
+            }
+        }
+
+        return new ContainerStatsSample(
+            sampledOn, cpuTime, memory, blockReadBytes, blockWriteBytes, networkRxBytes, networkTxBytes);
+    }
+
+    /**
+     * The time (epoch milliseconds) of this sample
+     */
+    public long sampledOn()
+    {
+        return sampledOn;
+    }
+
+    /**
+     * The CPU time (milliseconds)
+     */
+    public long cpuTime()
+    {
+        return cpuTime;
+    }
+
+    /**
+     * The resident memory (bytes)
+     */
+    public long memory()
+    {
+        return memory;
+    }
+
+    public long blockReadBytes()
+    {
+        return blockReadBytes;
+    }
+
+    public long blockWriteBytes()
+    {
+        return blockWriteBytes;
+    }
+
+    public long networkRxBytes()
+    {
+        return networkRxBytes;
+    }
+
+    public long networkTxBytes()
+    {
+        return networkTxBytes;
+    }
+
+    /**
+     * Check if this sample carries no data. This is what docker daemon reports for a container
+     * that is no longer running.
+     */
+    public boolean isEmpty()
+    {
+        return cpuTime == 0 && memory == 0;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format(
+            "ContainerStatsSample [sampledOn=%d, cpuTime=%d, memory=%d, blockReadBytes=%d, " +
+                "blockWriteBytes=%d, networkRxBytes=%d, networkTxBytes=%d]",
+            sampledOn, cpuTime, memory, blockReadBytes, blockWriteBytes, networkRxBytes, networkTxBytes);
+    }
+}
@@ -0,0 +1,30 @@
+package eu.slipo.workbench.rpc.jobs.tasklet.docker;
+
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.exceptions.DockerException;
+
+/**
+ * A source of resource statistics for running containers.
+ */
+@FunctionalInterface
+public interface ContainerStatsSource
+{
+    /**
+     * Take a sample of the resources consumed by a container.
+     *
+     * @param containerId The container ID (or name)
+     * @throws DockerException if the statistics cannot be retrieved
+     * @throws InterruptedException
+     */
+    ContainerStatsSample sample(String containerId) throws DockerException, InterruptedException;
+
+    /**
+     * Create a source that asks a docker daemon for a (one-shot) snapshot of statistics.
+     *
+     * @param docker A client for the docker daemon where containers are running
+     */
+    static ContainerStatsSource of(DockerClient docker)
+    {
+        return containerId -> ContainerStatsSample.of(docker.stats(containerId));
+    }
+}
@@ -0,0 +1,64 @@
+package eu.slipo.workbench.rpc.jobs.tasklet.docker;
+
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.StepExecutionListener;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.util.Assert;
+
+/**
+ * A tasklet that creates a docker container and then runs it (waiting for it to complete),
+ * all inside a single step.
+ * <p>
+ * This is mostly useful for worker steps of a partitioned step: a worker step is a single
+ * step (so it cannot be split into separate create/run steps), and its (per-partition)
+ * parameters are only available in the step execution context.
+ *
+ * @see CreateContainerTasklet
+ * @see RunContainerTasklet
+ */
+public class CreateAndRunContainerTasklet implements Tasklet, StepExecutionListener
+{
+    private final CreateContainerTasklet createTasklet;
+
+    private final RunContainerTasklet runTasklet;
+
+    public CreateAndRunContainerTasklet(CreateContainerTasklet createTasklet, RunContainerTasklet runTasklet)
+    {
+        Assert.notNull(createTasklet, "A tasklet to create the container is required");
+        Assert.notNull(runTasklet, "A tasklet to run the container is required");
+        this.createTasklet = createTasklet;
+        this.runTasklet = runTasklet;
+    }
+
+    @Override
+    public RepeatStatus execute(StepContribution contribution, ChunkContext chunkContext)
+        throws Exception
+    {
+        ExecutionContext executionContext =
+            chunkContext.getStepContext().getStepExecution().getExecutionContext();
+
+        if (!executionContext.containsKey(CreateContainerTasklet.Keys.CONTAINER_ID)) {
+            createTasklet.execute(contribution, chunkContext);
+            return RepeatStatus.CONTINUABLE;
+        }
+
+        return runTasklet.execute(contribution, chunkContext);
+    }
+
+    @Override
+    public void beforeStep(StepExecution stepExecution)
+    {
+        runTasklet.beforeStep(stepExecution);
+    }
+
+    @Override
+    public ExitStatus afterStep(StepExecution stepExecution)
+    {
+        return runTasklet.afterStep(stepExecution);
+    }
+}
@@ -1,6 +1,9 @@
 package eu.slipo.workbench.rpc.jobs.tasklet.docker;
 
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -19,6 +22,11 @@ import org.springframework.util.Assert;
 import com.spotify.docker.client.DockerClient;
 import com.spotify.docker.client.messages.ContainerConfig;
 import com.spotify.docker.client.messages.ContainerCreation;
+import com.spotify.docker.client.messages.HostConfig;
+
+import eu.slipo.workbench.rpc.service.ContainerHost;
+import eu.slipo.workbench.rpc.service.ContainerHostPool;
+import eu.slipo.workbench.rpc.service.MetricRegistry;
 
 /**
  * A tasklet that creates a docker container based on given configuration. 
@@ -35,6 +43,11 @@ public class CreateContainerTasklet implements Tasklet
         public static final String CONTAINER_ID = "containerId";
         
         public static final String CONTAINER_NAME = "containerName";
+
+        /**
+         * The name of the docker host where the container is created (only if placed on a pool)
+         */
+        public static final String CONTAINER_HOST = "containerHost";
     }
     
     /**
@@ -46,8 +59,12 @@ public class CreateContainerTasklet implements Tasklet
         
         private String containerName;
         
+        private ContainerHostPool pool;
+        
         private ContainerConfigurer containerConfigurer = new ContainerConfigurer();
         
+        private MetricRegistry metrics;
+        
         private Builder() {}
         
         /**
@@ -61,6 +78,17 @@ public class CreateContainerTasklet implements Tasklet
             return this;
         }
 
+        /**
+         * Provide a pool of docker hosts to place the container on (may be <tt>null</tt>). If 
+         * present, the container is created on the least-loaded host of the pool, and the 
+         * client given by {@link Builder#client(DockerClient)} is not used.
+         */
+        public Builder hosts(ContainerHostPool pool)
+        {
+            this.pool = pool;
+            return this;
+        }
+        
         /**
          * Set a name for this container
          */
@@ -81,16 +109,32 @@ public class CreateContainerTasklet implements Tasklet
             return this;
         }
         
+        /**
+         * Provide a registry to record the duration of creating the container into (may be 
+         * <tt>null</tt>). See {@link RunContainerTasklet#CONTAINER_PHASE}.
+         */
+        public Builder metrics(MetricRegistry registry)
+        {
+            this.metrics = registry;
+            return this;
+        }
+        
         /**
          * Build a tasklet from configuration.
          */
         public CreateContainerTasklet build()
         {
-            Assert.state(client != null, 
+            Assert.state(client != null || pool != null, 
                 "A docker client is required to communicate to docker daemon!");
+            Assert.state(pool == null || containerName != null, 
+                "A container name is required to place a container on a pool of hosts");
             
             ContainerConfig config = containerConfigurer.buildConfiguration();
-            CreateContainerTasklet tasklet = new CreateContainerTasklet(client, config, containerName);;
+            CreateContainerTasklet tasklet = new CreateContainerTasklet(client, config, containerName);
+            if (pool != null)
+                tasklet.setPool(pool);
+            if (metrics != null)
+                tasklet.setMetrics(metrics);
             return tasklet;
         }
         
@@ -107,15 +151,28 @@ public class CreateContainerTasklet implements Tasklet
     
     private final String containerName;
     
+    private ContainerHostPool pool;
+    
+    private MetricRegistry metrics;
+    
     private CreateContainerTasklet(DockerClient docker, ContainerConfig config, String name) 
     {
-        Assert.notNull(docker, "The docker client must be provided");
         Assert.notNull(config, "The container configuration is needed");
         
         this.docker = docker;
         this.containerConfig = config;
         this.containerName = name;
     }
+    
+    private void setPool(ContainerHostPool pool)
+    {
+        this.pool = pool;
+    }
+    
+    private void setMetrics(MetricRegistry metrics)
+    {
+        this.metrics = metrics;
+    }
 
     @Override
     public RepeatStatus execute(StepContribution contribution, ChunkContext chunkContext)
@@ -131,8 +188,26 @@ public class CreateContainerTasklet implements Tasklet
             logger.info("The container is already created as {}; Skipping", containerId);
         } else {
             // Create the container from given configuration
-            ContainerCreation creation = docker.createContainer(containerConfig, containerName);
+            ContainerCreation creation = null;
+            final long createRequested = System.nanoTime();
+            if (pool == null) {
+                creation = docker.createContainer(containerConfig, containerName);
+            } else {
+                ContainerHost host = createOnPool();
+                try {
+                    creation = host.client().createContainer(mapToHost(containerConfig, host), containerName);
+                } catch (Exception ex) {
+                    pool.release(containerName);
+                    throw ex;
+                }
+                executionContext.putString(Keys.CONTAINER_HOST, host.name());
+            }
             containerId = creation.id();
+            if (metrics != null) {
+                metrics.timer(RunContainerTasklet.CONTAINER_PHASE, 
+                        "The duration of phases of the lifecycle of containers", "phase", "create")
+                    .recordSince(createRequested);
+            }
             logger.info("Created container from image {}: {}", containerConfig.image(), containerId);
             executionContext.putString(Keys.CONTAINER_ID, containerId);
             if (containerName != null)
@@ -141,5 +216,37 @@ public class CreateContainerTasklet implements Tasklet
         
         return RepeatStatus.FINISHED;
     }
+    
+    /**
+     * Place our container on a host of the pool. The reservation is released by the tasklet 
+     * running the container (see {@link RunContainerTasklet}). 
+     */
+    private ContainerHost createOnPool()
+    {
+        final HostConfig hostConfig = containerConfig.hostConfig();
+        final Long memory = hostConfig == null? null : hostConfig.memory();
+        
+        ContainerHost host = pool.place(containerName, memory == null || memory < 0? 0L : memory);
+        logger.info("Placed container {} on docker host {}", containerName, host.name());
+        return host;
+    }
+    
+    /**
+     * Map the sources of bind-mounts to paths on a docker host
+     */
+    private static ContainerConfig mapToHost(ContainerConfig config, ContainerHost host)
+    {
+        final HostConfig hostConfig = config.hostConfig();
+        if (hostConfig == null || hostConfig.binds() == null || host.pathMappings().isEmpty())
+            return config;
+        
+        List<String> binds = hostConfig.binds().stream()
+            .map(host::mapBind)
+            .collect(Collectors.toList());
+        
+        return config.toBuilder()
+            .hostConfig(hostConfig.toBuilder().binds(binds).build())
+            .build();
+    }
 
 }
@@ -1,9 +1,17 @@
 package eu.slipo.workbench.rpc.jobs.tasklet.docker;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Date;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -27,6 +35,10 @@ import com.spotify.docker.client.messages.ContainerInfo;
 import com.spotify.docker.client.messages.ContainerState;
 
 import eu.slipo.workbench.rpc.jobs.tasklet.TimedOutExitStatus;
+import eu.slipo.workbench.rpc.service.AdmissionScheduler;
+import eu.slipo.workbench.rpc.service.ContainerHost;
+import eu.slipo.workbench.rpc.service.ContainerHostPool;
+import eu.slipo.workbench.rpc.service.MetricRegistry;
 
 /**
  * A tasklet that starts a docker container waiting for it to complete.
@@ -51,6 +63,13 @@ public class RunContainerTasklet implements Tasklet, StepExecutionListener
      */
     public static final long DEFAULT_CHECK_INTERVAL = 1000L;
     
+    /**
+     * The default maximum interval (in milliseconds) to block while waiting for an event 
+     * on a container. When this interval elapses, control is returned to the step (so that 
+     * a stop request on the job execution can be noticed).
+     */
+    public static final long DEFAULT_MAX_WAIT_INTERVAL = 5000L;
+    
     /**
      * The default timeout (in milliseconds) waiting for a container to complete.
      */
@@ -71,6 +90,39 @@ public class RunContainerTasklet implements Tasklet, StepExecutionListener
      */
     public static final boolean REMOVE_ON_FINISHED = false;
     
+    /**
+     * The default size (in bytes) for the tail of the output kept in execution context.
+     */
+    public static final int DEFAULT_OUTPUT_TAIL_SIZE = 8 * 1024;
+    
+    /**
+     * The number of lines to fetch (from docker daemon) when a tail of the output is needed 
+     * and no log file is present.
+     */
+    private static final int OUTPUT_TAIL_LINES = 250;
+    
+    /**
+     * The maximum amount of time (in milliseconds) to wait for a log follower to catch up 
+     * with a finished container.
+     */
+    private static final long LOG_FOLLOWER_JOIN_TIMEOUT = 10 * 1000L;
+    
+    /**
+     * The minimum accepted interval (in milliseconds) for sampling container statistics.
+     */
+    public static final long MIN_STATS_INTERVAL = 1000L;
+    
+    /**
+     * The default interval (in milliseconds) for sampling container statistics.
+     */
+    public static final long DEFAULT_STATS_INTERVAL = 5000L;
+    
+    /**
+     * The name of the timer (see {@link MetricRegistry}) for phases of the lifecycle of a 
+     * container (e.g. <tt>admission</tt>, <tt>start</tt>, <tt>run</tt>).
+     */
+    public static final String CONTAINER_PHASE = "slipo_rpc_container_phase_seconds";
+    
     /**
      * An invalid exit-code (assuming an exit-code is a unsigned 8-bit integer)
      */
@@ -89,7 +141,63 @@ public class RunContainerTasklet implements Tasklet, StepExecutionListener
         
         public static final String COMMAND_EXIT_CODE = "command.exitCode";
         
+        /**
+         * The (bounded) tail of the output (stdout/stderr) of the command
+         */
         public static final String COMMAND_OUTPUT = "command.output";
+        
+        /**
+         * The log file where the entire output (stdout/stderr) of the command is streamed
+         */
+        public static final String COMMAND_OUTPUT_FILE = "command.outputFile";
+        
+        /**
+         * The maximum size (bytes) of a segment of the log file (see {@link #COMMAND_OUTPUT_FILE})
+         */
+        public static final String COMMAND_OUTPUT_FILE_MAX_SIZE = "command.outputFile.maxSize";
+        
+        /**
+         * The number of rotated backups of the log file (see {@link #COMMAND_OUTPUT_FILE})
+         */
+        public static final String COMMAND_OUTPUT_FILE_MAX_BACKUPS = "command.outputFile.maxBackups";
+        
+        /**
+         * The name of the container the statistics refer to
+         */
+        public static final String STATS_CONTAINER = "stats.container";
+        
+        /**
+         * The number of samples of statistics taken from the container
+         */
+        public static final String STATS_SAMPLES = "stats.samples";
+        
+        /**
+         * The CPU time (milliseconds) consumed by the container
+         */
+        public static final String STATS_CPU_TIME = "stats.cpuTime";
+        
+        /**
+         * The peak (sampled) resident memory (bytes) of the container
+         */
+        public static final String STATS_PEAK_MEMORY = "stats.peakMemory";
+        
+        /**
+         * A flag indicating that the container was killed for exceeding its memory limit
+         */
+        public static final String STATS_OOM_KILLED = "stats.oomKilled";
+        
+        public static final String STATS_BLOCK_READ = "stats.blockReadBytes";
+        
+        public static final String STATS_BLOCK_WRITE = "stats.blockWriteBytes";
+        
+        public static final String STATS_NETWORK_RX = "stats.networkRxBytes";
+        
+        public static final String STATS_NETWORK_TX = "stats.networkTxBytes";
+        
+        /**
+         * The file holding the time series of statistics (if one is kept)
+         */
+        public static final String STATS_FILE = "stats.file";
     }
     
     /**
@@ -99,6 +207,8 @@ public class RunContainerTasklet implements Tasklet, StepExecutionListener
     {
         private DockerClient client;
         
+        private ContainerHostPool pool;
+        
         private String containerId;
         
         private Long timeout;
@@ -113,6 +223,32 @@ public class RunContainerTasklet implements Tasklet, StepExecutionListener
         
         private Boolean removeOnFinished;
         
+        private ContainerEventMonitor monitor;
+        
+        private Long maxWaitInterval;
+        
+        private ContainerLogFile logFile;
+        
+        private Integer outputTailSize;
+        
+        private AdmissionScheduler scheduler;
+        
+        private long memoryDemand;
+        
+        private double cpuDemand;
+        
+        private int priority;
+        
+        private Long expectedDuration;
+        
+        private Long statsInterval;
+        
+        private ContainerStatsSource statsSource;
+        
+        private Path statsFile;
+        
+        private MetricRegistry metrics;
+        
         private Builder() {}
         
         /**
@@ -125,6 +261,18 @@ public class RunContainerTasklet implements Tasklet, StepExecutionListener
             return this;
         }
         
+        /**
+         * Provide a pool of docker hosts (may be <tt>null</tt>). If present, the tasklet talks to 
+         * the host where the container was placed (see {@link CreateContainerTasklet.Builder#hosts}), 
+         * using the monitor of that host; the client and the monitor given to this builder are 
+         * not used.
+         */
+        public Builder hosts(ContainerHostPool pool)
+        {
+            this.pool = pool;
+            return this;
+        }
+        
         /**
          * Set the container ID (or name) to identify the target container.   
          */
@@ -166,6 +314,150 @@ public class RunContainerTasklet implements Tasklet, StepExecutionListener
             return this;
         }
         
+        /**
+         * Provide a monitor for container events. If present (and connected), the tasklet
+         * is woken up by events on the target container, instead of polling its status at a 
+         * fixed rate. If <tt>null</tt>, the tasklet will simply poll.
+         */
+        public Builder monitor(ContainerEventMonitor monitor)
+        {
+            this.monitor = monitor;
+            return this;
+        }
+        
+        /**
+         * Set the maximum interval (milliseconds) to block while waiting for an event. This
+         * is only meaningful when a monitor is present (see {@link Builder#monitor}).
+         */
+        public Builder maxWaitInterval(long t)
+        {
+            Assert.isTrue(t > 0, "Expected a positive interval");
+            this.maxWaitInterval = t;
+            return this;
+        }
+        
+        /**
+         * Stream the output (stdout/stderr) of the container into a log file (while the 
+         * container is running), rotated on default limits (see {@link ContainerLogFile}).
+         * 
+         * @param path The absolute path for the log file
+         */
+        public Builder logFile(Path path)
+        {
+            this.logFile = new ContainerLogFile(path);
+            return this;
+        }
+        
+        /**
+         * Stream the output (stdout/stderr) of the container into a log file (while the 
+         * container is running).
+         * 
+         * @param path The absolute path for the log file
+         * @param maxSize The maximum size (bytes) of a log file before it is rotated
+         * @param maxBackups The number of rotated files to retain
+         */
+        public Builder logFile(Path path, long maxSize, int maxBackups)
+        {
+            this.logFile = new ContainerLogFile(path, maxSize, maxBackups);
+            return this;
+        }
+        
+        /**
+         * Set the size (in bytes) of the tail of the output that is kept into the execution 
+         * context. The default is {@link RunContainerTasklet#DEFAULT_OUTPUT_TAIL_SIZE}.
+         */
+        public Builder outputTailSize(int size)
+        {
+            Assert.isTrue(size >= 0, "Expected a non-negative size");
+            this.outputTailSize = size;
+            return this;
+        }
+        
+        /**
+         * Provide a scheduler to admit the container under a budget of host resources. If 
+         * present, the container is started only when admitted; until then, the step keeps 
+         * waiting (returning control to the step every max wait interval). If <tt>null</tt>, 
+         * the container is started right away.
+         * 
+         * @param scheduler The admission scheduler
+         * @param memory The memory limit (in bytes) declared for the container
+         * @param cpus The number of CPUs declared for the container
+         * @param priority The priority of the request for admission
+         */
+        public Builder admission(AdmissionScheduler scheduler, long memory, double cpus, int priority)
+        {
+            Assert.isTrue(memory >= 0, "Expected a non-negative memory demand");
+            Assert.isTrue(cpus >= 0, "Expected a non-negative CPU demand");
+            this.scheduler = scheduler;
+            this.memoryDemand = memory;
+            this.cpuDemand = cpus;
+            this.priority = priority;
+            return this;
+        }
+        
+        /**
+         * Declare the expected duration of the run, when requesting admission (only meaningful 
+         * if a scheduler is present).
+         * 
+         * @param millis The expected duration (in milliseconds), or a negative number if not known
+         */
+        public Builder expectedDuration(long millis)
+        {
+            this.expectedDuration = millis;
+            return this;
+        }
+        
+        /**
+         * Sample the resources (CPU, memory, I/O) consumed by the container while it is running, 
+         * and keep a summary into the execution context (see {@link Keys}). Statistics are
+         * retrieved from the docker daemon where the container runs.
+         * 
+         * @param millis The interval (milliseconds) between samples, or a negative number to 
+         *   disable sampling. The minimum allowed value for this is 
+         *   {@link RunContainerTasklet#MIN_STATS_INTERVAL}.
+         */
+        public Builder stats(long millis)
+        {
+            return stats(millis, null);
+        }
+        
+        /**
+         * Sample the resources consumed by the container while it is running (see 
+         * {@link Builder#stats(long)}), using a given source of statistics.
+         * 
+         * @param millis The interval (milliseconds) between samples
+         * @param source A source of statistics, or <tt>null</tt> to ask the docker daemon
+         */
+        public Builder stats(long millis, ContainerStatsSource source)
+        {
+            this.statsInterval = millis < 0? null : Math.max(millis, MIN_STATS_INTERVAL);
+            this.statsSource = source;
+            return this;
+        }
+        
+        /**
+         * Keep every sample of statistics (i.e. the time series of the container) into a file. 
+         * This is only meaningful if sampling is enabled (see {@link Builder#stats(long)}).
+         * 
+         * @param path The absolute path for the file
+         */
+        public Builder statsFile(Path path)
+        {
+            Assert.isTrue(path == null || path.isAbsolute(), "Expected an absolute path");
+            this.statsFile = path;
+            return this;
+        }
+        
+        /**
+         * Provide a registry to record the duration of phases of the container's lifecycle
+         * into (may be <tt>null</tt>). See {@link RunContainerTasklet#CONTAINER_PHASE}.
+         */
+        public Builder metrics(MetricRegistry registry)
+        {
+            this.metrics = registry;
+            return this;
+        }
+        
         /**
          * Set whether a timeout on the container's command should bring a step to
          * a <tt>FAILED</tt> batch status (default is <tt>true</tt>).
@@ -205,11 +497,14 @@ public class RunContainerTasklet implements Tasklet, StepExecutionListener
          */
         public RunContainerTasklet build()
         {
-            Assert.state(client != null, 
+            Assert.state(client != null || pool != null, 
                 "A docker client is needed to communicate to docker daemon!");
             
             RunContainerTasklet tasklet = new RunContainerTasklet(client, containerId);
             
+            if (pool != null)
+                tasklet.setPool(pool);
+            
             if (checkInterval != null)
                 tasklet.setCheckInterval(checkInterval);
             if (timeout != null)
@@ -225,6 +520,27 @@ public class RunContainerTasklet implements Tasklet, StepExecutionListener
             if (removeOnFinished != null)
                 tasklet.setRemoveOnFinished(removeOnFinished);
             
+            if (monitor != null && pool == null)
+                tasklet.setMonitor(monitor);
+            if (maxWaitInterval != null)
+                tasklet.setMaxWaitInterval(maxWaitInterval);
+            
+            if (logFile != null)
+                tasklet.setLogFile(logFile);
+            if (outputTailSize != null)
+                tasklet.setOutputTailSize(outputTailSize);
+            
+            if (scheduler != null)
+                tasklet.setAdmission(scheduler, memoryDemand, cpuDemand, priority);
+            if (expectedDuration != null)
+                tasklet.setExpectedDuration(expectedDuration);
+            
+            if (statsInterval != null)
+                tasklet.setStats(statsInterval, statsSource, statsFile);
+            
+            if (metrics != null)
+                tasklet.setMetrics(metrics);
+            
             return tasklet;
         }
     }
@@ -234,9 +550,19 @@ public class RunContainerTasklet implements Tasklet, StepExecutionListener
         return new Builder();
     }
     
-    private final DockerClient docker;
+    private DockerClient docker;
     
     private final String containerId;
+    
+    /**
+     * The pool of hosts where our container was placed (if any)
+     */
+    private ContainerHostPool pool;
+    
+    /**
+     * The host (of the pool) where our container was placed; resolved before the first use
+     */
+    private ContainerHost host;
 
     private long checkInterval = DEFAULT_CHECK_INTERVAL;
 
@@ -250,15 +576,95 @@ public class RunContainerTasklet implements Tasklet, StepExecutionListener
     
     private boolean removeOnFinished = REMOVE_ON_FINISHED;
     
+    private ContainerEventMonitor monitor;
+    
+    private long maxWaitInterval = DEFAULT_MAX_WAIT_INTERVAL;
+    
+    private ContainerLogFile logFile;
+    
+    private int outputTailSize = DEFAULT_OUTPUT_TAIL_SIZE;
+    
+    private AdmissionScheduler scheduler;
+    
+    private long memoryDemand;
+    
+    private double cpuDemand;
+    
+    private int priority;
+    
+    private long expectedDuration = -1L;
+    
+    /**
+     * The interval (milliseconds) between samples of statistics, or <tt>-1</tt> if sampling 
+     * is disabled
+     */
+    private long statsInterval = -1L;
+    
+    /**
+     * The source of statistics, or <tt>null</tt> if the docker daemon is asked
+     */
+    private ContainerStatsSource statsSource;
+    
+    private Path statsFile;
+    
+    /**
+     * A follower streaming logs into our log file (if any)
+     */
+    private LogFollower logFollower;
+    
+    /**
+     * A collector summarizing samples of statistics (if sampling is enabled)
+     */
+    private ContainerStatsCollector statsCollector;
+    
+    /**
+     * A sampler taking statistics from the running container (if sampling is enabled)
+     */
+    private StatsSampler statsSampler;
+    
+    /**
+     * The ticket for admission of our container (if a scheduler is present)
+     */
+    private AdmissionScheduler.Ticket ticket;
+    
+    /**
+     * The time (see {@link System#nanoTime()}) admission was requested for our container 
+     */
+    private long admissionRequested;
+    
+    private MetricRegistry metrics;
+    
     private RunContainerTasklet(DockerClient docker, String containerId) 
     {
-        Assert.notNull(docker, "The docker client must be provided");
         Assert.notNull(containerId, "A non-null container ID is needed");
         
         this.docker = docker;
         this.containerId = containerId;
     }
     
+    private void setPool(ContainerHostPool pool)
+    {
+        this.pool = pool;
+    }
+    
+    /**
+     * Resolve the host (of the pool) where our container was placed, so that all following 
+     * operations are routed to it. This is a no-op if a pool is not present.
+     */
+    private void resolveHost()
+    {
+        if (pool == null || host != null)
+            return;
+        
+        host = pool.locate(containerId);
+        if (host == null)
+            throw new IllegalStateException("The container " + containerId + " is not found on any host");
+        
+        logger.info("The container {} is placed on docker host {}", containerId, host.name());
+        docker = host.client();
+        monitor = host.monitor();
+    }
+    
     private void setCheckInterval(long checkMillis)
     {
         this.checkInterval = checkMillis < MIN_CHECK_INTERVAL? MIN_CHECK_INTERVAL : checkMillis;
@@ -304,28 +710,402 @@ public class RunContainerTasklet implements Tasklet, StepExecutionListener
         this.removeOnFinished = flag;
     }
     
+    private void setMonitor(ContainerEventMonitor monitor)
+    {
+        this.monitor = monitor;
+    }
+    
+    private void setMaxWaitInterval(long millis)
+    {
+        this.maxWaitInterval = millis;
+    }
+    
+    public long getMaxWaitInterval()
+    {
+        return maxWaitInterval;
+    }
+    
+    private void setAdmission(AdmissionScheduler scheduler, long memory, double cpus, int priority)
+    {
+        this.scheduler = scheduler;
+        this.memoryDemand = memory;
+        this.cpuDemand = cpus;
+        this.priority = priority;
+    }
+    
+    private void setExpectedDuration(long millis)
+    {
+        this.expectedDuration = millis;
+    }
+    
+    public long getExpectedDuration()
+    {
+        return expectedDuration;
+    }
+    
+    private void setStats(long interval, ContainerStatsSource source, Path seriesFile)
+    {
+        this.statsInterval = interval;
+        this.statsSource = source;
+        this.statsFile = seriesFile;
+    }
+    
+    public long getStatsInterval()
+    {
+        return statsInterval;
+    }
+    
+    private void setMetrics(MetricRegistry metrics)
+    {
+        this.metrics = metrics;
+    }
+    
+    private void recordPhase(String phase, long duration, TimeUnit unit)
+    {
+        if (metrics != null) {
+            metrics.timer(CONTAINER_PHASE, "The duration of phases of the lifecycle of containers", 
+                    "phase", phase)
+                .record(duration, unit);
+        }
+    }
+    
+    private void setLogFile(ContainerLogFile logFile)
+    {
+        this.logFile = logFile;
+    }
+    
+    public ContainerLogFile getLogFile()
+    {
+        return logFile;
+    }
+    
+    private void setOutputTailSize(int size)
+    {
+        this.outputTailSize = size;
+    }
+    
+    public int getOutputTailSize()
+    {
+        return outputTailSize;
+    }
+    
     /**
-     * Fetch all logs (stdout/stderr) generated from a container. 
+     * A follower for the logs (stdout/stderr) of a container, copying them into our log
+     * file as they are generated.
+     */
+    private class LogFollower implements Runnable
+    {
+        private final Thread thread;
+        
+        private volatile LogStream stream;
+        
+        private volatile boolean closed = false;
+        
+        private LogFollower()
+        {
+            this.thread = new Thread(this, "logs-" + containerId);
+            this.thread.setDaemon(true);
+        }
+        
+        private void start()
+        {
+            thread.start();
+        }
+        
+        @Override
+        public void run()
+        {
+            try {
+                copyLogsFromContainer(true, s -> { stream = s; return !closed; });
+            } catch (DockerException | IOException e) {
+                if (!closed)
+                    logger.error("Failed to follow logs for container {}: {}", containerId, e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        
+        /**
+         * Wait for the follower to reach the end of the logs (i.e. the container has exited)
+         */
+        private boolean join(long timeout) throws InterruptedException
+        {
+            thread.join(timeout);
+            return !thread.isAlive();
+        }
+        
+        private void close()
+        {
+            closed = true;
+            LogStream s = stream;
+            if (s != null)
+                s.close();
+        }
+    }
+    
+    /**
+     * Start following the logs of the container (if a log file is configured)
+     */
+    private void startFollowingLogs()
+    {
+        if (logFile == null)
+            return;
+        if (logFollower != null)
+            logFollower.close();
+        logFollower = new LogFollower();
+        logFollower.start();
+    }
+    
+    /**
+     * A sampler of statistics for a running container, adding samples to our collector
+     * (at a fixed interval).
+     */
+    private class StatsSampler implements Runnable
+    {
+        private final Thread thread;
+        
+        private final ContainerStatsSource source;
+        
+        private final ContainerStatsCollector collector;
+        
+        private volatile boolean closed = false;
+        
+        private StatsSampler(ContainerStatsSource source, ContainerStatsCollector collector)
+        {
+            this.source = source;
+            this.collector = collector;
+            this.thread = new Thread(this, "stats-" + containerId);
+            this.thread.setDaemon(true);
+        }
+        
+        private void start()
+        {
+            thread.start();
+        }
+        
+        @Override
+        public void run()
+        {
+            try {
+                while (!closed) {
+                    try {
+                        ContainerStatsSample sample = source.sample(containerId);
+                        if (!closed)
+                            collector.add(sample);
+                    } catch (DockerException | IOException e) {
+                        if (!closed)
+                            logger.warn("Failed to sample statistics for container {}: {}", 
+                                containerId, e.getMessage());
+                    }
+                    synchronized (this) {
+                        if (!closed)
+                            wait(statsInterval);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        
+        private synchronized void close()
+        {
+            closed = true;
+            notifyAll();
+        }
+    }
+    
+    /**
+     * Start sampling statistics of the container (if sampling is enabled).
+     * 
+     * @param executionContext 
+     * @param resumed A flag indicating that the step is resumed on a running container, so
+     *   the summary should be restored from the execution context
+     */
+    private void startSampling(ExecutionContext executionContext, boolean resumed)
+    {
+        if (statsInterval < 0)
+            return;
+        
+        stopSampling();
+        statsCollector = new ContainerStatsCollector(statsFile);
+        if (resumed) {
+            statsCollector.restore(executionContext);
+        } else {
+            try {
+                statsCollector.clear();
+            } catch (IOException e) {
+                logger.error("Failed to clear statistics file {}: {}", statsFile, e.getMessage());
+            }
+        }
+        
+        statsSampler = new StatsSampler(
+            statsSource != null? statsSource : ContainerStatsSource.of(docker), statsCollector);
+        statsSampler.start();
+    }
+    
+    private void stopSampling()
+    {
+        if (statsSampler != null) {
+            statsSampler.close();
+            statsSampler = null;
+        }
+    }
+    
+    /**
+     * Save the summary of statistics (if sampling is enabled) into the execution context
+     */
+    private void saveStats(ExecutionContext executionContext)
+    {
+        if (statsCollector == null)
+            return;
+        
+        executionContext.putString(Keys.STATS_CONTAINER, containerId);
+        statsCollector.save(executionContext);
+    }
+    
+    /**
+     * Copy logs (stdout/stderr) generated from a container into our log file. Any previous
+     * content of the log file is discarded.
      * <p>
      * It is assumed that logs are text-based (encoded as UTF-8). If this is not true,
      * consider redirecting binary output to some other (bind-mounted) file, instead of 
      * writing it directly to stdout/stderr.
      * 
+     * @param follow A flag that indicates if we should follow the logs (i.e. keep copying 
+     *   until the container exits)
+     * @param callback A callback to be notified when the log stream is open; returns 
+     *   <tt>false</tt> if copying should be aborted
+     * @throws DockerException
+     * @throws InterruptedException
+     * @throws IOException
+     */
+    private void copyLogsFromContainer(boolean follow, Predicate<LogStream> callback) 
+        throws DockerException, InterruptedException, IOException
+    {
+        LogsParam[] params = follow?
+            new LogsParam[] { LogsParam.follow(), LogsParam.stdout(), LogsParam.stderr() } :
+            new LogsParam[] { LogsParam.stdout(), LogsParam.stderr() };
+        
+        try (LogStream logs = docker.logs(containerId, params);
+                OutputStream out = logFile.openOutputStream()) 
+        {
+            if (callback != null && !callback.test(logs))
+                return;
+            WritableByteChannel channel = Channels.newChannel(out);
+            while (logs.hasNext()) {
+                ByteBuffer data = logs.next().content();
+                while (data.hasRemaining())
+                    channel.write(data);
+            }
+        }
+    }
+    
+    /**
+     * Fetch (at most) the last {@link RunContainerTasklet#outputTailSize} bytes of logs 
+     * (stdout/stderr) generated from a container. 
+     * 
      * @param containerId
      * @throws InterruptedException 
      * @throws DockerException 
      */
-    private String fetchLogsFromContainer(String containerId) 
+    private String fetchLogTailFromContainer(String containerId) 
         throws DockerException, InterruptedException
     {
-        LogStream outs = docker.logs(containerId, LogsParam.stdout(), LogsParam.stderr());
+        LogStream outs = docker.logs(containerId, 
+            LogsParam.stdout(), LogsParam.stderr(), LogsParam.tail(OUTPUT_TAIL_LINES));
         
         StringBuilder b = new StringBuilder();
-        while (outs.hasNext()) {
-            ByteBuffer data = outs.next().content();
-            b.append(StandardCharsets.UTF_8.decode(data).toString());
+        try {
+            while (outs.hasNext()) {
+                ByteBuffer data = outs.next().content();
+                b.append(StandardCharsets.UTF_8.decode(data).toString());
+            }
+        } finally {
+            outs.close();
+        }
+        
+        return b.length() > outputTailSize? b.substring(b.length() - outputTailSize) : b.toString();
+    }
+    
+    /**
+     * Record a log file (along with its rotation limits) into an execution context.
+     *
+     * @param executionContext The execution context of a step
+     * @param logFile The log file holding the output of the step's command
+     */
+    public static void putOutputFile(ExecutionContext executionContext, ContainerLogFile logFile)
+    {
+        executionContext.putString(Keys.COMMAND_OUTPUT_FILE, logFile.getPath().toString());
+        executionContext.putLong(Keys.COMMAND_OUTPUT_FILE_MAX_SIZE, logFile.getMaxSize());
+        executionContext.putInt(Keys.COMMAND_OUTPUT_FILE_MAX_BACKUPS, logFile.getMaxBackups());
+    }
+    
+    /**
+     * Reopen the log file recorded (by {@link #putOutputFile}) into an execution context.
+     *
+     * @param executionContext The execution context of a step
+     * @return a log file, or <tt>null</tt> if no log file is recorded
+     */
+    public static ContainerLogFile getOutputFile(ExecutionContext executionContext)
+    {
+        String path = executionContext.getString(Keys.COMMAND_OUTPUT_FILE, null);
+        if (path == null)
+            return null;
+        
+        // Note: Contexts saved before the rotation limits were recorded fall back to defaults
+        long maxSize = executionContext.getLong(
+            Keys.COMMAND_OUTPUT_FILE_MAX_SIZE, ContainerLogFile.DEFAULT_MAX_SIZE);
+        int maxBackups = executionContext.getInt(
+            Keys.COMMAND_OUTPUT_FILE_MAX_BACKUPS, ContainerLogFile.DEFAULT_MAX_BACKUPS);
+        return new ContainerLogFile(Paths.get(path), maxSize, maxBackups);
+    }
+    
+    /**
+     * Save the output (stdout/stderr) of a finished container: the entire output goes to
+     * our log file (if any), and only a bounded tail goes to the execution context.
+     * 
+     * @param executionContext
+     */
+    private void saveOutput(ExecutionContext executionContext)
+    {
+        String output = null;
+        
+        if (logFile == null) {
+            try {
+                output = fetchLogTailFromContainer(containerId);
+            } catch (DockerException | InterruptedException e) {
+                logger.error("Failed to fetch logs for container {}: {}", containerId, e.getMessage());
+            }
+        } else {
+            // Wait for the follower to catch up; if not present (e.g. on a restart), copy
+            // the entire logs now.
+            boolean copied = false;
+            try {
+                if (logFollower != null)
+                    copied = logFollower.join(LOG_FOLLOWER_JOIN_TIMEOUT);
+                if (!copied) {
+                    if (logFollower != null)
+                        logFollower.close();
+                    copyLogsFromContainer(false, null);
+                    copied = true;
+                }
+            } catch (DockerException | IOException | InterruptedException e) {
+                logger.error("Failed to copy logs for container {}: {}", containerId, e.getMessage());
+            } finally {
+                logFollower = null;
+            }
+            if (copied) {
+                putOutputFile(executionContext, logFile);
+                try {
+                    output = logFile.tailAsString(outputTailSize);
+                } catch (IOException e) {
+                    logger.error("Failed to read log file {}: {}", logFile.getPath(), e.getMessage());
+                }
+            }
         }
-        return b.toString();
+        
+        if (output != null)
+            executionContext.putString(Keys.COMMAND_OUTPUT, output);
     }
     
     /**
@@ -356,8 +1136,11 @@ public class RunContainerTasklet implements Tasklet, StepExecutionListener
      * This task is clearly separated into 2 phases:
      * <ol>
      *   <li>P1: Start the container</li>
-     *   <li>P2: Poll the container status (at a fixed rate), waiting for it to complete</li>  
+     *   <li>P2: Wait for the container to complete. If an event monitor is connected, wait for
+     *     an event on the container (at most for {@link #getMaxWaitInterval()}); otherwise,
+     *     poll the container status (at a fixed rate)</li>  
      * </ol>
+     * In any case, the state of the container is determined by inspecting it.
      */
     @Override
     public RepeatStatus execute(StepContribution contribution, ChunkContext chunkContext)
@@ -370,45 +1153,104 @@ public class RunContainerTasklet implements Tasklet, StepExecutionListener
         long started = executionContext.getLong(Keys.STARTED, -1L);
         long finished = executionContext.getLong(Keys.FINISHED, -1L);
         
+        resolveHost();
+        
         if (started < 0) {
-            // P1: The container is created but not started: start it now
+            // P1: The container is created but not started: start it now (if admitted)
+            if (scheduler != null) {
+                if (ticket == null) {
+                    ticket = scheduler.request(containerId, memoryDemand, cpuDemand, priority, expectedDuration);
+                    admissionRequested = System.nanoTime();
+                }
+                if (!ticket.await(maxWaitInterval)) {
+                    logger.debug("The container {} is waiting for admission", containerId);
+                    return RepeatStatus.CONTINUABLE;
+                }
+                recordPhase("admission", System.nanoTime() - admissionRequested, TimeUnit.NANOSECONDS);
+            }
+            final long startRequested = System.nanoTime();
             docker.startContainer(containerId);
+            recordPhase("start", System.nanoTime() - startRequested, TimeUnit.NANOSECONDS);
             logger.info("Started container {}", containerId);
             started = (new Date()).getTime();
             executionContext.putLong(Keys.STARTED, started);
+            if (logFile != null)
+                putOutputFile(executionContext, logFile);
+            startFollowingLogs();
+            startSampling(executionContext, false);
         } else if (finished < 0) {
-            // P2: The container is started: poll status, check if timed out
-            ContainerInfo containerInfo = docker.inspectContainer(containerId);
-            ContainerState containerState = containerInfo.state();
-            logger.debug("Polled status for container {}: {}", containerId, containerState);
-            long elapsedTime = (new Date()).getTime() - started;
-            if (containerState.running()) {
-                if (timeout > 0 && elapsedTime > timeout) {
-                    // Timed out: Mark the step as failed and stop container now
-                    logger.error("Timed out at {}ms: Stopping {}", timeout, containerId);
-                    docker.stopContainer(containerId, (int) (stopTimeout / 1000));
+            // P2: The container is started: inspect status, check if timed out
+            final long waitStarted = (new Date()).getTime();
+            if (scheduler != null && ticket == null) {
+                // The step is resumed on a running container: account for its resources
+                ticket = scheduler.admit(containerId, memoryDemand, cpuDemand);
+            }
+            if (logFile != null && logFollower == null) {
+                // The step is resumed on a running container: start following its logs
+                startFollowingLogs();
+            }
+            if (statsInterval > 0 && statsSampler == null) {
+                // The step is resumed on a running container: start sampling its statistics
+                startSampling(executionContext, true);
+            }
+            boolean signaled = true;
+            while (finished < 0 && signaled) {
+                // Subscribe before inspecting, so that no event is missed in between
+                if (monitor != null)
+                    monitor.subscribe(containerId);
+                ContainerInfo containerInfo = docker.inspectContainer(containerId);
+                ContainerState containerState = containerInfo.state();
+                logger.debug("Polled status for container {}: {}", containerId, containerState);
+                final long now = (new Date()).getTime();
+                final long elapsedTime = now - started;
+                if (containerState.running()) {
+                    if (timeout > 0 && elapsedTime > timeout) {
+                        // Timed out: Mark the step as failed and stop container now
+                        logger.error("Timed out at {}ms: Stopping {}", timeout, containerId);
+                        docker.stopContainer(containerId, (int) (stopTimeout / 1000));
+                        finished = (new Date()).getTime();
+                        executionContext.putLong(Keys.FINISHED, finished);
+                        executionContext.putLong(Keys.TIMED_OUT, timeout);
+                        recordPhase("run", finished - started, TimeUnit.MILLISECONDS);
+                        contribution.setExitStatus(new TimedOutExitStatus(timeout));
+                        stepExecution.setStatus(failOnTimeout? BatchStatus.FAILED : BatchStatus.COMPLETED);
+                    } else if (monitor != null && monitor.isConnected()) {
+                        // The container is still running; wait for an event on it (but never
+                        // beyond our timeout or the max wait interval)
+                        long waitMillis = maxWaitInterval - (now - waitStarted);
+                        if (timeout > 0)
+                            waitMillis = Math.min(waitMillis, timeout - elapsedTime + 1);
+                        if (waitMillis > 0) {
+                            logger.debug("The container {} is running: waiting for an event for {}ms", 
+                                containerId, waitMillis);
+                            signaled = monitor.await(containerId, waitMillis) != null;
+                        }
+                        // If not signaled, return control to the step (will be re-invoked)  
+                        signaled = signaled && waitMillis > 0;
+                    } else {
+                        // The container is still running; sleep for one more period
+                        logger.debug("The container {} is running: sleeping for {}ms", 
+                            containerId, checkInterval);
+                        Thread.sleep(checkInterval);
+                        signaled = false;
+                    }
+                } else {
+                    // The container is finished: determine exit-status
+                    int exitCode = containerState.exitCode();
+                    logger.info("The container {} has finished: exit-code={} error={}", 
+                        containerId, exitCode, containerState.error());
                     finished = (new Date()).getTime();
                     executionContext.putLong(Keys.FINISHED, finished);
-                    executionContext.putLong(Keys.TIMED_OUT, timeout);
-                    contribution.setExitStatus(new TimedOutExitStatus(timeout));
-                    stepExecution.setStatus(failOnTimeout? BatchStatus.FAILED : BatchStatus.COMPLETED);
-                } else {
-                    // The container is still running; sleep for one more period
-                    logger.debug("The container {} is running: sleeping for {}ms", 
-                        containerId, checkInterval);
-                    Thread.sleep(checkInterval);
+                    executionContext.putLong(Keys.COMMAND_EXIT_CODE, exitCode);
+                    recordPhase("run", finished - started, TimeUnit.MILLISECONDS);
+                    if (Boolean.TRUE.equals(containerState.oomKilled())) {
+                        logger.warn("The container {} was killed for exceeding its memory limit", containerId);
+                        executionContext.put(Keys.STATS_OOM_KILLED, Boolean.TRUE);
+                    }
+                    contribution.setExitStatus(resolveExitStatus(exitCode));
+                    stepExecution.setStatus((failOnNonZeroExitCode && exitCode != 0)? 
+                        BatchStatus.FAILED : BatchStatus.COMPLETED);
                 }
-            } else {
-                // The container is finished: determine exit-status
-                int exitCode = containerState.exitCode();
-                logger.info("The container {} has finished: exit-code={} error={}", 
-                    containerId, exitCode, containerState.error());
-                finished = (new Date()).getTime();
-                executionContext.putLong(Keys.FINISHED, finished);
-                executionContext.putLong(Keys.COMMAND_EXIT_CODE, exitCode);
-                contribution.setExitStatus(resolveExitStatus(exitCode));
-                stepExecution.setStatus((failOnNonZeroExitCode && exitCode != 0)? 
-                    BatchStatus.FAILED : BatchStatus.COMPLETED);
             }
         } else {
             // A finished step is restarted: note that this is not an error since a 
@@ -416,9 +1258,24 @@ public class RunContainerTasklet implements Tasklet, StepExecutionListener
             logger.info("The container {} is finished: no action is needed", containerId);
         }
         
+        if (finished > 0) {
+            releaseAdmission();
+            stopSampling();
+        }
+        
+        saveStats(executionContext);
+        
         return RepeatStatus.continueIf(finished < 0);
     }
     
+    private void releaseAdmission()
+    {
+        if (ticket != null) {
+            ticket.release();
+            ticket = null;
+        }
+    }
+    
     @Override
     public void beforeStep(StepExecution stepExecution)
     {
@@ -449,37 +1306,60 @@ public class RunContainerTasklet implements Tasklet, StepExecutionListener
         
         long finished = executionContext.getLong(Keys.FINISHED, -1L);
         
+        // Drop any subscription for events on this container (for any outcome)
+        if (monitor != null)
+            monitor.unsubscribe(containerId);
+        
+        // Release resources held for this container (for any outcome). Note that an interrupted
+        // step will request admission again (or be admitted unconditionally, if the container 
+        // was left running)
+        releaseAdmission();
+        
         // Cleanup if container has finished (either normally or due to a timeout).
         // Note that the afterStep callback will also be invoked for interrupted jobs, so
         // a container should not be destroyed in those cases (as it may be restarted).
         
-        if (finished > 0) {
-            // The step is marked as finished, successfully or not. Save all output
-            // generated from the container (stdout/stderr) into step context.
-            String output;
+        if (finished > 0 && pool != null) {
+            // The container is no longer running: release its reservation on the pool. If its
+            // host cannot be resolved, cleanup is still attempted (on the default client)
             try {
-                output = fetchLogsFromContainer(containerId);
-            } catch (DockerException | InterruptedException e) {
-                output = null;
-                logger.error("Failed to fetch logs for container {}: {}", 
-                    containerId, e.getMessage());
+                resolveHost();
+            } catch (IllegalStateException ex) {
+                logger.error("Failed to resolve the host of container {}: {}", containerId, ex.getMessage());
+            } finally {
+                pool.release(containerId);
             }
-            if (output != null)
-                executionContext.putString(Keys.COMMAND_OUTPUT, output);
+        }
+        
+        if (finished > 0) {
+            // The step is marked as finished, successfully or not. Save output generated
+            // from the container (stdout/stderr) into the log file, and keep only a tail (and 
+            // a reference to the log file) into step context.
+            saveOutput(executionContext);
 
             // Destroy container, if tasklet is configured so.
             // Note: if a container is configured with the auto-remove flag, this
             // is useless (as docker daemon will automatically take care of it).
             if (removeOnFinished) {
                 try {
+                    final long removeRequested = System.nanoTime();
                     docker.removeContainer(containerId);
+                    recordPhase("remove", System.nanoTime() - removeRequested, TimeUnit.NANOSECONDS);
                 } catch (DockerException | InterruptedException e) {
                     logger.error("Failed to destroy container {}: {}",
                         containerId, e.getMessage());
                 }
             }
+        } else if (logFollower != null) {
+            // The step is interrupted: stop following (a restarted step will start over)
+            logFollower.close();
+            logFollower = null;
         }
         
+        // Stop sampling (for any outcome); a resumed step will restore the summary
+        stopSampling();
+        statsCollector = null;
+        
         return null; // do not alter exit-status
     }
     
@@ -497,5 +1377,18 @@ public class RunContainerTasklet implements Tasklet, StepExecutionListener
         executionContext.remove(Keys.TIMED_OUT);
         executionContext.remove(Keys.COMMAND_EXIT_CODE);
         executionContext.remove(Keys.COMMAND_OUTPUT);
+        executionContext.remove(Keys.COMMAND_OUTPUT_FILE);
+        executionContext.remove(Keys.COMMAND_OUTPUT_FILE_MAX_SIZE);
+        executionContext.remove(Keys.COMMAND_OUTPUT_FILE_MAX_BACKUPS);
+        executionContext.remove(Keys.STATS_CONTAINER);
+        executionContext.remove(Keys.STATS_SAMPLES);
+        executionContext.remove(Keys.STATS_CPU_TIME);
+        executionContext.remove(Keys.STATS_PEAK_MEMORY);
+        executionContext.remove(Keys.STATS_OOM_KILLED);
+        executionContext.remove(Keys.STATS_BLOCK_READ);
+        executionContext.remove(Keys.STATS_BLOCK_WRITE);
+        executionContext.remove(Keys.STATS_NETWORK_RX);
+        executionContext.remove(Keys.STATS_NETWORK_TX);
+        executionContext.remove(Keys.STATS_FILE);
     }
 }
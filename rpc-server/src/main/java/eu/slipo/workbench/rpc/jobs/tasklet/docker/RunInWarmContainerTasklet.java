@@ -0,0 +1,553 @@
+package eu.slipo.workbench.rpc.jobs.tasklet.docker;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.StepExecutionListener;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.util.Assert;
+
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.DockerClient.ExecCreateParam;
+import com.spotify.docker.client.LogStream;
+import com.spotify.docker.client.exceptions.DockerException;
+import com.spotify.docker.client.messages.ExecState;
+
+import eu.slipo.workbench.common.service.FileMaterializer;
+import eu.slipo.workbench.rpc.jobs.tasklet.TimedOutExitStatus;
+import eu.slipo.workbench.rpc.service.AdmissionScheduler;
+
+/**
+ * A tasklet that runs the command of a tool inside a warm container acquired from a
+ * {@link WarmContainerPool}, waiting for it to complete.
+ * <p>
+ * Input and configuration files are linked into the staging directory of the warm container,
+ * and the command is executed (via <tt>docker exec</tt>) with the given environment. When the
+ * command is finished, output files are moved from the staging directory to the output directory,
+ * and the warm container is released.
+ * <p>
+ * If the pool has no warm container available, the step exits with a status of
+ * {@link RunInWarmContainerTasklet#MISS} (so that a flow can fall back to creating a container).
+ * Note that a stopped (and then restarted) step starts over on a new warm container, since the
+ * command of an interrupted step is killed along with its container.
+ */
+public class RunInWarmContainerTasklet implements Tasklet, StepExecutionListener
+{
+    private static Logger logger = LoggerFactory.getLogger(RunInWarmContainerTasklet.class);
+
+    /**
+     * The exit status for a step that found no warm container
+     */
+    public static final ExitStatus MISS = new ExitStatus("MISS");
+
+    /**
+     * The maximum amount of time (in milliseconds) to wait for the output of a finished
+     * command to be copied.
+     */
+    private static final long LOG_COPIER_JOIN_TIMEOUT = 10 * 1000L;
+
+    /**
+     * The collection of keys used inside our execution context
+     */
+    public static class Keys
+    {
+        /**
+         * A flag indicating if the step was served by a warm container
+         */
+        public static final String WARM_POOL_HIT = "warmPool.hit";
+
+        /**
+         * The (estimated) time (milliseconds) saved by using a warm container
+         */
+        public static final String WARM_POOL_SAVED_MILLIS = "warmPool.savedMillis";
+    }
+
+    /**
+     * A builder for tasklets of enclosing class ({@link RunInWarmContainerTasklet}).
+     */
+    public static class Builder
+    {
+        private DockerClient client;
+
+        private WarmContainerPool pool;
+
+        private FileMaterializer materializer;
+
+        private Path inputDir;
+
+        private List<String> inputNames = new ArrayList<>();
+
+        private Map<String, Path> configFiles = new LinkedHashMap<>();
+
+        private Path outputDir;
+
+        private Map<String, String> env = new LinkedHashMap<>();
+
+        private Long timeout;
+
+        private Long checkInterval;
+
+        private ContainerLogFile logFile;
+
+        private int outputTailSize = RunContainerTasklet.DEFAULT_OUTPUT_TAIL_SIZE;
+
+        private AdmissionScheduler scheduler;
+
+        private long memoryDemand;
+
+        private double cpuDemand;
+
+        private int priority;
+
+        private Builder() {}
+
+        public Builder client(DockerClient client)
+        {
+            Assert.notNull(client, "A non-null docker client is expected");
+            this.client = client;
+            return this;
+        }
+
+        public Builder pool(WarmContainerPool pool)
+        {
+            Assert.notNull(pool, "A non-null pool is expected");
+            this.pool = pool;
+            return this;
+        }
+
+        /**
+         * Set the service to be used for staging files into the directories of a warm container
+         */
+        public Builder materializer(FileMaterializer materializer)
+        {
+            Assert.notNull(materializer, "A non-null materializer is expected");
+            this.materializer = materializer;
+            return this;
+        }
+
+        /**
+         * Set the input files (as names under an input directory) to be staged
+         */
+        public Builder input(Path inputDir, List<String> inputNames)
+        {
+            Assert.notNull(inputDir, "An input directory is required");
+            Assert.notEmpty(inputNames, "Expected a non-empty list of input names");
+            this.inputDir = inputDir;
+            this.inputNames = new ArrayList<>(inputNames);
+            return this;
+        }
+
+        /**
+         * Stage a configuration file under a given name (inside the configuration directory
+         * of the warm container, see {@link WarmContainerPool#containerConfigDir()})
+         */
+        public Builder config(String name, Path path)
+        {
+            Assert.hasText(name, "A name is required");
+            Assert.notNull(path, "A path is required");
+            this.configFiles.put(name, path);
+            return this;
+        }
+
+        /**
+         * Set the directory where output files are (finally) moved
+         */
+        public Builder output(Path outputDir)
+        {
+            Assert.notNull(outputDir, "An output directory is required");
+            this.outputDir = outputDir;
+            return this;
+        }
+
+        /**
+         * Set an environment variable for the command
+         */
+        public Builder env(String name, Object value)
+        {
+            Assert.hasText(name, "A name is required");
+            Assert.notNull(value, "A value is required");
+            this.env.put(name, value.toString());
+            return this;
+        }
+
+        /**
+         * Set an overall timeout (milliseconds) waiting for the command to complete
+         * (a negative value means no timeout).
+         */
+        public Builder timeout(long millis)
+        {
+            this.timeout = millis;
+            return this;
+        }
+
+        /**
+         * Set the polling interval (milliseconds).
+         */
+        public Builder checkInterval(long t)
+        {
+            this.checkInterval = Math.max(t, RunContainerTasklet.MIN_CHECK_INTERVAL);
+            return this;
+        }
+
+        /**
+         * Stream the output (stdout/stderr) of the command into a log file.
+         *
+         * @see RunContainerTasklet.Builder#logFile(Path, long, int)
+         */
+        public Builder logFile(Path path, long maxSize, int maxBackups)
+        {
+            this.logFile = new ContainerLogFile(path, maxSize, maxBackups);
+            return this;
+        }
+
+        /**
+         * Provide a scheduler to admit the command under a budget of host resources.
+         *
+         * @see RunContainerTasklet.Builder#admission(AdmissionScheduler, long, double, int)
+         */
+        public Builder admission(AdmissionScheduler scheduler, long memory, double cpus, int priority)
+        {
+            this.scheduler = scheduler;
+            this.memoryDemand = memory;
+            this.cpuDemand = cpus;
+            this.priority = priority;
+            return this;
+        }
+
+        public RunInWarmContainerTasklet build()
+        {
+            Assert.state(client != null, "A docker client is required");
+            Assert.state(pool != null, "A pool of warm containers is required");
+            Assert.state(materializer != null, "A file materializer is required");
+            Assert.state(inputDir != null, "The input is required");
+            Assert.state(outputDir != null, "An output directory is required");
+
+            RunInWarmContainerTasklet tasklet = new RunInWarmContainerTasklet(client, pool, materializer);
+
+            tasklet.inputDir = inputDir;
+            tasklet.inputNames = inputNames;
+            tasklet.configFiles = configFiles;
+            tasklet.outputDir = outputDir;
+            tasklet.env = env;
+            if (timeout != null)
+                tasklet.timeout = timeout;
+            if (checkInterval != null)
+                tasklet.checkInterval = checkInterval;
+            tasklet.logFile = logFile;
+            tasklet.outputTailSize = outputTailSize;
+            tasklet.scheduler = scheduler;
+            tasklet.memoryDemand = memoryDemand;
+            tasklet.cpuDemand = cpuDemand;
+            tasklet.priority = priority;
+
+            return tasklet;
+        }
+    }
+
+    public static Builder builder()
+    {
+        return new Builder();
+    }
+
+    private final DockerClient docker;
+
+    private final WarmContainerPool pool;
+
+    private final FileMaterializer materializer;
+
+    private Path inputDir;
+
+    private List<String> inputNames;
+
+    private Map<String, Path> configFiles;
+
+    private Path outputDir;
+
+    private Map<String, String> env;
+
+    private long timeout = RunContainerTasklet.DEFAULT_TIMEOUT;
+
+    private long checkInterval = RunContainerTasklet.DEFAULT_CHECK_INTERVAL;
+
+    private ContainerLogFile logFile;
+
+    private int outputTailSize;
+
+    private AdmissionScheduler scheduler;
+
+    private long memoryDemand;
+
+    private double cpuDemand;
+
+    private int priority;
+
+    /**
+     * The warm container acquired for this step (if any)
+     */
+    private WarmContainerPool.Slot slot;
+
+    /**
+     * The id of the command executed inside our warm container
+     */
+    private String execId;
+
+    private Thread logCopier;
+
+    private long started = -1L;
+
+    private AdmissionScheduler.Ticket ticket;
+
+    private RunInWarmContainerTasklet(DockerClient docker, WarmContainerPool pool, FileMaterializer materializer)
+    {
+        this.docker = docker;
+        this.pool = pool;
+        this.materializer = materializer;
+    }
+
+    @Override
+    public RepeatStatus execute(StepContribution contribution, ChunkContext chunkContext)
+        throws Exception
+    {
+        final StepExecution stepExecution = chunkContext.getStepContext().getStepExecution();
+        final ExecutionContext executionContext = stepExecution.getExecutionContext();
+
+        if (slot == null) {
+            // Wait for admission before acquiring a warm container (so that we do not keep it idle)
+            if (scheduler != null) {
+                if (ticket == null)
+                    ticket = scheduler.request(pool.getImageName(), memoryDemand, cpuDemand, priority);
+                if (!ticket.await(checkInterval))
+                    return RepeatStatus.CONTINUABLE;
+            }
+
+            slot = pool.acquire();
+            if (slot == null) {
+                logger.info("No warm container is available for {}", pool.getImageName());
+                releaseAdmission();
+                executionContext.put(Keys.WARM_POOL_HIT, Boolean.FALSE);
+                contribution.setExitStatus(MISS);
+                return RepeatStatus.FINISHED;
+            }
+
+            executionContext.put(Keys.WARM_POOL_HIT, Boolean.TRUE);
+            executionContext.putLong(Keys.WARM_POOL_SAVED_MILLIS, slot.warmupTime());
+
+            stageFiles();
+            startCommand();
+            if (logFile != null)
+                RunContainerTasklet.putOutputFile(executionContext, logFile);
+            executionContext.putLong(RunContainerTasklet.Keys.STARTED, started);
+            return RepeatStatus.CONTINUABLE;
+        }
+
+        // The command is started: inspect its state, check if timed out
+
+        final ExecState execState = docker.execInspect(execId);
+        final long now = (new Date()).getTime();
+
+        if (execState.running()) {
+            if (timeout > 0 && now - started > timeout) {
+                logger.error("Timed out at {}ms: Killing {}", timeout, slot.containerName());
+                executionContext.putLong(RunContainerTasklet.Keys.FINISHED, now);
+                executionContext.putLong(RunContainerTasklet.Keys.TIMED_OUT, timeout);
+                contribution.setExitStatus(new TimedOutExitStatus(timeout));
+                stepExecution.setStatus(BatchStatus.FAILED);
+                finish(executionContext, false);
+                return RepeatStatus.FINISHED;
+            }
+            Thread.sleep(checkInterval);
+            return RepeatStatus.CONTINUABLE;
+        }
+
+        final int exitCode = execState.exitCode();
+        logger.info("The command in warm container {} has finished: exit-code={}", slot.containerName(), exitCode);
+        executionContext.putLong(RunContainerTasklet.Keys.FINISHED, now);
+        executionContext.putLong(RunContainerTasklet.Keys.COMMAND_EXIT_CODE, exitCode);
+        if (exitCode == 0) {
+            contribution.setExitStatus(ExitStatus.COMPLETED);
+        } else {
+            contribution.setExitStatus(new ExitStatus("FAILED-WITH-NONZERO-EXIT-CODE",
+                String.format("The command exited with a non-zero (%d) code", exitCode)));
+            stepExecution.setStatus(BatchStatus.FAILED);
+        }
+        finish(executionContext, exitCode == 0);
+
+        return RepeatStatus.FINISHED;
+    }
+
+    /**
+     * Link input and configuration files into the staging directory of our warm container
+     */
+    private void stageFiles() throws IOException
+    {
+        for (String name: inputNames)
+            linkOrCopy(inputDir.resolve(name), slot.inputDir().resolve(name));
+        for (Map.Entry<String, Path> e: configFiles.entrySet())
+            linkOrCopy(e.getValue(), slot.configDir().resolve(e.getKey()));
+    }
+
+    /**
+     * Execute the command (of the image) inside our warm container. The environment is passed
+     * by wrapping the command with <tt>env</tt>.
+     */
+    private void startCommand() throws DockerException, InterruptedException
+    {
+        final List<String> command = new ArrayList<>();
+        command.add("env");
+        env.forEach((name, value) -> command.add(name + "=" + value));
+        command.addAll(pool.command());
+
+        execId = docker.execCreate(slot.containerId(), command.toArray(new String[0]),
+            ExecCreateParam.attachStdout(), ExecCreateParam.attachStderr()).id();
+
+        // Note: The (attached) output stream ends when the command finishes
+        final LogStream stream = docker.execStart(execId);
+        started = (new Date()).getTime();
+        logger.info("Started command in warm container {}", slot.containerName());
+
+        logCopier = new Thread(() -> copyOutput(stream), "logs-" + slot.containerName());
+        logCopier.setDaemon(true);
+        logCopier.start();
+    }
+
+    private void copyOutput(LogStream stream)
+    {
+        try (LogStream s = stream;
+                OutputStream out = logFile != null? logFile.openOutputStream() : null)
+        {
+            WritableByteChannel channel = out != null? Channels.newChannel(out) : null;
+            while (s.hasNext()) {
+                ByteBuffer data = s.next().content();
+                while (channel != null && data.hasRemaining())
+                    channel.write(data);
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Failed to copy output of {}: {}", pool.getImageName(), e.getMessage());
+        }
+    }
+
+    /**
+     * Finish this step: save the output, move results to output directory (if successful), and
+     * release our warm container.
+     */
+    private void finish(ExecutionContext executionContext, boolean success) throws InterruptedException
+    {
+        try {
+            if (logCopier != null && success)
+                logCopier.join(LOG_COPIER_JOIN_TIMEOUT);
+            if (success)
+                moveOutput();
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to move output to " + outputDir, e);
+        } finally {
+            release();
+        }
+
+        if (logFile != null) {
+            try {
+                executionContext.putString(
+                    RunContainerTasklet.Keys.COMMAND_OUTPUT, logFile.tailAsString(outputTailSize));
+            } catch (IOException e) {
+                logger.error("Failed to read log file {}: {}", logFile.getPath(), e.getMessage());
+            }
+        }
+    }
+
+    private void moveOutput() throws IOException
+    {
+        final Path sourceDir = slot.outputDir();
+        Files.createDirectories(outputDir);
+        Files.walkFileTree(sourceDir, new SimpleFileVisitor<Path>()
+        {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs)
+                throws IOException
+            {
+                Files.createDirectories(outputDir.resolve(sourceDir.relativize(dir)));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException
+            {
+                Files.move(file, outputDir.resolve(sourceDir.relativize(file)),
+                    StandardCopyOption.REPLACE_EXISTING);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private void linkOrCopy(Path source, Path target) throws IOException
+    {
+        Files.deleteIfExists(target);
+        materializer.materialize(source, target);
+    }
+
+    /**
+     * Release our warm container (killing the command, if still running)
+     */
+    private void release()
+    {
+        if (logCopier != null) {
+            logCopier.interrupt();
+            logCopier = null;
+        }
+        if (slot != null) {
+            pool.release(slot);
+            slot = null;
+        }
+        execId = null;
+        releaseAdmission();
+    }
+
+    private void releaseAdmission()
+    {
+        if (ticket != null) {
+            ticket.release();
+            ticket = null;
+        }
+    }
+
+    @Override
+    public void beforeStep(StepExecution stepExecution)
+    {
+        // A restarted step always starts over (on a new warm container)
+        ExecutionContext executionContext = stepExecution.getExecutionContext();
+        executionContext.remove(RunContainerTasklet.Keys.STARTED);
+        executionContext.remove(RunContainerTasklet.Keys.FINISHED);
+        executionContext.remove(RunContainerTasklet.Keys.TIMED_OUT);
+        executionContext.remove(RunContainerTasklet.Keys.COMMAND_EXIT_CODE);
+        executionContext.remove(RunContainerTasklet.Keys.COMMAND_OUTPUT);
+    }
+
+    @Override
+    public ExitStatus afterStep(StepExecution stepExecution)
+    {
+        // Release our warm container for any outcome (e.g. when the step is stopped or failed)
+        release();
+        return null;
+    }
+}
@@ -0,0 +1,413 @@
+package eu.slipo.workbench.rpc.jobs.tasklet.docker;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+import org.springframework.util.FileSystemUtils;
+
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.exceptions.DockerException;
+import com.spotify.docker.client.messages.ContainerConfig;
+import com.spotify.docker.client.messages.ContainerCreation;
+import com.spotify.docker.client.messages.ContainerInfo;
+
+import eu.slipo.workbench.common.model.jobs.WarmPoolInfo;
+
+/**
+ * A pool of warm containers for a tool image.
+ * <p>
+ * A warm container is created and started ahead of time, running an idle command instead of
+ * the tool itself. Its input, output and configuration directories (inside the container) are
+ * bind-mounted from a per-container staging directory (on the host). A step that acquires a warm
+ * container links its files into the staging directory and executes the original command of the
+ * image (see {@link WarmContainerPool#command()}) inside the container.
+ * <p>
+ * A warm container is used only once: it is destroyed (along with its staging directory) when
+ * released, and the pool is refilled in the background.
+ */
+public class WarmContainerPool
+{
+    private static Logger logger = LoggerFactory.getLogger(WarmContainerPool.class);
+
+    /**
+     * The command for an idle container (kept alive until it is destroyed)
+     */
+    private static final String[] IDLE_COMMAND = new String[] { "tail", "-f", "/dev/null" };
+
+    /**
+     * A warm container (along with its staging directory)
+     */
+    public static class Slot
+    {
+        private final String containerId;
+
+        private final String containerName;
+
+        private final Path stagingDir;
+
+        /**
+         * The time (in milliseconds) it took to create and start this container
+         */
+        private final long warmupTime;
+
+        private Slot(String containerId, String containerName, Path stagingDir, long warmupTime)
+        {
+            this.containerId = containerId;
+            this.containerName = containerName;
+            this.stagingDir = stagingDir;
+            this.warmupTime = warmupTime;
+        }
+
+        public String containerId()
+        {
+            return containerId;
+        }
+
+        public String containerName()
+        {
+            return containerName;
+        }
+
+        /**
+         * The host directory bind-mounted as the input directory of the container
+         */
+        public Path inputDir()
+        {
+            return stagingDir.resolve("input");
+        }
+
+        /**
+         * The host directory bind-mounted as the output directory of the container
+         */
+        public Path outputDir()
+        {
+            return stagingDir.resolve("output");
+        }
+
+        /**
+         * The host directory bind-mounted as the configuration directory of the container
+         */
+        public Path configDir()
+        {
+            return stagingDir.resolve("config");
+        }
+
+        public long warmupTime()
+        {
+            return warmupTime;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("Slot [container=%s, stagingDir=%s]", containerName, stagingDir);
+        }
+    }
+
+    private final DockerClient docker;
+
+    private final String imageName;
+
+    private final int size;
+
+    private final Path stagingRoot;
+
+    private final Path containerDataDir;
+
+    private final String namePrefix;
+
+    private long memoryLimit = -1L;
+
+    private long memorySwapLimit = -1L;
+
+    private double cpuLimit = -1.0;
+
+    /**
+     * The original command (entrypoint followed by cmd) of the image
+     */
+    private List<String> command;
+
+    private final BlockingQueue<Slot> idle = new LinkedBlockingQueue<>();
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong savedMillis = new AtomicLong();
+
+    private final ExecutorService executor;
+
+    private volatile boolean stopped = false;
+
+    /**
+     * Create a pool
+     *
+     * @param docker The docker client
+     * @param imageName The image of pooled containers
+     * @param size The number of warm containers to keep
+     * @param stagingRoot The (host) directory under which staging directories are created
+     * @param containerDataDir The directory (inside a container) under which staging directories
+     *   are bind-mounted (as <tt>input</tt>, <tt>output</tt> and <tt>config</tt>)
+     * @param namePrefix A prefix for names of pooled containers
+     */
+    public WarmContainerPool(
+        DockerClient docker, String imageName, int size, Path stagingRoot, Path containerDataDir,
+        String namePrefix)
+    {
+        Assert.notNull(docker, "A docker client is required");
+        Assert.hasText(imageName, "An image name is required");
+        Assert.isTrue(size > 0, "Expected a positive pool size");
+        Assert.isTrue(stagingRoot != null && stagingRoot.isAbsolute(),
+            "Expected an absolute path for the staging directory");
+        Assert.isTrue(containerDataDir != null && containerDataDir.isAbsolute(),
+            "Expected an absolute path for the container data directory");
+        Assert.hasText(namePrefix, "A name prefix is required");
+
+        this.docker = docker;
+        this.imageName = imageName;
+        this.size = size;
+        this.stagingRoot = stagingRoot;
+        this.containerDataDir = containerDataDir;
+        this.namePrefix = namePrefix;
+
+        this.executor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "warm-pool-" + namePrefix);
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Set resource limits for pooled containers (a non-positive value means no limit)
+     */
+    public void setLimits(long memoryLimit, long memorySwapLimit, double cpuLimit)
+    {
+        this.memoryLimit = memoryLimit;
+        this.memorySwapLimit = memorySwapLimit;
+        this.cpuLimit = cpuLimit;
+    }
+
+    /**
+     * Inspect the image and start filling the pool (in the background)
+     */
+    public void start() throws DockerException, InterruptedException, IOException
+    {
+        ContainerConfig imageConfig = docker.inspectImage(imageName).config();
+
+        List<String> c = new ArrayList<>();
+        if (imageConfig.entrypoint() != null)
+            c.addAll(imageConfig.entrypoint());
+        if (imageConfig.cmd() != null)
+            c.addAll(imageConfig.cmd());
+        Assert.state(!c.isEmpty(), "The image " + imageName + " has no entrypoint/command");
+        this.command = Collections.unmodifiableList(c);
+
+        Files.createDirectories(stagingRoot);
+
+        logger.info("Starting a pool of {} warm containers for {} (command: {})", size, imageName, command);
+        for (int i = 0; i < size; ++i)
+            executor.execute(this::refill);
+    }
+
+    /**
+     * Destroy all idle containers, and stop refilling the pool.
+     */
+    public void shutdown()
+    {
+        stopped = true;
+        executor.shutdownNow();
+
+        Slot slot = null;
+        while ((slot = idle.poll()) != null)
+            destroy(slot);
+    }
+
+    public String getImageName()
+    {
+        return imageName;
+    }
+
+    /**
+     * The original command (entrypoint followed by cmd) of the image, as it should be executed
+     * inside a warm container.
+     */
+    public List<String> command()
+    {
+        Assert.state(command != null, "The pool is not started");
+        return command;
+    }
+
+    /**
+     * The (absolute) path of the input directory inside a warm container
+     */
+    public Path containerInputDir()
+    {
+        return containerDataDir.resolve("input");
+    }
+
+    /**
+     * The (absolute) path of the output directory inside a warm container
+     */
+    public Path containerOutputDir()
+    {
+        return containerDataDir.resolve("output");
+    }
+
+    /**
+     * The (absolute) path of the configuration directory inside a warm container
+     */
+    public Path containerConfigDir()
+    {
+        return containerDataDir.resolve("config");
+    }
+
+    /**
+     * Acquire a warm container. A replacement is prepared in the background.
+     *
+     * @return a warm container, or <tt>null</tt> if none is available (a miss)
+     */
+    public Slot acquire()
+    {
+        Slot slot = null;
+        while ((slot = idle.poll()) != null) {
+            if (!stopped)
+                executor.execute(this::refill);
+            if (isRunning(slot))
+                break;
+            // The container has died while idle: discard and try the next one
+            logger.warn("The warm container {} is not running; Discarding", slot.containerName);
+            final Slot deadSlot = slot;
+            executor.execute(() -> destroy(deadSlot));
+        }
+
+        if (slot == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+            savedMillis.addAndGet(slot.warmupTime);
+        }
+        return slot;
+    }
+
+    /**
+     * Release (and destroy) a container acquired from this pool.
+     */
+    public void release(Slot slot)
+    {
+        Assert.notNull(slot, "Expected a slot");
+        if (stopped)
+            destroy(slot);
+        else
+            executor.execute(() -> destroy(slot));
+    }
+
+    public WarmPoolInfo getInfo()
+    {
+        WarmPoolInfo r = new WarmPoolInfo();
+
+        r.setImage(imageName);
+        r.setSize(size);
+        r.setIdle(idle.size());
+        r.setHits(hits.get());
+        r.setMisses(misses.get());
+        r.setSavedMillis(savedMillis.get());
+
+        return r;
+    }
+
+    private boolean isRunning(Slot slot)
+    {
+        try {
+            ContainerInfo info = docker.inspectContainer(slot.containerId);
+            return info.state().running();
+        } catch (DockerException ex) {
+            return false;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Create and start a warm container, and add it to the idle ones
+     */
+    private void refill()
+    {
+        if (stopped)
+            return;
+
+        final String name = String.format("%s-%s", namePrefix, UUID.randomUUID().toString().substring(0, 8));
+        final Path stagingDir = stagingRoot.resolve(name);
+
+        Slot slot = null;
+        try {
+            final long started = System.currentTimeMillis();
+
+            Files.createDirectories(stagingDir.resolve("input"));
+            Files.createDirectories(stagingDir.resolve("output"));
+            Files.createDirectories(stagingDir.resolve("config"));
+
+            ContainerConfigurer configurer = new ContainerConfigurer()
+                .image(imageName)
+                .entrypoint(IDLE_COMMAND)
+                .volume(stagingDir.resolve("input"), containerInputDir(), true)
+                .volume(stagingDir.resolve("output"), containerOutputDir())
+                .volume(stagingDir.resolve("config"), containerConfigDir(), true);
+            if (memoryLimit > 0)
+                configurer.memory(memoryLimit);
+            if (memorySwapLimit > 0)
+                configurer.memoryAndSwap(memorySwapLimit);
+            configurer.cpus(cpuLimit);
+
+            ContainerCreation creation = docker.createContainer(configurer.buildConfiguration(), name);
+            docker.startContainer(creation.id());
+
+            slot = new Slot(creation.id(), name, stagingDir, System.currentTimeMillis() - started);
+        } catch (DockerException | IOException ex) {
+            logger.error("Failed to prepare a warm container for {}: {}", imageName, ex.getMessage());
+            try {
+                FileSystemUtils.deleteRecursively(stagingDir.toFile());
+                docker.removeContainer(name, DockerClient.RemoveContainerParam.forceKill());
+            } catch (DockerException ex1) {
+                // no-op: the container was not created
+            } catch (InterruptedException ex1) {
+                Thread.currentThread().interrupt();
+            }
+            return;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        logger.debug("Prepared warm container {} in {}ms", name, slot.warmupTime);
+        if (stopped)
+            destroy(slot);
+        else
+            idle.add(slot);
+    }
+
+    private void destroy(Slot slot)
+    {
+        try {
+            docker.removeContainer(slot.containerId, DockerClient.RemoveContainerParam.forceKill());
+        } catch (DockerException ex) {
+            logger.warn("Failed to remove warm container {}: {}", slot.containerName, ex.getMessage());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        FileSystemUtils.deleteRecursively(slot.stagingDir.toFile());
+    }
+}
@@ -23,6 +23,14 @@ public enum JobErrorCode implements ErrorCode
     JOB_INVALID_PARAMETERS,
     JOB_MISSING_PARAMETER,
     
+    JOB_EXECUTION_NOT_FOUND,
+    JOB_STEP_NOT_FOUND,
+    JOB_STEP_OUTPUT_NOT_AVAILABLE,
+    
+    ADMISSION_NOT_ENABLED,
+    PREDICTIONS_NOT_ENABLED,
+    METRICS_NOT_ENABLED,
+    
     ;
 
     /**
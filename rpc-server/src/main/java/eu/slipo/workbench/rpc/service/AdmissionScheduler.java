@@ -0,0 +1,126 @@
+package eu.slipo.workbench.rpc.service;
+
+import eu.slipo.workbench.common.model.jobs.AdmissionInfo;
+
+/**
+ * A scheduler that admits containers to run only when their declared resource limits (memory
+ * and CPUs) fit into a budget of host resources. Requests that do not fit are queued, and are
+ * admitted (in the order defined by a {@link Policy}) as soon as resources are released.
+ */
+public interface AdmissionScheduler
+{
+    /**
+     * The ordering policy for queued requests
+     */
+    enum Policy
+    {
+        /**
+         * Admit requests in arrival order
+         */
+        FIFO,
+
+        /**
+         * Admit requests in descending order of priority (and then in arrival order)
+         */
+        PRIORITY,
+
+        /**
+         * Admit requests in descending order of priority, and then in ascending order of their
+         * expected duration (and then in arrival order). A request with no expected duration is
+         * admitted after the ones with a known duration.
+         */
+        SHORTEST_FIRST;
+    }
+
+    /**
+     * A request for admission (as returned from {@link AdmissionScheduler#request}).
+     */
+    interface Ticket
+    {
+        String name();
+
+        long memory();
+
+        double cpus();
+
+        boolean isAdmitted();
+
+        /**
+         * Wait (up to a given amount of time) for this request to be admitted.
+         *
+         * @param timeout The maximum time (in milliseconds) to wait
+         * @return <tt>true</tt> if admitted
+         * @throws InterruptedException if interrupted while waiting
+         */
+        boolean await(long timeout) throws InterruptedException;
+
+        /**
+         * Release the resources held by this request (if admitted), or cancel it (if still queued).
+         * This method is idempotent.
+         */
+        void release();
+    }
+
+    /**
+     * Signal that a request can never be admitted, because its demand exceeds the entire budget.
+     */
+    @SuppressWarnings("serial")
+    class AdmissionRejectedException extends Exception
+    {
+        public AdmissionRejectedException(String message)
+        {
+            super(message);
+        }
+    }
+
+    /**
+     * Request admission for a container. The request is admitted immediately if it fits into
+     * the available resources (and no request is queued before it); otherwise, it is queued.
+     *
+     * @param name A (descriptive) name for the request, e.g. the container name
+     * @param memory The memory limit (in bytes) declared for the container
+     * @param cpus The number of CPUs declared for the container
+     * @param priority The priority of the request (not meaningful under {@link Policy#FIFO})
+     * @return a ticket for this request
+     *
+     * @throws AdmissionRejectedException if the demand exceeds the entire budget
+     */
+    default Ticket request(String name, long memory, double cpus, int priority)
+        throws AdmissionRejectedException
+    {
+        return request(name, memory, cpus, priority, -1L);
+    }
+
+    /**
+     * Request admission for a container, also declaring the expected duration of its run.
+     *
+     * @param name A (descriptive) name for the request, e.g. the container name
+     * @param memory The memory limit (in bytes) declared for the container
+     * @param cpus The number of CPUs declared for the container
+     * @param priority The priority of the request (not meaningful under {@link Policy#FIFO})
+     * @param expectedDuration The expected duration (in milliseconds) of the run, or a negative
+     *   number if not known (only meaningful under {@link Policy#SHORTEST_FIRST})
+     * @return a ticket for this request
+     *
+     * @throws AdmissionRejectedException if the demand exceeds the entire budget
+     */
+    Ticket request(String name, long memory, double cpus, int priority, long expectedDuration)
+        throws AdmissionRejectedException;
+
+    /**
+     * Admit a container unconditionally (even if exceeding the budget). This is meant for
+     * containers that are already running (e.g. when a step is resumed), so that their
+     * resources are accounted for.
+     *
+     * @param name A (descriptive) name for the request, e.g. the container name
+     * @param memory The memory limit (in bytes) declared for the container
+     * @param cpus The number of CPUs declared for the container
+     * @return an (admitted) ticket
+     */
+    Ticket admit(String name, long memory, double cpus);
+
+    /**
+     * Report the state of this scheduler
+     */
+    AdmissionInfo getInfo();
+}
@@ -0,0 +1,182 @@
+package eu.slipo.workbench.rpc.service;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.util.Assert;
+
+import com.spotify.docker.client.DockerClient;
+
+import eu.slipo.workbench.rpc.jobs.tasklet.docker.ContainerEventMonitor;
+
+/**
+ * A docker daemon (host) that is a member of a {@link ContainerHostPool}.
+ * <p>
+ * A host may see our (shared) data directories under different paths: a path mapping translates
+ * a path prefix (as seen by this application) to the corresponding path on the host, and is
+ * applied to the source of every bind-mount of a container placed on this host.
+ */
+public class ContainerHost
+{
+    /**
+     * A builder for a {@link ContainerHost}
+     */
+    public static class Builder
+    {
+        private final String name;
+
+        private final DockerClient client;
+
+        private ContainerEventMonitor monitor;
+
+        private final Map<Path, Path> pathMappings = new LinkedHashMap<>();
+
+        private long memory = -1L;
+
+        private Builder(String name, DockerClient client)
+        {
+            Assert.isTrue(name != null && !name.isEmpty(), "Expected a non-empty name for a host");
+            Assert.notNull(client, "A non-null docker client is expected");
+            this.name = name;
+            this.client = client;
+        }
+
+        /**
+         * Provide a monitor for container events on this host (may be <tt>null</tt>)
+         */
+        public Builder monitor(ContainerEventMonitor monitor)
+        {
+            this.monitor = monitor;
+            return this;
+        }
+
+        /**
+         * Map a path prefix (as seen by this application) to a path on this host
+         *
+         * @param path An absolute path (as seen by this application)
+         * @param hostPath The absolute path on the host
+         */
+        public Builder pathMapping(Path path, Path hostPath)
+        {
+            Assert.isTrue(path != null && path.isAbsolute(), "Expected an absolute path");
+            Assert.isTrue(hostPath != null && hostPath.isAbsolute(), "Expected an absolute path on the host");
+            this.pathMappings.put(path.normalize(), hostPath.normalize());
+            return this;
+        }
+
+        /**
+         * Set the memory (bytes) of this host available to containers. If not set, the total
+         * memory reported by the daemon is used.
+         */
+        public Builder memory(long memory)
+        {
+            this.memory = memory;
+            return this;
+        }
+
+        public ContainerHost build()
+        {
+            return new ContainerHost(name, client, monitor, pathMappings, memory);
+        }
+    }
+
+    public static Builder builder(String name, DockerClient client)
+    {
+        return new Builder(name, client);
+    }
+
+    private final String name;
+
+    private final DockerClient client;
+
+    private final ContainerEventMonitor monitor;
+
+    private final Map<Path, Path> pathMappings;
+
+    private final long memory;
+
+    private ContainerHost(
+        String name, DockerClient client, ContainerEventMonitor monitor, Map<Path, Path> pathMappings, long memory)
+    {
+        this.name = name;
+        this.client = client;
+        this.monitor = monitor;
+        this.pathMappings = Collections.unmodifiableMap(new LinkedHashMap<>(pathMappings));
+        this.memory = memory;
+    }
+
+    public String name()
+    {
+        return name;
+    }
+
+    public DockerClient client()
+    {
+        return client;
+    }
+
+    /**
+     * The monitor for container events on this host, or <tt>null</tt> if events are not monitored
+     */
+    public ContainerEventMonitor monitor()
+    {
+        return monitor;
+    }
+
+    public Map<Path, Path> pathMappings()
+    {
+        return pathMappings;
+    }
+
+    /**
+     * The memory (bytes) of this host available to containers, or <tt>-1</tt> if not configured
+     */
+    public long memory()
+    {
+        return memory;
+    }
+
+    /**
+     * Map a path (as seen by this application) to a path on this host. The longest matching
+     * prefix is used; a path not matching any prefix is returned as is.
+     *
+     * @param path An absolute path
+     */
+    public Path mapPath(Path path)
+    {
+        Assert.isTrue(path != null && path.isAbsolute(), "Expected an absolute path");
+
+        Path p = path.normalize();
+        Path prefix = null;
+        for (Path q: pathMappings.keySet()) {
+            if (p.startsWith(q) && (prefix == null || q.getNameCount() > prefix.getNameCount()))
+                prefix = q;
+        }
+        return prefix == null? p : pathMappings.get(prefix).resolve(prefix.relativize(p));
+    }
+
+    /**
+     * Map the source of a bind-mount specification (i.e. <tt>source:target[:options]</tt>) to a
+     * path on this host. A named volume (i.e. a source that is not an absolute path) is returned
+     * as is.
+     *
+     * @param bind A bind-mount specification
+     */
+    public String mapBind(String bind)
+    {
+        final int i = bind.indexOf(':');
+        final String source = i < 0? bind : bind.substring(0, i);
+        if (pathMappings.isEmpty() || !source.startsWith("/"))
+            return bind;
+        return mapPath(Paths.get(source)).toString() + (i < 0? "" : bind.substring(i));
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("ContainerHost [name=%s, pathMappings=%s, memory=%s]", name, pathMappings, memory);
+    }
+}
@@ -0,0 +1,67 @@
+package eu.slipo.workbench.rpc.service;
+
+import java.util.List;
+
+/**
+ * A pool of docker daemons (hosts) where containers are placed.
+ * <p>
+ * A container is placed on the least-loaded healthy host, where the load of a host is measured
+ * by the memory reserved by containers placed on it and by the number of its running containers.
+ * The reservation for a container is held until released (i.e. when the container finishes).
+ * <p>
+ * A host failing its health checks is drained: no new containers are placed on it, while
+ * containers already placed are still routed to it.
+ */
+public interface ContainerHostPool
+{
+    /**
+     * The hosts of this pool
+     */
+    List<ContainerHost> hosts();
+
+    /**
+     * Get a host by its name
+     *
+     * @param name The name of a host
+     * @return the host, or <tt>null</tt> if no such host exists
+     */
+    ContainerHost get(String name);
+
+    /**
+     * Place a container on the least-loaded healthy host, reserving memory for it.
+     *
+     * @param containerName The (unique) name of the container
+     * @param memory The memory (bytes) declared for the container (zero if not limited)
+     * @return the host where the container should be created
+     * @throws IllegalStateException if no healthy host exists
+     */
+    ContainerHost place(String containerName, long memory);
+
+    /**
+     * Locate the host where a container was placed (or created). If the placement is not known
+     * (e.g. after a restart of the application), healthy hosts are probed for the container.
+     *
+     * @param containerName The name (or ID) of the container
+     * @return the host, or <tt>null</tt> if the container was not found
+     */
+    ContainerHost locate(String containerName);
+
+    /**
+     * Release the reservation for a container (if any)
+     *
+     * @param containerName The name of the container
+     */
+    void release(String containerName);
+
+    /**
+     * Test if a host is healthy (i.e. accepts new containers)
+     *
+     * @param name The name of a host
+     */
+    boolean isHealthy(String name);
+
+    /**
+     * Check the health of every host, also refreshing its load (running containers) and memory.
+     */
+    void checkHealth();
+}
@@ -0,0 +1,259 @@
+package eu.slipo.workbench.rpc.service;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+import eu.slipo.workbench.common.model.jobs.AdmissionInfo;
+
+/**
+ * The default implementation of an {@link AdmissionScheduler}.
+ * <p>
+ * Queued requests are admitted strictly in the order defined by the policy: a request at the
+ * head of the queue that does not fit blocks the ones after it (even if they would fit). This
+ * way, a request with a large demand can never be starved by a stream of smaller ones.
+ */
+public class DefaultAdmissionScheduler implements AdmissionScheduler
+{
+    private static final Logger logger = LoggerFactory.getLogger(DefaultAdmissionScheduler.class);
+
+    private class DefaultTicket implements Ticket
+    {
+        private final long seq;
+
+        private final String name;
+
+        private final long memory;
+
+        private final double cpus;
+
+        private final int priority;
+
+        private final long expectedDuration;
+
+        private final CountDownLatch admission = new CountDownLatch(1);
+
+        /**
+         * The state of this ticket; guarded by the enclosing scheduler
+         */
+        private boolean admitted = false, released = false;
+
+        private DefaultTicket(String name, long memory, double cpus, int priority, long expectedDuration)
+        {
+            this.seq = sequence.incrementAndGet();
+            this.name = name;
+            this.memory = memory;
+            this.cpus = cpus;
+            this.priority = priority;
+            this.expectedDuration = expectedDuration;
+        }
+
+        @Override
+        public String name()
+        {
+            return name;
+        }
+
+        @Override
+        public long memory()
+        {
+            return memory;
+        }
+
+        @Override
+        public double cpus()
+        {
+            return cpus;
+        }
+
+        @Override
+        public boolean isAdmitted()
+        {
+            return admission.getCount() == 0;
+        }
+
+        @Override
+        public boolean await(long timeout) throws InterruptedException
+        {
+            return admission.await(timeout, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public void release()
+        {
+            DefaultAdmissionScheduler.this.release(this);
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("Ticket [name=%s, memory=%d, cpus=%.2f, priority=%d]",
+                name, memory, cpus, priority);
+        }
+    }
+
+    private final long memoryBudget;
+
+    private final double cpuBudget;
+
+    private final Policy policy;
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    private final PriorityQueue<DefaultTicket> queue;
+
+    private long memoryInUse = 0L;
+
+    private double cpusInUse = 0.0;
+
+    private int running = 0;
+
+    private long admittedCount = 0L;
+
+    private long rejectedCount = 0L;
+
+    /**
+     * Create a scheduler
+     *
+     * @param memoryBudget The memory budget (in bytes)
+     * @param cpuBudget The CPU budget (in number of CPUs)
+     * @param policy The ordering policy for queued requests
+     */
+    public DefaultAdmissionScheduler(long memoryBudget, double cpuBudget, Policy policy)
+    {
+        Assert.isTrue(memoryBudget > 0, "Expected a positive memory budget");
+        Assert.isTrue(cpuBudget > 0, "Expected a positive CPU budget");
+        Assert.notNull(policy, "A policy is required");
+
+        this.memoryBudget = memoryBudget;
+        this.cpuBudget = cpuBudget;
+        this.policy = policy;
+
+        this.queue = new PriorityQueue<>(comparator(policy));
+    }
+
+    private static Comparator<DefaultTicket> comparator(Policy policy)
+    {
+        final Comparator<DefaultTicket> arrivalOrder = Comparator.comparingLong(t -> t.seq);
+        final Comparator<DefaultTicket> priorityOrder = Comparator.comparingInt(t -> -t.priority);
+
+        switch (policy) {
+        case FIFO:
+            return arrivalOrder;
+        case PRIORITY:
+            return priorityOrder.thenComparing(arrivalOrder);
+        case SHORTEST_FIRST:
+        default:
+            // Note: An unknown duration is ordered after every known one
+            return priorityOrder
+                .thenComparingLong(t -> t.expectedDuration < 0? Long.MAX_VALUE : t.expectedDuration)
+                .thenComparing(arrivalOrder);
+        }
+    }
+
+    @Override
+    public Ticket request(String name, long memory, double cpus, int priority, long expectedDuration)
+        throws AdmissionRejectedException
+    {
+        Assert.isTrue(memory >= 0, "Expected a non-negative memory demand");
+        Assert.isTrue(cpus >= 0, "Expected a non-negative CPU demand");
+
+        final DefaultTicket ticket = new DefaultTicket(name, memory, cpus, priority, expectedDuration);
+
+        synchronized (this) {
+            if (memory > memoryBudget || cpus > cpuBudget) {
+                rejectedCount++;
+                throw new AdmissionRejectedException(String.format(
+                    "The demand of %s exceeds the budget (memory=%d, cpus=%.2f)",
+                    name, memoryBudget, cpuBudget));
+            }
+            queue.add(ticket);
+            dispatch();
+        }
+
+        if (!ticket.isAdmitted())
+            logger.info("Queued {} (waiting for resources)", ticket);
+        return ticket;
+    }
+
+    @Override
+    public synchronized Ticket admit(String name, long memory, double cpus)
+    {
+        final DefaultTicket ticket = new DefaultTicket(name, memory, cpus, 0, -1L);
+        grant(ticket);
+        return ticket;
+    }
+
+    @Override
+    public synchronized AdmissionInfo getInfo()
+    {
+        AdmissionInfo r = new AdmissionInfo();
+
+        r.setPolicy(policy.name());
+        r.setMemoryBudget(memoryBudget);
+        r.setCpuBudget(cpuBudget);
+        r.setMemoryInUse(memoryInUse);
+        r.setCpusInUse(cpusInUse);
+        r.setRunning(running);
+        r.setQueued(queue.size());
+        r.setAdmittedCount(admittedCount);
+        r.setRejectedCount(rejectedCount);
+
+        return r;
+    }
+
+    private synchronized void release(DefaultTicket ticket)
+    {
+        if (ticket.released)
+            return;
+        ticket.released = true;
+
+        if (ticket.admitted) {
+            memoryInUse -= ticket.memory;
+            cpusInUse -= ticket.cpus;
+            running--;
+            logger.debug("Released {}", ticket);
+        } else {
+            queue.remove(ticket);
+            logger.debug("Cancelled {}", ticket);
+        }
+
+        dispatch();
+    }
+
+    /**
+     * Admit queued requests (in order), as long as the head of the queue fits
+     */
+    private void dispatch()
+    {
+        DefaultTicket head = null;
+        while ((head = queue.peek()) != null && fits(head)) {
+            queue.poll();
+            grant(head);
+        }
+    }
+
+    private boolean fits(DefaultTicket ticket)
+    {
+        // Note: Tolerate rounding errors on fractional CPUs
+        return memoryInUse + ticket.memory <= memoryBudget &&
+            cpusInUse + ticket.cpus <= cpuBudget + 1E-6;
+    }
+
+    private void grant(DefaultTicket ticket)
+    {
+        ticket.admitted = true;
+        memoryInUse += ticket.memory;
+        cpusInUse += ticket.cpus;
+        running++;
+        admittedCount++;
+        ticket.admission.countDown();
+        logger.debug("Admitted {}", ticket);
+    }
+}
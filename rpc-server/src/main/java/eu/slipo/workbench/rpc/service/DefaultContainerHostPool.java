@@ -0,0 +1,272 @@
+package eu.slipo.workbench.rpc.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+import com.spotify.docker.client.exceptions.ContainerNotFoundException;
+import com.spotify.docker.client.exceptions.DockerException;
+import com.spotify.docker.client.messages.Info;
+
+/**
+ * The default implementation of a {@link ContainerHostPool}.
+ * <p>
+ * Hosts are compared by the fraction of their memory that is reserved (including the demand of
+ * the container being placed), and then by the number of their running containers. A host that
+ * cannot fit the demand is only chosen if no healthy host can.
+ */
+public class DefaultContainerHostPool implements ContainerHostPool
+{
+    private static final Logger logger = LoggerFactory.getLogger(DefaultContainerHostPool.class);
+
+    /**
+     * The default number of consecutive failed health checks before a host is drained
+     */
+    public static final int DEFAULT_MAX_FAILURES = 2;
+
+    /**
+     * The state of a host; guarded by the enclosing pool
+     */
+    private static class HostState
+    {
+        private final ContainerHost host;
+
+        /**
+         * The memory reserved for containers placed on this host, keyed by container name
+         */
+        private final Map<String, Long> reservations = new HashMap<>();
+
+        private long reservedMemory = 0L;
+
+        /**
+         * The memory of this host (as configured, or as reported by the daemon)
+         */
+        private long memory;
+
+        /**
+         * The number of running containers (as last reported by the daemon)
+         */
+        private int runningContainers = 0;
+
+        private int failures = 0;
+
+        private boolean healthy = true;
+
+        private HostState(ContainerHost host)
+        {
+            this.host = host;
+            this.memory = host.memory();
+        }
+
+        /**
+         * The number of running containers, also counting the containers placed here that are
+         * not (yet) reported as running
+         */
+        private int load()
+        {
+            return Math.max(runningContainers, reservations.size());
+        }
+
+        /**
+         * The fraction of memory that would be reserved after placing a container
+         */
+        private double memoryUsage(long demand)
+        {
+            return memory > 0? (reservedMemory + demand) / (double) memory : 0.0;
+        }
+
+        private boolean fits(long demand)
+        {
+            return memory <= 0 || reservedMemory + demand <= memory;
+        }
+    }
+
+    private final Map<String, HostState> states = new LinkedHashMap<>();
+
+    private final List<ContainerHost> hosts;
+
+    private int maxFailures = DEFAULT_MAX_FAILURES;
+
+    public DefaultContainerHostPool(List<ContainerHost> hosts)
+    {
+        Assert.notEmpty(hosts, "Expected a non-empty list of hosts");
+
+        for (ContainerHost host: hosts) {
+            Assert.state(!states.containsKey(host.name()), "The host name is not unique: " + host.name());
+            states.put(host.name(), new HostState(host));
+        }
+        this.hosts = Collections.unmodifiableList(new ArrayList<>(hosts));
+    }
+
+    public void setMaxFailures(int maxFailures)
+    {
+        Assert.isTrue(maxFailures > 0, "Expected a positive number of failures");
+        this.maxFailures = maxFailures;
+    }
+
+    @Override
+    public List<ContainerHost> hosts()
+    {
+        return hosts;
+    }
+
+    @Override
+    public ContainerHost get(String name)
+    {
+        HostState state = states.get(name);
+        return state == null? null : state.host;
+    }
+
+    @Override
+    public synchronized ContainerHost place(String containerName, long memory)
+    {
+        Assert.isTrue(containerName != null && !containerName.isEmpty(), "Expected a container name");
+        Assert.isTrue(memory >= 0, "Expected a non-negative memory demand");
+
+        // A container is placed once (e.g. a re-executed step will find it)
+
+        for (HostState state: states.values()) {
+            if (state.reservations.containsKey(containerName))
+                return state.host;
+        }
+
+        HostState target = null;
+        for (HostState state: states.values()) {
+            if (!state.healthy)
+                continue;
+            if (target == null || compare(state, target, memory) < 0)
+                target = state;
+        }
+
+        if (target == null)
+            throw new IllegalStateException("No healthy docker host is available");
+
+        if (!target.fits(memory)) {
+            logger.warn("Placing container {} on host {}, although its memory is fully reserved",
+                containerName, target.host.name());
+        }
+
+        target.reservations.put(containerName, memory);
+        target.reservedMemory += memory;
+
+        logger.debug("Placed container {} on host {} (reserved={}, running={})",
+            containerName, target.host.name(), target.reservedMemory, target.load());
+        return target.host;
+    }
+
+    private int compare(HostState a, HostState b, long demand)
+    {
+        boolean fitsA = a.fits(demand), fitsB = b.fits(demand);
+        if (fitsA != fitsB)
+            return fitsA? -1 : 1;
+
+        int r = Double.compare(a.memoryUsage(demand), b.memoryUsage(demand));
+        if (r == 0)
+            r = Integer.compare(a.load(), b.load());
+        return r;
+    }
+
+    @Override
+    public ContainerHost locate(String containerName)
+    {
+        Assert.isTrue(containerName != null && !containerName.isEmpty(), "Expected a container name");
+
+        synchronized (this) {
+            for (HostState state: states.values()) {
+                if (state.reservations.containsKey(containerName))
+                    return state.host;
+            }
+        }
+
+        // The placement is not known: probe the hosts
+
+        for (ContainerHost host: hosts) {
+            try {
+                host.client().inspectContainer(containerName);
+                logger.info("Located container {} on host {}", containerName, host.name());
+                return host;
+            } catch (ContainerNotFoundException ex) {
+                // no-op: try next host
+            } catch (DockerException ex) {
+                logger.warn("Failed to probe host {} for container {}: {}",
+                    host.name(), containerName, ex.getMessage());
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }
+
+        return null;
+    }
+
+    @Override
+    public synchronized void release(String containerName)
+    {
+        for (HostState state: states.values()) {
+            Long memory = state.reservations.remove(containerName);
+            if (memory != null) {
+                state.reservedMemory -= memory;
+                return;
+            }
+        }
+    }
+
+    @Override
+    public synchronized boolean isHealthy(String name)
+    {
+        HostState state = states.get(name);
+        return state != null && state.healthy;
+    }
+
+    @Override
+    public void checkHealth()
+    {
+        for (ContainerHost host: hosts) {
+            Info info = null;
+            String reason = null;
+            try {
+                host.client().ping();
+                info = host.client().info();
+            } catch (DockerException | RuntimeException ex) {
+                reason = ex.getMessage();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            update(host.name(), info, reason);
+        }
+    }
+
+    private synchronized void update(String name, Info info, String reason)
+    {
+        final HostState state = states.get(name);
+
+        if (info == null) {
+            state.failures++;
+            if (state.healthy && state.failures >= maxFailures) {
+                state.healthy = false;
+                logger.warn("Draining docker host {} after {} failed health checks: {}",
+                    name, state.failures, reason);
+            }
+            return;
+        }
+
+        state.failures = 0;
+        if (info.containersRunning() != null)
+            state.runningContainers = info.containersRunning();
+        if (state.host.memory() <= 0 && info.memTotal() != null)
+            state.memory = info.memTotal();
+
+        if (!state.healthy) {
+            state.healthy = true;
+            logger.info("The docker host {} is healthy again", name);
+        }
+    }
+}
@@ -0,0 +1,377 @@
+package eu.slipo.workbench.rpc.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import javax.annotation.PostConstruct;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import org.springframework.util.Assert;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.util.StringUtils;
+
+import eu.slipo.workbench.common.service.FileMaterializer;
+import eu.slipo.workbench.rpc.jobs.download.HttpDownloader;
+
+/**
+ * A file-based {@link DownloadCache}.
+ * <p>
+ * Every entry is a directory (named after a digest of the URL) holding the downloaded content
+ * along with a properties file of its validators and checksum. A download is made into a temporary
+ * directory (so that an interrupted transfer can be resumed) and then moved into place. Entries
+ * are evicted in least-recently-used order when the cache exceeds its maximum size. Note that an
+ * evicted entry still exists as long as it is hard-linked from a workflow data directory.
+ */
+@Service
+@ConditionalOnProperty(
+    name = "slipo.rpc-server.jobs.download-cache.enabled", havingValue = "true", matchIfMissing = false)
+public class DefaultDownloadCache implements DownloadCache
+{
+    private static final Logger logger = LoggerFactory.getLogger(DefaultDownloadCache.class);
+
+    private static final String TEMP_PREFIX = ".tmp-";
+
+    private static final String CONTENT_FILENAME = "content";
+
+    private static final String ENTRY_FILENAME = "entry.properties";
+
+    @Autowired
+    @Qualifier("jobDataDirectory")
+    private Path jobDataDir;
+
+    @Autowired
+    private HttpDownloader downloader;
+
+    @Autowired
+    private FileMaterializer fileMaterializer;
+
+    @Value("${slipo.rpc-server.jobs.download-cache.data-dir:}")
+    private String cacheDirLocation;
+
+    @Value("${slipo.rpc-server.jobs.download-cache.max-size-kbytes:8388608}")
+    private long maxSizeKbytes;
+
+    /**
+     * The period (seconds) during which an entry is considered fresh (i.e. not revalidated)
+     */
+    @Value("${slipo.rpc-server.jobs.download-cache.revalidate-after-seconds:60}")
+    private long revalidateAfterSeconds;
+
+    private Path cacheDir;
+
+    private static class Entry
+    {
+        final String key;
+
+        final String url;
+
+        final String etag;
+
+        final String lastModified;
+
+        final long length;
+
+        final String sha256;
+
+        /**
+         * The last time (milliseconds since epoch) this entry was validated against its source
+         */
+        volatile long validatedAt;
+
+        Entry(String key, String url, String etag, String lastModified, long length, String sha256)
+        {
+            this.key = key;
+            this.url = url;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.length = length;
+            this.sha256 = sha256;
+        }
+
+        static Entry load(String key, Path path) throws IOException
+        {
+            Properties p = new Properties();
+            try (InputStream in = Files.newInputStream(path)) {
+                p.load(in);
+            }
+            return new Entry(key,
+                p.getProperty("url"),
+                p.getProperty("etag"),
+                p.getProperty("lastModified"),
+                Long.parseLong(p.getProperty("length")),
+                p.getProperty("sha256"));
+        }
+
+        void save(Path path) throws IOException
+        {
+            Properties p = new Properties();
+            p.setProperty("url", url);
+            if (etag != null)
+                p.setProperty("etag", etag);
+            if (lastModified != null)
+                p.setProperty("lastModified", lastModified);
+            p.setProperty("length", String.valueOf(length));
+            p.setProperty("sha256", sha256);
+            try (OutputStream out = Files.newOutputStream(path)) {
+                p.store(out, null);
+            }
+        }
+    }
+
+    /**
+     * The entries (in access order). All access must be synchronized on this map.
+     */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * The total size (bytes) of entries (guarded by {@link DefaultDownloadCache#entries})
+     */
+    private long totalSize = 0L;
+
+    /**
+     * The pending (i.e. validated or downloaded right now) entries, so that concurrent requests
+     * for the same URL are coalesced
+     */
+    private final ConcurrentHashMap<String, CompletableFuture<Entry>> pending = new ConcurrentHashMap<>();
+
+    /**
+     * A lock to protect materialization of entries (shared) from their replacement or
+     * eviction (exclusive)
+     */
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    @PostConstruct
+    private void initialize() throws IOException
+    {
+        cacheDir = StringUtils.isEmpty(cacheDirLocation)?
+            jobDataDir.resolve("download-cache") : Paths.get(cacheDirLocation);
+        Assert.state(cacheDir.isAbsolute(), "Expected an absolute path for the cache directory");
+        Files.createDirectories(cacheDir);
+
+        // Load existing entries (in order of last access)
+
+        List<Path> entryDirs = new ArrayList<>();
+        try (DirectoryStream<Path> dirs = Files.newDirectoryStream(cacheDir, Files::isDirectory)) {
+            for (Path dir: dirs) {
+                if (!dir.getFileName().toString().startsWith(TEMP_PREFIX))
+                    entryDirs.add(dir);
+            }
+        }
+        entryDirs.sort(Comparator.comparing(dir -> dir.resolve(ENTRY_FILENAME).toFile().lastModified()));
+
+        for (Path dir: entryDirs) {
+            String key = dir.getFileName().toString();
+            try {
+                Entry entry = Entry.load(key, dir.resolve(ENTRY_FILENAME));
+                Assert.state(Files.size(dir.resolve(CONTENT_FILENAME)) == entry.length, "Size mismatch");
+                entries.put(key, entry);
+                totalSize += entry.length;
+            } catch (IOException | RuntimeException ex) {
+                logger.warn("Removing malformed download cache entry {}: {}", dir, ex.getMessage());
+                FileSystemUtils.deleteRecursively(dir.toFile());
+            }
+        }
+
+        logger.info("Caching downloads under {} ({} entries, {} of {} kbytes)",
+            cacheDir, entries.size(), totalSize / 1024L, maxSizeKbytes);
+    }
+
+    @Override
+    public String fetch(URL url, Path target) throws IOException, InterruptedException
+    {
+        Assert.notNull(url, "A URL is required");
+        Assert.isTrue(HttpDownloader.supports(url), "Expected an HTTP(S) URL");
+        Assert.notNull(target, "A target path is required");
+
+        final String key = DigestUtils.sha256Hex(url.toString());
+
+        Entry entry = acquire(key, url);
+        try {
+            materialize(entry, target);
+        } catch (NoSuchFileException ex) {
+            // The entry was evicted (or replaced) right after we acquired it: try once more
+            entry = acquire(key, url);
+            materialize(entry, target);
+        }
+
+        return entry.sha256;
+    }
+
+    @Override
+    public long size()
+    {
+        synchronized (entries) {
+            return totalSize;
+        }
+    }
+
+    /**
+     * Get a valid entry for a URL, downloading the resource if needed. If the entry is already
+     * pending (by another request), wait for it.
+     */
+    private Entry acquire(String key, URL url) throws IOException, InterruptedException
+    {
+        final CompletableFuture<Entry> future = new CompletableFuture<>();
+        final CompletableFuture<Entry> existing = pending.putIfAbsent(key, future);
+        if (existing != null) {
+            logger.info("Waiting for a pending download of {}", url);
+            try {
+                return existing.get();
+            } catch (ExecutionException ex) {
+                Throwable cause = ex.getCause();
+                throw new IOException("The download of " + url + " has failed: " + cause.getMessage(), cause);
+            }
+        }
+
+        try {
+            Entry entry = validateOrDownload(key, url);
+            future.complete(entry);
+            return entry;
+        } catch (IOException | InterruptedException | RuntimeException ex) {
+            future.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            pending.remove(key, future);
+        }
+    }
+
+    private Entry validateOrDownload(String key, URL url) throws IOException, InterruptedException
+    {
+        Entry entry = null;
+        synchronized (entries) {
+            entry = entries.get(key);
+        }
+
+        if (entry != null) {
+            final long now = System.currentTimeMillis();
+            if (now - entry.validatedAt < revalidateAfterSeconds * 1000L) {
+                logger.info("Using cached download of {}", url);
+                return entry;
+            }
+            if (!downloader.isModified(url, entry.etag, entry.lastModified, entry.length)) {
+                logger.info("Using cached download of {} (revalidated)", url);
+                entry.validatedAt = now;
+                return entry;
+            }
+            logger.info("The cached download of {} is stale", url);
+        }
+
+        // Download into a temporary directory (named after the key, so that a failed download
+        // is resumed by a later request)
+
+        final Path tempDir = cacheDir.resolve(TEMP_PREFIX + key);
+        Files.createDirectories(tempDir);
+
+        HttpDownloader.Result result = downloader.download(url, tempDir.resolve(CONTENT_FILENAME));
+        entry = new Entry(key, url.toString(),
+            result.getEtag(), result.getLastModified(), result.getSize(), result.getSha256());
+        entry.save(tempDir.resolve(ENTRY_FILENAME));
+        entry.validatedAt = System.currentTimeMillis();
+
+        // Move into place (replacing a stale entry, if any)
+
+        final Path entryDir = cacheDir.resolve(key);
+        lock.writeLock().lock();
+        try {
+            synchronized (entries) {
+                Entry stale = entries.remove(key);
+                if (stale != null)
+                    totalSize -= stale.length;
+            }
+            if (Files.exists(entryDir))
+                FileSystemUtils.deleteRecursively(entryDir.toFile());
+            Files.move(tempDir, entryDir, StandardCopyOption.ATOMIC_MOVE);
+            synchronized (entries) {
+                entries.put(key, entry);
+                totalSize += entry.length;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        logger.info("Cached download of {} ({} bytes)", url, entry.length);
+
+        evictIfNeeded(key);
+        return entry;
+    }
+
+    private void materialize(Entry entry, Path target) throws IOException
+    {
+        final Path entryDir = cacheDir.resolve(entry.key);
+        final Path content = entryDir.resolve(CONTENT_FILENAME);
+
+        lock.readLock().lock();
+        try {
+            Files.deleteIfExists(target);
+            fileMaterializer.materialize(content, target);
+            // Touch the entry, so that the order of access survives a restart
+            Files.setLastModifiedTime(
+                entryDir.resolve(ENTRY_FILENAME), FileTime.fromMillis(System.currentTimeMillis()));
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        synchronized (entries) {
+            entries.get(entry.key); // mark as recently used
+        }
+    }
+
+    /**
+     * Evict least-recently-used entries until the cache fits into its maximum size.
+     *
+     * @param keep The key of an entry to never evict (i.e. the one just added)
+     */
+    private void evictIfNeeded(String keep)
+    {
+        final long maxSize = maxSizeKbytes * 1024L;
+
+        lock.writeLock().lock();
+        try {
+            List<Entry> evicted = new ArrayList<>();
+            synchronized (entries) {
+                Iterator<Entry> it = entries.values().iterator();
+                while (totalSize > maxSize && it.hasNext()) {
+                    Entry e = it.next();
+                    if (e.key.equals(keep) || pending.containsKey(e.key))
+                        continue;
+                    it.remove();
+                    totalSize -= e.length;
+                    evicted.add(e);
+                }
+            }
+            for (Entry e: evicted) {
+                logger.info("Evicting cached download of {} ({} bytes)", e.url, e.length);
+                FileSystemUtils.deleteRecursively(cacheDir.resolve(e.key).toFile());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+}
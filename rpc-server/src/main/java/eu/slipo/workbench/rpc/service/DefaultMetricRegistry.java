@@ -0,0 +1,265 @@
+package eu.slipo.workbench.rpc.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+import eu.slipo.workbench.common.model.jobs.MetricInfo;
+
+/**
+ * The default (in-memory) implementation of a {@link MetricRegistry}.
+ * <p>
+ * A timer is kept as a histogram with fixed buckets (in seconds), covering durations from a few
+ * milliseconds (e.g. a call to a repository) to a few hours (e.g. a run of a tool).
+ */
+public class DefaultMetricRegistry implements MetricRegistry
+{
+    private static final Logger logger = LoggerFactory.getLogger(DefaultMetricRegistry.class);
+
+    /**
+     * The default (inclusive) upper bounds (in seconds) of buckets of a timer
+     */
+    public static final double[] DEFAULT_BUCKETS = new double[] {
+        0.005, 0.025, 0.1, 0.5, 1.0, 5.0, 30.0, 120.0, 600.0, 1800.0, 3600.0, 10800.0
+    };
+
+    private static final Pattern NAME_PATTERN = Pattern.compile("[a-zA-Z_:][a-zA-Z0-9_:]*");
+
+    private static final Pattern LABEL_NAME_PATTERN = Pattern.compile("[a-zA-Z_][a-zA-Z0-9_]*");
+
+    private static final double NANOS_PER_SECOND = 1E+9;
+
+    private static final Comparator<MetricInfo> LABELS_ORDER =
+        Comparator.comparing(metric -> metric.getLabels().toString());
+
+    private static class CounterSeries implements Counter
+    {
+        final LongAdder count = new LongAdder();
+
+        @Override
+        public void increment(long amount)
+        {
+            Assert.isTrue(amount >= 0, "A counter cannot be decremented");
+            count.add(amount);
+        }
+
+        void report(MetricInfo metric)
+        {
+            metric.setValue((double) count.sum());
+        }
+    }
+
+    private static class TimerSeries implements Timer
+    {
+        final double[] bounds;
+
+        /**
+         * The (non-cumulative) counts of buckets; the last one counts observations beyond
+         * the upper bound of the last bucket.
+         */
+        final LongAdder[] counts;
+
+        final DoubleAdder sum = new DoubleAdder();
+
+        final AtomicLong maxNanos = new AtomicLong();
+
+        TimerSeries(double[] bounds)
+        {
+            this.bounds = bounds;
+            this.counts = new LongAdder[bounds.length + 1];
+            for (int i = 0; i < counts.length; ++i)
+                counts[i] = new LongAdder();
+        }
+
+        @Override
+        public void record(long duration, TimeUnit unit)
+        {
+            final long nanos = Math.max(unit.toNanos(duration), 0L);
+            final double seconds = nanos / NANOS_PER_SECOND;
+
+            int i = 0;
+            while (i < bounds.length && seconds > bounds[i])
+                i++;
+            counts[i].increment();
+            sum.add(seconds);
+            maxNanos.accumulateAndGet(nanos, Math::max);
+        }
+
+        void report(MetricInfo metric)
+        {
+            Map<String, Long> buckets = new LinkedHashMap<>();
+            long cumulativeCount = 0L;
+            for (int i = 0; i < bounds.length; ++i) {
+                cumulativeCount += counts[i].sum();
+                buckets.put(Double.toString(bounds[i]), cumulativeCount);
+            }
+            cumulativeCount += counts[bounds.length].sum();
+            buckets.put("+Inf", cumulativeCount);
+
+            // Note: The count is derived from buckets, so that a report is consistent even if
+            // observations are recorded while reporting
+            metric.setBuckets(buckets);
+            metric.setCount(cumulativeCount);
+            metric.setSum(sum.sum());
+            metric.setMax(maxNanos.get() / NANOS_PER_SECOND);
+        }
+    }
+
+    private static class GaugeSeries
+    {
+        final Supplier<? extends Number> supplier;
+
+        GaugeSeries(Supplier<? extends Number> supplier)
+        {
+            this.supplier = supplier;
+        }
+
+        boolean report(MetricInfo metric)
+        {
+            Number value = null;
+            try {
+                value = supplier.get();
+            } catch (RuntimeException ex) {
+                logger.debug("Failed to read gauge {}: {}", metric.getName(), ex.getMessage());
+            }
+            if (value == null)
+                return false;
+            metric.setValue(value.doubleValue());
+            return true;
+        }
+    }
+
+    /**
+     * A family of series sharing a name (and a type)
+     */
+    private static class Family
+    {
+        final String name;
+
+        final MetricInfo.Type type;
+
+        final String help;
+
+        final ConcurrentMap<Map<String, String>, Object> series = new ConcurrentHashMap<>();
+
+        Family(String name, MetricInfo.Type type, String help)
+        {
+            this.name = name;
+            this.type = type;
+            this.help = help;
+        }
+    }
+
+    private final ConcurrentMap<String, Family> families = new ConcurrentSkipListMap<>();
+
+    private final double[] buckets;
+
+    public DefaultMetricRegistry()
+    {
+        this(DEFAULT_BUCKETS);
+    }
+
+    /**
+     * Create a registry with custom buckets for timers.
+     *
+     * @param buckets The (inclusive) upper bounds (in seconds) of buckets, in increasing order
+     */
+    public DefaultMetricRegistry(double[] buckets)
+    {
+        Assert.isTrue(buckets != null && buckets.length > 0, "Expected a non-empty array of buckets");
+        for (int i = 1; i < buckets.length; ++i)
+            Assert.isTrue(buckets[i - 1] < buckets[i], "Expected buckets in increasing order");
+        this.buckets = buckets.clone();
+    }
+
+    private Family family(String name, MetricInfo.Type type, String help)
+    {
+        Assert.isTrue(name != null && NAME_PATTERN.matcher(name).matches(), "Invalid metric name");
+
+        Family family = families.computeIfAbsent(name, k -> new Family(name, type, help));
+        Assert.isTrue(family.type == type,
+            String.format("The metric %s is already registered as a %s", name, family.type));
+        return family;
+    }
+
+    private static Map<String, String> labels(String... labels)
+    {
+        if (labels.length == 0)
+            return Collections.emptyMap();
+
+        Assert.isTrue(labels.length % 2 == 0, "Expected pairs of label names and values");
+        Map<String, String> result = new LinkedHashMap<>();
+        for (int i = 0; i < labels.length; i += 2) {
+            String labelName = labels[i], labelValue = labels[i + 1];
+            Assert.isTrue(labelName != null && LABEL_NAME_PATTERN.matcher(labelName).matches(),
+                "Invalid label name");
+            result.put(labelName, labelValue == null? "" : labelValue);
+        }
+        return result;
+    }
+
+    @Override
+    public Counter counter(String name, String help, String... labels)
+    {
+        Family family = family(name, MetricInfo.Type.COUNTER, help);
+        return (Counter) family.series.computeIfAbsent(labels(labels), k -> new CounterSeries());
+    }
+
+    @Override
+    public Timer timer(String name, String help, String... labels)
+    {
+        Family family = family(name, MetricInfo.Type.HISTOGRAM, help);
+        return (Timer) family.series.computeIfAbsent(labels(labels), k -> new TimerSeries(buckets));
+    }
+
+    @Override
+    public void gauge(String name, String help, Supplier<? extends Number> supplier, String... labels)
+    {
+        Assert.notNull(supplier, "A supplier of values is required");
+
+        Family family = family(name, MetricInfo.Type.GAUGE, help);
+        family.series.put(labels(labels), new GaugeSeries(supplier));
+    }
+
+    @Override
+    public List<MetricInfo> snapshot()
+    {
+        List<MetricInfo> result = new ArrayList<>();
+
+        for (Family family: families.values()) {
+            List<MetricInfo> metrics = new ArrayList<>();
+            for (Map.Entry<Map<String, String>, Object> e: family.series.entrySet()) {
+                MetricInfo metric = new MetricInfo(family.name, family.type, family.help, e.getKey());
+                Object series = e.getValue();
+                if (series instanceof CounterSeries) {
+                    ((CounterSeries) series).report(metric);
+                } else if (series instanceof TimerSeries) {
+                    ((TimerSeries) series).report(metric);
+                } else if (!((GaugeSeries) series).report(metric)) {
+                    continue;
+                }
+                metrics.add(metric);
+            }
+            metrics.sort(LABELS_ORDER);
+            result.addAll(metrics);
+        }
+
+        return result;
+    }
+}
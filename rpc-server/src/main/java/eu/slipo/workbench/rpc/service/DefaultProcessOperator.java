@@ -3,16 +3,23 @@ package eu.slipo.workbench.rpc.service;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.nio.file.FileSystemException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 import javax.annotation.PostConstruct;
@@ -20,12 +27,23 @@ import javax.annotation.PostConstruct;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.ExitStatus;
 import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.explore.JobExplorer;
+import org.springframework.batch.core.repository.JobRepository;
 import org.springframework.batch.item.ExecutionContext;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.scheduling.TaskScheduler;
 import org.springframework.stereotype.Service;
 import org.springframework.util.Assert;
+import org.springframework.util.FileSystemUtils;
 
 import com.google.common.collect.Iterables;
 
@@ -40,10 +58,13 @@ import eu.slipo.workbench.common.model.process.ProcessExecutionRecord;
 import eu.slipo.workbench.common.model.process.ProcessExecutionStartException;
 import eu.slipo.workbench.common.model.process.ProcessExecutionStepFileRecord;
 import eu.slipo.workbench.common.model.process.ProcessExecutionStepRecord;
+import eu.slipo.workbench.common.model.process.ProcessExecutionStepStatsRecord;
+import eu.slipo.workbench.common.model.process.ProcessExecutionStepStatsSampleRecord;
 import eu.slipo.workbench.common.model.process.ProcessExecutionStopException;
 import eu.slipo.workbench.common.model.process.ProcessIdentifier;
 import eu.slipo.workbench.common.model.process.ProcessNotFoundException;
 import eu.slipo.workbench.common.model.process.ProcessRecord;
+import eu.slipo.workbench.common.model.process.ProcessRecoveryInfo;
 import eu.slipo.workbench.common.model.process.Step;
 import eu.slipo.workbench.common.model.resource.DataSource;
 import eu.slipo.workbench.common.model.tool.AnyTool;
@@ -58,7 +79,15 @@ import eu.slipo.workbench.common.repository.ProcessRepository.ProcessExecutionNo
 import eu.slipo.workbench.common.repository.ProcessRepository.ProcessHasActiveExecutionException;
 import eu.slipo.workbench.common.repository.ResourceRepository;
 import eu.slipo.workbench.common.service.UserFileNamingStrategy;
+import eu.slipo.workbench.common.service.util.PropertiesConverterService;
 import eu.slipo.workbench.rpc.jobs.RegisterToCatalogJobConfiguration;
+import eu.slipo.workbench.rpc.jobs.ReuseStepOutputJobConfiguration;
+import eu.slipo.workbench.rpc.jobs.tasklet.LookupCachedResultTasklet;
+import eu.slipo.workbench.rpc.jobs.tasklet.OutputSpool;
+import eu.slipo.workbench.rpc.jobs.tasklet.docker.ContainerStatsCollector;
+import eu.slipo.workbench.rpc.jobs.tasklet.docker.ContainerStatsSample;
+import eu.slipo.workbench.rpc.jobs.tasklet.docker.RunContainerTasklet;
+import eu.slipo.workbench.common.service.FileMaterializer;
 import eu.slipo.workbench.common.service.ProcessOperator;
 import eu.slipo.workflows.Workflow;
 import eu.slipo.workflows.WorkflowExecutionEventListener;
@@ -105,22 +134,121 @@ public class DefaultProcessOperator implements ProcessOperator
     @Qualifier("workflowDataDirectory")
     private Path workflowDataDir;
 
+    @Autowired
+    @Qualifier("jobDataDirectory")
+    private Path jobDataDir;
+
     @Autowired
     private WorkflowScheduler workflowScheduler;
 
     @Autowired
     private ProcessToWorkflowMapper processToWorkflowMapper;
 
+    @Autowired(required = false)
+    private FairShareExecutionQueue executionQueue;
+
+    @Autowired
+    @Qualifier("taskExecutor")
+    private TaskExecutor taskExecutor;
+
+    @Autowired
+    private JobExplorer jobExplorer;
+
+    @Autowired
+    private JobRepository jobRepository;
+
+    @Autowired
+    private FileMaterializer fileMaterializer;
+
+    @Autowired
+    private PropertiesConverterService propertiesConverter;
+
+    /**
+     * A service for leasing executions among several workers (may be <tt>null</tt> if worker
+     * mode is disabled, i.e. this node runs all executions submitted to it)
+     */
+    @Autowired(required = false)
+    private ExecutionLeaseService executionLeaseService;
+
+    @Autowired
+    private TaskScheduler taskScheduler;
+
+    /**
+     * The interval (milliseconds) between heartbeats of a worker (only in worker mode)
+     */
+    @Value("${slipo.rpc-server.workers.heartbeat-interval-millis:10000}")
+    private long heartbeatInterval;
+
+    /**
+     * The maximum number of executions leased (and run) by a worker (only in worker mode)
+     */
+    @Value("${slipo.rpc-server.workers.max-concurrency:4}")
+    private int maxLeasedExecutions;
+
+    /**
+     * A flag that indicates if interrupted executions should be resumed (instead of being
+     * marked as stopped) when the application starts
+     */
+    @Value("${slipo.rpc-server.process-recovery.enabled:false}")
+    private boolean recoveryEnabled;
+
+    /**
+     * The report on the recovery of interrupted executions (if recovery is enabled)
+     */
+    private volatile ProcessRecoveryInfo recoveryInfo;
+
+    /**
+     * A workflow (along with its listeners) waiting in the execution queue
+     */
+    private static class QueuedExecution
+    {
+        private final Workflow workflow;
+
+        private final WorkflowExecutionEventListener[] listeners;
+
+        private QueuedExecution(Workflow workflow, WorkflowExecutionEventListener... listeners)
+        {
+            this.workflow = workflow;
+            this.listeners = listeners;
+        }
+    }
+
+    /**
+     * Map the id of a queued process execution to its workflow. This map is also used as the lock
+     * guarding the transitions of queued executions.
+     */
+    private final Map<Long, QueuedExecution> queuedExecutions = new ConcurrentHashMap<>();
+
+    /**
+     * The ids of executions leased by this worker (only in worker mode)
+     */
+    private final Set<Long> leasedExecutions = ConcurrentHashMap.newKeySet();
+
+    /**
+     * The ids of leased executions that are being stopped (on request of another worker)
+     */
+    private final Set<Long> stoppingExecutions = ConcurrentHashMap.newKeySet();
+
     /**
      * Fix status of interrupted executions.
      *
      * <p>Before starting any execution, must clear the statuses of executions that falsely
      * appear as active (RUNNING/UNKNOWN), most commonly as a result of a non-graceful shutdown.
+     * If recovery is enabled, these executions are left as is (to be resumed as soon as the
+     * application is ready).
+     *
+     * <p>In worker mode, other workers may be running executions: this is only done by the
+     * coordinator, and only for executions that are not leased by any worker.
+     *
+     * @see DefaultProcessOperator#recoverExecutions()
+     * @see DefaultProcessOperator#clearUnleasedExecutions()
      */
     @PostConstruct
     private void clearRunningExecutions()
     {
-        processRepository.clearRunningExecutions();
+        if (!recoveryEnabled && executionLeaseService == null) {
+            processRepository.clearRunningExecutions();
+        }
     }
 
     /**
@@ -232,11 +360,19 @@ public class DefaultProcessOperator implements ProcessOperator
         {
             final Workflow workflow = workflowExecutionSnapshot.workflow();
             logger.info("The workflow {} has completed successfully", workflow.id());
+
+            // Remove spools of output streamed between steps (kept if failed, for a restart)
+            final Path spoolDir = jobDataDir.resolve(OutputSpool.DIRECTORY_NAME).resolve(workflow.id().toString());
+            if (Files.exists(spoolDir) && !FileSystemUtils.deleteRecursively(spoolDir.toFile()))
+                logger.warn("Failed to remove spools of workflow {}", workflow.id());
+
             try {
                 processRepository.updateExecution(
                     executionId, EnumProcessExecutionStatus.COMPLETED, null, ZonedDateTime.now(), null);
             } catch (ProcessExecutionNotFoundException ex) {
                 throw new IllegalStateException("The execution entity has disappeared!", ex);
+            } finally {
+                releaseExecution(executionId);
             }
         }
 
@@ -251,6 +387,8 @@ public class DefaultProcessOperator implements ProcessOperator
                     executionId, EnumProcessExecutionStatus.FAILED, null, ZonedDateTime.now(), null);
             } catch (ProcessExecutionNotFoundException ex) {
                 throw new IllegalStateException("The execution entity has disappeared!", ex);
+            } finally {
+                releaseExecution(executionId);
             }
         }
 
@@ -267,18 +405,54 @@ public class DefaultProcessOperator implements ProcessOperator
             }
         }
 
+        /**
+         * Resolve an input read from the spool of an upstream step (see {@link OutputSpool}) to
+         * the actual output of that step. Any other input is returned as is.
+         */
+        private Path resolveSpooledInput(Workflow workflow, Path inputPath)
+        {
+            if (!OutputSpool.isSpool(inputPath, jobDataDir.resolve(OutputSpool.DIRECTORY_NAME)))
+                return inputPath;
+
+            final String outputName = inputPath.getFileName().toString();
+            final Workflow.JobNode producerNode = workflow.node(OutputSpool.nodeName(inputPath));
+            return producerNode == null?
+                inputPath : Iterables.find(producerNode.output(), path -> path.endsWith(outputName), inputPath);
+        }
+
         private void beforeProcessingStep(
             WorkflowExecutionSnapshot workflowExecutionSnapshot, Step step, JobExecution jobExecution)
         {
             final Workflow workflow = workflowExecutionSnapshot.workflow();
             final Workflow.JobNode node = workflow.node(step.nodeName());
-            final List<Path> inputPaths = node.input();
+            final List<Path> inputPaths = node.input().stream()
+                .map(path -> resolveSpooledInput(workflow, path))
+                .collect(Collectors.toList());
 
             final ToolConfiguration<? extends AnyTool> configuration = step.configuration();
             final EnumTool tool = step.tool();
 
             final ZonedDateTime now = ZonedDateTime.now();
 
+            // Check if this step is restarted as part of the same execution (i.e. the execution
+            // is resumed after an interruption): if so, just reattach the existing step record
+
+            ProcessExecutionRecord executionRecord = processRepository.findExecution(executionId, true);
+            if (executionRecord == null)
+                throw new IllegalStateException("The execution entity has disappeared!");
+            if (executionRecord.getStep(step.key()) != null) {
+                logger.info("The execution step {}/{} is restarted as job execution #{}",
+                    executionId, step.key(), jobExecution.getId());
+                try {
+                    processRepository.restartExecutionStep(executionId, step.key(), jobExecution.getId(), now);
+                } catch (ProcessExecutionNotFoundException ex) {
+                    throw new IllegalStateException("The execution entity has disappeared!", ex);
+                } catch (ProcessExecutionNotActiveException ex) {
+                    throw new IllegalStateException("The execution entity is not active!", ex);
+                }
+                return;
+            }
+
             // Create a record for this processing step
 
             ProcessExecutionStepRecord stepRecord = new ProcessExecutionStepRecord(step.key());
@@ -365,15 +539,12 @@ public class DefaultProcessOperator implements ProcessOperator
 
             final Step step = definition.stepByNodeName(nodeName);
             if (step != null) {
-                afterProcessingStep(workflowExecutionSnapshot, step, jobExecution);;
+                afterProcessingStep(workflow, step, jobExecution);
             }
         }
 
-        private void afterProcessingStep(
-            WorkflowExecutionSnapshot workflowExecutionSnapshot, Step step, JobExecution jobExecution)
+        private void afterProcessingStep(Workflow workflow, Step step, JobExecution jobExecution)
         {
-            final Workflow workflow = workflowExecutionSnapshot.workflow();
-            final Workflow.JobNode node = workflow.node(step.nodeName());
             final Path stagingDir = workflow.stagingDirectory(step.nodeName());
             final BatchStatus batchStatus = jobExecution.getStatus();
             final ExecutionContext executionContext = jobExecution.getExecutionContext();
@@ -421,9 +592,17 @@ public class DefaultProcessOperator implements ProcessOperator
                             executionId, step.key(), path);
                         throw new IllegalStateException(message, ex);
                     }
-                    ProcessExecutionStepFileRecord fileRecord = new ProcessExecutionStepFileRecord(
-                        EnumStepFile.CONFIGURATION, convertPathToUri(path), size, null);
-                    stepRecord.addFile(fileRecord);
+                    final String uri = convertPathToUri(path).toString();
+                    ProcessExecutionStepFileRecord fileRecord = stepRecord.getFiles().stream()
+                        .filter(f -> f.getType() == EnumStepFile.CONFIGURATION && uri.equals(f.getFilePath()))
+                        .findFirst().orElse(null);
+                    if (fileRecord != null) {
+                        // Recorded by a previous (interrupted) run of this step
+                        fileRecord.setFileSize(size);
+                    } else {
+                        fileRecord = new ProcessExecutionStepFileRecord(EnumStepFile.CONFIGURATION, uri, size, null);
+                        stepRecord.addFile(fileRecord);
+                    }
                 }
             }
 
@@ -436,6 +615,9 @@ public class DefaultProcessOperator implements ProcessOperator
                 {
                     stepRecord.setStatus(EnumProcessExecutionStatus.COMPLETED);
                     stepRecord.setCompletedOn(now);
+                    // Mark as cached if the result was reused (instead of computed)
+                    stepRecord.setCached(Boolean.TRUE.equals(
+                        executionContext.get(LookupCachedResultTasklet.Keys.RESULT_CACHED)));
                     // Update file records for outputs (with size or other computed metadata)
                     for (ProcessExecutionStepFileRecord fileRecord: stepRecord.getFiles()) {
                         if (!fileRecord.getType().isOfOutputType())
@@ -472,6 +654,10 @@ public class DefaultProcessOperator implements ProcessOperator
                     "Did not expect a batch status of ["+ batchStatus + "] in a afterNode callback");
             }
 
+            // Summarize the resources consumed by the container(s) of this step (if sampled)
+
+            stepRecord.setStats(collectStats(jobExecution));
+
             //
             // Update step entity in repository
             //
@@ -483,25 +669,99 @@ public class DefaultProcessOperator implements ProcessOperator
             } catch (ProcessExecutionNotActiveException ex) {
                 throw new IllegalStateException("The execution entity is not active!", ex);
             }
+
+            // Store the time series of statistics (if kept by the containers of this step)
+
+            List<ProcessExecutionStepStatsSampleRecord> samples = collectStatsSamples(jobExecution);
+            if (!samples.isEmpty()) {
+                try {
+                    processRepository.createExecutionStepStats(executionId, step.key(), samples);
+                } catch (ProcessExecutionNotFoundException ex) {
+                    throw new IllegalStateException("The execution entity has disappeared!", ex);
+                }
+            }
         }
 
-        private Path copyToTargetDirectory(Path source, Path targetDir) throws IOException
+        /**
+         * Summarize the statistics kept (in step execution contexts) by the container(s) of a job.
+         * If a job runs several containers (e.g. one per partition), the summary aggregates all
+         * of them.
+         *
+         * @return a summary, or <tt>null</tt> if no statistics were kept
+         */
+        private ProcessExecutionStepStatsRecord collectStats(JobExecution jobExecution)
         {
-            Path target = targetDir.resolve(source.getFileName());
-
-            Path link = null;
-            try {
-                link = Files.createLink(target, source);
-            } catch (FileSystemException ex) {
-                link = null;
+            ProcessExecutionStepStatsRecord result = null;
+
+            for (StepExecution stepExecution: jobExecution.getStepExecutions()) {
+                final ExecutionContext context = stepExecution.getExecutionContext();
+                if (!context.containsKey(RunContainerTasklet.Keys.STATS_SAMPLES) &&
+                        !context.containsKey(RunContainerTasklet.Keys.STATS_OOM_KILLED))
+                    continue;
+                ProcessExecutionStepStatsRecord r = new ProcessExecutionStepStatsRecord();
+                r.setCpuTime(context.getLong(RunContainerTasklet.Keys.STATS_CPU_TIME, 0L));
+                r.setPeakMemory(context.getLong(RunContainerTasklet.Keys.STATS_PEAK_MEMORY, 0L));
+                r.setOomKilled(Boolean.TRUE.equals(context.get(RunContainerTasklet.Keys.STATS_OOM_KILLED)));
+                r.setBlockReadBytes(context.getLong(RunContainerTasklet.Keys.STATS_BLOCK_READ, 0L));
+                r.setBlockWriteBytes(context.getLong(RunContainerTasklet.Keys.STATS_BLOCK_WRITE, 0L));
+                r.setNetworkRxBytes(context.getLong(RunContainerTasklet.Keys.STATS_NETWORK_RX, 0L));
+                r.setNetworkTxBytes(context.getLong(RunContainerTasklet.Keys.STATS_NETWORK_TX, 0L));
+                if (result == null)
+                    result = r;
+                else
+                    result.merge(r);
             }
 
-            // If linking has failed, fallback to copying
+            return result;
+        }
 
-            if (link == null) {
-                Files.copy(source, target);
+        /**
+         * Read the time series of statistics kept (in files) by the container(s) of a job.
+         */
+        private List<ProcessExecutionStepStatsSampleRecord> collectStatsSamples(JobExecution jobExecution)
+        {
+            List<ProcessExecutionStepStatsSampleRecord> result = new ArrayList<>();
+
+            for (StepExecution stepExecution: jobExecution.getStepExecutions()) {
+                final ExecutionContext context = stepExecution.getExecutionContext();
+                if (!context.containsKey(RunContainerTasklet.Keys.STATS_FILE))
+                    continue;
+                final String containerName = context.getString(RunContainerTasklet.Keys.STATS_CONTAINER);
+                final Path path = Paths.get(context.getString(RunContainerTasklet.Keys.STATS_FILE));
+                List<ContainerStatsSample> samples = null;
+                try {
+                    samples = ContainerStatsCollector.readSeries(path);
+                } catch (IOException ex) {
+                    // The time series is auxiliary: do not fail the step because of it
+                    logger.warn("Cannot read statistics of execution step from {}: {}", path, ex.getMessage());
+                    continue;
+                }
+                for (ContainerStatsSample sample: samples) {
+                    ProcessExecutionStepStatsSampleRecord r = new ProcessExecutionStepStatsSampleRecord(
+                        containerName,
+                        ZonedDateTime.ofInstant(Instant.ofEpochMilli(sample.sampledOn()), ZoneId.systemDefault()));
+                    r.setCpuTime(sample.cpuTime());
+                    r.setMemory(sample.memory());
+                    r.setBlockReadBytes(sample.blockReadBytes());
+                    r.setBlockWriteBytes(sample.blockWriteBytes());
+                    r.setNetworkRxBytes(sample.networkRxBytes());
+                    r.setNetworkTxBytes(sample.networkTxBytes());
+                    result.add(r);
+                }
             }
 
+            return result;
+        }
+
+        private Path copyToTargetDirectory(Path source, Path targetDir) throws IOException
+        {
+            Path target = targetDir.resolve(source.getFileName());
+
+            // Replace a copy made by a previous (interrupted) run of this step
+            Files.deleteIfExists(target);
+
+            fileMaterializer.materialize(source, target);
+
             return target;
         }
 
@@ -554,6 +814,91 @@ public class DefaultProcessOperator implements ProcessOperator
         return workflow;
     }
 
+    /**
+     * Build a workflow that reuses the output of the steps which are unchanged with respect
+     * to a (completed) execution of a previous revision.
+     *
+     * @param id The process id
+     * @param version The version of the process revision
+     * @param definition The process definition
+     * @param createdBy The id of the user that created the process
+     * @param baselineRecord The record (including steps) of the execution to reuse output from
+     */
+    private Workflow buildWorkflow(
+        long id, long version, ProcessDefinition definition, int createdBy, ProcessExecutionRecord baselineRecord)
+    {
+        final long baselineId = baselineRecord.getId();
+        final ProcessIdentifier baselineProcess = baselineRecord.getProcess();
+
+        final ProcessRecord baselineProcessRecord = processRepository.findOne(baselineProcess);
+        Assert.state(baselineProcessRecord != null, "The process of an execution has disappeared!");
+
+        final ProcessDefinitionComparator comparator = new ProcessDefinitionComparator(propertiesConverter);
+        final Set<String> unchangedNodeNames =
+            comparator.findUnchangedSteps(baselineProcessRecord.getDefinition(), definition);
+
+        // Collect the recorded output of unchanged steps. A step is not reused if its output is
+        // no longer available (e.g. it was cleaned up)
+
+        final Map<String, List<Path>> reusedOutput = new HashMap<>();
+        for (ProcessExecutionStepRecord stepRecord: baselineRecord.getSteps()) {
+            final String nodeName = stepRecord.getNodeName();
+            if (!unchangedNodeNames.contains(nodeName) ||
+                    stepRecord.getStatus() != EnumProcessExecutionStatus.COMPLETED)
+                continue;
+            final Step step = definition.stepByNodeName(nodeName);
+            if (step.tool() == EnumTool.IMPORTER)
+                continue; // not a job node
+            final List<Path> outputPaths = stepRecord.getFiles().stream()
+                .filter(f -> f.getType().isOfOutputType())
+                .map(f -> workflowDataDir.resolve(f.getFilePath()))
+                .collect(Collectors.toList());
+            if (outputPaths.stream().allMatch(Files::isReadable)) {
+                reusedOutput.put(nodeName, outputPaths);
+            } else {
+                logger.info("The output of step {} of execution #{} is not available: the step will be executed",
+                    nodeName, baselineId);
+            }
+        }
+
+        logger.info("Reusing {} of {} step(s) from execution #{} of process {}@{}",
+            reusedOutput.size(), definition.steps().size(), baselineId,
+            baselineProcess.getId(), baselineProcess.getVersion());
+
+        Workflow workflow = null;
+        try {
+            workflow = processToWorkflowMapper.buildWorkflow(
+                id, version, definition, createdBy, baselineId, reusedOutput);
+        } catch (CycleDetected e) {
+            throw new IllegalStateException("The process definition has cyclic dependencies");
+        }
+        return workflow;
+    }
+
+    /**
+     * Find the execution to reuse output from, when a process revision is executed from changes.
+     * This is the latest completed execution of the nearest previous revision that has one.
+     *
+     * @param id The process id
+     * @param version The version of the process revision
+     * @return the execution record (including steps), or <tt>null</tt> if no such execution exists
+     */
+    private ProcessExecutionRecord findBaselineExecution(long id, long version)
+    {
+        for (long v = version - 1; v > 0; --v) {
+            final ProcessRecord r = processRepository.findOne(id, v, true);
+            if (r == null || r.getExecutions() == null)
+                continue;
+            final ProcessExecutionRecord executionRecord = r.getExecutions().stream()
+                .filter(e -> e.getStatus() == EnumProcessExecutionStatus.COMPLETED)
+                .max(Comparator.comparingLong(ProcessExecutionRecord::getId))
+                .orElse(null);
+            if (executionRecord != null)
+                return processRepository.findExecution(executionRecord.getId(), true);
+        }
+        return null;
+    }
+
     private UUID computeWorkflowId(long id, long version)
     {
         return processToWorkflowMapper.computeWorkflowId(id, version);
@@ -569,10 +914,12 @@ public class DefaultProcessOperator implements ProcessOperator
      *
      * @param processRecord The process record (representing a specific revision)
      * @param userId
+     * @param fromChanges A flag to indicate that the output of unchanged steps should be reused
+     *   from an execution of a previous revision
      * @throws ProcessNotFoundException
      * @throws ProcessExecutionStartException
      */
-    private ProcessExecutionRecord startExecution(ProcessRecord processRecord, int userId)
+    private ProcessExecutionRecord startExecution(ProcessRecord processRecord, int userId, boolean fromChanges)
         throws ProcessNotFoundException, ProcessExecutionStartException
     {
         Assert.state(processRecord != null, "Expected a non-null process record");
@@ -585,7 +932,15 @@ public class DefaultProcessOperator implements ProcessOperator
 
         final int createdBy = processRecord.getCreatedBy().getId();
 
-        final Workflow workflow = buildWorkflow(id, version, definition, createdBy);
+        final ProcessExecutionRecord baselineRecord = fromChanges? findBaselineExecution(id, version) : null;
+        if (fromChanges && baselineRecord == null) {
+            logger.info("No previous revision of process {}@{} has a completed execution: executing all steps",
+                id, version);
+        }
+
+        final Workflow workflow = baselineRecord == null?
+            buildWorkflow(id, version, definition, createdBy) :
+            buildWorkflow(id, version, definition, createdBy, baselineRecord);
         final UUID workflowId = workflow.id();
 
         // Create a new process execution entity
@@ -598,6 +953,12 @@ public class DefaultProcessOperator implements ProcessOperator
         }
         final long executionId = executionRecord.getId();
 
+        // In worker mode, submit as pending: the execution is started by the worker leasing it
+
+        if (executionLeaseService != null) {
+            return submitToWorkers(executionId, baselineRecord == null? null : baselineRecord.getId());
+        }
+
         // Create listeners for this workflow execution
 
         ReportingExecutionListener reportingListener =
@@ -605,6 +966,14 @@ public class DefaultProcessOperator implements ProcessOperator
         AfterRegistrationHandler registrationHandler =
             new AfterRegistrationHandler(executionId, definition);
 
+        // Submit to the execution queue (if any): the execution may have to wait for its turn
+
+        ProcessExecutionRecord queuedRecord =
+            submitToQueue(executionId, userId, workflow, reportingListener, registrationHandler);
+        if (queuedRecord != null) {
+            return queuedRecord;
+        }
+
         // Start!
 
         logger.info("About to start workflow {} associated with process execution #{}",
@@ -612,6 +981,7 @@ public class DefaultProcessOperator implements ProcessOperator
         try {
             workflowScheduler.start(workflow, reportingListener, registrationHandler);
         } catch (WorkflowExecutionStartException ex) {
+            releaseExecution(executionId);
             // Discard process execution entity (the workflow execution did not even start)
             try {
                 processRepository.discardExecution(executionId);
@@ -634,6 +1004,529 @@ public class DefaultProcessOperator implements ProcessOperator
         return executionRecord;
     }
 
+    /**
+     * Submit an execution to the execution queue (if any).
+     *
+     * @param executionId The process execution id
+     * @param userId The id of the user that submitted the execution
+     * @param workflow The workflow to be started
+     * @param listeners The listeners to start the workflow with
+     * @return the (updated) execution record if the execution is queued (i.e. it must wait for
+     *   its turn), or <tt>null</tt> if the execution can be started right away
+     */
+    private ProcessExecutionRecord submitToQueue(
+        long executionId, int userId, Workflow workflow, WorkflowExecutionEventListener... listeners)
+    {
+        // Note: In worker mode, a leased execution is never queued (each worker limits the number
+        // of executions it leases)
+        if (executionQueue == null || executionLeaseService != null)
+            return null;
+
+        synchronized (queuedExecutions) {
+            if (executionQueue.submit(userId, executionId))
+                return null;
+
+            queuedExecutions.put(executionId, new QueuedExecution(workflow, listeners));
+            logger.info("Queued workflow {} associated with process execution #{}",
+                workflow.id(), executionId);
+            ProcessExecutionRecord executionRecord = null;
+            try {
+                executionRecord = processRepository.updateExecution(
+                    executionId, EnumProcessExecutionStatus.QUEUED, null, null, null);
+            } catch (ProcessExecutionNotFoundException e) {
+                throw new IllegalStateException("The execution entity has disappeared!", e);
+            }
+            executionRecord.setQueuePosition(executionQueue.position(executionId));
+            return executionRecord;
+        }
+    }
+
+    /**
+     * Start a queued execution (which has just been admitted by the execution queue)
+     *
+     * @param executionId The process execution id
+     */
+    private void startQueuedExecution(long executionId)
+    {
+        QueuedExecution queuedExecution = null;
+        synchronized (queuedExecutions) {
+            queuedExecution = queuedExecutions.remove(executionId);
+        }
+        if (queuedExecution == null) {
+            // Stopped (cancelled) in the meanwhile
+            releaseExecution(executionId);
+            return;
+        }
+
+        final Workflow workflow = queuedExecution.workflow;
+
+        logger.info("About to start (queued) workflow {} associated with process execution #{}",
+            workflow.id(), executionId);
+        try {
+            workflowScheduler.start(workflow, queuedExecution.listeners);
+        } catch (WorkflowExecutionStartException ex) {
+            logger.error("Failed to start (queued) workflow {}: {}", workflow.id(), ex.getMessage());
+            releaseExecution(executionId);
+            try {
+                processRepository.updateExecution(executionId, EnumProcessExecutionStatus.FAILED,
+                    null, ZonedDateTime.now(), String.format("Failed to start workflow (%s)", ex.getMessage()));
+            } catch (ProcessExecutionNotFoundException ex1) {
+                throw new IllegalStateException("The execution entity has disappeared!", ex1);
+            }
+            return;
+        }
+
+        try {
+            processRepository.updateExecution(
+                executionId, EnumProcessExecutionStatus.RUNNING, ZonedDateTime.now(), null, null);
+        } catch (ProcessExecutionNotFoundException ex) {
+            throw new IllegalStateException("The execution entity has disappeared!", ex);
+        }
+    }
+
+    /**
+     * Release the slot held by a (finished) execution in the execution queue, and start the
+     * executions admitted in its place.
+     *
+     * @param executionId The process execution id
+     */
+    private void releaseExecution(long executionId)
+    {
+        if (executionLeaseService != null) {
+            leasedExecutions.remove(executionId);
+            stoppingExecutions.remove(executionId);
+            executionLeaseService.release(executionId);
+            return;
+        }
+
+        if (executionQueue == null)
+            return;
+
+        // Note: Start admitted executions asynchronously, since we may be called from inside
+        // a listener of the workflow scheduler
+        for (Long admittedId: executionQueue.release(executionId)) {
+            taskExecutor.execute(() -> startQueuedExecution(admittedId));
+        }
+    }
+
+    /**
+     * Submit an execution to the workers (i.e. as pending, to be leased by any worker)
+     *
+     * @param executionId The process execution id
+     * @param reusedExecutionId The id of the execution whose output is reused, or <tt>null</tt>
+     * @return the (updated) execution record
+     */
+    private ProcessExecutionRecord submitToWorkers(long executionId, Long reusedExecutionId)
+    {
+        executionLeaseService.submit(executionId, reusedExecutionId);
+        logger.info("Submitted process execution #{} to workers", executionId);
+
+        ProcessExecutionRecord executionRecord = null;
+        try {
+            executionRecord = processRepository.updateExecution(
+                executionId, EnumProcessExecutionStatus.QUEUED, null, null, null);
+        } catch (ProcessExecutionNotFoundException e) {
+            throw new IllegalStateException("The execution entity has disappeared!", e);
+        }
+        int position = executionLeaseService.position(executionId);
+        executionRecord.setQueuePosition(position < 0? null : position);
+        return executionRecord;
+    }
+
+    /**
+     * Start sending heartbeats (only in worker mode)
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    private void startWorker()
+    {
+        if (executionLeaseService == null)
+            return;
+
+        logger.info("Worker {} leases up to {} executions (heartbeat every {}ms)",
+            executionLeaseService.workerId(), maxLeasedExecutions, heartbeatInterval);
+
+        taskScheduler.scheduleWithFixedDelay(this::heartbeat, heartbeatInterval);
+    }
+
+    /**
+     * The heartbeat of a worker: renew the leases held by this worker, carry out the duties of
+     * the coordinator (if elected), and lease pending executions (up to our limit).
+     */
+    private void heartbeat()
+    {
+        try {
+            // Renew our leases; an execution whose lease is lost is (or will be) run by another worker
+
+            for (Long executionId: executionLeaseService.renew(new ArrayList<>(leasedExecutions))) {
+                abortLostExecution(executionId);
+            }
+
+            // Stop executions on request (from other workers)
+
+            for (Long executionId: executionLeaseService.findStopRequested()) {
+                if (leasedExecutions.contains(executionId) && stoppingExecutions.add(executionId))
+                    stopLeasedExecution(executionId);
+            }
+
+            // Act as the coordinator (if elected)
+
+            final boolean wasCoordinator = executionLeaseService.isCoordinator();
+            if (executionLeaseService.acquireCoordinator()) {
+                if (!wasCoordinator)
+                    clearUnleasedExecutions();
+                reclaimExpiredExecutions();
+            }
+
+            // Lease pending executions
+
+            while (leasedExecutions.size() < maxLeasedExecutions) {
+                ExecutionLeaseService.Lease lease = executionLeaseService.acquire();
+                if (lease == null)
+                    break;
+                leasedExecutions.add(lease.executionId());
+                startLeasedExecution(lease);
+            }
+        } catch (RuntimeException ex) {
+            logger.error("Worker {} has failed on heartbeat: {}", executionLeaseService.workerId(), ex.getMessage());
+        }
+    }
+
+    /**
+     * Start (or resume) an execution that was just leased by this worker. An execution is
+     * resumed if it was interrupted on another worker (which has failed to renew its lease).
+     *
+     * @param lease The lease on the execution
+     */
+    private void startLeasedExecution(ExecutionLeaseService.Lease lease)
+    {
+        final long executionId = lease.executionId();
+        try {
+            ProcessExecutionRecord executionRecord = processRepository.findExecution(executionId, true);
+            Assert.state(executionRecord != null, "The execution entity has disappeared!");
+
+            ProcessExecutionRecord baselineRecord = lease.reusedExecutionId() == null?
+                findReusedExecution(executionRecord) :
+                processRepository.findExecution(lease.reusedExecutionId(), true);
+
+            abandonRunningJobExecutions(executionRecord);
+            resumeExecution(executionRecord, baselineRecord, new ProcessRecoveryInfo());
+        } catch (RuntimeException | WorkflowExecutionStartException ex) {
+            logger.error("Failed to start leased process execution #{}: {}", executionId, ex.getMessage());
+            releaseExecution(executionId);
+            stopInterruptedExecution(executionId);
+        }
+    }
+
+    /**
+     * Stop an execution leased by this worker (on request of another worker)
+     *
+     * @param executionId The process execution id
+     */
+    private void stopLeasedExecution(long executionId)
+    {
+        try {
+            ProcessExecutionRecord executionRecord = processRepository.findExecution(executionId);
+            ProcessRecord processRecord = processRepository.findOne(executionRecord.getProcess());
+            stopExecution(processRecord);
+        } catch (ProcessExecutionStopException | RuntimeException ex) {
+            logger.error("Failed to stop leased process execution #{}: {}", executionId, ex.getMessage());
+            stoppingExecutions.remove(executionId);
+        }
+    }
+
+    /**
+     * Abort the local run of an execution whose lease is lost (most probably because this worker
+     * has failed to send a heartbeat in time). The coordinator has reclaimed the lease, so the
+     * status of the execution is no longer updated by this worker.
+     *
+     * @param executionId The process execution id
+     */
+    private void abortLostExecution(long executionId)
+    {
+        leasedExecutions.remove(executionId);
+        stoppingExecutions.remove(executionId);
+
+        ProcessExecutionRecord executionRecord = processRepository.findExecution(executionId);
+        if (executionRecord == null)
+            return;
+        ProcessIdentifier processIdentifier = executionRecord.getProcess();
+        UUID workflowId = computeWorkflowId(processIdentifier.getId(), processIdentifier.getVersion());
+
+        logger.warn("Aborting workflow {} of process execution #{} (the lease is lost)", workflowId, executionId);
+        try {
+            workflowScheduler.stop(workflowId);
+        } catch (WorkflowExecutionStopException ex) {
+            logger.error("Failed to stop workflow {}: {}", workflowId, ex.getMessage());
+        }
+    }
+
+    /**
+     * Reclaim the expired leases of (presumably) failed workers: resume their executions (if
+     * recovery is enabled), or mark them as stopped. This is a duty of the coordinator.
+     */
+    private void reclaimExpiredExecutions()
+    {
+        for (Long executionId: executionLeaseService.findExpired()) {
+            if (recoveryEnabled) {
+                if (executionLeaseService.reclaim(executionId, true))
+                    logger.info("The lease on process execution #{} has expired: pending to be resumed", executionId);
+            } else if (executionLeaseService.reclaim(executionId, false)) {
+                logger.info("The lease on process execution #{} has expired: marking as stopped", executionId);
+                stopInterruptedExecution(executionId);
+            }
+        }
+    }
+
+    /**
+     * Clear the executions that appear as active but are not leased by any worker (e.g. left by
+     * a node running before worker mode was enabled). This is the counterpart of
+     * {@link DefaultProcessOperator#clearRunningExecutions()} for the coordinator, and is invoked
+     * whenever a worker is elected as the coordinator.
+     */
+    private void clearUnleasedExecutions()
+    {
+        // An execution that is just submitted may not be leased yet
+        final ZonedDateTime submittedBefore = ZonedDateTime.now().minus(Duration.ofMillis(heartbeatInterval));
+
+        for (ProcessExecutionRecord executionRecord: processRepository.findActiveExecutions()) {
+            final long executionId = executionRecord.getId();
+            if (executionRecord.getSubmittedOn() != null && executionRecord.getSubmittedOn().isAfter(submittedBefore))
+                continue;
+            if (executionLeaseService.exists(executionId))
+                continue;
+            if (recoveryEnabled) {
+                logger.info("Process execution #{} is not leased: pending to be resumed", executionId);
+                try {
+                    executionLeaseService.submit(executionId, null);
+                } catch (DuplicateKeyException ex) {
+                    // no-op: submitted in the meanwhile
+                }
+            } else {
+                logger.info("Process execution #{} is not leased: marking as stopped", executionId);
+                stopInterruptedExecution(executionId);
+            }
+        }
+    }
+
+    /**
+     * Resume the executions interrupted by a previous shutdown of the application.
+     *
+     * <p>An interrupted execution is resumed by restarting its workflow (as the same process
+     * execution): the workflow scheduler skips the nodes whose jobs have already completed, and
+     * restarts the nodes whose jobs have failed or stopped. The Batch job executions that appear as
+     * running (but were actually interrupted) are marked as failed, so that they can be restarted.
+     * An execution that cannot be resumed is marked as stopped.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    private void recoverExecutions()
+    {
+        // Note: In worker mode, other workers may be running executions (and their jobs): an
+        // execution is only resumed by a worker after its lease has expired
+        if (!recoveryEnabled || executionLeaseService != null)
+            return;
+
+        final long t0 = System.currentTimeMillis();
+        final ProcessRecoveryInfo info = new ProcessRecoveryInfo();
+        info.setStartedOn(ZonedDateTime.now());
+
+        abandonRunningJobExecutions();
+
+        for (ProcessExecutionRecord executionRecord: processRepository.findActiveExecutions()) {
+            final long executionId = executionRecord.getId();
+            try {
+                resumeExecution(executionRecord, findReusedExecution(executionRecord), info);
+                info.getResumedExecutions().add(executionId);
+            } catch (RuntimeException | WorkflowExecutionStartException ex) {
+                logger.error("Failed to resume process execution #{}: {}", executionId, ex.getMessage());
+                releaseExecution(executionId);
+                stopInterruptedExecution(executionId);
+                info.getAbandonedExecutions().add(executionId);
+            }
+        }
+
+        info.setDurationMillis(System.currentTimeMillis() - t0);
+        recoveryInfo = info;
+
+        logger.info(
+            "Recovered {} interrupted execution(s) in {}ms ({} could not be resumed): " +
+                "salvaged {} completed step(s) worth {}s of processing, restarting {} step(s)",
+            info.getResumedExecutions().size(), info.getDurationMillis(), info.getAbandonedExecutions().size(),
+            info.getSalvagedSteps(), info.getSalvagedMillis() / 1000L, info.getRestartedSteps());
+    }
+
+    /**
+     * Mark as failed all Batch job executions that appear as running. This is only meaningful
+     * right after a (re)start of the application, when no job can be actually running.
+     */
+    private void abandonRunningJobExecutions()
+    {
+        for (String jobName: jobExplorer.getJobNames()) {
+            for (JobExecution jobExecution: jobExplorer.findRunningJobExecutions(jobName)) {
+                abandonJobExecution(jobExecution);
+            }
+        }
+    }
+
+    /**
+     * Mark as failed the Batch job executions (of the steps of a process execution) that appear
+     * as running. This is only meaningful for an execution interrupted on another worker.
+     *
+     * @param executionRecord The execution record (including steps)
+     */
+    private void abandonRunningJobExecutions(ProcessExecutionRecord executionRecord)
+    {
+        for (ProcessExecutionStepRecord stepRecord: executionRecord.getSteps()) {
+            JobExecution jobExecution = jobExplorer.getJobExecution(stepRecord.getJobExecutionId());
+            if (jobExecution != null && jobExecution.isRunning())
+                abandonJobExecution(jobExecution);
+        }
+    }
+
+    private void abandonJobExecution(JobExecution jobExecution)
+    {
+        final Date now = new Date();
+        final ExitStatus exitStatus = ExitStatus.FAILED
+            .addExitDescription("The job execution was interrupted by a shutdown");
+
+        for (StepExecution stepExecution: jobExecution.getStepExecutions()) {
+            if (stepExecution.getStatus().isRunning()) {
+                stepExecution.setStatus(BatchStatus.FAILED);
+                stepExecution.setExitStatus(exitStatus);
+                stepExecution.setEndTime(now);
+                jobRepository.update(stepExecution);
+            }
+        }
+        jobExecution.setStatus(BatchStatus.FAILED);
+        jobExecution.setExitStatus(exitStatus);
+        jobExecution.setEndTime(now);
+        jobRepository.update(jobExecution);
+        logger.info("Marked interrupted job execution #{} of {} as failed",
+            jobExecution.getId(), jobExecution.getJobInstance().getJobName());
+    }
+
+    /**
+     * Resume an interrupted execution.
+     *
+     * @param executionRecord The record of the interrupted execution (including steps)
+     * @param baselineRecord The record of the execution whose output is reused, or <tt>null</tt>
+     * @param info The recovery report to update
+     * @throws WorkflowExecutionStartException if the workflow fails to start
+     */
+    private void resumeExecution(
+        ProcessExecutionRecord executionRecord, ProcessExecutionRecord baselineRecord, ProcessRecoveryInfo info)
+        throws WorkflowExecutionStartException
+    {
+        final long executionId = executionRecord.getId();
+        final ProcessIdentifier processIdentifier = executionRecord.getProcess();
+
+        final ProcessRecord processRecord = processRepository.findOne(processIdentifier);
+        Assert.state(processRecord != null, "The process of an execution has disappeared!");
+
+        final long id = processRecord.getId(), version = processRecord.getVersion();
+        final ProcessDefinition definition = processRecord.getDefinition();
+        final int userId = executionRecord.getSubmittedBy().getId();
+
+        // Rebuild the workflow (which is deterministically mapped to the process revision). If
+        // the execution reuses output from a previous execution, the same output is reused again.
+
+        final Workflow workflow = baselineRecord == null?
+            buildWorkflow(id, version, definition, processRecord.getCreatedBy().getId()) :
+            buildWorkflow(id, version, definition, processRecord.getCreatedBy().getId(), baselineRecord);
+
+        ReportingExecutionListener reportingListener = new ReportingExecutionListener(executionId, definition);
+        AfterRegistrationHandler registrationHandler = new AfterRegistrationHandler(executionId, definition);
+
+        // Reconcile the records of steps with the status of their Batch job executions. A step may
+        // have completed before the interruption without having been recorded as such.
+
+        for (ProcessExecutionStepRecord stepRecord: executionRecord.getSteps()) {
+            final Step step = definition.stepByKey(stepRecord.getKey());
+            Assert.state(step != null, "A step record is expected to map to a step of the definition");
+
+            JobExecution jobExecution = stepRecord.getStatus() == EnumProcessExecutionStatus.COMPLETED?
+                null : jobExplorer.getJobExecution(stepRecord.getJobExecutionId());
+
+            if (stepRecord.getStatus() == EnumProcessExecutionStatus.COMPLETED) {
+                info.setSalvagedSteps(info.getSalvagedSteps() + 1);
+                if (stepRecord.getCompletedOn() != null) {
+                    info.setSalvagedMillis(info.getSalvagedMillis() +
+                        Duration.between(stepRecord.getStartedOn(), stepRecord.getCompletedOn()).toMillis());
+                }
+            } else if (jobExecution != null && jobExecution.getStatus() == BatchStatus.COMPLETED) {
+                logger.info("The execution step {}/{} has completed before the interruption",
+                    executionId, stepRecord.getKey());
+                reportingListener.afterProcessingStep(workflow, step, jobExecution);
+                info.setSalvagedSteps(info.getSalvagedSteps() + 1);
+                info.setSalvagedMillis(info.getSalvagedMillis() +
+                    jobExecution.getEndTime().getTime() - jobExecution.getStartTime().getTime());
+            } else {
+                info.setRestartedSteps(info.getRestartedSteps() + 1);
+            }
+        }
+
+        // Restart the workflow (or submit to the execution queue)
+
+        logger.info("About to resume workflow {} associated with process execution #{}",
+            workflow.id(), executionId);
+
+        if (submitToQueue(executionId, userId, workflow, reportingListener, registrationHandler) != null) {
+            return;
+        }
+
+        workflowScheduler.start(workflow, reportingListener, registrationHandler);
+
+        if (executionRecord.getStatus() != EnumProcessExecutionStatus.RUNNING) {
+            try {
+                processRepository.updateExecution(
+                    executionId, EnumProcessExecutionStatus.RUNNING, ZonedDateTime.now(), null, null);
+            } catch (ProcessExecutionNotFoundException ex) {
+                throw new IllegalStateException("The execution entity has disappeared!", ex);
+            }
+        }
+    }
+
+    /**
+     * Find the execution whose output is reused by a given execution (i.e. by any of its steps)
+     *
+     * @param executionRecord The execution record (including steps)
+     * @return the record of the reused execution, or <tt>null</tt> if no output is reused
+     */
+    private ProcessExecutionRecord findReusedExecution(ProcessExecutionRecord executionRecord)
+    {
+        final String key = ReuseStepOutputJobConfiguration.REUSED_EXECUTION_KEY;
+        for (ProcessExecutionStepRecord stepRecord: executionRecord.getSteps()) {
+            JobExecution jobExecution = jobExplorer.getJobExecution(stepRecord.getJobExecutionId());
+            if (jobExecution != null && jobExecution.getExecutionContext().containsKey(key)) {
+                long reusedExecutionId = jobExecution.getExecutionContext().getLong(key);
+                return processRepository.findExecution(reusedExecutionId, true);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Mark an interrupted execution (along with its running steps) as stopped.
+     *
+     * @param executionId The process execution id
+     */
+    private void stopInterruptedExecution(long executionId)
+    {
+        try {
+            ProcessExecutionRecord executionRecord = processRepository.findExecution(executionId, true);
+            for (ProcessExecutionStepRecord stepRecord: executionRecord.getSteps()) {
+                if (stepRecord.getStatus() == EnumProcessExecutionStatus.RUNNING) {
+                    stepRecord.setStatus(EnumProcessExecutionStatus.STOPPED);
+                    processRepository.updateExecutionStep(executionId, stepRecord.getKey(), stepRecord);
+                }
+            }
+            if (!executionRecord.getStatus().isTerminated()) {
+                processRepository.updateExecution(executionId, EnumProcessExecutionStatus.STOPPED, null, null, null);
+            }
+        } catch (ProcessExecutionNotFoundException | ProcessExecutionNotActiveException ex) {
+            throw new IllegalStateException("The execution entity has disappeared!", ex);
+        }
+    }
+
     private void stopExecution(ProcessRecord processRecord)
         throws ProcessExecutionStopException
     {
@@ -650,6 +1543,43 @@ public class DefaultProcessOperator implements ProcessOperator
             throw new ProcessExecutionStopException("The given process has no associated executions");
         final long executionId = executionRecord.getId();
 
+        // If still queued, just remove from the execution queue
+
+        if (executionQueue != null && executionRecord.getStatus() == EnumProcessExecutionStatus.QUEUED) {
+            synchronized (queuedExecutions) {
+                if (executionQueue.cancel(executionId)) {
+                    queuedExecutions.remove(executionId);
+                    logger.info("Removed process execution #{} from the execution queue", executionId);
+                    try {
+                        processRepository.updateExecution(
+                            executionId, EnumProcessExecutionStatus.STOPPED, null, null, null);
+                    } catch (ProcessExecutionNotFoundException ex) {
+                        throw new IllegalArgumentException("The execution entity has disappeared!", ex);
+                    }
+                    return;
+                }
+            }
+        }
+
+        // In worker mode, the execution may be pending, or may be leased by another worker
+
+        if (executionLeaseService != null && !leasedExecutions.contains(executionId)) {
+            if (executionLeaseService.cancel(executionId)) {
+                logger.info("Cancelled pending process execution #{}", executionId);
+                try {
+                    processRepository.updateExecution(
+                        executionId, EnumProcessExecutionStatus.STOPPED, null, null, null);
+                } catch (ProcessExecutionNotFoundException ex) {
+                    throw new IllegalArgumentException("The execution entity has disappeared!", ex);
+                }
+                return;
+            }
+            if (executionLeaseService.requestStop(executionId)) {
+                logger.info("Requested from the worker leasing process execution #{} to stop it", executionId);
+                return;
+            }
+        }
+
         // Stop
 
         WorkflowExecutionStopListener stopListener = new WorkflowExecutionStopListener()
@@ -662,6 +1592,8 @@ public class DefaultProcessOperator implements ProcessOperator
                         executionId, EnumProcessExecutionStatus.STOPPED, null, null, null);
                 } catch (ProcessExecutionNotFoundException ex) {
                     throw new IllegalArgumentException("The execution entity has disappeared!", ex);
+                } finally {
+                    releaseExecution(executionId);
                 }
             }
         };
@@ -678,7 +1610,19 @@ public class DefaultProcessOperator implements ProcessOperator
         Assert.state(processRecord != null, "Expected a non-null process record");
 
         final long id = processRecord.getId(), version = processRecord.getVersion();
-        return processRepository.findLatestExecution(id, version);
+        ProcessExecutionRecord executionRecord = processRepository.findLatestExecution(id, version);
+
+        if (executionLeaseService != null && executionRecord != null &&
+                executionRecord.getStatus() == EnumProcessExecutionStatus.QUEUED) {
+            int position = executionLeaseService.position(executionRecord.getId());
+            executionRecord.setQueuePosition(position < 0? null : position);
+        } else if (executionQueue != null && executionRecord != null &&
+                executionRecord.getStatus() == EnumProcessExecutionStatus.QUEUED) {
+            int position = executionQueue.position(executionRecord.getId());
+            executionRecord.setQueuePosition(position < 0? null : position);
+        }
+
+        return executionRecord;
     }
 
     @Override
@@ -694,7 +1638,23 @@ public class DefaultProcessOperator implements ProcessOperator
         if (userId < 0)
             userId = processRecord.getCreatedBy().getId();
 
-        return startExecution(processRecord, userId);
+        return startExecution(processRecord, userId, false);
+    }
+
+    @Override
+    public ProcessExecutionRecord startFromChanges(long id, long version, int userId)
+        throws ProcessNotFoundException, ProcessExecutionStartException
+    {
+        Assert.isTrue(userId < 0 || accountRepository.exists(userId), "No user with given id");
+
+        ProcessRecord processRecord = processRepository.findOne(id, version);
+        if (processRecord == null)
+            throw new ProcessNotFoundException(id, version);
+
+        if (userId < 0)
+            userId = processRecord.getCreatedBy().getId();
+
+        return startExecution(processRecord, userId, true);
     }
 
     @Override
@@ -717,6 +1677,21 @@ public class DefaultProcessOperator implements ProcessOperator
     @Override
     public List<ProcessIdentifier> list(boolean includeNonRunning)
     {
+        if (executionLeaseService != null) {
+            // In worker mode, executions may run on any worker: list the active executions (as
+            // recorded in the database), along with the workflows known to this worker
+            Set<ProcessIdentifier> processIdentifiers = new LinkedHashSet<>();
+            for (ProcessExecutionRecord executionRecord: processRepository.findActiveExecutions()) {
+                if (includeNonRunning || executionRecord.getStatus() == EnumProcessExecutionStatus.RUNNING)
+                    processIdentifiers.add(executionRecord.getProcess());
+            }
+            if (includeNonRunning) {
+                for (UUID workflowId: workflowScheduler.list())
+                    processIdentifiers.add(processRepository.mapToProcessIdentifier(workflowId));
+            }
+            return new ArrayList<>(processIdentifiers);
+        }
+
         List<ProcessIdentifier> processIdentifiers = new ArrayList<>();
         for (UUID workflowId: workflowScheduler.list()) {
             if (includeNonRunning || workflowScheduler.status(workflowId) == WorkflowExecutionStatus.RUNNING) {
@@ -730,4 +1705,10 @@ public class DefaultProcessOperator implements ProcessOperator
         }
         return processIdentifiers;
     }
+
+    @Override
+    public ProcessRecoveryInfo getRecoveryInfo()
+    {
+        return recoveryInfo;
+    }
 }
\ No newline at end of file
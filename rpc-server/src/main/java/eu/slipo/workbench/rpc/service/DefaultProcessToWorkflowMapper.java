@@ -9,6 +9,7 @@ import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
@@ -55,11 +56,13 @@ import eu.slipo.workbench.common.model.tool.ReverseTriplegeoConfiguration;
 import eu.slipo.workbench.common.model.tool.ToolConfiguration;
 import eu.slipo.workbench.common.model.tool.TriplegeoConfiguration;
 import eu.slipo.workbench.common.model.tool.output.EnumImportDataOutputPart;
+import eu.slipo.workbench.common.model.tool.output.EnumTriplegeoOutputPart;
 import eu.slipo.workbench.common.model.tool.output.InputToOutputNameMapper;
 import eu.slipo.workbench.common.model.tool.output.OutputPart;
 import eu.slipo.workbench.common.repository.ResourceRepository;
 import eu.slipo.workbench.common.service.UserFileNamingStrategy;
 import eu.slipo.workbench.common.service.util.PropertiesConverterService;
+import eu.slipo.workbench.rpc.jobs.tasklet.OutputSpool;
 import eu.slipo.workflows.Workflow;
 import eu.slipo.workflows.Workflow.JobDefinitionBuilder;
 import eu.slipo.workflows.WorkflowBuilderFactory;
@@ -137,9 +140,20 @@ public class DefaultProcessToWorkflowMapper implements ProcessToWorkflowMapper
     @Qualifier("downloadFile.flow")
     private Flow downloadFileFlow;
 
+    @Autowired
+    @Qualifier("reuseStepOutput.flow")
+    private Flow reuseStepOutputFlow;
+
     @Value("${slipo.rpc-server.workflows.salt-for-identifier:1}")
     private Long salt;
 
+    @Autowired
+    @Qualifier("jobDataDirectory")
+    private Path jobDataDir;
+
+    @Value("${slipo.rpc-server.jobs.pipelining.enabled:false}")
+    private boolean pipeliningEnabled;
+
     private static class ProcessDefinitionDependencyAnalyzer
     {
         private final ProcessDefinition definition;
@@ -177,15 +191,25 @@ public class DefaultProcessToWorkflowMapper implements ProcessToWorkflowMapper
     }
 
     @Override
-    public Workflow buildWorkflow(long id, long version, ProcessDefinition definition, int createdBy)
+    public Workflow buildWorkflow(
+            long id, long version, ProcessDefinition definition, int createdBy,
+            long reusedExecutionId, Map<String, List<Path>> reusedOutput)
         throws CycleDetected
     {
         Assert.notNull(definition, "A process definition is required!");
+        Assert.notNull(reusedOutput, "A map of reused output is required!");
+        Assert.isTrue(reusedOutput.isEmpty() || reusedExecutionId > 0, "Expected the id of the reused execution");
         final UUID workflowId = computeWorkflowId(id, version);
         final Workflow.Builder workflowBuilder = workflowBuilderFactory.get(workflowId);
-        Workflow workflow = buildWorkflow(workflowBuilder, definition, createdBy);
-
-        logger.info("The process {}@{} is mapped onto workflow {}", id, version, workflowId);
+        Workflow workflow =
+            buildWorkflow(workflowBuilder, workflowId, definition, createdBy, reusedExecutionId, reusedOutput);
+
+        if (reusedOutput.isEmpty()) {
+            logger.info("The process {}@{} is mapped onto workflow {}", id, version, workflowId);
+        } else {
+            logger.info("The process {}@{} is mapped onto workflow {} (reusing {} step(s) of execution #{})",
+                id, version, workflowId, reusedOutput.size(), reusedExecutionId);
+        }
         return workflow;
     }
 
@@ -199,7 +223,39 @@ public class DefaultProcessToWorkflowMapper implements ProcessToWorkflowMapper
         return UUID.nameUUIDFromBytes(data);
     }
 
-    private Workflow buildWorkflow(Workflow.Builder workflowBuilder, ProcessDefinition definition, int createdBy)
+    /**
+     * Test if the output of a step may be streamed into a downstream step (i.e. the downstream
+     * step reads the output through a spool while the output is being produced, instead of
+     * waiting for the step to complete).
+     * <p>
+     * Currently, only the N-Triples output of a transformation (Triplegeo) is streamed into
+     * an enrichment (DEER) step. Both tools read and write this output sequentially.
+     *
+     * @param definition The process definition
+     * @param step The downstream step
+     * @param reusedOutput The map of reused output (keyed to node names)
+     * @return the upstream step, or <tt>null</tt> if the input of the given step is not streamed
+     */
+    private Step findStreamingProducer(ProcessDefinition definition, Step step, Map<String, List<Path>> reusedOutput)
+    {
+        if (!pipeliningEnabled || step.tool() != EnumTool.DEER || reusedOutput.containsKey(step.nodeName()))
+            return null;
+        if (!step.sources().isEmpty() || step.input().size() != 1)
+            return null;
+
+        final Step.Input input = step.input().get(0);
+        final Step producer = definition.stepByResourceKey(input.inputKey());
+        if (producer == null || producer.tool() != EnumTool.TRIPLEGEO || reusedOutput.containsKey(producer.nodeName()))
+            return null;
+
+        final TriplegeoConfiguration producerConfiguration = (TriplegeoConfiguration) producer.configuration();
+        return (producer.outputPart(input.partKey()) == EnumTriplegeoOutputPart.TRANSFORMED &&
+                producerConfiguration.getOutputFormat() == EnumDataFormat.N_TRIPLES)? producer : null;
+    }
+
+    private Workflow buildWorkflow(
+            Workflow.Builder workflowBuilder, UUID workflowId, ProcessDefinition definition, int createdBy,
+            long reusedExecutionId, Map<String, List<Path>> reusedOutput)
         throws CycleDetected
     {
         // Map external sources to the name of the node (assigned task to carry out downloading)
@@ -211,11 +267,12 @@ public class DefaultProcessToWorkflowMapper implements ProcessToWorkflowMapper
         // Map a node's alias to a real name (i.e. to the one know to the workflow level)
         final Map<String, String> nodeAliasToNodeName = new HashMap<>();
 
-        // Examine referenced sources.
+        // Examine referenced sources (of steps that are not reused).
         // A data source of URL is handled by adding an importer node that will download the
         // resource (to make it available to other workflow nodes).
 
         final Set<DataSource> sourcesToDownload = definition.steps().stream()
+            .filter(step -> !reusedOutput.containsKey(step.nodeName()))
             .flatMap(step -> step.sources().stream())
             .filter(UrlDataSource.class::isInstance)
             .collect(Collectors.toSet());
@@ -245,12 +302,27 @@ public class DefaultProcessToWorkflowMapper implements ProcessToWorkflowMapper
         final ProcessDefinitionDependencyAnalyzer dependencyAnalyzedDefinition =
             new ProcessDefinitionDependencyAnalyzer(definition);
 
+        // Find steps whose output is streamed (through a spool) into a downstream step
+
+        final Map<String, Step> nodeNameToStreamingProducer = new HashMap<>();
+        for (Step step: definition.steps()) {
+            Step producer = findStreamingProducer(definition, step, reusedOutput);
+            if (producer != null)
+                nodeNameToStreamingProducer.put(step.nodeName(), producer);
+        }
+
+        final Set<String> streamingNodeNames = nodeNameToStreamingProducer.values().stream()
+            .map(Step::nodeName)
+            .collect(Collectors.toSet());
+
+        final Path spoolDir = jobDataDir.resolve(OutputSpool.DIRECTORY_NAME);
+
         for (Step step: dependencyAnalyzedDefinition.stepsInTopologicalOrder()) {
             final EnumTool tool = step.tool();
             final ToolConfiguration<? extends AnyTool> configuration = step.configuration();
             final List<Step.Input> input = step.input();
 
-            final JobDefinitionBuilder jobDefinitionBuilder = JobDefinitionBuilder.create(step.nodeName());
+            JobDefinitionBuilder jobDefinitionBuilder = JobDefinitionBuilder.create(step.nodeName());
 
             // Define inputs for this job node
 
@@ -293,12 +365,34 @@ public class DefaultProcessToWorkflowMapper implements ProcessToWorkflowMapper
                         dependencyName = nodeAliasToNodeName.getOrDefault(dependencyName, dependencyName);
                         Path inputName = nodeNameToOutputNames.get(dependencyName, part);
                         Assert.state(inputName != null, "No output produced by the step we depend on");
-                        jobDefinitionBuilder.input(dependencyName, inputName);
+                        if (nodeNameToStreamingProducer.containsKey(step.nodeName())) {
+                            // Read from the spool of the producer (not depending on its completion)
+                            jobDefinitionBuilder.input(
+                                OutputSpool.resolve(spoolDir, workflowId, dependencyName, inputName.toString()));
+                        } else {
+                            jobDefinitionBuilder.input(dependencyName, inputName);
+                        }
                         inputNames.add(inputName.toString());
                     }
                 }
             }
 
+            // If the output of this step is reused, the recorded output files replace the inputs
+            // (the names of inputs are still needed to determine the names of outputs)
+
+            final List<Path> reusedPaths = reusedOutput.get(step.nodeName());
+            if (reusedPaths != null) {
+                if (tool == EnumTool.REGISTER) {
+                    // The output is already registered: nothing to do
+                    continue;
+                }
+                jobDefinitionBuilder = JobDefinitionBuilder.create(step.nodeName());
+                for (Path path: reusedPaths) {
+                    Assert.state(path.isAbsolute(), "A reused output is expected as an absolute path");
+                    jobDefinitionBuilder.input(path);
+                }
+            }
+
             // Define output names
 
             final InputToOutputNameMapper<? extends AnyTool> outputNameMapper = configuration.getOutputNameMapper();
@@ -307,6 +401,12 @@ public class DefaultProcessToWorkflowMapper implements ProcessToWorkflowMapper
                 .collect(Collectors.toMap(
                     entry -> entry.getKey(),
                     entry -> Paths.get(entry.getValue().fileName())));
+            if (reusedPaths != null) {
+                Assert.state(
+                    reusedPaths.stream().map(Path::getFileName).collect(Collectors.toSet())
+                        .equals(new HashSet<>(outputNames.values())),
+                    "The reused output of step [" + step.nodeName() + "] does not match its expected output");
+            }
             if (!outputNames.isEmpty()) {
                 jobDefinitionBuilder.output(outputNames.values());
                 nodeNameToOutputNames.row(step.nodeName()).putAll(outputNames);
@@ -347,6 +447,12 @@ public class DefaultProcessToWorkflowMapper implements ProcessToWorkflowMapper
                     Assert.state(inputNames.size() == 1, "A transformation step expects a single input");
                     parametersMap = buildParameters(definition, (TriplegeoConfiguration) configuration, createdBy);
                     flow = triplegeoFlow;
+                    if (streamingNodeNames.contains(step.nodeName())) {
+                        // Stream the transformed output into a spool (for a downstream step)
+                        Path outputName = outputNames.get(EnumTriplegeoOutputPart.TRANSFORMED);
+                        parametersMap.put(OutputSpool.PARAMETER_NAME,
+                            OutputSpool.resolve(spoolDir, workflowId, step.nodeName(), outputName.toString()).toString());
+                    }
                 }
                 break;
             case REVERSE_TRIPLEGEO:
@@ -383,6 +489,12 @@ public class DefaultProcessToWorkflowMapper implements ProcessToWorkflowMapper
 
             // Add the job node (mapped from this processing step) into workflow
 
+            if (reusedPaths != null && flow != null) {
+                flow = reuseStepOutputFlow;
+                parametersMap = new Properties();
+                parametersMap.put("reusedExecution", Long.valueOf(reusedExecutionId));
+            }
+
             if (flow != null) {
                 jobDefinitionBuilder.flow(flow).parameters(parametersMap);
                 workflowBuilder.job(jobDefinitionBuilder.build());
@@ -0,0 +1,354 @@
+package eu.slipo.workbench.rpc.service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+import eu.slipo.workbench.common.model.jobs.ResourcePredictionInfo;
+import eu.slipo.workbench.common.model.poi.EnumTool;
+import eu.slipo.workbench.common.model.process.EnumStepFile;
+import eu.slipo.workbench.common.model.process.ProcessExecutionStepFileRecord;
+import eu.slipo.workbench.common.model.process.ProcessExecutionStepRecord;
+import eu.slipo.workbench.common.model.process.ProcessExecutionStepStatsRecord;
+import eu.slipo.workbench.common.repository.ProcessRepository;
+
+/**
+ * The default implementation of a {@link ResourcePredictor}.
+ * <p>
+ * A quantity (runtime or peak memory) is modelled as a power of input size, i.e. a line fitted
+ * (by least squares) on a log-log scale. The prediction adds a headroom of a number of standard
+ * deviations of the (log-scale) residuals, so that it is an upper estimate for most runs.
+ */
+public class DefaultResourcePredictor implements ResourcePredictor
+{
+    private static final Logger logger = LoggerFactory.getLogger(DefaultResourcePredictor.class);
+
+    /**
+     * The default number of (most recent) execution steps to learn from
+     */
+    public static final int DEFAULT_HISTORY_SIZE = 200;
+
+    /**
+     * The default minimum number of observations to fit a model on
+     */
+    public static final int DEFAULT_MIN_SAMPLES = 8;
+
+    /**
+     * The default headroom (in number of standard deviations of residuals) added to a prediction
+     */
+    public static final double DEFAULT_HEADROOM = 2.0;
+
+    /**
+     * The number of (most recent) observations to report
+     */
+    private static final int REPORTED_OBSERVATIONS = 20;
+
+    /**
+     * An observed run of a tool
+     */
+    static class Observation
+    {
+        final long stepId;
+
+        final long inputSize;
+
+        /**
+         * The runtime (milliseconds)
+         */
+        final long runtime;
+
+        /**
+         * The peak memory (bytes), or <tt>-1</tt> if not known
+         */
+        final long memory;
+
+        Observation(long stepId, long inputSize, long runtime, long memory)
+        {
+            this.stepId = stepId;
+            this.inputSize = inputSize;
+            this.runtime = runtime;
+            this.memory = memory;
+        }
+    }
+
+    /**
+     * A model of the form <tt>ln(y) = a + b * ln(x)</tt>
+     */
+    static class Model
+    {
+        final int samples;
+
+        final double a;
+
+        final double b;
+
+        /**
+         * The standard deviation of residuals
+         */
+        final double sigma;
+
+        Model(int samples, double a, double b, double sigma)
+        {
+            this.samples = samples;
+            this.a = a;
+            this.b = b;
+            this.sigma = sigma;
+        }
+
+        /**
+         * Predict the quantity for an input size, adding a headroom of a number of standard
+         * deviations.
+         */
+        long predict(long x, double headroom)
+        {
+            double y = Math.exp(a + b * Math.log(Math.max(x, 1L)) + headroom * sigma);
+            return Math.round(Math.min(y, (double) Long.MAX_VALUE));
+        }
+
+        ResourcePredictionInfo.ModelInfo toInfo()
+        {
+            return new ResourcePredictionInfo.ModelInfo(samples, Math.exp(a), b, sigma);
+        }
+
+        /**
+         * Fit a model on a number of (positive) points
+         *
+         * @param xs The values of the independent variable
+         * @param ys The values of the dependent variable
+         */
+        static Model fit(List<Long> xs, List<Long> ys)
+        {
+            final int n = xs.size();
+            Assert.isTrue(n > 0 && n == ys.size(), "Expected a non-empty list of points");
+
+            double[] u = new double[n], v = new double[n];
+            double mu = 0.0, mv = 0.0;
+            for (int i = 0; i < n; ++i) {
+                u[i] = Math.log(Math.max(xs.get(i), 1L));
+                v[i] = Math.log(Math.max(ys.get(i), 1L));
+                mu += u[i];
+                mv += v[i];
+            }
+            mu /= n;
+            mv /= n;
+
+            double suu = 0.0, suv = 0.0;
+            for (int i = 0; i < n; ++i) {
+                suu += (u[i] - mu) * (u[i] - mu);
+                suv += (u[i] - mu) * (v[i] - mv);
+            }
+
+            // Note: If all inputs are (almost) of the same size, the model is a constant
+            final double b = suu > 1E-9? (suv / suu) : 0.0;
+            final double a = mv - b * mu;
+
+            double sse = 0.0;
+            for (int i = 0; i < n; ++i) {
+                double r = v[i] - (a + b * u[i]);
+                sse += r * r;
+            }
+            final double sigma = n > 2? Math.sqrt(sse / (n - 2)) : 0.0;
+
+            return new Model(n, a, b, sigma);
+        }
+    }
+
+    /**
+     * The models (and observations) for a tool
+     */
+    private static class ToolModels
+    {
+        final List<Observation> observations;
+
+        final Model runtimeModel;
+
+        final Model memoryModel;
+
+        ToolModels(List<Observation> observations, Model runtimeModel, Model memoryModel)
+        {
+            this.observations = observations;
+            this.runtimeModel = runtimeModel;
+            this.memoryModel = memoryModel;
+        }
+    }
+
+    private final ProcessRepository processRepository;
+
+    private int historySize = DEFAULT_HISTORY_SIZE;
+
+    private int minSamples = DEFAULT_MIN_SAMPLES;
+
+    private double headroom = DEFAULT_HEADROOM;
+
+    private volatile Map<EnumTool, ToolModels> models = Collections.emptyMap();
+
+    public DefaultResourcePredictor(ProcessRepository processRepository)
+    {
+        Assert.notNull(processRepository, "A process repository is required");
+        this.processRepository = processRepository;
+    }
+
+    public void setHistorySize(int historySize)
+    {
+        Assert.isTrue(historySize > 0, "Expected a positive history size");
+        this.historySize = historySize;
+    }
+
+    public void setMinSamples(int minSamples)
+    {
+        Assert.isTrue(minSamples > 2, "Expected at least 3 samples to fit a model");
+        this.minSamples = minSamples;
+    }
+
+    public void setHeadroom(double headroom)
+    {
+        Assert.isTrue(headroom >= 0, "Expected a non-negative headroom");
+        this.headroom = headroom;
+    }
+
+    @Override
+    public Prediction predict(EnumTool tool, long inputSize)
+    {
+        ToolModels m = models.get(tool);
+        if (m == null)
+            return new Prediction(-1L, -1L);
+
+        return new Prediction(
+            m.runtimeModel == null? -1L : m.runtimeModel.predict(inputSize, headroom),
+            m.memoryModel == null? -1L : m.memoryModel.predict(inputSize, headroom));
+    }
+
+    @Override
+    public void refresh()
+    {
+        Map<EnumTool, ToolModels> result = new EnumMap<>(EnumTool.class);
+
+        for (EnumTool tool: EnumTool.values()) {
+            List<Observation> observations = new ArrayList<>();
+            for (ProcessExecutionStepRecord stepRecord: processRepository.findCompletedSteps(tool, historySize)) {
+                Observation observation = observe(stepRecord);
+                if (observation != null)
+                    observations.add(observation);
+            }
+            if (observations.isEmpty())
+                continue;
+
+            Model runtimeModel = fit(observations, false);
+            Model memoryModel = fit(observations, true);
+            result.put(tool, new ToolModels(observations, runtimeModel, memoryModel));
+
+            logger.debug("Learned models for {} from {} steps: runtime={}, memory={}",
+                tool, observations.size(), runtimeModel != null, memoryModel != null);
+        }
+
+        models = result;
+    }
+
+    /**
+     * Fit a model (of runtime or memory) on observations, if enough of them are available
+     */
+    private Model fit(List<Observation> observations, boolean memory)
+    {
+        List<Long> xs = new ArrayList<>(), ys = new ArrayList<>();
+        for (Observation observation: observations) {
+            long y = memory? observation.memory : observation.runtime;
+            if (y > 0) {
+                xs.add(observation.inputSize);
+                ys.add(y);
+            }
+        }
+        return xs.size() < minSamples? null : Model.fit(xs, ys);
+    }
+
+    /**
+     * Extract an observation from a completed execution step.
+     *
+     * @return an observation, or <tt>null</tt> if the step is not usable (e.g. the size of an
+     *   input is not known)
+     */
+    static Observation observe(ProcessExecutionStepRecord stepRecord)
+    {
+        if (stepRecord.getStartedOn() == null || stepRecord.getCompletedOn() == null)
+            return null;
+
+        long inputSize = 0L;
+        for (ProcessExecutionStepFileRecord fileRecord: stepRecord.getFiles()) {
+            if (fileRecord.getType() != EnumStepFile.INPUT)
+                continue;
+            if (fileRecord.getFileSize() == null)
+                return null;
+            inputSize += fileRecord.getFileSize();
+        }
+        if (inputSize == 0)
+            return null;
+
+        long runtime = Duration.between(stepRecord.getStartedOn(), stepRecord.getCompletedOn()).toMillis();
+
+        // The peak memory is only known if the resources of the step were sampled
+        ProcessExecutionStepStatsRecord stats = stepRecord.getStats();
+        long memory = (stats != null && stats.getPeakMemory() > 0)? stats.getPeakMemory() : -1L;
+
+        return new Observation(stepRecord.getId(), inputSize, runtime, memory);
+    }
+
+    @Override
+    public List<ResourcePredictionInfo> getInfo()
+    {
+        final Map<EnumTool, ToolModels> models = this.models;
+
+        List<ResourcePredictionInfo> result = new ArrayList<>();
+        for (Map.Entry<EnumTool, ToolModels> e: models.entrySet()) {
+            final ToolModels m = e.getValue();
+            final ResourcePredictionInfo info = new ResourcePredictionInfo(e.getKey());
+
+            if (m.runtimeModel != null) {
+                info.setRuntimeModel(m.runtimeModel.toInfo());
+                info.setRuntimeMissRate(missRate(m.observations, m.runtimeModel, false));
+            }
+            if (m.memoryModel != null) {
+                info.setMemoryModel(m.memoryModel.toInfo());
+                info.setMemoryMissRate(missRate(m.observations, m.memoryModel, true));
+            }
+
+            for (Observation observation: m.observations.subList(
+                    0, Math.min(REPORTED_OBSERVATIONS, m.observations.size())))
+            {
+                ResourcePredictionInfo.ObservationInfo r = new ResourcePredictionInfo.ObservationInfo(
+                    observation.stepId, observation.inputSize, observation.runtime, observation.memory);
+                if (m.runtimeModel != null)
+                    r.setPredictedRuntime(m.runtimeModel.predict(observation.inputSize, headroom));
+                if (m.memoryModel != null)
+                    r.setPredictedMemory(m.memoryModel.predict(observation.inputSize, headroom));
+                info.addObservation(r);
+            }
+
+            result.add(info);
+        }
+
+        return result;
+    }
+
+    /**
+     * Compute the fraction of observations that exceed the prediction of a model
+     */
+    private Double missRate(List<Observation> observations, Model model, boolean memory)
+    {
+        int n = 0, misses = 0;
+        for (Observation observation: observations) {
+            long y = memory? observation.memory : observation.runtime;
+            if (y <= 0)
+                continue;
+            n++;
+            if (y > model.predict(observation.inputSize, headroom))
+                misses++;
+        }
+        return n == 0? null : (misses / (double) n);
+    }
+}
@@ -0,0 +1,371 @@
+package eu.slipo.workbench.rpc.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import javax.annotation.PostConstruct;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import org.springframework.util.Assert;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.util.StringUtils;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import eu.slipo.workbench.common.service.FileMaterializer;
+
+/**
+ * A file-based {@link StepResultCache}.
+ * <p>
+ * Every entry is a directory (named after its key) holding the output files of a step. Files
+ * are hard-linked between a cache entry and an output directory, so an entry survives the cleanup
+ * of the workflow that produced it, and a cache hit costs no copying. Note that this assumes
+ * that output files are never modified in-place (which holds for the outputs of workflow nodes).
+ * <p>
+ * Entries are evicted in least-recently-used order when the cache exceeds its maximum size. Note
+ * that an evicted entry still occupies space as long as its files are hard-linked from a workflow
+ * data directory.
+ */
+@Service
+@ConditionalOnProperty(
+    name = "slipo.rpc-server.jobs.result-cache.enabled", havingValue = "true", matchIfMissing = false)
+public class DefaultStepResultCache implements StepResultCache
+{
+    private static final Logger logger = LoggerFactory.getLogger(DefaultStepResultCache.class);
+
+    private static final String TEMP_PREFIX = ".tmp-";
+
+    /**
+     * The maximum number of memoized content digests (for input files)
+     */
+    private static final int MAX_MEMOIZED_DIGESTS = 2000;
+
+    @Autowired
+    @Qualifier("jobDataDirectory")
+    private Path jobDataDir;
+
+    @Autowired
+    private FileMaterializer fileMaterializer;
+
+    @Value("${slipo.rpc-server.jobs.result-cache.data-dir:}")
+    private String cacheDirLocation;
+
+    @Value("${slipo.rpc-server.jobs.result-cache.max-size-kbytes:8388608}")
+    private long maxSizeKbytes;
+
+    private Path cacheDir;
+
+    /**
+     * The sizes (bytes) of entries, keyed on cache key (in access order). All access must be
+     * synchronized on this map.
+     */
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * The total size (bytes) of entries (guarded by {@link DefaultStepResultCache#entries})
+     */
+    private long totalSize = 0L;
+
+    /**
+     * A lock to protect materialization of entries (shared) from their eviction (exclusive)
+     */
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Memoize content digests of files (keyed on path, size and modification time), so that a
+     * large input shared by several steps (or executions) is not read over and over again.
+     */
+    private final Cache<String, String> digests = CacheBuilder.newBuilder()
+        .maximumSize(MAX_MEMOIZED_DIGESTS)
+        .build();
+
+    @PostConstruct
+    private void initialize() throws IOException
+    {
+        cacheDir = StringUtils.isEmpty(cacheDirLocation)?
+            jobDataDir.resolve("result-cache") : Paths.get(cacheDirLocation);
+        Assert.state(cacheDir.isAbsolute(), "Expected an absolute path for the cache directory");
+        Files.createDirectories(cacheDir);
+
+        // Load existing entries (in order of last access), and remove leftovers of interrupted stores
+
+        List<Path> entryDirs = new ArrayList<>();
+        try (DirectoryStream<Path> dirs = Files.newDirectoryStream(cacheDir, Files::isDirectory)) {
+            for (Path dir: dirs) {
+                if (dir.getFileName().toString().startsWith(TEMP_PREFIX))
+                    FileSystemUtils.deleteRecursively(dir.toFile());
+                else
+                    entryDirs.add(dir);
+            }
+        }
+        entryDirs.sort(Comparator.comparing(dir -> dir.toFile().lastModified()));
+
+        for (Path dir: entryDirs) {
+            long size = sizeOf(dir);
+            entries.put(dir.getFileName().toString(), size);
+            totalSize += size;
+        }
+
+        logger.info("Caching results of processing steps under {} ({} entries, {} of {} kbytes)",
+            cacheDir, entries.size(), totalSize / 1024L, maxSizeKbytes);
+
+        evictIfNeeded(null);
+    }
+
+    @Override
+    public String computeKey(
+        String toolName, Properties configuration, List<Path> configFiles, List<Path> inputFiles)
+        throws IOException
+    {
+        Assert.isTrue(!StringUtils.isEmpty(toolName), "A tool name is required");
+        Assert.notNull(configuration, "A configuration is required");
+        Assert.notNull(configFiles, "A list of configuration files is required");
+        Assert.notEmpty(inputFiles, "A non-empty list of input files is expected");
+
+        final MessageDigest digest = DigestUtils.getSha256Digest();
+
+        update(digest, "tool", toolName);
+
+        // Use a sorted view of properties (the order of a Properties is not defined)
+        for (Map.Entry<Object, Object> e: new TreeMap<>(configuration).entrySet()) {
+            update(digest, "config." + e.getKey().toString(), e.getValue().toString());
+        }
+
+        for (Path path: configFiles) {
+            update(digest, "configFile." + path.getFileName().toString(), digestOf(path));
+        }
+
+        // Note: The names of input files are significant (outputs are usually named after them)
+        for (Path path: inputFiles) {
+            update(digest, "input." + path.getFileName().toString(), digestOf(path));
+        }
+
+        return Hex.encodeHexString(digest.digest());
+    }
+
+    @Override
+    public boolean materialize(String key, Path outputDir) throws IOException
+    {
+        Assert.notNull(outputDir, "An output directory is required");
+
+        final Path entryDir = resolveEntry(key);
+
+        lock.readLock().lock();
+        try {
+            if (!Files.isDirectory(entryDir))
+                return false;
+            Files.createDirectories(outputDir);
+            linkTree(entryDir, outputDir);
+            // Touch the entry, so that the order of access survives a restart
+            Files.setLastModifiedTime(entryDir, FileTime.fromMillis(System.currentTimeMillis()));
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        synchronized (entries) {
+            entries.get(key); // mark as recently used
+        }
+
+        logger.info("Materialized cached result {} into {}", key, outputDir);
+        return true;
+    }
+
+    @Override
+    public void store(String key, Path outputDir) throws IOException
+    {
+        Assert.notNull(outputDir, "An output directory is required");
+        Assert.isTrue(Files.isDirectory(outputDir), "The output directory does not exist");
+
+        final Path entryDir = resolveEntry(key);
+        if (Files.isDirectory(entryDir))
+            return; // already present
+
+        final long size = sizeOf(outputDir);
+        final long maxSize = maxSizeKbytes * 1024L;
+        if (size > maxSize) {
+            logger.info("Not storing result {} from {}: its size ({} bytes) exceeds the cache size",
+                key, outputDir, size);
+            return;
+        }
+
+        // Populate a temporary directory, and then move it into place (so that a partially
+        // populated entry is never visible)
+
+        final Path tempDir = cacheDir.resolve(TEMP_PREFIX + UUID.randomUUID().toString());
+        Files.createDirectory(tempDir);
+        try {
+            linkTree(outputDir, tempDir);
+            Files.move(tempDir, entryDir, StandardCopyOption.ATOMIC_MOVE);
+            synchronized (entries) {
+                entries.put(key, size);
+                totalSize += size;
+            }
+            logger.info("Stored result {} from {} ({} bytes)", key, outputDir, size);
+        } catch (FileAlreadyExistsException | DirectoryNotEmptyException ex) {
+            // Stored concurrently by another execution
+            logger.debug("The result {} is already stored", key);
+            return;
+        } finally {
+            if (Files.exists(tempDir))
+                FileSystemUtils.deleteRecursively(tempDir.toFile());
+        }
+
+        evictIfNeeded(key);
+    }
+
+    @Override
+    public long size()
+    {
+        synchronized (entries) {
+            return totalSize;
+        }
+    }
+
+    /**
+     * Evict least-recently-used entries until the cache fits into its maximum size.
+     *
+     * @param keep The key of an entry to never evict (i.e. the one just added), or <tt>null</tt>
+     */
+    private void evictIfNeeded(String keep)
+    {
+        final long maxSize = maxSizeKbytes * 1024L;
+
+        lock.writeLock().lock();
+        try {
+            List<Map.Entry<String, Long>> evicted = new ArrayList<>();
+            synchronized (entries) {
+                Iterator<Map.Entry<String, Long>> it = entries.entrySet().iterator();
+                while (totalSize > maxSize && it.hasNext()) {
+                    Map.Entry<String, Long> e = it.next();
+                    if (e.getKey().equals(keep))
+                        continue;
+                    it.remove();
+                    totalSize -= e.getValue();
+                    evicted.add(e);
+                }
+            }
+            for (Map.Entry<String, Long> e: evicted) {
+                logger.info("Evicting cached result {} ({} bytes)", e.getKey(), e.getValue());
+                FileSystemUtils.deleteRecursively(cacheDir.resolve(e.getKey()).toFile());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private Path resolveEntry(String key)
+    {
+        Assert.isTrue(key != null && key.matches("^[0-9a-f]+$"), "The key is not valid");
+        return cacheDir.resolve(key);
+    }
+
+    /**
+     * Compute the total size (bytes) of regular files under a directory (symbolic links are
+     * not followed)
+     */
+    private static long sizeOf(Path dir) throws IOException
+    {
+        final long[] size = new long[] { 0L };
+        Files.walkFileTree(dir, new SimpleFileVisitor<Path>()
+        {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
+            {
+                if (attrs.isRegularFile())
+                    size[0] += attrs.size();
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return size[0];
+    }
+
+    private static void update(MessageDigest digest, String name, String value)
+    {
+        digest.update(name.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) '=');
+        digest.update(value.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) '\n');
+    }
+
+    private String digestOf(Path path) throws IOException
+    {
+        final Path realPath = path.toRealPath();
+        final BasicFileAttributes attrs = Files.readAttributes(realPath, BasicFileAttributes.class);
+        final String memoKey = String.format("%s:%s:%d:%s",
+            realPath, attrs.fileKey(), attrs.size(), attrs.lastModifiedTime());
+
+        String result = digests.getIfPresent(memoKey);
+        if (result == null) {
+            try (InputStream in = Files.newInputStream(realPath)) {
+                result = DigestUtils.sha256Hex(in);
+            }
+            digests.put(memoKey, result);
+        }
+        return result;
+    }
+
+    /**
+     * Replicate a directory tree by materializing regular files (see {@link FileMaterializer})
+     * and re-creating symbolic links (existing target files are replaced).
+     */
+    private void linkTree(Path sourceDir, Path targetDir) throws IOException
+    {
+        Files.walkFileTree(sourceDir, new SimpleFileVisitor<Path>()
+        {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs)
+                throws IOException
+            {
+                Files.createDirectories(targetDir.resolve(sourceDir.relativize(dir)));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
+                throws IOException
+            {
+                final Path target = targetDir.resolve(sourceDir.relativize(file));
+                Files.deleteIfExists(target);
+                if (attrs.isSymbolicLink()) {
+                    Files.createSymbolicLink(target, Files.readSymbolicLink(file));
+                } else if (attrs.isRegularFile()) {
+                    fileMaterializer.materialize(file, target);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
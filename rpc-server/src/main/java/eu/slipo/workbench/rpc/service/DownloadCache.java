@@ -0,0 +1,32 @@
+package eu.slipo.workbench.rpc.service;
+
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Path;
+
+/**
+ * A node-wide cache for downloaded (HTTP) resources. An entry is keyed on the URL, and is
+ * revalidated against the validators (ETag, Last-Modified, Content-Length) of the resource, so
+ * that a resource referenced by several processes is transferred only once.
+ */
+public interface DownloadCache
+{
+    /**
+     * Fetch a resource into a target file. The target is hard-linked (if possible) to a cache
+     * entry, which is (re)validated or downloaded as needed. Concurrent requests for the same URL
+     * are coalesced into a single transfer.
+     *
+     * @param url An HTTP(S) URL
+     * @param target The target file (an existing file is replaced)
+     * @return the SHA-256 digest (as lowercase hex) of the content
+     *
+     * @throws IOException if the resource cannot be downloaded (or cannot be materialized)
+     * @throws InterruptedException if interrupted while waiting for a download
+     */
+    String fetch(URL url, Path target) throws IOException, InterruptedException;
+
+    /**
+     * Get the total size (in bytes) of cached entries
+     */
+    long size();
+}
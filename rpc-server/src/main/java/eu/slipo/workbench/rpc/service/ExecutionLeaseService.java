@@ -0,0 +1,154 @@
+package eu.slipo.workbench.rpc.service;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A service for several workers (i.e. rpc-server nodes sharing a database) to lease process
+ * executions.
+ * <p>
+ * A submitted execution is pending until a worker acquires a lease on it. The worker runs the
+ * execution for as long as it renews its lease (with a heartbeat). An expired lease is reclaimed
+ * by the coordinator, a role held by a single worker at a time (also under a lease).
+ */
+public interface ExecutionLeaseService
+{
+    /**
+     * A lease on a process execution
+     */
+    class Lease
+    {
+        private final long executionId;
+
+        private final Long reusedExecutionId;
+
+        public Lease(long executionId, Long reusedExecutionId)
+        {
+            this.executionId = executionId;
+            this.reusedExecutionId = reusedExecutionId;
+        }
+
+        /**
+         * The id of the leased process execution
+         */
+        public long executionId()
+        {
+            return executionId;
+        }
+
+        /**
+         * The id of the execution whose output is reused by unchanged steps, or <tt>null</tt>
+         */
+        public Long reusedExecutionId()
+        {
+            return reusedExecutionId;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("Lease [executionId=%s, reusedExecutionId=%s]", executionId, reusedExecutionId);
+        }
+    }
+
+    /**
+     * The id of this worker
+     */
+    String workerId();
+
+    /**
+     * Submit an execution as pending (i.e. to be leased by any worker)
+     *
+     * @param executionId The process execution id
+     * @param reusedExecutionId The id of the execution whose output is reused, or <tt>null</tt>
+     */
+    void submit(long executionId, Long reusedExecutionId);
+
+    /**
+     * Acquire a lease on a pending execution (the one submitted first).
+     *
+     * @return a lease, or <tt>null</tt> if no execution is pending
+     */
+    Lease acquire();
+
+    /**
+     * Renew leases held by this worker
+     *
+     * @param executionIds The ids of the leased executions
+     * @return the ids of executions whose lease is lost (i.e. it has expired and is reclaimed)
+     */
+    Set<Long> renew(Collection<Long> executionIds);
+
+    /**
+     * Release a lease held by this worker (for an execution that has finished)
+     *
+     * @param executionId The process execution id
+     */
+    void release(long executionId);
+
+    /**
+     * Cancel a pending execution (i.e. not yet leased by a worker)
+     *
+     * @param executionId The process execution id
+     * @return <tt>true</tt> if the execution was pending and is now cancelled
+     */
+    boolean cancel(long executionId);
+
+    /**
+     * Request from the owner of a lease to stop an execution
+     *
+     * @param executionId The process execution id
+     * @return <tt>true</tt> if the execution is leased (and a stop is requested)
+     */
+    boolean requestStop(long executionId);
+
+    /**
+     * Find the executions (leased by this worker) that are requested to stop
+     */
+    Set<Long> findStopRequested();
+
+    /**
+     * Test if an execution is pending or leased (under a lease that may have expired)
+     *
+     * @param executionId The process execution id
+     */
+    boolean exists(long executionId);
+
+    /**
+     * Get the position of a pending execution, i.e. the number of pending executions submitted
+     * before it.
+     *
+     * @param executionId The process execution id
+     * @return a zero-based position, or <tt>-1</tt> if the execution is not pending
+     */
+    int position(long executionId);
+
+    /**
+     * Find the executions whose lease has expired
+     */
+    List<Long> findExpired();
+
+    /**
+     * Reclaim an expired lease: either submit the execution again as pending, or discard the
+     * lease altogether. This is expected to be invoked by the coordinator.
+     *
+     * @param executionId The process execution id
+     * @param resubmit A flag to indicate that the execution should be pending again
+     * @return <tt>true</tt> if the lease was expired and is reclaimed
+     */
+    boolean reclaim(long executionId, boolean resubmit);
+
+    /**
+     * Acquire (or renew) the role of the coordinator.
+     *
+     * @return <tt>true</tt> if this worker holds the role of the coordinator
+     */
+    boolean acquireCoordinator();
+
+    /**
+     * Test if this worker holds the role of the coordinator, i.e. if its (recorded) role has not
+     * yet expired as of the clock of the shared store
+     */
+    boolean isCoordinator();
+}
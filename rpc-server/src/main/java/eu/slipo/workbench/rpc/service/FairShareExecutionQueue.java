@@ -0,0 +1,262 @@
+package eu.slipo.workbench.rpc.service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.springframework.util.Assert;
+
+/**
+ * A queue of process executions which are admitted to run under a global concurrency limit, and
+ * are shared fairly among users.
+ * <p>
+ * Pending executions are kept in a FIFO queue per user, and users are served in (smooth) weighted
+ * round-robin order. A user already running the maximum number of executions allowed per user is
+ * skipped, unless no other user has a pending execution (so that a single user can still use the
+ * entire capacity of an otherwise idle system).
+ * <p>
+ * This class only keeps the books (it does not launch anything): the caller is expected to launch
+ * the executions reported as admitted, and to report back when an admitted execution finishes.
+ */
+public class FairShareExecutionQueue
+{
+    private static class UserQueue
+    {
+        private final int userId;
+
+        private final int weight;
+
+        private final Deque<Long> pending;
+
+        private int running;
+
+        private int currentWeight;
+
+        private UserQueue(int userId, int weight)
+        {
+            this.userId = userId;
+            this.weight = weight;
+            this.pending = new ArrayDeque<>();
+        }
+
+        private UserQueue(UserQueue other)
+        {
+            this.userId = other.userId;
+            this.weight = other.weight;
+            this.pending = new ArrayDeque<>(other.pending);
+            this.running = other.running;
+            this.currentWeight = other.currentWeight;
+        }
+    }
+
+    private final int maxConcurrency;
+
+    private final int maxConcurrencyPerUser;
+
+    private final Map<Integer, Integer> weights;
+
+    /**
+     * The queues of users having a pending or a running execution. The map is ordered by
+     * insertion, so ties between users are broken in a stable manner.
+     */
+    private final Map<Integer, UserQueue> queues = new LinkedHashMap<>();
+
+    /**
+     * Map the id of an admitted (running) execution to the queue of its user
+     */
+    private final Map<Long, UserQueue> admitted = new HashMap<>();
+
+    /**
+     * Create a queue
+     *
+     * @param maxConcurrency The maximum number of executions running at the same time
+     * @param maxConcurrencyPerUser The maximum number of executions of a single user running
+     *   at the same time (while other users are waiting)
+     * @param weights A map of weights keyed to user ids; a user not present in this map has
+     *   a weight of 1
+     */
+    public FairShareExecutionQueue(
+        int maxConcurrency, int maxConcurrencyPerUser, Map<Integer, Integer> weights)
+    {
+        Assert.isTrue(maxConcurrency > 0, "Expected a positive concurrency limit");
+        Assert.isTrue(maxConcurrencyPerUser > 0, "Expected a positive per-user concurrency limit");
+        Assert.notNull(weights, "A map of weights is required");
+        Assert.isTrue(weights.values().stream().allMatch(w -> w != null && w > 0),
+            "Expected positive weights");
+
+        this.maxConcurrency = maxConcurrency;
+        this.maxConcurrencyPerUser = maxConcurrencyPerUser;
+        this.weights = new HashMap<>(weights);
+    }
+
+    public FairShareExecutionQueue(int maxConcurrency, int maxConcurrencyPerUser)
+    {
+        this(maxConcurrency, maxConcurrencyPerUser, Collections.emptyMap());
+    }
+
+    /**
+     * Submit an execution on behalf of a user.
+     *
+     * @param userId The id of the user
+     * @param executionId The id of the process execution
+     * @return <tt>true</tt> if the execution is admitted immediately (so, the caller should launch
+     *   it); <tt>false</tt> if it is queued
+     */
+    public synchronized boolean submit(int userId, long executionId)
+    {
+        Assert.isTrue(!admitted.containsKey(executionId) && !isQueued(executionId),
+            "The execution is already submitted");
+
+        queues.computeIfAbsent(userId, id -> new UserQueue(id, weights.getOrDefault(id, 1)))
+            .pending.add(executionId);
+
+        // Note: Nothing else can be admitted here (since nothing was pending with a free slot)
+        List<Long> executionIds = dispatch();
+        Assert.state(executionIds.isEmpty() || executionIds.equals(Collections.singletonList(executionId)),
+            "Expected to admit nothing but the submitted execution");
+
+        return !executionIds.isEmpty();
+    }
+
+    /**
+     * Report that an admitted execution has finished (in any way), and admit pending executions
+     * in its place. This method is idempotent.
+     *
+     * @param executionId The id of the process execution
+     * @return the ids of the executions that are admitted (in order); the caller should launch them
+     */
+    public synchronized List<Long> release(long executionId)
+    {
+        UserQueue queue = admitted.remove(executionId);
+        if (queue == null)
+            return Collections.emptyList();
+
+        queue.running--;
+        if (queue.running == 0 && queue.pending.isEmpty())
+            queues.remove(queue.userId);
+
+        return dispatch();
+    }
+
+    /**
+     * Remove a pending execution from the queue.
+     *
+     * @param executionId The id of the process execution
+     * @return <tt>true</tt> if the execution was pending (and now is removed), <tt>false</tt>
+     *   otherwise (e.g. is already admitted)
+     */
+    public synchronized boolean cancel(long executionId)
+    {
+        for (UserQueue queue: queues.values()) {
+            if (queue.pending.remove(executionId)) {
+                if (queue.running == 0 && queue.pending.isEmpty())
+                    queues.remove(queue.userId);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Compute the position of a pending execution, i.e. the order in which it would be admitted
+     * if no other executions were submitted in the meanwhile.
+     *
+     * @param executionId The id of the process execution
+     * @return a 1-based position, or <tt>-1</tt> if the execution is not pending
+     */
+    public synchronized int position(long executionId)
+    {
+        if (!isQueued(executionId))
+            return -1;
+
+        // Simulate admission (on a copy of our state)
+
+        final List<UserQueue> candidates = queues.values().stream()
+            .map(UserQueue::new)
+            .collect(Collectors.toList());
+
+        int position = 0;
+        UserQueue queue = null;
+        while ((queue = next(candidates)) != null) {
+            position++;
+            queue.running++;
+            if (queue.pending.poll() == executionId)
+                return position;
+        }
+
+        throw new IllegalStateException("Expected to find the execution in the queue");
+    }
+
+    public synchronized int runningCount()
+    {
+        return admitted.size();
+    }
+
+    public synchronized int queuedCount()
+    {
+        return queues.values().stream().mapToInt(q -> q.pending.size()).sum();
+    }
+
+    private boolean isQueued(long executionId)
+    {
+        return queues.values().stream().anyMatch(q -> q.pending.contains(executionId));
+    }
+
+    /**
+     * Admit pending executions as long as the concurrency limit allows
+     */
+    private List<Long> dispatch()
+    {
+        List<Long> executionIds = new ArrayList<>();
+
+        UserQueue queue = null;
+        while (admitted.size() < maxConcurrency && (queue = next(queues.values())) != null) {
+            final long executionId = queue.pending.poll();
+            queue.running++;
+            admitted.put(executionId, queue);
+            executionIds.add(executionId);
+        }
+
+        return executionIds;
+    }
+
+    /**
+     * Select the queue to be served next (smooth weighted round-robin).
+     *
+     * @param candidates
+     * @return a queue with a pending execution, or <tt>null</tt> if nothing is pending
+     */
+    private UserQueue next(Collection<UserQueue> candidates)
+    {
+        List<UserQueue> eligible = candidates.stream()
+            .filter(q -> !q.pending.isEmpty() && q.running < maxConcurrencyPerUser)
+            .collect(Collectors.toList());
+        if (eligible.isEmpty()) {
+            // Every user with a pending execution has reached its limit: do not waste capacity
+            eligible = candidates.stream()
+                .filter(q -> !q.pending.isEmpty())
+                .collect(Collectors.toList());
+        }
+        if (eligible.isEmpty())
+            return null;
+
+        UserQueue selected = null;
+        int totalWeight = 0;
+        for (UserQueue q: eligible) {
+            q.currentWeight += q.weight;
+            totalWeight += q.weight;
+            if (selected == null || q.currentWeight > selected.currentWeight)
+                selected = q;
+        }
+        selected.currentWeight -= totalWeight;
+
+        return selected;
+    }
+}
@@ -0,0 +1,255 @@
+package eu.slipo.workbench.rpc.service;
+
+import java.sql.Timestamp;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+/**
+ * An {@link ExecutionLeaseService} backed by tables of the (shared) database.
+ * <p>
+ * A lease is acquired (or renewed) by a conditional update, so that at most one worker succeeds
+ * for a given row. Expiration times are computed from (and compared against) the clock of the
+ * database, so that a worker whose clock runs ahead never takes over a live lease.
+ */
+public class JdbcExecutionLeaseService implements ExecutionLeaseService
+{
+    private static final Logger logger = LoggerFactory.getLogger(JdbcExecutionLeaseService.class);
+
+    /**
+     * The name of the role of the coordinator (as a key into the table of worker leases)
+     */
+    public static final String COORDINATOR = "coordinator";
+
+    /**
+     * The maximum number of pending executions to examine (and try to acquire) at once
+     */
+    private static final int MAX_CANDIDATES = 10;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final String workerId;
+
+    private final long leaseDuration;
+
+    /**
+     * Create a lease service
+     *
+     * @param dataSource The (shared) data source
+     * @param workerId The (unique) id of this worker
+     * @param leaseDuration The duration (milliseconds) of a lease, before it must be renewed
+     */
+    public JdbcExecutionLeaseService(DataSource dataSource, String workerId, long leaseDuration)
+    {
+        Assert.notNull(dataSource, "Expected a non-null data source");
+        Assert.isTrue(!StringUtils.isEmpty(workerId), "Expected a non-empty worker id");
+        Assert.isTrue(leaseDuration > 0, "Expected a positive lease duration");
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.workerId = workerId;
+        this.leaseDuration = leaseDuration;
+    }
+
+    /**
+     * Compute the expiration time of a lease acquired (or renewed) now, as of the clock of the
+     * database (the clock of this worker is never used)
+     */
+    private Timestamp expiresOn()
+    {
+        final Timestamp now = jdbcTemplate.queryForObject("SELECT CURRENT_TIMESTAMP", Timestamp.class);
+        return new Timestamp(now.getTime() + leaseDuration);
+    }
+
+    @Override
+    public String workerId()
+    {
+        return workerId;
+    }
+
+    @Override
+    public void submit(long executionId, Long reusedExecutionId)
+    {
+        jdbcTemplate.update(
+            "INSERT INTO process_execution_lease (process_execution, submitted_on, reused_execution) " +
+                "VALUES (?, CURRENT_TIMESTAMP, ?)",
+            executionId, reusedExecutionId);
+    }
+
+    @Override
+    public Lease acquire()
+    {
+        final List<Long> candidates = jdbcTemplate.queryForList(
+            "SELECT process_execution FROM process_execution_lease WHERE owner IS NULL " +
+                "ORDER BY submitted_on, process_execution LIMIT " + MAX_CANDIDATES,
+            Long.class);
+
+        for (Long executionId: candidates) {
+            final Timestamp expiresOn = expiresOn();
+            int n = jdbcTemplate.update(
+                "UPDATE process_execution_lease SET owner = ?, expires_on = ? " +
+                    "WHERE process_execution = ? AND owner IS NULL",
+                workerId, expiresOn, executionId);
+            if (n == 1) {
+                // The lease is ours: no other worker may update this row until it expires
+                Long reusedExecutionId = jdbcTemplate.queryForObject(
+                    "SELECT reused_execution FROM process_execution_lease WHERE process_execution = ?",
+                    Long.class, executionId);
+                logger.info("Worker {} leased process execution #{}", workerId, executionId);
+                return new Lease(executionId, reusedExecutionId);
+            }
+        }
+
+        return null;
+    }
+
+    @Override
+    public Set<Long> renew(Collection<Long> executionIds)
+    {
+        final Set<Long> lost = new HashSet<>();
+        for (Long executionId: executionIds) {
+            final Timestamp expiresOn = expiresOn();
+            int n = jdbcTemplate.update(
+                "UPDATE process_execution_lease SET expires_on = ? WHERE process_execution = ? AND owner = ?",
+                expiresOn, executionId, workerId);
+            if (n == 0) {
+                logger.warn("Worker {} has lost its lease on process execution #{}", workerId, executionId);
+                lost.add(executionId);
+            }
+        }
+        return lost;
+    }
+
+    @Override
+    public void release(long executionId)
+    {
+        jdbcTemplate.update(
+            "DELETE FROM process_execution_lease WHERE process_execution = ? AND owner = ?",
+            executionId, workerId);
+    }
+
+    @Override
+    public boolean cancel(long executionId)
+    {
+        int n = jdbcTemplate.update(
+            "DELETE FROM process_execution_lease WHERE process_execution = ? AND owner IS NULL",
+            executionId);
+        return n == 1;
+    }
+
+    @Override
+    public boolean requestStop(long executionId)
+    {
+        int n = jdbcTemplate.update(
+            "UPDATE process_execution_lease SET stop_requested = ? " +
+                "WHERE process_execution = ? AND owner IS NOT NULL",
+            true, executionId);
+        return n == 1;
+    }
+
+    @Override
+    public Set<Long> findStopRequested()
+    {
+        return new HashSet<>(jdbcTemplate.queryForList(
+            "SELECT process_execution FROM process_execution_lease WHERE owner = ? AND stop_requested = ?",
+            Long.class, workerId, true));
+    }
+
+    @Override
+    public boolean exists(long executionId)
+    {
+        Integer n = jdbcTemplate.queryForObject(
+            "SELECT count(*) FROM process_execution_lease WHERE process_execution = ?",
+            Integer.class, executionId);
+        return n > 0;
+    }
+
+    @Override
+    public int position(long executionId)
+    {
+        List<Timestamp> submittedOn = jdbcTemplate.queryForList(
+            "SELECT submitted_on FROM process_execution_lease WHERE process_execution = ? AND owner IS NULL",
+            Timestamp.class, executionId);
+        if (submittedOn.isEmpty())
+            return -1;
+
+        return jdbcTemplate.queryForObject(
+            "SELECT count(*) FROM process_execution_lease WHERE owner IS NULL AND " +
+                "(submitted_on < ? OR (submitted_on = ? AND process_execution < ?))",
+            Integer.class, submittedOn.get(0), submittedOn.get(0), executionId);
+    }
+
+    @Override
+    public List<Long> findExpired()
+    {
+        return jdbcTemplate.queryForList(
+            "SELECT process_execution FROM process_execution_lease " +
+                "WHERE owner IS NOT NULL AND expires_on < CURRENT_TIMESTAMP ORDER BY process_execution",
+            Long.class);
+    }
+
+    @Override
+    public boolean reclaim(long executionId, boolean resubmit)
+    {
+        int n = resubmit?
+            jdbcTemplate.update(
+                "UPDATE process_execution_lease SET owner = NULL, expires_on = NULL, stop_requested = ? " +
+                    "WHERE process_execution = ? AND owner IS NOT NULL AND expires_on < CURRENT_TIMESTAMP",
+                false, executionId) :
+            jdbcTemplate.update(
+                "DELETE FROM process_execution_lease " +
+                    "WHERE process_execution = ? AND owner IS NOT NULL AND expires_on < CURRENT_TIMESTAMP",
+                executionId);
+        return n == 1;
+    }
+
+    @Override
+    public boolean acquireCoordinator()
+    {
+        final boolean held = isCoordinator();
+        final Timestamp expiresOn = expiresOn();
+
+        // Renew the role (if held by us), or take it over from an expired holder
+
+        int n = jdbcTemplate.update(
+            "UPDATE worker_lease SET owner = ?, expires_on = ? " +
+                "WHERE name = ? AND (owner = ? OR expires_on < CURRENT_TIMESTAMP)",
+            workerId, expiresOn, COORDINATOR, workerId);
+
+        if (n == 0) {
+            // The role is either held by another worker, or it was never held
+            try {
+                n = jdbcTemplate.update(
+                    "INSERT INTO worker_lease (name, owner, expires_on) VALUES (?, ?, ?)",
+                    COORDINATOR, workerId, expiresOn);
+            } catch (DuplicateKeyException ex) {
+                n = 0;
+            }
+        }
+
+        final boolean acquired = n == 1;
+        if (acquired && !held)
+            logger.info("Worker {} is elected as the coordinator", workerId);
+        else if (!acquired && held)
+            logger.warn("Worker {} has lost the role of the coordinator", workerId);
+
+        return acquired;
+    }
+
+    @Override
+    public boolean isCoordinator()
+    {
+        Integer n = jdbcTemplate.queryForObject(
+            "SELECT count(*) FROM worker_lease WHERE name = ? AND owner = ? AND expires_on > CURRENT_TIMESTAMP",
+            Integer.class, COORDINATOR, workerId);
+        return n > 0;
+    }
+}
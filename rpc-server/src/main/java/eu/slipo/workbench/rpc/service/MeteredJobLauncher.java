@@ -0,0 +1,106 @@
+package eu.slipo.workbench.rpc.service;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobParameters;
+import org.springframework.batch.core.JobParametersInvalidException;
+import org.springframework.batch.core.job.AbstractJob;
+import org.springframework.batch.core.launch.JobLauncher;
+import org.springframework.batch.core.repository.JobExecutionAlreadyRunningException;
+import org.springframework.batch.core.repository.JobInstanceAlreadyCompleteException;
+import org.springframework.batch.core.repository.JobRestartException;
+import org.springframework.batch.core.step.StepLocator;
+import org.springframework.util.Assert;
+
+import eu.slipo.workbench.rpc.jobs.listener.JobMetricsListener;
+import eu.slipo.workbench.rpc.jobs.listener.StepMetricsListener;
+
+/**
+ * A {@link JobLauncher} that counts launches per kind of job (e.g. <tt>triplegeo</tt>) into a
+ * {@link MetricRegistry}, and attaches a {@link JobMetricsListener} to every launched job.
+ * <p>
+ * Note that jobs of a workflow are named after the workflow node they execute, so a kind of
+ * job is determined by the steps of a job (see {@link StepMetricsListener#kindOf(String)}).
+ */
+public class MeteredJobLauncher implements JobLauncher
+{
+    public static final String JOB_LAUNCHES = "slipo_rpc_job_launches_total";
+
+    public static final String JOBS_RUNNING = "slipo_rpc_jobs_running";
+
+    private final JobLauncher launcher;
+
+    private final MetricRegistry registry;
+
+    /**
+     * The jobs already carrying our listener
+     */
+    private final Set<Job> instrumentedJobs = Collections.newSetFromMap(new WeakHashMap<>());
+
+    /**
+     * The number of running executions per kind of job
+     */
+    private final ConcurrentMap<String, AtomicInteger> running = new ConcurrentHashMap<>();
+
+    public MeteredJobLauncher(JobLauncher launcher, MetricRegistry registry)
+    {
+        Assert.notNull(launcher, "A job launcher is required");
+        Assert.notNull(registry, "A metric registry is required");
+        this.launcher = launcher;
+        this.registry = registry;
+    }
+
+    /**
+     * Determine the kind of a job from the (most common) kind of its steps
+     */
+    public static String kindOf(Job job)
+    {
+        if (job instanceof StepLocator) {
+            Map<String, Integer> counts = new TreeMap<>();
+            for (String stepName: ((StepLocator) job).getStepNames())
+                counts.merge(StepMetricsListener.kindOf(stepName), 1, Integer::sum);
+            if (!counts.isEmpty())
+                return Collections.max(counts.entrySet(), Map.Entry.comparingByValue()).getKey();
+        }
+        return StepMetricsListener.kindOf(job.getName());
+    }
+
+    @Override
+    public JobExecution run(Job job, JobParameters jobParameters)
+        throws JobExecutionAlreadyRunningException, JobRestartException,
+            JobInstanceAlreadyCompleteException, JobParametersInvalidException
+    {
+        final String kind = kindOf(job);
+
+        registry.counter(JOB_LAUNCHES, "The number of job launches", "job", kind).increment();
+
+        if (job instanceof AbstractJob) {
+            synchronized (instrumentedJobs) {
+                if (instrumentedJobs.add(job)) {
+                    ((AbstractJob) job).registerJobExecutionListener(
+                        new JobMetricsListener(registry, kind, running(kind)));
+                }
+            }
+        }
+
+        return launcher.run(job, jobParameters);
+    }
+
+    private AtomicInteger running(String kind)
+    {
+        return running.computeIfAbsent(kind, k -> {
+            AtomicInteger n = new AtomicInteger();
+            registry.gauge(JOBS_RUNNING, "The number of running job executions", n::get, "job", k);
+            return n;
+        });
+    }
+}
@@ -0,0 +1,83 @@
+package eu.slipo.workbench.rpc.service;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import eu.slipo.workbench.common.model.jobs.MetricInfo;
+
+/**
+ * A registry of metrics (counters, timers and gauges) on the execution engine. The registry is
+ * reported as a snapshot of current values (e.g. to be scraped by a Prometheus server).
+ * <p>
+ * A metric is identified by a name and a set of labels. Labels are given as pairs of names and
+ * values (e.g. <tt>"job", "triplegeo", "status", "COMPLETED"</tt>). Names should follow the
+ * Prometheus conventions (e.g. a counter is suffixed with <tt>_total</tt>, a timer with
+ * <tt>_seconds</tt>), and labels should only take a small set of values.
+ */
+public interface MetricRegistry
+{
+    /**
+     * A monotonically increasing count of events
+     */
+    interface Counter
+    {
+        void increment(long amount);
+
+        default void increment()
+        {
+            increment(1L);
+        }
+    }
+
+    /**
+     * A timer recording the distribution of durations of some event
+     */
+    interface Timer
+    {
+        void record(long duration, TimeUnit unit);
+
+        /**
+         * Record the time elapsed since a reading of {@link System#nanoTime()}
+         */
+        default void recordSince(long startNanos)
+        {
+            record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Get (or create) a counter.
+     *
+     * @param name The name of the metric
+     * @param help A short description of the metric
+     * @param labels Pairs of label names and values
+     */
+    Counter counter(String name, String help, String... labels);
+
+    /**
+     * Get (or create) a timer.
+     *
+     * @param name The name of the metric
+     * @param help A short description of the metric
+     * @param labels Pairs of label names and values
+     */
+    Timer timer(String name, String help, String... labels);
+
+    /**
+     * Register a gauge, i.e. a value that is read (from a supplier) whenever the registry is
+     * reported. A gauge registered under the same name and labels is replaced.
+     *
+     * @param name The name of the metric
+     * @param help A short description of the metric
+     * @param supplier The supplier of the current value. A <tt>null</tt> value (or a failure
+     *   to supply one) omits the gauge from a report.
+     * @param labels Pairs of label names and values
+     */
+    void gauge(String name, String help, Supplier<? extends Number> supplier, String... labels);
+
+    /**
+     * Report the current values of all metrics (ordered by name)
+     */
+    List<MetricInfo> snapshot();
+}
@@ -0,0 +1,120 @@
+package eu.slipo.workbench.rpc.service;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.springframework.util.Assert;
+
+import eu.slipo.workbench.common.model.process.ProcessDefinition;
+import eu.slipo.workbench.common.model.process.Step;
+import eu.slipo.workbench.common.model.resource.ResourceIdentifier;
+import eu.slipo.workbench.common.service.util.PropertiesConverterService;
+
+/**
+ * Compare 2 revisions of a process definition in order to find the processing steps that are
+ * left unchanged (and therefore produce the same output).
+ * <p>
+ * Steps are matched by their node name (which is stable across revisions, unlike resource keys).
+ * A step is unchanged if it has the same tool, operation, output format and configuration as its
+ * counterpart, and if it consumes the same inputs: the same external sources, the same catalog
+ * resources, or the same output parts of unchanged steps.
+ */
+public class ProcessDefinitionComparator
+{
+    private final PropertiesConverterService propertiesConverter;
+
+    public ProcessDefinitionComparator(PropertiesConverterService propertiesConverter)
+    {
+        Assert.notNull(propertiesConverter, "Expected a non-null properties converter");
+        this.propertiesConverter = propertiesConverter;
+    }
+
+    /**
+     * Find the steps of a definition that are unchanged with respect to a previous revision.
+     *
+     * @param previous The definition of the previous revision
+     * @param current The definition of the current revision
+     * @return the node names of the unchanged steps (of the current revision)
+     */
+    public Set<String> findUnchangedSteps(ProcessDefinition previous, ProcessDefinition current)
+    {
+        Assert.notNull(previous, "Expected a non-null previous definition");
+        Assert.notNull(current, "Expected a non-null current definition");
+
+        final Map<String, Boolean> unchanged = new HashMap<>();
+        return current.steps().stream()
+            .filter(step -> isUnchanged(step, previous, current, unchanged))
+            .map(Step::nodeName)
+            .collect(Collectors.toSet());
+    }
+
+    private boolean isUnchanged(
+        Step step, ProcessDefinition previous, ProcessDefinition current, Map<String, Boolean> unchanged)
+    {
+        final String nodeName = step.nodeName();
+
+        Boolean result = unchanged.get(nodeName);
+        if (result == null) {
+            // Note: a definition has no cyclic dependencies, so a step is never visited while
+            // its own result is being computed
+            result = compare(step, previous.stepByNodeName(nodeName), previous, current, unchanged);
+            unchanged.put(nodeName, result);
+        }
+        return result;
+    }
+
+    private boolean compare(
+        Step step, Step other, ProcessDefinition previous, ProcessDefinition current,
+        Map<String, Boolean> unchanged)
+    {
+        if (other == null)
+            return false;
+
+        if (step.tool() != other.tool() || step.operation() != other.operation() ||
+                step.outputFormat() != other.outputFormat())
+            return false;
+
+        if (!step.sources().equals(other.sources()))
+            return false;
+
+        // Compare inputs (in order, since a tool may assign a role to each input)
+
+        final List<Step.Input> input = step.input(), otherInput = other.input();
+        if (input.size() != otherInput.size())
+            return false;
+
+        for (int i = 0; i < input.size(); ++i) {
+            final Step.Input p = input.get(i), q = otherInput.get(i);
+
+            final ResourceIdentifier resource = current.resourceIdentifierByResourceKey(p.inputKey());
+            final ResourceIdentifier otherResource = previous.resourceIdentifierByResourceKey(q.inputKey());
+            if (resource != null || otherResource != null) {
+                // The input is a catalog resource
+                if (!Objects.equals(resource, otherResource))
+                    return false;
+                continue;
+            }
+
+            // The input is the output of another step
+            final Step producer = current.stepByResourceKey(p.inputKey());
+            final Step otherProducer = previous.stepByResourceKey(q.inputKey());
+            if (producer == null || otherProducer == null)
+                return false;
+            if (!producer.nodeName().equals(otherProducer.nodeName()))
+                return false;
+            if (producer.outputPart(p.partKey()) != otherProducer.outputPart(q.partKey()))
+                return false;
+            if (!isUnchanged(producer, previous, current, unchanged))
+                return false;
+        }
+
+        // Compare configurations (as the properties passed to a job)
+
+        return propertiesConverter.valueToProperties(step.configuration())
+            .equals(propertiesConverter.valueToProperties(other.configuration()));
+    }
+}
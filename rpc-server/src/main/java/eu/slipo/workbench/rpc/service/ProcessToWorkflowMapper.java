@@ -1,5 +1,9 @@
 package eu.slipo.workbench.rpc.service;
 
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 import eu.slipo.workbench.common.model.process.ProcessDefinition;
@@ -19,7 +23,31 @@ public interface ProcessToWorkflowMapper
      *
      * @throws CycleDetected if the process definition has cyclic dependencies
      */
-    Workflow buildWorkflow(long id, long version, ProcessDefinition definition, int createdBy)
+    default Workflow buildWorkflow(long id, long version, ProcessDefinition definition, int createdBy)
+        throws CycleDetected
+    {
+        return buildWorkflow(id, version, definition, createdBy, -1L, Collections.emptyMap());
+    }
+
+    /**
+     * Build a workflow from a given process definition, reusing the output of some processing
+     * steps from a previous execution. A reused step is mapped to a job node that just links the
+     * recorded output files (and a reused registration step is omitted).
+     *
+     * @param id The id (parent id) of a process
+     * @param version The version of a process revision
+     * @param definition The process definition
+     * @param createdBy The id of the user that created the process
+     * @param reusedExecutionId The id of the process execution whose output is reused
+     * @param reusedOutput A map of node names to the (absolute) paths of output files to be
+     *   reused. The paths are expected to have the same file names as the output of the step.
+     * @return a workflow
+     *
+     * @throws CycleDetected if the process definition has cyclic dependencies
+     */
+    Workflow buildWorkflow(
+            long id, long version, ProcessDefinition definition, int createdBy,
+            long reusedExecutionId, Map<String, List<Path>> reusedOutput)
         throws CycleDetected;
 
     /**
@@ -0,0 +1,97 @@
+package eu.slipo.workbench.rpc.service;
+
+import java.util.List;
+import java.util.Map;
+
+import eu.slipo.workbench.common.model.jobs.MetricInfo;
+
+/**
+ * Format a report of metrics (see {@link MetricRegistry#snapshot()}) in the text-based exposition
+ * format of Prometheus (version 0.0.4).
+ */
+public class PrometheusTextFormat
+{
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private PrometheusTextFormat() {}
+
+    /**
+     * Format a list of metrics. The metrics of a family (i.e. sharing a name) are expected to
+     * be adjacent (as reported by a {@link MetricRegistry}).
+     */
+    public static String format(List<MetricInfo> metrics)
+    {
+        StringBuilder out = new StringBuilder();
+
+        String familyName = null;
+        for (MetricInfo metric: metrics) {
+            final String name = metric.getName();
+            if (!name.equals(familyName)) {
+                familyName = name;
+                if (metric.getHelp() != null)
+                    out.append("# HELP ").append(name).append(' ')
+                        .append(escapeHelp(metric.getHelp())).append('\n');
+                out.append("# TYPE ").append(name).append(' ')
+                    .append(metric.getType().name().toLowerCase()).append('\n');
+            }
+
+            if (metric.getType() == MetricInfo.Type.HISTOGRAM) {
+                for (Map.Entry<String, Long> e: metric.getBuckets().entrySet()) {
+                    appendSample(out, name + "_bucket", metric.getLabels(), e.getKey(), e.getValue());
+                }
+                appendSample(out, name + "_sum", metric.getLabels(), null, metric.getSum());
+                appendSample(out, name + "_count", metric.getLabels(), null, metric.getCount());
+            } else {
+                appendSample(out, name, metric.getLabels(), null, metric.getValue());
+            }
+        }
+
+        return out.toString();
+    }
+
+    private static void appendSample(
+        StringBuilder out, String name, Map<String, String> labels, String le, Number value)
+    {
+        out.append(name);
+
+        if (!labels.isEmpty() || le != null) {
+            out.append('{');
+            String separator = "";
+            for (Map.Entry<String, String> e: labels.entrySet()) {
+                out.append(separator).append(e.getKey()).append("=\"")
+                    .append(escapeLabelValue(e.getValue())).append('"');
+                separator = ",";
+            }
+            if (le != null)
+                out.append(separator).append("le=\"").append(le).append('"');
+            out.append('}');
+        }
+
+        out.append(' ').append(formatValue(value)).append('\n');
+    }
+
+    private static String formatValue(Number value)
+    {
+        if (value instanceof Long || value instanceof Integer)
+            return value.toString();
+
+        double d = value.doubleValue();
+        if (Double.isNaN(d))
+            return "NaN";
+        if (Double.isInfinite(d))
+            return d > 0? "+Inf" : "-Inf";
+        if (d == Math.rint(d) && Math.abs(d) < 1E+15)
+            return Long.toString((long) d);
+        return Double.toString(d);
+    }
+
+    private static String escapeHelp(String s)
+    {
+        return s.replace("\\", "\\\\").replace("\n", "\\n");
+    }
+
+    private static String escapeLabelValue(String s)
+    {
+        return s.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
@@ -0,0 +1,45 @@
+package eu.slipo.workbench.rpc.service;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.util.Assert;
+
+import eu.slipo.workbench.common.repository.ProcessRepository;
+
+/**
+ * An aspect that records the latency of calls to a {@link ProcessRepository} (labeled by the
+ * method and its outcome) into a {@link MetricRegistry}.
+ */
+@Aspect
+public class RepositoryMetricsAspect
+{
+    public static final String REPOSITORY_CALL = "slipo_rpc_repository_call_seconds";
+
+    private final MetricRegistry registry;
+
+    public RepositoryMetricsAspect(MetricRegistry registry)
+    {
+        Assert.notNull(registry, "A metric registry is required");
+        this.registry = registry;
+    }
+
+    @Around("execution(public * eu.slipo.workbench.common.repository.ProcessRepository+.*(..))")
+    public Object timeProcessRepositoryCall(ProceedingJoinPoint joinPoint) throws Throwable
+    {
+        final long started = System.nanoTime();
+
+        String outcome = "error";
+        try {
+            Object result = joinPoint.proceed();
+            outcome = "success";
+            return result;
+        } finally {
+            registry.timer(REPOSITORY_CALL, "The latency of calls to the process repository",
+                    "repository", "process",
+                    "method", joinPoint.getSignature().getName(),
+                    "outcome", outcome)
+                .recordSince(started);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package eu.slipo.workbench.rpc.service;
+
+import java.util.List;
+
+import eu.slipo.workbench.common.model.jobs.ResourcePredictionInfo;
+import eu.slipo.workbench.common.model.poi.EnumTool;
+
+/**
+ * A service that predicts the resources (runtime and peak memory) of a tool run from the size
+ * of its input. A prediction is based on models learned (per tool) from the history of completed
+ * execution steps.
+ */
+public interface ResourcePredictor
+{
+    /**
+     * A prediction for a run of a tool.
+     * <p>
+     * A predicted quantity is an upper estimate (i.e. includes some headroom for the error of the
+     * model), or <tt>-1</tt> if it cannot be predicted (e.g. not enough history is available).
+     */
+    class Prediction
+    {
+        private final long runtime;
+
+        private final long memory;
+
+        public Prediction(long runtime, long memory)
+        {
+            this.runtime = runtime;
+            this.memory = memory;
+        }
+
+        /**
+         * The predicted runtime (in milliseconds), or <tt>-1</tt> if not known
+         */
+        public long runtime()
+        {
+            return runtime;
+        }
+
+        /**
+         * The predicted peak memory (in bytes), or <tt>-1</tt> if not known
+         */
+        public long memory()
+        {
+            return memory;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("Prediction [runtime=%d, memory=%d]", runtime, memory);
+        }
+    }
+
+    /**
+     * Predict the resources for a run of a tool.
+     *
+     * @param tool The tool
+     * @param inputSize The total size (in bytes) of the input
+     */
+    Prediction predict(EnumTool tool, long inputSize);
+
+    /**
+     * Re-learn the models from the (current) history of execution steps
+     */
+    void refresh();
+
+    /**
+     * Report the models, along with their predictions against the actual resources of recent
+     * execution steps.
+     */
+    List<ResourcePredictionInfo> getInfo();
+}
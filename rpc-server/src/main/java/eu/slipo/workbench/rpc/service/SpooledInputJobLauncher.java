@@ -0,0 +1,204 @@
+package eu.slipo.workbench.rpc.service;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledFuture;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobParameters;
+import org.springframework.batch.core.JobParametersInvalidException;
+import org.springframework.batch.core.launch.JobLauncher;
+import org.springframework.batch.core.repository.JobExecutionAlreadyRunningException;
+import org.springframework.batch.core.repository.JobInstanceAlreadyCompleteException;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.batch.core.repository.JobRestartException;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.util.Assert;
+
+import eu.slipo.workbench.rpc.jobs.tasklet.OutputSpool;
+
+/**
+ * A {@link JobLauncher} that defers a job reading its input from the spool of an upstream job
+ * (see {@link OutputSpool}) until the upstream job has actually started.
+ * <p>
+ * A consumer of a spool does not depend on the completion of its producer, so the workflow
+ * scheduler launches it along with the first nodes of a workflow. If run immediately, it would
+ * hold a thread of the task executor while waiting for a producer that may itself be waiting (for
+ * an upstream download, or for a free thread). Instead, a job execution is created (so that it can
+ * be tracked and stopped as any other) but it is only submitted to the task executor once the
+ * producer has reset its spool, or once it is requested to stop, or after a timeout (in such a
+ * case the consumer will fail to find any data).
+ */
+public class SpooledInputJobLauncher implements JobLauncher
+{
+    private static final Logger logger = LoggerFactory.getLogger(SpooledInputJobLauncher.class);
+
+    /**
+     * The name of the job parameter holding the input of a job
+     */
+    public static final String INPUT_PARAMETER_NAME = "input";
+
+    /**
+     * The default interval (milliseconds) for checking deferred jobs
+     */
+    public static final long DEFAULT_POLL_INTERVAL = 1000L;
+
+    private static class DeferredExecution
+    {
+        final Job job;
+
+        final JobExecution execution;
+
+        final OutputSpool spool;
+
+        private DeferredExecution(Job job, JobExecution execution, OutputSpool spool)
+        {
+            this.job = job;
+            this.execution = execution;
+            this.spool = spool;
+        }
+    }
+
+    private final JobLauncher launcher;
+
+    private final JobRepository jobRepository;
+
+    private final TaskExecutor taskExecutor;
+
+    private final Path spoolDir;
+
+    private final long timeout;
+
+    private final List<DeferredExecution> deferred = new CopyOnWriteArrayList<>();
+
+    private final ScheduledFuture<?> poller;
+
+    /**
+     * @param launcher The launcher for jobs that are not deferred
+     * @param jobRepository The job repository
+     * @param taskExecutor The executor to submit deferred jobs to (should be the same as the one of
+     *   the given launcher)
+     * @param taskScheduler A scheduler to periodically check deferred jobs
+     * @param spoolDir The root directory for spools
+     * @param timeout The time (milliseconds) to defer a job for, at most
+     * @param pollInterval The interval (milliseconds) for checking deferred jobs
+     */
+    public SpooledInputJobLauncher(
+        JobLauncher launcher, JobRepository jobRepository, TaskExecutor taskExecutor,
+        TaskScheduler taskScheduler, Path spoolDir, long timeout, long pollInterval)
+    {
+        Assert.notNull(launcher, "A job launcher is required");
+        Assert.notNull(jobRepository, "A job repository is required");
+        Assert.notNull(taskExecutor, "A task executor is required");
+        Assert.notNull(taskScheduler, "A task scheduler is required");
+        Assert.isTrue(spoolDir != null && spoolDir.isAbsolute(), "Expected an absolute path for spools");
+        Assert.isTrue(timeout > 0, "Expected a positive timeout");
+        Assert.isTrue(pollInterval > 0, "Expected a positive interval");
+
+        this.launcher = launcher;
+        this.jobRepository = jobRepository;
+        this.taskExecutor = taskExecutor;
+        this.spoolDir = spoolDir;
+        this.timeout = timeout;
+        this.poller = taskScheduler.scheduleWithFixedDelay(this::poll, pollInterval);
+    }
+
+    public SpooledInputJobLauncher(
+        JobLauncher launcher, JobRepository jobRepository, TaskExecutor taskExecutor,
+        TaskScheduler taskScheduler, Path spoolDir, long timeout)
+    {
+        this(launcher, jobRepository, taskExecutor, taskScheduler, spoolDir, timeout, DEFAULT_POLL_INTERVAL);
+    }
+
+    @Override
+    public JobExecution run(Job job, JobParameters jobParameters)
+        throws JobExecutionAlreadyRunningException, JobRestartException,
+            JobInstanceAlreadyCompleteException, JobParametersInvalidException
+    {
+        final String input = jobParameters.getString(INPUT_PARAMETER_NAME);
+        final Path inputPath = input == null? null : Paths.get(input);
+        if (inputPath == null || !inputPath.isAbsolute() || !OutputSpool.isSpool(inputPath, spoolDir))
+            return launcher.run(job, jobParameters);
+
+        final OutputSpool spool = new OutputSpool(inputPath);
+        if (spool.isStarted())
+            return launcher.run(job, jobParameters);
+
+        // Create an execution (as the launcher would do), but do not run it yet
+
+        final JobExecution lastExecution = jobRepository.getLastJobExecution(job.getName(), jobParameters);
+        if (lastExecution != null && !job.isRestartable()) {
+            throw new JobRestartException(
+                "The job instance already exists and is not restartable: " + lastExecution.getJobInstance());
+        }
+
+        job.getJobParametersValidator().validate(jobParameters);
+
+        final JobExecution execution = jobRepository.createJobExecution(job.getName(), jobParameters);
+        deferred.add(new DeferredExecution(job, execution, spool));
+
+        logger.info("Deferred job {} (execution #{}) until the producer of {} has started",
+            job.getName(), execution.getId(), spool.path());
+
+        return execution;
+    }
+
+    /**
+     * Get the number of deferred job executions
+     */
+    public int getNumberOfDeferred()
+    {
+        return deferred.size();
+    }
+
+    /**
+     * Stop checking deferred jobs (the deferred executions are left as they are, i.e. they will
+     * be handled as interrupted ones).
+     */
+    public void shutdown()
+    {
+        poller.cancel(false);
+    }
+
+    private void poll()
+    {
+        final long now = System.currentTimeMillis();
+        for (DeferredExecution d: deferred) {
+            try {
+                // Get the execution as recorded in the repository (it may be requested to stop)
+                JobExecution execution =
+                    jobRepository.getLastJobExecution(d.job.getName(), d.execution.getJobParameters());
+                if (execution == null || !execution.getId().equals(d.execution.getId()))
+                    execution = d.execution;
+                final BatchStatus status = execution.getStatus();
+
+                if (status == BatchStatus.STARTING && !d.spool.isStarted() &&
+                        now - execution.getCreateTime().getTime() < timeout) {
+                    continue; // keep waiting
+                }
+
+                deferred.remove(d);
+
+                if (status == BatchStatus.STARTING || status == BatchStatus.STOPPING) {
+                    // Note that a job does not run an execution requested to stop (it only marks
+                    // it as stopped)
+                    logger.info("Launching deferred job {} (execution #{})", d.job.getName(), execution.getId());
+                    final JobExecution e = execution;
+                    taskExecutor.execute(() -> d.job.execute(e));
+                } else {
+                    logger.info("Dropping deferred job {} (execution #{} is {})",
+                        d.job.getName(), execution.getId(), status);
+                }
+            } catch (RuntimeException ex) {
+                logger.error("Failed to launch deferred job " + d.job.getName(), ex);
+            }
+        }
+    }
+}
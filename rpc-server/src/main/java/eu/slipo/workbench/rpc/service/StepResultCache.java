@@ -0,0 +1,55 @@
+package eu.slipo.workbench.rpc.service;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * A cache for the results (i.e. the output directory) of processing steps. An entry is keyed on
+ * everything that determines the output of a step: the tool, its configuration and its input.
+ */
+public interface StepResultCache
+{
+    /**
+     * Compute a cache key for a processing step.
+     *
+     * @param toolName The name of the tool carrying out the step
+     * @param configuration The tool configuration (as properties)
+     * @param configFiles The configuration files generated for the step
+     * @param inputFiles The input files of the step
+     * @return a key (a hex-encoded digest)
+     *
+     * @throws IOException if an input file (or a configuration file) cannot be read
+     */
+    String computeKey(String toolName, Properties configuration, List<Path> configFiles, List<Path> inputFiles)
+        throws IOException;
+
+    /**
+     * Materialize a cached result into an output directory. Files are hard-linked (if possible)
+     * from the cache entry.
+     *
+     * @param key A cache key
+     * @param outputDir The target output directory (must be empty or non-existing)
+     * @return <tt>true</tt> if a cache entry was found and materialized, <tt>false</tt> on a miss
+     *
+     * @throws IOException if the cache entry cannot be materialized
+     */
+    boolean materialize(String key, Path outputDir) throws IOException;
+
+    /**
+     * Store the output directory of a (successful) processing step as the result for a given
+     * key. If an entry already exists, this is a no-op.
+     *
+     * @param key A cache key
+     * @param outputDir The output directory
+     *
+     * @throws IOException if the output cannot be stored
+     */
+    void store(String key, Path outputDir) throws IOException;
+
+    /**
+     * Get the total size (in bytes) of cached entries
+     */
+    long size();
+}
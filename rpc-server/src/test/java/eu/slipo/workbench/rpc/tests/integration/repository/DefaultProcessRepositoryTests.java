@@ -542,6 +542,89 @@ public class DefaultProcessRepositoryTests
         assertNull(outputResourceRecord1.getNumberOfEntities());
     }
 
+    @Test
+    public void test3_restartExecutionStep() throws Exception
+    {
+        UUID workflowId = UUID.randomUUID();
+
+        AccountEntity createdBy = accountRepository.findOneByUsername("baz");
+        assertNotNull(createdBy);
+
+        ProcessRecord processRecord =
+            processRepository.create(sampleProcessDefinition1, createdBy.getId(), false);
+        assertNotNull(processRecord);
+
+        final long id = processRecord.getId(), version = processRecord.getVersion();
+
+        // Create a running execution with a running step (as left by a non-graceful shutdown)
+
+        ProcessExecutionRecord executionRecord =
+            processRepository.createExecution(id, version, createdBy.getId(), workflowId);
+        final long executionId = executionRecord.getId();
+        final ZonedDateTime started = ZonedDateTime.now();
+        processRepository.updateExecution(executionId, EnumProcessExecutionStatus.RUNNING, started, null, null);
+
+        final int stepKey = sampleProcessDefinition1.steps().stream()
+            .filter(s -> s.operation() == EnumOperation.TRANSFORM)
+            .mapToInt(s -> s.key())
+            .findFirst()
+            .getAsInt();
+
+        ProcessExecutionStepRecord stepRecord = new ProcessExecutionStepRecord(-1, stepKey);
+        stepRecord.setName("Triplegeo 1");
+        stepRecord.setNodeName("triplegeo-1");
+        stepRecord.setOperation(EnumOperation.TRANSFORM);
+        stepRecord.setTool(EnumTool.TRIPLEGEO);
+        stepRecord.setJobExecutionId(2001L);
+        stepRecord.setStartedOn(started.plusMinutes(1));
+        stepRecord.setStatus(EnumProcessExecutionStatus.RUNNING);
+        stepRecord.addFile(new ProcessExecutionStepFileRecord(
+            EnumStepFile.INPUT, "/tmp/3-1.csv", 1000L, EnumDataFormat.CSV));
+        stepRecord.addFile(new ProcessExecutionStepFileRecord(
+            EnumStepFile.OUTPUT, "/tmp/out-3.nt", null, EnumDataFormat.N_TRIPLES));
+        processRepository.createExecutionStep(executionId, stepRecord);
+
+        // The execution is found as active
+
+        List<ProcessExecutionRecord> activeRecords = processRepository.findActiveExecutions();
+        ProcessExecutionRecord activeRecord = activeRecords.stream()
+            .filter(r -> r.getId() == executionId)
+            .findFirst().orElse(null);
+        assertNotNull(activeRecord);
+        assertEquals(EnumProcessExecutionStatus.RUNNING, activeRecord.getStatus());
+        assertEquals(1, activeRecord.getSteps().size());
+        assertEquals(2, activeRecord.getSteps().get(0).getFiles().size());
+
+        // The step is stopped, and then restarted as a new job execution
+
+        stepRecord = new ProcessExecutionStepRecord(activeRecord.getStep(stepKey));
+        stepRecord.setStatus(EnumProcessExecutionStatus.STOPPED);
+        processRepository.updateExecutionStep(executionId, stepKey, stepRecord);
+
+        final ZonedDateTime restarted = started.plusMinutes(30);
+        processRepository.restartExecutionStep(executionId, stepKey, 2002L, restarted);
+
+        ProcessExecutionRecord executionRecord1 = processRepository.findExecution(executionId, true);
+        assertEquals(1, executionRecord1.getSteps().size());
+        ProcessExecutionStepRecord stepRecord1 = executionRecord1.getStep(stepKey);
+        assertEquals(EnumProcessExecutionStatus.RUNNING, stepRecord1.getStatus());
+        assertEquals(2002L, stepRecord1.getJobExecutionId());
+        assertEquals(restarted, stepRecord1.getStartedOn());
+        assertNull(stepRecord1.getCompletedOn());
+        assertEquals(2, stepRecord1.getFiles().size());
+
+        // Complete the execution: it is no longer active
+
+        stepRecord = new ProcessExecutionStepRecord(stepRecord1);
+        stepRecord.setStatus(EnumProcessExecutionStatus.COMPLETED);
+        stepRecord.setCompletedOn(restarted.plusMinutes(5));
+        processRepository.updateExecutionStep(executionId, stepKey, stepRecord);
+        processRepository.updateExecution(
+            executionId, EnumProcessExecutionStatus.COMPLETED, null, restarted.plusMinutes(6), null);
+
+        assertTrue(processRepository.findActiveExecutions().stream().noneMatch(r -> r.getId() == executionId));
+    }
+
     @Test(expected = ProcessRepository.ProcessHasActiveExecutionException.class)
     public void test1_createMultipleRunningExecutions() throws Exception
     {
@@ -1,6 +1,7 @@
 package eu.slipo.workbench.rpc.tests.integration.service;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.springframework.util.StringUtils.getFilenameExtension;
@@ -16,6 +17,7 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.time.Duration;
 import java.time.ZonedDateTime;
 import java.util.Arrays;
 import java.util.Collections;
@@ -27,6 +29,7 @@ import java.util.Properties;
 import java.util.Random;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.UUID;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.stream.Collectors;
@@ -41,6 +44,11 @@ import org.junit.runner.RunWith;
 import org.junit.runners.MethodSorters;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.explore.JobExplorer;
+import org.springframework.batch.core.repository.JobRepository;
 import org.springframework.batch.test.AssertFile;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
@@ -56,6 +64,8 @@ import org.springframework.data.util.Pair;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.util.AopTestUtils;
+import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.util.StringUtils;
 
 import com.github.slugify.Slugify;
@@ -80,6 +90,7 @@ import eu.slipo.workbench.common.model.process.ProcessExecutionStepFileRecord;
 import eu.slipo.workbench.common.model.process.ProcessExecutionStepRecord;
 import eu.slipo.workbench.common.model.process.ProcessIdentifier;
 import eu.slipo.workbench.common.model.process.ProcessRecord;
+import eu.slipo.workbench.common.model.process.ProcessRecoveryInfo;
 import eu.slipo.workbench.common.model.resource.DataSource;
 import eu.slipo.workbench.common.model.resource.ResourceIdentifier;
 import eu.slipo.workbench.common.model.resource.ResourceMetadataCreate;
@@ -97,6 +108,7 @@ import eu.slipo.workbench.common.service.ProcessOperator;
 import eu.slipo.workbench.common.service.UserFileNamingStrategy;
 import eu.slipo.workbench.common.service.util.PropertiesConverterService;
 import eu.slipo.workbench.rpc.Application;
+import eu.slipo.workbench.rpc.service.ProcessToWorkflowMapper;
 
 @RunWith(SpringRunner.class)
 @ActiveProfiles({ "testing" })
@@ -668,6 +680,15 @@ public class DefaultProcessOperatorTests
     @Autowired
     private ThreadPoolTaskExecutor taskExecutor;
 
+    @Autowired
+    private ProcessToWorkflowMapper processToWorkflowMapper;
+
+    @Autowired
+    private JobExplorer jobExplorer;
+
+    @Autowired
+    private JobRepository jobRepository;
+
     private Account user;
 
     @PostConstruct
@@ -960,6 +981,169 @@ public class DefaultProcessOperatorTests
         return transformedResourceRecord;
     }
 
+    private ProcessExecutionRecord awaitExecution(long executionId)
+        throws InterruptedException
+    {
+        ProcessExecutionRecord executionRecord = null;
+        boolean terminated = false;
+        do {
+            Thread.sleep(POLL_INTERVAL);
+            logger.debug("Polling status for process execution #{}", executionId);
+            executionRecord = processRepository.findExecution(executionId, true);
+            terminated = executionRecord.getStatus().isTerminated() &&
+                Iterables.all(executionRecord.getSteps(), s -> s.getStatus().isTerminated());
+        } while (!terminated);
+
+        return executionRecord;
+    }
+
+    private ProcessRecoveryInfo recoverExecutions()
+    {
+        final Object operator = AopTestUtils.getTargetObject(processOperator);
+        final Object recoveryEnabled = ReflectionTestUtils.getField(operator, "recoveryEnabled");
+
+        ReflectionTestUtils.setField(operator, "recoveryEnabled", true);
+        try {
+            ReflectionTestUtils.invokeMethod(operator, "recoverExecutions");
+        } finally {
+            ReflectionTestUtils.setField(operator, "recoveryEnabled", recoveryEnabled);
+        }
+
+        return processOperator.getRecoveryInfo();
+    }
+
+    private void resumeInterruptedExecution(String procName, TransformFixture fixture, Account creator)
+        throws Exception
+    {
+        logger.debug("resumeInterruptedExecution: procName={} fixture={}", procName, fixture);
+
+        final int creatorId = creator.getId();
+
+        // Execute a process of 2 (independent) transformation steps
+
+        final DataSource source = fixture.inputAsDataSource();
+        final ProcessDefinition definition = processDefinitionBuilderFactory.create(procName)
+            .transform("Triplegeo 1", builder -> builder
+                .source(source)
+                .outputFormat(EnumDataFormat.N_TRIPLES)
+                .outputKey("transformed-1")
+                .configuration(fixture.configuration()))
+            .transform("Triplegeo 2", builder -> builder
+                .source(source)
+                .outputFormat(EnumDataFormat.N_TRIPLES)
+                .outputKey("transformed-2")
+                .configuration(fixture.configuration()))
+            .build();
+
+        final ProcessExecutionRecord completedRecord = executeDefinition(definition, creator);
+        assertEquals(EnumProcessExecutionStatus.COMPLETED, completedRecord.getStatus());
+        final ProcessIdentifier processIdentifier = completedRecord.getProcess();
+        final long id = processIdentifier.getId(), version = processIdentifier.getVersion();
+
+        final ProcessExecutionStepRecord completedStepRecord1 = completedRecord.getStepByName("Triplegeo 1");
+        final ProcessExecutionStepRecord completedStepRecord2 = completedRecord.getStepByName("Triplegeo 2");
+        assertNotNull(completedStepRecord1);
+        assertNotNull(completedStepRecord2);
+
+        // Leave a new execution of the same revision as a shutdown would: the execution is RUNNING,
+        // the 1st step has completed, and the job of the 2nd step appears as running
+
+        final UUID workflowId = processToWorkflowMapper.computeWorkflowId(id, version);
+        final long executionId =
+            processRepository.createExecution(id, version, creatorId, workflowId).getId();
+        processRepository.updateExecution(
+            executionId, EnumProcessExecutionStatus.RUNNING, completedRecord.getStartedOn(), null, null);
+
+        ProcessExecutionStepRecord stepRecord1 = new ProcessExecutionStepRecord(completedStepRecord1.getKey());
+        stepRecord1.setName(completedStepRecord1.getName());
+        stepRecord1.setNodeName(completedStepRecord1.getNodeName());
+        stepRecord1.setOperation(completedStepRecord1.getOperation());
+        stepRecord1.setTool(completedStepRecord1.getTool());
+        stepRecord1.setJobExecutionId(completedStepRecord1.getJobExecutionId());
+        stepRecord1.setStartedOn(completedStepRecord1.getStartedOn());
+        stepRecord1.setStatus(EnumProcessExecutionStatus.RUNNING);
+        processRepository.createExecutionStep(executionId, stepRecord1);
+        stepRecord1.setStatus(EnumProcessExecutionStatus.COMPLETED);
+        stepRecord1.setCompletedOn(completedStepRecord1.getCompletedOn());
+        processRepository.updateExecutionStep(executionId, stepRecord1.getKey(), stepRecord1);
+
+        ProcessExecutionStepRecord stepRecord2 = new ProcessExecutionStepRecord(completedStepRecord2.getKey());
+        stepRecord2.setName(completedStepRecord2.getName());
+        stepRecord2.setNodeName(completedStepRecord2.getNodeName());
+        stepRecord2.setOperation(completedStepRecord2.getOperation());
+        stepRecord2.setTool(completedStepRecord2.getTool());
+        stepRecord2.setJobExecutionId(completedStepRecord2.getJobExecutionId());
+        stepRecord2.setStartedOn(completedStepRecord2.getStartedOn());
+        stepRecord2.setStatus(EnumProcessExecutionStatus.RUNNING);
+        processRepository.createExecutionStep(executionId, stepRecord2);
+
+        JobExecution jobExecution2 = jobExplorer.getJobExecution(completedStepRecord2.getJobExecutionId());
+        assertNotNull(jobExecution2);
+        jobExecution2.setStatus(BatchStatus.STARTED);
+        jobExecution2.setExitStatus(ExitStatus.UNKNOWN);
+        jobExecution2.setEndTime(null);
+        jobRepository.update(jobExecution2);
+
+        // Leave another execution that cannot be resumed: its step does not map to the definition
+
+        final ProcessDefinition definition1 = buildDefinition(procName + "-1", fixture, procName + "-1");
+        final ProcessRecord processRecord1 = processRepository.create(definition1, creatorId, false);
+        final long id1 = processRecord1.getId(), version1 = processRecord1.getVersion();
+        final long executionId1 = processRepository.createExecution(
+            id1, version1, creatorId, processToWorkflowMapper.computeWorkflowId(id1, version1)).getId();
+        processRepository.updateExecution(
+            executionId1, EnumProcessExecutionStatus.RUNNING, ZonedDateTime.now(), null, null);
+
+        ProcessExecutionStepRecord unmappedStepRecord = new ProcessExecutionStepRecord(999);
+        unmappedStepRecord.setName("Unmapped 1");
+        unmappedStepRecord.setNodeName("unmapped-1");
+        unmappedStepRecord.setOperation(stepRecord1.getOperation());
+        unmappedStepRecord.setTool(stepRecord1.getTool());
+        unmappedStepRecord.setStartedOn(ZonedDateTime.now());
+        unmappedStepRecord.setStatus(EnumProcessExecutionStatus.RUNNING);
+        processRepository.createExecutionStep(executionId1, unmappedStepRecord);
+
+        // Recover (as on startup of the application)
+
+        final ProcessRecoveryInfo info = recoverExecutions();
+        assertNotNull(info);
+        assertEquals(Collections.singletonList(executionId), info.getResumedExecutions());
+        assertEquals(Collections.singletonList(executionId1), info.getAbandonedExecutions());
+        assertEquals(1, info.getSalvagedSteps());
+        assertEquals(1, info.getRestartedSteps());
+        assertEquals(
+            Duration.between(stepRecord1.getStartedOn(), stepRecord1.getCompletedOn()).toMillis(),
+            info.getSalvagedMillis());
+
+        // The interrupted job is marked as failed (and is restarted as a new job execution)
+
+        assertEquals(BatchStatus.FAILED,
+            jobExplorer.getJobExecution(completedStepRecord2.getJobExecutionId()).getStatus());
+
+        // The execution that could not be resumed is stopped
+
+        ProcessExecutionRecord stoppedRecord = processRepository.findExecution(executionId1, true);
+        assertEquals(EnumProcessExecutionStatus.STOPPED, stoppedRecord.getStatus());
+        assertEquals(EnumProcessExecutionStatus.STOPPED, stoppedRecord.getStep(999).getStatus());
+
+        // The resumed execution completes: the completed step is not run again
+
+        ProcessExecutionRecord resumedRecord = awaitExecution(executionId);
+        assertEquals(EnumProcessExecutionStatus.COMPLETED, resumedRecord.getStatus());
+        assertEquals(2, resumedRecord.getSteps().size());
+
+        ProcessExecutionStepRecord resumedStepRecord1 = resumedRecord.getStepByName("Triplegeo 1");
+        assertEquals(EnumProcessExecutionStatus.COMPLETED, resumedStepRecord1.getStatus());
+        assertEquals(completedStepRecord1.getJobExecutionId(), resumedStepRecord1.getJobExecutionId());
+        assertEquals(completedStepRecord1.getCompletedOn(), resumedStepRecord1.getCompletedOn());
+        JobExecution jobExecution1 = jobExplorer.getJobExecution(completedStepRecord1.getJobExecutionId());
+        assertEquals(1, jobExplorer.getJobExecutions(jobExecution1.getJobInstance()).size());
+
+        ProcessExecutionStepRecord resumedStepRecord2 = resumedRecord.getStepByName("Triplegeo 2");
+        assertEquals(EnumProcessExecutionStatus.COMPLETED, resumedStepRecord2.getStatus());
+        assertNotEquals(completedStepRecord2.getJobExecutionId(), resumedStepRecord2.getJobExecutionId());
+    }
+
     private ProcessDefinition buildDefinition(
         String procName, final ReverseTransformFixture fixture, String resourceName)
     {
@@ -1880,4 +2064,10 @@ public class DefaultProcessOperatorTests
     {
         transformAndRegisterThenLink("links-1-a", interlinkFixtures.get("file-1-a"), user);
     }
+
+    @Test(timeout = 120 * 1000L)
+    public void test9R_resumeInterruptedExecution() throws Exception
+    {
+        resumeInterruptedExecution("resumed-1-1-a", transformFixtures.get("file-1-1-a"), user);
+    }
 }
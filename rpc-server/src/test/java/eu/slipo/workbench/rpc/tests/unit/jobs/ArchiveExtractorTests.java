@@ -0,0 +1,179 @@
+package eu.slipo.workbench.rpc.tests.unit.jobs;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.util.FileSystemUtils;
+
+import eu.slipo.workbench.rpc.jobs.tasklet.ArchiveExtractor;
+import eu.slipo.workbench.rpc.jobs.tasklet.ArchiveExtractor.Format;
+
+@RunWith(SpringRunner.class)
+@ActiveProfiles({ "testing" })
+public class ArchiveExtractorTests
+{
+    private static final byte[] A_CONTENT = "id,name\n1,Athens\n2,Patras\n".getBytes(StandardCharsets.UTF_8);
+
+    private static final byte[] B_CONTENT = "id,name\n3,Volos\n".getBytes(StandardCharsets.UTF_8);
+
+    private Path tempDir;
+
+    private Path targetDir;
+
+    @Before
+    public void setup() throws IOException
+    {
+        tempDir = Files.createTempDirectory("archive-extractor-");
+        targetDir = Files.createDirectory(tempDir.resolve("input"));
+    }
+
+    @After
+    public void teardown() throws IOException
+    {
+        FileSystemUtils.deleteRecursively(tempDir.toFile());
+    }
+
+    private Path createZip(String name, String... entryNames) throws IOException
+    {
+        Path path = tempDir.resolve(name);
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(path))) {
+            for (int i = 0; i < entryNames.length; ++i) {
+                out.putNextEntry(new ZipEntry(entryNames[i]));
+                out.write(i % 2 == 0? A_CONTENT : B_CONTENT);
+                out.closeEntry();
+            }
+        }
+        return path;
+    }
+
+    private void writeTar(OutputStream out) throws IOException
+    {
+        try (TarArchiveOutputStream tar = new TarArchiveOutputStream(out)) {
+            tar.putArchiveEntry(new TarArchiveEntry("data/"));
+            tar.closeArchiveEntry();
+            TarArchiveEntry entry = new TarArchiveEntry("data/a.csv");
+            entry.setSize(A_CONTENT.length);
+            tar.putArchiveEntry(entry);
+            tar.write(A_CONTENT);
+            tar.closeArchiveEntry();
+            entry = new TarArchiveEntry("data/b.csv");
+            entry.setSize(B_CONTENT.length);
+            tar.putArchiveEntry(entry);
+            tar.write(B_CONTENT);
+            tar.closeArchiveEntry();
+        }
+    }
+
+    @Test
+    public void testDetect() throws Exception
+    {
+        Path zip = createZip("1.zip", "a.csv");
+        assertEquals(Format.ZIP, ArchiveExtractor.detect(zip));
+
+        // The format is detected by content, not by name
+        Path tgz = tempDir.resolve("1.bin");
+        writeTar(new GzipCompressorOutputStream(Files.newOutputStream(tgz)));
+        assertEquals(Format.TAR_GZIP, ArchiveExtractor.detect(tgz));
+
+        Path gz = tempDir.resolve("a.csv.gz");
+        try (OutputStream out = new GzipCompressorOutputStream(Files.newOutputStream(gz))) {
+            out.write(A_CONTENT);
+        }
+        assertEquals(Format.GZIP, ArchiveExtractor.detect(gz));
+
+        Path bz2 = tempDir.resolve("a.csv.bz2");
+        try (OutputStream out = new BZip2CompressorOutputStream(Files.newOutputStream(bz2))) {
+            out.write(A_CONTENT);
+        }
+        assertEquals(Format.BZIP2, ArchiveExtractor.detect(bz2));
+
+        Path plain = tempDir.resolve("a.csv");
+        Files.write(plain, A_CONTENT);
+        assertNull(ArchiveExtractor.detect(plain));
+    }
+
+    @Test
+    public void testExtractZipInParallel() throws Exception
+    {
+        Path zip = createZip("1.zip", "x/a.csv", "b.csv", "y/z/c.csv", "d.csv");
+
+        ArchiveExtractor extractor = ArchiveExtractor.builder().parallelism(3).build();
+        List<String> names = extractor.extract(zip, Format.ZIP, targetDir);
+
+        // Entries are flattened, and reported in archive order
+        assertEquals(Arrays.asList("a.csv", "b.csv", "c.csv", "d.csv"), names);
+        assertArrayEquals(A_CONTENT, Files.readAllBytes(targetDir.resolve("a.csv")));
+        assertArrayEquals(B_CONTENT, Files.readAllBytes(targetDir.resolve("b.csv")));
+        assertArrayEquals(A_CONTENT, Files.readAllBytes(targetDir.resolve("c.csv")));
+        assertArrayEquals(B_CONTENT, Files.readAllBytes(targetDir.resolve("d.csv")));
+    }
+
+    @Test
+    public void testExtractTarBzip2() throws Exception
+    {
+        Path tbz = tempDir.resolve("1.tar.bz2");
+        writeTar(new BZip2CompressorOutputStream(Files.newOutputStream(tbz)));
+        assertEquals(Format.TAR_BZIP2, ArchiveExtractor.detect(tbz));
+
+        List<String> names = ArchiveExtractor.builder().build().extract(tbz, Format.TAR_BZIP2, targetDir);
+        assertEquals(new HashSet<>(Arrays.asList("a.csv", "b.csv")), new HashSet<>(names));
+        assertArrayEquals(A_CONTENT, Files.readAllBytes(targetDir.resolve("a.csv")));
+        assertArrayEquals(B_CONTENT, Files.readAllBytes(targetDir.resolve("b.csv")));
+    }
+
+    @Test
+    public void testExtractGzip() throws Exception
+    {
+        Path gz = tempDir.resolve("a.csv.gz");
+        try (OutputStream out = new GzipCompressorOutputStream(Files.newOutputStream(gz))) {
+            out.write(A_CONTENT);
+        }
+
+        List<String> names = ArchiveExtractor.builder().build().extract(gz, Format.GZIP, targetDir);
+        assertEquals(Arrays.asList("a.csv"), names);
+        assertArrayEquals(A_CONTENT, Files.readAllBytes(targetDir.resolve("a.csv")));
+    }
+
+    @Test(expected = ArchiveExtractor.LimitExceededException.class)
+    public void testExtractExceedingLimit() throws Exception
+    {
+        // A highly compressible input expanding well above our limit
+        Path gz = tempDir.resolve("bomb.gz");
+        try (OutputStream out = new GzipCompressorOutputStream(Files.newOutputStream(gz))) {
+            byte[] zeros = new byte[64 * 1024];
+            for (int i = 0; i < 64; ++i)
+                out.write(zeros);
+        }
+
+        ArchiveExtractor extractor = ArchiveExtractor.builder().maxExtractedSize(1024L * 1024L).build();
+        extractor.extract(gz, Format.GZIP, targetDir);
+    }
+
+    @Test(expected = FileAlreadyExistsException.class)
+    public void testExtractZipWithDuplicateNames() throws Exception
+    {
+        Path zip = createZip("1.zip", "x/a.csv", "y/a.csv");
+        ArchiveExtractor.builder().parallelism(2).build().extract(zip, Format.ZIP, targetDir);
+    }
+}
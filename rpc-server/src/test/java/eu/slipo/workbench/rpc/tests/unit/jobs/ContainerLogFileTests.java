@@ -0,0 +1,115 @@
+package eu.slipo.workbench.rpc.tests.unit.jobs;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.util.FileSystemUtils;
+
+import eu.slipo.workbench.rpc.jobs.tasklet.docker.ContainerLogFile;
+
+@RunWith(SpringRunner.class)
+@ActiveProfiles({ "testing" })
+public class ContainerLogFileTests
+{
+    private Path tempDir;
+
+    @Before
+    public void setup() throws IOException
+    {
+        tempDir = Files.createTempDirectory("container-logs-");
+    }
+
+    @After
+    public void teardown() throws IOException
+    {
+        FileSystemUtils.deleteRecursively(tempDir.toFile());
+    }
+
+    private static String line(int i)
+    {
+        return String.format("line %04d%n", i);
+    }
+
+    private static String lines(int start, int end)
+    {
+        StringBuilder b = new StringBuilder();
+        for (int i = start; i < end; ++i)
+            b.append(line(i));
+        return b.toString();
+    }
+
+    @Test
+    public void testWriteWithoutRotation() throws IOException
+    {
+        ContainerLogFile logFile = new ContainerLogFile(tempDir.resolve("output.log"), 1024, 2);
+
+        try (OutputStream out = logFile.openOutputStream()) {
+            out.write(lines(0, 10).getBytes(StandardCharsets.UTF_8));
+        }
+
+        assertEquals(1, logFile.segments().size());
+        assertEquals(lines(0, 10).length(), logFile.size());
+        assertEquals(lines(0, 10), new String(logFile.read(0, 4096), StandardCharsets.UTF_8));
+        assertEquals(lines(8, 10), logFile.tailAsString(line(0).length() * 2));
+    }
+
+    @Test
+    public void testRotateAndDiscardOldest() throws IOException
+    {
+        final int lineSize = line(0).length();
+        final int linesPerSegment = 10;
+
+        ContainerLogFile logFile =
+            new ContainerLogFile(tempDir.resolve("output.log"), lineSize * linesPerSegment, 2);
+
+        // Write 45 lines (i.e. 5 segments), in chunks not aligned to segment boundaries
+        try (OutputStream out = logFile.openOutputStream()) {
+            for (int i = 0; i < 45; i += 3)
+                out.write(lines(i, Math.min(i + 3, 45)).getBytes(StandardCharsets.UTF_8));
+        }
+
+        // Only the 2 backups and the current segment are retained
+        assertEquals(3, logFile.segments().size());
+        assertEquals(lineSize * 25L, logFile.size());
+
+        String retained = lines(20, 45);
+        assertEquals(retained, new String(logFile.read(0, 1 << 16), StandardCharsets.UTF_8));
+
+        // Read a range spanning across segments
+        assertEquals(lines(28, 33),
+            new String(logFile.read(lineSize * 8, lineSize * 5), StandardCharsets.UTF_8));
+
+        // Read past the end
+        assertEquals(0, logFile.read(lineSize * 25, 100).length);
+
+        assertEquals(lines(40, 45), logFile.tailAsString(lineSize * 5));
+    }
+
+    @Test
+    public void testReopenDiscardsPreviousContent() throws IOException
+    {
+        ContainerLogFile logFile = new ContainerLogFile(tempDir.resolve("output.log"), 16, 1);
+
+        try (OutputStream out = logFile.openOutputStream()) {
+            out.write(lines(0, 10).getBytes(StandardCharsets.UTF_8));
+        }
+        assertEquals(2, logFile.segments().size());
+
+        try (OutputStream out = logFile.openOutputStream()) {
+            out.write("hello".getBytes(StandardCharsets.UTF_8));
+        }
+        assertEquals(1, logFile.segments().size());
+        assertEquals("hello", logFile.tailAsString(100));
+    }
+}
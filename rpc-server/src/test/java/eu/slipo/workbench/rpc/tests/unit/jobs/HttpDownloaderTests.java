@@ -0,0 +1,442 @@
+package eu.slipo.workbench.rpc.tests.unit.jobs;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.util.FileSystemUtils;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import eu.slipo.workbench.rpc.jobs.download.HttpDownloader;
+
+@RunWith(SpringRunner.class)
+@ActiveProfiles({ "testing" })
+public class HttpDownloaderTests
+{
+    private static final Pattern RANGE_PATTERN = Pattern.compile("bytes=(\\d+)-(\\d*)");
+
+    /**
+     * An embedded HTTP server serving a single resource, with support for range requests
+     * and for injecting failures.
+     */
+    private static class Server
+    {
+        final HttpServer httpServer;
+
+        final ExecutorService executor = Executors.newCachedThreadPool();
+
+        volatile byte[] content;
+
+        volatile String etag = "\"v1\"";
+
+        /**
+         * A flag that indicates if range requests are honored
+         */
+        volatile boolean honorRanges = true;
+
+        /**
+         * The number of (upcoming) GET requests to be aborted
+         */
+        final AtomicInteger failures = new AtomicInteger();
+
+        /**
+         * The number of bytes sent before aborting a failed request
+         */
+        volatile int failAfter;
+
+        /**
+         * A latch that stalls the response to the request for the first range (after
+         * {@link #stallAfter} bytes are sent), until released
+         */
+        volatile CountDownLatch stall;
+
+        volatile int stallAfter;
+
+        /**
+         * The value of the <tt>Range</tt> header for each GET request (or "-" for none)
+         */
+        final List<String> ranges = new CopyOnWriteArrayList<>();
+
+        Server() throws IOException
+        {
+            httpServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+            httpServer.createContext("/data.bin", this::handle);
+            httpServer.setExecutor(executor);
+            httpServer.start();
+        }
+
+        URL url() throws IOException
+        {
+            return new URL(String.format("http://127.0.0.1:%d/data.bin", httpServer.getAddress().getPort()));
+        }
+
+        void stop()
+        {
+            httpServer.stop(0);
+            executor.shutdownNow();
+        }
+
+        private void handle(HttpExchange exchange) throws IOException
+        {
+            final byte[] data = content;
+            exchange.getResponseHeaders().set("ETag", etag);
+            exchange.getResponseHeaders().set("Accept-Ranges", "bytes");
+
+            if (exchange.getRequestMethod().equals("HEAD")) {
+                exchange.getResponseHeaders().set("Content-Length", String.valueOf(data.length));
+                exchange.sendResponseHeaders(200, -1);
+                exchange.close();
+                return;
+            }
+
+            String range = exchange.getRequestHeaders().getFirst("Range");
+            String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+            ranges.add(range == null? "-" : range);
+
+            int from = 0, to = data.length; // exclusive
+            int status = 200;
+            if (range != null && honorRanges && (ifRange == null || ifRange.equals(etag))) {
+                Matcher m = RANGE_PATTERN.matcher(range);
+                assertTrue(m.matches());
+                from = Integer.parseInt(m.group(1));
+                to = m.group(2).isEmpty()? data.length : (Integer.parseInt(m.group(2)) + 1);
+                status = 206;
+                exchange.getResponseHeaders().set(
+                    "Content-Range", String.format("bytes %d-%d/%d", from, to - 1, data.length));
+            }
+
+            exchange.sendResponseHeaders(status, to - from);
+            try (OutputStream out = exchange.getResponseBody()) {
+                if (failures.getAndDecrement() > 0) {
+                    // Send a part of the body, and abort
+                    out.write(data, from, Math.min(failAfter, to - from));
+                    out.flush();
+                    throw new IOException("Aborting response");
+                }
+                final CountDownLatch stall = this.stall;
+                if (stall != null && range != null && from == 0) {
+                    // Send a part of the body, and wait to be released
+                    out.write(data, from, stallAfter);
+                    out.flush();
+                    try {
+                        stall.await();
+                    } catch (InterruptedException ex) {
+                        throw new IOException("Interrupted while stalled");
+                    }
+                    from += stallAfter;
+                }
+                out.write(data, from, to - from);
+            }
+        }
+    }
+
+    private Server server;
+
+    private Path dir;
+
+    private byte[] content;
+
+    private String expectedChecksum;
+
+    @Before
+    public void setup() throws Exception
+    {
+        content = new byte[1024 * 1024 + 17];
+        new Random(42L).nextBytes(content);
+        expectedChecksum = DigestUtils.sha256Hex(content);
+
+        server = new Server();
+        server.content = content;
+
+        dir = Files.createTempDirectory("download-");
+    }
+
+    @After
+    public void teardown() throws Exception
+    {
+        server.stop();
+        FileSystemUtils.deleteRecursively(dir.toFile());
+    }
+
+    private HttpDownloader.Builder downloaderBuilder()
+    {
+        return HttpDownloader.builder()
+            .parallelRanges(1, Long.MAX_VALUE)
+            .retryBackoff(0L)
+            .readTimeout(5000);
+    }
+
+    private void assertDownloaded(Path target, HttpDownloader.Result result) throws IOException
+    {
+        assertEquals(expectedChecksum, result.getSha256());
+        assertEquals(content.length, result.getSize());
+        assertArrayEquals(content, Files.readAllBytes(target));
+        assertFalse(Files.exists(dir.resolve("data.bin" + HttpDownloader.PARTIAL_SUFFIX)));
+        assertFalse(Files.exists(dir.resolve("data.bin" + HttpDownloader.STATE_SUFFIX)));
+    }
+
+    @Test(timeout = 10 * 1000L)
+    public void testDownload() throws Exception
+    {
+        Path target = dir.resolve("data.bin");
+        HttpDownloader.Result result = downloaderBuilder().build().download(server.url(), target);
+
+        assertDownloaded(target, result);
+        assertEquals(1, result.getNumberOfRanges());
+        assertEquals(0L, result.getResumedBytes());
+        assertEquals("\"v1\"", result.getEtag());
+        assertEquals(1, server.ranges.size());
+        assertEquals("-", server.ranges.get(0));
+    }
+
+    @Test(timeout = 10 * 1000L)
+    public void testDownloadInParallelRanges() throws Exception
+    {
+        Path target = dir.resolve("data.bin");
+        HttpDownloader downloader = downloaderBuilder()
+            .parallelRanges(4, 1024L)
+            .build();
+        HttpDownloader.Result result = downloader.download(server.url(), target);
+
+        assertDownloaded(target, result);
+        assertEquals(4, result.getNumberOfRanges());
+        assertEquals(4, server.ranges.size());
+        assertTrue(server.ranges.contains("bytes=0-262148"));
+    }
+
+    @Test(timeout = 10 * 1000L)
+    public void testResumeOnRetry() throws Exception
+    {
+        server.failures.set(1);
+        server.failAfter = 300 * 1000;
+
+        Path target = dir.resolve("data.bin");
+        HttpDownloader downloader = downloaderBuilder().maxAttempts(2).build();
+        HttpDownloader.Result result = downloader.download(server.url(), target);
+
+        assertDownloaded(target, result);
+        assertTrue(result.getResumedBytes() > 0);
+        assertEquals(2, server.ranges.size());
+        assertEquals("bytes=" + result.getResumedBytes() + "-", server.ranges.get(1));
+    }
+
+    @Test(timeout = 10 * 1000L)
+    public void testResumeFromPartialFile() throws Exception
+    {
+        server.failures.set(1);
+        server.failAfter = 300 * 1000;
+
+        Path target = dir.resolve("data.bin");
+        HttpDownloader downloader = downloaderBuilder().maxAttempts(1).build();
+
+        // The first download fails, and leaves a partial file behind
+
+        try {
+            downloader.download(server.url(), target);
+            fail("Expected the download to fail");
+        } catch (IOException ex) {
+            // expected
+        }
+        assertFalse(Files.exists(target));
+        Path partial = dir.resolve("data.bin" + HttpDownloader.PARTIAL_SUFFIX);
+        assertTrue(Files.exists(partial));
+        long partialSize = Files.size(partial);
+        assertTrue(partialSize > 0);
+
+        // A second download (e.g. a restart of the step) resumes from the partial file
+
+        HttpDownloader.Result result = downloader.download(server.url(), target);
+        assertDownloaded(target, result);
+        assertEquals(partialSize, result.getResumedBytes());
+    }
+
+    @Test(timeout = 10 * 1000L)
+    public void testResumeParallelRangesOnRetry() throws Exception
+    {
+        server.failures.set(2);
+        server.failAfter = 100 * 1000;
+
+        Path target = dir.resolve("data.bin");
+        HttpDownloader downloader = downloaderBuilder()
+            .parallelRanges(4, 1024L)
+            .maxAttempts(2)
+            .build();
+        HttpDownloader.Result result = downloader.download(server.url(), target);
+
+        assertDownloaded(target, result);
+        assertEquals(4, result.getNumberOfRanges());
+        assertTrue(result.getResumedBytes() > 0);
+    }
+
+    @Test(timeout = 10 * 1000L)
+    public void testRestartIfPartialFileIsMissing() throws Exception
+    {
+        server.failures.set(4);
+        server.failAfter = 100 * 1000;
+
+        final Path target = dir.resolve("data.bin");
+        final Path partial = dir.resolve("data.bin" + HttpDownloader.PARTIAL_SUFFIX);
+        final Path stateFile = dir.resolve("data.bin" + HttpDownloader.STATE_SUFFIX);
+        final HttpDownloader downloader = downloaderBuilder()
+            .parallelRanges(4, 1024L)
+            .maxAttempts(1)
+            .build();
+        try {
+            downloader.download(server.url(), target);
+            fail("Expected the download to fail");
+        } catch (IOException ex) {
+            // expected
+        }
+        assertTrue(Files.exists(stateFile));
+
+        // The partial file is lost, but the state (recording progress of ranges) is kept
+
+        Files.delete(partial);
+
+        HttpDownloader.Result result = downloader.download(server.url(), target);
+        assertDownloaded(target, result);
+        assertEquals(0L, result.getResumedBytes());
+    }
+
+    @Test(timeout = 10 * 1000L)
+    public void testRestartIfResourceHasChanged() throws Exception
+    {
+        server.failures.set(1);
+        server.failAfter = 300 * 1000;
+
+        Path target = dir.resolve("data.bin");
+        HttpDownloader downloader = downloaderBuilder().maxAttempts(1).build();
+        try {
+            downloader.download(server.url(), target);
+            fail("Expected the download to fail");
+        } catch (IOException ex) {
+            // expected
+        }
+
+        // The resource changes: the partial file must be discarded
+
+        content = content.clone();
+        content[0] ^= 0xff;
+        expectedChecksum = DigestUtils.sha256Hex(content);
+        server.content = content;
+        server.etag = "\"v2\"";
+
+        HttpDownloader.Result result = downloader.download(server.url(), target);
+        assertDownloaded(target, result);
+        assertEquals(0L, result.getResumedBytes());
+        assertEquals("-", server.ranges.get(1));
+    }
+
+    @Test(timeout = 10 * 1000L)
+    public void testRestartIfServerIgnoresRange() throws Exception
+    {
+        server.failures.set(1);
+        server.failAfter = 300 * 1000;
+        server.honorRanges = false;
+
+        Path target = dir.resolve("data.bin");
+        HttpDownloader downloader = downloaderBuilder().maxAttempts(2).build();
+        HttpDownloader.Result result = downloader.download(server.url(), target);
+
+        assertDownloaded(target, result);
+        assertEquals(0L, result.getResumedBytes());
+        assertTrue(server.ranges.get(1).startsWith("bytes="));
+    }
+
+    private static long completedBytes(Path stateFile) throws IOException
+    {
+        if (!Files.exists(stateFile))
+            return 0L;
+        Properties p = new Properties();
+        try (InputStream in = Files.newInputStream(stateFile)) {
+            p.load(in);
+        }
+        long n = 0;
+        for (int i = 0; i < Integer.parseInt(p.getProperty("ranges")); ++i) {
+            String[] r = p.getProperty("range." + i).split(",");
+            long start = Long.parseLong(r[0]), end = Long.parseLong(r[1]), done = Long.parseLong(r[2]);
+            if (start + done == end)
+                n += done;
+        }
+        return n;
+    }
+
+    @Test(timeout = 10 * 1000L)
+    public void testCheckpointProgressOfRanges() throws Exception
+    {
+        server.stall = new CountDownLatch(1);
+        server.stallAfter = 1000;
+
+        final Path target = dir.resolve("data.bin");
+        final Path partial = dir.resolve("data.bin" + HttpDownloader.PARTIAL_SUFFIX);
+        final Path stateFile = dir.resolve("data.bin" + HttpDownloader.STATE_SUFFIX);
+        final HttpDownloader downloader = downloaderBuilder()
+            .parallelRanges(4, 1024L)
+            .maxAttempts(1)
+            .build();
+
+        final long rangeSize = (content.length + 3) / 4;
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<HttpDownloader.Result> future =
+                executor.submit(() -> downloader.download(server.url(), target));
+
+            // While the first range is stalled, the other (completed) ranges are checkpointed
+
+            while (completedBytes(stateFile) < content.length - rangeSize)
+                Thread.sleep(20L);
+            assertFalse(future.isDone());
+
+            // Simulate a killed process: keep a copy of the partial download as it is now
+
+            Path dir1 = Files.createDirectory(dir.resolve("copy"));
+            Files.copy(stateFile, dir1.resolve(stateFile.getFileName()));
+            Files.copy(partial, dir1.resolve(partial.getFileName()));
+
+            server.stall.countDown();
+            assertDownloaded(target, future.get());
+
+            // A new download resumes from the checkpointed ranges
+
+            server.stall = null;
+            Path target1 = dir1.resolve("data.bin");
+            Files.move(target, dir.resolve("data.bin.1"), StandardCopyOption.REPLACE_EXISTING);
+            HttpDownloader.Result result = downloader.download(server.url(), target1);
+
+            assertEquals(expectedChecksum, result.getSha256());
+            assertArrayEquals(content, Files.readAllBytes(target1));
+            assertTrue(result.getResumedBytes() >= content.length - rangeSize);
+        } finally {
+            server.stall = null;
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package eu.slipo.workbench.rpc.tests.unit.jobs;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.util.FileSystemUtils;
+
+import eu.slipo.workbench.rpc.jobs.partition.CollectPartitionOutputTasklet;
+import eu.slipo.workbench.rpc.jobs.partition.InputFilesPartitioner;
+
+@RunWith(SpringRunner.class)
+@ActiveProfiles({ "testing" })
+public class InputFilesPartitionerTests
+{
+    private Path tempDir;
+
+    private Path inputDir;
+
+    private Path partitionsDir;
+
+    @Before
+    public void setup() throws IOException
+    {
+        tempDir = Files.createTempDirectory("partitions-");
+        inputDir = Files.createDirectory(tempDir.resolve("input"));
+        partitionsDir = tempDir.resolve("partitions");
+    }
+
+    @After
+    public void teardown() throws IOException
+    {
+        FileSystemUtils.deleteRecursively(tempDir.toFile());
+    }
+
+    private void createInput(String name, int size) throws IOException
+    {
+        Files.write(inputDir.resolve(name), new byte[size]);
+    }
+
+    private static long loadOf(Path dir, List<String> names)
+    {
+        return names.stream().mapToLong(name -> dir.resolve(name).toFile().length()).sum();
+    }
+
+    @Test
+    public void testAssignBalancesBySize() throws IOException
+    {
+        createInput("a.csv", 700);
+        createInput("b.csv", 500);
+        createInput("c.csv", 300);
+        createInput("d.csv", 200);
+        createInput("e.csv", 200);
+
+        List<String> names = Arrays.asList("a.csv", "b.csv", "c.csv", "d.csv", "e.csv");
+        InputFilesPartitioner partitioner = new InputFilesPartitioner(inputDir, names, partitionsDir, 4);
+
+        List<List<String>> partitions = partitioner.assign(2);
+        assertEquals(2, partitions.size());
+
+        Set<String> assigned = partitions.stream()
+            .flatMap(List::stream).collect(Collectors.toSet());
+        assertEquals(new HashSet<>(names), assigned);
+        assertEquals(names.size(), partitions.stream().mapToInt(List::size).sum());
+
+        long load0 = loadOf(inputDir, partitions.get(0));
+        long load1 = loadOf(inputDir, partitions.get(1));
+        // Largest-first: 700+200 vs 500+300+200
+        assertEquals(1000L, Math.max(load0, load1));
+        assertEquals(900L, Math.min(load0, load1));
+    }
+
+    @Test
+    public void testPartitionIsLimitedByNumberOfInputs() throws IOException
+    {
+        createInput("a.csv", 10);
+        createInput("b.csv", 10);
+
+        InputFilesPartitioner partitioner =
+            new InputFilesPartitioner(inputDir, Arrays.asList("a.csv", "b.csv"), partitionsDir, 8);
+
+        Map<String, ExecutionContext> contexts = partitioner.partition(8);
+        assertEquals(2, contexts.size());
+
+        for (int i = 0; i < 2; ++i) {
+            ExecutionContext context = contexts.get(InputFilesPartitioner.partitionName(i));
+            assertNotNull(context);
+            assertEquals(i, context.getInt(InputFilesPartitioner.Keys.PARTITION_INDEX));
+            assertEquals(1, ((List<?>) context.get(InputFilesPartitioner.Keys.INPUT_FILES)).size());
+            Path outputDir = Paths.get(context.getString(InputFilesPartitioner.Keys.OUTPUT_DIR));
+            assertTrue(Files.isDirectory(outputDir));
+            assertTrue(outputDir.startsWith(partitionsDir));
+        }
+    }
+
+    @Test
+    public void testCollectPartitionOutput() throws Exception
+    {
+        createInput("a.csv", 10);
+        createInput("b.csv", 10);
+
+        InputFilesPartitioner partitioner =
+            new InputFilesPartitioner(inputDir, Arrays.asList("a.csv", "b.csv"), partitionsDir, 2);
+        Map<String, ExecutionContext> contexts = partitioner.partition(2);
+
+        for (ExecutionContext context: contexts.values()) {
+            Path outputDir = Paths.get(context.getString(InputFilesPartitioner.Keys.OUTPUT_DIR));
+            @SuppressWarnings("unchecked")
+            String inputName = ((List<String>) context.get(InputFilesPartitioner.Keys.INPUT_FILES)).get(0);
+            String name = inputName.replace(".csv", "");
+            Files.write(outputDir.resolve(name + ".nt"), Collections.singletonList(name));
+            Files.write(outputDir.resolve("classification.nt"), Collections.singletonList("classification"));
+        }
+
+        Path outputDir = tempDir.resolve("output");
+        CollectPartitionOutputTasklet tasklet = CollectPartitionOutputTasklet.builder()
+            .partitionsDirectory(partitionsDir)
+            .outputDirectory(outputDir)
+            .shared("classification.nt")
+            .build();
+
+        tasklet.execute(null, null);
+        // A second execution should be a no-op
+        tasklet.execute(null, null);
+
+        Set<String> collected = null;
+        try (Stream<Path> paths = Files.list(outputDir)) {
+            collected = paths.map(p -> p.getFileName().toString()).collect(Collectors.toSet());
+        }
+        assertEquals(new HashSet<>(Arrays.asList("a.nt", "b.nt", "classification.nt")), collected);
+        assertEquals(Collections.singletonList("a"), Files.readAllLines(outputDir.resolve("a.nt")));
+    }
+}
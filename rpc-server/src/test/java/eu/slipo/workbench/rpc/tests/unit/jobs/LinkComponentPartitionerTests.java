@@ -0,0 +1,327 @@
+package eu.slipo.workbench.rpc.tests.unit.jobs;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.util.FileSystemUtils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import eu.slipo.workbench.rpc.jobs.partition.InputFilesPartitioner;
+import eu.slipo.workbench.rpc.jobs.partition.JsonStatisticsMerger;
+import eu.slipo.workbench.rpc.jobs.partition.LinkComponentPartitioner;
+import eu.slipo.workbench.rpc.jobs.partition.MergePartitionOutputTasklet;
+import eu.slipo.workbench.rpc.jobs.partition.NTriples;
+import eu.slipo.workbench.rpc.jobs.partition.SharedResourcesMerger;
+
+@RunWith(SpringRunner.class)
+@ActiveProfiles({ "testing" })
+public class LinkComponentPartitionerTests
+{
+    private static final String HAS_GEOMETRY = "<http://www.opengis.net/ont/geosparql#hasGeometry>";
+
+    private static final String AS_WKT = "<http://www.opengis.net/ont/geosparql#asWKT>";
+
+    private static final String NAME = "<http://slipo.eu/def#name>";
+
+    private static final String CATEGORY = "<http://slipo.eu/def#category>";
+
+    private static final String SAME_AS = "<http://www.w3.org/2002/07/owl#sameAs>";
+
+    private static final String FUSED = "<http://slipo.eu/def#fused>";
+
+    private static final String REMAINING = "<http://slipo.eu/def#remaining>";
+
+    private static final int NUMBER_OF_POIS = 300;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private Path tempDir;
+
+    private Path inputDir;
+
+    private Path partitionsDir;
+
+    @Before
+    public void setup() throws IOException
+    {
+        tempDir = Files.createTempDirectory("link-components-");
+        inputDir = Files.createDirectory(tempDir.resolve("input"));
+        partitionsDir = tempDir.resolve("partitions");
+    }
+
+    @After
+    public void teardown() throws IOException
+    {
+        FileSystemUtils.deleteRecursively(tempDir.toFile());
+    }
+
+    private static void writePois(Path path, String prefix, int n) throws IOException
+    {
+        try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            writer.write(String.format("<%s/category/0> %s \"category 0\" .%n", prefix, NAME));
+            writer.write(String.format("<%s/category/1> %s \"category 1\" .%n", prefix, NAME));
+            for (int i = 0; i < n; ++i) {
+                final String poi = String.format("<%s/poi/%d>", prefix, i);
+                final String geometry = String.format("<%s/geometry/%d>", prefix, i);
+                writer.write(String.format("%s %s <http://slipo.eu/def#POI> .%n", poi, NTriples.RDF_TYPE));
+                writer.write(String.format("%s %s \"%s %d\" .%n", poi, NAME, prefix, i));
+                writer.write(String.format("%s %s <%s/category/%d> .%n", poi, CATEGORY, prefix, i % 2));
+                writer.write(String.format("%s %s %s .%n", poi, HAS_GEOMETRY, geometry));
+                writer.write(String.format("%s %s \"POINT (%d %d)\" .%n", geometry, AS_WKT, i, i));
+            }
+        }
+    }
+
+    /**
+     * A fake fusion tool (standing for a FAGI container). For every link, a fused triple is
+     * produced from the names and geometries of both entities; a link to an unknown entity is
+     * to be reviewed. Every unlinked right entity is output as remaining.
+     */
+    private void fuse(Path leftPath, Path rightPath, Path linksPath, Path outputDir) throws IOException
+    {
+        final Map<String, String> left = readNamesWithGeometry(leftPath);
+        final Map<String, String> right = readNamesWithGeometry(rightPath);
+
+        final List<String> fused = new ArrayList<>();
+        final List<String> review = new ArrayList<>();
+        final Set<String> linked = new HashSet<>();
+        for (String line: Files.readAllLines(linksPath, StandardCharsets.UTF_8)) {
+            final NTriples.Triple link = NTriples.parse(line);
+            if (link == null)
+                continue;
+            final String l = left.get(link.subject());
+            final String r = right.get(link.object());
+            if (l != null && r != null) {
+                fused.add(String.format("%s %s \"%s|%s\" .", link.subject(), FUSED, l, r));
+                linked.add(link.object());
+            } else {
+                review.add(line);
+            }
+        }
+
+        final List<String> remaining = new ArrayList<>();
+        for (Map.Entry<String, String> e: right.entrySet()) {
+            if (!linked.contains(e.getKey()))
+                remaining.add(String.format("%s %s \"%s\" .", e.getKey(), REMAINING, e.getValue()));
+        }
+
+        // The (shared) categories are also output, along with the remaining entities
+        final int remainingCount = remaining.size();
+        for (String line: Files.readAllLines(rightPath, StandardCharsets.UTF_8)) {
+            if (line.startsWith("<http://right/category/"))
+                remaining.add(line);
+        }
+
+        Files.createDirectories(outputDir);
+        Files.write(outputDir.resolve("fused.nt"), fused, StandardCharsets.UTF_8);
+        Files.write(outputDir.resolve("remaining.nt"), remaining, StandardCharsets.UTF_8);
+        Files.write(outputDir.resolve("review.nt"), review, StandardCharsets.UTF_8);
+
+        ObjectNode stats = objectMapper.createObjectNode();
+        stats.put("fusedCount", fused.size());
+        stats.put("remainingCount", remainingCount);
+        stats.putObject("links").put("count", fused.size() + review.size()).put("label", "Links");
+        stats.put("fusedRatio", fused.isEmpty()? 0.0 : ((double) fused.size()) / (fused.size() + review.size()));
+        objectMapper.writeValue(outputDir.resolve("stats.json").toFile(), stats);
+    }
+
+    /**
+     * Read the name of every POI along with its geometry (which must be found in the same input)
+     */
+    private static Map<String, String> readNamesWithGeometry(Path path) throws IOException
+    {
+        final Map<String, String> names = new HashMap<>();
+        final Map<String, String> geometries = new HashMap<>();
+        final Map<String, String> wkts = new HashMap<>();
+        final Set<String> pois = new HashSet<>();
+        for (String line: Files.readAllLines(path, StandardCharsets.UTF_8)) {
+            final NTriples.Triple triple = NTriples.parse(line);
+            if (triple == null)
+                continue;
+            if (triple.predicate().equals(NTriples.RDF_TYPE))
+                pois.add(triple.subject());
+            else if (triple.predicate().equals(NAME))
+                names.put(triple.subject(), triple.literalValue());
+            else if (triple.predicate().equals(HAS_GEOMETRY))
+                geometries.put(triple.subject(), triple.object());
+            else if (triple.predicate().equals(AS_WKT))
+                wkts.put(triple.subject(), triple.literalValue());
+        }
+
+        final Map<String, String> result = new HashMap<>();
+        for (String poi: pois) {
+            final String wkt = wkts.get(geometries.get(poi));
+            assertNotNull("Expected the geometry of " + poi + " in the same partition", wkt);
+            result.put(poi, names.get(poi) + "@" + wkt);
+        }
+        return result;
+    }
+
+    private static Set<String> readLines(Path path) throws IOException
+    {
+        return new HashSet<>(Files.readAllLines(path, StandardCharsets.UTF_8));
+    }
+
+    private static List<String> readSortedLines(Path path) throws IOException
+    {
+        final List<String> lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+        Collections.sort(lines);
+        return lines;
+    }
+
+    @Test(timeout = 20 * 1000L)
+    public void testPartitionedFusionEqualsSingle() throws Exception
+    {
+        final Path leftPath = inputDir.resolve("left.nt");
+        final Path rightPath = inputDir.resolve("right.nt");
+        final Path linksPath = inputDir.resolve("links.nt");
+
+        writePois(leftPath, "http://left", NUMBER_OF_POIS);
+        writePois(rightPath, "http://right", NUMBER_OF_POIS);
+
+        // Link every other POI; some links form larger components (a left entity linked to 2 right
+        // entities, and a right entity linked to 2 left ones), and a few point to unknown entities
+
+        try (BufferedWriter writer = Files.newBufferedWriter(linksPath, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < NUMBER_OF_POIS; i += 2) {
+                writer.write(String.format("<http://left/poi/%d> %s <http://right/poi/%d> .%n", i, SAME_AS, i));
+                if (i % 10 == 0)
+                    writer.write(String.format("<http://left/poi/%d> %s <http://right/poi/%d> .%n", i, SAME_AS, i + 1));
+                if (i % 10 == 4)
+                    writer.write(String.format("<http://left/poi/%d> %s <http://right/poi/%d> .%n", i + 1, SAME_AS, i));
+                if (i % 50 == 0)
+                    writer.write(String.format("<http://left/poi/%d> %s <http://right/poi/x%d> .%n", i, SAME_AS, i));
+            }
+        }
+
+        // Fuse as a single run
+
+        final Path expectedDir = tempDir.resolve("expected");
+        fuse(leftPath, rightPath, linksPath, expectedDir);
+
+        // Partition, fuse every partition, and merge
+
+        final LinkComponentPartitioner partitioner = LinkComponentPartitioner.builder()
+            .left(leftPath)
+            .right(rightPath)
+            .links(linksPath)
+            .partitionsDirectory(partitionsDir)
+            .maxPartitions(4)
+            .build();
+
+        final Map<String, ExecutionContext> contexts = partitioner.partition(4);
+        assertEquals(4, contexts.size());
+
+        // Shared resources are recorded (for the merge of the output)
+        final Path sharedResourcesPath = partitionsDir.resolve(LinkComponentPartitioner.SHARED_RESOURCES_FILENAME);
+        assertEquals(
+            new HashSet<>(Arrays.asList(
+                "<http://left/category/0>", "<http://left/category/1>",
+                "<http://right/category/0>", "<http://right/category/1>")),
+            readLines(sharedResourcesPath));
+
+        final List<Integer> linksPerPartition = new ArrayList<>();
+        for (int i = 0; i < contexts.size(); ++i) {
+            final ExecutionContext context = contexts.get(InputFilesPartitioner.partitionName(i));
+            assertNotNull(context);
+            assertEquals(i, context.getInt(LinkComponentPartitioner.Keys.PARTITION_INDEX));
+            final Path partitionInputDir = Paths.get(context.getString(LinkComponentPartitioner.Keys.INPUT_DIR));
+            final Path partitionOutputDir = Paths.get(context.getString(LinkComponentPartitioner.Keys.OUTPUT_DIR));
+
+            // Shared (category) nodes are copied into every partition
+            assertTrue(readLines(partitionInputDir.resolve("left.nt"))
+                .contains(String.format("<http://left/category/0> %s \"category 0\" .", NAME)));
+
+            linksPerPartition.add(Files.readAllLines(partitionInputDir.resolve("links.nt")).size());
+            fuse(partitionInputDir.resolve("left.nt"), partitionInputDir.resolve("right.nt"),
+                partitionInputDir.resolve("links.nt"), partitionOutputDir);
+        }
+
+        // Partitions are balanced (by number of links)
+        final int totalLinks = linksPerPartition.stream().mapToInt(Integer::intValue).sum();
+        assertEquals(Files.readAllLines(linksPath).size(), totalLinks);
+        for (int n: linksPerPartition)
+            assertTrue(Math.abs(n - totalLinks / 4) <= 3);
+
+        // Merge (as configured for a fusion job)
+
+        final Path outputDir = tempDir.resolve("output");
+        final SharedResourcesMerger merger = new SharedResourcesMerger(sharedResourcesPath);
+        MergePartitionOutputTasklet.builder()
+            .partitionsDirectory(partitionsDir)
+            .outputDirectory(outputDir)
+            .expected("fused.nt", "remaining.nt", "review.nt", "stats.json")
+            .merger("fused.nt", merger)
+            .merger("remaining.nt", merger)
+            .merger("review.nt", merger)
+            .merger("stats.json",
+                new JsonStatisticsMerger(objectMapper, LinkComponentPartitioner.linksWeigher("links.nt")))
+            .build()
+            .execute(null, null);
+
+        // Every line is output exactly once (triples of shared resources are not repeated)
+        for (String name: new String[] { "fused.nt", "remaining.nt", "review.nt" }) {
+            assertEquals(readSortedLines(expectedDir.resolve(name)), readSortedLines(outputDir.resolve(name)));
+        }
+
+        // Counters are summed, and ratios are weighted by the number of links of a partition
+        final ObjectNode expectedStats =
+            (ObjectNode) objectMapper.readTree(expectedDir.resolve("stats.json").toFile());
+        final ObjectNode stats =
+            (ObjectNode) objectMapper.readTree(outputDir.resolve("stats.json").toFile());
+        assertEquals(
+            expectedStats.remove("fusedRatio").doubleValue(), stats.remove("fusedRatio").doubleValue(), 1E-9);
+        assertEquals(expectedStats, stats);
+    }
+
+    @Test
+    public void testWithoutLinks() throws Exception
+    {
+        final Path leftPath = inputDir.resolve("left.nt");
+        final Path rightPath = inputDir.resolve("right.nt");
+        final Path linksPath = inputDir.resolve("links.nt");
+
+        writePois(leftPath, "http://left", 10);
+        writePois(rightPath, "http://right", 10);
+        Files.createFile(linksPath);
+
+        final Map<String, ExecutionContext> contexts = LinkComponentPartitioner.builder()
+            .left(leftPath)
+            .right(rightPath)
+            .links(linksPath)
+            .partitionsDirectory(partitionsDir)
+            .maxPartitions(4)
+            .build()
+            .partition(4);
+
+        // Nothing to fuse: a single partition holding everything
+        assertEquals(1, contexts.size());
+        final Path partitionInputDir = Paths.get(
+            contexts.get(InputFilesPartitioner.partitionName(0)).getString(LinkComponentPartitioner.Keys.INPUT_DIR));
+        assertEquals(readLines(leftPath), readLines(partitionInputDir.resolve("left.nt")));
+        assertEquals(readLines(rightPath), readLines(partitionInputDir.resolve("right.nt")));
+    }
+}
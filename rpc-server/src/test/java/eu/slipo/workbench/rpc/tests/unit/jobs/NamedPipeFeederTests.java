@@ -0,0 +1,219 @@
+package eu.slipo.workbench.rpc.tests.unit.jobs;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.util.StreamUtils;
+
+import eu.slipo.workbench.common.service.DefaultFileMaterializer;
+import eu.slipo.workbench.rpc.jobs.tasklet.NamedPipeFeeder;
+import eu.slipo.workbench.rpc.jobs.tasklet.OutputSpool;
+
+@RunWith(SpringRunner.class)
+@ActiveProfiles({ "testing" })
+public class NamedPipeFeederTests
+{
+    private static final long POLL_INTERVAL = 20L;
+
+    private Path tempDir;
+
+    private byte[] content;
+
+    private OutputSpool spool;
+
+    @Before
+    public void setup() throws IOException
+    {
+        Assume.assumeTrue(NamedPipeFeeder.isSupported());
+
+        tempDir = Files.createTempDirectory("named-pipe-feeder-");
+
+        // A content well above the capacity of a pipe buffer
+
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 50000; ++i)
+            sb.append("<http://example.com/poi/").append(i).append("> <http://example.com/name> \"Name #")
+                .append(i).append("\" .\n");
+        content = sb.toString().getBytes(StandardCharsets.UTF_8);
+
+        spool = new OutputSpool(tempDir.resolve("spool").resolve("1.nt"), POLL_INTERVAL);
+        spool.reset();
+    }
+
+    @After
+    public void teardown() throws IOException
+    {
+        if (tempDir != null)
+            FileSystemUtils.deleteRecursively(tempDir.toFile());
+    }
+
+    /**
+     * Append to the spool in chunks (as a producer would do), and finally mark it as completed
+     * (or as failed)
+     */
+    private Thread startProducer(int numberOfChunks, boolean failing)
+    {
+        Thread thread = new Thread(() -> {
+            try {
+                final int chunkSize = content.length / numberOfChunks + 1;
+                for (int offset = 0; offset < content.length; offset += chunkSize) {
+                    if (failing && offset > content.length / 2) {
+                        spool.fail("Failed on purpose");
+                        return;
+                    }
+                    byte[] chunk = Arrays.copyOfRange(content, offset, Math.min(offset + chunkSize, content.length));
+                    Files.write(spool.path(), chunk, StandardOpenOption.APPEND);
+                    Thread.sleep(2 * POLL_INTERVAL);
+                }
+                spool.complete(content.length);
+            } catch (IOException | InterruptedException ex) {
+                throw new IllegalStateException(ex);
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+    @Test
+    public void testCreatePipe() throws Exception
+    {
+        Path pipe = tempDir.resolve("1.nt");
+        Files.write(pipe, content);
+
+        // An existing file is replaced
+        NamedPipeFeeder.createPipe(pipe);
+        assertTrue(Files.readAttributes(pipe, BasicFileAttributes.class).isOther());
+    }
+
+    @Test(timeout = 20000L)
+    public void testFeedWhileProducing() throws Exception
+    {
+        Path pipe = tempDir.resolve("1.nt");
+        NamedPipeFeeder.createPipe(pipe);
+
+        NamedPipeFeeder feeder = new NamedPipeFeeder(pipe, spool, System.currentTimeMillis(), 5000L);
+        feeder.start();
+
+        // The feeder blocks until the pipe is consumed
+
+        try {
+            feeder.await(200L);
+            fail("Expected the feeder to block on a pipe without a consumer");
+        } catch (TimeoutException ex) {
+            assertFalse(feeder.isDone());
+        }
+
+        Thread producer = startProducer(10, false);
+
+        byte[] data = null;
+        try (InputStream in = Files.newInputStream(pipe)) {
+            data = StreamUtils.copyToByteArray(in);
+        }
+
+        assertArrayEquals(content, data);
+        assertEquals(content.length, feeder.await(1000L));
+
+        producer.join();
+    }
+
+    @Test(timeout = 20000L)
+    public void testFeedFromCompletedSpool() throws Exception
+    {
+        Files.write(spool.path(), content, StandardOpenOption.APPEND);
+        spool.complete(content.length);
+
+        Path pipe = tempDir.resolve("1.nt");
+        NamedPipeFeeder.createPipe(pipe);
+
+        NamedPipeFeeder feeder = new NamedPipeFeeder(pipe, spool, System.currentTimeMillis(), 5000L);
+        feeder.start();
+
+        byte[] data = null;
+        try (InputStream in = Files.newInputStream(pipe)) {
+            data = StreamUtils.copyToByteArray(in);
+        }
+
+        assertArrayEquals(content, data);
+        assertEquals(content.length, feeder.await(1000L));
+    }
+
+    @Test(timeout = 20000L, expected = IOException.class)
+    public void testFeedFailsIfProducerFails() throws Exception
+    {
+        Path pipe = tempDir.resolve("1.nt");
+        NamedPipeFeeder.createPipe(pipe);
+
+        NamedPipeFeeder feeder = new NamedPipeFeeder(pipe, spool, System.currentTimeMillis(), 5000L);
+        feeder.start();
+
+        Thread producer = startProducer(10, true);
+
+        byte[] data = null;
+        try (InputStream in = Files.newInputStream(pipe)) {
+            data = StreamUtils.copyToByteArray(in);
+        }
+        assertTrue(data.length < content.length);
+
+        producer.join();
+        feeder.await(1000L);
+    }
+
+    @Test(timeout = 20000L, expected = CancellationException.class)
+    public void testCancel() throws Exception
+    {
+        Path pipe = tempDir.resolve("1.nt");
+        NamedPipeFeeder.createPipe(pipe);
+
+        NamedPipeFeeder feeder = new NamedPipeFeeder(pipe, spool, System.currentTimeMillis(), 5000L);
+        feeder.start();
+
+        // Nobody consumes the pipe
+
+        Thread.sleep(200L);
+        feeder.cancel();
+        assertTrue(feeder.isDone());
+        feeder.await(1000L);
+    }
+
+    @Test(timeout = 20000L)
+    public void testPublishRemainingOutput() throws Exception
+    {
+        // A part of the output is already spooled
+
+        final int offset = content.length / 3;
+        Files.write(spool.path(), Arrays.copyOf(content, offset), StandardOpenOption.APPEND);
+        assertEquals(-1L, spool.completedSize());
+
+        Path output = tempDir.resolve("output.nt");
+        Files.write(output, content);
+
+        assertEquals(content.length, spool.publish(output, offset, new DefaultFileMaterializer()));
+        assertEquals(content.length, spool.completedSize());
+        assertArrayEquals(content, Files.readAllBytes(spool.path()));
+
+        // The spool is replaced if it holds less than what was expected to be spooled
+
+        spool.reset();
+        assertEquals(-1L, spool.completedSize());
+        assertEquals(content.length, spool.publish(output, offset, new DefaultFileMaterializer()));
+        assertArrayEquals(content, Files.readAllBytes(spool.path()));
+    }
+}
@@ -0,0 +1,408 @@
+package eu.slipo.workbench.rpc.tests.unit.jobs;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobParameters;
+import org.springframework.batch.core.JobParametersBuilder;
+import org.springframework.batch.core.Step;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.configuration.annotation.JobBuilderFactory;
+import org.springframework.batch.core.configuration.annotation.StepBuilderFactory;
+import org.springframework.batch.core.job.builder.FlowBuilder;
+import org.springframework.batch.core.job.flow.Flow;
+import org.springframework.batch.core.job.flow.FlowExecutionStatus;
+import org.springframework.batch.core.job.flow.JobExecutionDecider;
+import org.springframework.batch.core.launch.support.SimpleJobLauncher;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.batch.core.repository.support.MapJobRepositoryFactoryBean;
+import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.batch.support.transaction.ResourcelessTransactionManager;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.util.FileSystemUtils;
+
+import eu.slipo.workbench.rpc.jobs.partition.CollectPartitionOutputTasklet;
+import eu.slipo.workbench.rpc.jobs.partition.InputFilesPartitioner;
+
+/**
+ * Run a partitioned flow (shaped as the one of Triplegeo): a decider routes a run either to
+ * a single step or to a partitioned step (followed by the collection of partition outputs).
+ * Partitions are run by a fake tasklet that transforms each input file into an output file
+ * (and also produces a shared output, identical among partitions).
+ */
+@RunWith(SpringRunner.class)
+@ActiveProfiles({ "testing" })
+public class PartitionedJobFlowTests
+{
+    private static final FlowExecutionStatus PARTITIONED = new FlowExecutionStatus("PARTITIONED");
+
+    private static final FlowExecutionStatus SINGLE = new FlowExecutionStatus("SINGLE");
+
+    private static final String SHARED_OUTPUT_NAME = "classification.nt";
+
+    private static final String SHARED_OUTPUT_CONTENT = "<a> <b> <c> .\n";
+
+    private static final int MAX_PARTITIONS = 3;
+
+    private static final int MIN_INPUT_FILES_FOR_PARTITIONING = 2;
+
+    private Path tempDir;
+
+    private Path inputDir;
+
+    private Path partitionsDir;
+
+    private Path outputDir;
+
+    private JobRepository jobRepository;
+
+    private SimpleJobLauncher jobLauncher;
+
+    private JobBuilderFactory jobBuilderFactory;
+
+    private StepBuilderFactory stepBuilderFactory;
+
+    /**
+     * The names of input files that a partition should fail to transform. A name is removed
+     * once it has failed (so that a restarted job succeeds).
+     */
+    private Set<String> failingInputNames;
+
+    /**
+     * The input files transformed by each (partition) step, keyed by step name
+     */
+    private Map<String, List<String>> inputNamesByStepName;
+
+    @Before
+    public void setup() throws Exception
+    {
+        tempDir = Files.createTempDirectory("partitioned-flow-");
+        inputDir = Files.createDirectory(tempDir.resolve("input"));
+        partitionsDir = tempDir.resolve("partitions");
+        outputDir = tempDir.resolve("output");
+
+        ResourcelessTransactionManager transactionManager = new ResourcelessTransactionManager();
+        MapJobRepositoryFactoryBean jobRepositoryFactory = new MapJobRepositoryFactoryBean(transactionManager);
+        jobRepositoryFactory.afterPropertiesSet();
+        jobRepository = jobRepositoryFactory.getObject();
+
+        jobLauncher = new SimpleJobLauncher();
+        jobLauncher.setJobRepository(jobRepository);
+        jobLauncher.afterPropertiesSet();
+
+        jobBuilderFactory = new JobBuilderFactory(jobRepository);
+        stepBuilderFactory = new StepBuilderFactory(jobRepository, transactionManager);
+
+        failingInputNames = ConcurrentHashMap.newKeySet();
+        inputNamesByStepName = new ConcurrentHashMap<>();
+    }
+
+    @After
+    public void teardown() throws IOException
+    {
+        FileSystemUtils.deleteRecursively(tempDir.toFile());
+    }
+
+    private void createInput(String name, int size) throws IOException
+    {
+        StringBuilder content = new StringBuilder();
+        while (content.length() < size)
+            content.append(name).append('\n');
+        Files.write(inputDir.resolve(name), content.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String outputNameOf(String inputName)
+    {
+        return inputName.replaceFirst("\\.csv$", ".nt");
+    }
+
+    private List<String> listInputNames() throws IOException
+    {
+        try (Stream<Path> paths = Files.list(inputDir)) {
+            return paths.map(p -> p.getFileName().toString()).sorted().collect(Collectors.toList());
+        }
+    }
+
+    private Set<String> listNames(Path dir) throws IOException
+    {
+        if (!Files.isDirectory(dir))
+            return Collections.emptySet();
+        try (Stream<Path> paths = Files.list(dir)) {
+            return paths.map(p -> p.getFileName().toString()).collect(Collectors.toSet());
+        }
+    }
+
+    /**
+     * A fake tasklet for a partition: transform each input file into an output file (with
+     * identical content), and write the shared output.
+     */
+    private Tasklet partitionTasklet()
+    {
+        return (contribution, chunkContext) -> {
+            StepExecution stepExecution = chunkContext.getStepContext().getStepExecution();
+            ExecutionContext executionContext = stepExecution.getExecutionContext();
+            @SuppressWarnings("unchecked")
+            List<String> names = (List<String>) executionContext.get(InputFilesPartitioner.Keys.INPUT_FILES);
+            Path partitionOutputDir = Paths.get(executionContext.getString(InputFilesPartitioner.Keys.OUTPUT_DIR));
+
+            inputNamesByStepName.put(stepExecution.getStepName(), names);
+            for (String name: names) {
+                if (failingInputNames.remove(name))
+                    throw new IllegalStateException("Failed to transform " + name);
+                Files.copy(inputDir.resolve(name), partitionOutputDir.resolve(outputNameOf(name)),
+                    StandardCopyOption.REPLACE_EXISTING);
+            }
+            Files.write(partitionOutputDir.resolve(SHARED_OUTPUT_NAME),
+                SHARED_OUTPUT_CONTENT.getBytes(StandardCharsets.UTF_8));
+            return RepeatStatus.FINISHED;
+        };
+    }
+
+    /**
+     * A fake tasklet for a single run: transform every input file directly into the output
+     * directory.
+     */
+    private Tasklet singleTasklet()
+    {
+        return (contribution, chunkContext) -> {
+            Files.createDirectories(outputDir);
+            List<String> names = listInputNames();
+            inputNamesByStepName.put(chunkContext.getStepContext().getStepName(), names);
+            for (String name: names)
+                Files.copy(inputDir.resolve(name), outputDir.resolve(outputNameOf(name)));
+            Files.write(outputDir.resolve(SHARED_OUTPUT_NAME),
+                SHARED_OUTPUT_CONTENT.getBytes(StandardCharsets.UTF_8));
+            return RepeatStatus.FINISHED;
+        };
+    }
+
+    private JobExecutionDecider partitioningDecider()
+    {
+        return (jobExecution, stepExecution) -> {
+            try {
+                return listInputNames().size() >= MIN_INPUT_FILES_FOR_PARTITIONING? PARTITIONED : SINGLE;
+            } catch (IOException ex) {
+                throw new IllegalStateException(ex);
+            }
+        };
+    }
+
+    private Job createJob()
+    {
+        Step prepareStep = stepBuilderFactory.get("prepare")
+            .tasklet((contribution, chunkContext) -> RepeatStatus.FINISHED)
+            .build();
+
+        Step partitionStep = stepBuilderFactory.get("runPartition")
+            .tasklet(partitionTasklet())
+            .build();
+
+        Step runPartitionedStep = stepBuilderFactory.get("runPartitioned")
+            .partitioner("runPartition", gridSize -> {
+                try {
+                    return new InputFilesPartitioner(inputDir, listInputNames(), partitionsDir, MAX_PARTITIONS)
+                        .partition(gridSize);
+                } catch (IOException ex) {
+                    throw new IllegalStateException(ex);
+                }
+            })
+            .step(partitionStep)
+            .gridSize(MAX_PARTITIONS)
+            .taskExecutor(new SimpleAsyncTaskExecutor("partition-"))
+            .build();
+
+        Step collectStep = stepBuilderFactory.get("collectPartitionOutput")
+            .tasklet(CollectPartitionOutputTasklet.builder()
+                .partitionsDirectory(partitionsDir)
+                .outputDirectory(outputDir)
+                .shared(SHARED_OUTPUT_NAME)
+                .build())
+            .build();
+
+        Step singleStep = stepBuilderFactory.get("runSingle")
+            .tasklet(singleTasklet())
+            .build();
+
+        JobExecutionDecider decider = partitioningDecider();
+
+        Flow flow = new FlowBuilder<Flow>("flow")
+            .start(prepareStep)
+            .next(decider)
+                .on(PARTITIONED.getName())
+                    .to(runPartitionedStep)
+                    .next(collectStep)
+            .from(decider)
+                .on("*")
+                    .to(singleStep)
+            .build();
+
+        return jobBuilderFactory.get("partitioned-" + tempDir.getFileName())
+            .start(flow)
+                .end()
+            .build();
+    }
+
+    private JobExecution run(Job job, JobParameters parameters) throws Exception
+    {
+        JobExecution execution = jobLauncher.run(job, parameters);
+        assertFalse(execution.isRunning());
+        return execution;
+    }
+
+    private static Set<String> stepNames(JobExecution execution)
+    {
+        return execution.getStepExecutions().stream()
+            .map(StepExecution::getStepName)
+            .collect(Collectors.toSet());
+    }
+
+    private static StepExecution findStep(JobExecution execution, String stepName)
+    {
+        return execution.getStepExecutions().stream()
+            .filter(x -> x.getStepName().equals(stepName))
+            .findFirst().orElse(null);
+    }
+
+    private void checkMergedOutput(List<String> inputNames) throws IOException
+    {
+        Set<String> expectedNames = inputNames.stream()
+            .map(PartitionedJobFlowTests::outputNameOf)
+            .collect(Collectors.toSet());
+        expectedNames.add(SHARED_OUTPUT_NAME);
+        assertEquals(expectedNames, listNames(outputDir));
+
+        for (String name: inputNames) {
+            assertArrayEquals("Expected output to be identical to input: " + name,
+                Files.readAllBytes(inputDir.resolve(name)),
+                Files.readAllBytes(outputDir.resolve(outputNameOf(name))));
+        }
+        assertEquals(SHARED_OUTPUT_CONTENT,
+            new String(Files.readAllBytes(outputDir.resolve(SHARED_OUTPUT_NAME)), StandardCharsets.UTF_8));
+    }
+
+    @Test(timeout = 20000L)
+    public void testPartitionedRun() throws Exception
+    {
+        List<String> inputNames = Arrays.asList("a.csv", "b.csv", "c.csv", "d.csv", "e.csv");
+        int size = 1000;
+        for (String name: inputNames)
+            createInput(name, size += 200);
+
+        JobExecution execution = run(createJob(), new JobParameters());
+
+        assertEquals(BatchStatus.COMPLETED, execution.getStatus());
+        assertEquals(ExitStatus.COMPLETED.getExitCode(), execution.getExitStatus().getExitCode());
+
+        // The run is routed to the partitioned step (and then to collect step)
+
+        Set<String> expectedStepNames = new HashSet<>(
+            Arrays.asList("prepare", "runPartitioned", "collectPartitionOutput"));
+        for (int i = 0; i < MAX_PARTITIONS; ++i)
+            expectedStepNames.add("runPartition:" + InputFilesPartitioner.partitionName(i));
+        assertEquals(expectedStepNames, stepNames(execution));
+
+        // Every input file is transformed by exactly one partition
+
+        List<String> transformedNames = inputNamesByStepName.values().stream()
+            .flatMap(List::stream)
+            .sorted()
+            .collect(Collectors.toList());
+        assertEquals(inputNames, transformedNames);
+
+        // The output of partitions is collected (the shared output only once)
+
+        checkMergedOutput(inputNames);
+        for (int i = 0; i < MAX_PARTITIONS; ++i) {
+            Path partitionOutputDir = partitionsDir
+                .resolve(InputFilesPartitioner.partitionName(i)).resolve(InputFilesPartitioner.OUTPUT_DIR_NAME);
+            Set<String> remaining = listNames(partitionOutputDir);
+            assertTrue(remaining.isEmpty() || remaining.equals(Collections.singleton(SHARED_OUTPUT_NAME)));
+        }
+    }
+
+    @Test(timeout = 20000L)
+    public void testSingleRun() throws Exception
+    {
+        createInput("a.csv", 1000);
+
+        JobExecution execution = run(createJob(), new JobParameters());
+
+        assertEquals(BatchStatus.COMPLETED, execution.getStatus());
+
+        // The run is routed to the single step (no partitions are created)
+
+        assertEquals(new HashSet<>(Arrays.asList("prepare", "runSingle")), stepNames(execution));
+        assertFalse(Files.exists(partitionsDir));
+        checkMergedOutput(Collections.singletonList("a.csv"));
+    }
+
+    @Test(timeout = 20000L)
+    public void testFailedPartitionIsRestarted() throws Exception
+    {
+        List<String> inputNames = Arrays.asList("a.csv", "b.csv", "c.csv", "d.csv");
+        for (String name: inputNames)
+            createInput(name, 1000);
+        failingInputNames.add("c.csv");
+
+        final Job job = createJob();
+        final JobParameters parameters = new JobParametersBuilder()
+            .addLong("run", 1L)
+            .toJobParameters();
+
+        // A failed partition fails the partitioned step: outputs are not collected
+
+        JobExecution execution = run(job, parameters);
+
+        assertEquals(BatchStatus.FAILED, execution.getStatus());
+        assertEquals(BatchStatus.FAILED, findStep(execution, "runPartitioned").getStatus());
+        assertNull(findStep(execution, "collectPartitionOutput"));
+        assertNull(findStep(execution, "runSingle"));
+        assertTrue(listNames(outputDir).isEmpty());
+
+        long numberOfFailedPartitions = execution.getStepExecutions().stream()
+            .filter(x -> x.getStepName().startsWith("runPartition:"))
+            .filter(x -> x.getStatus() == BatchStatus.FAILED)
+            .count();
+        assertEquals(1L, numberOfFailedPartitions);
+
+        // Restart: only the failed partition is re-executed, then outputs are collected
+
+        inputNamesByStepName.clear();
+        JobExecution restartedExecution = run(job, parameters);
+
+        assertEquals(BatchStatus.COMPLETED, restartedExecution.getStatus());
+        assertEquals(execution.getJobId(), restartedExecution.getJobId());
+        assertEquals(1, inputNamesByStepName.size());
+        assertTrue(inputNamesByStepName.values().iterator().next().contains("c.csv"));
+        assertNotNull(findStep(restartedExecution, "collectPartitionOutput"));
+
+        checkMergedOutput(inputNames);
+    }
+}
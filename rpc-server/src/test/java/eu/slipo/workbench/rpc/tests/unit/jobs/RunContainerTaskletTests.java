@@ -0,0 +1,551 @@
+package eu.slipo.workbench.rpc.tests.unit.jobs;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Constructor;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.scope.context.StepContext;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.batch.test.MetaDataInstanceFactory;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.util.FileSystemUtils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.DockerClient.EventsParam;
+import com.spotify.docker.client.DockerClient.LogsParam;
+import com.spotify.docker.client.EventStream;
+import com.spotify.docker.client.LogMessage;
+import com.spotify.docker.client.LogStream;
+import com.spotify.docker.client.ObjectMapperProvider;
+import com.spotify.docker.client.messages.ContainerInfo;
+import com.spotify.docker.client.messages.ContainerState;
+
+import eu.slipo.workbench.rpc.jobs.tasklet.docker.ContainerEventMonitor;
+import eu.slipo.workbench.rpc.jobs.tasklet.docker.ContainerLogFile;
+import eu.slipo.workbench.rpc.jobs.tasklet.docker.ContainerStatsCollector;
+import eu.slipo.workbench.rpc.jobs.tasklet.docker.ContainerStatsSample;
+import eu.slipo.workbench.rpc.jobs.tasklet.docker.ContainerStatsSource;
+import eu.slipo.workbench.rpc.jobs.tasklet.docker.RunContainerTasklet;
+
+@RunWith(SpringRunner.class)
+@ActiveProfiles({ "testing" })
+public class RunContainerTaskletTests
+{
+    private static final String CONTAINER_NAME = "test-1";
+
+    private static final String CONTAINER_ID = "c0ffee";
+
+    /**
+     * A (fake) very long polling interval: if a tasklet ever polls, a test will time out
+     */
+    private static final long CHECK_INTERVAL = 60 * 1000L;
+
+    @Mock
+    private DockerClient docker;
+
+    @Mock
+    private ContainerInfo containerInfo;
+
+    @Mock
+    private ContainerState containerState;
+
+    /**
+     * A fake HTTP response body for the event stream of the docker daemon: chunks of
+     * JSON-encoded events are pushed by tests. An empty chunk marks the end of stream.
+     */
+    private static class EventsBody extends InputStream
+    {
+        private final BlockingQueue<byte[]> chunks = new LinkedBlockingQueue<>();
+
+        private byte[] chunk = new byte[] {};
+
+        private int pos = 0;
+
+        private boolean ended = false;
+
+        public void push(String action, String containerId, String containerName)
+        {
+            String json = String.format(
+                "{\"status\":\"%1$s\",\"id\":\"%2$s\",\"Type\":\"container\",\"Action\":\"%1$s\"," +
+                    "\"Actor\":{\"ID\":\"%2$s\",\"Attributes\":{\"name\":\"%3$s\"}}}\n",
+                action, containerId, containerName);
+            chunks.add(json.getBytes(StandardCharsets.UTF_8));
+        }
+
+        public void end()
+        {
+            chunks.add(new byte[] {});
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0? -1 : b[0];
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException
+        {
+            if (ended)
+                return -1;
+            if (pos == chunk.length) {
+                try {
+                    chunk = chunks.take();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                pos = 0;
+                if (chunk.length == 0) {
+                    ended = true;
+                    return -1;
+                }
+            }
+            int n = Math.min(len, chunk.length - pos);
+            System.arraycopy(chunk, pos, b, off, n);
+            pos += n;
+            return n;
+        }
+    }
+
+    private volatile EventsBody eventsBody;
+
+    /**
+     * A (fake) log stream that iterates over a given list of lines
+     */
+    private static class FakeLogStream implements LogStream
+    {
+        private final Iterator<String> lines;
+
+        public FakeLogStream(List<String> lines)
+        {
+            this.lines = lines.iterator();
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            return lines.hasNext();
+        }
+
+        @Override
+        public LogMessage next()
+        {
+            ByteBuffer content = ByteBuffer.wrap(lines.next().getBytes(StandardCharsets.UTF_8));
+            return new LogMessage(LogMessage.Stream.STDOUT, content);
+        }
+
+        @Override
+        public String readFully()
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void attach(OutputStream stdout, OutputStream stderr)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void attach(OutputStream stdout, OutputStream stderr, boolean closeAtEof)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void close()
+        {
+            // no-op
+        }
+    }
+
+    private AtomicBoolean running = new AtomicBoolean(true);
+
+    private ContainerEventMonitor monitor;
+
+    /**
+     * Create an event stream (as returned by a docker client) for the given body
+     */
+    private static EventStream createEventStream(EventsBody body) throws Exception
+    {
+        HttpEntity entity = mock(HttpEntity.class);
+        when(entity.getContent()).thenReturn(body);
+
+        CloseableHttpResponse response = mock(CloseableHttpResponse.class);
+        when(response.getEntity()).thenReturn(entity);
+        doAnswer(invocation -> { body.end(); return null; }).when(response).close();
+
+        Constructor<EventStream> constructor =
+            EventStream.class.getDeclaredConstructor(CloseableHttpResponse.class, ObjectMapper.class);
+        constructor.setAccessible(true);
+        return constructor.newInstance(response, ObjectMapperProvider.objectMapper());
+    }
+
+    @Before
+    public void setup() throws Exception
+    {
+        MockitoAnnotations.initMocks(this);
+
+        when(containerState.running()).then(invocation -> running.get());
+        when(containerState.exitCode()).thenReturn(0);
+        when(containerInfo.state()).thenReturn(containerState);
+        when(docker.inspectContainer(CONTAINER_NAME)).thenReturn(containerInfo);
+
+        // Every subscription to the event stream gets a fresh response body
+        when(docker.events((EventsParam[]) anyVararg())).then(invocation -> {
+            eventsBody = new EventsBody();
+            return createEventStream(eventsBody);
+        });
+
+        monitor = new ContainerEventMonitor(docker);
+        monitor.setReconnectInterval(60 * 1000L);
+    }
+
+    @After
+    public void teardown()
+    {
+        monitor.stop();
+    }
+
+    private void awaitConnected() throws InterruptedException
+    {
+        for (int i = 0; i < 100 && !monitor.isConnected(); ++i)
+            Thread.sleep(20L);
+        assertTrue("expected monitor to be connected", monitor.isConnected());
+    }
+
+    private RunContainerTasklet buildTasklet(ContainerEventMonitor monitor)
+    {
+        return RunContainerTasklet.builder()
+            .client(docker)
+            .monitor(monitor)
+            .container(CONTAINER_NAME)
+            .checkInterval(CHECK_INTERVAL)
+            .maxWaitInterval(30 * 1000L)
+            .build();
+    }
+
+    @Test(timeout = 5000L)
+    public void testCompletesOnEvent() throws Exception
+    {
+        monitor.start();
+        awaitConnected();
+
+        RunContainerTasklet tasklet = buildTasklet(monitor);
+        StepExecution stepExecution = MetaDataInstanceFactory.createStepExecution();
+        StepContribution contribution = new StepContribution(stepExecution);
+        ChunkContext chunkContext = new ChunkContext(new StepContext(stepExecution));
+
+        // P1: start container
+        RepeatStatus status = tasklet.execute(contribution, chunkContext);
+        assertEquals(RepeatStatus.CONTINUABLE, status);
+        verify(docker).startContainer(CONTAINER_NAME);
+
+        // Simulate a container that exits after a while (an unrelated event comes first)
+        Thread killer = new Thread(() -> {
+            try {
+                Thread.sleep(200L);
+                eventsBody.push("die", "deadbeef", "test-2");
+                Thread.sleep(200L);
+                running.set(false);
+                eventsBody.push("die", CONTAINER_ID, CONTAINER_NAME);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        killer.start();
+
+        // P2: wait for completion (blocks until woken up by the event)
+        status = tasklet.execute(contribution, chunkContext);
+        killer.join();
+
+        assertEquals(RepeatStatus.FINISHED, status);
+        assertEquals(ExitStatus.COMPLETED.getExitCode(), contribution.getExitStatus().getExitCode());
+        assertEquals(0L, stepExecution.getExecutionContext()
+            .getLong(RunContainerTasklet.Keys.COMMAND_EXIT_CODE));
+        verify(docker, times(1)).events((EventsParam[]) anyVararg());
+        verify(docker, atMost(3)).inspectContainer(CONTAINER_NAME);
+    }
+
+    @Test(timeout = 5000L)
+    public void testReturnsControlAfterMaxWaitInterval() throws Exception
+    {
+        monitor.start();
+        awaitConnected();
+
+        RunContainerTasklet tasklet = RunContainerTasklet.builder()
+            .client(docker)
+            .monitor(monitor)
+            .container(CONTAINER_NAME)
+            .checkInterval(CHECK_INTERVAL)
+            .maxWaitInterval(300L)
+            .build();
+
+        StepExecution stepExecution = MetaDataInstanceFactory.createStepExecution();
+        StepContribution contribution = new StepContribution(stepExecution);
+        ChunkContext chunkContext = new ChunkContext(new StepContext(stepExecution));
+
+        assertEquals(RepeatStatus.CONTINUABLE, tasklet.execute(contribution, chunkContext));
+
+        // No event arrives: control is returned to the step (so that a stop can be noticed)
+        long t0 = System.currentTimeMillis();
+        assertEquals(RepeatStatus.CONTINUABLE, tasklet.execute(contribution, chunkContext));
+        assertTrue(System.currentTimeMillis() - t0 >= 300L);
+        assertFalse(stepExecution.getExecutionContext().containsKey(RunContainerTasklet.Keys.FINISHED));
+
+        running.set(false);
+        assertEquals(RepeatStatus.FINISHED, tasklet.execute(contribution, chunkContext));
+    }
+
+    @Test(timeout = 5000L)
+    public void testWakesUpWhenStreamIsDropped() throws Exception
+    {
+        monitor.start();
+        awaitConnected();
+
+        // A waiting party should be woken up (and re-inspect) when the stream is dropped
+        monitor.subscribe(CONTAINER_NAME);
+        eventsBody.end();
+        String reason = monitor.await(CONTAINER_NAME, 2000L);
+
+        assertEquals("disconnected", reason);
+        assertFalse(monitor.isConnected());
+        assertEquals(0, monitor.getNumberOfSubscriptions());
+    }
+
+    @Test(timeout = 5000L)
+    public void testPollsWhenNotConnected() throws Exception
+    {
+        // The monitor is never started (i.e. is disconnected): tasklet should poll
+
+        RunContainerTasklet tasklet = RunContainerTasklet.builder()
+            .client(docker)
+            .monitor(monitor)
+            .container(CONTAINER_NAME)
+            .checkInterval(RunContainerTasklet.MIN_CHECK_INTERVAL)
+            .build();
+
+        StepExecution stepExecution = MetaDataInstanceFactory.createStepExecution();
+        StepContribution contribution = new StepContribution(stepExecution);
+        ChunkContext chunkContext = new ChunkContext(new StepContext(stepExecution));
+
+        assertEquals(RepeatStatus.CONTINUABLE, tasklet.execute(contribution, chunkContext));
+        assertEquals(RepeatStatus.CONTINUABLE, tasklet.execute(contribution, chunkContext));
+        verify(docker, times(1)).inspectContainer(CONTAINER_NAME);
+
+        running.set(false);
+        assertEquals(RepeatStatus.FINISHED, tasklet.execute(contribution, chunkContext));
+        verify(docker, never()).events((EventsParam[]) anyVararg());
+    }
+
+    @Test(timeout = 5000L)
+    public void testTimesOutWhileWaiting() throws Exception
+    {
+        monitor.start();
+        awaitConnected();
+
+        RunContainerTasklet tasklet = RunContainerTasklet.builder()
+            .client(docker)
+            .monitor(monitor)
+            .container(CONTAINER_NAME)
+            .checkInterval(CHECK_INTERVAL)
+            .maxWaitInterval(30 * 1000L)
+            .timeout(400L)
+            .stopTimeout(1000L)
+            .build();
+
+        StepExecution stepExecution = MetaDataInstanceFactory.createStepExecution();
+        StepContribution contribution = new StepContribution(stepExecution);
+        ChunkContext chunkContext = new ChunkContext(new StepContext(stepExecution));
+
+        assertEquals(RepeatStatus.CONTINUABLE, tasklet.execute(contribution, chunkContext));
+
+        // The wait must not extend beyond the timeout
+        RepeatStatus status = RepeatStatus.CONTINUABLE;
+        long t0 = System.currentTimeMillis();
+        while (status.isContinuable())
+            status = tasklet.execute(contribution, chunkContext);
+        assertTrue(System.currentTimeMillis() - t0 < 2000L);
+
+        verify(docker).stopContainer(CONTAINER_NAME, 1);
+        assertEquals(400L, stepExecution.getExecutionContext()
+            .getLong(RunContainerTasklet.Keys.TIMED_OUT));
+        assertTrue(stepExecution.getExecutionContext().getLong(RunContainerTasklet.Keys.FINISHED) > 0);
+    }
+
+    @Test(timeout = 5000L)
+    public void testStreamsOutputToLogFile() throws Exception
+    {
+        final List<String> lines = IntStream.range(0, 1000)
+            .mapToObj(i -> String.format("line %04d%n", i))
+            .collect(Collectors.toList());
+        final String output = String.join("", lines);
+
+        when(docker.logs(eq(CONTAINER_NAME), (LogsParam[]) anyVararg()))
+            .then(invocation -> new FakeLogStream(lines));
+
+        Path tempDir = Files.createTempDirectory("run-container-");
+        Path logPath = tempDir.resolve("output.log");
+        try {
+            RunContainerTasklet tasklet = RunContainerTasklet.builder()
+                .client(docker)
+                .container(CONTAINER_NAME)
+                .checkInterval(RunContainerTasklet.MIN_CHECK_INTERVAL)
+                .logFile(logPath, 4096, 100)
+                .outputTailSize(100)
+                .build();
+
+            StepExecution stepExecution = MetaDataInstanceFactory.createStepExecution();
+            StepContribution contribution = new StepContribution(stepExecution);
+            ChunkContext chunkContext = new ChunkContext(new StepContext(stepExecution));
+
+            tasklet.beforeStep(stepExecution);
+            assertEquals(RepeatStatus.CONTINUABLE, tasklet.execute(contribution, chunkContext));
+            running.set(false);
+            assertEquals(RepeatStatus.FINISHED, tasklet.execute(contribution, chunkContext));
+            tasklet.afterStep(stepExecution);
+
+            // The entire output is in the (rotated) log file, only a tail is in step context
+
+            assertEquals(logPath.toString(), stepExecution.getExecutionContext()
+                .getString(RunContainerTasklet.Keys.COMMAND_OUTPUT_FILE));
+            assertEquals(output.substring(output.length() - 100), stepExecution.getExecutionContext()
+                .getString(RunContainerTasklet.Keys.COMMAND_OUTPUT));
+
+            assertTrue(tasklet.getLogFile().segments().size() > 1);
+            assertEquals(output.length(), tasklet.getLogFile().size());
+
+            // The log file is reopened (e.g. for reading) with the limits it was written with
+
+            ContainerLogFile reopened = RunContainerTasklet.getOutputFile(stepExecution.getExecutionContext());
+            assertEquals(4096L, reopened.getMaxSize());
+            assertEquals(100, reopened.getMaxBackups());
+            assertEquals(output.length(), reopened.size());
+            assertEquals(output,
+                new String(tasklet.getLogFile().read(0, output.length()), StandardCharsets.UTF_8));
+        } finally {
+            FileSystemUtils.deleteRecursively(tempDir.toFile());
+        }
+    }
+
+    @Test(timeout = 8000L)
+    public void testSamplesStats() throws Exception
+    {
+        // A fake source of statistics: counters grow on every sample, memory peaks on the 2nd one
+        final AtomicInteger n = new AtomicInteger();
+        // Note: The 3rd request for a sample implies that the first 2 samples are collected
+        final CountDownLatch sampled = new CountDownLatch(3);
+        final ContainerStatsSource source = containerId -> {
+            assertEquals(CONTAINER_NAME, containerId);
+            int i = n.incrementAndGet();
+            sampled.countDown();
+            return new ContainerStatsSample(1000L * i, 100L * i, i == 2? 500L : 300L, 10L * i, 20L * i, 0L, 0L);
+        };
+
+        when(containerState.oomKilled()).thenReturn(true);
+        when(docker.logs(eq(CONTAINER_NAME), (LogsParam[]) anyVararg()))
+            .then(invocation -> new FakeLogStream(Collections.emptyList()));
+
+        Path tempDir = Files.createTempDirectory("run-container-");
+        Path statsPath = tempDir.resolve("stats.csv");
+        try {
+            RunContainerTasklet tasklet = RunContainerTasklet.builder()
+                .client(docker)
+                .container(CONTAINER_NAME)
+                .checkInterval(RunContainerTasklet.MIN_CHECK_INTERVAL)
+                .stats(RunContainerTasklet.MIN_STATS_INTERVAL, source)
+                .statsFile(statsPath)
+                .build();
+
+            StepExecution stepExecution = MetaDataInstanceFactory.createStepExecution();
+            StepContribution contribution = new StepContribution(stepExecution);
+            ChunkContext chunkContext = new ChunkContext(new StepContext(stepExecution));
+
+            tasklet.beforeStep(stepExecution);
+            assertEquals(RepeatStatus.CONTINUABLE, tasklet.execute(contribution, chunkContext));
+            assertTrue(sampled.await(3500L, TimeUnit.MILLISECONDS));
+            running.set(false);
+            assertEquals(RepeatStatus.FINISHED, tasklet.execute(contribution, chunkContext));
+            tasklet.afterStep(stepExecution);
+
+            // The summary is in step context
+
+            ExecutionContext executionContext = stepExecution.getExecutionContext();
+            int samples = executionContext.getInt(RunContainerTasklet.Keys.STATS_SAMPLES);
+            assertTrue(samples >= 2);
+            assertEquals(CONTAINER_NAME, executionContext.getString(RunContainerTasklet.Keys.STATS_CONTAINER));
+            assertEquals(100L * samples, executionContext.getLong(RunContainerTasklet.Keys.STATS_CPU_TIME));
+            assertEquals(500L, executionContext.getLong(RunContainerTasklet.Keys.STATS_PEAK_MEMORY));
+            assertEquals(10L * samples, executionContext.getLong(RunContainerTasklet.Keys.STATS_BLOCK_READ));
+            assertEquals(20L * samples, executionContext.getLong(RunContainerTasklet.Keys.STATS_BLOCK_WRITE));
+            assertEquals(Boolean.TRUE, executionContext.get(RunContainerTasklet.Keys.STATS_OOM_KILLED));
+            assertEquals(statsPath.toString(), executionContext.getString(RunContainerTasklet.Keys.STATS_FILE));
+
+            // Every sample is in the time series
+
+            List<ContainerStatsSample> series = ContainerStatsCollector.readSeries(statsPath);
+            assertTrue(series.size() >= samples);
+            for (int i = 0; i < series.size(); ++i) {
+                assertEquals(1000L * (i + 1), series.get(i).sampledOn());
+                assertEquals(100L * (i + 1), series.get(i).cpuTime());
+            }
+            assertEquals(500L, series.get(1).memory());
+
+            // No sample is taken after the container has finished
+            final int numberOfCalls = n.get();
+            Thread.sleep(RunContainerTasklet.MIN_STATS_INTERVAL + 100L);
+            assertEquals(numberOfCalls, n.get());
+        } finally {
+            FileSystemUtils.deleteRecursively(tempDir.toFile());
+        }
+    }
+
+    @Test
+    public void testIgnoresEmptyStatsSample() throws Exception
+    {
+        ContainerStatsCollector collector = new ContainerStatsCollector(null);
+        collector.add(new ContainerStatsSample(1000L, 250L, 4096L, 0L, 0L, 0L, 0L));
+
+        // An exited container is reported with zero counters
+        collector.add(new ContainerStatsSample(2000L, 0L, 0L, 0L, 0L, 0L, 0L));
+
+        assertEquals(1, collector.getSamples());
+        assertEquals(250L, collector.getCpuTime());
+        assertEquals(4096L, collector.getPeakMemory());
+    }
+}
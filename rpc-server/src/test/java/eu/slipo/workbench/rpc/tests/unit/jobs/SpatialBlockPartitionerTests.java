@@ -0,0 +1,381 @@
+package eu.slipo.workbench.rpc.tests.unit.jobs;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.util.FileSystemUtils;
+
+import eu.slipo.workbench.rpc.jobs.partition.EntityIndex;
+import eu.slipo.workbench.rpc.jobs.partition.InputFilesPartitioner;
+import eu.slipo.workbench.rpc.jobs.partition.MergePartitionOutputTasklet;
+import eu.slipo.workbench.rpc.jobs.partition.NTriples;
+import eu.slipo.workbench.rpc.jobs.partition.SpatialBlockPartitioner;
+
+@RunWith(SpringRunner.class)
+@ActiveProfiles({ "testing" })
+public class SpatialBlockPartitionerTests
+{
+    private static final String HAS_GEOMETRY = "<http://www.opengis.net/ont/geosparql#hasGeometry>";
+
+    private static final String AS_WKT = "<http://www.opengis.net/ont/geosparql#asWKT>";
+
+    private static final String WKT_LITERAL = "<http://www.opengis.net/ont/geosparql#wktLiteral>";
+
+    private static final String NAME = "<http://slipo.eu/def#name>";
+
+    private static final String CATEGORY = "<http://slipo.eu/def#category>";
+
+    private static final String SAME_AS = "<http://www.w3.org/2002/07/owl#sameAs>";
+
+    private static final int NUMBER_OF_CATEGORIES = 5;
+
+    /**
+     * The distance (degrees) under which a pair is accepted
+     */
+    private static final double ACCEPT_THRESHOLD = 0.004;
+
+    /**
+     * The distance (degrees) under which a pair is to be reviewed
+     */
+    private static final double REVIEW_THRESHOLD = 0.01;
+
+    private Path tempDir;
+
+    private Path inputDir;
+
+    private Path partitionsDir;
+
+    @Before
+    public void setup() throws IOException
+    {
+        tempDir = Files.createTempDirectory("spatial-blocks-");
+        inputDir = Files.createDirectory(tempDir.resolve("input"));
+        partitionsDir = tempDir.resolve("partitions");
+    }
+
+    @After
+    public void teardown() throws IOException
+    {
+        FileSystemUtils.deleteRecursively(tempDir.toFile());
+    }
+
+    /**
+     * Write a dataset of synthetic POIs. Every POI has a geometry node and refers to a (shared)
+     * category node. A few POIs have no geometry at all.
+     */
+    private static void writePois(Path path, String prefix, List<double[]> points, int withoutGeometry)
+        throws IOException
+    {
+        try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            for (int k = 0; k < NUMBER_OF_CATEGORIES; ++k) {
+                writer.write(String.format("<%s/category/%d> %s \"category %d\" .%n", prefix, k, NAME, k));
+            }
+            for (int i = 0; i < points.size(); ++i) {
+                final String poi = String.format("<%s/poi/%d>", prefix, i);
+                final String geometry = String.format("<%s/geometry/%d>", prefix, i);
+                final double[] p = points.get(i);
+                writer.write(String.format("%s %s <http://slipo.eu/def#POI> .%n", poi, NTriples.RDF_TYPE));
+                writer.write(String.format("%s %s \"POI %d\" .%n", poi, NAME, i));
+                writer.write(String.format("%s %s <%s/category/%d> .%n", poi, CATEGORY, prefix, i % NUMBER_OF_CATEGORIES));
+                writer.write(String.format("%s %s %s .%n", poi, HAS_GEOMETRY, geometry));
+                writer.write(String.format(Locale.ROOT, "%s %s \"POINT (%.6f %.6f)\"^^%s .%n", geometry, AS_WKT, p[0], p[1], WKT_LITERAL));
+            }
+            for (int i = 0; i < withoutGeometry; ++i) {
+                final String poi = String.format("<%s/poi/x%d>", prefix, i);
+                writer.write(String.format("%s %s \"POI x%d\" .%n", poi, NAME, i));
+            }
+        }
+    }
+
+    /**
+     * A fake linker (standing for a LIMES container): link POIs by the distance of their geometries,
+     * writing accepted and to-be-reviewed links into an output directory.
+     */
+    private static void link(Path sourcePath, Path targetPath, Path outputDir) throws IOException
+    {
+        final Map<String, double[]> sourcePoints = readPoints(sourcePath);
+        final Map<String, double[]> targetPoints = readPoints(targetPath);
+
+        final List<String> accepted = new ArrayList<>();
+        final List<String> review = new ArrayList<>();
+        for (Map.Entry<String, double[]> s: sourcePoints.entrySet()) {
+            for (Map.Entry<String, double[]> t: targetPoints.entrySet()) {
+                final double d = Math.hypot(s.getValue()[0] - t.getValue()[0], s.getValue()[1] - t.getValue()[1]);
+                final String line = String.format("%s %s %s .", s.getKey(), SAME_AS, t.getKey());
+                if (d <= ACCEPT_THRESHOLD)
+                    accepted.add(line);
+                else if (d <= REVIEW_THRESHOLD)
+                    review.add(line);
+            }
+        }
+
+        Files.createDirectories(outputDir);
+        Files.write(outputDir.resolve("accepted.nt"), accepted, StandardCharsets.UTF_8);
+        Files.write(outputDir.resolve("review.nt"), review, StandardCharsets.UTF_8);
+    }
+
+    private static Map<String, double[]> readPoints(Path path) throws IOException
+    {
+        final Map<String, String> geometryToPoi = new HashMap<>();
+        final Map<String, double[]> geometryToPoint = new HashMap<>();
+        for (String line: Files.readAllLines(path, StandardCharsets.UTF_8)) {
+            final NTriples.Triple triple = NTriples.parse(line);
+            if (triple == null)
+                continue;
+            if (triple.predicate().equals(HAS_GEOMETRY))
+                geometryToPoi.put(triple.object(), triple.subject());
+            else if (triple.predicate().equals(AS_WKT))
+                geometryToPoint.put(triple.subject(), EntityIndex.envelopeOf(triple.literalValue()));
+        }
+
+        final Map<String, double[]> points = new HashMap<>();
+        for (Map.Entry<String, String> p: geometryToPoi.entrySet()) {
+            final double[] e = geometryToPoint.get(p.getKey());
+            if (e != null)
+                points.put(p.getValue(), e);
+        }
+        return points;
+    }
+
+    private static Set<String> readLines(Path path) throws IOException
+    {
+        return new HashSet<>(Files.readAllLines(path, StandardCharsets.UTF_8));
+    }
+
+    private static int countSubjects(Path path, String type) throws IOException
+    {
+        int n = 0;
+        for (String line: Files.readAllLines(path, StandardCharsets.UTF_8)) {
+            if (line.contains(NTriples.RDF_TYPE) && line.contains(type))
+                n++;
+        }
+        return n;
+    }
+
+    @Test(timeout = 20 * 1000L)
+    public void testBlockedLinkingEqualsUnblocked() throws Exception
+    {
+        final Random random = new Random(7L);
+
+        // Generate source POIs, and target POIs as displaced copies of (some) source POIs
+
+        final List<double[]> sourcePoints = new ArrayList<>();
+        for (int i = 0; i < 400; ++i)
+            sourcePoints.add(new double[] { 20.0 + 4.0 * random.nextDouble(), 37.0 + 2.0 * random.nextDouble() });
+
+        final List<double[]> targetPoints = new ArrayList<>();
+        for (int i = 0; i < 400; ++i) {
+            if (i % 2 == 0) {
+                double[] p = sourcePoints.get(i);
+                targetPoints.add(new double[] {
+                    p[0] + 0.012 * (random.nextDouble() - 0.5), p[1] + 0.012 * (random.nextDouble() - 0.5) });
+            } else {
+                targetPoints.add(new double[] { 20.0 + 4.0 * random.nextDouble(), 37.0 + 2.0 * random.nextDouble() });
+            }
+        }
+
+        final Path sourcePath = inputDir.resolve("a.nt");
+        final Path targetPath = inputDir.resolve("b.nt");
+        writePois(sourcePath, "http://a", sourcePoints, 3);
+        writePois(targetPath, "http://b", targetPoints, 2);
+
+        // Link without blocking
+
+        final Path expectedDir = tempDir.resolve("expected");
+        link(sourcePath, targetPath, expectedDir);
+        final Set<String> expectedAccepted = readLines(expectedDir.resolve("accepted.nt"));
+        final Set<String> expectedReview = readLines(expectedDir.resolve("review.nt"));
+        assertFalse(expectedAccepted.isEmpty());
+        assertFalse(expectedReview.isEmpty());
+
+        // Split into blocks, and link every block
+
+        SpatialBlockPartitioner partitioner = SpatialBlockPartitioner.builder()
+            .source(sourcePath)
+            .target(targetPath)
+            .partitionsDirectory(partitionsDir)
+            .cellSize(0.25)
+            .margin(REVIEW_THRESHOLD)
+            .maxBlocks(4)
+            .build();
+
+        Map<String, ExecutionContext> contexts = partitioner.partition(4);
+        // 4 spatial blocks and a block for entities without geometry
+        assertEquals(5, contexts.size());
+
+        int numberOfTargets = 0;
+        for (int i = 0; i < contexts.size(); ++i) {
+            final String name = InputFilesPartitioner.partitionName(i);
+            final ExecutionContext context = contexts.get(name);
+            assertNotNull(context);
+            assertEquals(i, context.getInt(SpatialBlockPartitioner.Keys.PARTITION_INDEX));
+
+            final Path blockInputDir = Paths.get(context.getString(SpatialBlockPartitioner.Keys.INPUT_DIR));
+            final Path blockOutputDir = Paths.get(context.getString(SpatialBlockPartitioner.Keys.OUTPUT_DIR));
+            assertEquals(partitionsDir.resolve(name).resolve(InputFilesPartitioner.OUTPUT_DIR_NAME), blockOutputDir);
+
+            // Shared (category) nodes are copied into every block
+            final Set<String> blockSourceLines = readLines(blockInputDir.resolve("a.nt"));
+            for (int k = 0; k < NUMBER_OF_CATEGORIES; ++k) {
+                assertTrue(blockSourceLines.contains(
+                    String.format("<http://a/category/%d> %s \"category %d\" .", k, NAME, k)));
+            }
+
+            numberOfTargets += countSubjects(blockInputDir.resolve("b.nt"), "<http://slipo.eu/def#POI>");
+            link(blockInputDir.resolve("a.nt"), blockInputDir.resolve("b.nt"), blockOutputDir);
+        }
+
+        // Target entities near the boundary of a block are copied into neighbouring blocks
+        assertTrue(numberOfTargets > targetPoints.size());
+
+        // Merge the output of blocks, and compare with the unblocked output
+
+        final Path outputDir = tempDir.resolve("output");
+        MergePartitionOutputTasklet tasklet = MergePartitionOutputTasklet.builder()
+            .partitionsDirectory(partitionsDir)
+            .outputDirectory(outputDir)
+            .expected("accepted.nt", "review.nt")
+            .build();
+        tasklet.execute(null, null);
+
+        assertEquals(expectedAccepted, readLines(outputDir.resolve("accepted.nt")));
+        assertEquals(expectedReview, readLines(outputDir.resolve("review.nt")));
+
+        // Merge again: the output must be the same
+        tasklet.execute(null, null);
+        assertEquals(expectedAccepted.size(),
+            Files.readAllLines(outputDir.resolve("accepted.nt"), StandardCharsets.UTF_8).size());
+        assertEquals(expectedReview.size(),
+            Files.readAllLines(outputDir.resolve("review.nt"), StandardCharsets.UTF_8).size());
+    }
+
+    @Test
+    public void testSkipBlocksWithoutTargets() throws Exception
+    {
+        // Source POIs on 2 distant clusters, target POIs only near the first one
+
+        final List<double[]> sourcePoints = Arrays.asList(
+            new double[] { 20.01, 37.01 }, new double[] { 20.02, 37.02 },
+            new double[] { 23.01, 38.01 }, new double[] { 23.02, 38.02 });
+        final List<double[]> targetPoints = Arrays.asList(
+            new double[] { 20.011, 37.011 }, new double[] { 20.021, 37.021 });
+
+        final Path sourcePath = inputDir.resolve("a.nt");
+        final Path targetPath = inputDir.resolve("b.nt");
+        writePois(sourcePath, "http://a", sourcePoints, 0);
+        writePois(targetPath, "http://b", targetPoints, 0);
+
+        SpatialBlockPartitioner partitioner = SpatialBlockPartitioner.builder()
+            .source(sourcePath)
+            .target(targetPath)
+            .partitionsDirectory(partitionsDir)
+            .cellSize(0.5)
+            .margin(0.01)
+            .maxBlocks(4)
+            .build();
+
+        Map<String, ExecutionContext> contexts = partitioner.partition(4);
+
+        // The block of the second cluster is skipped (it cannot produce any link)
+
+        int numberOfSources = 0, numberOfTargets = 0;
+        for (ExecutionContext context: contexts.values()) {
+            final Path blockInputDir = Paths.get(context.getString(SpatialBlockPartitioner.Keys.INPUT_DIR));
+            numberOfSources += countSubjects(blockInputDir.resolve("a.nt"), "<http://slipo.eu/def#POI>");
+            numberOfTargets += countSubjects(blockInputDir.resolve("b.nt"), "<http://slipo.eu/def#POI>");
+        }
+        assertEquals(2, numberOfSources);
+        assertEquals(2, numberOfTargets);
+    }
+
+    @Test
+    public void testMergeDropsDuplicates() throws Exception
+    {
+        final Path outputDir0 = Files.createDirectories(
+            partitionsDir.resolve(InputFilesPartitioner.partitionName(0)).resolve(InputFilesPartitioner.OUTPUT_DIR_NAME));
+        final Path outputDir1 = Files.createDirectories(
+            partitionsDir.resolve(InputFilesPartitioner.partitionName(1)).resolve(InputFilesPartitioner.OUTPUT_DIR_NAME));
+
+        Files.write(outputDir0.resolve("accepted.nt"), Arrays.asList("<a1> <p> <b1> .", "<a2> <p> <b2> ."));
+        Files.write(outputDir1.resolve("accepted.nt"), Arrays.asList("<a2> <p> <b2> .", "<a3> <p> <b3> ."));
+        Files.write(outputDir1.resolve("review.nt"), Arrays.asList("<a4> <p> <b4> ."));
+
+        final Path outputDir = tempDir.resolve("output");
+        MergePartitionOutputTasklet.builder()
+            .partitionsDirectory(partitionsDir)
+            .outputDirectory(outputDir)
+            .expected("accepted.nt", "review.nt", "other.nt")
+            .build()
+            .execute(null, null);
+
+        assertEquals(
+            Arrays.asList("<a1> <p> <b1> .", "<a2> <p> <b2> .", "<a3> <p> <b3> ."),
+            Files.readAllLines(outputDir.resolve("accepted.nt")));
+        assertEquals(Arrays.asList("<a4> <p> <b4> ."), Files.readAllLines(outputDir.resolve("review.nt")));
+        // An expected file is created even if no partition has produced it
+        assertTrue(Files.exists(outputDir.resolve("other.nt")));
+        assertEquals(0L, Files.size(outputDir.resolve("other.nt")));
+    }
+
+    @Test
+    public void testMergeDropsDuplicatesInChunks() throws Exception
+    {
+        final Random random = new Random(17);
+        final Set<String> expected = new HashSet<>();
+        for (int p = 0; p < 3; ++p) {
+            final Path outputDir = Files.createDirectories(
+                partitionsDir.resolve(InputFilesPartitioner.partitionName(p)).resolve(InputFilesPartitioner.OUTPUT_DIR_NAME));
+            final List<String> lines = new ArrayList<>();
+            for (int i = 0; i < 500; ++i) {
+                final String line = String.format("<a%d> <p> <b%d> .", random.nextInt(800), p);
+                lines.add(line);
+                lines.add(i % 50 == 0? "" : line); // duplicates (and a few empty lines)
+                expected.add(line);
+            }
+            Files.write(outputDir.resolve("accepted.nt"), lines);
+        }
+
+        // Sort in chunks much smaller than the input, so that chunks are spilled and merged
+
+        final Path outputDir = tempDir.resolve("output");
+        MergePartitionOutputTasklet.builder()
+            .partitionsDirectory(partitionsDir)
+            .outputDirectory(outputDir)
+            .merger("accepted.nt", MergePartitionOutputTasklet.distinctLines(1024))
+            .build()
+            .execute(null, null);
+
+        final List<String> expectedLines = new ArrayList<>(expected);
+        expectedLines.sort(null);
+        assertEquals(expectedLines, Files.readAllLines(outputDir.resolve("accepted.nt")));
+
+        // No temporary files are left behind
+        try (Stream<Path> paths = Files.list(outputDir)) {
+            assertEquals(Arrays.asList(outputDir.resolve("accepted.nt")), paths.collect(Collectors.toList()));
+        }
+    }
+}
@@ -0,0 +1,312 @@
+package eu.slipo.workbench.rpc.tests.unit.jobs;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.util.FileSystemUtils;
+
+import eu.slipo.workbench.common.service.DefaultFileMaterializer;
+import eu.slipo.workbench.rpc.jobs.partition.MergePartitionOutputTasklet;
+import eu.slipo.workbench.rpc.jobs.partition.NTriples;
+import eu.slipo.workbench.rpc.jobs.partition.SharedResourcesMerger;
+import eu.slipo.workbench.rpc.jobs.partition.SubjectHashPartitioner;
+
+@RunWith(SpringRunner.class)
+@ActiveProfiles({ "testing" })
+public class SubjectHashPartitionerTests
+{
+    private static final String NAME = "<http://slipo.eu/def#name>";
+
+    private static final String LABEL = "<http://slipo.eu/def#label>";
+
+    private static final String GEOMETRY = "<http://www.opengis.net/ont/geosparql#hasGeometry>";
+
+    private static final String WKT = "<http://www.opengis.net/ont/geosparql#asWKT>";
+
+    private static final String CATEGORY = "<http://slipo.eu/def#category>";
+
+    private static final int NUMBER_OF_POIS = 500;
+
+    private Path tempDir;
+
+    private Path inputPath;
+
+    private Path partitionsDir;
+
+    @Before
+    public void setup() throws IOException
+    {
+        tempDir = Files.createTempDirectory("subject-hash-");
+        inputPath = Files.createDirectory(tempDir.resolve("input")).resolve("1.nt");
+        partitionsDir = tempDir.resolve("partitions");
+
+        // Generate input (with triples of the same subject scattered across the file)
+
+        try (BufferedWriter writer = Files.newBufferedWriter(inputPath, StandardCharsets.UTF_8)) {
+            writer.write("# A comment\n");
+            for (int i = 0; i < NUMBER_OF_POIS; ++i) {
+                writer.write(String.format("<http://example.com/poi/%d> %s <http://slipo.eu/def#POI> .%n",
+                    i, NTriples.RDF_TYPE));
+            }
+            writer.newLine();
+            for (int i = 0; i < NUMBER_OF_POIS; ++i) {
+                writer.write(String.format("<http://example.com/poi/%d> %s \"POI %d\" .%n", i, NAME, i));
+                writer.write(String.format("_:b%d %s \"Blank %d\" .%n", i, NAME, i));
+            }
+        }
+    }
+
+    @After
+    public void teardown() throws IOException
+    {
+        FileSystemUtils.deleteRecursively(tempDir.toFile());
+    }
+
+    /**
+     * A fake enrichment tool (standing for a DEER container): for every subject, a label is
+     * generated from the name of the subject (thus requiring all triples of a subject).
+     */
+    private static void enrich(Path inputPath, Path outputPath) throws IOException
+    {
+        final Map<String, List<String>> triplesBySubject = new HashMap<>();
+        for (String line: Files.readAllLines(inputPath, StandardCharsets.UTF_8)) {
+            final NTriples.Triple triple = NTriples.parse(line);
+            if (triple != null)
+                triplesBySubject.computeIfAbsent(triple.subject(), k -> new ArrayList<>()).add(line);
+        }
+
+        final List<String> output = new ArrayList<>();
+        for (Map.Entry<String, List<String>> e: triplesBySubject.entrySet()) {
+            output.addAll(e.getValue());
+            String name = null;
+            boolean typed = false;
+            for (String line: e.getValue()) {
+                final NTriples.Triple triple = NTriples.parse(line);
+                if (triple.predicate().equals(NAME))
+                    name = triple.literalValue();
+                else if (triple.predicate().equals(NTriples.RDF_TYPE))
+                    typed = true;
+            }
+            output.add(String.format("%s %s \"%s (%s)\" .", e.getKey(), LABEL, name, typed? "POI" : "-"));
+        }
+
+        Files.write(outputPath, output, StandardCharsets.UTF_8);
+    }
+
+    private static List<String> readTriples(Path path) throws IOException
+    {
+        final List<String> lines = new ArrayList<>();
+        for (String line: Files.readAllLines(path, StandardCharsets.UTF_8)) {
+            if (NTriples.parse(line) != null)
+                lines.add(line);
+        }
+        lines.sort(null);
+        return lines;
+    }
+
+    @Test(timeout = 20 * 1000L)
+    public void testShardedEnrichmentEqualsSingle() throws Exception
+    {
+        final Path expectedPath = tempDir.resolve("expected.nt");
+        enrich(inputPath, expectedPath);
+
+        final Map<String, ExecutionContext> contexts = SubjectHashPartitioner.builder()
+            .input(inputPath)
+            .partitionsDirectory(partitionsDir)
+            .maxShards(3)
+            .build()
+            .partition(8);
+        assertEquals(3, contexts.size());
+
+        final Map<String, Integer> shardOfSubject = new HashMap<>();
+        final List<String> shardedInput = new ArrayList<>();
+        for (int i = 0; i < contexts.size(); ++i) {
+            final ExecutionContext context = contexts.get(SubjectHashPartitioner.partitionName(i));
+            assertEquals(i, context.getInt(SubjectHashPartitioner.Keys.PARTITION_INDEX));
+            final Path shardInputPath =
+                Paths.get(context.getString(SubjectHashPartitioner.Keys.INPUT_DIR)).resolve("1.nt");
+            final Path shardOutputDir = Paths.get(context.getString(SubjectHashPartitioner.Keys.OUTPUT_DIR));
+
+            // All triples of a subject are found in the same shard
+            final List<String> triples = readTriples(shardInputPath);
+            assertFalse(triples.isEmpty());
+            for (String line: triples) {
+                final Integer p = shardOfSubject.putIfAbsent(NTriples.parse(line).subject(), i);
+                assertTrue(p == null || p == i);
+            }
+            shardedInput.addAll(triples);
+
+            enrich(shardInputPath, shardOutputDir.resolve("output.nt"));
+        }
+
+        // Every triple is found in exactly one shard
+        shardedInput.sort(null);
+        assertEquals(readTriples(inputPath), shardedInput);
+        assertEquals(2 * NUMBER_OF_POIS, shardOfSubject.size());
+
+        final Path outputDir = tempDir.resolve("output");
+        MergePartitionOutputTasklet.builder()
+            .partitionsDirectory(partitionsDir)
+            .outputDirectory(outputDir)
+            .expected("output.nt")
+            .merger("output.nt", MergePartitionOutputTasklet.concatenate(new DefaultFileMaterializer()))
+            .build()
+            .execute(null, null);
+
+        final List<String> output = Files.readAllLines(outputDir.resolve("output.nt"), StandardCharsets.UTF_8);
+        final Set<String> distinctOutput = new HashSet<>(output);
+        assertEquals(output.size(), distinctOutput.size());
+        assertEquals(new HashSet<>(readTriples(expectedPath)), distinctOutput);
+    }
+
+    @Test
+    public void testNumberOfShards()
+    {
+        final long k = 1024L * 1024L;
+        assertEquals(1, SubjectHashPartitioner.numberOfShards(0L, 64 * k, 4));
+        assertEquals(1, SubjectHashPartitioner.numberOfShards(64 * k, 64 * k, 4));
+        assertEquals(2, SubjectHashPartitioner.numberOfShards(64 * k + 1, 64 * k, 4));
+        assertEquals(4, SubjectHashPartitioner.numberOfShards(1024 * k, 64 * k, 4));
+    }
+
+    @Test
+    public void testShardOfEntity()
+    {
+        final int[] counts = new int[4];
+        for (int i = 0; i < 4000; ++i) {
+            final int p = SubjectHashPartitioner.shardOf(i, counts.length);
+            assertEquals(p, SubjectHashPartitioner.shardOf(i, counts.length));
+            counts[p]++;
+        }
+        // Entities are spread (roughly) evenly
+        for (int c: counts)
+            assertTrue(c > 800 && c < 1200);
+    }
+
+    /**
+     * A fake enrichment tool that generates a label for every POI from its name and the WKT of
+     * its geometry (a separate resource), and a label for every category
+     */
+    private static void enrichWithGeometry(Path inputPath, Path outputPath) throws IOException
+    {
+        final Map<String, Map<String, String>> valuesBySubject = new HashMap<>();
+        final List<String> output = new ArrayList<>();
+        for (String line: Files.readAllLines(inputPath, StandardCharsets.UTF_8)) {
+            final NTriples.Triple triple = NTriples.parse(line);
+            if (triple == null)
+                continue;
+            output.add(line);
+            valuesBySubject.computeIfAbsent(triple.subject(), k -> new HashMap<>())
+                .put(triple.predicate(), triple.hasResourceObject()? triple.object() : triple.literalValue());
+        }
+
+        for (Map.Entry<String, Map<String, String>> e: valuesBySubject.entrySet()) {
+            final Map<String, String> values = e.getValue();
+            if (values.containsKey(GEOMETRY)) {
+                final Map<String, String> geometry = valuesBySubject.get(values.get(GEOMETRY));
+                output.add(String.format("%s %s \"%s at %s\" .", e.getKey(), LABEL,
+                    values.get(NAME), geometry == null? "-" : geometry.get(WKT)));
+            } else if (!values.containsKey(WKT)) {
+                output.add(String.format("%s %s \"Category %s\" .", e.getKey(), LABEL, values.get(NAME)));
+            }
+        }
+
+        Files.write(outputPath, output, StandardCharsets.UTF_8);
+    }
+
+    @Test(timeout = 20 * 1000L)
+    public void testShardedEnrichmentKeepsEntitiesTogether() throws Exception
+    {
+        // Generate input: every POI references its own geometry (a separate resource, described
+        // apart from the POI) and a category shared among POIs
+
+        final Path inputPath = tempDir.resolve("input").resolve("2.nt");
+        try (BufferedWriter writer = Files.newBufferedWriter(inputPath, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < NUMBER_OF_POIS; ++i) {
+                writer.write(String.format("<http://example.com/poi/%d> %s \"POI %d\" .%n", i, NAME, i));
+                writer.write(String.format("<http://example.com/poi/%d> %s <http://example.com/geometry/%d> .%n",
+                    i, GEOMETRY, i));
+                writer.write(String.format("<http://example.com/poi/%d> %s <http://example.com/category/%d> .%n",
+                    i, CATEGORY, i % 3));
+            }
+            for (int i = 0; i < NUMBER_OF_POIS; ++i) {
+                writer.write(String.format("<http://example.com/geometry/%d> %s \"POINT (%d.5 37.9)\" .%n",
+                    i, WKT, i));
+            }
+            for (int i = 0; i < 3; ++i) {
+                writer.write(String.format("<http://example.com/category/%d> %s \"C%d\" .%n", i, NAME, i));
+            }
+        }
+
+        final Path expectedPath = tempDir.resolve("expected-2.nt");
+        enrichWithGeometry(inputPath, expectedPath);
+
+        final Map<String, ExecutionContext> contexts = SubjectHashPartitioner.builder()
+            .input(inputPath)
+            .partitionsDirectory(partitionsDir)
+            .maxShards(4)
+            .build()
+            .partition(4);
+        assertEquals(4, contexts.size());
+
+        for (int i = 0; i < contexts.size(); ++i) {
+            final ExecutionContext context = contexts.get(SubjectHashPartitioner.partitionName(i));
+            final Path shardInputPath =
+                Paths.get(context.getString(SubjectHashPartitioner.Keys.INPUT_DIR)).resolve("2.nt");
+            final Path shardOutputDir = Paths.get(context.getString(SubjectHashPartitioner.Keys.OUTPUT_DIR));
+
+            // A geometry is found in the same shard as its POI, and categories are in every shard
+            final Set<String> subjects = new HashSet<>();
+            for (String line: readTriples(shardInputPath))
+                subjects.add(NTriples.parse(line).subject());
+            for (int j = 0; j < NUMBER_OF_POIS; ++j) {
+                assertEquals(subjects.contains(String.format("<http://example.com/poi/%d>", j)),
+                    subjects.contains(String.format("<http://example.com/geometry/%d>", j)));
+            }
+            for (int j = 0; j < 3; ++j)
+                assertTrue(subjects.contains(String.format("<http://example.com/category/%d>", j)));
+
+            enrichWithGeometry(shardInputPath, shardOutputDir.resolve("output.nt"));
+        }
+
+        final List<String> sharedResources = Files.readAllLines(
+            partitionsDir.resolve(SubjectHashPartitioner.SHARED_RESOURCES_FILENAME), StandardCharsets.UTF_8);
+        assertEquals(3, sharedResources.size());
+
+        final Path outputDir = tempDir.resolve("output");
+        MergePartitionOutputTasklet.builder()
+            .partitionsDirectory(partitionsDir)
+            .outputDirectory(outputDir)
+            .expected("output.nt")
+            .merger("output.nt", new SharedResourcesMerger(
+                partitionsDir.resolve(SubjectHashPartitioner.SHARED_RESOURCES_FILENAME)))
+            .build()
+            .execute(null, null);
+
+        // The merged output is the same as the output of a single run (without duplicates)
+
+        final List<String> output = Files.readAllLines(outputDir.resolve("output.nt"), StandardCharsets.UTF_8);
+        final Set<String> distinctOutput = new HashSet<>(output);
+        assertEquals(output.size(), distinctOutput.size());
+        assertEquals(new HashSet<>(readTriples(expectedPath)), distinctOutput);
+    }
+}
@@ -0,0 +1,169 @@
+package eu.slipo.workbench.rpc.tests.unit.jobs;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.util.FileSystemUtils;
+
+import com.google.common.collect.ImmutableList;
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.messages.ContainerConfig;
+import com.spotify.docker.client.messages.ContainerCreation;
+import com.spotify.docker.client.messages.ContainerInfo;
+import com.spotify.docker.client.messages.ContainerState;
+import com.spotify.docker.client.messages.ImageInfo;
+
+import eu.slipo.workbench.common.model.jobs.WarmPoolInfo;
+import eu.slipo.workbench.rpc.jobs.tasklet.docker.WarmContainerPool;
+
+@RunWith(SpringRunner.class)
+@ActiveProfiles({ "testing" })
+public class WarmContainerPoolTests
+{
+    private static final String IMAGE_NAME = "athenarc/triplegeo:1.5";
+
+    private static final Path CONTAINER_DATA_DIR = Paths.get("/var/local/triplegeo");
+
+    private static final long WAIT_TIMEOUT = 5000L;
+
+    @Mock
+    private DockerClient docker;
+
+    private Path stagingRoot;
+
+    private WarmContainerPool pool;
+
+    /**
+     * The number of containers created so far
+     */
+    private final AtomicInteger created = new AtomicInteger();
+
+    /**
+     * A latch that (while not released) blocks creation of containers beyond the initial ones
+     */
+    private final CountDownLatch refillLatch = new CountDownLatch(1);
+
+    private final ContainerState runningState = mock(ContainerState.class);
+
+    @Before
+    public void setup() throws Exception
+    {
+        MockitoAnnotations.initMocks(this);
+
+        stagingRoot = Files.createTempDirectory("warm-pool-");
+
+        ContainerConfig imageConfig = mock(ContainerConfig.class);
+        when(imageConfig.entrypoint()).thenReturn(ImmutableList.of("/bin/sh", "/run.sh"));
+        when(imageConfig.cmd()).thenReturn(ImmutableList.of());
+        ImageInfo imageInfo = mock(ImageInfo.class);
+        when(imageInfo.config()).thenReturn(imageConfig);
+        when(docker.inspectImage(IMAGE_NAME)).thenReturn(imageInfo);
+
+        when(docker.createContainer(any(ContainerConfig.class), anyString())).thenAnswer(invocation -> {
+            int n = created.incrementAndGet();
+            if (n > 2)
+                refillLatch.await();
+            ContainerCreation creation = mock(ContainerCreation.class);
+            when(creation.id()).thenReturn("c" + n);
+            return creation;
+        });
+
+        when(runningState.running()).thenReturn(true);
+        ContainerInfo containerInfo = mock(ContainerInfo.class);
+        when(containerInfo.state()).thenReturn(runningState);
+        when(docker.inspectContainer(anyString())).thenReturn(containerInfo);
+
+        pool = new WarmContainerPool(docker, IMAGE_NAME, 2, stagingRoot, CONTAINER_DATA_DIR, "triplegeo-warm");
+        pool.start();
+    }
+
+    @After
+    public void teardown() throws Exception
+    {
+        refillLatch.countDown();
+        pool.shutdown();
+        FileSystemUtils.deleteRecursively(stagingRoot.toFile());
+    }
+
+    private void awaitIdle(int n) throws InterruptedException
+    {
+        final long deadline = System.currentTimeMillis() + WAIT_TIMEOUT;
+        while (pool.getInfo().getIdle() < n) {
+            assertTrue("Timed out waiting for the pool to fill", System.currentTimeMillis() < deadline);
+            Thread.sleep(20L);
+        }
+    }
+
+    @Test
+    public void testHitsAndMisses() throws Exception
+    {
+        assertEquals(Arrays.asList("/bin/sh", "/run.sh"), pool.command());
+        awaitIdle(2);
+
+        WarmContainerPool.Slot slot1 = pool.acquire();
+        WarmContainerPool.Slot slot2 = pool.acquire();
+        assertNotNull(slot1);
+        assertNotNull(slot2);
+        assertNotEquals(slot1.containerId(), slot2.containerId());
+        assertTrue(Files.isDirectory(slot1.inputDir()));
+        assertTrue(Files.isDirectory(slot1.outputDir()));
+        assertTrue(Files.isDirectory(slot1.configDir()));
+
+        // Refilling is blocked: the next request is a miss
+        assertNull(pool.acquire());
+
+        WarmPoolInfo info = pool.getInfo();
+        assertEquals(IMAGE_NAME, info.getImage());
+        assertEquals(2, info.getSize());
+        assertEquals(2L, info.getHits());
+        assertEquals(1L, info.getMisses());
+        assertEquals(slot1.warmupTime() + slot2.warmupTime(), info.getSavedMillis());
+
+        // Release: the containers are destroyed along with their staging directories
+
+        refillLatch.countDown();
+        pool.release(slot1);
+        pool.release(slot2);
+        awaitIdle(2);
+
+        verify(docker, timeout(WAIT_TIMEOUT)).removeContainer(eq(slot1.containerId()), any());
+        verify(docker, timeout(WAIT_TIMEOUT)).removeContainer(eq(slot2.containerId()), any());
+        assertFalse(Files.exists(slot1.inputDir()));
+
+        assertNotNull(pool.acquire());
+        assertEquals(3L, pool.getInfo().getHits());
+    }
+
+    @Test
+    public void testDiscardsDeadContainers() throws Exception
+    {
+        awaitIdle(2);
+
+        // All idle containers have died
+        when(runningState.running()).thenReturn(false);
+
+        assertNull(pool.acquire());
+        assertEquals(0L, pool.getInfo().getHits());
+        assertEquals(1L, pool.getInfo().getMisses());
+
+        refillLatch.countDown();
+        verify(docker, timeout(WAIT_TIMEOUT)).removeContainer(eq("c1"), any());
+        verify(docker, timeout(WAIT_TIMEOUT)).removeContainer(eq("c2"), any());
+    }
+}
@@ -0,0 +1,158 @@
+package eu.slipo.workbench.rpc.tests.unit.service;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import eu.slipo.workbench.common.model.jobs.AdmissionInfo;
+import eu.slipo.workbench.rpc.service.AdmissionScheduler;
+import eu.slipo.workbench.rpc.service.AdmissionScheduler.AdmissionRejectedException;
+import eu.slipo.workbench.rpc.service.AdmissionScheduler.Policy;
+import eu.slipo.workbench.rpc.service.AdmissionScheduler.Ticket;
+import eu.slipo.workbench.rpc.service.DefaultAdmissionScheduler;
+
+@RunWith(SpringRunner.class)
+@ActiveProfiles({ "testing" })
+public class DefaultAdmissionSchedulerTests
+{
+    private static final long GB = 1024L * 1024L * 1024L;
+
+    @Test
+    public void testAdmitAndQueueInArrivalOrder() throws Exception
+    {
+        AdmissionScheduler scheduler = new DefaultAdmissionScheduler(4 * GB, 4.0, Policy.FIFO);
+
+        Ticket t1 = scheduler.request("t1", 2 * GB, 1.0, 0);
+        Ticket t2 = scheduler.request("t2", 2 * GB, 1.0, 0);
+        assertTrue(t1.isAdmitted());
+        assertTrue(t2.isAdmitted());
+
+        // The budget is exhausted: a large request is queued, and blocks a smaller one after it
+        Ticket t3 = scheduler.request("t3", 3 * GB, 1.0, 0);
+        Ticket t4 = scheduler.request("t4", 1 * GB, 1.0, 0);
+        assertFalse(t3.await(10L));
+        assertFalse(t4.isAdmitted());
+
+        AdmissionInfo info = scheduler.getInfo();
+        assertEquals(2, info.getRunning());
+        assertEquals(2, info.getQueued());
+        assertEquals(4 * GB, info.getMemoryInUse());
+
+        // Releasing one container makes room for t4, but not for t3 (which is ahead of t4)
+        t1.release();
+        assertFalse(t3.await(10L));
+        assertFalse(t4.isAdmitted());
+
+        t2.release();
+        assertTrue(t3.await(10L));
+        assertTrue(t4.await(10L));
+
+        // Release is idempotent
+        t1.release();
+        info = scheduler.getInfo();
+        assertEquals(2, info.getRunning());
+        assertEquals(0, info.getQueued());
+        assertEquals(4 * GB, info.getMemoryInUse());
+        assertEquals(4L, info.getAdmittedCount());
+
+        t3.release();
+        t4.release();
+        info = scheduler.getInfo();
+        assertEquals(0, info.getRunning());
+        assertEquals(0L, info.getMemoryInUse());
+        assertEquals(0.0, info.getCpusInUse(), 1E-6);
+    }
+
+    @Test
+    public void testAdmitInPriorityOrder() throws Exception
+    {
+        AdmissionScheduler scheduler = new DefaultAdmissionScheduler(4 * GB, 2.0, Policy.PRIORITY);
+
+        Ticket t1 = scheduler.request("t1", 1 * GB, 2.0, 0);
+        assertTrue(t1.isAdmitted());
+
+        // No CPUs left: queue requests with different priorities
+        Ticket t2 = scheduler.request("t2", 1 * GB, 1.0, 0);
+        Ticket t3 = scheduler.request("t3", 1 * GB, 2.0, 5);
+        Ticket t4 = scheduler.request("t4", 1 * GB, 1.0, 5);
+        assertEquals(3, scheduler.getInfo().getQueued());
+
+        t1.release();
+        // The first request of the highest priority (t3) takes all CPUs
+        assertTrue(t3.isAdmitted());
+        assertFalse(t4.isAdmitted());
+        assertFalse(t2.isAdmitted());
+
+        t3.release();
+        assertTrue(t4.isAdmitted());
+        assertTrue(t2.isAdmitted());
+    }
+
+    @Test
+    public void testAdmitShortestFirst() throws Exception
+    {
+        AdmissionScheduler scheduler = new DefaultAdmissionScheduler(4 * GB, 1.0, Policy.SHORTEST_FIRST);
+
+        Ticket t1 = scheduler.request("t1", 1 * GB, 1.0, 0, 1000L);
+        assertTrue(t1.isAdmitted());
+
+        // No CPUs left: queue requests with different expected durations
+        Ticket t2 = scheduler.request("t2", 1 * GB, 1.0, 0);
+        Ticket t3 = scheduler.request("t3", 1 * GB, 1.0, 0, 60000L);
+        Ticket t4 = scheduler.request("t4", 1 * GB, 1.0, 0, 5000L);
+        Ticket t5 = scheduler.request("t5", 1 * GB, 1.0, 1, 600000L);
+        assertEquals(4, scheduler.getInfo().getQueued());
+
+        // Priority comes first, then the shortest run, and a run of unknown duration comes last
+        t1.release();
+        assertTrue(t5.isAdmitted());
+        t5.release();
+        assertTrue(t4.isAdmitted());
+        assertFalse(t3.isAdmitted());
+        t4.release();
+        assertTrue(t3.isAdmitted());
+        assertFalse(t2.isAdmitted());
+        t3.release();
+        assertTrue(t2.isAdmitted());
+    }
+
+    @Test
+    public void testRejectAndCancel() throws Exception
+    {
+        AdmissionScheduler scheduler = new DefaultAdmissionScheduler(2 * GB, 2.0, Policy.FIFO);
+
+        try {
+            scheduler.request("huge", 3 * GB, 1.0, 0);
+            fail("Expected a request exceeding the budget to be rejected");
+        } catch (AdmissionRejectedException ex) {
+            // expected
+        }
+        assertEquals(1L, scheduler.getInfo().getRejectedCount());
+
+        Ticket t1 = scheduler.request("t1", 2 * GB, 1.0, 0);
+        Ticket t2 = scheduler.request("t2", 2 * GB, 1.0, 0);
+        Ticket t3 = scheduler.request("t3", 1 * GB, 1.0, 0);
+        assertTrue(t1.isAdmitted());
+
+        // Cancelling the head of the queue unblocks the requests behind it
+        t2.release();
+        assertFalse(t3.isAdmitted());
+        assertEquals(1, scheduler.getInfo().getQueued());
+        t1.release();
+        assertTrue(t3.isAdmitted());
+        assertFalse(t2.isAdmitted());
+
+        // A running container (e.g. of a resumed step) is accounted for unconditionally
+        Ticket t4 = scheduler.admit("t4", 2 * GB, 1.0);
+        assertTrue(t4.isAdmitted());
+        assertEquals(3 * GB, scheduler.getInfo().getMemoryInUse());
+
+        Ticket t5 = scheduler.request("t5", 1 * GB, 1.0, 0);
+        assertFalse(t5.isAdmitted());
+        t4.release();
+        assertTrue(t5.isAdmitted());
+    }
+}
@@ -0,0 +1,215 @@
+package eu.slipo.workbench.rpc.tests.unit.service;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.scope.context.StepContext;
+import org.springframework.batch.test.MetaDataInstanceFactory;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.exceptions.ContainerNotFoundException;
+import com.spotify.docker.client.exceptions.DockerException;
+import com.spotify.docker.client.messages.ContainerConfig;
+import com.spotify.docker.client.messages.ContainerCreation;
+import com.spotify.docker.client.messages.ContainerInfo;
+import com.spotify.docker.client.messages.Info;
+
+import eu.slipo.workbench.rpc.jobs.tasklet.docker.CreateContainerTasklet;
+import eu.slipo.workbench.rpc.service.ContainerHost;
+import eu.slipo.workbench.rpc.service.DefaultContainerHostPool;
+
+@RunWith(SpringRunner.class)
+@ActiveProfiles({ "testing" })
+public class DefaultContainerHostPoolTests
+{
+    private static final long GB = 1024L * 1024L * 1024L;
+
+    @Mock
+    private DockerClient docker1;
+
+    @Mock
+    private DockerClient docker2;
+
+    private DefaultContainerHostPool pool;
+
+    private static Info info(long memory, int runningContainers)
+    {
+        Info info = mock(Info.class);
+        when(info.memTotal()).thenReturn(memory);
+        when(info.containersRunning()).thenReturn(runningContainers);
+        return info;
+    }
+
+    @Before
+    public void setup() throws Exception
+    {
+        MockitoAnnotations.initMocks(this);
+
+        Info info1 = info(4 * GB, 0), info2 = info(8 * GB, 0);
+        when(docker1.info()).thenReturn(info1);
+        when(docker2.info()).thenReturn(info2);
+
+        ContainerHost host1 = ContainerHost.builder("n1", docker1)
+            .build();
+        ContainerHost host2 = ContainerHost.builder("n2", docker2)
+            .pathMapping(Paths.get("/mnt/nfs-1/app-data"), Paths.get("/var/nfs-1/app-data"))
+            .pathMapping(Paths.get("/mnt/nfs-1/app-data/jobs"), Paths.get("/var/jobs"))
+            .build();
+
+        pool = new DefaultContainerHostPool(Arrays.asList(host1, host2));
+        pool.checkHealth();
+    }
+
+    @Test
+    public void testPlaceByReservedMemory()
+    {
+        // n2 has twice the memory of n1
+        assertEquals("n2", pool.place("c1", 2 * GB).name());
+        assertEquals("n1", pool.place("c2", 1 * GB).name());
+        assertEquals("n2", pool.place("c3", 2 * GB).name());
+        assertEquals("n1", pool.place("c4", 1 * GB).name());
+
+        // A container is placed once
+        assertEquals("n2", pool.place("c1", 2 * GB).name());
+
+        // n1 is half reserved, n2 is half reserved: n1 cannot fit 3G
+        assertEquals("n2", pool.place("c5", 3 * GB).name());
+
+        pool.release("c2");
+        pool.release("c4");
+        assertEquals("n1", pool.place("c6", 1 * GB).name());
+    }
+
+    @Test
+    public void testPlaceByRunningContainers() throws Exception
+    {
+        Info info1 = info(4 * GB, 3), info2 = info(4 * GB, 1);
+        when(docker1.info()).thenReturn(info1);
+        when(docker2.info()).thenReturn(info2);
+        pool.checkHealth();
+
+        // No memory is declared: compare by running containers
+        assertEquals("n2", pool.place("c1", 0L).name());
+        assertEquals("n2", pool.place("c2", 0L).name());
+        assertEquals("n2", pool.place("c3", 0L).name());
+        assertEquals("n1", pool.place("c4", 0L).name());
+    }
+
+    @Test
+    public void testDrainUnhealthy() throws Exception
+    {
+        doThrow(new DockerException("connection refused")).when(docker2).ping();
+
+        // A single failure is tolerated
+        pool.checkHealth();
+        assertTrue(pool.isHealthy("n2"));
+
+        pool.checkHealth();
+        assertFalse(pool.isHealthy("n2"));
+        assertTrue(pool.isHealthy("n1"));
+
+        for (int i = 0; i < 4; ++i)
+            assertEquals("n1", pool.place("c" + i, 2 * GB).name());
+
+        doThrow(new DockerException("connection refused")).when(docker1).ping();
+        pool.checkHealth();
+        pool.checkHealth();
+        try {
+            pool.place("c9", 0L);
+            fail("Expected no healthy host");
+        } catch (IllegalStateException ex) {
+            // expected
+        }
+
+        doReturn("OK").when(docker2).ping();
+        pool.checkHealth();
+        assertTrue(pool.isHealthy("n2"));
+        assertEquals("n2", pool.place("c9", 0L).name());
+    }
+
+    @Test
+    public void testLocate() throws Exception
+    {
+        assertEquals("n2", pool.place("c1", 1 * GB).name());
+        assertEquals("n2", pool.locate("c1").name());
+        verify(docker1, never()).inspectContainer(anyString());
+
+        // An unknown placement (e.g. after a restart) is found by probing the hosts
+
+        when(docker1.inspectContainer("c2")).thenThrow(new ContainerNotFoundException("c2"));
+        ContainerInfo containerInfo = mock(ContainerInfo.class);
+        when(docker2.inspectContainer("c2")).thenReturn(containerInfo);
+        assertEquals("n2", pool.locate("c2").name());
+
+        when(docker2.inspectContainer("c3")).thenThrow(new ContainerNotFoundException("c3"));
+        when(docker1.inspectContainer("c3")).thenThrow(new ContainerNotFoundException("c3"));
+        assertNull(pool.locate("c3"));
+    }
+
+    @Test
+    public void testMapPaths()
+    {
+        ContainerHost host = pool.get("n2");
+
+        assertEquals(Paths.get("/var/nfs-1/app-data/workflows/1"),
+            host.mapPath(Paths.get("/mnt/nfs-1/app-data/workflows/1")));
+        assertEquals(Paths.get("/var/jobs/1/input"),
+            host.mapPath(Paths.get("/mnt/nfs-1/app-data/jobs/1/input")));
+        assertEquals(Paths.get("/tmp/1"), host.mapPath(Paths.get("/tmp/1")));
+
+        assertEquals("/var/jobs/1/input:/var/local/triplegeo/input:ro",
+            host.mapBind("/mnt/nfs-1/app-data/jobs/1/input:/var/local/triplegeo/input:ro"));
+        assertEquals("some-volume:/data", host.mapBind("some-volume:/data"));
+    }
+
+    @Test
+    public void testCreateContainerOnPool() throws Exception
+    {
+        ContainerCreation creation = mock(ContainerCreation.class);
+        when(creation.id()).thenReturn("0123456789ab");
+        when(docker2.createContainer(any(ContainerConfig.class), eq("triplegeo-00001")))
+            .thenReturn(creation);
+
+        CreateContainerTasklet tasklet = CreateContainerTasklet.builder()
+            .client(docker1)
+            .hosts(pool)
+            .name("triplegeo-00001")
+            .container(configurer -> configurer
+                .image("athenarc/triplegeo")
+                .volume("/mnt/nfs-1/app-data/jobs/1/input", "/var/local/triplegeo/input", true)
+                .memory(2 * GB))
+            .build();
+
+        StepExecution stepExecution = MetaDataInstanceFactory.createStepExecution();
+        StepContribution contribution = new StepContribution(stepExecution);
+        ChunkContext chunkContext = new ChunkContext(new StepContext(stepExecution));
+        tasklet.execute(contribution, chunkContext);
+
+        ArgumentCaptor<ContainerConfig> config = ArgumentCaptor.forClass(ContainerConfig.class);
+        verify(docker2).createContainer(config.capture(), eq("triplegeo-00001"));
+        verify(docker1, never()).createContainer(any(ContainerConfig.class), anyString());
+
+        assertEquals(
+            Arrays.asList("/var/jobs/1/input:/var/local/triplegeo/input:ro"),
+            config.getValue().hostConfig().binds());
+        assertEquals("n2",
+            stepExecution.getExecutionContext().getString(CreateContainerTasklet.Keys.CONTAINER_HOST));
+        assertEquals("0123456789ab",
+            stepExecution.getExecutionContext().getString(CreateContainerTasklet.Keys.CONTAINER_ID));
+    }
+}
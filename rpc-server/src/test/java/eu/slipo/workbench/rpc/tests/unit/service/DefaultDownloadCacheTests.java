@@ -0,0 +1,279 @@
+package eu.slipo.workbench.rpc.tests.unit.service;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.FileSystemUtils;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import eu.slipo.workbench.common.service.DefaultFileMaterializer;
+import eu.slipo.workbench.rpc.jobs.download.HttpDownloader;
+import eu.slipo.workbench.rpc.service.DefaultDownloadCache;
+
+@RunWith(SpringRunner.class)
+@ActiveProfiles({ "testing" })
+public class DefaultDownloadCacheTests
+{
+    /**
+     * A resource served by our embedded HTTP server
+     */
+    private static class Resource
+    {
+        volatile byte[] content;
+
+        volatile String etag;
+
+        Resource(byte[] content, String etag)
+        {
+            this.content = content;
+            this.etag = etag;
+        }
+    }
+
+    private HttpServer server;
+
+    private final ConcurrentHashMap<String, Resource> resources = new ConcurrentHashMap<>();
+
+    private final AtomicInteger getCount = new AtomicInteger();
+
+    private final AtomicInteger headCount = new AtomicInteger();
+
+    private volatile long getDelay = 0L;
+
+    private Path tempDir;
+
+    private DefaultDownloadCache cache;
+
+    private void handle(HttpExchange exchange) throws IOException
+    {
+        Resource resource = resources.get(exchange.getRequestURI().getPath());
+        if (resource == null) {
+            exchange.sendResponseHeaders(404, -1);
+            exchange.close();
+            return;
+        }
+
+        final byte[] data = resource.content;
+        exchange.getResponseHeaders().set("ETag", resource.etag);
+
+        if (exchange.getRequestMethod().equals("HEAD")) {
+            headCount.incrementAndGet();
+            String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+            if (resource.etag.equals(ifNoneMatch)) {
+                exchange.sendResponseHeaders(304, -1);
+            } else {
+                exchange.getResponseHeaders().set("Content-Length", String.valueOf(data.length));
+                exchange.sendResponseHeaders(200, -1);
+            }
+            exchange.close();
+            return;
+        }
+
+        getCount.incrementAndGet();
+        try {
+            Thread.sleep(getDelay);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        exchange.sendResponseHeaders(200, data.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(data);
+        }
+    }
+
+    private static byte[] randomBytes(int size, long seed)
+    {
+        byte[] data = new byte[size];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+
+    private URL url(String path) throws IOException
+    {
+        return new URL(String.format("http://127.0.0.1:%d%s", server.getAddress().getPort(), path));
+    }
+
+    @Before
+    public void setup() throws Exception
+    {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+
+        tempDir = Files.createTempDirectory("download-cache-");
+        Files.createDirectories(tempDir.resolve("workflows"));
+
+        HttpDownloader downloader = HttpDownloader.builder()
+            .retryBackoff(0L)
+            .readTimeout(5000)
+            .build();
+
+        cache = new DefaultDownloadCache();
+        ReflectionTestUtils.setField(cache, "jobDataDir", tempDir);
+        ReflectionTestUtils.setField(cache, "fileMaterializer", new DefaultFileMaterializer());
+        ReflectionTestUtils.setField(cache, "downloader", downloader);
+        ReflectionTestUtils.setField(cache, "cacheDirLocation", "");
+        ReflectionTestUtils.setField(cache, "maxSizeKbytes", 1024L * 1024L);
+        ReflectionTestUtils.setField(cache, "revalidateAfterSeconds", 60L);
+        ReflectionTestUtils.invokeMethod(cache, "initialize");
+    }
+
+    @After
+    public void teardown() throws IOException
+    {
+        server.stop(0);
+        FileSystemUtils.deleteRecursively(tempDir.toFile());
+    }
+
+    private Path target(String workflow, String name) throws IOException
+    {
+        return Files.createDirectories(tempDir.resolve("workflows").resolve(workflow)).resolve(name);
+    }
+
+    @Test(timeout = 10 * 1000L)
+    public void testDownloadOnceForSeveralWorkflows() throws Exception
+    {
+        byte[] content = randomBytes(200 * 1000, 1L);
+        resources.put("/pois.csv", new Resource(content, "\"a\""));
+
+        Path target1 = target("1", "pois.csv");
+        Path target2 = target("2", "pois.csv");
+
+        String checksum1 = cache.fetch(url("/pois.csv"), target1);
+        String checksum2 = cache.fetch(url("/pois.csv"), target2);
+
+        assertEquals(DigestUtils.sha256Hex(content), checksum1);
+        assertEquals(checksum1, checksum2);
+        assertEquals(1, getCount.get());
+        assertArrayEquals(content, Files.readAllBytes(target2));
+        // Both targets are links to the same cache entry
+        assertTrue(Files.isSameFile(target1, target2));
+        assertEquals(content.length, cache.size());
+    }
+
+    @Test(timeout = 10 * 1000L)
+    public void testRevalidate() throws Exception
+    {
+        ReflectionTestUtils.setField(cache, "revalidateAfterSeconds", 0L);
+
+        byte[] content1 = randomBytes(100 * 1000, 1L);
+        Resource resource = new Resource(content1, "\"a\"");
+        resources.put("/pois.csv", resource);
+
+        Path target1 = target("1", "pois.csv");
+        cache.fetch(url("/pois.csv"), target1);
+
+        // Unmodified: revalidated with a conditional request
+
+        Path target2 = target("2", "pois.csv");
+        cache.fetch(url("/pois.csv"), target2);
+        assertEquals(1, getCount.get());
+        assertTrue(headCount.get() >= 2);
+        assertTrue(Files.isSameFile(target1, target2));
+
+        // Modified: downloaded again
+
+        byte[] content2 = randomBytes(100 * 1000, 2L);
+        resource.content = content2;
+        resource.etag = "\"b\"";
+
+        Path target3 = target("3", "pois.csv");
+        String checksum = cache.fetch(url("/pois.csv"), target3);
+        assertEquals(2, getCount.get());
+        assertEquals(DigestUtils.sha256Hex(content2), checksum);
+        assertArrayEquals(content2, Files.readAllBytes(target3));
+
+        // A previously materialized target is not affected
+        assertArrayEquals(content1, Files.readAllBytes(target1));
+    }
+
+    @Test(timeout = 10 * 1000L)
+    public void testCoalesceConcurrentFetches() throws Exception
+    {
+        byte[] content = randomBytes(500 * 1000, 1L);
+        resources.put("/osm.pbf", new Resource(content, "\"a\""));
+        getDelay = 300L;
+
+        final int n = 4;
+        final CyclicBarrier barrier = new CyclicBarrier(n);
+        ExecutorService executor = Executors.newFixedThreadPool(n);
+        try {
+            List<Future<String>> futures = new ArrayList<>();
+            for (int i = 0; i < n; ++i) {
+                final Path target = target(String.valueOf(i), "osm.pbf");
+                futures.add(executor.submit(() -> {
+                    barrier.await();
+                    return cache.fetch(url("/osm.pbf"), target);
+                }));
+            }
+            for (Future<String> f: futures)
+                assertEquals(DigestUtils.sha256Hex(content), f.get());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(1, getCount.get());
+    }
+
+    @Test(timeout = 10 * 1000L)
+    public void testEvictLeastRecentlyUsed() throws Exception
+    {
+        ReflectionTestUtils.setField(cache, "maxSizeKbytes", 250L);
+
+        byte[] content1 = randomBytes(100 * 1024, 1L);
+        byte[] content2 = randomBytes(100 * 1024, 2L);
+        byte[] content3 = randomBytes(100 * 1024, 3L);
+        resources.put("/1.csv", new Resource(content1, "\"1\""));
+        resources.put("/2.csv", new Resource(content2, "\"2\""));
+        resources.put("/3.csv", new Resource(content3, "\"3\""));
+
+        Path target1 = target("a", "1.csv");
+        cache.fetch(url("/1.csv"), target1);
+        Path target2 = target("a", "2.csv");
+        cache.fetch(url("/2.csv"), target2);
+        // Use entry #1 again, so that #2 becomes the least recently used
+        cache.fetch(url("/1.csv"), target("b", "1.csv"));
+        assertEquals(2, getCount.get());
+
+        cache.fetch(url("/3.csv"), target("a", "3.csv"));
+        assertEquals(3, getCount.get());
+        assertEquals(200 * 1024L, cache.size());
+
+        // A materialized target survives eviction of its entry
+        assertArrayEquals(content2, Files.readAllBytes(target2));
+
+        // Entry #1 is still cached, entry #2 is evicted
+
+        cache.fetch(url("/1.csv"), target("c", "1.csv"));
+        assertEquals(3, getCount.get());
+        cache.fetch(url("/2.csv"), target("c", "2.csv"));
+        assertEquals(4, getCount.get());
+        assertArrayEquals(content1, Files.readAllBytes(target1));
+    }
+}
@@ -0,0 +1,148 @@
+package eu.slipo.workbench.rpc.tests.unit.service;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.FileSystemUtils;
+
+import eu.slipo.workbench.common.service.DefaultFileMaterializer;
+import eu.slipo.workbench.common.service.FileMaterializer;
+import eu.slipo.workbench.common.service.FileMaterializer.Statistics;
+import eu.slipo.workbench.common.service.FileMaterializer.Strategy;
+
+@RunWith(SpringRunner.class)
+@ActiveProfiles({ "testing" })
+public class DefaultFileMaterializerTests
+{
+    private Path tempDir;
+
+    private Path source;
+
+    private FileMaterializer materializer;
+
+    @Before
+    public void setup() throws IOException
+    {
+        tempDir = Files.createTempDirectory("file-materializer-");
+        source = tempDir.resolve("1.nt");
+        Files.write(source, Arrays.asList("<a> <b> <c> .", "<a> <b> <d> ."), StandardCharsets.UTF_8);
+
+        materializer = new DefaultFileMaterializer();
+    }
+
+    @After
+    public void teardown() throws IOException
+    {
+        FileSystemUtils.deleteRecursively(tempDir.toFile());
+    }
+
+    @Test
+    public void testMaterializeAsLink() throws Exception
+    {
+        Path target = tempDir.resolve("2.nt");
+        assertEquals(Strategy.LINK, materializer.materialize(source, target));
+        assertTrue(Files.isSameFile(source, target));
+
+        // An existing target is never replaced
+        try {
+            materializer.materialize(source, target);
+            fail("Expected a FileAlreadyExistsException");
+        } catch (FileAlreadyExistsException ex) {
+            // ok
+        }
+
+        Map<Strategy, Statistics> stats = materializer.getStatistics();
+        assertEquals(1L, stats.get(Strategy.LINK).getCount());
+        assertEquals(Files.size(source), stats.get(Strategy.LINK).getBytes());
+        assertEquals(0L, stats.get(Strategy.TRANSFER).getCount());
+    }
+
+    @Test
+    public void testCopyIsIndependent() throws Exception
+    {
+        Path target = tempDir.resolve("2.nt");
+        assertEquals(Strategy.TRANSFER, materializer.copy(source, target));
+        assertFalse(Files.isSameFile(source, target));
+        assertArrayEquals(Files.readAllBytes(source), Files.readAllBytes(target));
+
+        // Modifying the copy leaves the source intact
+        byte[] sourceBytes = Files.readAllBytes(source);
+        materializer.append(source, target);
+        assertArrayEquals(sourceBytes, Files.readAllBytes(source));
+        assertEquals(2 * sourceBytes.length, Files.size(target));
+
+        Map<Strategy, Statistics> stats = materializer.getStatistics();
+        assertEquals(2L, stats.get(Strategy.TRANSFER).getCount());
+        assertEquals(2L * sourceBytes.length, stats.get(Strategy.TRANSFER).getBytes());
+    }
+
+    @Test
+    public void testAppendAndConcatenate() throws Exception
+    {
+        Path other = tempDir.resolve("other.nt");
+        Files.write(other, Arrays.asList("<x> <y> <z> ."), StandardCharsets.UTF_8);
+
+        Path target = tempDir.resolve("a.nt");
+        assertEquals(Files.size(source), materializer.append(source, target));
+        assertEquals(Files.size(other), materializer.append(other, target));
+        assertEquals(
+            Arrays.asList("<a> <b> <c> .", "<a> <b> <d> .", "<x> <y> <z> ."),
+            Files.readAllLines(target, StandardCharsets.UTF_8));
+
+        // Concatenation truncates an existing target
+        Path result = tempDir.resolve("b.nt");
+        Files.write(result, Arrays.asList("garbage", "garbage", "garbage", "garbage"));
+        materializer.concatenate(Arrays.asList(other, source), result);
+        assertEquals(
+            Arrays.asList("<x> <y> <z> .", "<a> <b> <c> .", "<a> <b> <d> ."),
+            Files.readAllLines(result, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testCloneIsOnlyDisabledIfNotSupported() throws Exception
+    {
+        // A fake clone command: it records every invocation, and fails with a given message
+
+        Path invocations = tempDir.resolve("invocations");
+        Path message = tempDir.resolve("message");
+        Path command = tempDir.resolve("fake-cp");
+        Files.write(command, Arrays.asList(
+            "#!/bin/sh",
+            "echo \"$@\" >> " + invocations,
+            "cat " + message,
+            "exit 1"));
+        command.toFile().setExecutable(true);
+        ReflectionTestUtils.invokeMethod(materializer, "setClone", true, command.toString(), 0L);
+
+        // A transient failure falls back to copying, but cloning is attempted again
+
+        Files.write(message, Arrays.asList("cp: failed to clone: Input/output error"));
+        assertEquals(Strategy.TRANSFER, materializer.copy(source, tempDir.resolve("2.nt")));
+        assertEquals(Strategy.TRANSFER, materializer.copy(source, tempDir.resolve("3.nt")));
+        assertEquals(2, Files.readAllLines(invocations).size());
+
+        // A filesystem not supporting clones is never asked again
+
+        Files.write(message, Arrays.asList("cp: failed to clone: Operation not supported"));
+        assertEquals(Strategy.TRANSFER, materializer.copy(source, tempDir.resolve("4.nt")));
+        assertEquals(Strategy.TRANSFER, materializer.copy(source, tempDir.resolve("5.nt")));
+        assertEquals(3, Files.readAllLines(invocations).size());
+
+        assertArrayEquals(Files.readAllBytes(source), Files.readAllBytes(tempDir.resolve("5.nt")));
+        assertEquals(0L, materializer.getStatistics().get(Strategy.CLONE).getCount());
+    }
+}
@@ -0,0 +1,137 @@
+package eu.slipo.workbench.rpc.tests.unit.service;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import eu.slipo.workbench.common.model.jobs.MetricInfo;
+import eu.slipo.workbench.rpc.jobs.listener.StepMetricsListener;
+import eu.slipo.workbench.rpc.service.DefaultMetricRegistry;
+import eu.slipo.workbench.rpc.service.MetricRegistry;
+import eu.slipo.workbench.rpc.service.PrometheusTextFormat;
+
+@RunWith(SpringRunner.class)
+@ActiveProfiles({ "testing" })
+public class DefaultMetricRegistryTests
+{
+    private MetricRegistry registry;
+
+    @Before
+    public void setup()
+    {
+        registry = new DefaultMetricRegistry(new double[] { 0.1, 1.0, 10.0 });
+    }
+
+    @Test
+    public void testCounter()
+    {
+        registry.counter("launches_total", "Launches", "job", "triplegeo").increment();
+        registry.counter("launches_total", "Launches", "job", "triplegeo").increment(2);
+        registry.counter("launches_total", "Launches", "job", "limes").increment();
+
+        List<MetricInfo> metrics = registry.snapshot();
+        assertEquals(2, metrics.size());
+
+        // Series are ordered by labels
+        assertEquals("limes", metrics.get(0).getLabels().get("job"));
+        assertEquals(1.0, metrics.get(0).getValue(), 1E-9);
+        assertEquals("triplegeo", metrics.get(1).getLabels().get("job"));
+        assertEquals(3.0, metrics.get(1).getValue(), 1E-9);
+        assertEquals(MetricInfo.Type.COUNTER, metrics.get(1).getType());
+    }
+
+    @Test
+    public void testTimer()
+    {
+        MetricRegistry.Timer timer = registry.timer("step_duration_seconds", "Durations", "step", "a");
+        timer.record(50, TimeUnit.MILLISECONDS);
+        timer.record(100, TimeUnit.MILLISECONDS);
+        timer.record(2, TimeUnit.SECONDS);
+        timer.record(1, TimeUnit.MINUTES);
+
+        MetricInfo metric = registry.snapshot().get(0);
+        assertEquals(MetricInfo.Type.HISTOGRAM, metric.getType());
+        assertEquals(Long.valueOf(4), metric.getCount());
+        assertEquals(62.15, metric.getSum(), 1E-6);
+        assertEquals(60.0, metric.getMax(), 1E-6);
+
+        // Buckets are cumulative (and inclusive of their upper bound)
+        assertEquals(Long.valueOf(2), metric.getBuckets().get("0.1"));
+        assertEquals(Long.valueOf(2), metric.getBuckets().get("1.0"));
+        assertEquals(Long.valueOf(3), metric.getBuckets().get("10.0"));
+        assertEquals(Long.valueOf(4), metric.getBuckets().get("+Inf"));
+    }
+
+    @Test
+    public void testGauge()
+    {
+        AtomicInteger queued = new AtomicInteger(3);
+        registry.gauge("queued", "Queued tasks", queued::get);
+        registry.gauge("missing", "A gauge on a missing component", () -> null);
+        registry.gauge("failing", "A failing gauge", () -> { throw new IllegalStateException(); });
+
+        List<MetricInfo> metrics = registry.snapshot();
+        assertEquals(1, metrics.size());
+        assertEquals(3.0, metrics.get(0).getValue(), 1E-9);
+
+        queued.set(5);
+        assertEquals(5.0, registry.snapshot().get(0).getValue(), 1E-9);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTypeMismatch()
+    {
+        registry.counter("events_total", "Events");
+        registry.timer("events_total", "Events");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnpairedLabels()
+    {
+        registry.counter("events_total", "Events", "job");
+    }
+
+    @Test
+    public void testPrometheusTextFormat()
+    {
+        registry.counter("launches_total", "Job launches", "job", "fagi").increment();
+        registry.gauge("queued", "Queued \"tasks\"", () -> 2, "queue", "a\"b");
+        registry.timer("call_seconds", "Call latency").record(500, TimeUnit.MILLISECONDS);
+
+        String text = PrometheusTextFormat.format(registry.snapshot());
+
+        assertEquals(String.join("\n",
+            "# HELP call_seconds Call latency",
+            "# TYPE call_seconds histogram",
+            "call_seconds_bucket{le=\"0.1\"} 0",
+            "call_seconds_bucket{le=\"1.0\"} 1",
+            "call_seconds_bucket{le=\"10.0\"} 1",
+            "call_seconds_bucket{le=\"+Inf\"} 1",
+            "call_seconds_sum 0.5",
+            "call_seconds_count 1",
+            "# HELP launches_total Job launches",
+            "# TYPE launches_total counter",
+            "launches_total{job=\"fagi\"} 1",
+            "# HELP queued Queued \"tasks\"",
+            "# TYPE queued gauge",
+            "queued{queue=\"a\\\"b\"} 2",
+            ""), text);
+    }
+
+    @Test
+    public void testKindOfStep()
+    {
+        assertEquals("triplegeo", StepMetricsListener.kindOf("triplegeo.runContainer"));
+        assertEquals("limes", StepMetricsListener.kindOf("limes.runPartition:partition0"));
+        assertEquals("downloadFile", StepMetricsListener.kindOf("downloadFile"));
+        assertEquals("concatenateFiles", StepMetricsListener.kindOf("concatenateFiles:partition1"));
+    }
+}
@@ -0,0 +1,200 @@
+package eu.slipo.workbench.rpc.tests.unit.service;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import eu.slipo.workbench.common.model.jobs.ResourcePredictionInfo;
+import eu.slipo.workbench.common.model.poi.EnumTool;
+import eu.slipo.workbench.common.model.process.EnumProcessExecutionStatus;
+import eu.slipo.workbench.common.model.process.EnumStepFile;
+import eu.slipo.workbench.common.model.process.ProcessExecutionStepFileRecord;
+import eu.slipo.workbench.common.model.process.ProcessExecutionStepRecord;
+import eu.slipo.workbench.common.model.process.ProcessExecutionStepStatsRecord;
+import eu.slipo.workbench.common.repository.ProcessRepository;
+import eu.slipo.workbench.rpc.service.DefaultResourcePredictor;
+import eu.slipo.workbench.rpc.service.ResourcePredictor.Prediction;
+
+@RunWith(SpringRunner.class)
+@ActiveProfiles({ "testing" })
+public class DefaultResourcePredictorTests
+{
+    private static final long MB = 1024L * 1024L;
+
+    @Mock
+    private ProcessRepository processRepository;
+
+    private DefaultResourcePredictor predictor;
+
+    private static ProcessExecutionStepRecord stepRecord(long id, long runtime, Long... inputSizes)
+    {
+        ZonedDateTime completedOn = ZonedDateTime.now();
+
+        ProcessExecutionStepRecord r = new ProcessExecutionStepRecord(id, 0);
+        r.setTool(EnumTool.TRIPLEGEO);
+        r.setStatus(EnumProcessExecutionStatus.COMPLETED);
+        r.setStartedOn(completedOn.minusNanos(runtime * 1000000L));
+        r.setCompletedOn(completedOn);
+        for (int i = 0; i < inputSizes.length; ++i) {
+            r.addFile(new ProcessExecutionStepFileRecord(
+                EnumStepFile.INPUT, String.format("/tmp/%d-%d.csv", id, i), inputSizes[i]));
+        }
+        r.addFile(new ProcessExecutionStepFileRecord(EnumStepFile.OUTPUT, "/tmp/" + id + ".nt", 1L));
+        return r;
+    }
+
+    /**
+     * The runtime (milliseconds) of a step is proportional to the square root of its input
+     */
+    private static long runtime(long inputSize)
+    {
+        return Math.round(50.0 * Math.sqrt(inputSize));
+    }
+
+    @Before
+    public void setup()
+    {
+        MockitoAnnotations.initMocks(this);
+
+        when(processRepository.findCompletedSteps(any(EnumTool.class), anyInt()))
+            .thenReturn(Collections.emptyList());
+
+        predictor = new DefaultResourcePredictor(processRepository);
+        predictor.setMinSamples(5);
+    }
+
+    @Test
+    public void testPredictRuntime()
+    {
+        // Steps on inputs of 1MB to 512MB, with a (deterministic) error of +/-10%
+        List<ProcessExecutionStepRecord> stepRecords = new ArrayList<>();
+        for (int i = 0; i < 10; ++i) {
+            long inputSize = (1L << i) * MB;
+            double error = (i % 2 == 0)? 1.1 : 0.9;
+            stepRecords.add(stepRecord(i + 1, Math.round(runtime(inputSize) * error), inputSize));
+        }
+        when(processRepository.findCompletedSteps(eq(EnumTool.TRIPLEGEO), anyInt()))
+            .thenReturn(stepRecords);
+
+        predictor.refresh();
+
+        // The prediction is an upper estimate (within a reasonable margin)
+        for (long inputSize: new long[] { 3 * MB, 100 * MB, 2048 * MB }) {
+            Prediction prediction = predictor.predict(EnumTool.TRIPLEGEO, inputSize);
+            long expected = runtime(inputSize);
+            assertTrue(prediction.runtime() >= expected);
+            assertTrue(prediction.runtime() < 1.5 * expected);
+            // No memory is observed
+            assertEquals(-1L, prediction.memory());
+        }
+
+        // Predictions grow with the size of input
+        assertTrue(predictor.predict(EnumTool.TRIPLEGEO, 10 * MB).runtime() <
+            predictor.predict(EnumTool.TRIPLEGEO, 20 * MB).runtime());
+
+        // Other tools have no history
+        assertEquals(-1L, predictor.predict(EnumTool.LIMES, 10 * MB).runtime());
+    }
+
+    @Test
+    public void testPredictMemory()
+    {
+        // Peak memory is linear to the size of input (only known for sampled steps)
+        List<ProcessExecutionStepRecord> stepRecords = new ArrayList<>();
+        for (int i = 0; i < 10; ++i) {
+            long inputSize = (i + 1) * 10 * MB;
+            ProcessExecutionStepRecord r = stepRecord(i + 1, runtime(inputSize), inputSize);
+            if (i % 3 != 0) {
+                ProcessExecutionStepStatsRecord stats = new ProcessExecutionStepStatsRecord();
+                stats.setCpuTime(runtime(inputSize));
+                stats.setPeakMemory(4 * inputSize);
+                r.setStats(stats);
+            }
+            stepRecords.add(r);
+        }
+        when(processRepository.findCompletedSteps(eq(EnumTool.LIMES), anyInt()))
+            .thenReturn(stepRecords);
+
+        predictor.refresh();
+
+        Prediction prediction = predictor.predict(EnumTool.LIMES, 50 * MB);
+        assertEquals(200 * MB, prediction.memory(), 2 * MB);
+
+        ResourcePredictionInfo info = predictor.getInfo().get(0);
+        assertEquals(6, info.getMemoryModel().getSamples());
+        assertEquals(1.0, info.getMemoryModel().getExponent(), 0.01);
+        assertEquals(0.0, info.getMemoryMissRate(), 1E-6);
+        assertEquals(-1L, info.getObservations().get(0).getMemory());
+        assertEquals(80 * MB, info.getObservations().get(1).getMemory());
+    }
+
+    @Test
+    public void testNotEnoughHistory()
+    {
+        // A step is not usable if the size of an input is not known
+        List<ProcessExecutionStepRecord> stepRecords = new ArrayList<>();
+        for (int i = 0; i < 4; ++i)
+            stepRecords.add(stepRecord(i + 1, 1000L, 1 * MB, 2 * MB));
+        stepRecords.add(stepRecord(5, 1000L, 1 * MB, null));
+        when(processRepository.findCompletedSteps(eq(EnumTool.TRIPLEGEO), anyInt()))
+            .thenReturn(stepRecords);
+
+        predictor.refresh();
+        assertEquals(-1L, predictor.predict(EnumTool.TRIPLEGEO, 3 * MB).runtime());
+
+        stepRecords.add(stepRecord(6, 1000L, 2 * MB, 1 * MB));
+        predictor.refresh();
+
+        // All steps are on inputs of the same (total) size: the model is a constant
+        Prediction prediction = predictor.predict(EnumTool.TRIPLEGEO, 30 * MB);
+        assertEquals(1000L, prediction.runtime());
+    }
+
+    @Test
+    public void testInfo()
+    {
+        List<ProcessExecutionStepRecord> stepRecords = new ArrayList<>();
+        for (int i = 0; i < 30; ++i) {
+            long inputSize = (i + 1) * 10 * MB;
+            stepRecords.add(stepRecord(i + 1, runtime(inputSize), inputSize));
+        }
+        when(processRepository.findCompletedSteps(eq(EnumTool.DEER), anyInt()))
+            .thenReturn(stepRecords);
+
+        predictor.refresh();
+
+        List<ResourcePredictionInfo> infos = predictor.getInfo();
+        assertEquals(1, infos.size());
+
+        ResourcePredictionInfo info = infos.get(0);
+        assertEquals(EnumTool.DEER, info.getTool());
+        assertNull(info.getMemoryModel());
+        assertNull(info.getMemoryMissRate());
+        assertEquals(30, info.getRuntimeModel().getSamples());
+        assertEquals(0.5, info.getRuntimeModel().getExponent(), 0.01);
+        assertEquals(50.0, info.getRuntimeModel().getCoefficient(), 5.0);
+        assertEquals(0.0, info.getRuntimeMissRate(), 1E-6);
+
+        // Only the most recent observations are reported
+        assertEquals(20, info.getObservations().size());
+        ResourcePredictionInfo.ObservationInfo observation = info.getObservations().get(0);
+        assertEquals(1L, observation.getStepId());
+        assertEquals(10 * MB, observation.getInputSize());
+        assertEquals(runtime(10 * MB), observation.getRuntime(), 1.0);
+        assertTrue(observation.getPredictedRuntime() >= observation.getRuntime());
+        assertEquals(-1L, observation.getPredictedMemory());
+    }
+}
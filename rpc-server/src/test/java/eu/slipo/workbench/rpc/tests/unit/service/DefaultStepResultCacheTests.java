@@ -0,0 +1,200 @@
+package eu.slipo.workbench.rpc.tests.unit.service;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.FileSystemUtils;
+
+import eu.slipo.workbench.common.service.DefaultFileMaterializer;
+import eu.slipo.workbench.rpc.service.DefaultStepResultCache;
+
+@RunWith(SpringRunner.class)
+@ActiveProfiles({ "testing" })
+public class DefaultStepResultCacheTests
+{
+    private Path tempDir;
+
+    private DefaultStepResultCache cache;
+
+    @Before
+    public void setup() throws Exception
+    {
+        tempDir = Files.createTempDirectory("result-cache-");
+
+        cache = new DefaultStepResultCache();
+        ReflectionTestUtils.setField(cache, "jobDataDir", tempDir);
+        ReflectionTestUtils.setField(cache, "fileMaterializer", new DefaultFileMaterializer());
+        ReflectionTestUtils.setField(cache, "cacheDirLocation", "");
+        ReflectionTestUtils.setField(cache, "maxSizeKbytes", 1024L * 1024L);
+        ReflectionTestUtils.invokeMethod(cache, "initialize");
+    }
+
+    @After
+    public void teardown() throws IOException
+    {
+        FileSystemUtils.deleteRecursively(tempDir.toFile());
+    }
+
+    private Path createFile(String dirName, String name, String content) throws IOException
+    {
+        Path dir = Files.createDirectories(tempDir.resolve(dirName));
+        return Files.write(dir.resolve(name), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Properties configuration(String... keyValuePairs)
+    {
+        Properties p = new Properties();
+        for (int i = 0; i + 1 < keyValuePairs.length; i += 2)
+            p.setProperty(keyValuePairs[i], keyValuePairs[i + 1]);
+        return p;
+    }
+
+    @Test
+    public void testKeyDependsOnConfigurationAndInput() throws IOException
+    {
+        List<Path> configFiles = Collections.singletonList(createFile("config", "options.conf", "x = 1"));
+        Path input1 = createFile("a", "input.csv", "1,2,3");
+        Path input2 = createFile("b", "input.csv", "1,2,3");
+        Path input3 = createFile("c", "input.csv", "1,2,4");
+        Path input4 = createFile("d", "other.csv", "1,2,3");
+
+        Properties config = configuration("mode", "STREAM", "delimiter", ",");
+
+        String key1 = cache.computeKey("triplegeo", config, configFiles, Arrays.asList(input1));
+
+        // The location of an input does not matter, the name and content do
+        assertEquals(key1, cache.computeKey("triplegeo", config, configFiles, Arrays.asList(input2)));
+        assertNotEquals(key1, cache.computeKey("triplegeo", config, configFiles, Arrays.asList(input3)));
+        assertNotEquals(key1, cache.computeKey("triplegeo", config, configFiles, Arrays.asList(input4)));
+
+        // The order of properties does not matter, their values do
+        assertEquals(key1, cache.computeKey("triplegeo",
+            configuration("delimiter", ",", "mode", "STREAM"), configFiles, Arrays.asList(input1)));
+        assertNotEquals(key1, cache.computeKey("triplegeo",
+            configuration("delimiter", ";", "mode", "STREAM"), configFiles, Arrays.asList(input1)));
+
+        // The tool matters
+        assertNotEquals(key1, cache.computeKey("limes", config, configFiles, Arrays.asList(input1)));
+
+        // The content of a configuration file matters
+        createFile("config", "options.conf", "x = 2");
+        assertNotEquals(key1, cache.computeKey("triplegeo", config, configFiles, Arrays.asList(input1)));
+    }
+
+    @Test
+    public void testStoreAndMaterialize() throws IOException
+    {
+        Path outputDir = tempDir.resolve("output-1");
+        Path result = createFile("output-1", "input.nt", "<a> <b> <c> .");
+        Files.createSymbolicLink(outputDir.resolve("expected.nt"), Paths.get("input.nt"));
+
+        String key = cache.computeKey("triplegeo", configuration(),
+            Collections.emptyList(), Arrays.asList(createFile("a", "input.csv", "1,2,3")));
+
+        Path targetDir = tempDir.resolve("output-2");
+        assertFalse(cache.materialize(key, targetDir));
+        assertEquals(0L, cache.size());
+
+        cache.store(key, outputDir);
+        assertEquals(Files.size(result), cache.size());
+
+        // Storing again is a no-op
+        cache.store(key, outputDir);
+        assertEquals(Files.size(result), cache.size());
+
+        assertTrue(cache.materialize(key, targetDir));
+        assertTrue(Files.isSameFile(result, targetDir.resolve("input.nt")));
+        assertTrue(Files.isSymbolicLink(targetDir.resolve("expected.nt")));
+        assertEquals(Paths.get("input.nt"), Files.readSymbolicLink(targetDir.resolve("expected.nt")));
+
+        // The cache entry survives the removal of the output directory it was stored from
+        FileSystemUtils.deleteRecursively(outputDir.toFile());
+        Path targetDir1 = tempDir.resolve("output-3");
+        assertTrue(cache.materialize(key, targetDir1));
+        assertEquals("<a> <b> <c> .",
+            new String(Files.readAllBytes(targetDir1.resolve("expected.nt")), StandardCharsets.UTF_8));
+    }
+
+    private String storeResult(String name, int size) throws IOException
+    {
+        Path outputDir = Files.createDirectories(tempDir.resolve("output-" + name));
+        Files.write(outputDir.resolve(name + ".nt"), new byte[size]);
+
+        String key = cache.computeKey("triplegeo", configuration(),
+            Collections.emptyList(), Arrays.asList(createFile("input-" + name, "input.csv", name)));
+        cache.store(key, outputDir);
+        return key;
+    }
+
+    @Test
+    public void testEvictLeastRecentlyUsed() throws IOException
+    {
+        ReflectionTestUtils.setField(cache, "maxSizeKbytes", 250L);
+
+        String key1 = storeResult("1", 100 * 1024);
+        String key2 = storeResult("2", 100 * 1024);
+        assertEquals(200 * 1024L, cache.size());
+
+        // Use entry #1 again, so that #2 becomes the least recently used
+        Path target1 = tempDir.resolve("target-1");
+        assertTrue(cache.materialize(key1, target1));
+
+        String key3 = storeResult("3", 100 * 1024);
+        assertEquals(200 * 1024L, cache.size());
+
+        // Entry #2 is evicted, entries #1 and #3 are still cached
+        assertFalse(cache.materialize(key2, tempDir.resolve("target-2")));
+        assertTrue(cache.materialize(key1, tempDir.resolve("target-1a")));
+        assertTrue(cache.materialize(key3, tempDir.resolve("target-3")));
+
+        // A materialized target survives eviction of its entry
+        ReflectionTestUtils.setField(cache, "maxSizeKbytes", 150L);
+        storeResult("4", 100 * 1024);
+        assertEquals(100 * 1024L, cache.size());
+        assertFalse(cache.materialize(key1, tempDir.resolve("target-1b")));
+        assertEquals(100 * 1024L, Files.size(target1.resolve("1.nt")));
+
+        // A result larger than the cache itself is not stored
+        String key5 = storeResult("5", 200 * 1024);
+        assertFalse(cache.materialize(key5, tempDir.resolve("target-5")));
+        assertEquals(100 * 1024L, cache.size());
+    }
+
+    @Test
+    public void testEntriesSurviveRestart() throws Exception
+    {
+        String key1 = storeResult("1", 100 * 1024);
+        String key2 = storeResult("2", 100 * 1024);
+        Thread.sleep(20L); // the order of access is recorded as modification time
+        assertTrue(cache.materialize(key1, tempDir.resolve("target-1")));
+
+        // Restart with a smaller maximum size: the least recently used entry (#2) is evicted
+
+        DefaultStepResultCache cache1 = new DefaultStepResultCache();
+        ReflectionTestUtils.setField(cache1, "jobDataDir", tempDir);
+        ReflectionTestUtils.setField(cache1, "fileMaterializer", new DefaultFileMaterializer());
+        ReflectionTestUtils.setField(cache1, "cacheDirLocation", "");
+        ReflectionTestUtils.setField(cache1, "maxSizeKbytes", 150L);
+        ReflectionTestUtils.invokeMethod(cache1, "initialize");
+
+        assertEquals(100 * 1024L, cache1.size());
+        assertTrue(cache1.materialize(key1, tempDir.resolve("target-1a")));
+        assertFalse(cache1.materialize(key2, tempDir.resolve("target-2")));
+    }
+}
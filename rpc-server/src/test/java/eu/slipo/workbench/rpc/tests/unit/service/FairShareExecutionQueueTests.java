@@ -0,0 +1,116 @@
+package eu.slipo.workbench.rpc.tests.unit.service;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import com.google.common.collect.ImmutableMap;
+
+import eu.slipo.workbench.rpc.service.FairShareExecutionQueue;
+
+@RunWith(SpringRunner.class)
+@ActiveProfiles({ "testing" })
+public class FairShareExecutionQueueTests
+{
+    private static final int BATCH_USER = 1;
+
+    private static final int INTERACTIVE_USER = 2;
+
+    @Test
+    public void testSingleUserGetsFullCapacity()
+    {
+        FairShareExecutionQueue queue = new FairShareExecutionQueue(3, 1);
+
+        assertTrue(queue.submit(BATCH_USER, 101L));
+        assertTrue(queue.submit(BATCH_USER, 102L));
+        assertTrue(queue.submit(BATCH_USER, 103L));
+        assertFalse(queue.submit(BATCH_USER, 104L));
+
+        assertEquals(3, queue.runningCount());
+        assertEquals(1, queue.queuedCount());
+        assertEquals(1, queue.position(104L));
+        assertEquals(-1, queue.position(101L));
+
+        assertEquals(Collections.singletonList(104L), queue.release(101L));
+        // Release is idempotent
+        assertEquals(Collections.emptyList(), queue.release(101L));
+        assertEquals(3, queue.runningCount());
+        assertEquals(0, queue.queuedCount());
+    }
+
+    @Test
+    public void testInteractiveUserIsNotStarved()
+    {
+        FairShareExecutionQueue queue = new FairShareExecutionQueue(2, 1);
+
+        // A batch user submits many executions, and fills the system
+        for (long id = 101L; id <= 110L; id++)
+            queue.submit(BATCH_USER, id);
+        assertEquals(2, queue.runningCount());
+        assertEquals(8, queue.queuedCount());
+
+        // An interactive user is placed ahead of the queued batch executions
+        assertFalse(queue.submit(INTERACTIVE_USER, 201L));
+        assertEquals(1, queue.position(201L));
+        assertEquals(2, queue.position(103L));
+
+        assertEquals(Collections.singletonList(201L), queue.release(101L));
+
+        // The interactive user is at its limit: the batch user gets the next slots
+        assertFalse(queue.submit(INTERACTIVE_USER, 202L));
+        assertEquals(Collections.singletonList(103L), queue.release(102L));
+        assertEquals(Collections.singletonList(202L), queue.release(201L));
+    }
+
+    @Test
+    public void testWeightedRoundRobin()
+    {
+        FairShareExecutionQueue queue = new FairShareExecutionQueue(
+            1, 10, ImmutableMap.of(INTERACTIVE_USER, 2));
+
+        assertTrue(queue.submit(BATCH_USER, 100L));
+        for (long i = 1; i <= 4; i++) {
+            queue.submit(BATCH_USER, 100L + i);
+            queue.submit(INTERACTIVE_USER, 200L + i);
+        }
+
+        // Admit one at a time: the interactive user is served twice as often
+        List<Long> order = new ArrayList<>();
+        long running = 100L;
+        while (queue.queuedCount() > 0) {
+            List<Long> admitted = queue.release(running);
+            assertEquals(1, admitted.size());
+            running = admitted.get(0);
+            order.add(running);
+        }
+
+        assertEquals(Arrays.asList(201L, 101L, 202L, 203L, 102L, 204L, 103L, 104L), order);
+    }
+
+    @Test
+    public void testCancel()
+    {
+        FairShareExecutionQueue queue = new FairShareExecutionQueue(1, 1);
+
+        assertTrue(queue.submit(BATCH_USER, 101L));
+        assertFalse(queue.submit(BATCH_USER, 102L));
+        assertFalse(queue.submit(INTERACTIVE_USER, 201L));
+        assertEquals(2, queue.position(102L));
+
+        assertFalse(queue.cancel(101L));
+        assertTrue(queue.cancel(201L));
+        assertEquals(-1, queue.position(201L));
+        assertEquals(1, queue.position(102L));
+
+        assertEquals(Collections.singletonList(102L), queue.release(101L));
+        assertEquals(0, queue.queuedCount());
+    }
+}
@@ -0,0 +1,283 @@
+package eu.slipo.workbench.rpc.tests.unit.service;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.context.annotation.ClassPathScanningCandidateComponentProvider;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.type.filter.AssignableTypeFilter;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+
+import eu.slipo.workbench.common.model.poi.EnumDataFormat;
+import eu.slipo.workbench.common.model.tool.FagiConfiguration;
+import eu.slipo.workbench.common.model.tool.LimesConfiguration;
+import eu.slipo.workbench.common.model.tool.ReverseTriplegeoConfiguration;
+import eu.slipo.workbench.common.model.tool.ToolConfiguration;
+import eu.slipo.workbench.common.model.tool.TriplegeoConfiguration;
+import eu.slipo.workbench.common.service.util.ClonerService;
+import eu.slipo.workbench.common.service.util.FieldBasedClonerService;
+import eu.slipo.workbench.common.service.util.JsonBasedClonerService;
+import eu.slipo.workbench.common.service.util.JsonBasedPropertiesConverterService;
+import eu.slipo.workbench.common.service.util.PropertiesConverterService;
+
+/**
+ * Test a {@link FieldBasedClonerService} against the {@link JsonBasedClonerService}: both must
+ * yield copies that serialize to the same JSON.
+ */
+@RunWith(SpringRunner.class)
+@ActiveProfiles({ "testing" })
+public class FieldBasedClonerServiceTests
+{
+    @SuppressWarnings("serial")
+    public static class Node implements Serializable
+    {
+        public String name;
+
+        public int weight;
+
+        public List<Node> children = new ArrayList<>();
+
+        public Node parent;
+
+        public Map<String, List<Integer>> tags = new TreeMap<>();
+
+        public Node() {}
+
+        public Node(String name, int weight)
+        {
+            this.name = name;
+            this.weight = weight;
+        }
+
+        public Node addChild(Node child)
+        {
+            child.parent = this;
+            children.add(child);
+            return this;
+        }
+    }
+
+    @SuppressWarnings("serial")
+    public static class Counter implements Serializable
+    {
+        public String name;
+
+        public AtomicInteger count = new AtomicInteger();
+    }
+
+    private ObjectMapper objectMapper;
+
+    private ClonerService jsonCloner;
+
+    private ClonerService cloner;
+
+    private PropertiesConverterService propertiesConverter;
+
+    @Before
+    public void setup()
+    {
+        objectMapper = new ObjectMapper();
+        objectMapper.registerModule(new JavaTimeModule());
+        objectMapper.configure(SerializationFeature.FAIL_ON_EMPTY_BEANS, false);
+        objectMapper.configure(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS, false);
+
+        jsonCloner = new JsonBasedClonerService(objectMapper);
+        cloner = new FieldBasedClonerService(jsonCloner);
+        // Testcase configurations also carry job parameters (unknown to a configuration)
+        propertiesConverter = new JsonBasedPropertiesConverterService(
+            objectMapper.copy().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false));
+    }
+
+    private void checkEquivalent(Object source) throws Exception
+    {
+        Object expected = jsonCloner.cloneAsBean(source);
+        Object actual = cloner.cloneAsBean(source);
+
+        assertNotSame(source, actual);
+        assertSame(source.getClass(), actual.getClass());
+        assertEquals("Expected the same serialization for a copy of " + source.getClass(),
+            objectMapper.writeValueAsString(expected), objectMapper.writeValueAsString(actual));
+    }
+
+    private <T extends Serializable> T readConfiguration(String location, Class<T> valueType)
+        throws Exception
+    {
+        Properties props = new Properties();
+        try (InputStream in = new ClassPathResource(location).getInputStream()) {
+            props.load(in);
+        }
+        return propertiesConverter.propertiesToValue(props, valueType);
+    }
+
+    private static FagiConfiguration fagiConfiguration()
+    {
+        FagiConfiguration config = new FagiConfiguration();
+        config.setInputFormat(EnumDataFormat.N_TRIPLES);
+        config.setOutputFormat(EnumDataFormat.N_TRIPLES);
+        config.setOutputDir("/var/local/fagi/output");
+        config.setLang("el-GR");
+        config.setSimilarity("jarowinkler");
+        config.setRulesSpec("rules-1.xml");
+        config.setLeft("a",
+            "input/a.nt", "classpath:defaults/fagi/classification.csv", LocalDate.of(2018, 5, 21));
+        config.setRight("b",
+            "input/b.nt", "classpath:defaults/fagi/classification.csv", LocalDate.of(2018, 6, 1));
+        config.setLinks("links", "input/links.nt");
+        config.setTargetMode("aa");
+        config.setTarget("target", "fused.nt", "remaining.nt", "review.nt", "stats.json");
+        return config;
+    }
+
+    private static LimesConfiguration limesConfiguration()
+    {
+        LimesConfiguration config = new LimesConfiguration();
+        config.setMetric("trigrams(x.label, y.label)");
+        config.setSource("a", "/tmp/limes/input/a.nt", "?x", "slipo:name/slipo:nameType RENAME label");
+        config.setTarget("b", "/tmp/limes/input/b.nt", "?y", "slipo:name/slipo:nameType RENAME label");
+        config.setOutputDir("/tmp/limes/output");
+        config.setOutputFormatFromString("N-TRIPLES");
+        config.setAccepted(0.98, "accepted.nt");
+        config.setReview(0.95, "review.nt");
+        return config;
+    }
+
+    @Test
+    public void testEquivalenceForDefaultConfigurations() throws Exception
+    {
+        ClassPathScanningCandidateComponentProvider scanner =
+            new ClassPathScanningCandidateComponentProvider(false);
+        scanner.addIncludeFilter(new AssignableTypeFilter(ToolConfiguration.class));
+
+        List<Class<?>> checkedTypes = new ArrayList<>();
+        for (BeanDefinition def: scanner.findCandidateComponents(ToolConfiguration.class.getPackage().getName())) {
+            Class<?> configurationType = Class.forName(def.getBeanClassName());
+            Object source = configurationType.newInstance();
+            try {
+                jsonCloner.cloneAsBean(source);
+            } catch (IOException ex) {
+                continue; // not serializable unless populated
+            }
+            checkEquivalent(source);
+            checkedTypes.add(configurationType);
+        }
+
+        // Note: Some configurations (e.g. of Triplegeo) are only checked as populated (see below)
+        assertFalse(checkedTypes.isEmpty());
+    }
+
+    @Test
+    public void testEquivalenceForTestcaseConfigurations() throws Exception
+    {
+        for (String name: Arrays.asList("1", "2", "2a", "3", "4", "5")) {
+            checkEquivalent(readConfiguration(
+                "testcases/triplegeo/" + name + "/options.conf", TriplegeoConfiguration.class));
+        }
+        for (String name: Arrays.asList("1", "1a", "2", "2a")) {
+            checkEquivalent(readConfiguration(
+                "testcases/reverseTriplegeo/" + name + "/options.conf", ReverseTriplegeoConfiguration.class));
+        }
+        checkEquivalent(readConfiguration("testcases/limes/1/config.properties", LimesConfiguration.class));
+        checkEquivalent(readConfiguration("testcases/fagi/1/spec.properties", FagiConfiguration.class));
+    }
+
+    @Test
+    public void testEquivalenceForConfigurations() throws Exception
+    {
+        checkEquivalent(fagiConfiguration());
+        checkEquivalent(limesConfiguration());
+
+        TriplegeoConfiguration triplegeoConfiguration = new TriplegeoConfiguration();
+        triplegeoConfiguration.setInputFormat(EnumDataFormat.CSV);
+        triplegeoConfiguration.setOutputFormat(EnumDataFormat.N_TRIPLES);
+        triplegeoConfiguration.setInput(Arrays.asList("/tmp/triplegeo/input/1.csv", "/tmp/triplegeo/input/2.csv"));
+        triplegeoConfiguration.setAttrKey("id");
+        checkEquivalent(triplegeoConfiguration);
+    }
+
+    @Test
+    public void testCopyIsIndependent() throws Exception
+    {
+        FagiConfiguration source = fagiConfiguration();
+        FagiConfiguration copy = (FagiConfiguration) cloner.cloneAsBean(source);
+        assertNotSame(source.getLeft(), copy.getLeft());
+        assertNotSame(source.getTarget(), copy.getTarget());
+
+        copy.setLeft("c", "input/c.nt", null, null);
+        copy.setOutputDir("/tmp/fagi/output");
+        assertEquals("a", source.getLeft().getId());
+        assertEquals("/var/local/fagi/output", source.getOutputDir());
+
+        TriplegeoConfiguration source1 = new TriplegeoConfiguration();
+        source1.setInput(Arrays.asList("a.csv", "b.csv"));
+        TriplegeoConfiguration copy1 = cloner.cloneAsBean(source1, TriplegeoConfiguration.class);
+        assertNotSame(source1.getInput(), copy1.getInput());
+        assertEquals(source1.getInput(), copy1.getInput());
+    }
+
+    @Test
+    public void testCopyPreservesSharedReferences() throws Exception
+    {
+        Node root = new Node("root", 1);
+        Node a = new Node("a", 2), b = new Node("b", 3);
+        root.addChild(a).addChild(b);
+        a.tags.put("x", Arrays.asList(1, 2));
+        b.tags = Collections.unmodifiableMap(a.tags);
+
+        Node copy = (Node) cloner.cloneAsBean(root);
+
+        assertEquals(2, copy.children.size());
+        Node a1 = copy.children.get(0), b1 = copy.children.get(1);
+        assertNotSame(a, a1);
+        assertEquals("a", a1.name);
+        assertEquals(2, a1.weight);
+        assertSame(copy, a1.parent);
+        assertSame(copy, b1.parent);
+        assertNotSame(a.tags, a1.tags);
+        assertEquals(TreeMap.class, a1.tags.getClass());
+        assertEquals(Arrays.asList(1, 2), b1.tags.get("x"));
+        assertSame(a1.tags.get("x"), b1.tags.get("x"));
+
+        try {
+            b1.tags.put("y", Collections.emptyList());
+            fail("Expected the copy of an unmodifiable map to be unmodifiable");
+        } catch (UnsupportedOperationException ex) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testFallbackForUnsupportedTypes() throws Exception
+    {
+        Counter source = new Counter();
+        source.name = "c1";
+        source.count.set(5);
+
+        Counter copy = (Counter) cloner.cloneAsBean(source);
+        assertNotSame(source, copy);
+        assertNotSame(source.count, copy.count);
+        assertEquals("c1", copy.name);
+        assertEquals(5, copy.count.get());
+    }
+}
@@ -0,0 +1,273 @@
+package eu.slipo.workbench.rpc.tests.unit.service;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import javax.sql.DataSource;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import eu.slipo.workbench.rpc.service.ExecutionLeaseService;
+import eu.slipo.workbench.rpc.service.JdbcExecutionLeaseService;
+
+/**
+ * Test leasing among two workers, each one in its own application context, sharing a single
+ * (embedded) database.
+ */
+@RunWith(SpringRunner.class)
+@ActiveProfiles({ "testing" })
+public class JdbcExecutionLeaseServiceTests
+{
+    private static final long LEASE_DURATION = 1000L;
+
+    /**
+     * The configuration of a worker context (not annotated as a configuration class, so that it
+     * is not picked up by the test runner)
+     */
+    static class WorkerConfiguration
+    {
+        @Bean
+        public ExecutionLeaseService executionLeaseService(
+            DataSource dataSource, @Value("${worker-id}") String workerId)
+        {
+            return new JdbcExecutionLeaseService(dataSource, workerId, LEASE_DURATION);
+        }
+    }
+
+    private EmbeddedDatabase database;
+
+    private AnnotationConfigApplicationContext parentContext;
+
+    private AnnotationConfigApplicationContext context1;
+
+    private AnnotationConfigApplicationContext context2;
+
+    private ExecutionLeaseService worker1;
+
+    private ExecutionLeaseService worker2;
+
+    private AnnotationConfigApplicationContext createWorkerContext(String workerId)
+    {
+        AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+        context.setParent(parentContext);
+        context.getEnvironment().getPropertySources().addFirst(
+            new MapPropertySource("worker", Collections.singletonMap("worker-id", workerId)));
+        context.register(WorkerConfiguration.class);
+        context.refresh();
+        return context;
+    }
+
+    @Before
+    public void setup()
+    {
+        database = new EmbeddedDatabaseBuilder()
+            .setType(EmbeddedDatabaseType.H2)
+            .generateUniqueName(true)
+            .build();
+
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(database);
+        jdbcTemplate.execute(
+            "CREATE TABLE process_execution_lease (" +
+                "process_execution bigint NOT NULL PRIMARY KEY, " +
+                "submitted_on timestamp NOT NULL, " +
+                "owner varchar(128), " +
+                "expires_on timestamp, " +
+                "reused_execution bigint, " +
+                "stop_requested boolean NOT NULL DEFAULT false)");
+        jdbcTemplate.execute(
+            "CREATE TABLE worker_lease (" +
+                "name varchar(64) NOT NULL PRIMARY KEY, " +
+                "owner varchar(128) NOT NULL, " +
+                "expires_on timestamp NOT NULL)");
+
+        parentContext = new AnnotationConfigApplicationContext();
+        parentContext.getBeanFactory().registerSingleton("dataSource", database);
+        parentContext.refresh();
+
+        context1 = createWorkerContext("worker-1");
+        context2 = createWorkerContext("worker-2");
+        worker1 = context1.getBean(ExecutionLeaseService.class);
+        worker2 = context2.getBean(ExecutionLeaseService.class);
+    }
+
+    @After
+    public void teardown()
+    {
+        if (context1 != null)
+            context1.close();
+        if (context2 != null)
+            context2.close();
+        if (parentContext != null)
+            parentContext.close();
+        if (database != null)
+            database.shutdown();
+    }
+
+    @Test
+    public void testSingleCoordinator() throws Exception
+    {
+        assertTrue(worker1.acquireCoordinator());
+        assertFalse(worker2.acquireCoordinator());
+        assertTrue(worker1.isCoordinator());
+        assertFalse(worker2.isCoordinator());
+
+        // Renew
+        assertTrue(worker1.acquireCoordinator());
+        assertFalse(worker2.acquireCoordinator());
+
+        // Worker 1 fails to send a heartbeat in time: worker 2 takes over
+
+        Thread.sleep(LEASE_DURATION + 100L);
+
+        assertFalse(worker1.isCoordinator());
+        assertTrue(worker2.acquireCoordinator());
+        assertFalse(worker1.acquireCoordinator());
+        assertTrue(worker2.isCoordinator());
+    }
+
+    @Test
+    public void testAcquireExclusively() throws Exception
+    {
+        worker1.submit(1L, null);
+        worker1.submit(2L, 1L);
+
+        ExecutionLeaseService.Lease lease1 = worker2.acquire();
+        ExecutionLeaseService.Lease lease2 = worker1.acquire();
+        assertNotNull(lease1);
+        assertNotNull(lease2);
+        assertEquals(1L, lease1.executionId());
+        assertNull(lease1.reusedExecutionId());
+        assertEquals(2L, lease2.executionId());
+        assertEquals(Long.valueOf(1L), lease2.reusedExecutionId());
+
+        assertNull(worker1.acquire());
+        assertNull(worker2.acquire());
+
+        assertTrue(worker2.renew(Collections.singleton(1L)).isEmpty());
+        assertEquals(Collections.singleton(2L), worker2.renew(Collections.singleton(2L)));
+
+        // A lease is released only by its owner
+
+        worker1.release(1L);
+        assertTrue(worker1.exists(1L));
+        worker2.release(1L);
+        assertFalse(worker1.exists(1L));
+    }
+
+    @Test
+    public void testReclaimExpired() throws Exception
+    {
+        worker1.submit(1L, 7L);
+        worker1.submit(2L, null);
+        assertEquals(1L, worker1.acquire().executionId());
+        assertEquals(2L, worker1.acquire().executionId());
+
+        assertTrue(worker2.findExpired().isEmpty());
+        assertFalse(worker2.reclaim(1L, true));
+
+        // Worker 1 fails; the coordinator (worker 2) reclaims its leases
+
+        Thread.sleep(LEASE_DURATION + 100L);
+
+        assertEquals(Arrays.asList(1L, 2L), worker2.findExpired());
+        assertTrue(worker2.reclaim(1L, true));
+        assertTrue(worker2.reclaim(2L, false));
+        assertFalse(worker2.exists(2L));
+
+        ExecutionLeaseService.Lease lease = worker2.acquire();
+        assertNotNull(lease);
+        assertEquals(1L, lease.executionId());
+        assertEquals(Long.valueOf(7L), lease.reusedExecutionId());
+
+        // Worker 1 is back, but its leases are lost
+        assertEquals(
+            new HashSet<>(Arrays.asList(1L, 2L)), worker1.renew(Arrays.asList(1L, 2L)));
+        assertTrue(worker2.renew(Collections.singleton(1L)).isEmpty());
+    }
+
+    @Test
+    public void testExpireByDatabaseClock() throws Exception
+    {
+        final JdbcTemplate jdbcTemplate = new JdbcTemplate(database);
+
+        worker1.submit(1L, null);
+        assertEquals(1L, worker1.acquire().executionId());
+        assertTrue(worker1.acquireCoordinator());
+
+        // As of the database, the leases of worker 1 are live (whatever the clock of a worker says)
+
+        assertTrue(worker2.findExpired().isEmpty());
+        assertFalse(worker2.reclaim(1L, true));
+        assertFalse(worker2.acquireCoordinator());
+        assertTrue(worker1.isCoordinator());
+
+        // The leases expire as of the database (no time has passed for any worker)
+
+        jdbcTemplate.update("UPDATE process_execution_lease SET expires_on = DATEADD('SECOND', -1, CURRENT_TIMESTAMP)");
+        jdbcTemplate.update("UPDATE worker_lease SET expires_on = DATEADD('SECOND', -1, CURRENT_TIMESTAMP)");
+
+        assertFalse(worker1.isCoordinator());
+        assertEquals(Collections.singletonList(1L), worker2.findExpired());
+        assertTrue(worker2.reclaim(1L, true));
+        assertTrue(worker2.acquireCoordinator());
+        assertTrue(worker2.isCoordinator());
+        assertFalse(worker1.isCoordinator());
+    }
+
+    @Test
+    public void testRequestStop() throws Exception
+    {
+        worker1.submit(1L, null);
+
+        // A pending execution is not stopped, but cancelled
+        assertFalse(worker2.requestStop(1L));
+
+        assertEquals(1L, worker1.acquire().executionId());
+        assertTrue(worker1.findStopRequested().isEmpty());
+
+        assertFalse(worker2.cancel(1L));
+        assertTrue(worker2.requestStop(1L));
+        assertEquals(Collections.singleton(1L), worker1.findStopRequested());
+        assertTrue(worker2.findStopRequested().isEmpty());
+    }
+
+    @Test
+    public void testCancelAndPosition() throws Exception
+    {
+        worker1.submit(1L, null);
+        Thread.sleep(5L);
+        worker2.submit(2L, null);
+        Thread.sleep(5L);
+        worker1.submit(3L, null);
+
+        assertEquals(0, worker2.position(1L));
+        assertEquals(1, worker2.position(2L));
+        assertEquals(2, worker2.position(3L));
+        assertEquals(-1, worker2.position(4L));
+
+        assertTrue(worker2.cancel(2L));
+        assertFalse(worker2.cancel(2L));
+        assertFalse(worker1.exists(2L));
+        assertEquals(1, worker1.position(3L));
+
+        assertEquals(1L, worker2.acquire().executionId());
+        assertEquals(-1, worker1.position(1L));
+        assertEquals(0, worker1.position(3L));
+    }
+}
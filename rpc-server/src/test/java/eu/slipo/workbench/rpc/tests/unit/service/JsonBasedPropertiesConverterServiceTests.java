@@ -0,0 +1,196 @@
+package eu.slipo.workbench.rpc.tests.unit.service;
+
+import static org.junit.Assert.*;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import eu.slipo.workbench.common.model.poi.EnumDataFormat;
+import eu.slipo.workbench.common.model.tool.LimesConfiguration;
+import eu.slipo.workbench.common.model.tool.TriplegeoConfiguration;
+import eu.slipo.workbench.common.service.util.JsonBasedPropertiesConverterService;
+import eu.slipo.workbench.common.service.util.PropertiesConverterService;
+
+@RunWith(SpringRunner.class)
+@ActiveProfiles({ "testing" })
+public class JsonBasedPropertiesConverterServiceTests
+{
+    @SuppressWarnings("serial")
+    public static class Item implements Serializable
+    {
+        public String name;
+
+        public List<String> tags;
+    }
+
+    @SuppressWarnings("serial")
+    public static class Bean implements Serializable
+    {
+        public String name;
+
+        public Integer size;
+
+        public double ratio;
+
+        public Boolean enabled;
+
+        public String missing;
+
+        public List<List<Integer>> matrix;
+
+        public List<Item> items;
+
+        public Item item;
+    }
+
+    private PropertiesConverterService converter;
+
+    @Before
+    public void setup()
+    {
+        converter = new JsonBasedPropertiesConverterService(new ObjectMapper());
+    }
+
+    private static Item item(String name, String ...tags)
+    {
+        Item item = new Item();
+        item.name = name;
+        item.tags = Arrays.asList(tags);
+        return item;
+    }
+
+    private static Bean bean()
+    {
+        Bean bean = new Bean();
+        bean.name = "b1";
+        bean.size = 12;
+        bean.ratio = 0.95;
+        bean.enabled = false;
+        bean.matrix = Arrays.asList(Arrays.asList(1, 2), Arrays.asList(3));
+        bean.items = Arrays.asList(item("a", "x", "y"), item("b"));
+        bean.item = item("c", "z");
+        return bean;
+    }
+
+    @Test
+    public void testValueToProperties()
+    {
+        Properties props = converter.valueToProperties(bean());
+
+        Map<Object, Object> expected = new HashMap<>();
+        expected.put("name", "b1");
+        expected.put("size", "12");
+        expected.put("ratio", "0.95");
+        expected.put("enabled", "false");
+        expected.put("missing", "");
+        expected.put("matrix[0][0]", "1");
+        expected.put("matrix[0][1]", "2");
+        expected.put("matrix[1][0]", "3");
+        expected.put("items[0].name", "a");
+        expected.put("items[0].tags[0]", "x");
+        expected.put("items[0].tags[1]", "y");
+        expected.put("items[1].name", "b");
+        expected.put("item.name", "c");
+        expected.put("item.tags[0]", "z");
+
+        assertEquals(expected, props);
+    }
+
+    @Test
+    public void testPropertiesToValue() throws Exception
+    {
+        Bean bean = converter.propertiesToValue(converter.valueToProperties(bean()), Bean.class);
+
+        assertEquals("b1", bean.name);
+        assertEquals(Integer.valueOf(12), bean.size);
+        assertEquals(0.95, bean.ratio, 1E-9);
+        assertEquals(Boolean.FALSE, bean.enabled);
+        assertNull(bean.missing);
+        assertEquals(Arrays.asList(Arrays.asList(1, 2), Arrays.asList(3)), bean.matrix);
+        assertEquals(2, bean.items.size());
+        assertEquals("a", bean.items.get(0).name);
+        assertEquals(Arrays.asList("x", "y"), bean.items.get(0).tags);
+        assertEquals("b", bean.items.get(1).name);
+        assertNull(bean.items.get(1).tags);
+        assertEquals("c", bean.item.name);
+        assertEquals(Arrays.asList("z"), bean.item.tags);
+    }
+
+    @Test
+    public void testPropertiesToValueSkipsEmptyValues() throws Exception
+    {
+        Properties props = new Properties();
+        props.setProperty("name", "");
+        props.setProperty("item.tags[0]", "x");
+        props.setProperty("item.tags[1]", "");
+        props.setProperty("item.tags[2]", "z");
+
+        Bean bean = converter.propertiesToValue(props, Bean.class);
+
+        assertNull(bean.name);
+        assertEquals(Arrays.asList("x", "z"), bean.item.tags);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPropertiesToValueWithNonConsecutiveIndices() throws Exception
+    {
+        Properties props = new Properties();
+        props.setProperty("item.tags[0]", "x");
+        props.setProperty("item.tags[2]", "z");
+        converter.propertiesToValue(props, Bean.class);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPropertiesToValueWithNonZeroBasedIndices() throws Exception
+    {
+        Properties props = new Properties();
+        props.setProperty("item.tags[1]", "x");
+        converter.propertiesToValue(props, Bean.class);
+    }
+
+    @Test(expected = PropertiesConverterService.ConversionFailedException.class)
+    public void testPropertiesToValueWithInvalidValue() throws Exception
+    {
+        Properties props = new Properties();
+        props.setProperty("size", "many");
+        converter.propertiesToValue(props, Bean.class);
+    }
+
+    @Test
+    public void testRoundTripOfToolConfigurations() throws Exception
+    {
+        TriplegeoConfiguration triplegeoConfiguration = new TriplegeoConfiguration();
+        triplegeoConfiguration.setInputFormat(EnumDataFormat.CSV);
+        triplegeoConfiguration.setOutputFormat(EnumDataFormat.N_TRIPLES);
+        triplegeoConfiguration.setAttrKey("id");
+        triplegeoConfiguration.setAttrName("name");
+
+        Properties props1 = converter.valueToProperties(triplegeoConfiguration);
+        assertEquals("CSV", props1.getProperty("inputFormat"));
+        assertEquals(props1, converter.valueToProperties(
+            converter.propertiesToValue(props1, TriplegeoConfiguration.class)));
+
+        LimesConfiguration limesConfiguration = new LimesConfiguration();
+        limesConfiguration.setSource("a", "/tmp/limes/input/a.nt", "?x", "slipo:name/slipo:nameType RENAME label");
+        limesConfiguration.setTarget("b", "/tmp/limes/input/b.nt", "?y", "slipo:name/slipo:nameType RENAME label");
+        limesConfiguration.setOutputFormatFromString("N-TRIPLES");
+        limesConfiguration.setAccepted(0.98, "accepted.nt");
+        limesConfiguration.setReview(0.95, "review.nt");
+
+        Properties props2 = converter.valueToProperties(limesConfiguration);
+        assertEquals(props2, converter.valueToProperties(
+            converter.propertiesToValue(props2, LimesConfiguration.class)));
+    }
+}
@@ -0,0 +1,136 @@
+package eu.slipo.workbench.rpc.tests.unit.service;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Collections;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.google.common.collect.ImmutableSet;
+
+import eu.slipo.workbench.common.model.poi.EnumDataFormat;
+import eu.slipo.workbench.common.model.process.ProcessDefinition;
+import eu.slipo.workbench.common.model.process.ProcessDefinitionBuilderFactory;
+import eu.slipo.workbench.common.model.resource.FileSystemDataSource;
+import eu.slipo.workbench.common.model.resource.ResourceMetadataCreate;
+import eu.slipo.workbench.common.model.tool.LimesConfiguration;
+import eu.slipo.workbench.common.model.tool.TriplegeoConfiguration;
+import eu.slipo.workbench.common.model.tool.output.EnumLimesOutputPart;
+import eu.slipo.workbench.common.model.tool.output.EnumTriplegeoOutputPart;
+import eu.slipo.workbench.common.service.util.JsonBasedPropertiesConverterService;
+import eu.slipo.workbench.rpc.service.ProcessDefinitionComparator;
+
+@RunWith(SpringRunner.class)
+@ActiveProfiles({ "testing" })
+public class ProcessDefinitionComparatorTests
+{
+    private ProcessDefinitionBuilderFactory processDefinitionBuilderFactory;
+
+    private ProcessDefinitionComparator comparator;
+
+    @Before
+    public void setup()
+    {
+        ObjectMapper objectMapper = new ObjectMapper();
+        objectMapper.configure(SerializationFeature.FAIL_ON_EMPTY_BEANS, false);
+
+        processDefinitionBuilderFactory = new ProcessDefinitionBuilderFactory(objectMapper);
+        comparator = new ProcessDefinitionComparator(new JsonBasedPropertiesConverterService(objectMapper));
+    }
+
+    private static TriplegeoConfiguration triplegeoConfiguration()
+    {
+        TriplegeoConfiguration config = new TriplegeoConfiguration();
+        config.setInputFormat(EnumDataFormat.CSV);
+        config.setOutputFormat(EnumDataFormat.N_TRIPLES);
+        config.setMappingSpec("classpath:config/triplegeo/profiles/1/mappings.yml");
+        config.setClassificationSpec("classpath:config/triplegeo/profiles/1/classification.yml");
+        config.setAttrX("lon");
+        config.setAttrY("lat");
+        config.setFeatureSource("points");
+        config.setAttrKey("id");
+        config.setAttrName("name");
+        config.setAttrCategory("type");
+        return config;
+    }
+
+    private static LimesConfiguration limesConfiguration(String metric)
+    {
+        LimesConfiguration config = new LimesConfiguration();
+        config.setMetric(metric);
+        config.setSource("a", "/tmp/limes/input/a.nt", "?x", "slipo:name/slipo:nameType RENAME label");
+        config.setTarget("b", "/tmp/limes/input/b.nt", "?y", "slipo:name/slipo:nameType RENAME label");
+        config.setOutputDir("/tmp/limes/output");
+        config.setOutputFormatFromString("N-TRIPLES");
+        config.setAccepted(0.98, "accepted.nt");
+        config.setReview(0.95, "review.nt");
+        return config;
+    }
+
+    private ProcessDefinition buildDefinition(String keyPrefix, String path2, String metric)
+    {
+        final String TRANSFORM_1_KEY = keyPrefix + "transformed-1", TRANSFORM_2_KEY = keyPrefix + "transformed-2",
+            LINKS_KEY = keyPrefix + "links";
+
+        return processDefinitionBuilderFactory.create("proc-1")
+            .transform("triplegeo-1", b -> b
+                .group(1)
+                .outputKey(TRANSFORM_1_KEY)
+                .source(new FileSystemDataSource("uploads/1.csv"))
+                .configuration(triplegeoConfiguration()))
+            .transform("triplegeo-2", b -> b
+                .group(1)
+                .outputKey(TRANSFORM_2_KEY)
+                .source(new FileSystemDataSource(path2))
+                .configuration(triplegeoConfiguration()))
+            .interlink("link-1-with-2", b -> b
+                .group(2)
+                .configuration(limesConfiguration(metric))
+                .left(TRANSFORM_1_KEY, EnumTriplegeoOutputPart.TRANSFORMED)
+                .right(TRANSFORM_2_KEY, EnumTriplegeoOutputPart.TRANSFORMED)
+                .outputKey(LINKS_KEY)
+                .outputFormat(EnumDataFormat.N_TRIPLES))
+            .register("register-links", LINKS_KEY, EnumLimesOutputPart.ACCEPTED,
+                new ResourceMetadataCreate("links-1-2", "Links between 1st and 2nd RDF files"))
+            .build();
+    }
+
+    @Test
+    public void testIdenticalRevisions()
+    {
+        ProcessDefinition previous = buildDefinition("", "uploads/2.csv", "trigrams(a.level, b.level)");
+        // Resource keys may differ across revisions
+        ProcessDefinition current = buildDefinition("r2-", "uploads/2.csv", "trigrams(a.level, b.level)");
+
+        Set<String> unchanged = comparator.findUnchangedSteps(previous, current);
+        assertEquals(ImmutableSet.of("triplegeo-1", "triplegeo-2", "link-1-with-2", "register-links"), unchanged);
+    }
+
+    @Test
+    public void testChangedConfiguration()
+    {
+        ProcessDefinition previous = buildDefinition("", "uploads/2.csv", "trigrams(a.level, b.level)");
+        ProcessDefinition current = buildDefinition("", "uploads/2.csv", "levenshtein(a.level, b.level)");
+
+        // The change propagates to every descendant of the changed step
+        Set<String> unchanged = comparator.findUnchangedSteps(previous, current);
+        assertEquals(ImmutableSet.of("triplegeo-1", "triplegeo-2"), unchanged);
+    }
+
+    @Test
+    public void testChangedSource()
+    {
+        ProcessDefinition previous = buildDefinition("", "uploads/2.csv", "trigrams(a.level, b.level)");
+        ProcessDefinition current = buildDefinition("", "uploads/2-fixed.csv", "trigrams(a.level, b.level)");
+
+        Set<String> unchanged = comparator.findUnchangedSteps(previous, current);
+        assertEquals(Collections.singleton("triplegeo-1"), unchanged);
+    }
+}
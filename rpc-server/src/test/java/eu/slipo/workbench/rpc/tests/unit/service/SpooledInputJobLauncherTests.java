@@ -0,0 +1,217 @@
+package eu.slipo.workbench.rpc.tests.unit.service;
+
+import static org.junit.Assert.*;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobParameters;
+import org.springframework.batch.core.JobParametersBuilder;
+import org.springframework.batch.core.configuration.annotation.JobBuilderFactory;
+import org.springframework.batch.core.configuration.annotation.StepBuilderFactory;
+import org.springframework.batch.core.launch.support.SimpleJobLauncher;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.batch.core.repository.support.MapJobRepositoryFactoryBean;
+import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.batch.support.transaction.ResourcelessTransactionManager;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.util.FileSystemUtils;
+
+import eu.slipo.workbench.rpc.jobs.tasklet.OutputSpool;
+import eu.slipo.workbench.rpc.service.SpooledInputJobLauncher;
+
+@RunWith(SpringRunner.class)
+@ActiveProfiles({ "testing" })
+public class SpooledInputJobLauncherTests
+{
+    private static final long POLL_INTERVAL = 20L;
+
+    private static final long TIMEOUT = 5000L;
+
+    private static final String CONTENT = "<http://example.com/poi/1> <http://example.com/name> \"A\" .\n";
+
+    private Path tempDir;
+
+    private Path spoolDir;
+
+    private JobRepository jobRepository;
+
+    private JobBuilderFactory jobBuilderFactory;
+
+    private StepBuilderFactory stepBuilderFactory;
+
+    private ThreadPoolTaskExecutor taskExecutor;
+
+    private ThreadPoolTaskScheduler taskScheduler;
+
+    private SpooledInputJobLauncher launcher;
+
+    @Before
+    public void setup() throws Exception
+    {
+        tempDir = Files.createTempDirectory("spooled-input-launcher-");
+        spoolDir = tempDir.resolve(OutputSpool.DIRECTORY_NAME);
+
+        ResourcelessTransactionManager transactionManager = new ResourcelessTransactionManager();
+        MapJobRepositoryFactoryBean jobRepositoryFactory = new MapJobRepositoryFactoryBean(transactionManager);
+        jobRepositoryFactory.afterPropertiesSet();
+        jobRepository = jobRepositoryFactory.getObject();
+
+        jobBuilderFactory = new JobBuilderFactory(jobRepository);
+        stepBuilderFactory = new StepBuilderFactory(jobRepository, transactionManager);
+
+        // A single thread: a consumer holding it would starve its producer
+
+        taskExecutor = new ThreadPoolTaskExecutor();
+        taskExecutor.setCorePoolSize(1);
+        taskExecutor.setMaxPoolSize(1);
+        taskExecutor.afterPropertiesSet();
+
+        taskScheduler = new ThreadPoolTaskScheduler();
+        taskScheduler.afterPropertiesSet();
+
+        SimpleJobLauncher jobLauncher = new SimpleJobLauncher();
+        jobLauncher.setJobRepository(jobRepository);
+        jobLauncher.setTaskExecutor(taskExecutor);
+        jobLauncher.afterPropertiesSet();
+
+        launcher = new SpooledInputJobLauncher(
+            jobLauncher, jobRepository, taskExecutor, taskScheduler, spoolDir, TIMEOUT, POLL_INTERVAL);
+    }
+
+    @After
+    public void teardown() throws Exception
+    {
+        launcher.shutdown();
+        taskScheduler.shutdown();
+        taskExecutor.shutdown();
+        FileSystemUtils.deleteRecursively(tempDir.toFile());
+    }
+
+    private Job createJob(String name, Tasklet tasklet)
+    {
+        return jobBuilderFactory.get(name)
+            .start(stepBuilderFactory.get(name + ".step").tasklet(tasklet).build())
+            .build();
+    }
+
+    private JobParameters consumerParameters(OutputSpool spool)
+    {
+        return new JobParametersBuilder()
+            .addString(SpooledInputJobLauncher.INPUT_PARAMETER_NAME, spool.path().toString())
+            .toJobParameters();
+    }
+
+    private static JobExecution awaitFinished(JobRepository jobRepository, JobExecution execution)
+        throws InterruptedException
+    {
+        final long started = System.currentTimeMillis();
+        while (System.currentTimeMillis() - started < TIMEOUT) {
+            JobExecution e = jobRepository.getLastJobExecution(
+                execution.getJobInstance().getJobName(), execution.getJobParameters());
+            if (e != null && !e.isRunning())
+                return e;
+            Thread.sleep(POLL_INTERVAL);
+        }
+        fail("Timed out waiting for job " + execution.getJobInstance().getJobName());
+        return null;
+    }
+
+    @Test(timeout = 20000L)
+    public void testLaunchConsumerWhenProducerStarts() throws Exception
+    {
+        final OutputSpool spool = new OutputSpool(
+            spoolDir.resolve("1").resolve("transform").resolve("a.nt"), POLL_INTERVAL);
+        final AtomicReference<String> consumed = new AtomicReference<>();
+
+        // The consumer is launched first, and waits for data on the spool
+
+        Job consumer = createJob("enrich", (contribution, chunkContext) -> {
+            long since = chunkContext.getStepContext().getStepExecution().getJobExecution()
+                .getCreateTime().getTime();
+            spool.await(since, TIMEOUT);
+            consumed.set(new String(Files.readAllBytes(spool.path()), StandardCharsets.UTF_8));
+            return RepeatStatus.FINISHED;
+        });
+
+        JobExecution consumerExecution = launcher.run(consumer, consumerParameters(spool));
+        assertEquals(BatchStatus.STARTING, consumerExecution.getStatus());
+        assertEquals(1, launcher.getNumberOfDeferred());
+
+        // The producer is launched later (e.g. after an upstream download), and starts
+        // while the consumer is deferred
+
+        Thread.sleep(5 * POLL_INTERVAL);
+        assertEquals(1, launcher.getNumberOfDeferred());
+        assertNull(consumed.get());
+
+        Job producer = createJob("transform", (contribution, chunkContext) -> {
+            spool.reset();
+            Files.write(spool.path(), CONTENT.getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+            spool.complete(CONTENT.length());
+            return RepeatStatus.FINISHED;
+        });
+
+        JobExecution producerExecution = launcher.run(producer, new JobParameters());
+
+        assertEquals(BatchStatus.COMPLETED, awaitFinished(jobRepository, producerExecution).getStatus());
+        assertEquals(BatchStatus.COMPLETED, awaitFinished(jobRepository, consumerExecution).getStatus());
+        assertEquals(CONTENT, consumed.get());
+        assertEquals(0, launcher.getNumberOfDeferred());
+    }
+
+    @Test(timeout = 20000L)
+    public void testLaunchConsumerIfProducerHasStarted() throws Exception
+    {
+        final OutputSpool spool = new OutputSpool(
+            spoolDir.resolve("1").resolve("transform").resolve("a.nt"), POLL_INTERVAL);
+        spool.reset();
+
+        Job consumer = createJob("enrich", (contribution, chunkContext) -> RepeatStatus.FINISHED);
+        JobExecution consumerExecution = launcher.run(consumer, consumerParameters(spool));
+
+        assertEquals(0, launcher.getNumberOfDeferred());
+        assertEquals(BatchStatus.COMPLETED, awaitFinished(jobRepository, consumerExecution).getStatus());
+    }
+
+    @Test(timeout = 20000L)
+    public void testStopDeferredConsumer() throws Exception
+    {
+        final OutputSpool spool = new OutputSpool(
+            spoolDir.resolve("1").resolve("transform").resolve("a.nt"), POLL_INTERVAL);
+        final AtomicBoolean executed = new AtomicBoolean(false);
+
+        Job consumer = createJob("enrich", (contribution, chunkContext) -> {
+            executed.set(true);
+            return RepeatStatus.FINISHED;
+        });
+
+        JobExecution consumerExecution = launcher.run(consumer, consumerParameters(spool));
+        assertEquals(1, launcher.getNumberOfDeferred());
+
+        // Request to stop (as a job operator would do)
+
+        JobExecution execution = jobRepository.getLastJobExecution("enrich", consumerExecution.getJobParameters());
+        execution.setStatus(BatchStatus.STOPPING);
+        jobRepository.update(execution);
+
+        assertEquals(BatchStatus.STOPPED, awaitFinished(jobRepository, consumerExecution).getStatus());
+        assertFalse(executed.get());
+        assertEquals(0, launcher.getNumberOfDeferred());
+    }
+}
@@ -21,6 +21,7 @@ const supportedStatus = [
   { value: null, label: 'Select...' },
   { value: 'COMPLETED', label: 'COMPLETED' },
   { value: 'FAILED', label: 'FAILED' },
+  { value: 'QUEUED', label: 'QUEUED' },
   { value: 'RUNNING', label: 'RUNNING' },
   { value: 'STOPPED', label: 'STOPPED' },
   { value: 'UNKNOWN', label: 'UNKNOWN' },
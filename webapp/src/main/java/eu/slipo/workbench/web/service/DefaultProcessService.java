@@ -306,7 +306,9 @@ public class DefaultProcessService implements ProcessService {
         checkProcessAccess(processRecord);
 
         final ProcessExecutionRecord record = this.processOperator.poll(id, version);
-        if ((record != null) && (record.getStatus() == EnumProcessExecutionStatus.RUNNING)) {
+        if ((record != null) &&
+            ((record.getStatus() == EnumProcessExecutionStatus.RUNNING) ||
+             (record.getStatus() == EnumProcessExecutionStatus.QUEUED))) {
             this.processOperator.stop(id, version);
         } else {
             throw ApplicationException.fromMessage("Process is not running");